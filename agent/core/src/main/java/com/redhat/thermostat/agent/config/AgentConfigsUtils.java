@@ -39,6 +39,7 @@ package com.redhat.thermostat.agent.config;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.Properties;
 
 import com.redhat.thermostat.shared.config.InvalidConfigurationException;
@@ -104,6 +105,65 @@ public class AgentConfigsUtils {
         } else {
             configuration.setKeycloakEnabled(false);
         }
+
+        configuration.setUploadQueueCapacity((int) readPositiveLong(properties, AgentProperties.UPLOAD_QUEUE_CAPACITY,
+                AgentStartupConfiguration.DEFAULT_UPLOAD_QUEUE_CAPACITY));
+        configuration.setUploadBatchSize((int) readPositiveLong(properties, AgentProperties.UPLOAD_BATCH_SIZE,
+                AgentStartupConfiguration.DEFAULT_UPLOAD_BATCH_SIZE));
+        configuration.setUploadFlushInterval(readPositiveLong(properties, AgentProperties.UPLOAD_FLUSH_INTERVAL,
+                AgentStartupConfiguration.DEFAULT_UPLOAD_FLUSH_INTERVAL));
+        String spoolEnabled = properties.getProperty(AgentProperties.UPLOAD_SPOOL_ENABLED.name());
+        configuration.setUploadSpoolEnabled(spoolEnabled == null || Boolean.parseBoolean(spoolEnabled));
+        configuration.setUploadSpoolMaxSize(readPositiveLong(properties, AgentProperties.UPLOAD_SPOOL_MAX_SIZE,
+                AgentStartupConfiguration.DEFAULT_UPLOAD_SPOOL_MAX_SIZE) * 1024 * 1024);
+        configuration.setUploadSpoolReplayRate((int) readPositiveLong(properties, AgentProperties.UPLOAD_SPOOL_REPLAY_RATE,
+                AgentStartupConfiguration.DEFAULT_UPLOAD_SPOOL_REPLAY_RATE));
+        configuration.setHttpRequestCompression(readChoice(properties, AgentProperties.HTTP_REQUEST_COMPRESSION,
+                "none", "gzip", "deflate"));
+        configuration.setHttpMaxRequestsPerDestination((int) readPositiveLong(properties,
+                AgentProperties.HTTP_MAX_REQUESTS_PER_DESTINATION,
+                AgentStartupConfiguration.DEFAULT_HTTP_MAX_REQUESTS_PER_DESTINATION));
+        configuration.setHttpRequestTimeout(readPositiveLong(properties, AgentProperties.HTTP_REQUEST_TIMEOUT,
+                AgentStartupConfiguration.DEFAULT_HTTP_REQUEST_TIMEOUT));
+    }
+
+    /**
+     * Reads a property which must have one of the given values. The first
+     * choice is the default.
+     */
+    private static String readChoice(Properties properties, AgentProperties key, String... choices)
+            throws InvalidConfigurationException
+    {
+        String value = properties.getProperty(key.name());
+        if (value == null) {
+            return choices[0];
+        }
+        value = value.trim().toLowerCase();
+        for (String choice : choices) {
+            if (choice.equals(value)) {
+                return choice;
+            }
+        }
+        throw new InvalidConfigurationException(key.name() + " must be one of " + Arrays.toString(choices)
+                + ", was: " + value);
+    }
+
+    private static long readPositiveLong(Properties properties, AgentProperties key, long defaultValue)
+            throws InvalidConfigurationException
+    {
+        String value = properties.getProperty(key.name());
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            long result = Long.parseLong(value.trim());
+            if (result <= 0 || result > Integer.MAX_VALUE) {
+                throw new InvalidConfigurationException(key.name() + " must be a positive integer, was: " + value);
+            }
+            return result;
+        } catch (NumberFormatException e) {
+            throw new InvalidConfigurationException(key.name() + " must be a positive integer, was: " + value);
+        }
     }
 }
 
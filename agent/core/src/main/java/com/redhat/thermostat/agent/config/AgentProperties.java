@@ -46,6 +46,17 @@ public enum AgentProperties {
     KEYCLOAK_REALM,
     KEYCLOAK_CLIENT,
     KEYCLOAK_USERNAME,
-    KEYCLOAK_PASSWORD
+    KEYCLOAK_PASSWORD,
+
+    UPLOAD_QUEUE_CAPACITY,
+    UPLOAD_BATCH_SIZE,
+    UPLOAD_FLUSH_INTERVAL,
+    UPLOAD_SPOOL_ENABLED,
+    UPLOAD_SPOOL_MAX_SIZE,
+    UPLOAD_SPOOL_REPLAY_RATE,
+
+    HTTP_MAX_REQUESTS_PER_DESTINATION,
+    HTTP_REQUEST_TIMEOUT,
+    HTTP_REQUEST_COMPRESSION
 }
 
@@ -40,6 +40,14 @@ import com.redhat.thermostat.storage.config.StartupConfiguration;
 
 public class AgentStartupConfiguration implements StartupConfiguration {
 
+    static final int DEFAULT_UPLOAD_QUEUE_CAPACITY = 10000;
+    static final int DEFAULT_UPLOAD_BATCH_SIZE = 100;
+    static final long DEFAULT_UPLOAD_FLUSH_INTERVAL = 1000; // milliseconds
+    static final long DEFAULT_UPLOAD_SPOOL_MAX_SIZE = 64; // megabytes
+    static final int DEFAULT_UPLOAD_SPOOL_REPLAY_RATE = 200; // payloads per second
+    static final int DEFAULT_HTTP_MAX_REQUESTS_PER_DESTINATION = 16;
+    static final long DEFAULT_HTTP_REQUEST_TIMEOUT = 5000; // milliseconds
+
     private boolean purge;
     private String dbUrl;
     private long startTime;
@@ -50,6 +58,16 @@ public class AgentStartupConfiguration implements StartupConfiguration {
     private String keycloakClient;
     private String keycloakUsername;
     private String keycloakPassword;
+
+    private int uploadQueueCapacity = DEFAULT_UPLOAD_QUEUE_CAPACITY;
+    private int uploadBatchSize = DEFAULT_UPLOAD_BATCH_SIZE;
+    private long uploadFlushInterval = DEFAULT_UPLOAD_FLUSH_INTERVAL;
+    private boolean uploadSpoolEnabled = true;
+    private long uploadSpoolMaxSize = DEFAULT_UPLOAD_SPOOL_MAX_SIZE * 1024 * 1024;
+    private int uploadSpoolReplayRate = DEFAULT_UPLOAD_SPOOL_REPLAY_RATE;
+    private String httpRequestCompression = "none";
+    private int httpMaxRequestsPerDestination = DEFAULT_HTTP_MAX_REQUESTS_PER_DESTINATION;
+    private long httpRequestTimeout = DEFAULT_HTTP_REQUEST_TIMEOUT;
     
     AgentStartupConfiguration() {
     }
@@ -127,5 +145,111 @@ public class AgentStartupConfiguration implements StartupConfiguration {
     public void setKeycloakRealm(String keycloakRealm) {
         this.keycloakRealm = keycloakRealm;
     }
-}
 
+    /**
+     * @return the maximum number of payloads which may be waiting for upload
+     * to the web gateway before further payloads are rejected
+     */
+    public int getUploadQueueCapacity() {
+        return uploadQueueCapacity;
+    }
+
+    public void setUploadQueueCapacity(int uploadQueueCapacity) {
+        this.uploadQueueCapacity = uploadQueueCapacity;
+    }
+
+    /**
+     * @return the number of payloads for a single endpoint which triggers
+     * an immediate upload of that endpoint's batch
+     */
+    public int getUploadBatchSize() {
+        return uploadBatchSize;
+    }
+
+    public void setUploadBatchSize(int uploadBatchSize) {
+        this.uploadBatchSize = uploadBatchSize;
+    }
+
+    /**
+     * @return the maximum time in milliseconds a payload may wait in a batch
+     * before the batch is uploaded
+     */
+    public long getUploadFlushInterval() {
+        return uploadFlushInterval;
+    }
+
+    public void setUploadFlushInterval(long uploadFlushInterval) {
+        this.uploadFlushInterval = uploadFlushInterval;
+    }
+
+    /**
+     * @return whether payloads which can not be uploaded are kept on disk
+     * for a later retry
+     */
+    public boolean isUploadSpoolEnabled() {
+        return uploadSpoolEnabled;
+    }
+
+    public void setUploadSpoolEnabled(boolean uploadSpoolEnabled) {
+        this.uploadSpoolEnabled = uploadSpoolEnabled;
+    }
+
+    /**
+     * @return the maximum disk space, in bytes, used for payloads waiting to
+     * be retried
+     */
+    public long getUploadSpoolMaxSize() {
+        return uploadSpoolMaxSize;
+    }
+
+    public void setUploadSpoolMaxSize(long uploadSpoolMaxSize) {
+        this.uploadSpoolMaxSize = uploadSpoolMaxSize;
+    }
+
+    /**
+     * @return the maximum number of spooled payloads retried per second
+     */
+    public int getUploadSpoolReplayRate() {
+        return uploadSpoolReplayRate;
+    }
+
+    public void setUploadSpoolReplayRate(int uploadSpoolReplayRate) {
+        this.uploadSpoolReplayRate = uploadSpoolReplayRate;
+    }
+
+    /**
+     * @return the compression applied to request bodies sent to the web
+     * gateway: "none", "gzip" or "deflate"
+     */
+    public String getHttpRequestCompression() {
+        return httpRequestCompression;
+    }
+
+    public void setHttpRequestCompression(String httpRequestCompression) {
+        this.httpRequestCompression = httpRequestCompression;
+    }
+
+    /**
+     * @return the maximum number of requests which may be in flight to a
+     * single host and port at the same time
+     */
+    public int getHttpMaxRequestsPerDestination() {
+        return httpMaxRequestsPerDestination;
+    }
+
+    public void setHttpMaxRequestsPerDestination(int httpMaxRequestsPerDestination) {
+        this.httpMaxRequestsPerDestination = httpMaxRequestsPerDestination;
+    }
+
+    /**
+     * @return the time in milliseconds after which a request to the web
+     * gateway is aborted
+     */
+    public long getHttpRequestTimeout() {
+        return httpRequestTimeout;
+    }
+
+    public void setHttpRequestTimeout(long httpRequestTimeout) {
+        this.httpRequestTimeout = httpRequestTimeout;
+    }
+}
@@ -0,0 +1,586 @@
+/*
+ * Copyright 2012-2017 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+package com.redhat.thermostat.agent.http;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.redhat.thermostat.agent.http.HttpRequestService.RequestFailedException;
+import com.redhat.thermostat.common.Clock;
+import com.redhat.thermostat.common.utils.LoggingUtils;
+
+/**
+ * Collects UTF-8 encoded JSON payloads destined for the web gateway and
+ * uploads them from a background thread. Payloads for the same endpoint are coalesced
+ * into a single JSON array, which is sent once the batch is full or its
+ * oldest payload has waited for the flush interval.
+ * <p>
+ * The number of queued payloads is bounded. Once the bound is reached,
+ * {@link #offer(String, byte[])} hands further payloads to the background
+ * thread, which writes them to the {@link UploadSpool}, if there is one.
+ * They are rejected if there is no spool or the hand-off is full too, so
+ * the caller never blocks or waits for disk I/O. Batches which fail to
+ * upload are spooled too.
+ * <p>
+ * Ordered payloads, queued with
+ * {@link #offerOrdered(String, byte[], long)}, depend on the ordered
+ * payloads queued before them for the same endpoint, like deltas against
+ * an earlier sample. They are never spooled. If one can not be delivered,
+ * it and every ordered payload queued after it for the endpoint are
+ * dropped, and the endpoint's count of {@link #getOrderedLosses(String)
+ * ordered losses} goes up so that producers start over from a full
+ * sample.
+ * Spooled payloads are replayed at a limited rate while the gateway accepts
+ * requests.
+ */
+class BatchingUploader {
+
+    private static final Logger logger = LoggingUtils.getLogger(BatchingUploader.class);
+
+    static final long REPLAY_PERIOD_MILLIS = 100;
+    // How long to wait after a failed request before replaying again
+    static final long REPLAY_BACKOFF_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+    interface Sender {
+        void send(byte[] jsonPayload, String url) throws RequestFailedException;
+    }
+
+    private final Sender sender;
+    private final ScheduledExecutorService executor;
+    private final Clock clock;
+    private final int capacity;
+    private final int batchSize;
+    private final long flushIntervalNanos;
+    private final UploadSpool spool;
+    private final int replayRate;
+
+    // Keyed by endpoint URL. Guarded by this.
+    private final Map<String, Batch> batches = new LinkedHashMap<>();
+    // Keyed by endpoint URL. Guarded by this.
+    private final Map<String, Long> orderedLosses = new HashMap<>();
+    // Payloads beyond the queue bound, waiting to be spooled by the
+    // executor thread. Null if there is no spool.
+    private final BlockingQueue<Overflow> overflow;
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+    private final Runnable flushTask = new Runnable() {
+        @Override
+        public void run() {
+            flushRequested.set(false);
+            spoolOverflow();
+            flush(false);
+        }
+    };
+
+    private final AtomicInteger queueDepth = new AtomicInteger();
+    private final AtomicLong accepted = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong flushedBatches = new AtomicLong();
+    private final AtomicInteger lastBatchSize = new AtomicInteger();
+    private final AtomicInteger maxBatchSize = new AtomicInteger();
+    private final AtomicLong lastFlushLatency = new AtomicLong();
+    private final AtomicLong totalFlushLatency = new AtomicLong();
+    private final AtomicLong spooled = new AtomicLong();
+    private final AtomicLong replayed = new AtomicLong();
+
+    private volatile boolean gatewayHealthy = true;
+    private volatile long lastFailureNanos;
+    // Only used by the executor thread
+    private double replayTokens;
+    private long lastReplayNanos;
+
+    BatchingUploader(Sender sender, ScheduledExecutorService executor, Clock clock,
+            int capacity, int batchSize, long flushIntervalMillis) {
+        this(sender, executor, clock, capacity, batchSize, flushIntervalMillis, null, 0);
+    }
+
+    /**
+     * @param spool where to keep payloads which can not be sent right now,
+     *        or {@code null} to drop them
+     * @param replayRate the maximum number of spooled payloads replayed per
+     *        second
+     */
+    BatchingUploader(Sender sender, ScheduledExecutorService executor, Clock clock,
+            int capacity, int batchSize, long flushIntervalMillis, UploadSpool spool, int replayRate) {
+        this.sender = sender;
+        this.executor = executor;
+        this.clock = clock;
+        this.capacity = capacity;
+        this.batchSize = batchSize;
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis);
+        this.spool = spool;
+        this.overflow = spool == null ? null : new ArrayBlockingQueue<Overflow>(capacity);
+        this.replayRate = replayRate;
+        this.lastReplayNanos = clock.getMonotonicTimeNanos();
+    }
+
+    void start() {
+        // Check batch ages a few times per interval so that a batch does
+        // not wait much longer than the configured interval.
+        long period = Math.max(1, TimeUnit.NANOSECONDS.toMillis(flushIntervalNanos) / 4);
+        executor.scheduleWithFixedDelay(flushTask, period, period, TimeUnit.MILLISECONDS);
+        if (spool != null) {
+            executor.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    replay();
+                }
+            }, REPLAY_PERIOD_MILLIS, REPLAY_PERIOD_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Uploads everything still queued and stops the background thread.
+     */
+    void stop() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush(true);
+        if (spool != null) {
+            spoolOverflow();
+            spool.close();
+        }
+    }
+
+    /**
+     * Queue a JSON payload for upload. Never blocks.
+     *
+     * @return {@code true} if the payload was queued or handed off to be
+     * spooled, {@code false} if it was rejected because the queue is full
+     */
+    boolean offer(String url, byte[] jsonPayload) {
+        return offer(url, jsonPayload, false, 0);
+    }
+
+    /**
+     * Queue an ordered JSON payload for upload. Never blocks, and never
+     * spools the payload.
+     *
+     * @param orderedLosses the value of {@link #getOrderedLosses(String)}
+     *        the payload was prepared with
+     * @return {@code true} if the payload was queued, {@code false} if it
+     * was rejected because the queue is full or ordered payloads for the
+     * endpoint were lost since {@code orderedLosses} was read
+     */
+    boolean offerOrdered(String url, byte[] jsonPayload, long orderedLosses) {
+        return offer(url, jsonPayload, true, orderedLosses);
+    }
+
+    /**
+     * @return how many times ordered payloads for the endpoint were lost
+     */
+    synchronized long getOrderedLosses(String url) {
+        Long losses = orderedLosses.get(url);
+        return losses == null ? 0 : losses;
+    }
+
+    private boolean offer(String url, byte[] jsonPayload, boolean ordered, long losses) {
+        if (queueDepth.incrementAndGet() > capacity) {
+            queueDepth.decrementAndGet();
+            if (!ordered && overflow != null && overflow.offer(new Overflow(url, jsonPayload))) {
+                requestFlush();
+                return true;
+            }
+            rejected.incrementAndGet();
+            return false;
+        }
+        boolean full;
+        synchronized (this) {
+            if (ordered && getOrderedLosses(url) != losses) {
+                queueDepth.decrementAndGet();
+                rejected.incrementAndGet();
+                return false;
+            }
+            Batch batch = batches.get(url);
+            if (batch == null) {
+                batch = new Batch(clock.getMonotonicTimeNanos());
+                batches.put(url, batch);
+            }
+            (ordered ? batch.ordered : batch.payloads).add(jsonPayload);
+            full = batch.size() >= batchSize;
+        }
+        accepted.incrementAndGet();
+        if (full) {
+            requestFlush();
+        }
+        return true;
+    }
+
+    private void requestFlush() {
+        if (flushRequested.compareAndSet(false, true)) {
+            executor.execute(flushTask);
+        }
+    }
+
+    /**
+     * Writes payloads handed off by {@link #offer(String, byte[])} to the
+     * spool. Only called from the executor thread, or after the executor
+     * has been shut down.
+     */
+    void spoolOverflow() {
+        if (overflow == null) {
+            return;
+        }
+        Overflow payload;
+        while ((payload = overflow.poll()) != null) {
+            if (!spool(payload.url, payload.payload)) {
+                rejected.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Sends all batches which are due. Only called from the executor
+     * thread, or after the executor has been shut down.
+     */
+    void flush(boolean all) {
+        Map<String, Batch> due = new LinkedHashMap<>();
+        long now = clock.getMonotonicTimeNanos();
+        synchronized (this) {
+            Iterator<Map.Entry<String, Batch>> iter = batches.entrySet().iterator();
+            while (iter.hasNext()) {
+                Map.Entry<String, Batch> entry = iter.next();
+                Batch batch = entry.getValue();
+                if (all || batch.size() >= batchSize || now - batch.createdNanos >= flushIntervalNanos) {
+                    due.put(entry.getKey(), batch);
+                    iter.remove();
+                }
+            }
+        }
+        for (Map.Entry<String, Batch> entry : due.entrySet()) {
+            send(entry.getKey(), entry.getValue());
+        }
+    }
+
+    private void send(String url, Batch batch) {
+        int size = batch.size();
+        for (byte[] body : coalesce(batch.payloads)) {
+            if (!sendBody(url, body, size)) {
+                spool(url, body);
+            }
+        }
+        for (byte[] body : coalesceInOrder(batch.ordered)) {
+            if (!sendBody(url, body, size)) {
+                // Later ordered payloads may depend on this one
+                loseOrdered(url);
+                break;
+            }
+        }
+        lastBatchSize.set(size);
+        int max;
+        do {
+            max = maxBatchSize.get();
+        } while (size > max && !maxBatchSize.compareAndSet(max, size));
+        queueDepth.addAndGet(-size);
+    }
+
+    /**
+     * Drops the ordered payloads still queued for the endpoint, and makes
+     * producers start over.
+     */
+    private synchronized void loseOrdered(String url) {
+        orderedLosses.put(url, getOrderedLosses(url) + 1);
+        Batch batch = batches.get(url);
+        if (batch != null && !batch.ordered.isEmpty()) {
+            queueDepth.addAndGet(-batch.ordered.size());
+            batch.ordered.clear();
+        }
+    }
+
+    private boolean sendBody(String url, byte[] body, int payloadCount) {
+        long start = clock.getMonotonicTimeNanos();
+        boolean success = false;
+        try {
+            sender.send(body, url);
+            success = true;
+        } catch (RequestFailedException e) {
+            logger.log(Level.WARNING, "Failed to upload batch of " + payloadCount + " payloads to " + url, e);
+        } catch (RuntimeException e) {
+            logger.log(Level.WARNING, "Unexpected failure uploading batch to " + url, e);
+        }
+        long end = clock.getMonotonicTimeNanos();
+        long latency = end - start;
+        lastFlushLatency.set(latency);
+        totalFlushLatency.addAndGet(latency);
+        flushedBatches.incrementAndGet();
+        if (success) {
+            gatewayHealthy = true;
+        } else {
+            failed.incrementAndGet();
+            gatewayHealthy = false;
+            lastFailureNanos = end;
+        }
+        return success;
+    }
+
+    private boolean spool(String url, byte[] payload) {
+        if (spool != null && spool.append(url, payload)) {
+            spooled.incrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Sends spooled payloads, oldest first, without exceeding the replay
+     * rate. Does nothing for a while after a request has failed. Only called
+     * from the executor thread.
+     */
+    void replay() {
+        spool.syncIfDue();
+        long now = clock.getMonotonicTimeNanos();
+        replayTokens = Math.min(replayRate, replayTokens + replayRate * ((now - lastReplayNanos) / 1e9));
+        lastReplayNanos = now;
+        if (!gatewayHealthy && now - lastFailureNanos < REPLAY_BACKOFF_NANOS) {
+            return;
+        }
+        List<UploadSpool.Record> records = spool.peek((int) replayTokens);
+        if (records.isEmpty()) {
+            return;
+        }
+        Map<String, List<UploadSpool.Record>> byUrl = new LinkedHashMap<>();
+        for (UploadSpool.Record record : records) {
+            List<UploadSpool.Record> forUrl = byUrl.get(record.getUrl());
+            if (forUrl == null) {
+                forUrl = new ArrayList<>();
+                byUrl.put(record.getUrl(), forUrl);
+            }
+            forUrl.add(record);
+        }
+        for (Map.Entry<String, List<UploadSpool.Record>> entry : byUrl.entrySet()) {
+            String url = entry.getKey();
+            // Records are committed as soon as the body holding them is
+            // delivered, so that a later failure does not send them again
+            List<UploadSpool.Record> arrays = new ArrayList<>();
+            List<byte[]> arrayPayloads = new ArrayList<>();
+            for (UploadSpool.Record record : entry.getValue()) {
+                if (isArray(record.getPayload())) {
+                    arrays.add(record);
+                    arrayPayloads.add(record.getPayload());
+                } else if (!replay(url, record.getPayload(), Collections.singletonList(record))) {
+                    return;
+                }
+            }
+            if (!arrays.isEmpty()) {
+                // Array payloads coalesce into at most one body, or none if
+                // they are all empty
+                List<byte[]> bodies = coalesce(arrayPayloads);
+                if (!replay(url, bodies.isEmpty() ? null : bodies.get(0), arrays)) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Sends one body made of spooled records and commits the records once
+     * it is delivered.
+     *
+     * @param body the body to send, or {@code null} if there is nothing to
+     *        send for the records
+     * @return {@code false} if the body could not be sent
+     */
+    private boolean replay(String url, byte[] body, List<UploadSpool.Record> records) {
+        if (body != null && !sendBody(url, body, records.size())) {
+            // Leave the records in the spool and retry later
+            return false;
+        }
+        spool.commit(records);
+        replayed.addAndGet(records.size());
+        replayTokens -= records.size();
+        return true;
+    }
+
+    /**
+     * Like {@link #coalesce(List)}, but keeps the order of the payloads:
+     * they are only merged if all of them are JSON arrays.
+     */
+    static List<byte[]> coalesceInOrder(List<byte[]> payloads) {
+        for (byte[] payload : payloads) {
+            if (!isArray(payload)) {
+                return payloads;
+            }
+        }
+        return coalesce(payloads);
+    }
+
+    /**
+     * Merges all JSON array payloads into a single array. Payloads which
+     * are not arrays cannot be merged and are sent on their own.
+     */
+    static List<byte[]> coalesce(List<byte[]> payloads) {
+        List<byte[]> bodies = new ArrayList<>();
+        // Offsets of the elements of each array payload, without brackets
+        int[] starts = new int[payloads.size()];
+        int[] ends = new int[payloads.size()];
+        int mergedLength = 1;
+        for (int i = 0; i < payloads.size(); i++) {
+            byte[] payload = payloads.get(i);
+            if (!isArray(payload)) {
+                bodies.add(payload);
+                continue;
+            }
+            int start = firstNonWhitespace(payload, 0, payload.length);
+            int end = lastNonWhitespace(payload);
+            starts[i] = firstNonWhitespace(payload, start + 1, end);
+            ends[i] = end;
+            if (starts[i] < end) {
+                mergedLength += end - starts[i] + 1;
+            }
+        }
+        if (mergedLength == 1) {
+            return bodies;
+        }
+        // The separator after the last element becomes the closing bracket
+        byte[] merged = new byte[mergedLength];
+        merged[0] = '[';
+        int position = 1;
+        for (int i = 0; i < payloads.size(); i++) {
+            int length = ends[i] - starts[i];
+            if (length > 0) {
+                System.arraycopy(payloads.get(i), starts[i], merged, position, length);
+                position += length;
+                merged[position++] = ',';
+            }
+        }
+        merged[position - 1] = ']';
+        bodies.add(merged);
+        return bodies;
+    }
+
+    private static boolean isArray(byte[] payload) {
+        int start = firstNonWhitespace(payload, 0, payload.length);
+        int end = lastNonWhitespace(payload);
+        return start < end && payload[start] == '[' && payload[end] == ']';
+    }
+
+    private static int firstNonWhitespace(byte[] s, int from, int to) {
+        int i = from;
+        while (i < to && isWhitespace(s[i])) {
+            i++;
+        }
+        return i;
+    }
+
+    private static int lastNonWhitespace(byte[] s) {
+        int i = s.length - 1;
+        while (i >= 0 && isWhitespace(s[i])) {
+            i--;
+        }
+        return i;
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t' || b == '\n' || b == '\r';
+    }
+
+    UploadStatistics getStatistics() {
+        long spoolPending = 0;
+        long spoolSize = 0;
+        long spoolDropped = 0;
+        long spoolLag = 0;
+        if (spool != null) {
+            spoolPending = spool.getPendingRecords();
+            spoolSize = spool.getSizeOnDisk();
+            spoolDropped = spool.getDroppedRecords();
+            long oldest = spool.getOldestTimestamp();
+            if (oldest >= 0) {
+                spoolLag = Math.max(0, clock.getRealTimeMillis() - oldest);
+            }
+        }
+        return new UploadStatistics(queueDepth.get(), accepted.get(), rejected.get(), failed.get(),
+                flushedBatches.get(), lastBatchSize.get(), maxBatchSize.get(), lastFlushLatency.get(),
+                totalFlushLatency.get(), spooled.get(), replayed.get(), spoolPending, spoolSize,
+                spoolDropped, spoolLag);
+    }
+
+    private static class Overflow {
+
+        private final String url;
+        private final byte[] payload;
+
+        private Overflow(String url, byte[] payload) {
+            this.url = url;
+            this.payload = payload;
+        }
+    }
+
+    private static class Batch {
+
+        private final long createdNanos;
+        private final List<byte[]> payloads = new ArrayList<>();
+        private final List<byte[]> ordered = new ArrayList<>();
+
+        private Batch(long createdNanos) {
+            this.createdNanos = createdNanos;
+        }
+
+        private int size() {
+            return payloads.size() + ordered.size();
+        }
+    }
+
+    static class UploaderThreadFactory implements ThreadFactory {
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "HttpBatchUploader");
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
+
@@ -84,6 +84,10 @@ class HttpClientFacade {
         } 
     }
     
+    void setMaxConnectionsPerDestination(int maxConnections) {
+        httpsClient.setMaxConnectionsPerDestination(maxConnections);
+    }
+
     void start() throws Exception {
         httpsClient.start();
     }
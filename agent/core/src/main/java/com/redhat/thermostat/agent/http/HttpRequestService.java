@@ -37,19 +37,36 @@
 package com.redhat.thermostat.agent.http;
 
 
+import java.io.File;
 import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.apache.felix.scr.annotations.Activate;
 import org.apache.felix.scr.annotations.Component;
+import org.apache.felix.scr.annotations.Deactivate;
 import org.apache.felix.scr.annotations.Reference;
 import org.apache.felix.scr.annotations.Service;
 import org.eclipse.jetty.client.api.ContentResponse;
 import org.eclipse.jetty.client.api.Request;
+import org.eclipse.jetty.client.api.Response;
+import org.eclipse.jetty.client.api.Result;
+import org.eclipse.jetty.client.util.BufferingResponseListener;
 import org.eclipse.jetty.client.util.StringContentProvider;
 import org.eclipse.jetty.http.HttpMethod;
 import org.eclipse.jetty.http.HttpStatus;
@@ -59,7 +76,11 @@ import com.google.gson.GsonBuilder;
 import com.redhat.thermostat.agent.config.AgentConfigsUtils;
 import com.redhat.thermostat.agent.config.AgentStartupConfiguration;
 import com.redhat.thermostat.agent.http.internal.keycloak.KeycloakAccessToken;
+import com.redhat.thermostat.common.Clock;
+import com.redhat.thermostat.common.SystemClock;
 import com.redhat.thermostat.common.utils.LoggingUtils;
+import com.redhat.thermostat.shared.config.CommonPaths;
+import com.redhat.thermostat.shared.config.InvalidConfigurationException;
 import com.redhat.thermostat.shared.config.SSLConfiguration;
 
 @Component
@@ -87,102 +108,398 @@ public class HttpRequestService {
 
     private static final String KEYCLOAK_TOKEN_SERVICE = "/auth/realms/__REALM__/protocol/openid-connect/token";
     private static final String KEYCLOAK_CONTENT_TYPE = "application/x-www-form-urlencoded";
+    private static final String SPOOL_DIRECTORY = "upload-spool";
 
     private final HttpClientCreator httpClientCreator;
+    private final BatchingUploaderCreator uploaderCreator;
+    private BatchingUploader uploader;
+    // Keyed by scheme, host and port of the request url
+    private final ConcurrentMap<String, Semaphore> inFlightPermits = new ConcurrentHashMap<>();
     private Gson gson = new GsonBuilder().create();
     private HttpClientFacade client;
+    private PayloadEncoder payloadEncoder;
     private AgentStartupConfiguration agentStartupConfiguration;
 
-    private KeycloakAccessToken keycloakAccessToken;
+    private final AtomicReference<KeycloakAccessToken> keycloakAccessToken = new AtomicReference<>();
+    // Held while acquiring or refreshing the Keycloak token, so only one
+    // thread talks to Keycloak at a time
+    private final Object keycloakTokenLock = new Object();
+    // Fetches Keycloak tokens for asynchronous requests, which must not block
+    private ExecutorService keycloakExecutor;
     @Reference
     private SSLConfiguration sslConfig;
+    @Reference
+    private CommonPaths commonPaths;
 
     public HttpRequestService() {
         this(new HttpClientCreator(), AgentConfigsUtils.createAgentConfigs());
     }
 
     HttpRequestService(HttpClientCreator clientCreator, AgentStartupConfiguration agentStartupConfiguration) {
+        this(clientCreator, new BatchingUploaderCreator(), agentStartupConfiguration);
+    }
+
+    HttpRequestService(HttpClientCreator clientCreator, BatchingUploaderCreator uploaderCreator,
+            AgentStartupConfiguration agentStartupConfiguration) {
         this.httpClientCreator = clientCreator;
+        this.uploaderCreator = uploaderCreator;
         this.agentStartupConfiguration = agentStartupConfiguration;
     }
 
     @Activate
     public void activate() {
+        keycloakExecutor = Executors.newSingleThreadExecutor(new KeycloakThreadFactory());
+        payloadEncoder = new PayloadEncoder(
+                PayloadEncoder.Compression.fromConfig(agentStartupConfiguration.getHttpRequestCompression()));
         try {
             client = httpClientCreator.create(sslConfig);
+            // Keep enough pooled connections for every permitted in-flight
+            // request so that each one can reuse a kept-alive connection.
+            client.setMaxConnectionsPerDestination(agentStartupConfiguration.getHttpMaxRequestsPerDestination());
             client.start();
             logger.log(Level.FINE, "HttpRequestService activated");
         } catch (Exception e) {
             logger.log(Level.SEVERE, "HttpRequestService failed to start correctly. Behaviour undefined.", e);
         }
+        uploader = uploaderCreator.create(new BatchingUploader.Sender() {
+            @Override
+            public void send(byte[] jsonPayload, String url) throws RequestFailedException {
+                sendUpload(jsonPayload, url);
+            }
+        }, agentStartupConfiguration, getSpoolDirectory());
+        uploader.start();
+    }
+
+    private File getSpoolDirectory() {
+        if (commonPaths == null || !agentStartupConfiguration.isUploadSpoolEnabled()) {
+            return null;
+        }
+        try {
+            return new File(commonPaths.getUserPersistentDataDirectory(), SPOOL_DIRECTORY);
+        } catch (InvalidConfigurationException e) {
+            logger.log(Level.WARNING, "Unable to determine upload spool directory. Spooling disabled.", e);
+            return null;
+        }
+    }
+
+    @Deactivate
+    public void deactivate() {
+        if (uploader != null) {
+            uploader.stop();
+            uploader = null;
+        }
+        if (keycloakExecutor != null) {
+            keycloakExecutor.shutdownNow();
+            keycloakExecutor = null;
+        }
+        logger.log(Level.FINE, "HttpRequestService deactivated");
+    }
+
+    /**
+     * Queue a JSON payload to be sent as a POST request by a background
+     * thread. Queued JSON array payloads for the same url are merged into a
+     * single array and sent together. This method does not block on the
+     * network.
+     * @param jsonPayload The payload to send
+     * @param url The complete url to send to
+     * @return {@code true} if the payload was queued, {@code false} if it
+     * was dropped because too many payloads are already waiting for upload
+     */
+    public boolean queueHttpPost(String jsonPayload, String url) {
+        return uploader.offer(url, jsonPayload.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Queue the JSON written to a {@link JsonPayloadWriter} to be sent as a
+     * POST request by a background thread. The encoded bytes are copied, so
+     * the writer may be reused as soon as this method returns.
+     * @see #queueHttpPost(String, String)
+     */
+    public boolean queueHttpPost(JsonPayloadWriter jsonPayload, String url) {
+        return uploader.offer(url, jsonPayload.toByteArray());
+    }
+
+    /**
+     * Queue a payload which is only meaningful if the payloads queued
+     * before it with this method for the same url were delivered, such as
+     * a delta against an earlier sample. Such payloads are sent in order
+     * and never spooled. If one can not be delivered, it and those queued
+     * after it for the url are dropped, and
+     * {@link #getOrderedLosses(String)} goes up.
+     * @param orderedLosses the value of {@link #getOrderedLosses(String)}
+     *        read before the payload was prepared. The payload is rejected
+     *        if ordered payloads for the url were lost since.
+     * @return {@code true} if the payload was queued, {@code false} if it
+     * was dropped. Producers should then start over with a payload which
+     * does not depend on earlier ones.
+     * @see #queueHttpPost(String, String)
+     */
+    public boolean queueOrderedHttpPost(JsonPayloadWriter jsonPayload, String url, long orderedLosses) {
+        return uploader.offerOrdered(url, jsonPayload.toByteArray(), orderedLosses);
     }
 
     /**
-     * Send a HTTP request
+     * @return how many times payloads queued with
+     * {@link #queueOrderedHttpPost(JsonPayloadWriter, String, long)} for the
+     * url could not be delivered
+     */
+    public long getOrderedLosses(String url) {
+        return uploader.getOrderedLosses(url);
+    }
+
+    /**
+     * @return a snapshot of the counters for payloads queued by
+     * {@link #queueHttpPost(String, String)}
+     */
+    public UploadStatistics getUploadStatistics() {
+        return uploader.getStatistics();
+    }
+
+    /**
+     * Send a HTTP request and wait for its response. If too many requests
+     * are in flight to the same host and port, this waits up to the
+     * configured request timeout for one of them to complete.
      * @param jsonPayload The payload to send, or null if no payload
      * @param url The complete url to send to
      * @param requestType The HTTP request type: GET, PUT, POST or DELETE
      * @return The returned body for GET requests. {@code null} otherwise.
      */
     public String sendHttpRequest(String jsonPayload, String url, String requestType) throws RequestFailedException {
+        byte[] body = jsonPayload == null ? null : jsonPayload.getBytes(StandardCharsets.UTF_8);
+        return await(sendRequest(body, url, requestType, agentStartupConfiguration.getHttpRequestTimeout(),
+                TimeUnit.MILLISECONDS, true));
+    }
+
+    /**
+     * Send a POST request with a batch of samples queued for upload and wait
+     * for its response. Like
+     * {@link #sendHttpRequest(String, String, String)}, this waits for a
+     * request in flight to the same destination to complete if needed.
+     */
+    void sendUpload(byte[] jsonPayload, String url) throws RequestFailedException {
+        await(sendRequest(jsonPayload, url, POST, agentStartupConfiguration.getHttpRequestTimeout(),
+                TimeUnit.MILLISECONDS, true));
+    }
+
+    private String await(Future<String> response) throws RequestFailedException {
+        try {
+            return response.get();
+        } catch (InterruptedException e) {
+            response.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new RequestFailedException(e);
+        } catch (ExecutionException e) {
+            throw (RequestFailedException) e.getCause();
+        }
+    }
+
+    /**
+     * Send a HTTP request without waiting for its response, using the
+     * configured request timeout.
+     * @see #sendHttpRequestAsync(String, String, String, long, TimeUnit)
+     */
+    public Future<String> sendHttpRequestAsync(String jsonPayload, String url, String requestType) {
+        return sendHttpRequestAsync(jsonPayload, url, requestType,
+                agentStartupConfiguration.getHttpRequestTimeout(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Send a HTTP request without waiting for its response. At most
+     * {@code HTTP_MAX_REQUESTS_PER_DESTINATION} requests may be in flight to
+     * the same host and port at a time. Requests beyond that limit fail
+     * immediately rather than queueing, unlike those sent with
+     * {@link #sendHttpRequest(String, String, String)}.
+     * @param jsonPayload The payload to send, or null if no payload
+     * @param url The complete url to send to
+     * @param requestType The HTTP request type: GET, PUT, POST or DELETE
+     * @param timeout The time after which the request is aborted
+     * @param unit The unit of {@code timeout}
+     * @return A future for the returned body for GET requests, {@code null}
+     *         for other requests. If the request fails, {@link Future#get()}
+     *         throws an {@link ExecutionException} caused by a
+     *         {@link RequestFailedException}.
+     */
+    public Future<String> sendHttpRequestAsync(String jsonPayload, String url, String requestType,
+            long timeout, TimeUnit unit) {
+        byte[] body = jsonPayload == null ? null : jsonPayload.getBytes(StandardCharsets.UTF_8);
+        return sendRequest(body, url, requestType, timeout, unit, false);
+    }
+
+    /**
+     * @param waitForPermit whether to wait up to {@code timeout} for a
+     *        request in flight to the same destination to complete, rather
+     *        than fail right away, if there are too many of them. Callers
+     *        that do not wait also do not block on acquiring a Keycloak
+     *        token; the request is then sent once the token is available.
+     */
+    private Future<String> sendRequest(byte[] jsonPayload, String url, String requestType,
+            long timeout, TimeUnit unit, boolean waitForPermit) {
         // TODO: refactor agent pass around HttpMethod enum instead of string - it's faster and takes less space.
-        HttpMethod requestMethod = HttpMethod.valueOf(requestType);
-        Request request = client.newRequest(url);
-        if (jsonPayload != null) {
-            request.content(new StringContentProvider(jsonPayload), "application/json");
+        final HttpMethod requestMethod = HttpMethod.valueOf(requestType);
+        final Request request = client.newRequest(url);
+        final ResponseFuture future = new ResponseFuture(request);
+        final Semaphore inFlight = getInFlightPermits(url);
+        try {
+            boolean acquired = waitForPermit ? inFlight.tryAcquire(timeout, unit) : inFlight.tryAcquire();
+            if (!acquired) {
+                future.fail(new RequestFailedException(RequestFailedException.UNKNOWN_RESPONSE_CODE,
+                        "Too many requests in flight to " + url));
+                return future;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.fail(new RequestFailedException(e));
+            return future;
         }
         request.method(requestMethod);
+        request.timeout(timeout, unit);
 
         try {
-            if (agentStartupConfiguration.isKeycloakEnabled()) {
-                request.header("Authorization", "Bearer " + getAccessToken());
+            if (jsonPayload != null) {
+                payloadEncoder.setContent(request, jsonPayload);
             }
-            ContentResponse response =  request.send();
-            int status = response.getStatus();
-            if (status != HttpStatus.OK_200) {
-                throw new RequestFailedException(status, "Request to gateway failed. Reason: " + response.getReason());
+        } catch (IOException e) {
+            inFlight.release();
+            future.fail(new RequestFailedException(e));
+            return future;
+        }
+        if (!agentStartupConfiguration.isKeycloakEnabled()) {
+            send(request, requestMethod, inFlight, future);
+        } else if (waitForPermit || getUnexpiredKeycloakToken() != null) {
+            sendAuthorized(request, requestMethod, inFlight, future);
+        } else {
+            try {
+                keycloakExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        sendAuthorized(request, requestMethod, inFlight, future);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                inFlight.release();
+                future.fail(new RequestFailedException(e));
             }
-            if (requestMethod == HttpMethod.GET) {
-                return response.getContentAsString();
-            } else {
-                return null;
+        }
+        return future;
+    }
+
+    private void sendAuthorized(Request request, HttpMethod requestMethod, Semaphore inFlight,
+            ResponseFuture future) {
+        try {
+            request.header("Authorization", "Bearer " + getAccessToken());
+        } catch (IOException e) {
+            inFlight.release();
+            future.fail(new RequestFailedException(e));
+            return;
+        }
+        send(request, requestMethod, inFlight, future);
+    }
+
+    private void send(Request request, final HttpMethod requestMethod, final Semaphore inFlight,
+            final ResponseFuture future) {
+        request.send(new BufferingResponseListener() {
+            @Override
+            public void onComplete(Result result) {
+                inFlight.release();
+                if (result.isFailed()) {
+                    future.fail(new RequestFailedException(result.getFailure()));
+                    return;
+                }
+                Response response = result.getResponse();
+                int status = response.getStatus();
+                if (status != HttpStatus.OK_200) {
+                    future.fail(new RequestFailedException(status, "Request to gateway failed. Reason: " + response.getReason()));
+                } else if (requestMethod == HttpMethod.GET) {
+                    future.complete(getContentAsString());
+                } else {
+                    future.complete(null);
+                }
             }
-        } catch (InterruptedException | TimeoutException | IOException | ExecutionException e) {
-            throw new RequestFailedException(e);
+        });
+    }
+
+    private Semaphore getInFlightPermits(String url) {
+        String destination = getDestination(url);
+        Semaphore permits = inFlightPermits.get(destination);
+        if (permits == null) {
+            permits = new Semaphore(agentStartupConfiguration.getHttpMaxRequestsPerDestination());
+            Semaphore existing = inFlightPermits.putIfAbsent(destination, permits);
+            if (existing != null) {
+                permits = existing;
+            }
+        }
+        return permits;
+    }
+
+    private static String getDestination(String url) {
+        try {
+            URI uri = new URI(url);
+            return uri.getScheme() + "://" + uri.getHost() + ":" + uri.getPort();
+        } catch (URISyntaxException e) {
+            return url;
         }
     }
 
+    /**
+     * @return the current Keycloak token, or {@code null} if there is none
+     *         yet or it has expired
+     */
+    private KeycloakAccessToken getUnexpiredKeycloakToken() {
+        KeycloakAccessToken token = keycloakAccessToken.get();
+        if (token == null || isKeycloakTokenExpired(token)) {
+            return null;
+        }
+        return token;
+    }
+
+    /**
+     * Returns the current Keycloak access token, acquiring or refreshing it
+     * first if needed. This blocks on Keycloak in that case.
+     */
     private String getAccessToken() throws IOException {
-        if (keycloakAccessToken == null) {
-            keycloakAccessToken = acquireKeycloakToken();
-        } else if (isKeycloakTokenExpired()) {
-            logger.log(Level.FINE, "Keycloak Token expired attempting to reacquire via refresh_token");
-            keycloakAccessToken = refreshKeycloakToken();
-
-            if (keycloakAccessToken == null) {
-                logger.log(Level.WARNING, "Unable to refresh Keycloak token, attempting to acquire new token");
-                keycloakAccessToken = acquireKeycloakToken();
-            }
+        KeycloakAccessToken token = getUnexpiredKeycloakToken();
+        if (token != null) {
+            return token.getAccessToken();
+        }
+        synchronized (keycloakTokenLock) {
+            // another thread may have replaced the token in the meantime
+            token = keycloakAccessToken.get();
+            if (token == null) {
+                token = acquireKeycloakToken();
+            } else if (isKeycloakTokenExpired(token)) {
+                logger.log(Level.FINE, "Keycloak Token expired attempting to reacquire via refresh_token");
+                KeycloakAccessToken expired = token;
+                token = refreshKeycloakToken(expired);
+
+                if (token == null) {
+                    logger.log(Level.WARNING, "Unable to refresh Keycloak token, attempting to acquire new token");
+                    token = acquireKeycloakToken();
+                }
 
-            if (keycloakAccessToken == null) {
-                logger.log(Level.SEVERE, "Unable to reacquire KeycloakToken.");
-                throw new IOException("Keycloak token expired and attempt to refresh and reacquire Keycloak token failed.");
+                if (token == null) {
+                    logger.log(Level.SEVERE, "Unable to reacquire KeycloakToken.");
+                    throw new IOException("Keycloak token expired and attempt to refresh and reacquire Keycloak token failed.");
+                }
             }
+            if (token == null) {
+                throw new IOException("Unable to acquire Keycloak token.");
+            }
+            keycloakAccessToken.set(token);
         }
 
-        return keycloakAccessToken.getAccessToken();
+        return token.getAccessToken();
     }
 
-    private boolean isKeycloakTokenExpired() {
-        return System.nanoTime() > TimeUnit.NANOSECONDS.convert(keycloakAccessToken.getExpiresIn(), TimeUnit.SECONDS) + keycloakAccessToken.getAcquireTime();
+    private static boolean isKeycloakTokenExpired(KeycloakAccessToken token) {
+        return System.nanoTime() > TimeUnit.NANOSECONDS.convert(token.getExpiresIn(), TimeUnit.SECONDS) + token.getAcquireTime();
     }
 
     private KeycloakAccessToken acquireKeycloakToken() {
         return requestKeycloakToken(getKeycloakAccessPayload());
     }
 
-    private KeycloakAccessToken refreshKeycloakToken() {
-        return requestKeycloakToken(getKeycloakRefreshPayload());
+    private KeycloakAccessToken refreshKeycloakToken(KeycloakAccessToken expired) {
+        return requestKeycloakToken(getKeycloakRefreshPayload(expired));
     }
 
     private KeycloakAccessToken requestKeycloakToken(String payload) {
@@ -197,11 +514,11 @@ public class HttpRequestService {
 
                 String content = response.getContentAsString();
 
-                keycloakAccessToken = gson.fromJson(content, KeycloakAccessToken.class);
-                keycloakAccessToken.setAcquireTime(System.nanoTime());
+                KeycloakAccessToken token = gson.fromJson(content, KeycloakAccessToken.class);
+                token.setAcquireTime(System.nanoTime());
 
                 logger.log(Level.FINE, "Keycloak Token acquired");
-                return keycloakAccessToken;
+                return token;
             } else {
                 logger.log(Level.WARNING, "Failed to acquire Keycloak token: " + response.getStatus() + " " + response.getReason());
             }
@@ -217,9 +534,9 @@ public class HttpRequestService {
                 "&password=" + agentStartupConfiguration.getKeycloakPassword();
     }
 
-    private String getKeycloakRefreshPayload() {
+    private String getKeycloakRefreshPayload(KeycloakAccessToken expired) {
         return "grant_type=refresh_token&client_id=" + agentStartupConfiguration.getKeycloakClient() +
-                "&refresh_token=" + keycloakAccessToken.getRefreshToken();
+                "&refresh_token=" + expired.getRefreshToken();
     }
     
     static class HttpClientCreator {
@@ -229,6 +546,41 @@ public class HttpRequestService {
         }
 
     }
+
+    static class KeycloakThreadFactory implements ThreadFactory {
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "HttpRequestService-keycloak");
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
+    static class BatchingUploaderCreator {
+
+        private static final int MAX_SPOOL_SEGMENT_SIZE = 8 * 1024 * 1024;
+        private static final int MIN_SPOOL_SEGMENT_SIZE = 64 * 1024;
+
+        BatchingUploader create(BatchingUploader.Sender sender, AgentStartupConfiguration config, File spoolDirectory) {
+            Clock clock = new SystemClock();
+            UploadSpool spool = null;
+            if (spoolDirectory != null) {
+                long maxSize = config.getUploadSpoolMaxSize();
+                int segmentSize = (int) Math.max(MIN_SPOOL_SEGMENT_SIZE, Math.min(MAX_SPOOL_SEGMENT_SIZE, maxSize / 4));
+                try {
+                    spool = UploadSpool.open(spoolDirectory, segmentSize, maxSize, clock);
+                } catch (IOException e) {
+                    logger.log(Level.WARNING, "Unable to open upload spool in " + spoolDirectory + ". Spooling disabled.", e);
+                }
+            }
+            return new BatchingUploader(sender,
+                    Executors.newSingleThreadScheduledExecutor(new BatchingUploader.UploaderThreadFactory()),
+                    clock, config.getUploadQueueCapacity(), config.getUploadBatchSize(),
+                    config.getUploadFlushInterval(), spool, config.getUploadSpoolReplayRate());
+        }
+
+    }
     
     @SuppressWarnings("serial")
     public static class RequestFailedException extends Exception {
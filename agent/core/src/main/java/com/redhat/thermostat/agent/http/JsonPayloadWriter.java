@@ -0,0 +1,360 @@
+/*
+ * Copyright 2012-2017 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+package com.redhat.thermostat.agent.http;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Writes JSON straight into a growable UTF-8 byte buffer which can be reused
+ * for many payloads. Unlike serializing through a Gson {@code TypeAdapter},
+ * no intermediate strings are created: text is encoded as it is written,
+ * and integers are formatted digit by digit into the buffer.
+ * <p>
+ * Commas are inserted automatically, but the writer does not otherwise check
+ * that calls form a well-formed document. Callers are expected to balance
+ * {@code begin}/{@code end} calls and to write a name before each value in
+ * an object.
+ * <p>
+ * Instances are not thread safe. {@link #obtain()} hands out one pooled
+ * instance per thread.
+ */
+public final class JsonPayloadWriter {
+
+    private static final int INITIAL_CAPACITY = 1024;
+    // Larger buffers are released after use rather than kept per thread
+    private static final int MAX_RETAINED_CAPACITY = 256 * 1024;
+
+    private static final byte[] NULL = ascii("null");
+    private static final byte[] TRUE = ascii("true");
+    private static final byte[] FALSE = ascii("false");
+    private static final byte[] MIN_LONG = ascii(Long.toString(Long.MIN_VALUE));
+    private static final byte[] NUMBER_LONG_START = ascii("{\"$numberLong\":\"");
+    private static final byte[] NUMBER_LONG_END = ascii("\"}");
+    private static final byte[] HEX_DIGITS = ascii("0123456789abcdef");
+    // Double.toString() uses plain notation below this magnitude
+    private static final double MAX_PLAIN_DOUBLE = 1e7;
+
+    private static final ThreadLocal<JsonPayloadWriter> pool = new ThreadLocal<JsonPayloadWriter>() {
+        @Override
+        protected JsonPayloadWriter initialValue() {
+            return new JsonPayloadWriter();
+        }
+    };
+
+    private byte[] buffer;
+    private int count;
+    private final byte[] digits = new byte[19];
+
+    public JsonPayloadWriter() {
+        this(INITIAL_CAPACITY);
+    }
+
+    public JsonPayloadWriter(int initialCapacity) {
+        buffer = new byte[initialCapacity];
+    }
+
+    /**
+     * @return the empty writer pooled for the calling thread. Its content is
+     * only valid until the next call to this method on the same thread.
+     */
+    public static JsonPayloadWriter obtain() {
+        JsonPayloadWriter writer = pool.get();
+        writer.reset();
+        return writer;
+    }
+
+    public JsonPayloadWriter beginArray() {
+        separate();
+        append('[');
+        return this;
+    }
+
+    public JsonPayloadWriter endArray() {
+        append(']');
+        return this;
+    }
+
+    public JsonPayloadWriter beginObject() {
+        separate();
+        append('{');
+        return this;
+    }
+
+    public JsonPayloadWriter endObject() {
+        append('}');
+        return this;
+    }
+
+    public JsonPayloadWriter name(String name) {
+        separate();
+        writeString(name);
+        append(':');
+        return this;
+    }
+
+    public JsonPayloadWriter value(String value) {
+        if (value == null) {
+            return nullValue();
+        }
+        separate();
+        writeString(value);
+        return this;
+    }
+
+    public JsonPayloadWriter value(boolean value) {
+        separate();
+        append(value ? TRUE : FALSE);
+        return this;
+    }
+
+    public JsonPayloadWriter value(long value) {
+        separate();
+        writeLong(value);
+        return this;
+    }
+
+    /**
+     * Writes a double in the same notation as {@link Double#toString(double)}.
+     * Only whole numbers of moderate magnitude are formatted without
+     * allocating.
+     *
+     * @throws IllegalArgumentException if the value is NaN or infinite
+     */
+    public JsonPayloadWriter value(double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            throw new IllegalArgumentException("Numeric values must be finite, but was " + value);
+        }
+        separate();
+        long whole = (long) value;
+        if (whole == value && Math.abs(value) < MAX_PLAIN_DOUBLE && (whole != 0 || 1 / value > 0)) {
+            writeLong(whole);
+            append('.');
+            append('0');
+        } else {
+            append(ascii(Double.toString(value)));
+        }
+        return this;
+    }
+
+    public JsonPayloadWriter nullValue() {
+        separate();
+        append(NULL);
+        return this;
+    }
+
+    /**
+     * Writes the MongoDB representation of a 64-bit integer, an object of the
+     * form <code>{"$numberLong":"123"}</code>.
+     */
+    public JsonPayloadWriter numberLong(long value) {
+        separate();
+        append(NUMBER_LONG_START);
+        writeLong(value);
+        append(NUMBER_LONG_END);
+        return this;
+    }
+
+    /**
+     * @return the number of bytes written so far
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * @return a copy of the bytes written so far
+     */
+    public byte[] toByteArray() {
+        return Arrays.copyOf(buffer, count);
+    }
+
+    public void writeTo(OutputStream out) throws IOException {
+        out.write(buffer, 0, count);
+    }
+
+    /**
+     * Discards everything written so far.
+     */
+    public void reset() {
+        count = 0;
+        if (buffer.length > MAX_RETAINED_CAPACITY) {
+            buffer = new byte[INITIAL_CAPACITY];
+        }
+    }
+
+    @Override
+    public String toString() {
+        return new String(buffer, 0, count, StandardCharsets.UTF_8);
+    }
+
+    // Adds a comma unless this is the first value in an array, object or
+    // the whole document, or the value of a name.
+    private void separate() {
+        if (count == 0) {
+            return;
+        }
+        byte last = buffer[count - 1];
+        if (last != '[' && last != '{' && last != ':') {
+            append(',');
+        }
+    }
+
+    private void writeLong(long value) {
+        if (value == Long.MIN_VALUE) {
+            append(MIN_LONG);
+            return;
+        }
+        if (value < 0) {
+            append('-');
+            value = -value;
+        }
+        int position = digits.length;
+        do {
+            digits[--position] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value != 0);
+        ensureCapacity(digits.length - position);
+        System.arraycopy(digits, position, buffer, count, digits.length - position);
+        count += digits.length - position;
+    }
+
+    // Escapes the same characters as Gson's JsonWriter so that both produce
+    // identical output.
+    private void writeString(String value) {
+        // Worst case is 6 bytes per char for unicode escapes
+        ensureCapacity(2 + 6 * value.length());
+        byte[] buf = buffer;
+        int pos = count;
+        buf[pos++] = '"';
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                if (c == '"' || c == '\\') {
+                    buf[pos++] = '\\';
+                    buf[pos++] = (byte) c;
+                } else if (c < 0x20) {
+                    pos = writeControl(buf, pos, c);
+                } else {
+                    buf[pos++] = (byte) c;
+                }
+            } else if (c < 0x800) {
+                buf[pos++] = (byte) (0xc0 | (c >> 6));
+                buf[pos++] = (byte) (0x80 | (c & 0x3f));
+            } else if (c == '\u2028' || c == '\u2029') {
+                pos = writeUnicodeEscape(buf, pos, c);
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+                    && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                buf[pos++] = (byte) (0xf0 | (codePoint >> 18));
+                buf[pos++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+                buf[pos++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+                buf[pos++] = (byte) (0x80 | (codePoint & 0x3f));
+            } else if (Character.isSurrogate(c)) {
+                // Unpaired surrogates can not be encoded, as in String.getBytes()
+                buf[pos++] = '?';
+            } else {
+                buf[pos++] = (byte) (0xe0 | (c >> 12));
+                buf[pos++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                buf[pos++] = (byte) (0x80 | (c & 0x3f));
+            }
+        }
+        buf[pos++] = '"';
+        count = pos;
+    }
+
+    private static int writeControl(byte[] buf, int pos, char c) {
+        char escape;
+        switch (c) {
+        case '\t':
+            escape = 't';
+            break;
+        case '\b':
+            escape = 'b';
+            break;
+        case '\n':
+            escape = 'n';
+            break;
+        case '\r':
+            escape = 'r';
+            break;
+        case '\f':
+            escape = 'f';
+            break;
+        default:
+            return writeUnicodeEscape(buf, pos, c);
+        }
+        buf[pos++] = '\\';
+        buf[pos++] = (byte) escape;
+        return pos;
+    }
+
+    private static int writeUnicodeEscape(byte[] buf, int pos, char c) {
+        buf[pos++] = '\\';
+        buf[pos++] = 'u';
+        buf[pos++] = HEX_DIGITS[(c >> 12) & 0xf];
+        buf[pos++] = HEX_DIGITS[(c >> 8) & 0xf];
+        buf[pos++] = HEX_DIGITS[(c >> 4) & 0xf];
+        buf[pos++] = HEX_DIGITS[c & 0xf];
+        return pos;
+    }
+
+    private void append(char c) {
+        ensureCapacity(1);
+        buffer[count++] = (byte) c;
+    }
+
+    private void append(byte[] bytes) {
+        ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, buffer, count, bytes.length);
+        count += bytes.length;
+    }
+
+    private void ensureCapacity(int additional) {
+        int required = count + additional;
+        if (required > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(required, buffer.length * 2));
+        }
+    }
+
+    private static byte[] ascii(String s) {
+        return s.getBytes(StandardCharsets.US_ASCII);
+    }
+}
+
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2012-2017 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+package com.redhat.thermostat.agent.http;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.eclipse.jetty.client.api.Request;
+import org.eclipse.jetty.client.util.BytesContentProvider;
+import org.eclipse.jetty.http.HttpHeader;
+
+/**
+ * Sets the JSON body of requests to the web gateway, compressed as
+ * configured in the agent configuration.
+ */
+class PayloadEncoder {
+
+    static final String JSON_CONTENT_TYPE = "application/json";
+    // Bodies smaller than this are not worth compressing
+    static final int MIN_COMPRESSION_SIZE = 1024;
+
+    enum Compression {
+        NONE(null),
+        GZIP("gzip"),
+        DEFLATE("deflate"),
+        ;
+
+        private final String contentEncoding;
+
+        private Compression(String contentEncoding) {
+            this.contentEncoding = contentEncoding;
+        }
+
+        static Compression fromConfig(String value) {
+            return value == null ? NONE : valueOf(value.toUpperCase());
+        }
+    }
+
+    private final Compression compression;
+
+    /**
+     * @param compression how to compress request bodies
+     */
+    PayloadEncoder(Compression compression) {
+        this.compression = compression;
+    }
+
+    /**
+     * @param jsonPayload the UTF-8 encoded JSON body
+     */
+    void setContent(Request request, byte[] jsonPayload) throws IOException {
+        byte[] body = jsonPayload;
+        if (compression != Compression.NONE && body.length >= MIN_COMPRESSION_SIZE) {
+            body = compress(body);
+            request.header(HttpHeader.CONTENT_ENCODING, compression.contentEncoding);
+        }
+        request.content(new BytesContentProvider(body), JSON_CONTENT_TYPE);
+    }
+
+    byte[] compress(byte[] body) throws IOException {
+        // Repetitive JSON typically shrinks to well under a quarter
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(body.length / 4);
+        try (OutputStream out = compression == Compression.GZIP ? new GZIPOutputStream(bytes) : new DeflaterOutputStream(bytes)) {
+            out.write(body);
+        }
+        return bytes.toByteArray();
+    }
+}
+
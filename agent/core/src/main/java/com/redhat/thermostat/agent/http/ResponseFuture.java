@@ -0,0 +1,139 @@
+/*
+ * Copyright 2012-2017 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+package com.redhat.thermostat.agent.http;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.eclipse.jetty.client.api.Request;
+
+import com.redhat.thermostat.agent.http.HttpRequestService.RequestFailedException;
+
+/**
+ * The pending result of an asynchronous request to the web gateway. Failed
+ * requests complete with an {@link ExecutionException} whose cause is a
+ * {@link RequestFailedException}.
+ */
+class ResponseFuture implements Future<String> {
+
+    private final Request request;
+    private final CountDownLatch done = new CountDownLatch(1);
+    // Guarded by this
+    private boolean completed;
+    private boolean cancelled;
+    private String result;
+    private RequestFailedException failure;
+
+    ResponseFuture(Request request) {
+        this.request = request;
+    }
+
+    void complete(String response) {
+        synchronized (this) {
+            if (completed) {
+                return;
+            }
+            completed = true;
+            result = response;
+        }
+        done.countDown();
+    }
+
+    void fail(RequestFailedException e) {
+        synchronized (this) {
+            if (completed) {
+                return;
+            }
+            completed = true;
+            failure = e;
+        }
+        done.countDown();
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        synchronized (this) {
+            if (completed) {
+                return false;
+            }
+            completed = true;
+            cancelled = true;
+        }
+        done.countDown();
+        request.abort(new CancellationException());
+        return true;
+    }
+
+    @Override
+    public synchronized boolean isCancelled() {
+        return cancelled;
+    }
+
+    @Override
+    public synchronized boolean isDone() {
+        return completed;
+    }
+
+    @Override
+    public String get() throws InterruptedException, ExecutionException {
+        done.await();
+        return getResult();
+    }
+
+    @Override
+    public String get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        if (!done.await(timeout, unit)) {
+            throw new TimeoutException();
+        }
+        return getResult();
+    }
+
+    private synchronized String getResult() throws ExecutionException {
+        if (cancelled) {
+            throw new CancellationException();
+        }
+        if (failure != null) {
+            throw new ExecutionException(failure);
+        }
+        return result;
+    }
+}
+
@@ -0,0 +1,542 @@
+/*
+ * Copyright 2012-2017 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+package com.redhat.thermostat.agent.http;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+import com.redhat.thermostat.common.Clock;
+import com.redhat.thermostat.common.utils.LoggingUtils;
+
+/**
+ * An append-only log of payloads which could not be uploaded to the web
+ * gateway, kept on disk so that they survive gateway outages and agent
+ * restarts.
+ * <p>
+ * The log is split into fixed-size, memory-mapped segment files. Each record
+ * is laid out as:
+ * <pre>
+ * int    length     (of url length + url + payload; 0 marks the end of the
+ *                    segment's records, negative once the record is replayed)
+ * int    checksum   (CRC32 of url length + url + payload)
+ * long   timestamp  (real time in milliseconds when the record was spooled)
+ * short  url length
+ * byte[] url        (UTF-8)
+ * byte[] payload    (UTF-8)
+ * </pre>
+ * The length is written last, so a record torn by a crash reads as the end
+ * of the segment. On opening, segments are scanned and everything from the
+ * first record with a bad length or checksum onward is discarded.
+ * <p>
+ * When appending would exceed the maximum size, the oldest segment is
+ * deleted along with any records it still held.
+ * <p>
+ * Appended records are forced to disk once {@value #SYNC_BYTES} bytes have
+ * accumulated, or at the first {@link #syncIfDue()} after
+ * {@value #SYNC_INTERVAL_MILLIS} ms. Until then they only survive a crash of
+ * the agent, not of the host. Replayed markers are never forced, so records
+ * may be replayed twice after a crash of the host.
+ */
+class UploadSpool {
+
+    private static final Logger logger = LoggingUtils.getLogger(UploadSpool.class);
+
+    static final int HEADER_SIZE = 4 + 4 + 8;
+    private static final int CHECKSUM_OFFSET = 4;
+    private static final int TIMESTAMP_OFFSET = 8;
+    private static final String SEGMENT_PREFIX = "spool-";
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final Pattern SEGMENT_NAME = Pattern.compile("spool-(\\d+)\\.seg");
+    static final int SYNC_BYTES = 256 * 1024;
+    static final long SYNC_INTERVAL_MILLIS = 1000;
+
+    private final File directory;
+    private final int segmentSize;
+    private final int maxSegments;
+    private final Clock clock;
+
+    // Oldest first
+    private final LinkedList<Segment> segments = new LinkedList<>();
+    private long nextSequence;
+    private long pendingRecords;
+    private long droppedRecords;
+    // Appended to the newest segment since it was last forced to disk
+    private int unsyncedBytes;
+    private long firstUnsyncedNanos;
+
+    private UploadSpool(File directory, int segmentSize, int maxSegments, Clock clock) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.maxSegments = maxSegments;
+        this.clock = clock;
+    }
+
+    /**
+     * Opens the spool in the given directory, recovering any segments left
+     * by a previous run.
+     *
+     * @param maxBytes the maximum disk space the spool may use
+     */
+    static UploadSpool open(File directory, int segmentSize, long maxBytes, Clock clock) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Unable to create spool directory " + directory);
+        }
+        int maxSegments = (int) Math.max(2, maxBytes / segmentSize);
+        UploadSpool spool = new UploadSpool(directory, segmentSize, maxSegments, clock);
+        spool.recover();
+        return spool;
+    }
+
+    private void recover() throws IOException {
+        File[] files = directory.listFiles();
+        List<Long> sequences = new ArrayList<>();
+        if (files != null) {
+            for (File file : files) {
+                Matcher matcher = SEGMENT_NAME.matcher(file.getName());
+                if (matcher.matches()) {
+                    sequences.add(Long.parseLong(matcher.group(1)));
+                }
+            }
+        }
+        Collections.sort(sequences);
+        for (long sequence : sequences) {
+            nextSequence = sequence + 1;
+            Segment segment = Segment.map(segmentFile(sequence), 0);
+            segment.recover();
+            if (segment.pending == 0) {
+                // Empty, or fully replayed before the previous shutdown
+                segment.delete();
+                continue;
+            }
+            segments.add(segment);
+            pendingRecords += segment.pending;
+        }
+        // Only the newest segment accepts further records
+        for (int i = 0; i < segments.size() - 1; i++) {
+            segments.get(i).sealed = true;
+        }
+        if (pendingRecords > 0) {
+            logger.log(Level.INFO, "Recovered " + pendingRecords + " spooled payloads from " + directory);
+        }
+    }
+
+    private File segmentFile(long sequence) {
+        return new File(directory, String.format("%s%020d%s", SEGMENT_PREFIX, sequence, SEGMENT_SUFFIX));
+    }
+
+    /**
+     * @return {@code true} if the payload was written to the spool,
+     * {@code false} if it is too large to ever fit into a segment or the
+     * spool could not be written
+     */
+    synchronized boolean append(String url, byte[] payload) {
+        byte[] urlBytes = url.getBytes(StandardCharsets.UTF_8);
+        int bodyLength = 2 + urlBytes.length + payload.length;
+        if (urlBytes.length > Short.MAX_VALUE || HEADER_SIZE + bodyLength > segmentSize) {
+            droppedRecords++;
+            return false;
+        }
+        try {
+            Segment segment = segments.peekLast();
+            if (segment == null || segment.sealed || !segment.fits(bodyLength)) {
+                segment = rotate();
+            }
+            segment.append(urlBytes, payload, clock.getRealTimeMillis());
+            pendingRecords++;
+            if (unsyncedBytes == 0) {
+                firstUnsyncedNanos = clock.getMonotonicTimeNanos();
+            }
+            unsyncedBytes += HEADER_SIZE + bodyLength;
+            if (unsyncedBytes >= SYNC_BYTES) {
+                sync();
+            }
+            return true;
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Failed to write to upload spool " + directory, e);
+            droppedRecords++;
+            return false;
+        }
+    }
+
+    private Segment rotate() throws IOException {
+        Segment current = segments.peekLast();
+        if (current != null) {
+            current.sealed = true;
+            sync();
+        }
+        while (segments.size() >= maxSegments) {
+            Segment oldest = segments.removeFirst();
+            pendingRecords -= oldest.pending;
+            droppedRecords += oldest.pending;
+            logger.log(Level.WARNING, "Upload spool full. Dropped " + oldest.pending + " spooled payloads");
+            oldest.delete();
+        }
+        Segment segment = Segment.map(segmentFile(nextSequence), segmentSize);
+        nextSequence++;
+        segments.add(segment);
+        return segment;
+    }
+
+    /**
+     * Returns up to {@code max} of the oldest records which have not yet
+     * been replayed. The records stay in the spool until passed to
+     * {@link #commit(List)}.
+     */
+    synchronized List<Record> peek(int max) {
+        List<Record> records = new ArrayList<>();
+        for (Segment segment : segments) {
+            if (records.size() >= max) {
+                break;
+            }
+            segment.read(records, max);
+        }
+        return records;
+    }
+
+    /**
+     * Marks records as replayed. Segments with no remaining records are
+     * deleted, except for the segment currently being appended to. Records
+     * of segments which were dropped since they were peeked at are skipped,
+     * as they are already counted as dropped.
+     */
+    synchronized void commit(List<Record> records) {
+        for (Record record : records) {
+            if (record.segment.deleted) {
+                continue;
+            }
+            if (record.segment.markReplayed(record.position)) {
+                pendingRecords--;
+            }
+        }
+        while (!segments.isEmpty()) {
+            Segment oldest = segments.getFirst();
+            if (oldest.pending > 0 || !oldest.sealed) {
+                break;
+            }
+            segments.removeFirst();
+            oldest.delete();
+        }
+    }
+
+    /**
+     * Forces records appended to the spool to disk if the oldest of them
+     * was appended at least {@value #SYNC_INTERVAL_MILLIS} ms ago. Called
+     * periodically by the uploader.
+     */
+    synchronized void syncIfDue() {
+        if (unsyncedBytes > 0 && clock.getMonotonicTimeNanos() - firstUnsyncedNanos
+                >= TimeUnit.MILLISECONDS.toNanos(SYNC_INTERVAL_MILLIS)) {
+            sync();
+        }
+    }
+
+    private void sync() {
+        Segment newest = segments.peekLast();
+        if (newest != null) {
+            newest.buffer.force();
+        }
+        unsyncedBytes = 0;
+    }
+
+    synchronized long getPendingRecords() {
+        return pendingRecords;
+    }
+
+    synchronized long getDroppedRecords() {
+        return droppedRecords;
+    }
+
+    synchronized long getSizeOnDisk() {
+        long size = 0;
+        for (Segment segment : segments) {
+            size += segment.buffer.capacity();
+        }
+        return size;
+    }
+
+    /**
+     * @return the real time in milliseconds at which the oldest record
+     * still waiting for replay was spooled, or -1 if there is none
+     */
+    synchronized long getOldestTimestamp() {
+        for (Segment segment : segments) {
+            long timestamp = segment.oldestPendingTimestamp();
+            if (timestamp >= 0) {
+                return timestamp;
+            }
+        }
+        return -1;
+    }
+
+    synchronized void close() {
+        for (Segment segment : segments) {
+            segment.buffer.force();
+        }
+        unsyncedBytes = 0;
+    }
+
+    /*
+     * For testing purposes only.
+     */
+    synchronized int getUnsyncedBytes() {
+        return unsyncedBytes;
+    }
+
+    static class Record {
+
+        private final Segment segment;
+        private final int position;
+        private final long timestamp;
+        private final String url;
+        private final byte[] payload;
+
+        private Record(Segment segment, int position, long timestamp, String url, byte[] payload) {
+            this.segment = segment;
+            this.position = position;
+            this.timestamp = timestamp;
+            this.url = url;
+            this.payload = payload;
+        }
+
+        long getTimestamp() {
+            return timestamp;
+        }
+
+        String getUrl() {
+            return url;
+        }
+
+        byte[] getPayload() {
+            return payload;
+        }
+    }
+
+    private static class Segment {
+
+        private final File file;
+        private final MappedByteBuffer buffer;
+        private int writePosition;
+        // Position of the first record which may not have been replayed
+        private int readPosition;
+        private int pending;
+        private boolean sealed;
+        private boolean deleted;
+
+        private Segment(File file, MappedByteBuffer buffer) {
+            this.file = file;
+            this.buffer = buffer;
+        }
+
+        /**
+         * Maps a segment file. If {@code size} is 0 the existing length of the
+         * file is used.
+         */
+        static Segment map(File file, int size) throws IOException {
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw");
+                    FileChannel channel = raf.getChannel()) {
+                long length = size > 0 ? size : channel.size();
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, length);
+                return new Segment(file, buffer);
+            }
+        }
+
+        /**
+         * Scans the records of a segment written by a previous run, and
+         * discards everything from the first damaged record onward.
+         */
+        void recover() {
+            int position = 0;
+            boolean damaged = false;
+            while (position + HEADER_SIZE <= buffer.capacity()) {
+                int length = buffer.getInt(position);
+                if (length == 0) {
+                    break;
+                }
+                int bodyLength = Math.abs(length);
+                if (length == Integer.MIN_VALUE || bodyLength > buffer.capacity() - position - HEADER_SIZE
+                        || buffer.getInt(position + CHECKSUM_OFFSET) != checksum(position + HEADER_SIZE, bodyLength)) {
+                    damaged = true;
+                    break;
+                }
+                if (length > 0) {
+                    if (pending == 0) {
+                        readPosition = position;
+                    }
+                    pending++;
+                }
+                position += HEADER_SIZE + bodyLength;
+            }
+            if (pending == 0) {
+                readPosition = position;
+            }
+            writePosition = position;
+            if (damaged) {
+                logger.log(Level.WARNING, "Discarding damaged records at offset " + position + " of " + file);
+                for (int i = position; i < buffer.capacity(); i++) {
+                    buffer.put(i, (byte) 0);
+                }
+            }
+        }
+
+        boolean fits(int bodyLength) {
+            return writePosition + HEADER_SIZE + bodyLength <= buffer.capacity();
+        }
+
+        void append(byte[] url, byte[] payload, long timestamp) {
+            int bodyStart = writePosition + HEADER_SIZE;
+            buffer.position(bodyStart);
+            buffer.putShort((short) url.length);
+            buffer.put(url);
+            buffer.put(payload);
+            int bodyLength = 2 + url.length + payload.length;
+            buffer.putLong(writePosition + TIMESTAMP_OFFSET, timestamp);
+            buffer.putInt(writePosition + CHECKSUM_OFFSET, checksum(bodyStart, bodyLength));
+            // Written last: makes the record visible
+            buffer.putInt(writePosition, bodyLength);
+            if (pending == 0) {
+                readPosition = writePosition;
+            }
+            writePosition = bodyStart + bodyLength;
+            pending++;
+        }
+
+        void read(List<Record> records, int max) {
+            int position = readPosition;
+            while (records.size() < max && position < writePosition) {
+                int length = buffer.getInt(position);
+                int bodyLength = Math.abs(length);
+                if (length > 0) {
+                    records.add(readRecord(position, bodyLength));
+                }
+                position += HEADER_SIZE + bodyLength;
+            }
+        }
+
+        private Record readRecord(int position, int bodyLength) {
+            int bodyStart = position + HEADER_SIZE;
+            int urlLength = buffer.getShort(bodyStart);
+            byte[] url = new byte[urlLength];
+            byte[] payload = new byte[bodyLength - 2 - urlLength];
+            buffer.position(bodyStart + 2);
+            buffer.get(url);
+            buffer.get(payload);
+            long timestamp = buffer.getLong(position + TIMESTAMP_OFFSET);
+            return new Record(this, position, timestamp, new String(url, StandardCharsets.UTF_8), payload);
+        }
+
+        boolean markReplayed(int position) {
+            int length = buffer.getInt(position);
+            if (length <= 0) {
+                return false;
+            }
+            buffer.putInt(position, -length);
+            pending--;
+            // Skip over replayed records at the head of the segment
+            while (readPosition < writePosition && buffer.getInt(readPosition) < 0) {
+                readPosition += HEADER_SIZE - buffer.getInt(readPosition);
+            }
+            return true;
+        }
+
+        long oldestPendingTimestamp() {
+            if (pending == 0) {
+                return -1;
+            }
+            return buffer.getLong(readPosition + TIMESTAMP_OFFSET);
+        }
+
+        private int checksum(int start, int length) {
+            byte[] body = new byte[length];
+            ByteBuffer view = buffer.duplicate();
+            view.position(start);
+            view.get(body);
+            CRC32 crc = new CRC32();
+            crc.update(body);
+            return (int) crc.getValue();
+        }
+
+        /**
+         * Unmaps and deletes the segment. The buffer must not be used
+         * afterwards.
+         */
+        void delete() {
+            deleted = true;
+            unmap(buffer);
+            if (!file.delete()) {
+                logger.log(Level.WARNING, "Unable to delete spool segment " + file);
+            }
+        }
+
+        /**
+         * Releases the mapping right away rather than when the buffer is
+         * garbage collected, so that the disk space of deleted segments is
+         * freed. Falls back to the garbage collector where the buffer's
+         * cleaner is not accessible.
+         */
+        private static void unmap(MappedByteBuffer buffer) {
+            try {
+                Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+                cleanerMethod.setAccessible(true);
+                Object cleaner = cleanerMethod.invoke(buffer);
+                if (cleaner != null) {
+                    Method clean = cleaner.getClass().getMethod("clean");
+                    clean.setAccessible(true);
+                    clean.invoke(cleaner);
+                }
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                logger.log(Level.FINE, "Unable to unmap spool segment, leaving it to the garbage collector", e);
+            }
+        }
+    }
+}
+
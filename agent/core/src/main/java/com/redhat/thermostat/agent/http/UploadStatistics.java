@@ -0,0 +1,203 @@
+/*
+ * Copyright 2012-2017 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+package com.redhat.thermostat.agent.http;
+
+/**
+ * An immutable snapshot of the counters maintained for payloads queued
+ * with {@link HttpRequestService#queueHttpPost(String, String)}.
+ */
+public class UploadStatistics {
+
+    private final int queueDepth;
+    private final long acceptedPayloads;
+    private final long rejectedPayloads;
+    private final long failedRequests;
+    private final long flushedBatches;
+    private final int lastBatchSize;
+    private final int maxBatchSize;
+    private final long lastFlushLatencyNanos;
+    private final long totalFlushLatencyNanos;
+    private final long spooledPayloads;
+    private final long replayedPayloads;
+    private final long spoolPendingPayloads;
+    private final long spoolSizeBytes;
+    private final long spoolDroppedPayloads;
+    private final long spoolLagMillis;
+
+    UploadStatistics(int queueDepth, long acceptedPayloads, long rejectedPayloads, long failedRequests,
+            long flushedBatches, int lastBatchSize, int maxBatchSize, long lastFlushLatencyNanos,
+            long totalFlushLatencyNanos, long spooledPayloads, long replayedPayloads,
+            long spoolPendingPayloads, long spoolSizeBytes, long spoolDroppedPayloads, long spoolLagMillis) {
+        this.queueDepth = queueDepth;
+        this.acceptedPayloads = acceptedPayloads;
+        this.rejectedPayloads = rejectedPayloads;
+        this.failedRequests = failedRequests;
+        this.flushedBatches = flushedBatches;
+        this.lastBatchSize = lastBatchSize;
+        this.maxBatchSize = maxBatchSize;
+        this.lastFlushLatencyNanos = lastFlushLatencyNanos;
+        this.totalFlushLatencyNanos = totalFlushLatencyNanos;
+        this.spooledPayloads = spooledPayloads;
+        this.replayedPayloads = replayedPayloads;
+        this.spoolPendingPayloads = spoolPendingPayloads;
+        this.spoolSizeBytes = spoolSizeBytes;
+        this.spoolDroppedPayloads = spoolDroppedPayloads;
+        this.spoolLagMillis = spoolLagMillis;
+    }
+
+    /**
+     * @return the number of payloads currently waiting for upload
+     */
+    public int getQueueDepth() {
+        return queueDepth;
+    }
+
+    /**
+     * @return the number of payloads accepted for upload so far
+     */
+    public long getAcceptedPayloads() {
+        return acceptedPayloads;
+    }
+
+    /**
+     * @return the number of payloads rejected because the queue was full
+     */
+    public long getRejectedPayloads() {
+        return rejectedPayloads;
+    }
+
+    /**
+     * @return the number of requests to the gateway which failed
+     */
+    public long getFailedRequests() {
+        return failedRequests;
+    }
+
+    /**
+     * @return the number of requests sent to the gateway so far
+     */
+    public long getFlushedBatches() {
+        return flushedBatches;
+    }
+
+    /**
+     * @return the number of payloads coalesced into the most recent request
+     */
+    public int getLastBatchSize() {
+        return lastBatchSize;
+    }
+
+    /**
+     * @return the largest number of payloads coalesced into a single request
+     */
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    /**
+     * @return the time in nanoseconds the most recent request took
+     */
+    public long getLastFlushLatencyNanos() {
+        return lastFlushLatencyNanos;
+    }
+
+    /**
+     * @return the average time in nanoseconds a request took, or 0 if no
+     * request has been sent yet
+     */
+    public long getAverageFlushLatencyNanos() {
+        return flushedBatches == 0 ? 0 : totalFlushLatencyNanos / flushedBatches;
+    }
+
+    /**
+     * @return the number of payloads written to the on-disk spool because
+     * they could not be queued or sent
+     */
+    public long getSpooledPayloads() {
+        return spooledPayloads;
+    }
+
+    /**
+     * @return the number of spooled payloads which have since been sent
+     */
+    public long getReplayedPayloads() {
+        return replayedPayloads;
+    }
+
+    /**
+     * @return the number of payloads in the spool waiting to be replayed
+     */
+    public long getSpoolPendingPayloads() {
+        return spoolPendingPayloads;
+    }
+
+    /**
+     * @return the disk space currently used by the spool, in bytes
+     */
+    public long getSpoolSizeBytes() {
+        return spoolSizeBytes;
+    }
+
+    /**
+     * @return the number of spooled payloads discarded to keep the spool
+     * within its size limit
+     */
+    public long getSpoolDroppedPayloads() {
+        return spoolDroppedPayloads;
+    }
+
+    /**
+     * @return how long, in milliseconds, the oldest payload in the spool has
+     * been waiting, or 0 if the spool is empty
+     */
+    public long getSpoolLagMillis() {
+        return spoolLagMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "UploadStatistics [queueDepth=" + queueDepth + ", accepted=" + acceptedPayloads
+                + ", rejected=" + rejectedPayloads + ", failed=" + failedRequests
+                + ", batches=" + flushedBatches + ", lastBatchSize=" + lastBatchSize
+                + ", maxBatchSize=" + maxBatchSize + ", lastFlushLatencyNanos=" + lastFlushLatencyNanos
+                + ", averageFlushLatencyNanos=" + getAverageFlushLatencyNanos()
+                + ", spooled=" + spooledPayloads + ", replayed=" + replayedPayloads
+                + ", spoolPending=" + spoolPendingPayloads + ", spoolSizeBytes=" + spoolSizeBytes
+                + ", spoolDropped=" + spoolDroppedPayloads + ", spoolLagMillis=" + spoolLagMillis + "]";
+    }
+}
+
@@ -44,8 +44,26 @@ import com.redhat.thermostat.annotations.Service;
 @Service
 public interface MXBeanConnectionPool {
 
+    /**
+     * Returns a connection to the JVM with the given pid, attaching to it
+     * first if there is no connection yet. Concurrent callers for the same
+     * pid share a single attach, and callers for other pids are not held up
+     * by it.
+     *
+     * @throws MXBeanConnectionException if attaching fails or times out
+     */
     MXBeanConnection acquire(int pid) throws MXBeanConnectionException;
 
+    /**
+     * Gives up a connection returned by {@link #acquire(int)}. A connection
+     * without users stays open for a grace period, so that it can be
+     * reused, and is closed afterwards.
+     */
     void release(int pid, MXBeanConnection connection) throws MXBeanConnectionException;
 
+    /**
+     * @return a snapshot of the connections and attach latencies of this pool
+     */
+    MXBeanConnectionPoolStatistics getStatistics();
+
 }
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2012-2017 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+package com.redhat.thermostat.agent.utils.management;
+
+/**
+ * An immutable snapshot of the state and counters of a
+ * {@link MXBeanConnectionPool}.
+ */
+public class MXBeanConnectionPoolStatistics {
+
+    private final int activeConnections;
+    private final int idleConnections;
+    private final int pendingAttaches;
+    private final long attaches;
+    private final long failedAttaches;
+    private final long evictions;
+    private final long lastAttachLatencyNanos;
+    private final long totalAttachLatencyNanos;
+    private final long maxAttachLatencyNanos;
+
+    public MXBeanConnectionPoolStatistics(int activeConnections, int idleConnections, int pendingAttaches,
+            long attaches, long failedAttaches, long evictions, long lastAttachLatencyNanos,
+            long totalAttachLatencyNanos, long maxAttachLatencyNanos) {
+        this.activeConnections = activeConnections;
+        this.idleConnections = idleConnections;
+        this.pendingAttaches = pendingAttaches;
+        this.attaches = attaches;
+        this.failedAttaches = failedAttaches;
+        this.evictions = evictions;
+        this.lastAttachLatencyNanos = lastAttachLatencyNanos;
+        this.totalAttachLatencyNanos = totalAttachLatencyNanos;
+        this.maxAttachLatencyNanos = maxAttachLatencyNanos;
+    }
+
+    /**
+     * @return the number of open connections, including idle ones
+     */
+    public int getActiveConnections() {
+        return activeConnections;
+    }
+
+    /**
+     * @return the number of open connections nobody uses, which are closed
+     * once they have been idle for the grace period
+     */
+    public int getIdleConnections() {
+        return idleConnections;
+    }
+
+    /**
+     * @return the number of attaches in progress
+     */
+    public int getPendingAttaches() {
+        return pendingAttaches;
+    }
+
+    /**
+     * @return the number of successful attaches so far
+     */
+    public long getAttaches() {
+        return attaches;
+    }
+
+    /**
+     * @return the number of attaches which failed or timed out
+     */
+    public long getFailedAttaches() {
+        return failedAttaches;
+    }
+
+    /**
+     * @return the number of idle connections closed so far
+     */
+    public long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * @return the time in nanoseconds the most recent successful attach and
+     * connect took
+     */
+    public long getLastAttachLatencyNanos() {
+        return lastAttachLatencyNanos;
+    }
+
+    /**
+     * @return the average time in nanoseconds a successful attach and
+     * connect took, or 0 if there has been none yet
+     */
+    public long getAverageAttachLatencyNanos() {
+        return attaches == 0 ? 0 : totalAttachLatencyNanos / attaches;
+    }
+
+    /**
+     * @return the longest time in nanoseconds a successful attach and
+     * connect took
+     */
+    public long getMaxAttachLatencyNanos() {
+        return maxAttachLatencyNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "MXBeanConnectionPoolStatistics [active=" + activeConnections + ", idle=" + idleConnections
+                + ", pendingAttaches=" + pendingAttaches + ", attaches=" + attaches
+                + ", failedAttaches=" + failedAttaches + ", evictions=" + evictions
+                + ", lastAttachLatencyNanos=" + lastAttachLatencyNanos
+                + ", averageAttachLatencyNanos=" + getAverageAttachLatencyNanos()
+                + ", maxAttachLatencyNanos=" + maxAttachLatencyNanos + "]";
+    }
+}
@@ -67,6 +67,15 @@ public abstract class HostPollingBackend extends PollingBackend {
         badActions = new HashMap<>();
     }
 
+    /**
+     * Creates a backend which polls on the agent's shared scheduler, see
+     * {@link #setPollingScheduler(PollingScheduler)}.
+     */
+    public HostPollingBackend(String name, String description,
+            String vendor, Version version) {
+        this(name, description, vendor, version, null);
+    }
+
     final public void doScheduledActions() {
         for (HostPollingAction action : actions) {
             try {
@@ -37,6 +37,7 @@
 package com.redhat.thermostat.backend;
 
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -46,17 +47,61 @@ import com.redhat.thermostat.common.utils.LoggingUtils;
 
 /*
  * Convenience {@link Backend} class for implementations that will take action
- * on a fixed interval.  This is package private, and plugins should instead
+ * on a regular interval, see {@link PollingInterval}.  Plugins should
  * extend child classes {@link HostPollingBackend}
  * or {@link VmPollingBackend} as appropriate.
+ *
+ * Polling either happens on an executor of the backend's own, or on the
+ * agent's shared {@link PollingScheduler}.
  */
 public abstract class PollingBackend extends BaseBackend {
 
     private static final Logger logger = LoggingUtils.getLogger(PollingBackend.class);
-    static final long DEFAULT_INTERVAL = 1000; // TODO make this configurable.
+
+    // Quiet samples in a row before an adaptive interval backs off
+    static final int QUIET_SAMPLES_BEFORE_BACKOFF = 3;
 
     private ScheduledExecutorService executor;
+    private PollingScheduler scheduler;
     private boolean isActive;
+    private PollingInterval interval = PollingInterval.DEFAULT;
+    private ScheduledFuture<?> task;
+
+    // State of an adaptive interval. Guarded by this.
+    private long currentIntervalMillis;
+    private int quietSamples;
+    private boolean changed;
+    private boolean thresholdCrossed;
+
+    private final Runnable fixedRateTick = new Runnable() {
+        @Override
+        public void run() {
+            runScheduledActions();
+        }
+    };
+
+    // Incremented whenever polling is rescheduled, so that an adaptive tick
+    // which is running at that moment does not schedule itself again
+    private int generation;
+
+    private class AdaptiveTick implements Runnable {
+
+        private final int tickGeneration;
+
+        AdaptiveTick(int tickGeneration) {
+            this.tickGeneration = tickGeneration;
+        }
+
+        @Override
+        public void run() {
+            runScheduledActions();
+            synchronized (PollingBackend.this) {
+                if (isActive && tickGeneration == generation) {
+                    task = scheduleOnce(this, nextInterval());
+                }
+            }
+        }
+    }
 
     public PollingBackend(String name, String description, String vendor,
             Version version,
@@ -66,30 +111,152 @@ public abstract class PollingBackend extends BaseBackend {
         setVersion(version.getVersionNumber());
     }
 
+    /**
+     * Creates a backend which polls on the agent's shared scheduler, which
+     * has to be set with {@link #setPollingScheduler(PollingScheduler)}
+     * before activation.
+     */
+    public PollingBackend(String name, String description, String vendor, Version version) {
+        this(name, description, vendor, version, null);
+    }
+
+    /**
+     * Polls on the agent's shared scheduler rather than on the executor
+     * this backend was created with, if any. Has to be called before
+     * activation.
+     */
+    protected final synchronized void setPollingScheduler(PollingScheduler scheduler) {
+        if (isActive) {
+            throw new IllegalStateException("Can not change the scheduler of an active backend");
+        }
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Sets how often the actions of this backend are performed. Usually
+     * called before activation, with the interval configured for the plugin.
+     */
+    public final synchronized void setPollingInterval(PollingInterval interval) {
+        if (interval.equals(this.interval)) {
+            return;
+        }
+        this.interval = interval;
+        if (isActive) {
+            if (task != null) {
+                task.cancel(false);
+            }
+            schedule(interval.getIntervalMillis());
+        }
+    }
+
+    public final synchronized PollingInterval getPollingInterval() {
+        return interval;
+    }
+
+    /**
+     * @return the delay before the next poll; this only differs from the
+     * configured interval for an adaptive interval
+     */
+    public final synchronized long getCurrentIntervalMillis() {
+        return interval.isAdaptive() ? currentIntervalMillis : interval.getIntervalMillis();
+    }
+
+    /**
+     * Reports that the latest sample differs notably from the previous one,
+     * so that an adaptive interval polls more often. Has no effect on a
+     * fixed interval.
+     */
+    protected final synchronized void sampleChanged() {
+        changed = true;
+    }
+
+    /**
+     * Reports that a sample crossed a threshold worth watching closely, so
+     * that an adaptive interval polls as often as it may. Has no effect on a
+     * fixed interval.
+     */
+    protected final synchronized void thresholdCrossed() {
+        thresholdCrossed = true;
+    }
+
     @Override
     public final synchronized boolean activate() {
         if (!isActive) {
+            if (executor == null && scheduler == null) {
+                throw new IllegalStateException("No scheduler set for " + getName());
+            }
             preActivate();
-            executor.scheduleAtFixedRate(new Runnable() {
-                @Override
-                public void run() {
-                    try {
-                        doScheduledActions();
-                    } catch (Throwable e) {
-                        logger.log(Level.WARNING, "Polling action threw exception");
-                    }
-                }
-            }, 0, DEFAULT_INTERVAL, TimeUnit.MILLISECONDS);
-
+            schedule(0);
             isActive = true;
         }
         return isActive;
     }
 
+    // Must hold the lock of this
+    private void schedule(long initialDelayMillis) {
+        currentIntervalMillis = interval.getIntervalMillis();
+        quietSamples = 0;
+        changed = false;
+        thresholdCrossed = false;
+        generation++;
+        if (interval.isAdaptive()) {
+            task = scheduleOnce(new AdaptiveTick(generation), initialDelayMillis);
+        } else if (scheduler != null) {
+            task = scheduler.scheduleAtFixedRate(getName(), fixedRateTick, initialDelayMillis,
+                    interval.getIntervalMillis(), TimeUnit.MILLISECONDS);
+        } else {
+            task = executor.scheduleAtFixedRate(fixedRateTick, initialDelayMillis,
+                    interval.getIntervalMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    // Must hold the lock of this
+    private ScheduledFuture<?> scheduleOnce(Runnable tick, long delayMillis) {
+        if (scheduler != null) {
+            return scheduler.schedule(getName(), tick, delayMillis, TimeUnit.MILLISECONDS);
+        }
+        return executor.schedule(tick, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void runScheduledActions() {
+        try {
+            doScheduledActions();
+        } catch (Throwable e) {
+            logger.log(Level.WARNING, "Polling action threw exception");
+        }
+    }
+
+    /**
+     * Adapts the interval to what the last round of actions reported.
+     */
+    synchronized long nextInterval() {
+        long min = interval.getMinIntervalMillis();
+        long max = interval.getMaxIntervalMillis();
+        if (thresholdCrossed) {
+            currentIntervalMillis = min;
+            quietSamples = 0;
+        } else if (changed) {
+            currentIntervalMillis = Math.max(min, currentIntervalMillis / 2);
+            quietSamples = 0;
+        } else if (++quietSamples >= QUIET_SAMPLES_BEFORE_BACKOFF) {
+            currentIntervalMillis = Math.min(max, currentIntervalMillis * 2);
+            quietSamples = 0;
+        }
+        changed = false;
+        thresholdCrossed = false;
+        return currentIntervalMillis;
+    }
+
     @Override
     public final synchronized boolean deactivate() {
         if (isActive) {
-            executor.shutdown();
+            if (task != null) {
+                // The shared scheduler is not ours to shut down
+                task.cancel(false);
+            }
+            if (executor != null) {
+                executor.shutdown();
+            }
             postDeactivate();
             isActive = false;
         }
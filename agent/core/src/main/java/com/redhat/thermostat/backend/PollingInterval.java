@@ -0,0 +1,129 @@
+/*
+ * Copyright 2012-2017 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+package com.redhat.thermostat.backend;
+
+/**
+ * How often a {@link PollingBackend} performs its actions.
+ * <p>
+ * A fixed interval polls at a constant rate. An adaptive interval starts at
+ * its base interval and doubles, up to its maximum, while the backend
+ * reports no notable changes. Each change reported with
+ * {@link PollingBackend#sampleChanged()} halves it again, and a crossed
+ * threshold, reported with {@link PollingBackend#thresholdCrossed()}, drops
+ * it straight to its minimum.
+ */
+public final class PollingInterval {
+
+    public static final long DEFAULT_INTERVAL_MILLIS = 1000;
+
+    public static final PollingInterval DEFAULT = fixed(DEFAULT_INTERVAL_MILLIS);
+
+    private final long intervalMillis;
+    private final long minIntervalMillis;
+    private final long maxIntervalMillis;
+    private final boolean adaptive;
+
+    private PollingInterval(long intervalMillis, long minIntervalMillis, long maxIntervalMillis, boolean adaptive) {
+        if (minIntervalMillis <= 0 || minIntervalMillis > intervalMillis || intervalMillis > maxIntervalMillis) {
+            throw new IllegalArgumentException("Invalid polling interval " + intervalMillis
+                    + " ms within [" + minIntervalMillis + ", " + maxIntervalMillis + "] ms");
+        }
+        this.intervalMillis = intervalMillis;
+        this.minIntervalMillis = minIntervalMillis;
+        this.maxIntervalMillis = maxIntervalMillis;
+        this.adaptive = adaptive;
+    }
+
+    public static PollingInterval fixed(long intervalMillis) {
+        return new PollingInterval(intervalMillis, intervalMillis, intervalMillis, false);
+    }
+
+    /**
+     * @throws IllegalArgumentException unless
+     * {@code 0 < minIntervalMillis <= intervalMillis <= maxIntervalMillis}
+     */
+    public static PollingInterval adaptive(long intervalMillis, long minIntervalMillis, long maxIntervalMillis) {
+        return new PollingInterval(intervalMillis, minIntervalMillis, maxIntervalMillis, true);
+    }
+
+    /**
+     * @return the interval polling starts at, and the only one if the
+     * interval is fixed
+     */
+    public long getIntervalMillis() {
+        return intervalMillis;
+    }
+
+    public long getMinIntervalMillis() {
+        return minIntervalMillis;
+    }
+
+    public long getMaxIntervalMillis() {
+        return maxIntervalMillis;
+    }
+
+    public boolean isAdaptive() {
+        return adaptive;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof PollingInterval)) {
+            return false;
+        }
+        PollingInterval other = (PollingInterval) obj;
+        return intervalMillis == other.intervalMillis && minIntervalMillis == other.minIntervalMillis
+                && maxIntervalMillis == other.maxIntervalMillis && adaptive == other.adaptive;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = (int) (intervalMillis ^ (intervalMillis >>> 32));
+        result = 31 * result + (int) (minIntervalMillis ^ (minIntervalMillis >>> 32));
+        result = 31 * result + (int) (maxIntervalMillis ^ (maxIntervalMillis >>> 32));
+        return 31 * result + (adaptive ? 1 : 0);
+    }
+
+    @Override
+    public String toString() {
+        if (!adaptive) {
+            return "PollingInterval [" + intervalMillis + " ms]";
+        }
+        return "PollingInterval [" + intervalMillis + " ms, adaptive within [" + minIntervalMillis
+                + ", " + maxIntervalMillis + "] ms]";
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2012-2017 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+package com.redhat.thermostat.backend;
+
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import com.redhat.thermostat.annotations.Service;
+
+/**
+ * Runs the periodic work of {@link PollingBackend}s on a small set of
+ * threads shared by the whole agent, instead of one thread per backend.
+ * <p>
+ * Work is accounted to an owner, usually the name of the backend. Owners
+ * which used little time so far go first when more work is due than
+ * there are threads. An owner's periodic task never runs more than once
+ * at a time: if it is still running when it is due again, that run is
+ * skipped. Runs which take longer than their period are logged and
+ * counted, see {@link #getStatistics()}.
+ * <p>
+ * This service is registered by the agent.
+ */
+@Service
+public interface PollingScheduler {
+
+    /**
+     * Runs {@code task} after {@code initialDelay}, then every
+     * {@code period}. Cancelling the returned future stops further runs,
+     * but does not interrupt a run in progress.
+     */
+    ScheduledFuture<?> scheduleAtFixedRate(String owner, Runnable task, long initialDelay, long period, TimeUnit unit);
+
+    /**
+     * Runs {@code task} once after {@code delay}.
+     */
+    ScheduledFuture<?> schedule(String owner, Runnable task, long delay, TimeUnit unit);
+
+    /**
+     * @return the time accounting of every owner which had work scheduled
+     */
+    List<PollingStatistics> getStatistics();
+
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2012-2017 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+package com.redhat.thermostat.backend;
+
+/**
+ * An immutable snapshot of how much time the work of one owner, usually a
+ * {@link PollingBackend}, took on a {@link PollingScheduler}.
+ */
+public class PollingStatistics {
+
+    private final String owner;
+    private final long runs;
+    private final long overruns;
+    private final long skippedRuns;
+    private final long lastRunNanos;
+    private final long totalRunNanos;
+    private final long maxRunNanos;
+
+    public PollingStatistics(String owner, long runs, long overruns, long skippedRuns,
+            long lastRunNanos, long totalRunNanos, long maxRunNanos) {
+        this.owner = owner;
+        this.runs = runs;
+        this.overruns = overruns;
+        this.skippedRuns = skippedRuns;
+        this.lastRunNanos = lastRunNanos;
+        this.totalRunNanos = totalRunNanos;
+        this.maxRunNanos = maxRunNanos;
+    }
+
+    /**
+     * @return the name the work was scheduled under
+     */
+    public String getOwner() {
+        return owner;
+    }
+
+    /**
+     * @return the number of completed runs
+     */
+    public long getRuns() {
+        return runs;
+    }
+
+    /**
+     * @return the number of runs which took longer than their period
+     */
+    public long getOverruns() {
+        return overruns;
+    }
+
+    /**
+     * @return the number of runs which were left out because the previous
+     * run had not finished when the next one was due
+     */
+    public long getSkippedRuns() {
+        return skippedRuns;
+    }
+
+    /**
+     * @return the time in nanoseconds the most recent run took
+     */
+    public long getLastRunNanos() {
+        return lastRunNanos;
+    }
+
+    /**
+     * @return the time in nanoseconds all runs took together
+     */
+    public long getTotalRunNanos() {
+        return totalRunNanos;
+    }
+
+    /**
+     * @return the average time in nanoseconds a run took, or 0 if there has
+     * been none yet
+     */
+    public long getAverageRunNanos() {
+        return runs == 0 ? 0 : totalRunNanos / runs;
+    }
+
+    /**
+     * @return the longest time in nanoseconds a run took
+     */
+    public long getMaxRunNanos() {
+        return maxRunNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "PollingStatistics [owner=" + owner + ", runs=" + runs + ", overruns=" + overruns
+                + ", skippedRuns=" + skippedRuns + ", lastRunNanos=" + lastRunNanos
+                + ", averageRunNanos=" + getAverageRunNanos() + ", maxRunNanos=" + maxRunNanos + "]";
+    }
+}
@@ -0,0 +1,303 @@
+/*
+ * Copyright 2012-2017 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+package com.redhat.thermostat.backend.internal;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.felix.scr.annotations.Component;
+import org.apache.felix.scr.annotations.Deactivate;
+import org.apache.felix.scr.annotations.Service;
+
+import com.redhat.thermostat.backend.PollingScheduler;
+import com.redhat.thermostat.backend.PollingStatistics;
+import com.redhat.thermostat.common.Clock;
+import com.redhat.thermostat.common.SystemClock;
+import com.redhat.thermostat.common.utils.LoggingUtils;
+
+/**
+ * A single timer thread decides when work is due and hands it to a fixed
+ * number of workers, one per processor unless configured otherwise. The
+ * timer never runs the work itself, so a slow backend can not delay when
+ * the work of other backends becomes due. Work waiting for a worker is
+ * ordered by the time its owner has used so far.
+ */
+@Component
+@Service(value = PollingScheduler.class)
+public class PollingSchedulerImpl implements PollingScheduler {
+
+    private static final Logger logger = LoggingUtils.getLogger(PollingSchedulerImpl.class);
+
+    static final String WORKERS_PROPERTY = "com.redhat.thermostat.agent.polling.workers";
+
+    private final Clock clock;
+    private final ScheduledExecutorService timer;
+    private final ExecutorService workers;
+    private final ConcurrentMap<String, Owner> owners;
+    private final AtomicLong sequence = new AtomicLong();
+
+    public PollingSchedulerImpl() {
+        this(new SystemClock(),
+                Executors.newSingleThreadScheduledExecutor(new SchedulerThreadFactory("PollingScheduler-timer")),
+                createWorkers(Integer.getInteger(WORKERS_PROPERTY, Runtime.getRuntime().availableProcessors())));
+    }
+
+    PollingSchedulerImpl(Clock clock, ScheduledExecutorService timer, ExecutorService workers) {
+        this.clock = clock;
+        this.timer = timer;
+        this.workers = workers;
+        this.owners = new ConcurrentHashMap<>();
+    }
+
+    static ExecutorService createWorkers(int count) {
+        int threads = Math.max(1, count);
+        // Only Slices are ever queued, which order themselves
+        return new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new PriorityBlockingQueue<Runnable>(), new SchedulerThreadFactory("PollingScheduler-worker"));
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleAtFixedRate(String owner, Runnable task, long initialDelay, long period,
+            TimeUnit unit) {
+        Dispatch dispatch = new Dispatch(getOwner(owner), task, unit.toNanos(period));
+        dispatch.future = timer.scheduleAtFixedRate(dispatch, initialDelay, period, unit);
+        return dispatch.future;
+    }
+
+    @Override
+    public ScheduledFuture<?> schedule(String owner, Runnable task, long delay, TimeUnit unit) {
+        // Without a period, a single run can not overrun
+        Dispatch dispatch = new Dispatch(getOwner(owner), task, 0);
+        dispatch.future = timer.schedule(dispatch, delay, unit);
+        return dispatch.future;
+    }
+
+    @Override
+    public List<PollingStatistics> getStatistics() {
+        List<PollingStatistics> statistics = new ArrayList<>();
+        for (Owner owner : owners.values()) {
+            statistics.add(owner.getStatistics());
+        }
+        return statistics;
+    }
+
+    @Deactivate
+    public void deactivate() {
+        timer.shutdownNow();
+        workers.shutdownNow();
+    }
+
+    private Owner getOwner(String name) {
+        Owner owner = owners.get(name);
+        if (owner == null) {
+            Owner newOwner = new Owner(name);
+            owner = owners.putIfAbsent(name, newOwner);
+            if (owner == null) {
+                owner = newOwner;
+            }
+        }
+        return owner;
+    }
+
+    /*
+     * Runs on the timer thread whenever a task is due, and passes it on to
+     * the workers unless its previous run is still waiting or running.
+     */
+    private class Dispatch implements Runnable {
+
+        private final Owner owner;
+        private final Runnable task;
+        private final long periodNanos;
+        private final AtomicBoolean pending = new AtomicBoolean();
+        private volatile ScheduledFuture<?> future;
+
+        Dispatch(Owner owner, Runnable task, long periodNanos) {
+            this.owner = owner;
+            this.task = task;
+            this.periodNanos = periodNanos;
+        }
+
+        @Override
+        public void run() {
+            if (!pending.compareAndSet(false, true)) {
+                owner.recordSkippedRun();
+                return;
+            }
+            try {
+                workers.execute(new Slice(this, owner.getTotalRunNanos(), sequence.getAndIncrement()));
+            } catch (RejectedExecutionException e) {
+                // Shutting down
+                pending.set(false);
+            }
+        }
+
+        void runTask() {
+            try {
+                if (future != null && future.isCancelled()) {
+                    return;
+                }
+                long start = clock.getMonotonicTimeNanos();
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    logger.log(Level.WARNING, "Polling task of " + owner.name + " threw an exception", e);
+                }
+                owner.recordRun(clock.getMonotonicTimeNanos() - start, periodNanos);
+            } finally {
+                pending.set(false);
+            }
+        }
+    }
+
+    /*
+     * A run of a task waiting for a worker. Runs of owners which have used
+     * less time go first, then runs which became due earlier.
+     */
+    private static class Slice implements Runnable, Comparable<Slice> {
+
+        private final Dispatch dispatch;
+        private final long ownerRunNanos;
+        private final long sequence;
+
+        Slice(Dispatch dispatch, long ownerRunNanos, long sequence) {
+            this.dispatch = dispatch;
+            this.ownerRunNanos = ownerRunNanos;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public void run() {
+            dispatch.runTask();
+        }
+
+        @Override
+        public int compareTo(Slice other) {
+            if (ownerRunNanos != other.ownerRunNanos) {
+                return ownerRunNanos < other.ownerRunNanos ? -1 : 1;
+            }
+            if (sequence != other.sequence) {
+                return sequence < other.sequence ? -1 : 1;
+            }
+            return 0;
+        }
+    }
+
+    private static class Owner {
+
+        private final String name;
+        private final AtomicLong runs = new AtomicLong();
+        private final AtomicLong overruns = new AtomicLong();
+        private final AtomicLong skippedRuns = new AtomicLong();
+        private final AtomicLong lastRunNanos = new AtomicLong();
+        private final AtomicLong totalRunNanos = new AtomicLong();
+        private final AtomicLong maxRunNanos = new AtomicLong();
+
+        Owner(String name) {
+            this.name = name;
+        }
+
+        long getTotalRunNanos() {
+            return totalRunNanos.get();
+        }
+
+        void recordRun(long runNanos, long periodNanos) {
+            runs.incrementAndGet();
+            lastRunNanos.set(runNanos);
+            totalRunNanos.addAndGet(runNanos);
+            long max;
+            while (runNanos > (max = maxRunNanos.get())) {
+                if (maxRunNanos.compareAndSet(max, runNanos)) {
+                    break;
+                }
+            }
+            if (periodNanos > 0 && runNanos > periodNanos) {
+                long count = overruns.incrementAndGet();
+                // Warn on the 1st, 2nd, 4th, 8th, ... overrun so a backend
+                // which is always too slow does not flood the log
+                Level level = Long.bitCount(count) == 1 ? Level.WARNING : Level.FINE;
+                if (logger.isLoggable(level)) {
+                    logger.log(level, "Polling of " + name + " took " + TimeUnit.NANOSECONDS.toMillis(runNanos)
+                            + " ms, longer than its period of " + TimeUnit.NANOSECONDS.toMillis(periodNanos)
+                            + " ms (" + count + " overruns so far)");
+                }
+            }
+        }
+
+        void recordSkippedRun() {
+            skippedRuns.incrementAndGet();
+        }
+
+        PollingStatistics getStatistics() {
+            return new PollingStatistics(name, runs.get(), overruns.get(), skippedRuns.get(),
+                    lastRunNanos.get(), totalRunNanos.get(), maxRunNanos.get());
+        }
+    }
+
+    private static class SchedulerThreadFactory implements ThreadFactory {
+
+        private final String name;
+        private final AtomicInteger count = new AtomicInteger();
+
+        SchedulerThreadFactory(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
+}
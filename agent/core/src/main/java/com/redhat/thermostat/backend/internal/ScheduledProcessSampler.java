@@ -0,0 +1,99 @@
+/*
+ * Copyright 2012-2017 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+package com.redhat.thermostat.backend.internal;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.felix.scr.annotations.Activate;
+import org.apache.felix.scr.annotations.Component;
+import org.apache.felix.scr.annotations.Deactivate;
+import org.apache.felix.scr.annotations.Reference;
+import org.apache.felix.scr.annotations.Service;
+
+import com.redhat.thermostat.backend.PollingScheduler;
+import com.redhat.thermostat.common.portability.ProcessSampler;
+
+/**
+ * The agent's {@link ProcessSampler}. It sweeps the watched processes once
+ * per interval on the shared {@link PollingScheduler}, and stops its worker
+ * threads when the agent goes away.
+ */
+@Component
+@Service(value = ProcessSampler.class)
+public class ScheduledProcessSampler extends ProcessSampler {
+
+    static final String INTERVAL_PROPERTY = "com.redhat.thermostat.agent.processSampler.intervalMillis";
+    static final long DEFAULT_INTERVAL_MILLIS = 1000;
+
+    private static final String OWNER = "Process Sampler";
+
+    private final long intervalMillis;
+    private ScheduledFuture<?> task;
+
+    @Reference
+    private PollingScheduler scheduler;
+
+    public ScheduledProcessSampler() {
+        this(null, Long.getLong(INTERVAL_PROPERTY, DEFAULT_INTERVAL_MILLIS));
+    }
+
+    ScheduledProcessSampler(PollingScheduler scheduler, long intervalMillis) {
+        this.scheduler = scheduler;
+        this.intervalMillis = intervalMillis;
+    }
+
+    @Activate
+    protected synchronized void activate() {
+        task = scheduler.scheduleAtFixedRate(OWNER, new Runnable() {
+            @Override
+            public void run() {
+                sample();
+            }
+        }, 0, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Deactivate
+    protected synchronized void deactivate() {
+        if (task != null) {
+            task.cancel(false);
+            task = null;
+        }
+        shutdown();
+    }
+
+}
@@ -38,9 +38,11 @@ package com.redhat.thermostat.utils.management.internal;
 
 import java.io.IOException;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.FutureTask;
 import java.util.concurrent.TimeUnit;
 
-// Container class used for pool map entries
+// Container class used for pool map entries. Guarded by the entry itself,
+// except for the attach task, which is set before the entry is published.
 class MXBeanConnectionPoolEntry {
     
     // Timeout when waiting for JMX url from agent proxy
@@ -52,6 +54,10 @@ class MXBeanConnectionPoolEntry {
     private MXBeanConnectionImpl connection;
     private CountDownLatch urlLatch;
     private Exception ex;
+    private FutureTask<MXBeanConnectionImpl> attachTask;
+    private boolean closed;
+    private boolean attaching;
+    private long idleSinceNanos;
     
     MXBeanConnectionPoolEntry(int pid) {
         this(pid, new CountDownLatch(1));
@@ -110,5 +116,44 @@ class MXBeanConnectionPoolEntry {
         // No JMX URL coming, stop waiting and throw exception
         urlLatch.countDown();
     }
-    
+
+    FutureTask<MXBeanConnectionImpl> getAttachTask() {
+        return attachTask;
+    }
+
+    void setAttachTask(FutureTask<MXBeanConnectionImpl> attachTask) {
+        this.attachTask = attachTask;
+    }
+
+    /**
+     * @return true once the entry has been removed from the pool, after
+     * which it must not be handed out again
+     */
+    boolean isClosed() {
+        return closed;
+    }
+
+    void close() {
+        this.closed = true;
+    }
+
+    /**
+     * @return true while the attach task is running on a pool thread
+     */
+    boolean isAttaching() {
+        return attaching;
+    }
+
+    void setAttaching(boolean attaching) {
+        this.attaching = attaching;
+    }
+
+    long getIdleSinceNanos() {
+        return idleSinceNanos;
+    }
+
+    void setIdleSinceNanos(long idleSinceNanos) {
+        this.idleSinceNanos = idleSinceNanos;
+    }
+
 }
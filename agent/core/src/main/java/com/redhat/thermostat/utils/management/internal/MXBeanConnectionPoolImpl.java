@@ -33,88 +33,399 @@
  * library, but you are not obligated to do so.  If you do not wish
  * to do so, delete this exception statement from your version.
  */
-
 package com.redhat.thermostat.utils.management.internal;
 
 import java.io.IOException;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import org.apache.felix.scr.annotations.Component;
+import org.apache.felix.scr.annotations.Deactivate;
 import org.apache.felix.scr.annotations.Service;
 
 import com.redhat.thermostat.agent.utils.management.MXBeanConnection;
 import com.redhat.thermostat.agent.utils.management.MXBeanConnectionException;
 import com.redhat.thermostat.agent.utils.management.MXBeanConnectionPool;
+import com.redhat.thermostat.agent.utils.management.MXBeanConnectionPoolStatistics;
+import com.redhat.thermostat.common.Clock;
+import com.redhat.thermostat.common.SystemClock;
+import com.redhat.thermostat.common.utils.LoggingUtils;
 
+/**
+ * Attaching to a JVM and connecting to its management agent can take
+ * seconds, or hang for good if the target does not respond. This is done
+ * on a bounded pool of attach threads, outside of any lock, and callers
+ * give up waiting after a timeout. Every other piece of state is guarded
+ * by the entry of its pid, so a slow VM only ever holds up callers
+ * interested in that same VM.
+ * <p>
+ * An attach is abandoned once the last caller waiting for it gives up.
+ * Attaching may not respond to interruption, so no new attach to the same
+ * VM is started until an abandoned one has actually finished.
+ */
 @Component
 @Service(value = MXBeanConnectionPool.class)
 public class MXBeanConnectionPoolImpl implements MXBeanConnectionPool {
 
+    private static final Logger logger = LoggingUtils.getLogger(MXBeanConnectionPoolImpl.class);
+
+    static final String ATTACH_TIMEOUT_PROPERTY = "com.redhat.thermostat.agent.mxbean.attachTimeoutMillis";
+    static final String IDLE_TIMEOUT_PROPERTY = "com.redhat.thermostat.agent.mxbean.idleTimeoutMillis";
+    static final String MAX_ATTACH_THREADS_PROPERTY = "com.redhat.thermostat.agent.mxbean.maxAttachThreads";
+    private static final long DEFAULT_ATTACH_TIMEOUT_MILLIS = 30000L;
+    private static final long DEFAULT_IDLE_TIMEOUT_MILLIS = 60000L;
+    private static final int DEFAULT_MAX_ATTACH_THREADS = 4;
+
     // Keys are PIDs of target JVMs
-    private final Map<Integer, MXBeanConnectionPoolEntry> pool;
+    private final ConcurrentMap<Integer, MXBeanConnectionPoolEntry> pool;
+    // Entries whose attach was abandoned but is still running, by PID
+    private final ConcurrentMap<Integer, MXBeanConnectionPoolEntry> abandonedAttaches;
     private final ManagementAgentHelper helper;
-    
+    private final Clock clock;
+    private final ExecutorService attachExecutor;
+    private final ScheduledExecutorService evictionExecutor;
+    private final long attachTimeoutMillis;
+    private final long idleTimeoutMillis;
+
+    private final AtomicInteger pendingAttaches = new AtomicInteger();
+    private final AtomicLong attaches = new AtomicLong();
+    private final AtomicLong failedAttaches = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong lastAttachLatency = new AtomicLong();
+    private final AtomicLong totalAttachLatency = new AtomicLong();
+    private final AtomicLong maxAttachLatency = new AtomicLong();
+
     public MXBeanConnectionPoolImpl() {
         this(new ManagementAgentHelper());
     }
 
     MXBeanConnectionPoolImpl(ManagementAgentHelper helper) {
-        this.pool = new HashMap<>();
+        this(helper, new SystemClock(),
+                createAttachExecutor(Integer.getInteger(MAX_ATTACH_THREADS_PROPERTY, DEFAULT_MAX_ATTACH_THREADS)),
+                Executors.newSingleThreadScheduledExecutor(new PoolThreadFactory("MXBeanConnectionPool-eviction")),
+                Long.getLong(ATTACH_TIMEOUT_PROPERTY, DEFAULT_ATTACH_TIMEOUT_MILLIS),
+                Long.getLong(IDLE_TIMEOUT_PROPERTY, DEFAULT_IDLE_TIMEOUT_MILLIS));
+    }
+
+    /**
+     * @param idleTimeoutMillis how long a connection without users stays
+     *        open; 0 closes it as soon as the last user releases it
+     */
+    MXBeanConnectionPoolImpl(ManagementAgentHelper helper, Clock clock, ExecutorService attachExecutor,
+            ScheduledExecutorService evictionExecutor, long attachTimeoutMillis, long idleTimeoutMillis) {
+        this.pool = new ConcurrentHashMap<>();
+        this.abandonedAttaches = new ConcurrentHashMap<>();
         this.helper = helper;
+        this.clock = clock;
+        this.attachExecutor = attachExecutor;
+        this.evictionExecutor = evictionExecutor;
+        this.attachTimeoutMillis = attachTimeoutMillis;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+    }
+
+    private static ExecutorService createAttachExecutor(int maxThreads) {
+        // Attaches beyond the thread limit wait in the queue, which holds
+        // at most one attach per VM
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(maxThreads, maxThreads, 60L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new PoolThreadFactory("MXBeanConnectionPool-attach"));
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    @Override
+    public MXBeanConnection acquire(int pid) throws MXBeanConnectionException {
+        MXBeanConnectionPoolEntry data = reserve(pid);
+        try {
+            return data.getAttachTask().get(attachTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            giveUp(data);
+            throw new MXBeanConnectionException("Timed out attaching to VM (pid: " + pid + ") after "
+                    + attachTimeoutMillis + " ms");
+        } catch (ExecutionException e) {
+            giveUp(data);
+            throw new MXBeanConnectionException(e.getCause());
+        } catch (CancellationException e) {
+            // the pool was deactivated
+            throw new MXBeanConnectionException("Attaching to VM (pid: " + pid + ") was abandoned");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            giveUp(data);
+            throw new MXBeanConnectionException(e);
+        }
+    }
+
+    /**
+     * Counts the caller as a user of the entry for the pid, creating the
+     * entry and starting the attach if there is none.
+     */
+    private MXBeanConnectionPoolEntry reserve(int pid) throws MXBeanConnectionException {
+        while (true) {
+            MXBeanConnectionPoolEntry data = pool.get(pid);
+            if (data == null) {
+                if (abandonedAttaches.containsKey(pid)) {
+                    throw new MXBeanConnectionException("An abandoned attach to VM (pid: " + pid
+                            + ") is still running");
+                }
+                data = new MXBeanConnectionPoolEntry(pid);
+                data.setAttachTask(new FutureTask<>(new Attach(data)));
+                if (pool.putIfAbsent(pid, data) == null) {
+                    pendingAttaches.incrementAndGet();
+                    attachExecutor.execute(data.getAttachTask());
+                    return data;
+                }
+            } else {
+                synchronized (data) {
+                    if (!data.isClosed()) {
+                        data.incrementUsageCount();
+                        return data;
+                    }
+                }
+                // closed concurrently; it is about to leave the pool
+                pool.remove(pid, data);
+            }
+        }
+    }
+
+    /**
+     * Stops counting a caller who gave up waiting for the attach as a user
+     * of the entry. Once the last one gives up, the entry is removed so
+     * that a later caller starts over, and a running attach is abandoned.
+     */
+    private void giveUp(MXBeanConnectionPoolEntry data) {
+        boolean started;
+        synchronized (data) {
+            data.decrementUsageCount();
+            if (data.getUsageCount() > 0 || data.isClosed()) {
+                return;
+            }
+            if (data.getConnection() != null) {
+                // attached just after the caller gave up
+                markIdle(data);
+                return;
+            }
+            data.close();
+            pool.remove(data.getPid(), data);
+            started = data.isAttaching();
+            if (started) {
+                abandonedAttaches.put(data.getPid(), data);
+            }
+        }
+        failedAttaches.incrementAndGet();
+        if (!started) {
+            // the attach finds the entry closed and never runs
+            pendingAttaches.decrementAndGet();
+        }
+        // interrupts the attach, if it is still running
+        data.getAttachTask().cancel(true);
     }
 
     @Override
-    public synchronized MXBeanConnection acquire(int pid) throws MXBeanConnectionException {
+    public void release(int pid, MXBeanConnection toRelease) throws MXBeanConnectionException {
         MXBeanConnectionPoolEntry data = pool.get(pid);
         if (data == null) {
-            data = new MXBeanConnectionPoolEntry(pid);
+            throw new MXBeanConnectionException("Unknown pid: " + pid);
+        }
+        boolean evictNow;
+        synchronized (data) {
+            MXBeanConnectionImpl connection = data.getConnection();
+            if (connection == null) {
+                throw new MXBeanConnectionException("No known open connection for pid: " + pid);
+            } else if (connection != toRelease) {
+                throw new MXBeanConnectionException("Connection mismatch for pid: " + pid);
+            }
+
+            data.decrementUsageCount();
+            evictNow = data.getUsageCount() == 0 && idleTimeoutMillis <= 0;
+            if (data.getUsageCount() == 0 && !evictNow) {
+                markIdle(data);
+            }
+        }
+        if (evictNow) {
             try {
-                // Attach to JVM and retrieve JMX service URL
-                ManagementAgentAttacher attacher = helper.createAttacher(pid);
-                attacher.attach();
-                String jmxUrl = attacher.getConnectorAddress();
-                
-                // Connect using JMX service URL
-                MXBeanConnector connector = helper.createConnector(jmxUrl);
-                MXBeanConnectionImpl connection = connector.connect();
-                data.setConnection(connection);
-                pool.put(pid, data);
+                evictIfIdle(data);
             } catch (IOException e) {
-                pool.remove(pid);
                 throw new MXBeanConnectionException(e);
             }
-        } else {
-            data.incrementUsageCount();
         }
-        return data.getConnection();
+    }
+
+    // Must hold the lock of data
+    private void markIdle(final MXBeanConnectionPoolEntry data) {
+        data.setIdleSinceNanos(clock.getMonotonicTimeNanos());
+        evictionExecutor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    evictIfIdle(data);
+                } catch (IOException e) {
+                    logger.log(Level.FINE, "Failed to close idle JMX connection to VM (pid: " + data.getPid() + ")", e);
+                }
+            }
+        }, idleTimeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Closes the connection of the entry unless it has been used again
+     * within the grace period.
+     */
+    void evictIfIdle(MXBeanConnectionPoolEntry data) throws IOException {
+        MXBeanConnectionImpl connection;
+        synchronized (data) {
+            long idleNanos = clock.getMonotonicTimeNanos() - data.getIdleSinceNanos();
+            if (data.isClosed() || data.getUsageCount() > 0
+                    || idleNanos < TimeUnit.MILLISECONDS.toNanos(idleTimeoutMillis)) {
+                return;
+            }
+            data.close();
+            pool.remove(data.getPid(), data);
+            connection = data.getConnection();
+        }
+        evictions.incrementAndGet();
+        connection.close();
     }
 
     @Override
-    public synchronized void release(int pid, MXBeanConnection toRelease) throws MXBeanConnectionException {
-        MXBeanConnectionPoolEntry data = pool.get(pid);
-        if (data == null) {
-            throw new MXBeanConnectionException("Unknown pid: " + pid);
+    public MXBeanConnectionPoolStatistics getStatistics() {
+        int active = 0;
+        int idle = 0;
+        for (MXBeanConnectionPoolEntry data : pool.values()) {
+            synchronized (data) {
+                if (!data.isClosed() && data.getConnection() != null) {
+                    active++;
+                    if (data.getUsageCount() == 0) {
+                        idle++;
+                    }
+                }
+            }
         }
-        MXBeanConnectionImpl connection = data.getConnection();
-        if (connection == null) {
-            throw new MXBeanConnectionException("No known open connection for pid: " + pid);
-        } else if (connection != toRelease) {
-            throw new MXBeanConnectionException("Connection mismatch for pid: " + pid);
+        return new MXBeanConnectionPoolStatistics(active, idle, pendingAttaches.get(), attaches.get(),
+                failedAttaches.get(), evictions.get(), lastAttachLatency.get(), totalAttachLatency.get(),
+                maxAttachLatency.get());
+    }
+
+    /**
+     * Stops the background threads and closes all connections.
+     */
+    @Deactivate
+    protected void deactivate() {
+        attachExecutor.shutdownNow();
+        evictionExecutor.shutdownNow();
+        List<MXBeanConnectionImpl> connections = new ArrayList<>();
+        for (MXBeanConnectionPoolEntry data : pool.values()) {
+            synchronized (data) {
+                data.close();
+                pool.remove(data.getPid(), data);
+                if (data.getConnection() != null) {
+                    connections.add(data.getConnection());
+                }
+            }
         }
-        
-        data.decrementUsageCount();
-        int usageCount = data.getUsageCount();
-        if (usageCount == 0) {
+        for (MXBeanConnectionImpl connection : connections) {
             try {
                 connection.close();
             } catch (IOException e) {
-                throw new MXBeanConnectionException(e);
+                logger.log(Level.FINE, "Failed to close JMX connection", e);
             }
-            pool.remove(pid);
         }
     }
-    
+
+    private void recordAttach(long latencyNanos) {
+        attaches.incrementAndGet();
+        lastAttachLatency.set(latencyNanos);
+        totalAttachLatency.addAndGet(latencyNanos);
+        long max;
+        while (latencyNanos > (max = maxAttachLatency.get())) {
+            if (maxAttachLatency.compareAndSet(max, latencyNanos)) {
+                break;
+            }
+        }
+    }
+
+    private class Attach implements Callable<MXBeanConnectionImpl> {
+
+        private final MXBeanConnectionPoolEntry data;
+
+        Attach(MXBeanConnectionPoolEntry data) {
+            this.data = data;
+        }
+
+        @Override
+        public MXBeanConnectionImpl call() throws IOException {
+            synchronized (data) {
+                if (data.isClosed()) {
+                    // abandoned before it started, and already counted
+                    throw new CancellationException();
+                }
+                data.setAttaching(true);
+            }
+            long start = clock.getMonotonicTimeNanos();
+            MXBeanConnectionImpl connection;
+            try {
+                // Attach to JVM and retrieve JMX service URL
+                ManagementAgentAttacher attacher = helper.createAttacher(data.getPid());
+                attacher.attach();
+                String jmxUrl = attacher.getConnectorAddress();
+
+                // Connect using JMX service URL
+                MXBeanConnector connector = helper.createConnector(jmxUrl);
+                connection = connector.connect();
+            } catch (IOException | RuntimeException e) {
+                synchronized (data) {
+                    // an abandoned attach was already counted when it timed out
+                    if (!data.isClosed()) {
+                        failedAttaches.incrementAndGet();
+                        // the next caller starts over
+                        data.close();
+                        pool.remove(data.getPid(), data);
+                    }
+                }
+                throw e;
+            } finally {
+                pendingAttaches.decrementAndGet();
+                synchronized (data) {
+                    data.setAttaching(false);
+                    abandonedAttaches.remove(data.getPid(), data);
+                }
+            }
+            recordAttach(clock.getMonotonicTimeNanos() - start);
+
+            boolean abandoned;
+            synchronized (data) {
+                abandoned = data.isClosed();
+                if (!abandoned) {
+                    data.setConnection(connection);
+                    if (data.getUsageCount() == 0) {
+                        // every caller gave up waiting in the meantime
+                        markIdle(data);
+                    }
+                }
+            }
+            if (abandoned) {
+                // the callers timed out; nobody will ever release this
+                connection.close();
+            }
+            return connection;
+        }
+    }
+
     static class ManagementAgentHelper {
         ManagementAgentAttacher createAttacher(int pid) {
             return new ManagementAgentAttacher(pid);
@@ -125,6 +436,22 @@ public class MXBeanConnectionPoolImpl implements MXBeanConnectionPool {
             return connector;
         }
     }
+
+    private static class PoolThreadFactory implements ThreadFactory {
+
+        private final String name;
+        private final AtomicInteger count = new AtomicInteger();
+
+        PoolThreadFactory(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
     
 }
-
@@ -98,6 +98,56 @@ public class AgentConfigsUtilsTest {
         Assert.assertTrue(config.purge());
     }
     
+    @Test
+    public void testUploadDefaults() throws InvalidConfigurationException, IOException {
+        setConfigs(createSystemProperties(), new Properties());
+        AgentStartupConfiguration config = AgentConfigsUtils.createAgentConfigs();
+
+        Assert.assertEquals(AgentStartupConfiguration.DEFAULT_UPLOAD_QUEUE_CAPACITY, config.getUploadQueueCapacity());
+        Assert.assertEquals(AgentStartupConfiguration.DEFAULT_UPLOAD_BATCH_SIZE, config.getUploadBatchSize());
+        Assert.assertEquals(AgentStartupConfiguration.DEFAULT_UPLOAD_FLUSH_INTERVAL, config.getUploadFlushInterval());
+    }
+
+    @Test
+    public void testUploadProps() throws InvalidConfigurationException, IOException {
+        Properties userProps = createUserProperties();
+        userProps.setProperty("UPLOAD_QUEUE_CAPACITY", "500");
+        userProps.setProperty("UPLOAD_BATCH_SIZE", "25");
+        userProps.setProperty("UPLOAD_FLUSH_INTERVAL", "250");
+        setConfigs(createSystemProperties(), userProps);
+        AgentStartupConfiguration config = AgentConfigsUtils.createAgentConfigs();
+
+        Assert.assertEquals(500, config.getUploadQueueCapacity());
+        Assert.assertEquals(25, config.getUploadBatchSize());
+        Assert.assertEquals(250, config.getUploadFlushInterval());
+    }
+
+    @Test(expected = InvalidConfigurationException.class)
+    public void testInvalidUploadBatchSize() throws InvalidConfigurationException, IOException {
+        Properties userProps = createUserProperties();
+        userProps.setProperty("UPLOAD_BATCH_SIZE", "-1");
+        setConfigs(createSystemProperties(), userProps);
+        AgentConfigsUtils.createAgentConfigs();
+    }
+
+    @Test
+    public void testCompressionProps() throws InvalidConfigurationException, IOException {
+        Properties userProps = createUserProperties();
+        userProps.setProperty("HTTP_REQUEST_COMPRESSION", "gzip");
+        setConfigs(createSystemProperties(), userProps);
+        AgentStartupConfiguration config = AgentConfigsUtils.createAgentConfigs();
+
+        Assert.assertEquals("gzip", config.getHttpRequestCompression());
+    }
+
+    @Test(expected = InvalidConfigurationException.class)
+    public void testInvalidCompression() throws InvalidConfigurationException, IOException {
+        Properties userProps = createUserProperties();
+        userProps.setProperty("HTTP_REQUEST_COMPRESSION", "zip");
+        setConfigs(createSystemProperties(), userProps);
+        AgentConfigsUtils.createAgentConfigs();
+    }
+
     private Properties createSystemProperties(String configListenAddress) {
         return doCreateSystemProperties(configListenAddress);
     }
@@ -0,0 +1,361 @@
+/*
+ * Copyright 2012-2017 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+package com.redhat.thermostat.agent.http;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.AdditionalMatchers.aryEq;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import com.redhat.thermostat.agent.http.HttpRequestService.RequestFailedException;
+import com.redhat.thermostat.common.Clock;
+import com.redhat.thermostat.testutils.TestUtils;
+
+public class BatchingUploaderTest {
+
+    private static final String URL_A = "http://127.0.0.1:30000/a";
+    private static final String URL_B = "http://127.0.0.1:30000/b";
+
+    private BatchingUploader.Sender sender;
+    private ScheduledExecutorService executor;
+    private Clock clock;
+    private BatchingUploader uploader;
+
+    @Before
+    public void setup() {
+        sender = mock(BatchingUploader.Sender.class);
+        executor = mock(ScheduledExecutorService.class);
+        clock = mock(Clock.class);
+        when(clock.getMonotonicTimeNanos()).thenReturn(0L);
+        uploader = new BatchingUploader(sender, executor, clock, 4, 3, 1000);
+    }
+
+    @Test
+    public void testCoalesceMergesArrays() {
+        List<byte[]> bodies = BatchingUploader.coalesce(Arrays.asList(utf8("[{\"a\":1}]"),
+                utf8(" [ {\"b\":2},{\"c\":3} ] "), utf8("[]")));
+        assertEquals(Collections.singletonList("[{\"a\":1},{\"b\":2},{\"c\":3} ]"), strings(bodies));
+    }
+
+    @Test
+    public void testCoalesceKeepsObjectsSeparate() {
+        List<byte[]> bodies = BatchingUploader.coalesce(Arrays.asList(utf8("{\"a\":1}"), utf8("[{\"b\":2}]")));
+        assertEquals(Arrays.asList("{\"a\":1}", "[{\"b\":2}]"), strings(bodies));
+    }
+
+    @Test
+    public void testCoalesceOnlyEmptyArrays() {
+        assertTrue(BatchingUploader.coalesce(Arrays.asList(utf8("[]"), utf8(" [ ] "))).isEmpty());
+    }
+
+    @Test
+    public void testNothingSentBeforeThresholds() throws Exception {
+        uploader.offer(URL_A, utf8("[1]"));
+        uploader.flush(false);
+
+        verify(sender, never()).send(any(byte[].class), anyString());
+        assertEquals(1, uploader.getStatistics().getQueueDepth());
+    }
+
+    @Test
+    public void testFullBatchIsFlushed() throws Exception {
+        uploader.offer(URL_A, utf8("[1]"));
+        uploader.offer(URL_A, utf8("[2]"));
+        verify(executor, never()).execute(any(Runnable.class));
+        uploader.offer(URL_A, utf8("[3]"));
+
+        ArgumentCaptor<Runnable> taskCaptor = ArgumentCaptor.forClass(Runnable.class);
+        verify(executor).execute(taskCaptor.capture());
+        taskCaptor.getValue().run();
+
+        verify(sender).send(aryEq(utf8("[1,2,3]")), eq(URL_A));
+        UploadStatistics stats = uploader.getStatistics();
+        assertEquals(0, stats.getQueueDepth());
+        assertEquals(1, stats.getFlushedBatches());
+        assertEquals(3, stats.getLastBatchSize());
+    }
+
+    @Test
+    public void testOldBatchIsFlushed() throws Exception {
+        uploader.offer(URL_A, utf8("[1]"));
+        when(clock.getMonotonicTimeNanos()).thenReturn(500_000_000L);
+        uploader.offer(URL_B, utf8("[2]"));
+
+        when(clock.getMonotonicTimeNanos()).thenReturn(1_000_000_000L);
+        uploader.flush(false);
+
+        verify(sender).send(aryEq(utf8("[1]")), eq(URL_A));
+        verify(sender, never()).send(any(byte[].class), eq(URL_B));
+        assertEquals(1, uploader.getStatistics().getQueueDepth());
+    }
+
+    @Test
+    public void testOfferRejectsWhenFull() throws Exception {
+        assertTrue(uploader.offer(URL_A, utf8("[1]")));
+        assertTrue(uploader.offer(URL_B, utf8("[2]")));
+        assertTrue(uploader.offer(URL_A, utf8("[3]")));
+        assertTrue(uploader.offer(URL_B, utf8("[4]")));
+        assertFalse(uploader.offer(URL_A, utf8("[5]")));
+
+        UploadStatistics stats = uploader.getStatistics();
+        assertEquals(4, stats.getQueueDepth());
+        assertEquals(4, stats.getAcceptedPayloads());
+        assertEquals(1, stats.getRejectedPayloads());
+    }
+
+    @Test
+    public void testFailedSendIsCounted() throws Exception {
+        doThrow(RequestFailedException.class).when(sender).send(any(byte[].class), anyString());
+        uploader.offer(URL_A, utf8("[1]"));
+        uploader.flush(true);
+
+        UploadStatistics stats = uploader.getStatistics();
+        assertEquals(1, stats.getFailedRequests());
+        assertEquals(0, stats.getQueueDepth());
+    }
+
+    @Test
+    public void testFailedBatchIsSpooled() throws Exception {
+        UploadSpool spool = mock(UploadSpool.class);
+        when(spool.append(anyString(), any(byte[].class))).thenReturn(true);
+        uploader = new BatchingUploader(sender, executor, clock, 4, 3, 1000, spool, 10);
+        doThrow(RequestFailedException.class).when(sender).send(any(byte[].class), anyString());
+
+        uploader.offer(URL_A, utf8("[1]"));
+        uploader.offer(URL_A, utf8("[2]"));
+        uploader.flush(true);
+
+        verify(spool).append(eq(URL_A), aryEq(utf8("[1,2]")));
+        assertEquals(1, uploader.getStatistics().getSpooledPayloads());
+    }
+
+    @Test
+    public void testOfferSpoolsWhenFull() throws Exception {
+        UploadSpool spool = mock(UploadSpool.class);
+        when(spool.append(anyString(), any(byte[].class))).thenReturn(true);
+        uploader = new BatchingUploader(sender, executor, clock, 1, 3, 1000, spool, 10);
+
+        assertTrue(uploader.offer(URL_A, utf8("[1]")));
+        assertTrue(uploader.offer(URL_A, utf8("[2]")));
+
+        // Spooled by the executor thread, not by the caller
+        verify(spool, never()).append(anyString(), any(byte[].class));
+        verify(executor).execute(any(Runnable.class));
+        uploader.spoolOverflow();
+
+        verify(spool).append(eq(URL_A), aryEq(utf8("[2]")));
+        UploadStatistics stats = uploader.getStatistics();
+        assertEquals(1, stats.getQueueDepth());
+        assertEquals(0, stats.getRejectedPayloads());
+        assertEquals(1, stats.getSpooledPayloads());
+    }
+
+    @Test
+    public void testOfferRejectsWhenSpoolHandOffIsFull() throws Exception {
+        UploadSpool spool = mock(UploadSpool.class);
+        uploader = new BatchingUploader(sender, executor, clock, 1, 3, 1000, spool, 10);
+
+        assertTrue(uploader.offer(URL_A, utf8("[1]")));
+        assertTrue(uploader.offer(URL_A, utf8("[2]")));
+        assertFalse(uploader.offer(URL_A, utf8("[3]")));
+
+        assertEquals(1, uploader.getStatistics().getRejectedPayloads());
+        verify(spool, never()).append(anyString(), any(byte[].class));
+    }
+
+    @Test
+    public void testLostOrderedPayloadsAreNotSpooled() throws Exception {
+        UploadSpool spool = mock(UploadSpool.class);
+        uploader = new BatchingUploader(sender, executor, clock, 4, 3, 1000, spool, 10);
+        doThrow(RequestFailedException.class).when(sender).send(any(byte[].class), anyString());
+
+        assertTrue(uploader.offerOrdered(URL_A, utf8("[1]"), 0));
+        uploader.flush(true);
+
+        verify(spool, never()).append(anyString(), any(byte[].class));
+        assertEquals(1, uploader.getOrderedLosses(URL_A));
+        assertEquals(0, uploader.getOrderedLosses(URL_B));
+        assertEquals(0, uploader.getStatistics().getQueueDepth());
+    }
+
+    @Test
+    public void testOrderedPayloadIsRejectedAfterLoss() throws Exception {
+        doThrow(RequestFailedException.class).when(sender).send(any(byte[].class), anyString());
+        uploader.offerOrdered(URL_A, utf8("[1]"), 0);
+        uploader.flush(true);
+
+        assertFalse(uploader.offerOrdered(URL_A, utf8("[2]"), 0));
+        assertTrue(uploader.offerOrdered(URL_A, utf8("[3]"), 1));
+        assertTrue(uploader.offerOrdered(URL_B, utf8("[4]"), 0));
+        assertEquals(1, uploader.getStatistics().getRejectedPayloads());
+    }
+
+    @Test
+    public void testCoalesceInOrderKeepsMixedPayloadsSeparate() {
+        List<byte[]> payloads = Arrays.asList(utf8("[1]"), utf8("{}"), utf8("[2]"));
+        assertEquals(Arrays.asList("[1]", "{}", "[2]"), strings(BatchingUploader.coalesceInOrder(payloads)));
+        assertEquals(Arrays.asList("[1,2]"), strings(BatchingUploader.coalesceInOrder(
+                Arrays.asList(utf8("[1]"), utf8("[2]")))));
+    }
+
+    @Test
+    public void testReplaySendsSpooledPayloads() throws Exception {
+        File directory = Files.createTempDirectory("thermostat-spool").toFile();
+        try {
+            UploadSpool spool = UploadSpool.open(directory, 1024, 4096, clock);
+            spool.append(URL_A, utf8("[1]"));
+            spool.append(URL_B, utf8("[2]"));
+            spool.append(URL_A, utf8("[3]"));
+            uploader = new BatchingUploader(sender, executor, clock, 4, 3, 1000, spool, 10);
+
+            when(clock.getMonotonicTimeNanos()).thenReturn(1_000_000_000L);
+            uploader.replay();
+
+            verify(sender).send(aryEq(utf8("[1,3]")), eq(URL_A));
+            verify(sender).send(aryEq(utf8("[2]")), eq(URL_B));
+            assertEquals(0, spool.getPendingRecords());
+            assertEquals(3, uploader.getStatistics().getReplayedPayloads());
+        } finally {
+            TestUtils.deleteRecursively(directory);
+        }
+    }
+
+    @Test
+    public void testDeliveredBodiesAreNotReplayedAgain() throws Exception {
+        File directory = Files.createTempDirectory("thermostat-spool").toFile();
+        try {
+            UploadSpool spool = UploadSpool.open(directory, 1024, 4096, clock);
+            spool.append(URL_A, utf8("{\"a\":1}"));
+            spool.append(URL_A, utf8("[1]"));
+            uploader = new BatchingUploader(sender, executor, clock, 4, 3, 1000, spool, 10);
+            doThrow(RequestFailedException.class).when(sender).send(aryEq(utf8("[1]")), eq(URL_A));
+
+            when(clock.getMonotonicTimeNanos()).thenReturn(1_000_000_000L);
+            uploader.replay();
+            assertEquals(1, spool.getPendingRecords());
+            assertEquals(1, uploader.getStatistics().getReplayedPayloads());
+
+            doNothing().when(sender).send(aryEq(utf8("[1]")), eq(URL_A));
+            when(clock.getMonotonicTimeNanos()).thenReturn(1_000_000_000L + BatchingUploader.REPLAY_BACKOFF_NANOS);
+            uploader.replay();
+
+            verify(sender, times(1)).send(aryEq(utf8("{\"a\":1}")), eq(URL_A));
+            verify(sender, times(2)).send(aryEq(utf8("[1]")), eq(URL_A));
+            assertEquals(0, spool.getPendingRecords());
+            assertEquals(2, uploader.getStatistics().getReplayedPayloads());
+        } finally {
+            TestUtils.deleteRecursively(directory);
+        }
+    }
+
+    @Test
+    public void testReplayIsRateLimited() throws Exception {
+        UploadSpool spool = mock(UploadSpool.class);
+        uploader = new BatchingUploader(sender, executor, clock, 4, 3, 1000, spool, 10);
+
+        // 10 payloads per second allows one payload per 100ms
+        when(clock.getMonotonicTimeNanos()).thenReturn(100_000_000L);
+        uploader.replay();
+
+        verify(spool).peek(1);
+    }
+
+    @Test
+    public void testReplayBacksOffAfterFailure() throws Exception {
+        UploadSpool spool = mock(UploadSpool.class);
+        uploader = new BatchingUploader(sender, executor, clock, 4, 3, 1000, spool, 10);
+        doThrow(RequestFailedException.class).when(sender).send(any(byte[].class), anyString());
+        uploader.offer(URL_A, utf8("[1]"));
+        uploader.flush(true);
+
+        when(clock.getMonotonicTimeNanos()).thenReturn(BatchingUploader.REPLAY_BACKOFF_NANOS - 1);
+        uploader.replay();
+        verify(spool, never()).peek(anyInt());
+
+        when(clock.getMonotonicTimeNanos()).thenReturn(BatchingUploader.REPLAY_BACKOFF_NANOS);
+        uploader.replay();
+        verify(spool).peek(10);
+    }
+
+    @Test
+    public void testStopFlushesEverything() throws Exception {
+        uploader.offer(URL_A, utf8("[1]"));
+        uploader.offer(URL_B, utf8("[2]"));
+        uploader.stop();
+
+        verify(executor).shutdown();
+        verify(sender).send(aryEq(utf8("[1]")), eq(URL_A));
+        verify(sender).send(aryEq(utf8("[2]")), eq(URL_B));
+        verify(sender, times(2)).send(any(byte[].class), anyString());
+    }
+
+    private static byte[] utf8(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static List<String> strings(List<byte[]> bodies) {
+        List<String> result = new ArrayList<>();
+        for (byte[] body : bodies) {
+            result.add(new String(body, StandardCharsets.UTF_8));
+        }
+        return result;
+    }
+}
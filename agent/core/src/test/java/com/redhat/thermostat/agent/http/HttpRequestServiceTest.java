@@ -37,32 +37,52 @@
 package com.redhat.thermostat.agent.http;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.AdditionalMatchers.aryEq;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
-import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.io.File;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
+import org.eclipse.jetty.client.api.ContentProvider;
 import org.eclipse.jetty.client.api.ContentResponse;
 import org.eclipse.jetty.client.api.Request;
+import org.eclipse.jetty.client.api.Response;
+import org.eclipse.jetty.client.api.Result;
+import org.eclipse.jetty.client.util.BufferingResponseListener;
 import org.eclipse.jetty.client.util.StringContentProvider;
 import org.eclipse.jetty.http.HttpMethod;
 import org.eclipse.jetty.http.HttpStatus;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 
 import com.redhat.thermostat.agent.config.AgentStartupConfiguration;
+import com.redhat.thermostat.agent.http.HttpRequestService.BatchingUploaderCreator;
 import com.redhat.thermostat.agent.http.HttpRequestService.HttpClientCreator;
 import com.redhat.thermostat.agent.http.HttpRequestService.RequestFailedException;
 import com.redhat.thermostat.shared.config.SSLConfiguration;
@@ -73,6 +93,8 @@ public class HttpRequestServiceTest {
     private static final String GET_URL = URL + "?q=foo&l=3";
     private static final String payload = "{}";
     private static final String keycloakUrl = "http://127.0.0.1:31000/keycloak";
+    private static final int MAX_IN_FLIGHT = 2;
+    private static final long REQUEST_TIMEOUT = 5000;
 
     private HttpClientCreator clientCreator;
     private HttpClientFacade client;
@@ -83,9 +105,7 @@ public class HttpRequestServiceTest {
         client = mock(HttpClientFacade.class);
         httpRequest = mock(Request.class);
         when(client.newRequest(eq(URL))).thenReturn(httpRequest);
-        ContentResponse response = mock(ContentResponse.class);
-        when(response.getStatus()).thenReturn(HttpStatus.OK_200);
-        when(httpRequest.send()).thenReturn(response);
+        respondWith(httpRequest, HttpStatus.OK_200, null);
         clientCreator = mock(HttpClientCreator.class);
         when(clientCreator.create(any(SSLConfiguration.class))).thenReturn(client);
     }
@@ -158,6 +178,33 @@ public class HttpRequestServiceTest {
         }
     }
 
+    @Test
+    public void testAsyncRequestDoesNotAcquireKeycloakTokenOnCallerThread() throws Exception {
+        AgentStartupConfiguration configuration = mock(AgentStartupConfiguration.class);
+        setupKeycloakConfig(configuration);
+
+        HttpRequestService service = createAndActivateRequestService(configuration);
+
+        Request keycloakRequest = mock(Request.class);
+        setupKeycloakRequest(keycloakRequest);
+        final ContentResponse response = keycloakRequest.send();
+        final Thread[] keycloakThread = new Thread[1];
+        when(keycloakRequest.send()).thenAnswer(new Answer<ContentResponse>() {
+            @Override
+            public ContentResponse answer(InvocationOnMock invocation) throws Throwable {
+                keycloakThread[0] = Thread.currentThread();
+                return response;
+            }
+        });
+
+        service.sendHttpRequestAsync(payload, URL, POST_METHOD).get();
+
+        assertNotNull(keycloakThread[0]);
+        assertNotSame(Thread.currentThread(), keycloakThread[0]);
+        verify(httpRequest).header(eq("Authorization"), eq("Bearer access"));
+        verifyHttpPostRequest(httpRequest);
+    }
+
     @Test
     public void testRequestWithNullPayload() throws Exception {
         AgentStartupConfiguration configuration = createNoKeycloakConfig();
@@ -170,9 +217,9 @@ public class HttpRequestServiceTest {
         verify(client).newRequest(URL);
         verify(configuration).isKeycloakEnabled();
 
-        verify(httpRequest, times(0)).content(any(StringContentProvider.class), anyString());
+        verify(httpRequest, times(0)).content(any(ContentProvider.class), anyString());
         verify(httpRequest).method(eq(HttpMethod.valueOf(POST_METHOD)));
-        verify(httpRequest).send();
+        verify(httpRequest).send(any(Response.CompleteListener.class));
     }
     
     private HttpRequestService createAndActivateRequestService(AgentStartupConfiguration configuration) throws Exception {
@@ -186,10 +233,7 @@ public class HttpRequestServiceTest {
     public void testGetRequestWithResponse() throws Exception {
         String getContent = "foo bar";
         Request request = mock(Request.class);
-        ContentResponse contentResponse = mock(ContentResponse.class);
-        when(contentResponse.getStatus()).thenReturn(HttpStatus.OK_200);
-        when(contentResponse.getContentAsString()).thenReturn(getContent);
-        when(request.send()).thenReturn(contentResponse);
+        respondWith(request, HttpStatus.OK_200, getContent);
         HttpClientFacade getClient = mock(HttpClientFacade.class);
         when(getClient.newRequest(eq(GET_URL))).thenReturn(request);
         HttpClientCreator creator = mock(HttpClientCreator.class);
@@ -202,12 +246,156 @@ public class HttpRequestServiceTest {
         assertEquals(getContent, content);
     }
     
+    @Test
+    public void testAsyncRequestCompletesWhenResponseArrives() throws Exception {
+        AgentStartupConfiguration configuration = createNoKeycloakConfig();
+        Request request = mock(Request.class);
+        when(client.newRequest(eq(GET_URL))).thenReturn(request);
+        HttpRequestService service = createAndActivateRequestService(configuration);
+
+        Future<String> pending = service.sendHttpRequestAsync(null, GET_URL, HttpRequestService.GET, 3, TimeUnit.SECONDS);
+
+        ArgumentCaptor<Response.CompleteListener> listenerCaptor = ArgumentCaptor.forClass(Response.CompleteListener.class);
+        verify(request).send(listenerCaptor.capture());
+        verify(request).timeout(3, TimeUnit.SECONDS);
+        assertFalse(pending.isDone());
+
+        BufferingResponseListener listener = (BufferingResponseListener) listenerCaptor.getValue();
+        Response response = mock(Response.class);
+        when(response.getStatus()).thenReturn(HttpStatus.OK_200);
+        listener.onContent(response, ByteBuffer.wrap("result".getBytes(StandardCharsets.UTF_8)));
+        listener.onComplete(new Result(request, response));
+
+        assertTrue(pending.isDone());
+        assertEquals("result", pending.get());
+    }
+
+    @Test
+    public void testAsyncRequestFailsOnErrorStatus() throws Exception {
+        AgentStartupConfiguration configuration = createNoKeycloakConfig();
+        respondWith(httpRequest, HttpStatus.INTERNAL_SERVER_ERROR_500, null);
+        HttpRequestService service = createAndActivateRequestService(configuration);
+
+        Future<String> pending = service.sendHttpRequestAsync(payload, URL, POST_METHOD);
+        try {
+            pending.get();
+            fail("Expected ExecutionException");
+        } catch (ExecutionException e) {
+            RequestFailedException cause = (RequestFailedException) e.getCause();
+            assertEquals(HttpStatus.INTERNAL_SERVER_ERROR_500, cause.getResponseCode());
+        }
+    }
+
+    @Test
+    public void testInFlightRequestsAreBounded() throws Exception {
+        AgentStartupConfiguration configuration = createNoKeycloakConfig();
+        Request pendingRequest = mock(Request.class); // never completes
+        when(client.newRequest(eq(URL))).thenReturn(pendingRequest);
+        HttpRequestService service = createAndActivateRequestService(configuration);
+        verify(client).setMaxConnectionsPerDestination(MAX_IN_FLIGHT);
+
+        for (int i = 0; i < MAX_IN_FLIGHT; i++) {
+            assertFalse(service.sendHttpRequestAsync(payload, URL, POST_METHOD).isDone());
+        }
+        Future<String> rejected = service.sendHttpRequestAsync(payload, URL + "/other", POST_METHOD);
+        assertTrue(rejected.isDone());
+        verify(pendingRequest, times(MAX_IN_FLIGHT)).send(any(Response.CompleteListener.class));
+
+        // A different destination has its own limit
+        Request otherRequest = mock(Request.class);
+        when(client.newRequest(eq(keycloakUrl))).thenReturn(otherRequest);
+        service.sendHttpRequestAsync(payload, keycloakUrl, POST_METHOD);
+        verify(otherRequest).send(any(Response.CompleteListener.class));
+    }
+
+    @Test
+    public void testSyncRequestWaitsForRequestInFlight() throws Exception {
+        AgentStartupConfiguration configuration = createNoKeycloakConfig();
+        Request pendingRequest = mock(Request.class);
+        when(client.newRequest(eq(URL))).thenReturn(pendingRequest);
+        Request syncRequest = mock(Request.class);
+        when(client.newRequest(eq(URL + "/sync"))).thenReturn(syncRequest);
+        respondWith(syncRequest, HttpStatus.OK_200, null);
+        final HttpRequestService service = createAndActivateRequestService(configuration);
+
+        for (int i = 0; i < MAX_IN_FLIGHT; i++) {
+            service.sendHttpRequestAsync(payload, URL, POST_METHOD);
+        }
+        ArgumentCaptor<Response.CompleteListener> listeners = ArgumentCaptor.forClass(Response.CompleteListener.class);
+        verify(pendingRequest, times(MAX_IN_FLIGHT)).send(listeners.capture());
+
+        FutureTask<String> sync = new FutureTask<>(new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                return service.sendHttpRequest(payload, URL + "/sync", POST_METHOD);
+            }
+        });
+        new Thread(sync).start();
+        try {
+            sync.get(100, TimeUnit.MILLISECONDS);
+            fail("Expected the request to wait");
+        } catch (TimeoutException expected) {
+            // pass
+        }
+        verify(syncRequest, never()).send(any(Response.CompleteListener.class));
+
+        Response response = mock(Response.class);
+        when(response.getStatus()).thenReturn(HttpStatus.OK_200);
+        listeners.getValue().onComplete(new Result(pendingRequest, response));
+
+        assertNull(sync.get(REQUEST_TIMEOUT, TimeUnit.MILLISECONDS));
+        verify(syncRequest).send(any(Response.CompleteListener.class));
+    }
+
+    @Test
+    public void testQueueHttpPostUsesUploader() throws Exception {
+        AgentStartupConfiguration configuration = createNoKeycloakConfig();
+        BatchingUploader uploader = mock(BatchingUploader.class);
+        when(uploader.offer(eq(URL), aryEq(payload.getBytes(StandardCharsets.UTF_8)))).thenReturn(true);
+        UploadStatistics stats = mock(UploadStatistics.class);
+        when(uploader.getStatistics()).thenReturn(stats);
+        BatchingUploaderCreator uploaderCreator = mock(BatchingUploaderCreator.class);
+        when(uploaderCreator.create(any(BatchingUploader.Sender.class), eq(configuration), any(File.class))).thenReturn(uploader);
+
+        HttpRequestService service = new HttpRequestService(clientCreator, uploaderCreator, configuration);
+        service.activate();
+        verify(uploader).start();
+
+        assertTrue(service.queueHttpPost(payload, URL));
+        verify(uploader).offer(eq(URL), aryEq(payload.getBytes(StandardCharsets.UTF_8)));
+
+        JsonPayloadWriter writer = new JsonPayloadWriter();
+        writer.beginObject().endObject();
+        assertTrue(service.queueHttpPost(writer, URL));
+        verify(uploader, times(2)).offer(eq(URL), aryEq(payload.getBytes(StandardCharsets.UTF_8)));
+        assertSame(stats, service.getUploadStatistics());
+
+        service.deactivate();
+        verify(uploader).stop();
+    }
+
+    @Test
+    public void testUploaderSendsPostRequests() throws Exception {
+        AgentStartupConfiguration configuration = createNoKeycloakConfig();
+        BatchingUploaderCreator uploaderCreator = mock(BatchingUploaderCreator.class);
+        when(uploaderCreator.create(any(BatchingUploader.Sender.class), eq(configuration), any(File.class))).thenReturn(mock(BatchingUploader.class));
+
+        HttpRequestService service = new HttpRequestService(clientCreator, uploaderCreator, configuration);
+        service.activate();
+
+        ArgumentCaptor<BatchingUploader.Sender> senderCaptor = ArgumentCaptor.forClass(BatchingUploader.Sender.class);
+        verify(uploaderCreator).create(senderCaptor.capture(), eq(configuration), any(File.class));
+        senderCaptor.getValue().send(payload.getBytes(StandardCharsets.UTF_8), URL);
+
+        verifyHttpPostRequest(httpRequest);
+    }
+
     @Test(expected = RequestFailedException.class)
     public void failureThrowsRequestFailedException() throws Exception {
         Request request = mock(Request.class);
         when(client.newRequest(any(String.class))).thenReturn(request);
         AgentStartupConfiguration configuration = createNoKeycloakConfig();
-        doThrow(IOException.class).when(request).send();
+        failWith(request, new IOException());
         HttpRequestService service = createAndActivateRequestService(configuration);
         service.sendHttpRequest("foo", "bar", HttpRequestService.DELETE /*any valid method*/);
     }
@@ -215,18 +403,31 @@ public class HttpRequestServiceTest {
     private AgentStartupConfiguration createNoKeycloakConfig() {
         AgentStartupConfiguration configuration = mock(AgentStartupConfiguration.class);
         when(configuration.isKeycloakEnabled()).thenReturn(false);
+        setupRequestLimits(configuration);
         return configuration;
     }
 
     private void verifyHttpPostRequest(Request httpRequest) throws InterruptedException, ExecutionException, TimeoutException {
         verify(client).newRequest(URL);
-        verify(httpRequest).content(any(StringContentProvider.class), eq("application/json"));
+        ArgumentCaptor<ContentProvider> contentCaptor = ArgumentCaptor.forClass(ContentProvider.class);
+        verify(httpRequest).content(contentCaptor.capture(), eq("application/json"));
+        assertEquals(payload, readContent(contentCaptor.getValue()));
         verify(httpRequest).method(eq(HttpMethod.valueOf(POST_METHOD)));
-        verify(httpRequest).send();
+        verify(httpRequest).timeout(REQUEST_TIMEOUT, TimeUnit.MILLISECONDS);
+        verify(httpRequest).send(any(Response.CompleteListener.class));
+    }
+
+    private static String readContent(ContentProvider provider) {
+        StringBuilder content = new StringBuilder();
+        for (ByteBuffer buffer : provider) {
+            content.append(StandardCharsets.UTF_8.decode(buffer));
+        }
+        return content.toString();
     }
 
     private void setupKeycloakConfig(AgentStartupConfiguration configuration) {
         when(configuration.isKeycloakEnabled()).thenReturn(true);
+        setupRequestLimits(configuration);
         when(configuration.getKeycloakUrl()).thenReturn(keycloakUrl);
         when(configuration.getKeycloakClient()).thenReturn("client");
         when(configuration.getKeycloakRealm()).thenReturn("realm");
@@ -234,6 +435,38 @@ public class HttpRequestServiceTest {
         when(configuration.getKeycloakPassword()).thenReturn("password");
     }
 
+    private void setupRequestLimits(AgentStartupConfiguration configuration) {
+        when(configuration.getHttpMaxRequestsPerDestination()).thenReturn(MAX_IN_FLIGHT);
+        when(configuration.getHttpRequestTimeout()).thenReturn(REQUEST_TIMEOUT);
+    }
+
+    private static void respondWith(final Request request, final int status, final String content) {
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                BufferingResponseListener listener = (BufferingResponseListener) invocation.getArguments()[0];
+                Response response = mock(Response.class);
+                when(response.getStatus()).thenReturn(status);
+                if (content != null) {
+                    listener.onContent(response, ByteBuffer.wrap(content.getBytes(StandardCharsets.UTF_8)));
+                }
+                listener.onComplete(new Result(request, response));
+                return null;
+            }
+        }).when(request).send(any(Response.CompleteListener.class));
+    }
+
+    private static void failWith(final Request request, final Throwable failure) {
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                Response.CompleteListener listener = (Response.CompleteListener) invocation.getArguments()[0];
+                listener.onComplete(new Result(request, failure, mock(Response.class)));
+                return null;
+            }
+        }).when(request).send(any(Response.CompleteListener.class));
+    }
+
     private void setupKeycloakRequest(Request keycloakRequest) throws InterruptedException, ExecutionException, TimeoutException {
         when(client.newRequest(keycloakUrl + "/auth/realms/realm/protocol/openid-connect/token")).thenReturn(keycloakRequest);
 
@@ -0,0 +1,163 @@
+/*
+ * Copyright 2012-2017 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+package com.redhat.thermostat.agent.http;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+import com.google.gson.stream.JsonWriter;
+
+public class JsonPayloadWriterTest {
+
+    @Test
+    public void testStructure() {
+        JsonPayloadWriter writer = new JsonPayloadWriter(4);
+        writer.beginArray();
+        writer.beginObject();
+        writer.name("a").value(1);
+        writer.name("b").beginArray().value(true).value(false).nullValue().endArray();
+        writer.name("c").value((String) null);
+        writer.name("d").beginObject().endObject();
+        writer.endObject();
+        writer.beginObject().endObject();
+        writer.endArray();
+
+        assertEquals("[{\"a\":1,\"b\":[true,false,null],\"c\":null,\"d\":{}},{}]", writer.toString());
+    }
+
+    @Test
+    public void testNumbers() throws IOException {
+        long[] longs = { 0, 7, -7, 10, 1234567890123L, Long.MAX_VALUE, Long.MIN_VALUE };
+        double[] doubles = { 0.0, -0.0, 1.0, -42.0, 0.5, 33.333, 1e7, 9999999.0, 1e-5, Double.MAX_VALUE };
+        JsonPayloadWriter writer = new JsonPayloadWriter();
+        StringWriter expected = new StringWriter();
+        JsonWriter gson = new JsonWriter(expected);
+        writer.beginArray();
+        gson.beginArray();
+        for (long value : longs) {
+            writer.value(value);
+            gson.value(value);
+        }
+        for (double value : doubles) {
+            writer.value(value);
+            gson.value(value);
+        }
+        writer.endArray();
+        gson.endArray();
+        gson.close();
+
+        assertEquals(expected.toString(), writer.toString());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNaNIsRejected() {
+        new JsonPayloadWriter().value(Double.NaN);
+    }
+
+    @Test
+    public void testNumberLong() {
+        JsonPayloadWriter writer = new JsonPayloadWriter();
+        writer.beginObject().name("t").numberLong(-100).name("u").numberLong(5).endObject();
+        assertEquals("{\"t\":{\"$numberLong\":\"-100\"},\"u\":{\"$numberLong\":\"5\"}}", writer.toString());
+    }
+
+    @Test
+    public void testStringsMatchGson() throws IOException {
+        String[] values = { "", "plain", "quote\" backslash\\ slash/", "\t\b\n\r\f\u0001\u001f",
+                "caf\u00e9 \u20ac", "\ud83d\ude00", "line\u2028para\u2029", "<html>&'=" };
+        JsonPayloadWriter writer = new JsonPayloadWriter(1);
+        StringWriter expected = new StringWriter();
+        JsonWriter gson = new JsonWriter(expected);
+        writer.beginObject();
+        gson.beginObject();
+        for (String value : values) {
+            writer.name(value).value(value);
+            gson.name(value).value(value);
+        }
+        writer.endObject();
+        gson.endObject();
+        gson.close();
+
+        assertArrayEquals(expected.toString().getBytes(StandardCharsets.UTF_8), writer.toByteArray());
+    }
+
+    @Test
+    public void testOutput() throws IOException {
+        JsonPayloadWriter writer = new JsonPayloadWriter();
+        writer.beginArray().value("x").endArray();
+        assertEquals(5, writer.size());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writer.writeTo(out);
+        assertEquals("[\"x\"]", new String(out.toByteArray(), StandardCharsets.UTF_8));
+
+        writer.reset();
+        assertEquals(0, writer.size());
+        writer.value(1);
+        assertEquals("1", writer.toString());
+    }
+
+    @Test
+    public void testObtainReusesWriterPerThread() throws InterruptedException {
+        final JsonPayloadWriter first = JsonPayloadWriter.obtain();
+        first.value(1);
+        JsonPayloadWriter second = JsonPayloadWriter.obtain();
+        assertSame(first, second);
+        assertEquals(0, second.size());
+
+        final JsonPayloadWriter[] other = new JsonPayloadWriter[1];
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                other[0] = JsonPayloadWriter.obtain();
+            }
+        });
+        thread.start();
+        thread.join();
+        assertNotSame(first, other[0]);
+    }
+}
+
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2012-2017 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+package com.redhat.thermostat.agent.http;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.eclipse.jetty.client.api.ContentProvider;
+import org.eclipse.jetty.client.api.Request;
+import org.eclipse.jetty.http.HttpHeader;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import com.redhat.thermostat.agent.http.PayloadEncoder.Compression;
+
+public class PayloadEncoderTest {
+
+    private static final String SMALL_JSON = "[{\"a\":{\"$numberLong\":\"1\"}}]";
+
+    private Request request;
+    private String largeJson;
+
+    @Before
+    public void setup() {
+        request = mock(Request.class);
+        StringBuilder builder = new StringBuilder("[");
+        for (int i = 0; i < 100; i++) {
+            if (i > 0) {
+                builder.append(',');
+            }
+            builder.append("{\"used\":{\"$numberLong\":\"").append(i).append("\"}}");
+        }
+        largeJson = builder.append(']').toString();
+    }
+
+    @Test
+    public void testPlainJson() throws IOException {
+        PayloadEncoder encoder = new PayloadEncoder(Compression.NONE);
+        encoder.setContent(request, utf8(largeJson));
+
+        verify(request, never()).header(any(HttpHeader.class), any(String.class));
+        byte[] body = captureContent(request, PayloadEncoder.JSON_CONTENT_TYPE);
+        assertEquals(largeJson, new String(body, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testGzip() throws IOException {
+        PayloadEncoder encoder = new PayloadEncoder(Compression.GZIP);
+        encoder.setContent(request, utf8(largeJson));
+
+        verify(request).header(HttpHeader.CONTENT_ENCODING, "gzip");
+        byte[] body = captureContent(request, PayloadEncoder.JSON_CONTENT_TYPE);
+        String decoded = new String(readAll(new GZIPInputStream(new ByteArrayInputStream(body))), StandardCharsets.UTF_8);
+        assertEquals(largeJson, decoded);
+    }
+
+    @Test
+    public void testDeflate() throws IOException {
+        PayloadEncoder encoder = new PayloadEncoder(Compression.DEFLATE);
+        encoder.setContent(request, utf8(largeJson));
+
+        verify(request).header(HttpHeader.CONTENT_ENCODING, "deflate");
+        byte[] body = captureContent(request, PayloadEncoder.JSON_CONTENT_TYPE);
+        String decoded = new String(readAll(new InflaterInputStream(new ByteArrayInputStream(body))), StandardCharsets.UTF_8);
+        assertEquals(largeJson, decoded);
+    }
+
+    @Test
+    public void testSmallBodiesAreNotCompressed() throws IOException {
+        PayloadEncoder encoder = new PayloadEncoder(Compression.GZIP);
+        encoder.setContent(request, utf8(SMALL_JSON));
+
+        verify(request, never()).header(any(HttpHeader.class), any(String.class));
+        byte[] body = captureContent(request, PayloadEncoder.JSON_CONTENT_TYPE);
+        assertEquals(SMALL_JSON, new String(body, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testConfigValues() {
+        assertEquals(Compression.NONE, Compression.fromConfig(null));
+        assertEquals(Compression.GZIP, Compression.fromConfig("gzip"));
+    }
+
+    private static byte[] captureContent(Request request, String contentType) {
+        ArgumentCaptor<ContentProvider> captor = ArgumentCaptor.forClass(ContentProvider.class);
+        verify(request).content(captor.capture(), eq(contentType));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (ByteBuffer buffer : captor.getValue()) {
+            byte[] bytes = new byte[buffer.remaining()];
+            buffer.get(bytes);
+            out.write(bytes, 0, bytes.length);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] utf8(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        in.close();
+        return out.toByteArray();
+    }
+}
+
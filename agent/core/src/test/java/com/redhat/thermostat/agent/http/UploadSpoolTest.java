@@ -0,0 +1,252 @@
+/*
+ * Copyright 2012-2017 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+package com.redhat.thermostat.agent.http;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.redhat.thermostat.common.Clock;
+import com.redhat.thermostat.testutils.TestUtils;
+
+public class UploadSpoolTest {
+
+    private static final int SEGMENT_SIZE = 1024;
+    private static final String URL = "http://127.0.0.1:30000/test";
+
+    private File directory;
+    private Clock clock;
+
+    @Before
+    public void setup() throws IOException {
+        directory = Files.createTempDirectory("thermostat-spool").toFile();
+        clock = mock(Clock.class);
+        when(clock.getRealTimeMillis()).thenReturn(42L);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        TestUtils.deleteRecursively(directory);
+    }
+
+    @Test
+    public void testAppendAndPeek() throws IOException {
+        UploadSpool spool = UploadSpool.open(directory, SEGMENT_SIZE, 4 * SEGMENT_SIZE, clock);
+        assertTrue(spool.append(URL, utf8("[1]")));
+        assertTrue(spool.append(URL + "/other", utf8("[2]")));
+
+        List<UploadSpool.Record> records = spool.peek(10);
+        assertEquals(2, records.size());
+        assertEquals(URL, records.get(0).getUrl());
+        assertEquals("[1]", new String(records.get(0).getPayload(), StandardCharsets.UTF_8));
+        assertEquals(42L, records.get(0).getTimestamp());
+        assertEquals(URL + "/other", records.get(1).getUrl());
+        assertEquals("[2]", new String(records.get(1).getPayload(), StandardCharsets.UTF_8));
+        assertEquals(2, spool.getPendingRecords());
+        assertEquals(42L, spool.getOldestTimestamp());
+
+        // peek does not remove anything
+        assertEquals(2, spool.peek(10).size());
+        assertEquals(1, spool.peek(1).size());
+    }
+
+    @Test
+    public void testCommitRemovesRecords() throws IOException {
+        UploadSpool spool = UploadSpool.open(directory, SEGMENT_SIZE, 4 * SEGMENT_SIZE, clock);
+        spool.append(URL, utf8("[1]"));
+        spool.append(URL, utf8("[2]"));
+
+        spool.commit(spool.peek(1));
+
+        List<UploadSpool.Record> records = spool.peek(10);
+        assertEquals(1, records.size());
+        assertEquals("[2]", new String(records.get(0).getPayload(), StandardCharsets.UTF_8));
+        assertEquals(1, spool.getPendingRecords());
+
+        spool.commit(records);
+        assertEquals(0, spool.getPendingRecords());
+        assertEquals(-1, spool.getOldestTimestamp());
+        assertTrue(spool.peek(10).isEmpty());
+    }
+
+    @Test
+    public void testRecordsSurviveReopen() throws IOException {
+        UploadSpool spool = UploadSpool.open(directory, SEGMENT_SIZE, 4 * SEGMENT_SIZE, clock);
+        spool.append(URL, utf8("[1]"));
+        spool.append(URL, utf8("[2]"));
+        spool.append(URL, utf8("[3]"));
+        spool.commit(spool.peek(1));
+        spool.close();
+
+        UploadSpool reopened = UploadSpool.open(directory, SEGMENT_SIZE, 4 * SEGMENT_SIZE, clock);
+        List<UploadSpool.Record> records = reopened.peek(10);
+        assertEquals(2, records.size());
+        assertEquals("[2]", new String(records.get(0).getPayload(), StandardCharsets.UTF_8));
+        assertEquals("[3]", new String(records.get(1).getPayload(), StandardCharsets.UTF_8));
+
+        // Appending continues after the recovered records
+        reopened.append(URL, utf8("[4]"));
+        assertEquals(3, reopened.peek(10).size());
+    }
+
+    @Test
+    public void testDamagedRecordIsDiscardedOnRecovery() throws IOException {
+        UploadSpool spool = UploadSpool.open(directory, SEGMENT_SIZE, 4 * SEGMENT_SIZE, clock);
+        spool.append(URL, utf8("[1]"));
+        spool.append(URL, utf8("[2]"));
+        spool.close();
+
+        // Corrupt the payload of the second record
+        File[] segments = directory.listFiles();
+        assertEquals(1, segments.length);
+        int recordSize = UploadSpool.HEADER_SIZE + 2 + URL.length() + "[1]".length();
+        try (RandomAccessFile file = new RandomAccessFile(segments[0], "rw")) {
+            file.seek(2 * recordSize - 1);
+            file.write('x');
+        }
+
+        UploadSpool reopened = UploadSpool.open(directory, SEGMENT_SIZE, 4 * SEGMENT_SIZE, clock);
+        List<UploadSpool.Record> records = reopened.peek(10);
+        assertEquals(1, records.size());
+        assertEquals("[1]", new String(records.get(0).getPayload(), StandardCharsets.UTF_8));
+
+        // The damaged record's space is reused
+        reopened.append(URL, utf8("[3]"));
+        records = reopened.peek(10);
+        assertEquals(2, records.size());
+        assertEquals("[3]", new String(records.get(1).getPayload(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testSegmentsRotateAndOldestIsDropped() throws IOException {
+        UploadSpool spool = UploadSpool.open(directory, SEGMENT_SIZE, 2 * SEGMENT_SIZE, clock);
+        String payload = createPayload(400);
+        for (int i = 0; i < 6; i++) {
+            assertTrue(spool.append(URL, utf8(payload)));
+        }
+        // Two records fit per segment, at most two segments are kept
+        assertEquals(2, directory.listFiles().length);
+        assertEquals(4, spool.getPendingRecords());
+        assertEquals(2, spool.getDroppedRecords());
+        assertEquals(2 * SEGMENT_SIZE, spool.getSizeOnDisk());
+    }
+
+    @Test
+    public void testCommitSkipsRecordsOfDroppedSegments() throws IOException {
+        UploadSpool spool = UploadSpool.open(directory, SEGMENT_SIZE, 2 * SEGMENT_SIZE, clock);
+        String payload = createPayload(400);
+        spool.append(URL, utf8(payload));
+        spool.append(URL, utf8(payload));
+        List<UploadSpool.Record> peeked = spool.peek(2);
+        // Fills two more segments, which drops the one peeked at
+        for (int i = 0; i < 4; i++) {
+            spool.append(URL, utf8(payload));
+        }
+        assertEquals(4, spool.getPendingRecords());
+        assertEquals(2, spool.getDroppedRecords());
+
+        spool.commit(peeked);
+        assertEquals(4, spool.getPendingRecords());
+        assertEquals(2, spool.getDroppedRecords());
+        assertEquals(4, spool.peek(10).size());
+    }
+
+    @Test
+    public void testReplayedSegmentsAreDeleted() throws IOException {
+        UploadSpool spool = UploadSpool.open(directory, SEGMENT_SIZE, 4 * SEGMENT_SIZE, clock);
+        String payload = createPayload(400);
+        for (int i = 0; i < 5; i++) {
+            spool.append(URL, utf8(payload));
+        }
+        assertEquals(3, directory.listFiles().length);
+
+        spool.commit(spool.peek(4));
+        assertEquals(1, directory.listFiles().length);
+        assertEquals(1, spool.getPendingRecords());
+    }
+
+    @Test
+    public void testAppendedRecordsAreSyncedAfterInterval() throws IOException {
+        UploadSpool spool = UploadSpool.open(directory, SEGMENT_SIZE, 4 * SEGMENT_SIZE, clock);
+        spool.append(URL, utf8("[1]"));
+        assertTrue(spool.getUnsyncedBytes() > 0);
+
+        when(clock.getMonotonicTimeNanos()).thenReturn(TimeUnit.MILLISECONDS.toNanos(UploadSpool.SYNC_INTERVAL_MILLIS) - 1);
+        spool.syncIfDue();
+        assertTrue(spool.getUnsyncedBytes() > 0);
+
+        when(clock.getMonotonicTimeNanos()).thenReturn(TimeUnit.MILLISECONDS.toNanos(UploadSpool.SYNC_INTERVAL_MILLIS));
+        spool.syncIfDue();
+        assertEquals(0, spool.getUnsyncedBytes());
+    }
+
+    @Test
+    public void testOversizedPayloadIsRejected() throws IOException {
+        UploadSpool spool = UploadSpool.open(directory, SEGMENT_SIZE, 4 * SEGMENT_SIZE, clock);
+        assertFalse(spool.append(URL, utf8(createPayload(SEGMENT_SIZE))));
+        assertEquals(0, spool.getPendingRecords());
+        assertEquals(1, spool.getDroppedRecords());
+    }
+
+    private static String createPayload(int length) {
+        StringBuilder builder = new StringBuilder(length);
+        builder.append('[');
+        while (builder.length() < length - 1) {
+            builder.append('1');
+        }
+        builder.append(']');
+        return builder.toString();
+    }
+
+    private static byte[] utf8(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -37,6 +37,7 @@
 package com.redhat.thermostat.backend;
 
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 
 import org.junit.After;
@@ -44,9 +45,14 @@ import org.junit.Before;
 import org.junit.Test;
 import org.mockito.ArgumentCaptor;
 
+import static org.junit.Assert.assertEquals;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
 import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
@@ -155,6 +161,147 @@ public class PollingBackendTest {
         verifyNoMoreInteractions(mockAction);
     }
 
+    @Test
+    public void verifyActivateWithConfiguredInterval() {
+        backend.setPollingInterval(PollingInterval.fixed(5000));
+        backend.activate();
+        verify(mockExecutor).scheduleAtFixedRate(any(Runnable.class), eq(0L), eq(5000L), eq(TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void verifyChangingIntervalWhileActiveReschedules() {
+        ScheduledFuture<?> future = mock(ScheduledFuture.class);
+        doReturn(future).when(mockExecutor).scheduleAtFixedRate(any(Runnable.class), anyLong(), anyLong(), any(TimeUnit.class));
+        backend.activate();
+
+        backend.setPollingInterval(PollingInterval.fixed(2000));
+
+        verify(future).cancel(false);
+        verify(mockExecutor).scheduleAtFixedRate(any(Runnable.class), eq(2000L), eq(2000L), eq(TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void verifyAdaptiveTickReschedulesItself() {
+        backend.setPollingInterval(PollingInterval.adaptive(1000, 250, 8000));
+        backend.activate();
+
+        ArgumentCaptor<Runnable> tick = ArgumentCaptor.forClass(Runnable.class);
+        verify(mockExecutor).schedule(tick.capture(), eq(0L), eq(TimeUnit.MILLISECONDS));
+        verify(mockExecutor, never()).scheduleAtFixedRate(any(Runnable.class), anyLong(), anyLong(), any(TimeUnit.class));
+
+        tick.getValue().run();
+        verify(mockExecutor).schedule(tick.getValue(), 1000L, TimeUnit.MILLISECONDS);
+
+        backend.deactivate();
+        tick.getValue().run();
+        verify(mockExecutor, times(2)).schedule(any(Runnable.class), anyLong(), any(TimeUnit.class));
+    }
+
+    @Test
+    public void verifyAdaptiveIntervalBacksOffWhileQuiet() {
+        backend.setPollingInterval(PollingInterval.adaptive(1000, 250, 3000));
+        backend.activate();
+
+        for (int i = 1; i < PollingBackend.QUIET_SAMPLES_BEFORE_BACKOFF; i++) {
+            assertEquals(1000, backend.nextInterval());
+        }
+        assertEquals(2000, backend.nextInterval());
+        for (int i = 0; i < PollingBackend.QUIET_SAMPLES_BEFORE_BACKOFF; i++) {
+            backend.nextInterval();
+        }
+        // capped at the maximum
+        assertEquals(3000, backend.getCurrentIntervalMillis());
+    }
+
+    @Test
+    public void verifyAdaptiveIntervalSpeedsUpOnChange() {
+        backend.setPollingInterval(PollingInterval.adaptive(1000, 300, 8000));
+        backend.activate();
+
+        backend.sampleChanged();
+        assertEquals(500, backend.nextInterval());
+        backend.sampleChanged();
+        assertEquals(300, backend.nextInterval());
+        // changes are reported per sample
+        assertEquals(300, backend.nextInterval());
+    }
+
+    @Test
+    public void verifyAdaptiveIntervalDropsToMinimumOnThreshold() {
+        backend.setPollingInterval(PollingInterval.adaptive(4000, 100, 8000));
+        backend.activate();
+
+        backend.thresholdCrossed();
+        assertEquals(100, backend.nextInterval());
+    }
+
+    @Test
+    public void verifyFeedbackIgnoredForFixedInterval() {
+        backend.activate();
+        backend.thresholdCrossed();
+        assertEquals(1000, backend.getCurrentIntervalMillis());
+    }
+
+    @Test
+    public void verifyPollingOnSharedScheduler() {
+        PollingScheduler scheduler = mock(PollingScheduler.class);
+        ScheduledFuture<?> future = mock(ScheduledFuture.class);
+        doReturn(future).when(scheduler).scheduleAtFixedRate(any(String.class), any(Runnable.class), anyLong(), anyLong(), any(TimeUnit.class));
+        PollingBackend shared = createSharedBackend();
+        shared.setPollingScheduler(scheduler);
+
+        shared.activate();
+        verify(scheduler).scheduleAtFixedRate(eq("backend-name"), any(Runnable.class), eq(0L), eq(1000L), eq(TimeUnit.MILLISECONDS));
+
+        shared.deactivate();
+        verify(future).cancel(false);
+
+        // unlike an executor of its own, the shared scheduler can be used again
+        shared.activate();
+        verify(scheduler, times(2)).scheduleAtFixedRate(eq("backend-name"), any(Runnable.class), eq(0L), eq(1000L), eq(TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void verifyAdaptivePollingOnSharedScheduler() {
+        PollingScheduler scheduler = mock(PollingScheduler.class);
+        PollingBackend shared = createSharedBackend();
+        shared.setPollingScheduler(scheduler);
+        shared.setPollingInterval(PollingInterval.adaptive(1000, 250, 8000));
+        shared.activate();
+
+        ArgumentCaptor<Runnable> tick = ArgumentCaptor.forClass(Runnable.class);
+        verify(scheduler).schedule(eq("backend-name"), tick.capture(), eq(0L), eq(TimeUnit.MILLISECONDS));
+        tick.getValue().run();
+        verify(scheduler).schedule("backend-name", tick.getValue(), 1000L, TimeUnit.MILLISECONDS);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void verifyActivateWithoutSchedulerFails() {
+        createSharedBackend().activate();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void verifySchedulerCanNotChangeWhileActive() {
+        backend.activate();
+        backend.setPollingScheduler(mock(PollingScheduler.class));
+    }
+
+    private PollingBackend createSharedBackend() {
+        Version mockVersion = mock(Version.class);
+        when(mockVersion.getVersionNumber()).thenReturn("backend-version");
+        return new PollingBackend("backend-name", "backend-description", "backend-vendor", mockVersion) {
+
+            @Override
+            public int getOrderValue() {
+                return 0;
+            }
+
+            @Override
+            protected void doScheduledActions() {
+                // nothing
+            }};
+    }
+
     private interface CustomActivateTester {
         void activate();
         void deactivate();
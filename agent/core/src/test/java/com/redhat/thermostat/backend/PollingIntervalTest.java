@@ -0,0 +1,79 @@
+/*
+ * Copyright 2012-2017 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+package com.redhat.thermostat.backend;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class PollingIntervalTest {
+
+    @Test
+    public void testFixed() {
+        PollingInterval interval = PollingInterval.fixed(500);
+        assertFalse(interval.isAdaptive());
+        assertEquals(500, interval.getIntervalMillis());
+        assertEquals(500, interval.getMinIntervalMillis());
+        assertEquals(500, interval.getMaxIntervalMillis());
+    }
+
+    @Test
+    public void testAdaptive() {
+        PollingInterval interval = PollingInterval.adaptive(1000, 250, 10000);
+        assertTrue(interval.isAdaptive());
+        assertEquals(1000, interval.getIntervalMillis());
+        assertEquals(250, interval.getMinIntervalMillis());
+        assertEquals(10000, interval.getMaxIntervalMillis());
+    }
+
+    @Test
+    public void testDefault() {
+        assertEquals(PollingInterval.fixed(PollingInterval.DEFAULT_INTERVAL_MILLIS), PollingInterval.DEFAULT);
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testZeroIntervalRejected() {
+        PollingInterval.fixed(0);
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testIntervalOutsideBoundsRejected() {
+        PollingInterval.adaptive(100, 250, 1000);
+    }
+}
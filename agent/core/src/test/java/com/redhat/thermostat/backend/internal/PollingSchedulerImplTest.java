@@ -0,0 +1,247 @@
+/*
+ * Copyright 2012-2017 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+package com.redhat.thermostat.backend.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import com.redhat.thermostat.backend.PollingStatistics;
+import com.redhat.thermostat.common.Clock;
+
+public class PollingSchedulerImplTest {
+
+    private Clock clock;
+    private ScheduledExecutorService timer;
+    private ExecutorService workers;
+    private ScheduledFuture<?> future;
+    private PollingSchedulerImpl scheduler;
+
+    @Before
+    public void setUp() {
+        clock = mock(Clock.class);
+        timer = mock(ScheduledExecutorService.class);
+        workers = mock(ExecutorService.class);
+        future = mock(ScheduledFuture.class);
+        doReturn(future).when(timer).scheduleAtFixedRate(any(Runnable.class), anyLong(), anyLong(), any(TimeUnit.class));
+        doReturn(future).when(timer).schedule(any(Runnable.class), anyLong(), any(TimeUnit.class));
+        scheduler = new PollingSchedulerImpl(clock, timer, workers);
+    }
+
+    @Test
+    public void testTaskRunsOnWorkers() {
+        Runnable task = mock(Runnable.class);
+        ScheduledFuture<?> result = scheduler.scheduleAtFixedRate("foo", task, 0, 1, TimeUnit.SECONDS);
+        assertSame(future, result);
+
+        fireTimer();
+        verify(task, never()).run();
+        runWorker();
+        verify(task).run();
+
+        PollingStatistics stats = getStatistics("foo");
+        assertEquals(1, stats.getRuns());
+        assertEquals(0, stats.getSkippedRuns());
+    }
+
+    @Test
+    public void testRunIsSkippedWhilePreviousRunIsPending() {
+        Runnable task = mock(Runnable.class);
+        scheduler.scheduleAtFixedRate("foo", task, 0, 1, TimeUnit.SECONDS);
+
+        Runnable dispatch = fireTimer();
+        dispatch.run();
+        verify(workers).execute(any(Runnable.class));
+        assertEquals(1, getStatistics("foo").getSkippedRuns());
+
+        runWorker();
+        dispatch.run();
+        verify(workers, times(2)).execute(any(Runnable.class));
+    }
+
+    @Test
+    public void testOverrunIsCounted() {
+        when(clock.getMonotonicTimeNanos()).thenReturn(0L, 1_500_000_000L, 2_000_000_000L, 2_500_000_000L);
+        scheduler.scheduleAtFixedRate("foo", mock(Runnable.class), 0, 1, TimeUnit.SECONDS);
+
+        Runnable dispatch = fireTimer();
+        runWorker();
+        dispatch.run();
+        runWorker();
+
+        PollingStatistics stats = getStatistics("foo");
+        assertEquals(2, stats.getRuns());
+        assertEquals(1, stats.getOverruns());
+        assertEquals(500_000_000L, stats.getLastRunNanos());
+        assertEquals(1_500_000_000L, stats.getMaxRunNanos());
+        assertEquals(1_000_000_000L, stats.getAverageRunNanos());
+    }
+
+    @Test
+    public void testSingleRunNeverOverruns() {
+        when(clock.getMonotonicTimeNanos()).thenReturn(0L, 5_000_000_000L);
+        scheduler.schedule("foo", mock(Runnable.class), 1, TimeUnit.SECONDS);
+
+        ArgumentCaptor<Runnable> dispatch = ArgumentCaptor.forClass(Runnable.class);
+        verify(timer).schedule(dispatch.capture(), eq(1L), eq(TimeUnit.SECONDS));
+        dispatch.getValue().run();
+        runWorker();
+
+        assertEquals(0, getStatistics("foo").getOverruns());
+    }
+
+    @Test
+    public void testOwnerWithLessTimeGoesFirst() {
+        when(clock.getMonotonicTimeNanos()).thenReturn(0L, 100L);
+        Runnable busyTask = mock(Runnable.class);
+        Runnable idleTask = mock(Runnable.class);
+        scheduler.scheduleAtFixedRate("busy", busyTask, 0, 1, TimeUnit.SECONDS);
+        scheduler.scheduleAtFixedRate("idle", idleTask, 0, 1, TimeUnit.SECONDS);
+        ArgumentCaptor<Runnable> dispatches = ArgumentCaptor.forClass(Runnable.class);
+        verify(timer, times(2)).scheduleAtFixedRate(dispatches.capture(), anyLong(), anyLong(), any(TimeUnit.class));
+        Runnable busyDispatch = dispatches.getAllValues().get(0);
+        Runnable idleDispatch = dispatches.getAllValues().get(1);
+
+        busyDispatch.run();
+        runWorker();
+
+        // due first, but has used more time
+        busyDispatch.run();
+        idleDispatch.run();
+        ArgumentCaptor<Runnable> slices = ArgumentCaptor.forClass(Runnable.class);
+        verify(workers, times(3)).execute(slices.capture());
+        PriorityQueue<Runnable> queue = new PriorityQueue<>(slices.getAllValues().subList(1, 3));
+        queue.poll().run();
+        verify(idleTask).run();
+        verify(busyTask, times(1)).run();
+    }
+
+    @Test
+    public void testCancelledTaskDoesNotRun() {
+        Runnable task = mock(Runnable.class);
+        scheduler.scheduleAtFixedRate("foo", task, 0, 1, TimeUnit.SECONDS);
+        fireTimer();
+        when(future.isCancelled()).thenReturn(true);
+        runWorker();
+        verify(task, never()).run();
+    }
+
+    @Test
+    public void testFailingTaskIsStillAccounted() {
+        Runnable task = mock(Runnable.class);
+        doThrow(new IllegalStateException("test")).when(task).run();
+        scheduler.scheduleAtFixedRate("foo", task, 0, 1, TimeUnit.SECONDS);
+
+        Runnable dispatch = fireTimer();
+        runWorker();
+        dispatch.run();
+
+        assertEquals(1, getStatistics("foo").getRuns());
+        assertEquals(0, getStatistics("foo").getSkippedRuns());
+        verify(workers, times(2)).execute(any(Runnable.class));
+    }
+
+    @Test
+    public void testDeactivateStopsThreads() {
+        scheduler.deactivate();
+        verify(timer).shutdownNow();
+        verify(workers).shutdownNow();
+    }
+
+    @Test(timeout = 10000)
+    public void testWorkersRunTasks() throws InterruptedException {
+        ExecutorService realWorkers = PollingSchedulerImpl.createWorkers(2);
+        scheduler = new PollingSchedulerImpl(clock, timer, realWorkers);
+        final CountDownLatch latch = new CountDownLatch(1);
+        scheduler.schedule("foo", new Runnable() {
+            @Override
+            public void run() {
+                latch.countDown();
+            }
+        }, 0, TimeUnit.SECONDS);
+        ArgumentCaptor<Runnable> dispatch = ArgumentCaptor.forClass(Runnable.class);
+        verify(timer).schedule(dispatch.capture(), eq(0L), eq(TimeUnit.SECONDS));
+        dispatch.getValue().run();
+        latch.await();
+        scheduler.deactivate();
+    }
+
+    private Runnable fireTimer() {
+        ArgumentCaptor<Runnable> dispatch = ArgumentCaptor.forClass(Runnable.class);
+        verify(timer).scheduleAtFixedRate(dispatch.capture(), anyLong(), anyLong(), any(TimeUnit.class));
+        dispatch.getValue().run();
+        return dispatch.getValue();
+    }
+
+    private void runWorker() {
+        ArgumentCaptor<Runnable> slice = ArgumentCaptor.forClass(Runnable.class);
+        verify(workers, atLeastOnce()).execute(slice.capture());
+        slice.getValue().run();
+    }
+
+    private PollingStatistics getStatistics(String owner) {
+        List<PollingStatistics> all = scheduler.getStatistics();
+        for (PollingStatistics stats : all) {
+            if (stats.getOwner().equals(owner)) {
+                return stats;
+            }
+        }
+        throw new AssertionError("no statistics for " + owner);
+    }
+}
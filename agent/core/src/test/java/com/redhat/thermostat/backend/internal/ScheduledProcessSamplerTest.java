@@ -0,0 +1,105 @@
+/*
+ * Copyright 2012-2017 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+package com.redhat.thermostat.backend.internal;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import com.redhat.thermostat.backend.PollingScheduler;
+import com.redhat.thermostat.common.portability.ProcessSampler;
+import com.redhat.thermostat.common.portability.ProcessSnapshot;
+
+public class ScheduledProcessSamplerTest {
+
+    private PollingScheduler scheduler;
+    private ScheduledFuture<?> future;
+    private ScheduledProcessSampler sampler;
+
+    @Before
+    public void setUp() {
+        scheduler = mock(PollingScheduler.class);
+        future = mock(ScheduledFuture.class);
+        doReturnFuture();
+        sampler = new ScheduledProcessSampler(scheduler, 500);
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private void doReturnFuture() {
+        when(scheduler.scheduleAtFixedRate(any(String.class), any(Runnable.class), anyLong(), anyLong(),
+                any(TimeUnit.class))).thenReturn((ScheduledFuture) future);
+    }
+
+    @Test
+    public void testOneSweepPerTick() {
+        ProcessSampler.Listener first = mock(ProcessSampler.Listener.class);
+        ProcessSampler.Listener second = mock(ProcessSampler.Listener.class);
+        sampler.addListener(first);
+        sampler.addListener(second);
+
+        sampler.activate();
+
+        ArgumentCaptor<Runnable> tick = ArgumentCaptor.forClass(Runnable.class);
+        verify(scheduler).scheduleAtFixedRate(any(String.class), tick.capture(), eq(0L), eq(500L),
+                eq(TimeUnit.MILLISECONDS));
+
+        tick.getValue().run();
+        tick.getValue().run();
+
+        verify(first, times(2)).processesSampled(any(ProcessSnapshot.class));
+        verify(second, times(2)).processesSampled(any(ProcessSnapshot.class));
+    }
+
+    @Test
+    public void testDeactivateCancelsTicks() {
+        sampler.activate();
+        sampler.deactivate();
+
+        verify(future).cancel(false);
+    }
+}
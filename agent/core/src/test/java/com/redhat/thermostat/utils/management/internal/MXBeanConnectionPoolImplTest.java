@@ -33,22 +33,46 @@
  * library, but you are not obligated to do so.  If you do not wish
  * to do so, delete this exception statement from your version.
  */
-
 package com.redhat.thermostat.utils.management.internal;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
 
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 
 import com.redhat.thermostat.agent.utils.management.MXBeanConnection;
 import com.redhat.thermostat.agent.utils.management.MXBeanConnectionException;
+import com.redhat.thermostat.agent.utils.management.MXBeanConnectionPoolStatistics;
+import com.redhat.thermostat.common.Clock;
 import com.redhat.thermostat.common.portability.ProcessUserInfo;
 import com.redhat.thermostat.common.portability.ProcessUserInfoBuilder;
 import com.redhat.thermostat.utils.management.internal.MXBeanConnectionPoolImpl.ManagementAgentHelper;
@@ -56,12 +80,17 @@ import com.redhat.thermostat.utils.management.internal.MXBeanConnectionPoolImpl.
 public class MXBeanConnectionPoolImplTest {
     
     private static final String JMX_URL = "jmxUrl://hello";
+    private static final long ATTACH_TIMEOUT_MILLIS = 5000;
+    private static final long IDLE_TIMEOUT_MILLIS = 60000;
     
     private ManagementAgentAttacher attacher;
     private MXBeanConnectionPoolImpl pool;
     private MXBeanConnectionImpl connection;
     private ManagementAgentHelper helper;
     private MXBeanConnector connector;
+    private Clock clock;
+    private ExecutorService attachExecutor;
+    private ScheduledExecutorService evictionExecutor;
 
     private ProcessUserInfoBuilder builder;
     
@@ -80,8 +109,21 @@ public class MXBeanConnectionPoolImplTest {
         builder = mock(ProcessUserInfoBuilder.class);
         ProcessUserInfo info = new ProcessUserInfo(8000, "Test");
         when(builder.build(8000)).thenReturn(info);
-        
-        pool = new MXBeanConnectionPoolImpl(helper);
+
+        clock = mock(Clock.class);
+        attachExecutor = Executors.newCachedThreadPool();
+        evictionExecutor = mock(ScheduledExecutorService.class);
+        pool = createPool(ATTACH_TIMEOUT_MILLIS, IDLE_TIMEOUT_MILLIS);
+    }
+
+    @After
+    public void tearDown() {
+        attachExecutor.shutdownNow();
+    }
+
+    private MXBeanConnectionPoolImpl createPool(long attachTimeoutMillis, long idleTimeoutMillis) {
+        return new MXBeanConnectionPoolImpl(helper, clock, attachExecutor, evictionExecutor,
+                attachTimeoutMillis, idleTimeoutMillis);
     }
     
     @Test
@@ -127,6 +169,23 @@ public class MXBeanConnectionPoolImplTest {
     
         pool.release(8000, result);
     
+        // kept open for the grace period
+        verify(connection, never()).close();
+
+        Runnable eviction = captureEviction();
+        when(clock.getMonotonicTimeNanos()).thenReturn(TimeUnit.MILLISECONDS.toNanos(IDLE_TIMEOUT_MILLIS));
+        eviction.run();
+
+        verify(connection).close();
+    }
+
+    @Test
+    public void testReleaseWithoutGracePeriod() throws Exception {
+        pool = createPool(ATTACH_TIMEOUT_MILLIS, 0);
+        MXBeanConnection result = pool.acquire(8000);
+
+        pool.release(8000, result);
+
         verify(connection).close();
     }
 
@@ -138,17 +197,292 @@ public class MXBeanConnectionPoolImplTest {
     
         pool.release(8000, connection1);
     
-        verify(connection, never()).close();
+        verify(evictionExecutor, never()).schedule(any(Runnable.class), anyLong(), any(TimeUnit.class));
     
         pool.release(8000, connection2);
+
+        Runnable eviction = captureEviction();
+        when(clock.getMonotonicTimeNanos()).thenReturn(TimeUnit.MILLISECONDS.toNanos(IDLE_TIMEOUT_MILLIS));
+        eviction.run();
     
         verify(connection).close();
     }
+
+    @Test
+    public void testAcquireWithinGracePeriodReusesConnection() throws Exception {
+        pool.release(8000, pool.acquire(8000));
+        Runnable eviction = captureEviction();
+
+        MXBeanConnection again = pool.acquire(8000);
+        when(clock.getMonotonicTimeNanos()).thenReturn(TimeUnit.MILLISECONDS.toNanos(IDLE_TIMEOUT_MILLIS));
+        eviction.run();
+
+        assertSame(connection, again);
+        verify(connection, never()).close();
+        verify(helper).createAttacher(8000);
+    }
+
+    @Test
+    public void testAcquireAfterEvictionAttachesAgain() throws Exception {
+        pool.release(8000, pool.acquire(8000));
+        when(clock.getMonotonicTimeNanos()).thenReturn(TimeUnit.MILLISECONDS.toNanos(IDLE_TIMEOUT_MILLIS));
+        captureEviction().run();
+
+        pool.acquire(8000);
+
+        verify(helper, times(2)).createAttacher(8000);
+        assertEquals(1, pool.getStatistics().getEvictions());
+    }
     
     @Test(expected=MXBeanConnectionException.class)
     public void testReleaseNotRunning() throws Exception {
         pool.release(8000, connection);
     }
 
-}
+    @Test
+    public void testConcurrentAcquirersShareOneAttach() throws Exception {
+        final CountDownLatch attaching = new CountDownLatch(1);
+        final CountDownLatch proceed = new CountDownLatch(1);
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                attaching.countDown();
+                proceed.await();
+                return null;
+            }
+        }).when(attacher).attach();
+
+        ExecutorService callers = Executors.newFixedThreadPool(2);
+        try {
+            Future<MXBeanConnection> first = callers.submit(acquireTask(8000));
+            assertTrue(attaching.await(5, TimeUnit.SECONDS));
+            Future<MXBeanConnection> second = callers.submit(acquireTask(8000));
+            assertEquals(1, pool.getStatistics().getPendingAttaches());
+
+            proceed.countDown();
+
+            assertSame(connection, first.get(5, TimeUnit.SECONDS));
+            assertSame(connection, second.get(5, TimeUnit.SECONDS));
+        } finally {
+            callers.shutdownNow();
+        }
+        verify(helper).createAttacher(8000);
+        verify(connector).connect();
+    }
+
+    @Test
+    public void testSlowAttachDoesNotBlockOtherVms() throws Exception {
+        final CountDownLatch attaching = new CountDownLatch(1);
+        final CountDownLatch proceed = new CountDownLatch(1);
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                attaching.countDown();
+                proceed.await();
+                return null;
+            }
+        }).when(attacher).attach();
+        ManagementAgentAttacher otherAttacher = mock(ManagementAgentAttacher.class);
+        when(otherAttacher.getConnectorAddress()).thenReturn(JMX_URL);
+        when(helper.createAttacher(9000)).thenReturn(otherAttacher);
+
+        ExecutorService callers = Executors.newSingleThreadExecutor();
+        try {
+            Future<MXBeanConnection> slow = callers.submit(acquireTask(8000));
+            assertTrue(attaching.await(5, TimeUnit.SECONDS));
+
+            assertSame(connection, pool.acquire(9000));
+            assertTrue(!slow.isDone());
+
+            proceed.countDown();
+            assertSame(connection, slow.get(5, TimeUnit.SECONDS));
+        } finally {
+            callers.shutdownNow();
+        }
+    }
 
+    @Test
+    public void testAttachTimeout() throws Exception {
+        final CountDownLatch proceed = new CountDownLatch(1);
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                try {
+                    proceed.await();
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+                return null;
+            }
+        }).doNothing().when(attacher).attach();
+        pool = createPool(50, IDLE_TIMEOUT_MILLIS);
+
+        try {
+            pool.acquire(8000);
+            fail("Expected a timeout");
+        } catch (MXBeanConnectionException e) {
+            // expected
+        }
+        assertEquals(1, pool.getStatistics().getFailedAttaches());
+        waitForPendingAttaches();
+
+        // the next caller starts over
+        assertSame(connection, pool.acquire(8000));
+        verify(helper, times(2)).createAttacher(8000);
+    }
+
+    @Test
+    public void testNoNewAttachWhileAbandonedAttachRuns() throws Exception {
+        final CountDownLatch proceed = new CountDownLatch(1);
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                // does not respond to interruption
+                while (proceed.getCount() > 0) {
+                    try {
+                        proceed.await();
+                    } catch (InterruptedException e) {
+                        // keep waiting
+                    }
+                }
+                return null;
+            }
+        }).doNothing().when(attacher).attach();
+        pool = createPool(50, IDLE_TIMEOUT_MILLIS);
+
+        try {
+            pool.acquire(8000);
+            fail("Expected a timeout");
+        } catch (MXBeanConnectionException e) {
+            // expected
+        }
+        try {
+            pool.acquire(8000);
+            fail("Expected MXBeanConnectionException");
+        } catch (MXBeanConnectionException e) {
+            // expected
+        }
+        verify(helper).createAttacher(8000);
+
+        proceed.countDown();
+        waitForPendingAttaches();
+
+        assertSame(connection, pool.acquire(8000));
+        verify(helper, times(2)).createAttacher(8000);
+        // the abandoned connection is not handed out
+        verify(connection).close();
+    }
+
+    @Test
+    public void testTimeoutOfOneCallerDoesNotAbandonAttach() throws Exception {
+        final CountDownLatch attaching = new CountDownLatch(1);
+        final CountDownLatch proceed = new CountDownLatch(1);
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                attaching.countDown();
+                proceed.await();
+                return null;
+            }
+        }).when(attacher).attach();
+        pool = createPool(1000, IDLE_TIMEOUT_MILLIS);
+
+        ExecutorService callers = Executors.newFixedThreadPool(2);
+        try {
+            Future<MXBeanConnection> first = callers.submit(acquireTask(8000));
+            assertTrue(attaching.await(5, TimeUnit.SECONDS));
+            Thread.sleep(500);
+            Future<MXBeanConnection> second = callers.submit(acquireTask(8000));
+
+            try {
+                first.get();
+                fail("Expected a timeout");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof MXBeanConnectionException);
+            }
+            proceed.countDown();
+
+            assertSame(connection, second.get());
+        } finally {
+            proceed.countDown();
+            callers.shutdownNow();
+        }
+        verify(helper).createAttacher(8000);
+        assertEquals(0, pool.getStatistics().getFailedAttaches());
+    }
+
+    @Test
+    public void testFailedAttachIsRetried() throws Exception {
+        IOException failure = new IOException("TEST");
+        doThrow(failure).doNothing().when(attacher).attach();
+
+        try {
+            pool.acquire(8000);
+            fail("Expected MXBeanConnectionException");
+        } catch (MXBeanConnectionException e) {
+            assertSame(failure, e.getCause());
+        }
+
+        assertSame(connection, pool.acquire(8000));
+        verify(helper, times(2)).createAttacher(8000);
+        MXBeanConnectionPoolStatistics stats = pool.getStatistics();
+        assertEquals(1, stats.getFailedAttaches());
+        assertEquals(1, stats.getAttaches());
+    }
+
+    @Test
+    public void testStatistics() throws Exception {
+        when(clock.getMonotonicTimeNanos()).thenReturn(1000L, 4000L);
+        MXBeanConnection result = pool.acquire(8000);
+
+        MXBeanConnectionPoolStatistics stats = pool.getStatistics();
+        assertEquals(1, stats.getActiveConnections());
+        assertEquals(0, stats.getIdleConnections());
+        assertEquals(0, stats.getPendingAttaches());
+        assertEquals(1, stats.getAttaches());
+        assertEquals(3000, stats.getLastAttachLatencyNanos());
+        assertEquals(3000, stats.getAverageAttachLatencyNanos());
+        assertEquals(3000, stats.getMaxAttachLatencyNanos());
+
+        pool.release(8000, result);
+
+        stats = pool.getStatistics();
+        assertEquals(1, stats.getActiveConnections());
+        assertEquals(1, stats.getIdleConnections());
+    }
+
+    @Test
+    public void testDeactivateClosesConnections() throws Exception {
+        pool.acquire(8000);
+
+        pool.deactivate();
+
+        verify(connection).close();
+        verify(evictionExecutor).shutdownNow();
+        assertEquals(0, pool.getStatistics().getActiveConnections());
+    }
+
+    private void waitForPendingAttaches() throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (pool.getStatistics().getPendingAttaches() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, pool.getStatistics().getPendingAttaches());
+    }
+
+    private Runnable captureEviction() {
+        ArgumentCaptor<Runnable> eviction = ArgumentCaptor.forClass(Runnable.class);
+        verify(evictionExecutor).schedule(eviction.capture(), eq(IDLE_TIMEOUT_MILLIS), eq(TimeUnit.MILLISECONDS));
+        return eviction.getValue();
+    }
+
+    private Callable<MXBeanConnection> acquireTask(final int pid) {
+        return new Callable<MXBeanConnection>() {
+            @Override
+            public MXBeanConnection call() throws Exception {
+                return pool.acquire(pid);
+            }
+        };
+    }
+
+}
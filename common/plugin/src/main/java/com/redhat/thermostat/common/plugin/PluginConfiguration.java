@@ -36,17 +36,33 @@
 
 package com.redhat.thermostat.common.plugin;
 
+import com.redhat.thermostat.backend.PollingInterval;
 import com.redhat.thermostat.common.config.experimental.ConfigurationInfoSource;
+import com.redhat.thermostat.common.utils.LoggingUtils;
 
 import java.io.File;
 import java.io.IOException;
 import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 public class PluginConfiguration {
 
+    private static final Logger logger = LoggingUtils.getLogger(PluginConfiguration.class);
+
     private static final String CONFIG_FILE = "gateway.properties";
     private static final String URL_PROP = "gatewayURL";
 
+    static final String POLLING_INTERVAL_PROP = "pollingInterval";
+    static final String POLLING_MODE_PROP = "pollingMode";
+    static final String POLLING_MIN_INTERVAL_PROP = "pollingMinInterval";
+    static final String POLLING_MAX_INTERVAL_PROP = "pollingMaxInterval";
+    static final String POLLING_MODE_FIXED = "fixed";
+    static final String POLLING_MODE_ADAPTIVE = "adaptive";
+    // Bounds of an adaptive interval, relative to its base interval, unless configured
+    private static final int ADAPTIVE_MIN_DIVISOR = 4;
+    private static final int ADAPTIVE_MAX_FACTOR = 8;
+
     private final ConfigurationInfoSource source;
     private final String pluginId;
 
@@ -64,6 +80,57 @@ public class PluginConfiguration {
         return url;
     }
 
+    /**
+     * Returns an optional setting from the plugin's gateway configuration,
+     * or {@code defaultValue} if it is not set.
+     */
+    public String getProperty(String name, String defaultValue) throws IOException {
+        Map<String, String> props = source.getConfiguration(pluginId, CONFIG_FILE);
+        String value = props.get(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        return value.trim();
+    }
+
+    /**
+     * Returns how often the plugin's backend should poll. The interval is
+     * set in milliseconds with {@code pollingInterval}. With
+     * {@code pollingMode=adaptive}, it varies between
+     * {@code pollingMinInterval} and {@code pollingMaxInterval}, which
+     * default to a quarter of and eight times the interval.
+     * <p>
+     * Invalid settings, or a configuration which can not be read, are
+     * logged and {@code defaultInterval} is used instead, so that a backend
+     * always starts polling.
+     */
+    public PollingInterval getPollingInterval(PollingInterval defaultInterval) {
+        try {
+            String mode = getProperty(POLLING_MODE_PROP, POLLING_MODE_FIXED);
+            String interval = getProperty(POLLING_INTERVAL_PROP, null);
+            String min = getProperty(POLLING_MIN_INTERVAL_PROP, null);
+            String max = getProperty(POLLING_MAX_INTERVAL_PROP, null);
+            long intervalMillis = interval == null ? defaultInterval.getIntervalMillis() : Long.parseLong(interval);
+            if (POLLING_MODE_FIXED.equals(mode)) {
+                return PollingInterval.fixed(intervalMillis);
+            } else if (POLLING_MODE_ADAPTIVE.equals(mode)) {
+                long minMillis = min == null ? Math.max(1, intervalMillis / ADAPTIVE_MIN_DIVISOR) : Long.parseLong(min);
+                long maxMillis = max == null ? intervalMillis * ADAPTIVE_MAX_FACTOR : Long.parseLong(max);
+                return PollingInterval.adaptive(intervalMillis, minMillis, maxMillis);
+            }
+            logger.log(Level.WARNING, "Unknown " + POLLING_MODE_PROP + " '" + mode + "' for " + pluginId
+                    + ". Using " + defaultInterval);
+        } catch (IllegalArgumentException e) {
+            // includes NumberFormatException
+            logger.log(Level.WARNING, "Invalid polling interval for " + pluginId + ": " + e.getMessage()
+                    + ". Using " + defaultInterval);
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Unable to read the polling interval for " + pluginId
+                    + ". Using " + defaultInterval, e);
+        }
+        return defaultInterval;
+    }
+
     private String getConfigFilePath() {
         StringBuilder builder = new StringBuilder();
         builder.append("$THERMOSTAT_HOME").append(File.separator).append("etc").append(File.separator)
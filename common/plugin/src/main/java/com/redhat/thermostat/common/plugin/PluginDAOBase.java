@@ -41,7 +41,7 @@ import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import com.redhat.thermostat.agent.http.HttpRequestService;
-import com.redhat.thermostat.agent.http.HttpRequestService.RequestFailedException;
+import com.redhat.thermostat.agent.http.JsonPayloadWriter;
 
 abstract public class PluginDAOBase<Tobj,Tdao> {
 
@@ -51,15 +51,35 @@ abstract public class PluginDAOBase<Tobj,Tdao> {
     protected abstract String getURL(final String basepath);
     protected abstract Logger getLogger();
 
+    /**
+     * Writes {@code obj} as JSON straight into {@code out}. DAOs whose type
+     * adapter can write to a {@link JsonPayloadWriter} should override this,
+     * which avoids building the payload as a string first.
+     *
+     * @return {@code false} if this DAO only supports
+     * {@link #toJsonString(Object)}
+     */
+    protected boolean writeJson(Tobj obj, JsonPayloadWriter out) {
+        return false;
+    }
+
     public void put(final Tobj obj) {
         try {
             HttpRequestService httpRequestService = getHttpRequestService();
-            String json = toJsonString(obj);
-
             final String gatewayURL = getConfig().getGatewayURL();
             final String url = getURL(gatewayURL);
-            httpRequestService.sendHttpRequest(json, url, HttpRequestService.POST);
-        } catch (IOException | RequestFailedException e) {
+
+            boolean queued;
+            JsonPayloadWriter json = JsonPayloadWriter.obtain();
+            if (writeJson(obj, json)) {
+                queued = httpRequestService.queueHttpPost(json, url);
+            } else {
+                queued = httpRequestService.queueHttpPost(toJsonString(obj), url);
+            }
+            if (!queued) {
+                getLogger().log(Level.WARNING, "Upload queue full. Dropped " + obj.getClass().getName());
+            }
+        } catch (IOException e) {
             getLogger().log(Level.WARNING, "Failed to send " + obj.getClass().getName() + " to web gateway", e);
         }
     }
@@ -46,6 +46,7 @@ import java.util.Map;
 
 import org.junit.Test;
 
+import com.redhat.thermostat.backend.PollingInterval;
 import com.redhat.thermostat.common.config.experimental.ConfigurationInfoSource;
 
 public class PluginConfigurationTest {
@@ -73,4 +74,67 @@ public class PluginConfigurationTest {
         PluginConfiguration config = new PluginConfiguration(source, PLUGIN_ID);
         config.getGatewayURL();
     }
+
+    @Test
+    public void testGetProperty() throws Exception {
+        ConfigurationInfoSource source = mock(ConfigurationInfoSource.class);
+        Map<String, String> props = new HashMap<>();
+        props.put("someSetting", " value ");
+        when(source.getConfiguration(PLUGIN_ID, CONFIG_FILE)).thenReturn(props);
+        PluginConfiguration config = new PluginConfiguration(source, PLUGIN_ID);
+
+        assertEquals("value", config.getProperty("someSetting", "default"));
+        assertEquals("default", config.getProperty("otherSetting", "default"));
+    }
+
+    @Test
+    public void testGetPollingIntervalDefault() throws Exception {
+        PluginConfiguration config = createConfig(new HashMap<String, String>());
+
+        assertEquals(PollingInterval.fixed(2000), config.getPollingInterval(PollingInterval.fixed(2000)));
+    }
+
+    @Test
+    public void testGetFixedPollingInterval() throws Exception {
+        Map<String, String> props = new HashMap<>();
+        props.put("pollingInterval", "5000");
+        PluginConfiguration config = createConfig(props);
+
+        assertEquals(PollingInterval.fixed(5000), config.getPollingInterval(PollingInterval.DEFAULT));
+    }
+
+    @Test
+    public void testGetAdaptivePollingInterval() throws Exception {
+        Map<String, String> props = new HashMap<>();
+        props.put("pollingMode", "adaptive");
+        props.put("pollingInterval", "2000");
+        PluginConfiguration config = createConfig(props);
+
+        assertEquals(PollingInterval.adaptive(2000, 500, 16000), config.getPollingInterval(PollingInterval.DEFAULT));
+
+        props.put("pollingMinInterval", "100");
+        props.put("pollingMaxInterval", "60000");
+        assertEquals(PollingInterval.adaptive(2000, 100, 60000), config.getPollingInterval(PollingInterval.DEFAULT));
+    }
+
+    @Test
+    public void testInvalidPollingIntervalUsesDefault() throws Exception {
+        Map<String, String> props = new HashMap<>();
+        props.put("pollingInterval", "often");
+        PluginConfiguration config = createConfig(props);
+        assertEquals(PollingInterval.DEFAULT, config.getPollingInterval(PollingInterval.DEFAULT));
+
+        props.put("pollingInterval", "0");
+        assertEquals(PollingInterval.DEFAULT, config.getPollingInterval(PollingInterval.DEFAULT));
+
+        props.put("pollingInterval", "1000");
+        props.put("pollingMode", "sometimes");
+        assertEquals(PollingInterval.DEFAULT, config.getPollingInterval(PollingInterval.DEFAULT));
+    }
+
+    private static PluginConfiguration createConfig(Map<String, String> props) throws IOException {
+        ConfigurationInfoSource source = mock(ConfigurationInfoSource.class);
+        when(source.getConfiguration(PLUGIN_ID, CONFIG_FILE)).thenReturn(props);
+        return new PluginConfiguration(source, PLUGIN_ID);
+    }
 }
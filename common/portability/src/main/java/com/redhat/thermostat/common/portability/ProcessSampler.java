@@ -0,0 +1,275 @@
+/*
+ * Copyright 2012-2017 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+package com.redhat.thermostat.common.portability;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.redhat.thermostat.common.Clock;
+import com.redhat.thermostat.common.SystemClock;
+import com.redhat.thermostat.common.portability.internal.PortableProcessSampleReader;
+import com.redhat.thermostat.common.portability.internal.ProcessSampleReader;
+import com.redhat.thermostat.common.portability.internal.linux.LinuxProcessSampleReader;
+import com.redhat.thermostat.common.portability.linux.ProcDataSource;
+import com.redhat.thermostat.common.utils.LoggingUtils;
+import com.redhat.thermostat.shared.config.OS;
+
+/**
+ * Samples stat, status and io of every watched process in a single sweep and
+ * shares the resulting {@link ProcessSnapshot} between all its users.
+ * <p>
+ * Backends {@link #watch(int)} the processes they are interested in and
+ * follow the snapshots through a {@link Listener}. Sweeps are driven by a
+ * single schedule, so every tick reads each watched process once no matter
+ * how many backends use it. The agent registers an instance as a service
+ * which does that on its shared polling scheduler.
+ * <p>
+ * Large sweeps are split between several workers, each with its own reader.
+ * Their threads are stopped by {@link #shutdown()}.
+ */
+public class ProcessSampler {
+
+    public interface Listener {
+        void processesSampled(ProcessSnapshot snapshot);
+    }
+
+    /** Minimum number of processes handed to each worker */
+    static final int PIDS_PER_WORKER = 64;
+
+    private static final Logger logger = LoggingUtils.getLogger(ProcessSampler.class);
+
+    private final Clock clock;
+    private final ReaderFactory readerFactory;
+    private final int maxWorkers;
+
+    private final Map<Integer, Integer> watched = new HashMap<>();
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final List<ProcessSampleReader> readers = new ArrayList<>();
+    private final Object sweepLock = new Object();
+    private ExecutorService workers;
+    private volatile ProcessSnapshot latest;
+
+    public ProcessSampler() {
+        this(new SystemClock(), new ReaderFactory(), Runtime.getRuntime().availableProcessors());
+    }
+
+    ProcessSampler(Clock clock, ReaderFactory readerFactory, int maxWorkers) {
+        this.clock = clock;
+        this.readerFactory = readerFactory;
+        this.maxWorkers = Math.max(1, maxWorkers);
+    }
+
+    /**
+     * Includes the process in future sweeps. Calls are counted; the process
+     * is dropped once every caller has called {@link #unwatch(int)}.
+     */
+    public void watch(int pid) {
+        synchronized (watched) {
+            Integer count = watched.get(pid);
+            watched.put(pid, count == null ? 1 : count + 1);
+        }
+    }
+
+    public void unwatch(int pid) {
+        synchronized (watched) {
+            Integer count = watched.get(pid);
+            if (count == null) {
+                return;
+            }
+            if (count == 1) {
+                watched.remove(pid);
+            } else {
+                watched.put(pid, count - 1);
+            }
+        }
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * @return the latest snapshot, or null if there was no sweep yet
+     */
+    public ProcessSnapshot getSnapshot() {
+        return latest;
+    }
+
+    /**
+     * Sweeps the watched processes now and hands the snapshot to the
+     * listeners. Only the schedule driving this sampler should call this.
+     */
+    public ProcessSnapshot sample() {
+        synchronized (sweepLock) {
+            return sweep();
+        }
+    }
+
+    /**
+     * Stops the worker threads, once this sampler is no longer used.
+     */
+    public void shutdown() {
+        synchronized (sweepLock) {
+            if (workers != null) {
+                workers.shutdownNow();
+                workers = null;
+            }
+        }
+    }
+
+    private ProcessSnapshot sweep() {
+        int[] pids = getWatchedPids();
+        long timeStamp = clock.getRealTimeMillis();
+        long monotonicTime = clock.getMonotonicTimeNanos();
+
+        int workerCount = Math.min(maxWorkers, Math.max(1, pids.length / PIDS_PER_WORKER));
+        Map<Integer, ProcessSample> samples;
+        if (workerCount == 1) {
+            samples = new HashMap<>();
+            read(getReader(0), pids, 0, pids.length, timeStamp, samples);
+        } else {
+            samples = readInParallel(pids, workerCount, timeStamp);
+        }
+
+        ProcessSnapshot snapshot = new ProcessSnapshot(timeStamp, monotonicTime, samples);
+        latest = snapshot;
+        for (Listener listener : listeners) {
+            listener.processesSampled(snapshot);
+        }
+        return snapshot;
+    }
+
+    private int[] getWatchedPids() {
+        synchronized (watched) {
+            int[] pids = new int[watched.size()];
+            int i = 0;
+            for (Integer pid : watched.keySet()) {
+                pids[i++] = pid;
+            }
+            return pids;
+        }
+    }
+
+    private Map<Integer, ProcessSample> readInParallel(final int[] pids, int workerCount, final long timeStamp) {
+        List<Callable<Map<Integer, ProcessSample>>> tasks = new ArrayList<>(workerCount);
+        int chunk = (pids.length + workerCount - 1) / workerCount;
+        for (int i = 0; i < workerCount; i++) {
+            final ProcessSampleReader reader = getReader(i);
+            final int from = i * chunk;
+            final int to = Math.min(pids.length, from + chunk);
+            tasks.add(new Callable<Map<Integer, ProcessSample>>() {
+                @Override
+                public Map<Integer, ProcessSample> call() {
+                    Map<Integer, ProcessSample> part = new HashMap<>();
+                    read(reader, pids, from, to, timeStamp, part);
+                    return part;
+                }
+            });
+        }
+
+        Map<Integer, ProcessSample> samples = new HashMap<>();
+        try {
+            for (Future<Map<Integer, ProcessSample>> result : getWorkers().invokeAll(tasks)) {
+                try {
+                    samples.putAll(result.get());
+                } catch (ExecutionException e) {
+                    logger.log(Level.WARNING, "Unable to sample processes", e.getCause());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return samples;
+    }
+
+    private static void read(ProcessSampleReader reader, int[] pids, int from, int to, long timeStamp,
+            Map<Integer, ProcessSample> samples) {
+        for (int i = from; i < to; i++) {
+            ProcessSample sample = reader.read(pids[i], timeStamp);
+            if (sample != null) {
+                samples.put(pids[i], sample);
+            }
+        }
+    }
+
+    // only called while holding sweepLock
+    private ProcessSampleReader getReader(int worker) {
+        while (readers.size() <= worker) {
+            readers.add(readerFactory.createReader());
+        }
+        return readers.get(worker);
+    }
+
+    // only called while holding sweepLock
+    private ExecutorService getWorkers() {
+        if (workers == null) {
+            workers = Executors.newFixedThreadPool(maxWorkers, new ThreadFactory() {
+                private int count = 0;
+
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "process-sampler-" + count++);
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+        return workers;
+    }
+
+    // For testing purposes
+    static class ReaderFactory {
+        ProcessSampleReader createReader() {
+            return OS.IS_LINUX ? new LinuxProcessSampleReader(new ProcDataSource()) : new PortableProcessSampleReader();
+        }
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2012-2017 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+package com.redhat.thermostat.common.portability;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An immutable table of {@link ProcessSample}s, all taken in the same sweep.
+ */
+public class ProcessSnapshot {
+
+    private final long timeStamp;
+    private final long monotonicTimeNanos;
+    private final Map<Integer, ProcessSample> samples;
+
+    /**
+     * @param samples the samples by pid; the map is not copied and must not
+     * be modified afterwards
+     */
+    public ProcessSnapshot(long timeStamp, long monotonicTimeNanos, Map<Integer, ProcessSample> samples) {
+        this.timeStamp = timeStamp;
+        this.monotonicTimeNanos = monotonicTimeNanos;
+        this.samples = Collections.unmodifiableMap(samples);
+    }
+
+    /**
+     * @return the wall clock time at which the sweep started, in milliseconds
+     */
+    public long getTimeStamp() {
+        return timeStamp;
+    }
+
+    /**
+     * @return the monotonic time at which the sweep started, in nanoseconds.
+     * Use this to compute rates between two snapshots.
+     */
+    public long getMonotonicTimeNanos() {
+        return monotonicTimeNanos;
+    }
+
+    /**
+     * @return the sample of the given process, or null if the process was not
+     * watched or no longer exists
+     */
+    public ProcessSample get(int pid) {
+        return samples.get(pid);
+    }
+
+    public Set<Integer> getPids() {
+        return samples.keySet();
+    }
+
+    public int size() {
+        return samples.size();
+    }
+}
@@ -38,11 +38,13 @@ package com.redhat.thermostat.common.portability.internal;
 
 import com.redhat.thermostat.common.portability.UserNameUtil;
 import com.redhat.thermostat.common.portability.internal.linux.UserNameUtilImpl;
+import com.redhat.thermostat.common.portability.linux.ProcFileCache;
 import org.osgi.framework.BundleActivator;
 import org.osgi.framework.BundleContext;
 
 public class Activator implements BundleActivator {
 
+    private ProcFileCache procFileCache;
 
     @Override
     public void start(final BundleContext context) throws Exception {
@@ -50,10 +52,17 @@ public class Activator implements BundleActivator {
         // No deps, register immediately
         UserNameUtilImpl usernameUtil = new UserNameUtilImpl();
         context.registerService(UserNameUtil.class, usernameUtil, null);
+
+        procFileCache = new ProcFileCache();
+        context.registerService(ProcFileCache.class, procFileCache, null);
     }
 
     @Override
     public void stop(BundleContext context) throws Exception {
+        if (procFileCache != null) {
+            procFileCache.close();
+            procFileCache = null;
+        }
     }
 }
 
@@ -38,12 +38,11 @@ package com.redhat.thermostat.common.portability.internal.linux;
 
 import com.redhat.thermostat.common.portability.PortableProcessStat;
 import com.redhat.thermostat.common.portability.linux.ProcDataSource;
+import com.redhat.thermostat.common.portability.linux.ProcTokenizer;
 import com.redhat.thermostat.common.utils.LoggingUtils;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.Reader;
-import java.util.Scanner;
+import java.nio.channels.ReadableByteChannel;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -57,65 +56,44 @@ public class LinuxPortableProcessStatBuilderImpl {
 
     private static final Logger logger = LoggingUtils.getLogger(LinuxPortableProcessStatBuilderImpl.class);
 
+    // Fields between the process name and utime: state, ppid, pgrp,
+    // session, tty_nr, tpgid, flags, minflt, cminflt, majflt, cmajflt
+    private static final int FIELDS_BEFORE_UTIME = 11;
+
     private final ProcDataSource dataSource;
+    private final ProcTokenizer tokenizer = new ProcTokenizer();
 
     public LinuxPortableProcessStatBuilderImpl(ProcDataSource dataSource) {
         this.dataSource = dataSource;
     }
 
-    public PortableProcessStat build(int pid) {
-        try (BufferedReader reader = new BufferedReader(dataSource.getStatReader(pid))) {
-            return build(reader);
-        } catch (IOException e) {
+    public synchronized PortableProcessStat build(int pid) {
+        try (ReadableByteChannel channel = dataSource.getStatChannel(pid)) {
+            return build(tokenizer.load(channel));
+        } catch (IOException | NumberFormatException e) {
             logger.log(Level.FINE, "Unable to read stat info for: " + pid);
         }
 
         return null;
     }
 
-    PortableProcessStat build(Reader r) throws IOException {
-
-        int pid = -1;
-        long utime = -1;
-        long stime = -1;
-
-        Scanner scanner = null;
-
-        /* TODO map these (effectively c) data types to java types more sanely */
-
-        try (BufferedReader reader = new BufferedReader(r)) {
-            String statusLine = reader.readLine();
-
-            /* be prepared for process names like '1 ) 2 3 4 foo 5' */
-
-            scanner = new Scanner(statusLine);
-            pid = scanner.nextInt();
-            scanner.close();
-
-            int execEndNamePos = statusLine.lastIndexOf(')');
-
-            String cleanStatusLine = statusLine.substring(execEndNamePos + 1);
+    PortableProcessStat build(ProcTokenizer t) throws IOException {
+        if (!t.nextLine()) {
+            throw new IOException("empty stat file");
+        }
+        int pid = (int) t.nextLong();
 
-            scanner = new Scanner(cleanStatusLine);
-            /* state = */scanner.next();
-            /* ppid = */scanner.nextInt();
-            /* pgrp = */scanner.nextInt();
-            /* session = */scanner.nextInt();
-            /* tty_nr = */scanner.nextInt();
-            /* tpgid = */scanner.nextInt();
-            /* flags = */scanner.nextInt();
-            /* minflt = */scanner.nextLong();
-            /* cminflt = */scanner.nextLong();
-            /* majflt = */scanner.nextLong();
-            /* cmajflt = */scanner.nextLong();
-            utime = scanner.nextLong();
-            stime = scanner.nextLong();
-            scanner.close();
+        /* be prepared for process names like '1 ) 2 3 4 foo 5' */
+        if (!t.skipPastLast((byte) ')')) {
+            throw new IOException("no process name in stat file");
         }
+        for (int i = 0; i < FIELDS_BEFORE_UTIME; i++) {
+            t.skipToken();
+        }
+        long utime = t.nextLong();
+        long stime = t.nextLong();
 
         return new PortableProcessStat(pid, utime, stime);
-
     }
 
 }
-
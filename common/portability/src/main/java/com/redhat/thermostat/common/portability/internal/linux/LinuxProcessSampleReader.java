@@ -0,0 +1,117 @@
+/*
+ * Copyright 2012-2017 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+package com.redhat.thermostat.common.portability.internal.linux;
+
+import java.io.IOException;
+import java.nio.channels.ReadableByteChannel;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.redhat.thermostat.common.portability.PortableProcessStat;
+import com.redhat.thermostat.common.portability.PortableVmIoStat;
+import com.redhat.thermostat.common.portability.ProcessSample;
+import com.redhat.thermostat.common.portability.internal.ProcessSampleReader;
+import com.redhat.thermostat.common.portability.internal.linux.vmio.ProcIoData;
+import com.redhat.thermostat.common.portability.internal.linux.vmio.ProcIoDataReader;
+import com.redhat.thermostat.common.portability.linux.ProcDataSource;
+import com.redhat.thermostat.common.portability.linux.ProcTokenizer;
+import com.redhat.thermostat.common.utils.LoggingUtils;
+
+/**
+ * Reads {@code /proc/<pid>/stat}, {@code status} and {@code io} with
+ * tokenizers owned by this reader, so that several readers can sweep
+ * different processes at the same time.
+ */
+public class LinuxProcessSampleReader implements ProcessSampleReader {
+
+    private static final Logger logger = LoggingUtils.getLogger(LinuxProcessSampleReader.class);
+
+    private static final int VM_RSS = 0;
+    private static final int THREADS = 1;
+    private static final byte[][] STATUS_KEYS = {
+        ProcTokenizer.bytes("VmRSS"),
+        ProcTokenizer.bytes("Threads"),
+    };
+    private static final byte[] KB = ProcTokenizer.bytes("kB");
+
+    private final ProcDataSource dataSource;
+    private final LinuxPortableProcessStatBuilderImpl statBuilder;
+    private final ProcIoDataReader ioReader;
+    private final ProcTokenizer tokenizer = new ProcTokenizer();
+
+    public LinuxProcessSampleReader(ProcDataSource dataSource) {
+        this.dataSource = dataSource;
+        this.statBuilder = new LinuxPortableProcessStatBuilderImpl(dataSource);
+        this.ioReader = new ProcIoDataReader(dataSource);
+    }
+
+    @Override
+    public ProcessSample read(int pid, long timeStamp) {
+        PortableProcessStat stat = statBuilder.build(pid);
+        if (stat == null) {
+            return null;
+        }
+        PortableVmIoStat io = null;
+        ProcIoData ioData = ioReader.read(pid);
+        if (ioData != null) {
+            io = new PortableVmIoStat(timeStamp, ioData.syscr, ioData.syscw, ioData.rchar, ioData.wchar);
+        }
+
+        long rss = ProcessSample.UNKNOWN;
+        long threads = ProcessSample.UNKNOWN;
+        try (ReadableByteChannel channel = dataSource.getStatusChannel(pid)) {
+            ProcTokenizer t = tokenizer.load(channel);
+            while (t.nextLine() && (rss == ProcessSample.UNKNOWN || threads == ProcessSample.UNKNOWN)) {
+                switch (t.nextKey(STATUS_KEYS, (byte) ':')) {
+                    case VM_RSS:
+                        rss = t.nextLong();
+                        if (t.skip(KB)) {
+                            rss *= 1024;
+                        }
+                        break;
+                    case THREADS:
+                        threads = t.nextLong();
+                        break;
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            logger.log(Level.FINE, "Unable to read status info for: " + pid);
+        }
+
+        return new ProcessSample(pid, stat, io, rss, threads);
+    }
+}
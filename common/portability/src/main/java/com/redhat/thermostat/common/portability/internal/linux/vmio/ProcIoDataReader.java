@@ -36,12 +36,13 @@
 
 package com.redhat.thermostat.common.portability.internal.linux.vmio;
 
-import java.io.BufferedReader;
 import java.io.IOException;
+import java.nio.channels.ReadableByteChannel;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import com.redhat.thermostat.common.portability.linux.ProcDataSource;
+import com.redhat.thermostat.common.portability.linux.ProcTokenizer;
 import com.redhat.thermostat.common.utils.LoggingUtils;
 
 /**
@@ -51,23 +52,41 @@ public class ProcIoDataReader {
 
     private static final Logger logger = LoggingUtils.getLogger(ProcIoDataReader.class);
 
+    private static final int RCHAR = 0;
+    private static final int WCHAR = 1;
+    private static final int SYSCR = 2;
+    private static final int SYSCW = 3;
+    private static final int READ_BYTES = 4;
+    private static final int WRITE_BYTES = 5;
+    private static final int CANCELLED_WRITE_BYTES = 6;
+    private static final byte[][] KEYS = {
+        ProcTokenizer.bytes("rchar"),
+        ProcTokenizer.bytes("wchar"),
+        ProcTokenizer.bytes("syscr"),
+        ProcTokenizer.bytes("syscw"),
+        ProcTokenizer.bytes("read_bytes"),
+        ProcTokenizer.bytes("write_bytes"),
+        ProcTokenizer.bytes("cancelled_write_bytes"),
+    };
+
     private final ProcDataSource dataSource;
+    private final ProcTokenizer tokenizer = new ProcTokenizer();
 
     public ProcIoDataReader(ProcDataSource dataSource) {
         this.dataSource = dataSource;
     }
 
-    public ProcIoData read(int pid) {
-        try (BufferedReader reader = new BufferedReader(dataSource.getIoReader(pid))) {
-            return read(reader);
-        } catch (IOException e) {
+    public synchronized ProcIoData read(int pid) {
+        try (ReadableByteChannel channel = dataSource.getIoChannel(pid)) {
+            return read(tokenizer.load(channel));
+        } catch (IOException | NumberFormatException e) {
             logger.log(Level.FINE, "Unable to read io info for: " + pid);
         }
 
         return null;
     }
 
-    private ProcIoData read(BufferedReader r) throws IOException {
+    private ProcIoData read(ProcTokenizer t) {
         // The file format is described at:
         // http://git.kernel.org/cgit/linux/kernel/git/torvalds/linux.git/tree/Documentation/filesystems/proc.txt
 
@@ -80,32 +99,28 @@ public class ProcIoDataReader {
         long write_bytes = UNKNOWN_VALUE;
         long cancelled_write_bytes = UNKNOWN_VALUE;
 
-        String line;
-        while ((line = r.readLine()) != null) {
-            String[] parts = line.split(":");
-            String key = parts[0].trim();
-            String value = parts[1].trim();
-            switch (key) {
-                case "rchar":
-                    rchar = Long.valueOf(value);
+        while (t.nextLine()) {
+            switch (t.nextKey(KEYS, (byte) ':')) {
+                case RCHAR:
+                    rchar = t.nextLong();
                     break;
-                case "wchar":
-                    wchar = Long.valueOf(value);
+                case WCHAR:
+                    wchar = t.nextLong();
                     break;
-                case "syscr":
-                    syscr = Long.valueOf(value);
+                case SYSCR:
+                    syscr = t.nextLong();
                     break;
-                case "syscw":
-                    syscw = Long.valueOf(value);
+                case SYSCW:
+                    syscw = t.nextLong();
                     break;
-                case "read_bytes":
-                    read_bytes = Long.valueOf(value);
+                case READ_BYTES:
+                    read_bytes = t.nextLong();
                     break;
-                case "write_bytes":
-                    write_bytes = Long.valueOf(value);
+                case WRITE_BYTES:
+                    write_bytes = t.nextLong();
                     break;
-                case "cancelled_write_bytes":
-                    cancelled_write_bytes = Long.valueOf(value);
+                case CANCELLED_WRITE_BYTES:
+                    cancelled_write_bytes = t.nextLong();
                     break;
             }
         }
@@ -114,4 +129,3 @@ public class ProcIoDataReader {
     }
 
 }
-
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2012-2017 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+package com.redhat.thermostat.common.portability.linux;
+
+/**
+ * The cumulative cpu counters of a cgroup. Counters that could not be read
+ * are {@link CgroupDataSource#UNKNOWN}.
+ */
+public class CgroupCpuStat {
+
+    private final long usageNanos;
+    private final long periods;
+    private final long throttledPeriods;
+    private final long throttledNanos;
+
+    public CgroupCpuStat(long usageNanos, long periods, long throttledPeriods, long throttledNanos) {
+        this.usageNanos = usageNanos;
+        this.periods = periods;
+        this.throttledPeriods = throttledPeriods;
+        this.throttledNanos = throttledNanos;
+    }
+
+    /**
+     * @return the cpu time used by all tasks of the cgroup, in nanoseconds
+     */
+    public long getUsageNanos() {
+        return usageNanos;
+    }
+
+    /**
+     * @return the number of enforcement periods that have elapsed
+     */
+    public long getPeriods() {
+        return periods;
+    }
+
+    /**
+     * @return the number of enforcement periods in which the cgroup used up
+     * its quota and was throttled
+     */
+    public long getThrottledPeriods() {
+        return throttledPeriods;
+    }
+
+    /**
+     * @return the time the tasks of the cgroup were throttled for, in
+     * nanoseconds
+     */
+    public long getThrottledNanos() {
+        return throttledNanos;
+    }
+}
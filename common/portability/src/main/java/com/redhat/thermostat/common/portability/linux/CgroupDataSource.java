@@ -0,0 +1,412 @@
+/*
+ * Copyright 2012-2017 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+package com.redhat.thermostat.common.portability.linux;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.redhat.thermostat.common.utils.LoggingUtils;
+
+/**
+ * Limits, usage and pressure of a cgroup, for both cgroup v1 and the
+ * unified v2 hierarchy. Inside a container these, rather than
+ * {@code /proc/meminfo} and {@code /proc/stat}, describe the resources that
+ * are actually available.
+ * <p>
+ * The root of the mounted hierarchy is always the cgroup that is read.
+ * Inside a container that is the container's own cgroup: the agent's path
+ * in {@code /proc/self/cgroup} is {@code /} with a cgroup namespace, and
+ * without one the runtime mounts only the container's subtree, so the path
+ * listed there does not exist under the mount point. Otherwise the agent
+ * runs on a bare host, where its cgroup is merely its service or user
+ * slice, and the root of the hierarchy describes the whole host;
+ * {@link #isContainerized()} tells the two apart. The files are read
+ * through the same cached descriptors as the files of
+ * {@link ProcDataSource}.
+ */
+public class CgroupDataSource {
+
+    public static final long UNKNOWN = -1;
+    public static final long UNLIMITED = Long.MAX_VALUE;
+
+    private static final Logger logger = LoggingUtils.getLogger(CgroupDataSource.class);
+
+    private static final String SELF_CGROUP_FILE = "/proc/self/cgroup";
+    private static final String CGROUP_MOUNT = "/sys/fs/cgroup";
+    private static final String PRESSURE_DIR = "/proc/pressure";
+
+    // the key of the unified hierarchy in /proc/self/cgroup
+    private static final String UNIFIED = "";
+
+    // cgroup v1 has no "max"; an unlimited cgroup reports the largest page
+    // aligned value instead
+    private static final long V1_UNLIMITED_THRESHOLD = Long.MAX_VALUE / 2;
+
+    private static final byte[] MAX = ProcTokenizer.bytes("max");
+    private static final byte[] SOME = ProcTokenizer.bytes("some");
+    private static final byte[] FULL = ProcTokenizer.bytes("full");
+
+    private static final int AVG10 = 0;
+    private static final int AVG60 = 1;
+    private static final int AVG300 = 2;
+    private static final int TOTAL = 3;
+    private static final byte[][] PRESSURE_KEYS = {
+        ProcTokenizer.bytes("avg10"),
+        ProcTokenizer.bytes("avg60"),
+        ProcTokenizer.bytes("avg300"),
+        ProcTokenizer.bytes("total"),
+    };
+
+    private static final int USAGE_USEC = 0;
+    private static final int NR_PERIODS = 1;
+    private static final int NR_THROTTLED = 2;
+    private static final int THROTTLED_USEC = 3;
+    private static final int THROTTLED_TIME = 4;
+    private static final byte[][] CPU_STAT_KEYS = {
+        ProcTokenizer.bytes("usage_usec"),
+        ProcTokenizer.bytes("nr_periods"),
+        ProcTokenizer.bytes("nr_throttled"),
+        ProcTokenizer.bytes("throttled_usec"),
+        ProcTokenizer.bytes("throttled_time"),
+    };
+
+    private final int version;
+    private final boolean containerized;
+    private final File memoryDir;
+    private final File cpuDir;
+    private final File cpuacctDir;
+    private final File pressureDir;
+    private final ProcFileCache cache;
+    private final ProcTokenizer tokenizer = new ProcTokenizer();
+
+    public CgroupDataSource() {
+        this(ProcFileCache.getService());
+    }
+
+    public CgroupDataSource(ProcFileCache cache) {
+        this(new File(SELF_CGROUP_FILE), new File(CGROUP_MOUNT), new File(PRESSURE_DIR), cache);
+    }
+
+    CgroupDataSource(File selfCgroupFile, File mountPoint, File pressureDir, ProcFileCache cache) {
+        this.pressureDir = pressureDir;
+        this.cache = cache;
+        Map<String, String> paths = readCgroupPaths(selfCgroupFile);
+        if (new File(mountPoint, "cgroup.controllers").exists()) {
+            version = 2;
+            memoryDir = cpuDir = cpuacctDir = mountPoint;
+            containerized = isOwnCgroupRoot(mountPoint, paths.get(UNIFIED));
+        } else if (new File(mountPoint, "memory").isDirectory()) {
+            version = 1;
+            memoryDir = new File(mountPoint, "memory");
+            cpuDir = new File(mountPoint, "cpu");
+            cpuacctDir = new File(mountPoint, "cpuacct");
+            containerized = isOwnCgroupRoot(memoryDir, paths.get("memory"))
+                    && isOwnCgroupRoot(cpuDir, paths.get("cpu"));
+        } else {
+            version = 0;
+            memoryDir = cpuDir = cpuacctDir = null;
+            containerized = false;
+        }
+    }
+
+    /**
+     * @return true if the agent runs in a container, whose own cgroup is the
+     * root of the mounted hierarchy. Only then do the limits and usage
+     * describe the resources available to the agent rather than the whole
+     * host.
+     */
+    public boolean isContainerized() {
+        return containerized;
+    }
+
+    /**
+     * @return false if no cgroup file system is mounted, in which case only
+     * {@link #getPressure(PressureStall.Resource)} may return anything
+     */
+    public boolean isAvailable() {
+        return version != 0;
+    }
+
+    /**
+     * @return 1 or 2 for the cgroup version, or 0 if there is none
+     */
+    public int getVersion() {
+        return version;
+    }
+
+    /**
+     * @return the memory used by the cgroup in bytes, including page cache,
+     * or {@link #UNKNOWN}
+     */
+    public synchronized long getMemoryUsage() {
+        if (version == 2) {
+            return readLong(new File(memoryDir, "memory.current"));
+        } else if (version == 1) {
+            return readLong(new File(memoryDir, "memory.usage_in_bytes"));
+        }
+        return UNKNOWN;
+    }
+
+    /**
+     * @return the memory limit of the cgroup in bytes, {@link #UNLIMITED} or
+     * {@link #UNKNOWN}
+     */
+    public synchronized long getMemoryLimit() {
+        if (version == 2) {
+            return readLong(new File(memoryDir, "memory.max"));
+        } else if (version == 1) {
+            long limit = readLong(new File(memoryDir, "memory.limit_in_bytes"));
+            return limit >= V1_UNLIMITED_THRESHOLD ? UNLIMITED : limit;
+        }
+        return UNKNOWN;
+    }
+
+    /**
+     * @return the number of processors the cgroup may use up in every
+     * enforcement period, {@link Double#POSITIVE_INFINITY} without a quota,
+     * or {@link #UNKNOWN}
+     */
+    public synchronized double getCpuLimit() {
+        long quota;
+        long period;
+        if (version == 2) {
+            // "$MAX $PERIOD", where $MAX may be "max"
+            try (ReadableByteChannel channel = open(new File(cpuDir, "cpu.max"))) {
+                ProcTokenizer t = tokenizer.load(channel);
+                if (!t.nextLine()) {
+                    return UNKNOWN;
+                }
+                quota = t.skip(MAX) ? UNLIMITED : t.nextLong();
+                period = t.nextLong();
+            } catch (IOException | NumberFormatException e) {
+                logger.log(Level.FINE, "Unable to read cpu.max", e);
+                return UNKNOWN;
+            }
+        } else if (version == 1) {
+            quota = readLong(new File(cpuDir, "cpu.cfs_quota_us"));
+            period = readLong(new File(cpuDir, "cpu.cfs_period_us"));
+            if (quota == UNKNOWN && period != UNKNOWN) {
+                // a quota of -1 means no quota
+                quota = UNLIMITED;
+            }
+        } else {
+            return UNKNOWN;
+        }
+        if (quota == UNLIMITED) {
+            return Double.POSITIVE_INFINITY;
+        }
+        if (quota < 0 || period <= 0) {
+            return UNKNOWN;
+        }
+        return (double) quota / period;
+    }
+
+    /**
+     * @return the cpu usage and throttling counters of the cgroup, or null
+     */
+    public synchronized CgroupCpuStat getCpuStat() {
+        if (version == 0) {
+            return null;
+        }
+        long usage = UNKNOWN;
+        long periods = UNKNOWN;
+        long throttledPeriods = UNKNOWN;
+        long throttledNanos = UNKNOWN;
+        try (ReadableByteChannel channel = open(new File(cpuDir, "cpu.stat"))) {
+            ProcTokenizer t = tokenizer.load(channel);
+            while (t.nextLine()) {
+                switch (t.nextKey(CPU_STAT_KEYS, (byte) ' ')) {
+                    case USAGE_USEC:
+                        usage = t.nextLong() * 1000;
+                        break;
+                    case NR_PERIODS:
+                        periods = t.nextLong();
+                        break;
+                    case NR_THROTTLED:
+                        throttledPeriods = t.nextLong();
+                        break;
+                    case THROTTLED_USEC:
+                        throttledNanos = t.nextLong() * 1000;
+                        break;
+                    case THROTTLED_TIME:
+                        throttledNanos = t.nextLong();
+                        break;
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            logger.log(Level.FINE, "Unable to read cpu.stat", e);
+            return null;
+        }
+        if (version == 1) {
+            // usage is kept by the cpuacct controller
+            usage = readLong(new File(cpuacctDir, "cpuacct.usage"));
+        }
+        return new CgroupCpuStat(usage, periods, throttledPeriods, throttledNanos);
+    }
+
+    /**
+     * @return the pressure on the resource: within the cgroup on v2, and
+     * for the whole system otherwise. Null if the kernel does not provide
+     * pressure stall information.
+     */
+    public synchronized PressureStall getPressure(PressureStall.Resource resource) {
+        File file = null;
+        if (version == 2) {
+            file = new File(memoryDir, resource.getFileName() + ".pressure");
+        }
+        if (file == null || !file.exists()) {
+            file = new File(pressureDir, resource.getFileName());
+        }
+
+        double[] some = new double[3];
+        double[] full = new double[3];
+        long someTotal = UNKNOWN;
+        long fullTotal = UNKNOWN;
+        try (ReadableByteChannel channel = open(file)) {
+            ProcTokenizer t = tokenizer.load(channel);
+            while (t.nextLine()) {
+                boolean isSome = t.skip(SOME);
+                if (!isSome && !t.skip(FULL)) {
+                    continue;
+                }
+                double[] averages = isSome ? some : full;
+                long total = UNKNOWN;
+                while (t.hasToken()) {
+                    int key = t.nextKey(PRESSURE_KEYS, (byte) '=');
+                    if (key == TOTAL) {
+                        total = t.nextLong();
+                    } else if (key >= 0) {
+                        averages[key] = t.nextDecimal();
+                    } else {
+                        t.skipToken();
+                    }
+                }
+                if (isSome) {
+                    someTotal = total;
+                } else {
+                    fullTotal = total;
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            logger.log(Level.FINE, "Unable to read pressure stall information from " + file, e);
+            return null;
+        }
+        if (someTotal == UNKNOWN) {
+            return null;
+        }
+        return new PressureStall(some[AVG10], some[AVG60], some[AVG300], someTotal,
+                full[AVG10], full[AVG60], full[AVG300], fullTotal);
+    }
+
+    /**
+     * @return the number in the first line of the file, {@link #UNLIMITED}
+     * for "max", or {@link #UNKNOWN}
+     */
+    private long readLong(File file) {
+        try (ReadableByteChannel channel = open(file)) {
+            ProcTokenizer t = tokenizer.load(channel);
+            if (!t.nextLine()) {
+                return UNKNOWN;
+            }
+            if (t.skip(MAX)) {
+                return UNLIMITED;
+            }
+            long value = t.nextLong();
+            return value < 0 ? UNKNOWN : value;
+        } catch (IOException | NumberFormatException e) {
+            logger.log(Level.FINE, "Unable to read " + file, e);
+            return UNKNOWN;
+        }
+    }
+
+    private ReadableByteChannel open(File file) throws IOException {
+        if (cache == null) {
+            return FileChannel.open(file.toPath());
+        }
+        return cache.open(file.getPath());
+    }
+
+    /**
+     * Reads lines like {@code 4:memory:/docker/1234} or {@code 0::/user.slice}
+     * into a map from controller, or "" for the unified hierarchy, to path.
+     */
+    private static Map<String, String> readCgroupPaths(File selfCgroupFile) {
+        Map<String, String> paths = new HashMap<>();
+        List<String> lines;
+        try {
+            lines = Files.readAllLines(selfCgroupFile.toPath(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            logger.log(Level.FINE, "Unable to read " + selfCgroupFile, e);
+            return paths;
+        }
+        for (String line : lines) {
+            String[] parts = line.split(":", 3);
+            if (parts.length != 3) {
+                continue;
+            }
+            if (parts[1].isEmpty()) {
+                paths.put(UNIFIED, parts[2]);
+            } else {
+                for (String controller : parts[1].split(",")) {
+                    paths.put(controller, parts[2]);
+                }
+            }
+        }
+        return paths;
+    }
+
+    /**
+     * @return true if the cgroup at the given path is the root of the
+     * hierarchy mounted at root: the path is {@code /} in a cgroup
+     * namespace, and does not exist under a mount of only our own subtree
+     */
+    private static boolean isOwnCgroupRoot(File root, String path) {
+        if (path == null) {
+            return false;
+        }
+        return "/".equals(path) || !new File(root, path).isDirectory();
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2012-2017 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+package com.redhat.thermostat.common.portability.linux;
+
+/**
+ * Pressure stall information: the share of time in which some, or all,
+ * non-idle tasks were stalled waiting for a resource. See
+ * {@code Documentation/accounting/psi.rst} in the kernel sources.
+ */
+public class PressureStall {
+
+    public enum Resource {
+        CPU("cpu"),
+        MEMORY("memory"),
+        IO("io");
+
+        private final String fileName;
+
+        private Resource(String fileName) {
+            this.fileName = fileName;
+        }
+
+        public String getFileName() {
+            return fileName;
+        }
+    }
+
+    private final double someAvg10;
+    private final double someAvg60;
+    private final double someAvg300;
+    private final long someTotal;
+    private final double fullAvg10;
+    private final double fullAvg60;
+    private final double fullAvg300;
+    private final long fullTotal;
+
+    public PressureStall(double someAvg10, double someAvg60, double someAvg300, long someTotal,
+            double fullAvg10, double fullAvg60, double fullAvg300, long fullTotal) {
+        this.someAvg10 = someAvg10;
+        this.someAvg60 = someAvg60;
+        this.someAvg300 = someAvg300;
+        this.someTotal = someTotal;
+        this.fullAvg10 = fullAvg10;
+        this.fullAvg60 = fullAvg60;
+        this.fullAvg300 = fullAvg300;
+        this.fullTotal = fullTotal;
+    }
+
+    /**
+     * @return the percentage of the last 10 seconds in which at least one
+     * task was stalled
+     */
+    public double getSomeAvg10() {
+        return someAvg10;
+    }
+
+    public double getSomeAvg60() {
+        return someAvg60;
+    }
+
+    public double getSomeAvg300() {
+        return someAvg300;
+    }
+
+    /**
+     * @return the total time in which at least one task was stalled, in
+     * microseconds
+     */
+    public long getSomeTotal() {
+        return someTotal;
+    }
+
+    /**
+     * @return the percentage of the last 10 seconds in which all non-idle
+     * tasks were stalled
+     */
+    public double getFullAvg10() {
+        return fullAvg10;
+    }
+
+    public double getFullAvg60() {
+        return fullAvg60;
+    }
+
+    public double getFullAvg300() {
+        return fullAvg300;
+    }
+
+    /**
+     * @return the total time in which all non-idle tasks were stalled, in
+     * microseconds
+     */
+    public long getFullTotal() {
+        return fullTotal;
+    }
+}
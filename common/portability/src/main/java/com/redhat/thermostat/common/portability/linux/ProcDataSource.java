@@ -40,6 +40,9 @@ import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
 import java.io.Reader;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Paths;
 
 /**
  * Wrapper for files under {@code /proc/}. See proc(5) for details about this.
@@ -49,6 +52,13 @@ import java.io.Reader;
  *
  * Note that different Unix-like OSs may or may not have a /proc (and the format may be different)
  * for example Darwin/OSX doesn't have /proc
+ *
+ * The frequently sampled files are also available as channels, for parsing
+ * with a {@link ProcTokenizer}. The descriptors behind the channels for
+ * {@code stat}, {@code meminfo}, {@code net/dev}, {@code <pid>/stat},
+ * {@code <pid>/status} and {@code <pid>/io} are kept open between samples in the
+ * {@link ProcFileCache} service of this bundle, which is shared by all instances.
+ * Without that service, the channels are opened afresh on every call.
  */
 public class ProcDataSource {
 
@@ -56,6 +66,7 @@ public class ProcDataSource {
     private static final String STAT_FILE = "/proc/stat";
     private static final String MEMINFO_FILE = "/proc/meminfo";
     private static final String CPUINFO_FILE = "/proc/cpuinfo";
+    private static final String NET_DEV_FILE = "/proc/net/dev";
 
     private static final String PID_ENVIRON_FILE = "/proc/${pid}/environ";
     private static final String PID_IO_FILE = "/proc/${pid}/io";
@@ -66,7 +77,11 @@ public class ProcDataSource {
     private final ReaderCreator readerCreator;
     
     public ProcDataSource() {
-        this(new ReaderCreator());
+        this(ProcFileCache.getService());
+    }
+
+    public ProcDataSource(ProcFileCache cache) {
+        this(new ReaderCreator(cache));
     }
 
     ProcDataSource(ReaderCreator readerCreator) {
@@ -94,6 +109,13 @@ public class ProcDataSource {
         return readerCreator.createFileReader(STAT_FILE);
     }
 
+    /**
+     * Returns a channel for /proc/stat. Kernel/System statistics.
+     */
+    public ReadableByteChannel getStatChannel() throws IOException {
+        return readerCreator.createCachedChannel(STAT_FILE);
+    }
+
     /**
      * Returns a reader for /proc/meminfo
      */
@@ -101,6 +123,20 @@ public class ProcDataSource {
         return readerCreator.createFileReader(MEMINFO_FILE);
     }
 
+    /**
+     * Returns a channel for /proc/meminfo
+     */
+    public ReadableByteChannel getMemInfoChannel() throws IOException {
+        return readerCreator.createCachedChannel(MEMINFO_FILE);
+    }
+
+    /**
+     * Returns a channel for /proc/net/dev. Network interface statistics.
+     */
+    public ReadableByteChannel getNetDevChannel() throws IOException {
+        return readerCreator.createCachedChannel(NET_DEV_FILE);
+    }
+
     /**
      * Returns a reader for /proc/$PID/environ
      */
@@ -115,6 +151,13 @@ public class ProcDataSource {
         return readerCreator.createFileReader(getPidFile(PID_IO_FILE, pid));
     }
 
+    /**
+     * Returns a channel for /proc/$PID/io
+     */
+    public ReadableByteChannel getIoChannel(int pid) throws IOException {
+        return readerCreator.createCachedChannel(getPidFile(PID_IO_FILE, pid));
+    }
+
     /**
      * Returns a reader for /proc/$PID/stat
      */
@@ -122,6 +165,13 @@ public class ProcDataSource {
         return readerCreator.createFileReader(getPidFile(PID_STAT_FILE, pid));
     }
 
+    /**
+     * Returns a channel for /proc/$PID/stat
+     */
+    public ReadableByteChannel getStatChannel(int pid) throws IOException {
+        return readerCreator.createCachedChannel(getPidFile(PID_STAT_FILE, pid));
+    }
+
     /**
      * Returns a reader for /proc/$PID/status
      */
@@ -129,6 +179,13 @@ public class ProcDataSource {
         return readerCreator.createFileReader(getPidFile(PID_STATUS_FILE, pid));
     }
 
+    /**
+     * Returns a channel for /proc/$PID/status
+     */
+    public ReadableByteChannel getStatusChannel(int pid) throws IOException {
+        return readerCreator.createCachedChannel(getPidFile(PID_STATUS_FILE, pid));
+    }
+
     /**
      * Returns a reader for /proc/$PID/numa_maps
      */
@@ -136,15 +193,37 @@ public class ProcDataSource {
         return readerCreator.createFileReader(getPidFile(PID_NUMA_MAPS_FILE, pid));
     }
 
-    private String getPidFile(String fileName, int pid) {
+    /**
+     * Returns a channel for /proc/$PID/numa_maps
+     */
+    public ReadableByteChannel getNumaMapsChannel(int pid) throws IOException {
+        return readerCreator.createChannel(getPidFile(PID_NUMA_MAPS_FILE, pid));
+    }
+
+    private static String getPidFile(String fileName, int pid) {
         return fileName.replace("${pid}", Integer.toString(pid));
     }
     
     // For testing purposes
     static class ReaderCreator {
+
+        private final ProcFileCache cache;
+
+        ReaderCreator(ProcFileCache cache) {
+            this.cache = cache;
+        }
+
         FileReader createFileReader(String fileName) throws FileNotFoundException {
             return new FileReader(fileName);
         }
+
+        ReadableByteChannel createChannel(String fileName) throws IOException {
+            return FileChannel.open(Paths.get(fileName));
+        }
+
+        ReadableByteChannel createCachedChannel(String fileName) throws IOException {
+            return cache == null ? createChannel(fileName) : cache.open(fileName);
+        }
     }
 
 }
@@ -0,0 +1,275 @@
+/*
+ * Copyright 2012-2017 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+package com.redhat.thermostat.common.portability.linux;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.FrameworkUtil;
+import org.osgi.framework.ServiceReference;
+
+import com.redhat.thermostat.common.utils.LoggingUtils;
+
+/**
+ * Keeps frequently sampled files under {@code /proc/} open, so that each
+ * sample is a positional read from offset 0 of an open descriptor rather
+ * than an open, read and close.
+ * <p>
+ * The number of open descriptors is capped; the least recently read file
+ * is evicted when the cap is reached. Files of a process are evicted when
+ * the process goes away, either through {@link #releaseProcessFiles(int)}
+ * or when a read of them fails. An evicted descriptor is closed once the
+ * last channel reading it is closed, so eviction never fails a read in
+ * progress on another thread.
+ * <p>
+ * The cache is registered as a service by this bundle, which closes all
+ * descriptors when it stops.
+ */
+public class ProcFileCache {
+
+    static final String MAX_OPEN_FILES_PROPERTY = "com.redhat.thermostat.common.portability.proc.maxOpenFiles";
+    static final int DEFAULT_MAX_OPEN_FILES = 512;
+
+    private static final Logger logger = LoggingUtils.getLogger(ProcFileCache.class);
+
+    private final FileOpener opener;
+    private final int maxOpenFiles;
+    // Guarded by this
+    private final Map<String, Descriptor> descriptors;
+
+    public ProcFileCache() {
+        this(Integer.getInteger(MAX_OPEN_FILES_PROPERTY, DEFAULT_MAX_OPEN_FILES), new FileOpener());
+    }
+
+    ProcFileCache(final int maxOpenFiles, FileOpener opener) {
+        this.opener = opener;
+        this.maxOpenFiles = maxOpenFiles;
+        this.descriptors = new LinkedHashMap<String, Descriptor>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Descriptor> eldest) {
+                if (size() > ProcFileCache.this.maxOpenFiles) {
+                    eldest.getValue().evict();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * @return the cache registered by this bundle, or {@code null} when not
+     *         running in OSGi or the bundle is not active
+     */
+    static ProcFileCache getService() {
+        Bundle bundle = FrameworkUtil.getBundle(ProcFileCache.class);
+        BundleContext context = bundle == null ? null : bundle.getBundleContext();
+        if (context == null) {
+            return null;
+        }
+        ServiceReference ref = context.getServiceReference(ProcFileCache.class.getName());
+        return ref == null ? null : (ProcFileCache) context.getService(ref);
+    }
+
+    /**
+     * Returns a channel that reads the file from its start. Closing the
+     * channel leaves the underlying descriptor open for the next read.
+     */
+    ReadableByteChannel open(String fileName) throws IOException {
+        return new CachedChannel(acquire(fileName));
+    }
+
+    private synchronized Descriptor acquire(String fileName) throws IOException {
+        Descriptor descriptor = descriptors.get(fileName);
+        if (descriptor != null && !descriptor.channel.isOpen()) {
+            descriptors.remove(fileName);
+            descriptor.evict();
+            descriptor = null;
+        }
+        if (descriptor == null) {
+            descriptor = new Descriptor(fileName, opener.open(fileName));
+            descriptors.put(fileName, descriptor);
+        }
+        descriptor.users++;
+        return descriptor;
+    }
+
+    private synchronized void release(Descriptor descriptor) {
+        descriptor.users--;
+        descriptor.closeIfUnused();
+    }
+
+    /**
+     * Closes the descriptors kept open for files of the given process.
+     */
+    public void releaseProcessFiles(int pid) {
+        evictPrefix("/proc/" + pid + "/");
+    }
+
+    /**
+     * Closes all open files whose path starts with the given prefix.
+     */
+    synchronized void evictPrefix(String prefix) {
+        for (Iterator<Map.Entry<String, Descriptor>> iter = descriptors.entrySet().iterator(); iter.hasNext();) {
+            Map.Entry<String, Descriptor> entry = iter.next();
+            if (entry.getKey().startsWith(prefix)) {
+                entry.getValue().evict();
+                iter.remove();
+            }
+        }
+    }
+
+    /**
+     * Closes all open files.
+     */
+    public void close() {
+        evictPrefix("");
+    }
+
+    private synchronized void evict(Descriptor descriptor) {
+        // Only if it has not been replaced by a fresh descriptor meanwhile
+        if (descriptors.get(descriptor.fileName) == descriptor) {
+            descriptors.remove(descriptor.fileName);
+            descriptor.evict();
+        }
+    }
+
+    synchronized int size() {
+        return descriptors.size();
+    }
+
+    synchronized List<String> getOpenFiles() {
+        return new ArrayList<>(descriptors.keySet());
+    }
+
+    /**
+     * An open file and the number of channels reading it. Guarded by the
+     * cache.
+     */
+    private static class Descriptor {
+
+        private final String fileName;
+        private final FileChannel channel;
+        private int users;
+        private boolean evicted;
+
+        Descriptor(String fileName, FileChannel channel) {
+            this.fileName = fileName;
+            this.channel = channel;
+        }
+
+        void evict() {
+            evicted = true;
+            closeIfUnused();
+        }
+
+        void closeIfUnused() {
+            if (evicted && users == 0) {
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    logger.log(Level.FINE, "Unable to close " + fileName, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * A read-only view of a cached descriptor with its own position.
+     */
+    private class CachedChannel implements ReadableByteChannel {
+
+        private final Descriptor descriptor;
+        private long position;
+        private boolean open = true;
+
+        CachedChannel(Descriptor descriptor) {
+            this.descriptor = descriptor;
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            if (!open) {
+                throw new ClosedChannelException();
+            }
+            try {
+                int read = descriptor.channel.read(dst, position);
+                if (read > 0) {
+                    position += read;
+                }
+                return read;
+            } catch (IOException e) {
+                // Typically the process is gone; the next open gets a new
+                // descriptor
+                evict(descriptor);
+                throw e;
+            }
+        }
+
+        @Override
+        public boolean isOpen() {
+            return open;
+        }
+
+        @Override
+        public void close() {
+            if (open) {
+                open = false;
+                release(descriptor);
+            }
+        }
+    }
+
+    // For testing purposes
+    static class FileOpener {
+        FileChannel open(String fileName) throws IOException {
+            return FileChannel.open(Paths.get(fileName));
+        }
+    }
+}
@@ -0,0 +1,361 @@
+/*
+ * Copyright 2012-2017 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+package com.redhat.thermostat.common.portability.linux;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A line and token oriented parser for the text files under {@code /proc/}
+ * that works on raw bytes.
+ * <p>
+ * The file is read into a direct buffer that is kept and reused for the
+ * next file, and numbers are parsed straight from that buffer. Parsing a
+ * file therefore creates no garbage, unlike going through a
+ * {@link java.io.Reader} and {@code String}s.
+ * <p>
+ * Typical use:
+ * <pre>
+ * tokenizer.load(channel);
+ * while (tokenizer.nextLine()) {
+ *     if (tokenizer.skip(PREFIX)) {
+ *         long value = tokenizer.nextLong();
+ *     }
+ * }
+ * </pre>
+ * All methods other than {@link #load(ReadableByteChannel)} and
+ * {@link #nextLine()} work within the current line. Instances are not
+ * thread-safe.
+ */
+public class ProcTokenizer {
+
+    private static final int DEFAULT_CAPACITY = 4096;
+
+    private ByteBuffer buffer;
+    private int limit;
+    private int nextLineStart;
+    private int lineStart;
+    private int lineEnd;
+    private int pos;
+
+    public ProcTokenizer() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public ProcTokenizer(int initialCapacity) {
+        buffer = ByteBuffer.allocateDirect(initialCapacity);
+    }
+
+    /**
+     * Converts an ASCII literal for use with {@link #skip(byte[])} and
+     * {@link #nextKey(byte[][], byte)}.
+     */
+    public static byte[] bytes(String literal) {
+        return literal.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Reads the whole content of the channel, replacing the previous
+     * content. File channels are read with positional reads starting at
+     * offset 0, so an open channel can be read again on every sample.
+     * The channel is not closed.
+     */
+    public ProcTokenizer load(ReadableByteChannel channel) throws IOException {
+        buffer.clear();
+        FileChannel file = channel instanceof FileChannel ? (FileChannel) channel : null;
+        long position = 0;
+        int read;
+        // The buffer always has room left here, so reading nothing means
+        // the end of the file
+        while ((read = file != null ? file.read(buffer, position) : channel.read(buffer)) > 0) {
+            position += read;
+            if (!buffer.hasRemaining()) {
+                grow();
+            }
+        }
+        limit = buffer.position();
+        nextLineStart = 0;
+        lineStart = lineEnd = pos = 0;
+        return this;
+    }
+
+    private void grow() {
+        ByteBuffer larger = ByteBuffer.allocateDirect(buffer.capacity() * 2);
+        buffer.flip();
+        larger.put(buffer);
+        buffer = larger;
+    }
+
+    /**
+     * Moves to the next line, which is the first one after a
+     * {@link #load(ReadableByteChannel)}.
+     * @return false if there are no more lines
+     */
+    public boolean nextLine() {
+        if (nextLineStart >= limit) {
+            return false;
+        }
+        lineStart = nextLineStart;
+        lineEnd = lineStart;
+        while (lineEnd < limit && buffer.get(lineEnd) != '\n') {
+            lineEnd++;
+        }
+        nextLineStart = lineEnd + 1;
+        pos = lineStart;
+        return true;
+    }
+
+    /**
+     * Moves back to the start of the current line.
+     */
+    public void rewindLine() {
+        pos = lineStart;
+    }
+
+    /**
+     * Skips blanks.
+     * @return true if there is a token left on the current line
+     */
+    public boolean hasToken() {
+        skipBlanks();
+        return pos < lineEnd;
+    }
+
+    /**
+     * Skips blanks and the token that follows them.
+     */
+    public void skipToken() {
+        skipBlanks();
+        while (pos < lineEnd && !isBlank(buffer.get(pos))) {
+            pos++;
+        }
+    }
+
+    /**
+     * @return true if the current position is at the end of a token
+     */
+    public boolean atTokenEnd() {
+        return pos >= lineEnd || isBlank(buffer.get(pos));
+    }
+
+    /**
+     * Skips blanks and then the given literal, if it comes next.
+     * @return true if the literal was found and skipped
+     */
+    public boolean skip(byte[] literal) {
+        skipBlanks();
+        if (matches(pos, lineEnd, literal)) {
+            pos += literal.length;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Moves past the last occurrence of a byte in the current line, e.g. the
+     * closing parenthesis around a process name that may itself contain
+     * parentheses.
+     * @return false if the byte does not occur after the current position
+     */
+    public boolean skipPastLast(byte b) {
+        for (int i = lineEnd - 1; i >= pos; i--) {
+            if (buffer.get(i) == b) {
+                pos = i + 1;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return true if the next byte, without skipping blanks, is a digit
+     */
+    public boolean peekDigit() {
+        return pos < lineEnd && isDigit(buffer.get(pos));
+    }
+
+    /**
+     * Skips blanks and parses the decimal number that follows, stopping at
+     * the first byte that is not a digit.
+     * @throws NumberFormatException if no number follows
+     */
+    public long nextLong() {
+        skipBlanks();
+        boolean negative = false;
+        if (pos < lineEnd && buffer.get(pos) == '-') {
+            negative = true;
+            pos++;
+        }
+        if (!peekDigit()) {
+            throw new NumberFormatException("Expected a number at offset " + pos);
+        }
+        long value = 0;
+        byte b;
+        while (pos < lineEnd && isDigit(b = buffer.get(pos))) {
+            value = value * 10 + (b - '0');
+            pos++;
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * Parses a plain decimal number like {@code 23.98}, without exponent.
+     * @throws NumberFormatException if the next token is not a number
+     */
+    public double nextDecimal() {
+        skipBlanks();
+        boolean negative = pos < lineEnd && buffer.get(pos) == '-';
+        long integral = nextLong();
+        long fraction = 0;
+        long scale = 1;
+        if (pos < lineEnd && buffer.get(pos) == '.') {
+            pos++;
+            byte b;
+            while (pos < lineEnd && isDigit(b = buffer.get(pos)) && scale < 1_000_000_000_000_000L) {
+                fraction = fraction * 10 + (b - '0');
+                scale *= 10;
+                pos++;
+            }
+            // digits beyond the precision of a double
+            while (pos < lineEnd && isDigit(buffer.get(pos))) {
+                pos++;
+            }
+        }
+        double value = Math.abs(integral) + (double) fraction / scale;
+        return negative ? -value : value;
+    }
+
+    /**
+     * Reads a key that runs up to a separator, as in {@code "MemTotal: 1 kB"},
+     * and moves past the separator.
+     * @return the index of the key in {@code keys}, or -1 if the key is not
+     * one of them or the line has no separator
+     */
+    public int nextKey(byte[][] keys, byte separator) {
+        skipBlanks();
+        int end = pos;
+        while (end < lineEnd && buffer.get(end) != separator) {
+            end++;
+        }
+        if (end == lineEnd) {
+            return -1;
+        }
+        int keyEnd = end;
+        while (keyEnd > pos && isBlank(buffer.get(keyEnd - 1))) {
+            keyEnd--;
+        }
+        int keyStart = pos;
+        pos = end + 1;
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i].length == keyEnd - keyStart && matches(keyStart, keyEnd, keys[i])) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Reads a key that runs up to a separator, as {@link #nextKey(byte[][], byte)}
+     * does, and returns it as a string. This allocates, and is meant for keys
+     * that are not known in advance, such as interface names.
+     * @return the key, or null if the line has no separator
+     */
+    public String nextKey(byte separator) {
+        skipBlanks();
+        int end = pos;
+        while (end < lineEnd && buffer.get(end) != separator) {
+            end++;
+        }
+        if (end == lineEnd) {
+            return null;
+        }
+        int keyEnd = end;
+        while (keyEnd > pos && isBlank(buffer.get(keyEnd - 1))) {
+            keyEnd--;
+        }
+        byte[] bytes = new byte[keyEnd - pos];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = buffer.get(pos + i);
+        }
+        pos = end + 1;
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Skips blanks and returns the next token as a string. This allocates,
+     * and is meant for rarely used values and error messages.
+     */
+    public String nextString() {
+        skipBlanks();
+        int start = pos;
+        skipToken();
+        byte[] bytes = new byte[pos - start];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = buffer.get(start + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private boolean matches(int start, int end, byte[] literal) {
+        if (end - start < literal.length) {
+            return false;
+        }
+        for (int i = 0; i < literal.length; i++) {
+            if (buffer.get(start + i) != literal[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void skipBlanks() {
+        while (pos < lineEnd && isBlank(buffer.get(pos))) {
+            pos++;
+        }
+    }
+
+    private static boolean isBlank(byte b) {
+        return b == ' ' || b == '\t' || b == '\r';
+    }
+
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+}
@@ -0,0 +1,241 @@
+/*
+ * Copyright 2012-2017 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+package com.redhat.thermostat.common.portability;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.redhat.thermostat.common.Clock;
+import com.redhat.thermostat.common.portability.internal.ProcessSampleReader;
+
+public class ProcessSamplerTest {
+
+    private Clock clock;
+    private FakeReader reader;
+    private ProcessSampler.ReaderFactory readerFactory;
+    private ProcessSampler sampler;
+
+    @Before
+    public void setUp() {
+        clock = mock(Clock.class);
+        when(clock.getRealTimeMillis()).thenReturn(1000L);
+        when(clock.getMonotonicTimeNanos()).thenReturn(0L);
+        reader = new FakeReader();
+        readerFactory = mock(ProcessSampler.ReaderFactory.class);
+        when(readerFactory.createReader()).thenReturn(reader);
+        sampler = new ProcessSampler(clock, readerFactory, 4);
+    }
+
+    @After
+    public void tearDown() {
+        sampler.shutdown();
+    }
+
+    @Test
+    public void testSnapshotContainsWatchedProcesses() {
+        sampler.watch(1);
+        sampler.watch(2);
+
+        ProcessSnapshot snapshot = sampler.sample();
+
+        assertEquals(1000L, snapshot.getTimeStamp());
+        assertEquals(new HashSet<>(Arrays.asList(1, 2)), snapshot.getPids());
+        assertEquals(1, snapshot.get(1).getPid());
+        assertNull(snapshot.get(3));
+    }
+
+    @Test
+    public void testExitedProcessesAreLeftOut() {
+        sampler.watch(1);
+        sampler.watch(2);
+        reader.exited.add(2);
+
+        ProcessSnapshot snapshot = sampler.sample();
+
+        assertEquals(Collections.singleton(1), snapshot.getPids());
+    }
+
+    @Test
+    public void testSnapshotIsLatestSweep() {
+        sampler.watch(1);
+        assertNull(sampler.getSnapshot());
+
+        ProcessSnapshot first = sampler.sample();
+        assertSame(first, sampler.getSnapshot());
+        assertSame(first, sampler.getSnapshot());
+        assertEquals(1, reader.reads);
+
+        ProcessSnapshot second = sampler.sample();
+        assertNotSame(first, second);
+        assertSame(second, sampler.getSnapshot());
+        assertEquals(2, reader.reads);
+    }
+
+    @Test
+    public void testWatchIsCounted() {
+        sampler.watch(1);
+        sampler.watch(1);
+        sampler.unwatch(1);
+
+        assertEquals(Collections.singleton(1), sampler.sample().getPids());
+
+        sampler.unwatch(1);
+
+        assertEquals(0, sampler.sample().size());
+    }
+
+    @Test
+    public void testUnwatchUnknownProcess() {
+        sampler.unwatch(1);
+
+        assertEquals(0, sampler.sample().size());
+    }
+
+    @Test
+    public void testListenersSeeEverySnapshot() {
+        ProcessSampler.Listener listener = mock(ProcessSampler.Listener.class);
+        sampler.addListener(listener);
+        sampler.watch(1);
+
+        ProcessSnapshot snapshot = sampler.sample();
+        sampler.getSnapshot();
+
+        verify(listener, times(1)).processesSampled(snapshot);
+
+        sampler.removeListener(listener);
+        sampler.sample();
+
+        verify(listener, times(1)).processesSampled(any(ProcessSnapshot.class));
+    }
+
+    @Test
+    public void testLargeSweepsAreSplitBetweenReaders() {
+        ProcessSampleReader other = mock(ProcessSampleReader.class);
+        when(other.read(anyInt(), anyLong())).thenAnswer(new Answer<ProcessSample>() {
+            @Override
+            public ProcessSample answer(InvocationOnMock invocation) {
+                int pid = (Integer) invocation.getArguments()[0];
+                return new ProcessSample(pid, new PortableProcessStat(pid, 0, 0), null, -1, -1);
+            }
+        });
+        when(readerFactory.createReader()).thenReturn(reader, other);
+        int count = 2 * ProcessSampler.PIDS_PER_WORKER;
+        for (int pid = 1; pid <= count; pid++) {
+            sampler.watch(pid);
+        }
+
+        ProcessSnapshot snapshot = sampler.sample();
+
+        assertEquals(count, snapshot.size());
+        assertEquals(ProcessSampler.PIDS_PER_WORKER, reader.reads);
+        verify(other, times(ProcessSampler.PIDS_PER_WORKER)).read(anyInt(), anyLong());
+        verify(readerFactory, times(2)).createReader();
+    }
+
+    @Test
+    public void testShutdownStopsWorkers() throws InterruptedException {
+        int count = 2 * ProcessSampler.PIDS_PER_WORKER;
+        for (int pid = 1; pid <= count; pid++) {
+            sampler.watch(pid);
+        }
+        Set<Thread> before = Thread.getAllStackTraces().keySet();
+        sampler.sample();
+        List<Thread> workers = new ArrayList<>();
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().startsWith("process-sampler-") && !before.contains(thread)) {
+                workers.add(thread);
+            }
+        }
+        assertFalse(workers.isEmpty());
+
+        sampler.shutdown();
+
+        for (Thread worker : workers) {
+            worker.join(5000);
+            assertFalse(worker.isAlive());
+        }
+    }
+
+    @Test
+    public void testReadersAreReused() {
+        sampler.watch(1);
+
+        sampler.sample();
+        sampler.sample();
+
+        verify(readerFactory, times(1)).createReader();
+        assertEquals(2, reader.reads);
+    }
+
+    private static class FakeReader implements ProcessSampleReader {
+
+        private final Set<Integer> exited = new HashSet<>();
+        private int reads;
+
+        @Override
+        public synchronized ProcessSample read(int pid, long timeStamp) {
+            reads++;
+            if (exited.contains(pid)) {
+                return null;
+            }
+            return new ProcessSample(pid, new PortableProcessStat(pid, 1, 2), null, -1, -1);
+        }
+    }
+}
@@ -46,8 +46,11 @@ import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.io.StringReader;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
 
 import com.redhat.thermostat.common.portability.PortableProcessStat;
 import com.redhat.thermostat.shared.config.OS;
@@ -98,11 +101,11 @@ public class LinuxPortableProcessStatBuilderImplTest {
                 KERNEL_TIME_CHILDREN + " " + PRIORITY;
 
         ProcDataSource dataSource = mock(ProcDataSource.class);
-        when(dataSource.getStatReader(any(Integer.class))).thenReturn(new StringReader(statString));
+        when(dataSource.getStatChannel(any(Integer.class))).thenReturn(channel(statString));
         LinuxPortableProcessStatBuilderImpl builder = new LinuxPortableProcessStatBuilderImpl(dataSource);
         PortableProcessStat stat = builder.build(PID);
 
-        verify(dataSource).getStatReader(PID);
+        verify(dataSource).getStatChannel(PID);
         assertNotNull(stat);
         assertEquals(PID, stat.getPid());
         assertEquals(USER_TIME_TICKS, stat.getUserTime());
@@ -139,16 +142,19 @@ public class LinuxPortableProcessStatBuilderImplTest {
                 KERNEL_TIME_CHILDREN + " " + PRIORITY;
 
         ProcDataSource dataSource = mock(ProcDataSource.class);
-        when(dataSource.getStatReader(any(Integer.class))).thenReturn(new StringReader(statString));
+        when(dataSource.getStatChannel(any(Integer.class))).thenReturn(channel(statString));
         LinuxPortableProcessStatBuilderImpl builder = new LinuxPortableProcessStatBuilderImpl(dataSource);
         PortableProcessStat stat = builder.build(PID);
 
-        verify(dataSource).getStatReader(PID);
+        verify(dataSource).getStatChannel(PID);
         assertNotNull(stat);
         assertEquals(PID, stat.getPid());
         assertEquals(USER_TIME_TICKS, stat.getUserTime());
         assertEquals(KERNEL_TIME_TICKS, stat.getKernelTime());
     }
 
-}
+    private static ReadableByteChannel channel(String contents) {
+        return Channels.newChannel(new ByteArrayInputStream(contents.getBytes(StandardCharsets.US_ASCII)));
+    }
 
+}
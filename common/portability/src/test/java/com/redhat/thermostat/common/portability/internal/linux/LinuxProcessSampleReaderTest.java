@@ -0,0 +1,122 @@
+/*
+ * Copyright 2012-2017 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+package com.redhat.thermostat.common.portability.internal.linux;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.redhat.thermostat.common.portability.ProcessSample;
+import com.redhat.thermostat.common.portability.linux.ProcDataSource;
+
+public class LinuxProcessSampleReaderTest {
+
+    private static final int PID = 10363;
+    private static final String STAT = PID + " (java) S 1 10363 10363 0 -1 4202752 2 0 0 0 17 5 0 0 20 0 1 0\n";
+    private static final String STATUS = "" +
+            "Name:\tjava\n" +
+            "State:\tS (sleeping)\n" +
+            "VmPeak:\t 3602388 kB\n" +
+            "VmRSS:\t  204380 kB\n" +
+            "Threads:\t42\n" +
+            "voluntary_ctxt_switches:\t3\n";
+    private static final String IO = "" +
+            "rchar: 100\n" +
+            "wchar: 200\n" +
+            "syscr: 3\n" +
+            "syscw: 4\n";
+
+    private ProcDataSource dataSource;
+
+    @Before
+    public void setUp() throws IOException {
+        dataSource = mock(ProcDataSource.class);
+        when(dataSource.getStatChannel(PID)).thenReturn(channel(STAT));
+        when(dataSource.getStatusChannel(PID)).thenReturn(channel(STATUS));
+        when(dataSource.getIoChannel(PID)).thenReturn(channel(IO));
+    }
+
+    @Test
+    public void testReadSample() {
+        ProcessSample sample = new LinuxProcessSampleReader(dataSource).read(PID, 1234L);
+
+        assertEquals(PID, sample.getPid());
+        assertEquals(17, sample.getStat().getUserTime());
+        assertEquals(5, sample.getStat().getKernelTime());
+        assertEquals(204380L * 1024, sample.getResidentSetSize());
+        assertEquals(42, sample.getThreadCount());
+        assertEquals(1234L, sample.getIoStat().getTimeStamp());
+        assertEquals(3, sample.getIoStat().getReadSyscalls());
+        assertEquals(4, sample.getIoStat().getWriteSyscalls());
+        assertEquals(100, sample.getIoStat().getCharactersRead());
+        assertEquals(200, sample.getIoStat().getCharactersWritten());
+    }
+
+    @Test
+    public void testMissingProcess() throws IOException {
+        when(dataSource.getStatChannel(PID)).thenThrow(new IOException("gone"));
+
+        assertNull(new LinuxProcessSampleReader(dataSource).read(PID, 1234L));
+    }
+
+    @Test
+    public void testUnreadableIoAndStatus() throws IOException {
+        when(dataSource.getStatusChannel(PID)).thenThrow(new IOException("gone"));
+        when(dataSource.getIoChannel(PID)).thenThrow(new IOException("permission denied"));
+
+        ProcessSample sample = new LinuxProcessSampleReader(dataSource).read(PID, 1234L);
+
+        assertEquals(17, sample.getStat().getUserTime());
+        assertNull(sample.getIoStat());
+        assertEquals(ProcessSample.UNKNOWN, sample.getResidentSetSize());
+        assertEquals(ProcessSample.UNKNOWN, sample.getThreadCount());
+    }
+
+    private static ReadableByteChannel channel(String contents) {
+        return Channels.newChannel(new ByteArrayInputStream(contents.getBytes(StandardCharsets.US_ASCII)));
+    }
+}
@@ -36,7 +36,10 @@
 
 package com.redhat.thermostat.common.portability.internal.linux.vmio;
 
-import java.io.StringReader;
+import java.io.ByteArrayInputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
 
 import org.junit.Test;
 
@@ -60,7 +63,7 @@ public class ProcIoDataReaderTest {
                 "write_bytes: 811008\n" +
                 "cancelled_write_bytes: 16384\n";
         ProcDataSource dataSource = mock(ProcDataSource.class);
-        when(dataSource.getIoReader(SOME_PID)).thenReturn(new StringReader(fileContents));
+        when(dataSource.getIoChannel(SOME_PID)).thenReturn(channel(fileContents));
 
         ProcIoData parsedData = new ProcIoDataReader(dataSource).read(SOME_PID);
 
@@ -73,4 +76,9 @@ public class ProcIoDataReaderTest {
         assertEquals(16384, parsedData.cancelled_write_bytes);
 
     }
+
+    private static ReadableByteChannel channel(String contents) {
+        return Channels.newChannel(new ByteArrayInputStream(contents.getBytes(StandardCharsets.US_ASCII)));
+    }
+
 }
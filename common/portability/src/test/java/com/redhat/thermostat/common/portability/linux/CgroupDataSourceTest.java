@@ -0,0 +1,219 @@
+/*
+ * Copyright 2012-2017 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+package com.redhat.thermostat.common.portability.linux;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class CgroupDataSourceTest {
+
+    private static final String PRESSURE =
+            "some avg10=1.56 avg60=23.98 avg300=24.75 total=1066344841\n" +
+            "full avg10=0.50 avg60=0.00 avg300=0.00 total=12345\n";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File selfCgroup;
+    private File mount;
+    private File pressure;
+
+    @Before
+    public void setUp() throws IOException {
+        selfCgroup = folder.newFile("cgroup");
+        mount = folder.newFolder("sys", "fs", "cgroup");
+        pressure = folder.newFolder("pressure");
+    }
+
+    @Test
+    public void testNoCgroupFileSystem() throws IOException {
+        write(selfCgroup, "0::/\n");
+        CgroupDataSource source = create();
+
+        assertFalse(source.isAvailable());
+        assertEquals(CgroupDataSource.UNKNOWN, source.getMemoryLimit());
+        assertEquals(CgroupDataSource.UNKNOWN, source.getMemoryUsage());
+        assertEquals(CgroupDataSource.UNKNOWN, source.getCpuLimit(), 0.0);
+        assertNull(source.getCpuStat());
+        assertNull(source.getPressure(PressureStall.Resource.CPU));
+    }
+
+    @Test
+    public void testVersion2() throws IOException {
+        write(selfCgroup, "0::/\n");
+        write(new File(mount, "cgroup.controllers"), "cpu memory io\n");
+        File dir = mount;
+        write(new File(dir, "memory.current"), "1048576\n");
+        write(new File(dir, "memory.max"), "4194304\n");
+        write(new File(dir, "cpu.max"), "150000 100000\n");
+        write(new File(dir, "cpu.stat"), "usage_usec 2000\nuser_usec 1500\nsystem_usec 500\n"
+                + "nr_periods 10\nnr_throttled 4\nthrottled_usec 300\n");
+        write(new File(dir, "memory.pressure"), PRESSURE);
+        CgroupDataSource source = create();
+
+        assertTrue(source.isAvailable());
+        assertTrue(source.isContainerized());
+        assertEquals(2, source.getVersion());
+        assertEquals(1048576, source.getMemoryUsage());
+        assertEquals(4194304, source.getMemoryLimit());
+        assertEquals(1.5, source.getCpuLimit(), 0.0);
+
+        CgroupCpuStat stat = source.getCpuStat();
+        assertEquals(2000000, stat.getUsageNanos());
+        assertEquals(10, stat.getPeriods());
+        assertEquals(4, stat.getThrottledPeriods());
+        assertEquals(300000, stat.getThrottledNanos());
+
+        PressureStall memory = source.getPressure(PressureStall.Resource.MEMORY);
+        assertEquals(1.56, memory.getSomeAvg10(), 0.0);
+        assertEquals(23.98, memory.getSomeAvg60(), 0.0);
+        assertEquals(24.75, memory.getSomeAvg300(), 0.0);
+        assertEquals(1066344841, memory.getSomeTotal());
+        assertEquals(0.5, memory.getFullAvg10(), 0.0);
+        assertEquals(12345, memory.getFullTotal());
+    }
+
+    @Test
+    public void testVersion2Unlimited() throws IOException {
+        write(selfCgroup, "0::/\n");
+        write(new File(mount, "cgroup.controllers"), "cpu memory io\n");
+        write(new File(mount, "memory.max"), "max\n");
+        write(new File(mount, "cpu.max"), "max 100000\n");
+        CgroupDataSource source = create();
+
+        assertEquals(CgroupDataSource.UNLIMITED, source.getMemoryLimit());
+        assertEquals(Double.POSITIVE_INFINITY, source.getCpuLimit(), 0.0);
+    }
+
+    @Test
+    public void testVersion2OwnSubtreeMounted() throws IOException {
+        write(selfCgroup, "0::/not/visible/here\n");
+        write(new File(mount, "cgroup.controllers"), "memory\n");
+        write(new File(mount, "memory.current"), "42\n");
+        CgroupDataSource source = create();
+
+        assertTrue(source.isContainerized());
+        assertEquals(42, source.getMemoryUsage());
+    }
+
+    @Test
+    public void testBareHostReadsRootOfHierarchy() throws IOException {
+        write(selfCgroup, "0::/system.slice/agent.service\n");
+        write(new File(mount, "cgroup.controllers"), "cpu memory io\n");
+        write(new File(mount, "system.slice/agent.service/memory.current"), "1024\n");
+        write(new File(mount, "system.slice/agent.service/memory.max"), "2048\n");
+        write(new File(mount, "cpu.stat"), "usage_usec 5000\n");
+        CgroupDataSource source = create();
+
+        assertTrue(source.isAvailable());
+        assertFalse(source.isContainerized());
+        // the root cgroup has no limits of its own
+        assertEquals(CgroupDataSource.UNKNOWN, source.getMemoryLimit());
+        assertEquals(5000000, source.getCpuStat().getUsageNanos());
+    }
+
+    @Test
+    public void testVersion1() throws IOException {
+        // only the container's own subtree is mounted
+        write(selfCgroup, "4:memory:/docker/abc\n3:cpu,cpuacct:/docker/abc\n0::/\n");
+        File memory = new File(mount, "memory");
+        File cpu = new File(mount, "cpu");
+        File cpuacct = new File(mount, "cpuacct");
+        write(new File(memory, "memory.usage_in_bytes"), "2048\n");
+        write(new File(memory, "memory.limit_in_bytes"), "8192\n");
+        write(new File(cpu, "cpu.cfs_quota_us"), "50000\n");
+        write(new File(cpu, "cpu.cfs_period_us"), "100000\n");
+        write(new File(cpu, "cpu.stat"), "nr_periods 20\nnr_throttled 5\nthrottled_time 7000\n");
+        write(new File(cpuacct, "cpuacct.usage"), "123456789\n");
+        write(new File(pressure, "cpu"), PRESSURE);
+        CgroupDataSource source = create();
+
+        assertEquals(1, source.getVersion());
+        assertTrue(source.isContainerized());
+        assertEquals(2048, source.getMemoryUsage());
+        assertEquals(8192, source.getMemoryLimit());
+        assertEquals(0.5, source.getCpuLimit(), 0.0);
+
+        CgroupCpuStat stat = source.getCpuStat();
+        assertEquals(123456789, stat.getUsageNanos());
+        assertEquals(20, stat.getPeriods());
+        assertEquals(5, stat.getThrottledPeriods());
+        assertEquals(7000, stat.getThrottledNanos());
+
+        PressureStall cpuPressure = source.getPressure(PressureStall.Resource.CPU);
+        assertNotNull(cpuPressure);
+        assertEquals(1.56, cpuPressure.getSomeAvg10(), 0.0);
+        assertNull(source.getPressure(PressureStall.Resource.IO));
+    }
+
+    @Test
+    public void testVersion1Unlimited() throws IOException {
+        write(selfCgroup, "4:memory:/\n3:cpu,cpuacct:/\n");
+        write(new File(mount, "memory/memory.limit_in_bytes"), "9223372036854771712\n");
+        write(new File(mount, "cpu/cpu.cfs_quota_us"), "-1\n");
+        write(new File(mount, "cpu/cpu.cfs_period_us"), "100000\n");
+        CgroupDataSource source = create();
+
+        assertEquals(CgroupDataSource.UNLIMITED, source.getMemoryLimit());
+        assertEquals(Double.POSITIVE_INFINITY, source.getCpuLimit(), 0.0);
+        assertEquals(CgroupDataSource.UNKNOWN, source.getMemoryUsage());
+    }
+
+    private CgroupDataSource create() {
+        return new CgroupDataSource(selfCgroup, mount, pressure, null);
+    }
+
+    private static void write(File file, String contents) throws IOException {
+        file.getParentFile().mkdirs();
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(contents.getBytes(StandardCharsets.US_ASCII));
+        }
+    }
+}
@@ -45,6 +45,7 @@ import static org.mockito.Mockito.when;
 import java.io.FileReader;
 import java.io.IOException;
 import java.io.Reader;
+import java.nio.channels.ReadableByteChannel;
 
 import org.junit.Assume;
 import org.junit.Before;
@@ -63,6 +64,8 @@ public class ProcDataSourceTest {
         readerCreator = mock(ReaderCreator.class);
         FileReader reader = mock(FileReader.class);
         when(readerCreator.createFileReader(anyString())).thenReturn(reader);
+        when(readerCreator.createChannel(anyString())).thenReturn(mock(ReadableByteChannel.class));
+        when(readerCreator.createCachedChannel(anyString())).thenReturn(mock(ReadableByteChannel.class));
         source = new ProcDataSource(readerCreator);
     }
 
@@ -137,5 +140,60 @@ public class ProcDataSourceTest {
         assertNotNull(r);
         verify(readerCreator).createFileReader("/proc/1234/numa_maps");
     }
-}
 
+    @Test
+    public void testGetStatChannel() throws IOException {
+        Assume.assumeTrue(OS.IS_LINUX);
+        ReadableByteChannel c = source.getStatChannel();
+        assertNotNull(c);
+        verify(readerCreator).createCachedChannel("/proc/stat");
+    }
+
+    @Test
+    public void testGetMemInfoChannel() throws IOException {
+        Assume.assumeTrue(OS.IS_LINUX);
+        ReadableByteChannel c = source.getMemInfoChannel();
+        assertNotNull(c);
+        verify(readerCreator).createCachedChannel("/proc/meminfo");
+    }
+
+    @Test
+    public void testGetNetDevChannel() throws IOException {
+        Assume.assumeTrue(OS.IS_LINUX);
+        ReadableByteChannel c = source.getNetDevChannel();
+        assertNotNull(c);
+        verify(readerCreator).createCachedChannel("/proc/net/dev");
+    }
+
+    @Test
+    public void testStatChannel() throws Exception {
+        Assume.assumeTrue(OS.IS_LINUX);
+        ReadableByteChannel c = source.getStatChannel(1234);
+        assertNotNull(c);
+        verify(readerCreator).createCachedChannel("/proc/1234/stat");
+    }
+
+    @Test
+    public void testStatusChannel() throws Exception {
+        Assume.assumeTrue(OS.IS_LINUX);
+        ReadableByteChannel c = source.getStatusChannel(1234);
+        assertNotNull(c);
+        verify(readerCreator).createCachedChannel("/proc/1234/status");
+    }
+
+    @Test
+    public void testIoChannel() throws Exception {
+        Assume.assumeTrue(OS.IS_LINUX);
+        ReadableByteChannel c = source.getIoChannel(1234);
+        assertNotNull(c);
+        verify(readerCreator).createCachedChannel("/proc/1234/io");
+    }
+
+    @Test
+    public void testNumaMapsChannel() throws Exception {
+        Assume.assumeTrue(OS.IS_LINUX);
+        ReadableByteChannel c = source.getNumaMapsChannel(1234);
+        assertNotNull(c);
+        verify(readerCreator).createChannel("/proc/1234/numa_maps");
+    }
+}
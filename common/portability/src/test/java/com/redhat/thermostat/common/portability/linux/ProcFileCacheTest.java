@@ -0,0 +1,219 @@
+/*
+ * Copyright 2012-2017 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+package com.redhat.thermostat.common.portability.linux;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.redhat.thermostat.common.portability.linux.ProcFileCache.FileOpener;
+
+public class ProcFileCacheTest {
+
+    private File dir;
+    private FileOpener opener;
+    private ProcTokenizer tokenizer;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = File.createTempFile("proc-file-cache", null);
+        dir.delete();
+        dir.mkdir();
+        opener = spy(new FileOpener());
+        tokenizer = new ProcTokenizer();
+    }
+
+    @After
+    public void tearDown() {
+        for (File sub : dir.listFiles()) {
+            for (File file : sub.listFiles()) {
+                file.delete();
+            }
+            sub.delete();
+        }
+        dir.delete();
+    }
+
+    @Test
+    public void testRereadsOpenDescriptor() throws IOException {
+        ProcFileCache cache = new ProcFileCache(4, opener);
+        String stat = write("1/stat", "1 (java) S 5\n");
+
+        assertEquals(1, read(cache, stat));
+        write("1/stat", "7 (java) S 5\n");
+        assertEquals(7, read(cache, stat));
+
+        verify(opener, times(1)).open(anyString());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testLeastRecentlyReadIsClosed() throws IOException {
+        ProcFileCache cache = new ProcFileCache(2, opener);
+        String first = write("1/stat", "1\n");
+        String second = write("2/stat", "2\n");
+        String third = write("3/stat", "3\n");
+
+        read(cache, first);
+        read(cache, second);
+        read(cache, first);
+        read(cache, third);
+
+        assertEquals(Arrays.asList(first, third), cache.getOpenFiles());
+    }
+
+    @Test
+    public void testEvictPrefix() throws IOException {
+        ProcFileCache cache = new ProcFileCache(4, opener);
+        String stat = write("1/stat", "1\n");
+        String io = write("1/io", "1\n");
+        String other = write("12/stat", "12\n");
+        read(cache, stat);
+        read(cache, io);
+        read(cache, other);
+
+        cache.evictPrefix(new File(dir, "1").getPath() + File.separator);
+
+        assertEquals(Arrays.asList(other), cache.getOpenFiles());
+    }
+
+    @Test
+    public void testClosingViewKeepsDescriptor() throws IOException {
+        ProcFileCache cache = new ProcFileCache(4, opener);
+        String stat = write("1/stat", "1\n");
+        ReadableByteChannel channel = cache.open(stat);
+        channel.close();
+        assertFalse(channel.isOpen());
+        assertTrue(cache.open(stat).isOpen());
+        verify(opener, times(1)).open(anyString());
+    }
+
+    @Test
+    public void testFailedReadEvicts() throws IOException {
+        final FileChannel[] opened = new FileChannel[1];
+        ProcFileCache cache = new ProcFileCache(4, new FileOpener() {
+            @Override
+            FileChannel open(String fileName) throws IOException {
+                opened[0] = super.open(fileName);
+                return opened[0];
+            }
+        });
+        String stat = write("1/stat", "1\n");
+        ReadableByteChannel channel = cache.open(stat);
+        opened[0].close();
+        try {
+            tokenizer.load(channel);
+            fail("read from a closed descriptor");
+        } catch (IOException e) {
+            // pass
+        }
+        assertEquals(0, cache.size());
+        assertEquals(1, read(cache, stat));
+    }
+
+    @Test
+    public void testEvictedDescriptorStaysOpenWhileRead() throws IOException {
+        final List<FileChannel> opened = new ArrayList<>();
+        ProcFileCache cache = new ProcFileCache(1, new FileOpener() {
+            @Override
+            FileChannel open(String fileName) throws IOException {
+                FileChannel channel = super.open(fileName);
+                opened.add(channel);
+                return channel;
+            }
+        });
+        String first = write("1/stat", "1\n");
+        String second = write("2/stat", "2\n");
+
+        ReadableByteChannel reading = cache.open(first);
+        read(cache, second);
+        assertEquals(Arrays.asList(second), cache.getOpenFiles());
+
+        // evicted, but still in use
+        assertTrue(opened.get(0).isOpen());
+        assertEquals(1, tokenizer.load(reading).nextLine() ? tokenizer.nextLong() : -1);
+        reading.close();
+        assertFalse(opened.get(0).isOpen());
+        assertTrue(opened.get(1).isOpen());
+    }
+
+    @Test
+    public void testCloseClosesAllFiles() throws IOException {
+        ProcFileCache cache = new ProcFileCache(4, opener);
+        read(cache, write("1/stat", "1\n"));
+        read(cache, write("2/stat", "2\n"));
+
+        cache.close();
+
+        assertEquals(0, cache.size());
+    }
+
+    private long read(ProcFileCache cache, String fileName) throws IOException {
+        try (ReadableByteChannel channel = cache.open(fileName)) {
+            tokenizer.load(channel).nextLine();
+            return tokenizer.nextLong();
+        }
+    }
+
+    private String write(String name, String contents) throws IOException {
+        File file = new File(dir, name);
+        file.getParentFile().mkdirs();
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(contents.getBytes(StandardCharsets.US_ASCII));
+        }
+        return file.getPath();
+    }
+}
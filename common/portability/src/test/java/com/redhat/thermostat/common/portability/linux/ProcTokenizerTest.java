@@ -0,0 +1,234 @@
+/*
+ * Copyright 2012-2017 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+package com.redhat.thermostat.common.portability.linux;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+public class ProcTokenizerTest {
+
+    private static final byte[] CPU = ProcTokenizer.bytes("cpu");
+    private static final byte[][] KEYS = {
+        ProcTokenizer.bytes("MemTotal"),
+        ProcTokenizer.bytes("MemFree"),
+    };
+
+    @Test
+    public void testLinesAndNumbers() throws IOException {
+        ProcTokenizer t = new ProcTokenizer().load(channel(
+                "cpu  10 20 30\n" +
+                "cpu0 1 2 -3\n" +
+                "intr 5"));
+
+        assertTrue(t.nextLine());
+        assertTrue(t.skip(CPU));
+        assertFalse(t.peekDigit());
+        assertEquals(10, t.nextLong());
+        assertEquals(20, t.nextLong());
+        assertEquals(30, t.nextLong());
+        assertFalse(t.hasToken());
+
+        assertTrue(t.nextLine());
+        assertTrue(t.skip(CPU));
+        assertTrue(t.peekDigit());
+        assertEquals(0, t.nextLong());
+        assertEquals(1, t.nextLong());
+        t.skipToken();
+        assertEquals(-3, t.nextLong());
+
+        assertTrue(t.nextLine());
+        assertFalse(t.skip(CPU));
+        t.skipToken();
+        assertEquals(5, t.nextLong());
+
+        assertFalse(t.nextLine());
+    }
+
+    @Test
+    public void testEmpty() throws IOException {
+        ProcTokenizer t = new ProcTokenizer().load(channel(""));
+        assertFalse(t.nextLine());
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void testNotANumber() throws IOException {
+        ProcTokenizer t = new ProcTokenizer().load(channel("abc 1\n"));
+        t.nextLine();
+        t.nextLong();
+    }
+
+    @Test
+    public void testKeys() throws IOException {
+        ProcTokenizer t = new ProcTokenizer().load(channel(
+                "MemTotal:       16318272 kB\n" +
+                "MemAvailable:   1 kB\n" +
+                "MemFree :2 kB\n" +
+                "no separator\n"));
+
+        t.nextLine();
+        assertEquals(0, t.nextKey(KEYS, (byte) ':'));
+        assertEquals(16318272, t.nextLong());
+        assertEquals("kB", t.nextString());
+        t.nextLine();
+        assertEquals(-1, t.nextKey(KEYS, (byte) ':'));
+        t.nextLine();
+        assertEquals(1, t.nextKey(KEYS, (byte) ':'));
+        assertEquals(2, t.nextLong());
+        t.nextLine();
+        assertEquals(-1, t.nextKey(KEYS, (byte) ':'));
+    }
+
+    @Test
+    public void testUnknownKeys() throws IOException {
+        ProcTokenizer t = new ProcTokenizer().load(channel(
+                "    lo: 1 2\n" +
+                "eth0:3 4\n" +
+                "no separator\n"));
+
+        t.nextLine();
+        assertEquals("lo", t.nextKey((byte) ':'));
+        assertEquals(1, t.nextLong());
+        t.nextLine();
+        assertEquals("eth0", t.nextKey((byte) ':'));
+        assertEquals(3, t.nextLong());
+        t.nextLine();
+        assertNull(t.nextKey((byte) ':'));
+    }
+
+    @Test
+    public void testSkipPastLastAndRewind() throws IOException {
+        ProcTokenizer t = new ProcTokenizer().load(channel("42 (a ) 6) S 7\n"));
+        t.nextLine();
+        assertEquals(42, t.nextLong());
+        assertTrue(t.skipPastLast((byte) ')'));
+        t.skipToken();
+        assertEquals(7, t.nextLong());
+        assertFalse(t.skipPastLast((byte) ')'));
+
+        t.rewindLine();
+        assertEquals(42, t.nextLong());
+    }
+
+    @Test
+    public void testAtTokenEnd() throws IOException {
+        ProcTokenizer t = new ProcTokenizer().load(channel("N0=12 N1=3x\n"));
+        t.nextLine();
+        assertTrue(t.skip(ProcTokenizer.bytes("N")));
+        assertEquals(0, t.nextLong());
+        assertTrue(t.skip(ProcTokenizer.bytes("=")));
+        assertEquals(12, t.nextLong());
+        assertTrue(t.atTokenEnd());
+        assertTrue(t.skip(ProcTokenizer.bytes("N")));
+        assertEquals(1, t.nextLong());
+        t.skip(ProcTokenizer.bytes("="));
+        assertEquals(3, t.nextLong());
+        assertFalse(t.atTokenEnd());
+    }
+
+    @Test
+    public void testGrowsBuffer() throws IOException {
+        StringBuilder contents = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            contents.append("line ").append(i).append('\n');
+        }
+        ProcTokenizer t = new ProcTokenizer(8).load(channel(contents.toString()));
+        for (int i = 0; i < 100; i++) {
+            assertTrue(t.nextLine());
+            t.skipToken();
+            assertEquals(i, t.nextLong());
+        }
+        assertFalse(t.nextLine());
+    }
+
+    @Test
+    public void testNextDecimal() throws IOException {
+        ProcTokenizer t = new ProcTokenizer().load(channel("some avg10=1.56 avg60=23 total=-0.5\n"));
+        assertTrue(t.nextLine());
+        t.skipToken();
+        assertEquals(0, t.nextKey(new byte[][] { ProcTokenizer.bytes("avg10") }, (byte) '='));
+        assertEquals(1.56, t.nextDecimal(), 0.0);
+        t.nextKey((byte) '=');
+        assertEquals(23.0, t.nextDecimal(), 0.0);
+        t.nextKey((byte) '=');
+        assertEquals(-0.5, t.nextDecimal(), 0.0);
+        assertFalse(t.hasToken());
+    }
+
+    @Test
+    public void testRereadsOpenFileChannel() throws IOException {
+        File file = File.createTempFile("proc-tokenizer", null);
+        file.deleteOnExit();
+        write(file, "value 1\n");
+        ProcTokenizer t = new ProcTokenizer(4);
+        try (FileChannel channel = FileChannel.open(file.toPath())) {
+            t.load(channel);
+            t.nextLine();
+            t.skipToken();
+            assertEquals(1, t.nextLong());
+
+            write(file, "value 1234567\n");
+            t.load(channel);
+            t.nextLine();
+            t.skipToken();
+            assertEquals(1234567, t.nextLong());
+        }
+        file.delete();
+    }
+
+    private static void write(File file, String contents) throws IOException {
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(contents.getBytes(StandardCharsets.US_ASCII));
+        }
+    }
+
+    private static ReadableByteChannel channel(String contents) {
+        return Channels.newChannel(new ByteArrayInputStream(contents.getBytes(StandardCharsets.US_ASCII)));
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2012-2017 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+package com.redhat.thermostat.dev.benchmarks;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.redhat.thermostat.agent.http.JsonPayloadWriter;
+import com.redhat.thermostat.host.cpu.model.CpuStat;
+import com.redhat.thermostat.host.cpu.model.CpuStatTypeAdapter;
+import com.redhat.thermostat.vm.memory.agent.internal.models.VmMemoryStatTypeAdapter;
+import com.redhat.thermostat.vm.memory.agent.model.VmMemoryStat;
+import com.redhat.thermostat.vm.memory.agent.model.VmMemoryStat.Generation;
+import com.redhat.thermostat.vm.memory.agent.model.VmMemoryStat.Space;
+
+/**
+ * Compares serializing a single sample through the Gson type adapters, as
+ * the DAOs used to, with writing it through a pooled
+ * {@link JsonPayloadWriter}. Both variants produce the UTF-8 bytes which end
+ * up in the upload queue.
+ * <p>
+ * Run with {@code -prof gc} and compare {@code gc.alloc.rate.norm}, the
+ * bytes allocated per sample.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class StatSerializationBenchmark {
+
+    private final VmMemoryStatTypeAdapter memoryAdapter = new VmMemoryStatTypeAdapter();
+    private final CpuStatTypeAdapter cpuAdapter = new CpuStatTypeAdapter();
+    private List<VmMemoryStat> memoryStats;
+    private List<CpuStat> cpuStats;
+
+    @Setup
+    public void setup() {
+        Generation young = createGeneration("new", "PSScavenge", "eden", "s0", "s1");
+        Generation old = createGeneration("old", "PSParallelCompact", "old");
+        VmMemoryStat memoryStat = new VmMemoryStat("0b4c9c30-8f4c-4a3c-9a4e-f4a0d6cbb3f2", 1500000000000L,
+                "8c3a3bd5-6b2c-4b8e-a4a2-3b5e2c1c9d7e", new Generation[] { young, old },
+                4_194_304L, 1_073_741_824L, 25_690_112L, 24_911_528L);
+        memoryStats = Collections.singletonList(memoryStat);
+
+        double[] usage = { 12.5, 3.25, 47.0, 0.0, 99.75, 5.5, 18.125, 1.0 };
+        cpuStats = Collections.singletonList(new CpuStat("0b4c9c30-8f4c-4a3c-9a4e-f4a0d6cbb3f2",
+                1500000000000L, usage));
+    }
+
+    private static Generation createGeneration(String name, String collector, String... spaceNames) {
+        Space[] spaces = new Space[spaceNames.length];
+        for (int i = 0; i < spaces.length; i++) {
+            spaces[i] = new Space();
+            spaces[i].setIndex(i);
+            spaces[i].setName(spaceNames[i]);
+            spaces[i].setCapacity(178_257_920L);
+            spaces[i].setMaxCapacity(1_398_800_384L);
+            spaces[i].setUsed(91_374_696L + i);
+        }
+        Generation generation = new Generation();
+        generation.setName(name);
+        generation.setCollector(collector);
+        generation.setCapacity(356_515_840L);
+        generation.setMaxCapacity(2_797_600_768L);
+        generation.setSpaces(spaces);
+        return generation;
+    }
+
+    @Benchmark
+    public byte[] vmMemoryStatTypeAdapter() throws IOException {
+        return memoryAdapter.toJson(memoryStats).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public byte[] vmMemoryStatPayloadWriter() {
+        JsonPayloadWriter out = JsonPayloadWriter.obtain();
+        memoryAdapter.write(out, memoryStats);
+        return out.toByteArray();
+    }
+
+    @Benchmark
+    public byte[] cpuStatTypeAdapter() throws IOException {
+        return cpuAdapter.toJson(cpuStats).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public byte[] cpuStatPayloadWriter() {
+        JsonPayloadWriter out = JsonPayloadWriter.obtain();
+        cpuAdapter.write(out, cpuStats);
+        return out.toByteArray();
+    }
+}
+
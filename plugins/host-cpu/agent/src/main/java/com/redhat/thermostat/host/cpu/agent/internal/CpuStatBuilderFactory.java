@@ -39,6 +39,7 @@ package com.redhat.thermostat.host.cpu.agent.internal;
 import com.redhat.thermostat.common.Clock;
 import com.redhat.thermostat.common.SystemClock;
 import com.redhat.thermostat.common.portability.SysConf;
+import com.redhat.thermostat.common.portability.linux.CgroupDataSource;
 import com.redhat.thermostat.common.portability.linux.ProcDataSource;
 import com.redhat.thermostat.shared.config.OS;
 import com.redhat.thermostat.storage.core.WriterID;
@@ -56,7 +57,8 @@ public class CpuStatBuilderFactory {
         final Clock clock = new SystemClock();
         final long ticksPerSecond = SysConf.getClockTicksPerSecond();
         final ProcDataSource source = new ProcDataSource();
-        return new LinuxCpuStatBuilder(clock, source, ticksPerSecond, id);
+        final CgroupDataSource cgroupSource = new CgroupDataSource();
+        return new LinuxCpuStatBuilder(clock, source, cgroupSource, ticksPerSecond, id);
     }
 
     private CpuStatBuilder buildForWindows(final WriterID id) {
@@ -42,6 +42,7 @@ import java.util.List;
 import java.util.logging.Logger;
 
 import com.redhat.thermostat.agent.http.HttpRequestService;
+import com.redhat.thermostat.agent.http.JsonPayloadWriter;
 import com.redhat.thermostat.common.config.experimental.ConfigurationInfoSource;
 import com.redhat.thermostat.common.plugin.PluginConfiguration;
 import com.redhat.thermostat.common.plugin.SystemID;
@@ -109,6 +110,12 @@ public class CpuStatDAOImpl extends PluginDAOBase<CpuStat, CpuStatDAOImpl> imple
         return jsonHelper.toJson(Arrays.asList(obj));
     }
 
+    @Override
+    protected boolean writeJson(CpuStat obj, JsonPayloadWriter out) {
+        jsonHelper.write(Arrays.asList(obj), out);
+        return true;
+    }
+
     @Override
     protected PluginConfiguration getConfig() {
         return config;
@@ -148,6 +155,10 @@ public class CpuStatDAOImpl extends PluginDAOBase<CpuStat, CpuStatDAOImpl> imple
         String toJson(List<CpuStat> infos) throws IOException {
             return typeAdapter.toJson(infos);
         }
+
+        void write(List<CpuStat> infos, JsonPayloadWriter out) {
+            typeAdapter.write(out, infos);
+        }
     }
     // For Testing purposes
     static class ConfigurationCreator {
@@ -36,13 +36,16 @@
 
 package com.redhat.thermostat.host.cpu.agent.internal;
 
-import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 
 import com.redhat.thermostat.backend.Backend;
 import com.redhat.thermostat.backend.HostPollingAction;
 import com.redhat.thermostat.backend.HostPollingBackend;
+import com.redhat.thermostat.backend.PollingInterval;
+import com.redhat.thermostat.backend.PollingScheduler;
 import com.redhat.thermostat.common.Version;
+import com.redhat.thermostat.common.config.experimental.ConfigurationInfoSource;
+import com.redhat.thermostat.common.plugin.PluginConfiguration;
 import com.redhat.thermostat.host.cpu.model.CpuStat;
 import com.redhat.thermostat.storage.core.WriterID;
 
@@ -57,14 +60,29 @@ import org.osgi.framework.BundleContext;
 @Service(value = Backend.class)
 public class HostCpuBackend extends HostPollingBackend {
 
+    // With an adaptive polling interval: the change in average usage, in
+    // percent, to poll more often, and the usage, throttling or pressure, in
+    // percent, above which the cpu is watched closely.
+    static final double USAGE_CHANGE = 10.0;
+    static final double HIGH_USAGE = 90.0;
+    static final double THROTTLED_THRESHOLD = 10.0;
+    static final double PRESSURE_THRESHOLD = 10.0;
+
     @Reference
     private CpuStatDAO cpuStatDAO;
 
     @Reference
     private WriterID writerID;
 
+    @Reference
+    private ConfigurationInfoSource configurationInfoSource;
+
+    @Reference
+    private PollingScheduler pollingScheduler;
+
     public HostCpuBackend() {
-        this(Executors.newSingleThreadScheduledExecutor());
+        // Polls on the agent's shared scheduler
+        this((ScheduledExecutorService) null);
     }
 
     public HostCpuBackend(ScheduledExecutorService executor) {
@@ -79,6 +97,9 @@ public class HostCpuBackend extends HostPollingBackend {
     protected void componentActivated(BundleContext context) {
         Version version = new Version(context.getBundle());
         setVersion(version.getVersionNumber());
+        PluginConfiguration config = new PluginConfiguration(configurationInfoSource, CpuStatDAOImpl.PLUGIN_ID);
+        setPollingInterval(config.getPollingInterval(PollingInterval.DEFAULT));
+        setPollingScheduler(pollingScheduler);
         registerAction(new CpuProcBackendAction(writerID, cpuStatDAO));
     }
 
@@ -89,10 +110,11 @@ public class HostCpuBackend extends HostPollingBackend {
         }
     }
 
-    private static class CpuProcBackendAction implements HostPollingAction {
+    private class CpuProcBackendAction implements HostPollingAction {
 
         private final CpuStatBuilder builder;
         private final CpuStatDAO dao;
+        private CpuStat previous;
 
         CpuProcBackendAction(final WriterID id, final CpuStatDAO dao) {
             this.builder = new CpuStatBuilderFactory().build(id);
@@ -106,10 +128,35 @@ public class HostCpuBackend extends HostPollingBackend {
             } else {
                 final CpuStat info = builder.build();
                 dao.put(info);
+                reportActivity(previous, info);
+                previous = info;
             }
         }
     }
 
+    void reportActivity(CpuStat previous, CpuStat current) {
+        double usage = averageUsage(current);
+        if (previous != null && Math.abs(usage - averageUsage(previous)) >= USAGE_CHANGE) {
+            sampleChanged();
+        }
+        if (usage >= HIGH_USAGE || current.getThrottled() >= THROTTLED_THRESHOLD
+                || current.getCpuPressure() >= PRESSURE_THRESHOLD) {
+            thresholdCrossed();
+        }
+    }
+
+    private static double averageUsage(CpuStat stat) {
+        double[] usage = stat.getPerProcessorUsage();
+        if (usage == null || usage.length == 0) {
+            return 0;
+        }
+        double sum = 0;
+        for (double processorUsage : usage) {
+            sum += processorUsage;
+        }
+        return sum / usage.length;
+    }
+
     void bindCpuStatDAO(CpuStatDAO dao) {
         this.cpuStatDAO = dao;
     }
@@ -118,6 +165,14 @@ public class HostCpuBackend extends HostPollingBackend {
         this.writerID = id;
     }
 
+    void bindConfigurationInfoSource(ConfigurationInfoSource source) {
+        this.configurationInfoSource = source;
+    }
+
+    void bindPollingScheduler(PollingScheduler scheduler) {
+        this.pollingScheduler = scheduler;
+    }
+
     @Override
     public int getOrderValue() {
         return ORDER_CPU_GROUP;
@@ -36,12 +36,17 @@
 
 package com.redhat.thermostat.host.cpu.agent.internal;
 
-import java.io.BufferedReader;
 import java.io.IOException;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Arrays;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import com.redhat.thermostat.common.portability.linux.CgroupCpuStat;
+import com.redhat.thermostat.common.portability.linux.CgroupDataSource;
+import com.redhat.thermostat.common.portability.linux.PressureStall;
 import com.redhat.thermostat.common.portability.linux.ProcDataSource;
+import com.redhat.thermostat.common.portability.linux.ProcTokenizer;
 import com.redhat.thermostat.common.Clock;
 import com.redhat.thermostat.common.utils.LoggingUtils;
 import com.redhat.thermostat.host.cpu.model.CpuStat;
@@ -51,19 +56,47 @@ public class LinuxCpuStatBuilder implements CpuStatBuilder {
 
     private static final Logger logger = LoggingUtils.getLogger(LinuxCpuStatBuilder.class);
 
+    private static final byte[] CPU = ProcTokenizer.bytes("cpu");
+
+    // indices into the states of the "cpu" line: user, nice, system, idle,
+    // iowait, irq, softirq and steal. Guest time is already part of the user
+    // time and so is left out.
+    private static final int IOWAIT = 4;
+    private static final int IRQ = 5;
+    private static final int SOFTIRQ = 6;
+    private static final int STEAL = 7;
+    private static final int STATES = 8;
+
+    private static final int CTXT = 0;
+    private static final int PROCS_RUNNING = 1;
+    private static final int PROCS_BLOCKED = 2;
+    private static final byte[][] KEYS = {
+        ProcTokenizer.bytes("ctxt"),
+        ProcTokenizer.bytes("procs_running"),
+        ProcTokenizer.bytes("procs_blocked"),
+    };
+
     private final ProcDataSource dataSource;
+    private final CgroupDataSource cgroupSource;
     private final Clock clock;
     private final long ticksPerSecond;
     private final WriterID writerId;
+    private final ProcTokenizer tokenizer = new ProcTokenizer();
 
     private boolean initialized = false;
 
-    private long[] previousCpuTicks;
+    // Two sets of counters that swap roles after every sample, so that
+    // sampling does not allocate once the number of processors is known
+    private Counters previous = new Counters();
+    private Counters current = new Counters();
     private long previousTime;
+    private CgroupCpuStat previousCgroupStat;
 
-    LinuxCpuStatBuilder(Clock clock, ProcDataSource dataSource, long ticksPerSecond, WriterID writerId) {
+    LinuxCpuStatBuilder(Clock clock, ProcDataSource dataSource, CgroupDataSource cgroupSource,
+            long ticksPerSecond, WriterID writerId) {
         this.writerId = writerId;
         this.dataSource = dataSource;
+        this.cgroupSource = cgroupSource;
         this.clock = clock;
         this.ticksPerSecond = ticksPerSecond;
     }
@@ -75,7 +108,8 @@ public class LinuxCpuStatBuilder implements CpuStatBuilder {
         }
 
         previousTime = clock.getMonotonicTimeNanos();
-        previousCpuTicks = getCurrentCpuTicks();
+        readCounters(previous);
+        previousCgroupStat = cgroupSource.getCpuStat();
         initialized = true;
     }
 
@@ -87,51 +121,149 @@ public class LinuxCpuStatBuilder implements CpuStatBuilder {
 
         long currentRealTime = clock.getRealTimeMillis();
         long currentTime = clock.getMonotonicTimeNanos();
-        long[] currentValues = getCurrentCpuTicks();
+        readCounters(current);
 
-        double[] cpuUsage = new double[currentValues.length];
+        double[] cpuUsage = new double[current.cpuCount];
 
         double timeDelta = (currentTime - previousTime) * 1E-9;
-        for (int i = 0; i < currentValues.length; i++) {
-            long cpuTicksDelta = currentValues[i] - previousCpuTicks[i];
+        for (int i = 0; i < current.cpuCount; i++) {
+            long previousTicks = i < previous.cpuCount ? previous.cpuTicks[i] : 0;
+            long cpuTicksDelta = current.cpuTicks[i] - previousTicks;
             // 100 as in 100 percent.
             cpuUsage[i] = cpuTicksDelta * (100.0 / timeDelta / ticksPerSecond);
         }
+
+        long totalDelta = 0;
+        for (int i = 0; i < STATES; i++) {
+            totalDelta += current.stateTicks[i] - previous.stateTicks[i];
+        }
+        double contextSwitchRate = (current.contextSwitches - previous.contextSwitches) / timeDelta;
+
+        CpuStat stat = new CpuStat(writerId.getWriterID(), currentRealTime, cpuUsage,
+                getStatePercent(IOWAIT, totalDelta),
+                getStatePercent(IRQ, totalDelta),
+                getStatePercent(SOFTIRQ, totalDelta),
+                getStatePercent(STEAL, totalDelta),
+                contextSwitchRate, current.processesRunning, current.processesBlocked);
+        addCgroupDetails(stat, currentTime - previousTime, current.cpuCount);
+
         previousTime = currentTime;
-        previousCpuTicks = currentValues;
-        String wId = writerId.getWriterID();
-        return new CpuStat(wId, currentRealTime, cpuUsage);
+        Counters swap = previous;
+        previous = current;
+        current = swap;
+        return stat;
     }
 
-    private long[] getCurrentCpuTicks() {
-        int maxIndex = 0;
-        long[] values = new long[1];
-        try (BufferedReader reader = new BufferedReader(dataSource.getStatReader())) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                if (!line.startsWith("cpu")) {
-                    continue;
-                }
-                String[] parts = line.split("\\s");
-                if (!parts[0].matches("cpu\\d+")) {
+    /**
+     * /proc/stat is not virtualized, so inside a container it shows the
+     * whole host. The cgroup shows how much of its own share the agent's
+     * container used and how often it was held back. Outside of a container
+     * only the pressure is reported.
+     */
+    private void addCgroupDetails(CpuStat stat, long timeDeltaNanos, int cpuCount) {
+        CgroupCpuStat cgroupStat = cgroupSource.getCpuStat();
+        if (cgroupSource.isContainerized() && cgroupStat != null && previousCgroupStat != null
+                && timeDeltaNanos > 0) {
+            long usageDelta = cgroupStat.getUsageNanos() - previousCgroupStat.getUsageNanos();
+            double limit = cgroupSource.getCpuLimit();
+            if (Double.isInfinite(limit)) {
+                limit = cpuCount;
+            }
+            if (cgroupStat.getUsageNanos() != CgroupDataSource.UNKNOWN
+                    && previousCgroupStat.getUsageNanos() != CgroupDataSource.UNKNOWN
+                    && usageDelta >= 0 && limit > 0) {
+                // 100 as in 100 percent.
+                stat.setCgroupUsage(usageDelta * 100.0 / timeDeltaNanos / limit);
+            }
+
+            long periodsDelta = cgroupStat.getPeriods() - previousCgroupStat.getPeriods();
+            long throttledDelta = cgroupStat.getThrottledPeriods() - previousCgroupStat.getThrottledPeriods();
+            if (cgroupStat.getPeriods() != CgroupDataSource.UNKNOWN
+                    && cgroupStat.getThrottledPeriods() != CgroupDataSource.UNKNOWN
+                    && periodsDelta >= 0 && throttledDelta >= 0) {
+                stat.setThrottled(periodsDelta == 0 ? 0.0 : throttledDelta * 100.0 / periodsDelta);
+            }
+        }
+        previousCgroupStat = cgroupStat;
+
+        PressureStall cpuPressure = cgroupSource.getPressure(PressureStall.Resource.CPU);
+        if (cpuPressure != null) {
+            stat.setCpuPressure(cpuPressure.getSomeAvg10());
+        }
+        PressureStall ioPressure = cgroupSource.getPressure(PressureStall.Resource.IO);
+        if (ioPressure != null) {
+            stat.setIoPressure(ioPressure.getSomeAvg10());
+        }
+    }
+
+    private double getStatePercent(int state, long totalDelta) {
+        if (totalDelta <= 0) {
+            return 0.0;
+        }
+        // 100 as in 100 percent.
+        return (current.stateTicks[state] - previous.stateTicks[state]) * 100.0 / totalDelta;
+    }
+
+    private void readCounters(Counters counters) {
+        counters.clear();
+        try (ReadableByteChannel channel = dataSource.getStatChannel()) {
+            ProcTokenizer t = tokenizer.load(channel);
+            while (t.nextLine()) {
+                if (t.skip(CPU)) {
+                    if (t.peekDigit()) {
+                        int cpuIndex = (int) t.nextLong();
+                        // add the user, user-nice and system times to get the CPU busy time
+                        counters.setCpuTicks(cpuIndex, t.nextLong() + t.nextLong() + t.nextLong());
+                    } else if (t.atTokenEnd()) {
+                        // older kernels have fewer states
+                        for (int i = 0; i < STATES && t.hasToken(); i++) {
+                            counters.stateTicks[i] = t.nextLong();
+                        }
+                    }
                     continue;
                 }
 
-                int cpuIndex = Integer.valueOf(parts[0].substring("cpu".length()));
-                if (cpuIndex > maxIndex) {
-                    long[] newValues = new long[cpuIndex+1];
-                    System.arraycopy(values, 0, newValues, 0, cpuIndex);
-                    values = newValues;
-                    maxIndex = cpuIndex;
+                switch (t.nextKey(KEYS, (byte) ' ')) {
+                    case CTXT:
+                        counters.contextSwitches = t.nextLong();
+                        break;
+                    case PROCS_RUNNING:
+                        counters.processesRunning = t.nextLong();
+                        break;
+                    case PROCS_BLOCKED:
+                        counters.processesBlocked = t.nextLong();
+                        break;
                 }
-                // add the user, user-nice and system times to get the CPU busy time
-                values[cpuIndex] = Long.valueOf(parts[1]) + Long.valueOf(parts[2]) + Long.valueOf(parts[3]);
             }
-        } catch (IOException e) {
+        } catch (IOException | NumberFormatException e) {
             logger.log(Level.WARNING, "error reading stat file", e);
         }
+    }
 
-        return values;
+    private static class Counters {
+        private long[] cpuTicks = new long[1];
+        private int cpuCount;
+        private final long[] stateTicks = new long[STATES];
+        private long contextSwitches;
+        private long processesRunning = CpuStat.UNKNOWN_COUNT;
+        private long processesBlocked = CpuStat.UNKNOWN_COUNT;
+
+        void clear() {
+            Arrays.fill(cpuTicks, 0, cpuCount, 0);
+            cpuCount = 0;
+            Arrays.fill(stateTicks, 0);
+            contextSwitches = 0;
+            processesRunning = CpuStat.UNKNOWN_COUNT;
+            processesBlocked = CpuStat.UNKNOWN_COUNT;
+        }
+
+        void setCpuTicks(int cpuIndex, long ticks) {
+            if (cpuIndex >= cpuTicks.length) {
+                cpuTicks = Arrays.copyOf(cpuTicks, Math.max(cpuIndex + 1, cpuTicks.length * 2));
+            }
+            cpuTicks[cpuIndex] = ticks;
+            cpuCount = Math.max(cpuCount, cpuIndex + 1);
+        }
     }
 
     @Override
@@ -45,20 +45,52 @@ import com.redhat.thermostat.storage.model.TimeStampedPojo;
 public class CpuStat extends BasePojo implements TimeStampedPojo {
 
     public static final double INVALID_LOAD = Double.MIN_VALUE;
+    public static final long UNKNOWN_COUNT = -1;
 
     private long timeStamp;
     private double[] perProcessorUsage;
+    private double ioWait = INVALID_LOAD;
+    private double irq = INVALID_LOAD;
+    private double softIrq = INVALID_LOAD;
+    private double steal = INVALID_LOAD;
+    private double contextSwitchRate = INVALID_LOAD;
+    private long processesRunning = UNKNOWN_COUNT;
+    private long processesBlocked = UNKNOWN_COUNT;
+    private double cgroupUsage = INVALID_LOAD;
+    private double throttled = INVALID_LOAD;
+    private double cpuPressure = INVALID_LOAD;
+    private double ioPressure = INVALID_LOAD;
 
     public CpuStat() {
         this(null, -1, null);
     }
 
+    /**
+     * Creates a stat with only the per-processor usage known.
+     */
     public CpuStat(String writerId, long timestamp, double[] perProcessorUsage) {
         super(writerId);
         this.timeStamp = timestamp;
         this.perProcessorUsage = perProcessorUsage;
     }
 
+    /**
+     * Creates a stat with the host-wide details as well. The io wait, irq,
+     * softirq and steal times are percentages of the time of all processors.
+     */
+    public CpuStat(String writerId, long timestamp, double[] perProcessorUsage,
+            double ioWait, double irq, double softIrq, double steal,
+            double contextSwitchRate, long processesRunning, long processesBlocked) {
+        this(writerId, timestamp, perProcessorUsage);
+        this.ioWait = ioWait;
+        this.irq = irq;
+        this.softIrq = softIrq;
+        this.steal = steal;
+        this.contextSwitchRate = contextSwitchRate;
+        this.processesRunning = processesRunning;
+        this.processesBlocked = processesBlocked;
+    }
+
     @Persist
     public double[] getPerProcessorUsage() {
         return perProcessorUsage;
@@ -69,6 +101,158 @@ public class CpuStat extends BasePojo implements TimeStampedPojo {
         this.perProcessorUsage = perProcessorUsage;
     }
 
+    /**
+     * @return the percentage of time spent waiting for io, or
+     * {@link #INVALID_LOAD} if unknown
+     */
+    @Persist
+    public double getIoWait() {
+        return ioWait;
+    }
+
+    @Persist
+    public void setIoWait(double ioWait) {
+        this.ioWait = ioWait;
+    }
+
+    /**
+     * @return the percentage of time spent servicing interrupts, or
+     * {@link #INVALID_LOAD} if unknown
+     */
+    @Persist
+    public double getIrq() {
+        return irq;
+    }
+
+    @Persist
+    public void setIrq(double irq) {
+        this.irq = irq;
+    }
+
+    /**
+     * @return the percentage of time spent servicing softirqs, or
+     * {@link #INVALID_LOAD} if unknown
+     */
+    @Persist
+    public double getSoftIrq() {
+        return softIrq;
+    }
+
+    @Persist
+    public void setSoftIrq(double softIrq) {
+        this.softIrq = softIrq;
+    }
+
+    /**
+     * @return the percentage of time the hypervisor gave to other guests
+     * while this host wanted to run, or {@link #INVALID_LOAD} if unknown
+     */
+    @Persist
+    public double getSteal() {
+        return steal;
+    }
+
+    @Persist
+    public void setSteal(double steal) {
+        this.steal = steal;
+    }
+
+    /**
+     * @return context switches per second, or {@link #INVALID_LOAD} if unknown
+     */
+    @Persist
+    public double getContextSwitchRate() {
+        return contextSwitchRate;
+    }
+
+    @Persist
+    public void setContextSwitchRate(double contextSwitchRate) {
+        this.contextSwitchRate = contextSwitchRate;
+    }
+
+    /**
+     * @return the number of runnable processes, or {@link #UNKNOWN_COUNT}
+     */
+    @Persist
+    public long getProcessesRunning() {
+        return processesRunning;
+    }
+
+    @Persist
+    public void setProcessesRunning(long processesRunning) {
+        this.processesRunning = processesRunning;
+    }
+
+    /**
+     * @return the number of processes blocked on io, or {@link #UNKNOWN_COUNT}
+     */
+    @Persist
+    public long getProcessesBlocked() {
+        return processesBlocked;
+    }
+
+    @Persist
+    public void setProcessesBlocked(long processesBlocked) {
+        this.processesBlocked = processesBlocked;
+    }
+
+    /**
+     * @return the percentage of its cpu limit the cgroup of the agent used,
+     * or {@link #INVALID_LOAD} if unknown. Without a limit, this is relative
+     * to all processors.
+     */
+    @Persist
+    public double getCgroupUsage() {
+        return cgroupUsage;
+    }
+
+    @Persist
+    public void setCgroupUsage(double cgroupUsage) {
+        this.cgroupUsage = cgroupUsage;
+    }
+
+    /**
+     * @return the percentage of cpu quota periods in which the cgroup of the
+     * agent was throttled, or {@link #INVALID_LOAD} if unknown
+     */
+    @Persist
+    public double getThrottled() {
+        return throttled;
+    }
+
+    @Persist
+    public void setThrottled(double throttled) {
+        this.throttled = throttled;
+    }
+
+    /**
+     * @return the percentage of the last ten seconds in which some tasks
+     * waited for a processor, or {@link #INVALID_LOAD} if unknown
+     */
+    @Persist
+    public double getCpuPressure() {
+        return cpuPressure;
+    }
+
+    @Persist
+    public void setCpuPressure(double cpuPressure) {
+        this.cpuPressure = cpuPressure;
+    }
+
+    /**
+     * @return the percentage of the last ten seconds in which some tasks
+     * waited for io, or {@link #INVALID_LOAD} if unknown
+     */
+    @Persist
+    public double getIoPressure() {
+        return ioPressure;
+    }
+
+    @Persist
+    public void setIoPressure(double ioPressure) {
+        this.ioPressure = ioPressure;
+    }
+
     @Persist
     @Override
     public long getTimeStamp() {
@@ -45,12 +45,24 @@ import java.util.logging.Logger;
 import com.google.gson.stream.JsonReader;
 import com.google.gson.stream.JsonWriter;
 import com.google.gson.TypeAdapter;
+import com.redhat.thermostat.agent.http.JsonPayloadWriter;
 import com.redhat.thermostat.common.utils.LoggingUtils;
 
 public class CpuStatTypeAdapter extends TypeAdapter<List<CpuStat>> {
 
     private static final String TIMESTAMP = "timeStamp";
     private static final String PROCESSOR_USAGE = "perProcessorUsage";
+    private static final String IO_WAIT = "ioWait";
+    private static final String IRQ = "irq";
+    private static final String SOFT_IRQ = "softIrq";
+    private static final String STEAL = "steal";
+    private static final String CONTEXT_SWITCH_RATE = "contextSwitchRate";
+    private static final String PROCESSES_RUNNING = "processesRunning";
+    private static final String PROCESSES_BLOCKED = "processesBlocked";
+    private static final String CGROUP_USAGE = "cgroupUsage";
+    private static final String THROTTLED = "throttled";
+    private static final String CPU_PRESSURE = "cpuPressure";
+    private static final String IO_PRESSURE = "ioPressure";
     private static final String TYPE_LONG = "$numberLong";
     private static final String SERVER_TIME = "time";
     private static final String RESPONSE_ROOT = "response";
@@ -77,6 +89,18 @@ public class CpuStatTypeAdapter extends TypeAdapter<List<CpuStat>> {
             out.value(val);
         }
         out.endArray();
+        // the details are left out when unknown, as in older records
+        writeLoad(out, IO_WAIT, stat.getIoWait());
+        writeLoad(out, IRQ, stat.getIrq());
+        writeLoad(out, SOFT_IRQ, stat.getSoftIrq());
+        writeLoad(out, STEAL, stat.getSteal());
+        writeLoad(out, CONTEXT_SWITCH_RATE, stat.getContextSwitchRate());
+        writeCount(out, PROCESSES_RUNNING, stat.getProcessesRunning());
+        writeCount(out, PROCESSES_BLOCKED, stat.getProcessesBlocked());
+        writeLoad(out, CGROUP_USAGE, stat.getCgroupUsage());
+        writeLoad(out, THROTTLED, stat.getThrottled());
+        writeLoad(out, CPU_PRESSURE, stat.getCpuPressure());
+        writeLoad(out, IO_PRESSURE, stat.getIoPressure());
         out.name(TIMESTAMP);
         writeLong(out, stat.getTimeStamp());
         out.name(AGENT_ID);
@@ -84,6 +108,62 @@ public class CpuStatTypeAdapter extends TypeAdapter<List<CpuStat>> {
         out.endObject();
     }
 
+    private void writeLoad(JsonWriter out, String name, double value) throws IOException {
+        if (value != CpuStat.INVALID_LOAD) {
+            out.name(name).value(value);
+        }
+    }
+
+    private void writeCount(JsonWriter out, String name, long value) throws IOException {
+        if (value != CpuStat.UNKNOWN_COUNT) {
+            out.name(name).value(value);
+        }
+    }
+
+    /**
+     * Writes the same JSON as {@link #write(JsonWriter, List)}, without
+     * creating intermediate strings.
+     */
+    public void write(JsonPayloadWriter out, List<CpuStat> value) {
+        out.beginArray();
+        for (CpuStat stat : value) {
+            out.beginObject();
+            out.name(PROCESSOR_USAGE);
+            out.beginArray();
+            for (double val : stat.getPerProcessorUsage()) {
+                out.value(val);
+            }
+            out.endArray();
+            writeLoad(out, IO_WAIT, stat.getIoWait());
+            writeLoad(out, IRQ, stat.getIrq());
+            writeLoad(out, SOFT_IRQ, stat.getSoftIrq());
+            writeLoad(out, STEAL, stat.getSteal());
+            writeLoad(out, CONTEXT_SWITCH_RATE, stat.getContextSwitchRate());
+            writeCount(out, PROCESSES_RUNNING, stat.getProcessesRunning());
+            writeCount(out, PROCESSES_BLOCKED, stat.getProcessesBlocked());
+            writeLoad(out, CGROUP_USAGE, stat.getCgroupUsage());
+            writeLoad(out, THROTTLED, stat.getThrottled());
+            writeLoad(out, CPU_PRESSURE, stat.getCpuPressure());
+            writeLoad(out, IO_PRESSURE, stat.getIoPressure());
+            out.name(TIMESTAMP).numberLong(stat.getTimeStamp());
+            out.name(AGENT_ID).value(stat.getAgentId());
+            out.endObject();
+        }
+        out.endArray();
+    }
+
+    private static void writeLoad(JsonPayloadWriter out, String name, double value) {
+        if (value != CpuStat.INVALID_LOAD) {
+            out.name(name).value(value);
+        }
+    }
+
+    private static void writeCount(JsonPayloadWriter out, String name, long value) {
+        if (value != CpuStat.UNKNOWN_COUNT) {
+            out.name(name).value(value);
+        }
+    }
+
     @Override
     public List<CpuStat> read(JsonReader in) throws IOException {
         List<CpuStat> values = null;
@@ -131,6 +211,17 @@ public class CpuStatTypeAdapter extends TypeAdapter<List<CpuStat>> {
         String agentId = null;
         double[] perProcessorUsage = null;
         long timestamp = -1;
+        double ioWait = CpuStat.INVALID_LOAD;
+        double irq = CpuStat.INVALID_LOAD;
+        double softIrq = CpuStat.INVALID_LOAD;
+        double steal = CpuStat.INVALID_LOAD;
+        double contextSwitchRate = CpuStat.INVALID_LOAD;
+        long processesRunning = CpuStat.UNKNOWN_COUNT;
+        long processesBlocked = CpuStat.UNKNOWN_COUNT;
+        double cgroupUsage = CpuStat.INVALID_LOAD;
+        double throttled = CpuStat.INVALID_LOAD;
+        double cpuPressure = CpuStat.INVALID_LOAD;
+        double ioPressure = CpuStat.INVALID_LOAD;
 
         in.beginObject();
 
@@ -140,6 +231,39 @@ public class CpuStatTypeAdapter extends TypeAdapter<List<CpuStat>> {
                 case PROCESSOR_USAGE:
                     perProcessorUsage = readProcessorUsage(in);
                     break;
+                case IO_WAIT:
+                    ioWait = in.nextDouble();
+                    break;
+                case IRQ:
+                    irq = in.nextDouble();
+                    break;
+                case SOFT_IRQ:
+                    softIrq = in.nextDouble();
+                    break;
+                case STEAL:
+                    steal = in.nextDouble();
+                    break;
+                case CONTEXT_SWITCH_RATE:
+                    contextSwitchRate = in.nextDouble();
+                    break;
+                case PROCESSES_RUNNING:
+                    processesRunning = in.nextLong();
+                    break;
+                case PROCESSES_BLOCKED:
+                    processesBlocked = in.nextLong();
+                    break;
+                case CGROUP_USAGE:
+                    cgroupUsage = in.nextDouble();
+                    break;
+                case THROTTLED:
+                    throttled = in.nextDouble();
+                    break;
+                case CPU_PRESSURE:
+                    cpuPressure = in.nextDouble();
+                    break;
+                case IO_PRESSURE:
+                    ioPressure = in.nextDouble();
+                    break;
                 case TIMESTAMP:
                     timestamp = readLong(in);
                     break;
@@ -156,7 +280,13 @@ public class CpuStatTypeAdapter extends TypeAdapter<List<CpuStat>> {
         if (perProcessorUsage == null || agentId == null || timestamp < 0) {
             throw new IOException("CpuStat information is incomplete.");
         }
-        return new CpuStat(agentId, timestamp,  perProcessorUsage);
+        CpuStat stat = new CpuStat(agentId, timestamp, perProcessorUsage, ioWait, irq, softIrq, steal,
+                contextSwitchRate, processesRunning, processesBlocked);
+        stat.setCgroupUsage(cgroupUsage);
+        stat.setThrottled(throttled);
+        stat.setCpuPressure(cpuPressure);
+        stat.setIoPressure(ioPressure);
+        return stat;
     }
 
     private double[] readProcessorUsage(JsonReader in) throws IOException {
@@ -36,16 +36,22 @@
 
 package com.redhat.thermostat.host.cpu.agent.internal;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
 import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Matchers.matches;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
@@ -53,7 +59,10 @@ import org.junit.Before;
 import org.junit.Test;
 import org.mockito.ArgumentCaptor;
 
+import com.redhat.thermostat.backend.PollingInterval;
+import com.redhat.thermostat.backend.PollingScheduler;
 import com.redhat.thermostat.common.Version;
+import com.redhat.thermostat.common.config.experimental.ConfigurationInfoSource;
 import com.redhat.thermostat.host.cpu.model.CpuStat;
 import com.redhat.thermostat.storage.core.WriterID;
 import org.osgi.framework.Bundle;
@@ -66,9 +75,10 @@ public class HostCpuBackendTest {
     private CpuStatDAO cpuStatDAO;
     private WriterID writerID;
     private Version version;
+    private Map<String, String> config;
 
     @Before
-    public void setup() {
+    public void setup() throws IOException {
         executor = mock(ScheduledExecutorService.class);
 
         version = mock(Version.class);
@@ -77,10 +87,14 @@ public class HostCpuBackendTest {
         // these two are created via OSGI wiring
         cpuStatDAO = mock(CpuStatDAO.class);
         writerID = mock(WriterID.class);
+        config = new HashMap<>();
+        ConfigurationInfoSource configSource = mock(ConfigurationInfoSource.class);
+        when(configSource.getConfiguration(anyString(), anyString())).thenReturn(config);
 
         backend = new HostCpuBackend("Host CPU Backend", "Gathers CPU statistics about a host", "Red Hat, Inc.", version, executor);
         backend.bindCpuStatDAO(cpuStatDAO);
         backend.bindWriterID(writerID);
+        backend.bindConfigurationInfoSource(configSource);
     }
 
     @Test
@@ -104,6 +118,79 @@ public class HostCpuBackendTest {
         verify(cpuStatDAO).put(any(CpuStat.class));
     }
 
+    @Test
+    public void testConfiguredPollingInterval() {
+        config.put("pollingMode", "adaptive");
+        config.put("pollingInterval", "2000");
+        backend.componentActivated(createBundleContext());
+        assertEquals(PollingInterval.adaptive(2000, 500, 16000), backend.getPollingInterval());
+    }
+
+    @Test
+    public void testHighUsagePollsMoreOften() {
+        Runnable tick = activateAdaptive();
+        backend.reportActivity(null, createStat(95.0, 95.0));
+        tick.run();
+        verify(executor).schedule(tick, 100L, TimeUnit.MILLISECONDS);
+    }
+
+    @Test
+    public void testThrottlingPollsMoreOften() {
+        Runnable tick = activateAdaptive();
+        CpuStat stat = createStat(20.0, 20.0);
+        stat.setThrottled(50.0);
+        backend.reportActivity(null, stat);
+        tick.run();
+        verify(executor).schedule(tick, 100L, TimeUnit.MILLISECONDS);
+    }
+
+    @Test
+    public void testChangeInUsagePollsMoreOften() {
+        Runnable tick = activateAdaptive();
+        backend.reportActivity(createStat(10.0, 20.0), createStat(30.0, 40.0));
+        tick.run();
+        verify(executor).schedule(tick, 500L, TimeUnit.MILLISECONDS);
+    }
+
+    @Test
+    public void testSteadyUsageIsQuiet() {
+        Runnable tick = activateAdaptive();
+        backend.reportActivity(createStat(10.0, 20.0), createStat(12.0, 22.0));
+        tick.run();
+        verify(executor).schedule(tick, 1000L, TimeUnit.MILLISECONDS);
+    }
+
+    @Test
+    public void testPollsOnSharedScheduler() {
+        PollingScheduler scheduler = mock(PollingScheduler.class);
+        backend.bindPollingScheduler(scheduler);
+        backend.componentActivated(createBundleContext());
+        backend.activate();
+        verify(scheduler).scheduleAtFixedRate(eq("Host CPU Backend"), any(Runnable.class), eq(0L), eq(1000L), eq(TimeUnit.MILLISECONDS));
+        verify(executor, never()).scheduleAtFixedRate(any(Runnable.class), anyLong(), anyLong(), any(TimeUnit.class));
+    }
+
+    private Runnable activateAdaptive() {
+        backend.setPollingInterval(PollingInterval.adaptive(1000, 100, 8000));
+        backend.activate();
+        ArgumentCaptor<Runnable> captor = ArgumentCaptor.forClass(Runnable.class);
+        verify(executor).schedule(captor.capture(), eq(0L), eq(TimeUnit.MILLISECONDS));
+        return captor.getValue();
+    }
+
+    private CpuStat createStat(double... usage) {
+        return new CpuStat("foo", 0, usage);
+    }
+
+    private BundleContext createBundleContext() {
+        org.osgi.framework.Version osgiVersion = mock(org.osgi.framework.Version.class);
+        Bundle bundle = mock(Bundle.class);
+        when(bundle.getVersion()).thenReturn(osgiVersion);
+        BundleContext ctx = mock(BundleContext.class);
+        when(ctx.getBundle()).thenReturn(bundle);
+        return ctx;
+    }
+
     @Test
     public void testDeactivate() {
         backend.activate();
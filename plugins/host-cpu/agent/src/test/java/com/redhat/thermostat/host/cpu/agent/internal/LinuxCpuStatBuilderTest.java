@@ -37,20 +37,26 @@
 package com.redhat.thermostat.host.cpu.agent.internal;
 
 import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
-import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.io.StringReader;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
 
 import com.redhat.thermostat.shared.config.OS;
 import org.junit.Assume;
 import org.junit.Test;
 
+import com.redhat.thermostat.common.portability.linux.CgroupCpuStat;
+import com.redhat.thermostat.common.portability.linux.CgroupDataSource;
+import com.redhat.thermostat.common.portability.linux.PressureStall;
 import com.redhat.thermostat.common.portability.linux.ProcDataSource;
 import com.redhat.thermostat.common.Clock;
 import com.redhat.thermostat.common.SystemClock;
@@ -63,7 +69,7 @@ public class LinuxCpuStatBuilderTest {
     public void testSimpleBuild() {
         ProcDataSource dataSource = new ProcDataSource();
         WriterID writerId = mock(WriterID.class);
-        LinuxCpuStatBuilder builder = new LinuxCpuStatBuilder(new SystemClock(), dataSource, 100l, writerId);
+        LinuxCpuStatBuilder builder = new LinuxCpuStatBuilder(new SystemClock(), dataSource, new CgroupDataSource(), 100l, writerId);
         builder.initialize();
         CpuStat stat = builder.build();
         assertNotNull(stat);
@@ -74,7 +80,7 @@ public class LinuxCpuStatBuilderTest {
         Clock clock = mock(Clock.class);
         ProcDataSource dataSource = mock(ProcDataSource.class);
         long ticksPerSecond = 1;
-        LinuxCpuStatBuilder builder = new LinuxCpuStatBuilder(clock, dataSource, ticksPerSecond, null);
+        LinuxCpuStatBuilder builder = new LinuxCpuStatBuilder(clock, dataSource, mock(CgroupDataSource.class), ticksPerSecond, null);
         builder.build();
     }
 
@@ -88,13 +94,13 @@ public class LinuxCpuStatBuilderTest {
             "cpu 100 0 0 1000 1000\n" +
             "cpu0 100 0 0 1000 1000\n" +
             "cpu1 10 80 10 1000 1000\n";
-        BufferedReader reader1 = new BufferedReader(new StringReader(firstReadContents));
+        ReadableByteChannel channel1 = channel(firstReadContents);
 
         String secondReadContents =
             "cpu 400 0 0 1000 1000\n" +
             "cpu0 200 0 0 1000 1000\n" +
             "cpu1 30 50 120 1000 1000\n";
-        BufferedReader reader2 = new BufferedReader(new StringReader(secondReadContents));
+        ReadableByteChannel channel2 = channel(secondReadContents);
 
         long ticksPerSecond = 100;
         Clock clock = mock(Clock.class);
@@ -102,17 +108,161 @@ public class LinuxCpuStatBuilderTest {
         when(clock.getMonotonicTimeNanos()).thenReturn((long)(CLOCK1 * 1E6)).thenReturn((long)(CLOCK2 * 1E6));
 
         ProcDataSource dataSource = mock(ProcDataSource.class);
-        when(dataSource.getStatReader()).thenReturn(reader1).thenReturn(reader2);
+        when(dataSource.getStatChannel()).thenReturn(channel1).thenReturn(channel2);
         WriterID writerId = mock(WriterID.class);
-        LinuxCpuStatBuilder builder = new LinuxCpuStatBuilder(clock, dataSource, ticksPerSecond, writerId);
+        LinuxCpuStatBuilder builder = new LinuxCpuStatBuilder(clock, dataSource, mock(CgroupDataSource.class), ticksPerSecond, writerId);
 
         builder.initialize();
 
         CpuStat stat = builder.build();
 
-        verify(dataSource, times(2)).getStatReader();
+        verify(dataSource, times(2)).getStatChannel();
         assertArrayEquals(new double[] {100, 100}, stat.getPerProcessorUsage(), 0.01);
     }
 
-}
+    @Test
+    public void testBuildCpuStatDetails() throws IOException {
+        long CLOCK1 = 1000;
+        long CLOCK2 = 3000;
+
+        String firstReadContents =
+            "cpu  100 0 100 700 50 10 20 20 0 0\n" +
+            "cpu0 100 0 100 700 50 10 20 20 0 0\n" +
+            "intr 12345 1 2 3\n" +
+            "ctxt 1000\n" +
+            "btime 1500000000\n" +
+            "processes 100\n" +
+            "procs_running 1\n" +
+            "procs_blocked 0\n";
+        String secondReadContents =
+            "cpu  200 0 100 1400 150 20 30 100 0 0\n" +
+            "cpu0 200 0 100 1400 150 20 30 100 0 0\n" +
+            "cpu1 5 0 5 10 0 0 0 0 0 0\n" +
+            "intr 12350 1 2 3\n" +
+            "ctxt 5000\n" +
+            "btime 1500000000\n" +
+            "processes 110\n" +
+            "procs_running 3\n" +
+            "procs_blocked 2\n";
+
+        Clock clock = mock(Clock.class);
+        when(clock.getRealTimeMillis()).thenReturn(CLOCK2);
+        when(clock.getMonotonicTimeNanos()).thenReturn((long)(CLOCK1 * 1E6)).thenReturn((long)(CLOCK2 * 1E6));
+        ProcDataSource dataSource = mock(ProcDataSource.class);
+        when(dataSource.getStatChannel()).thenReturn(channel(firstReadContents)).thenReturn(channel(secondReadContents));
+        LinuxCpuStatBuilder builder = new LinuxCpuStatBuilder(clock, dataSource, mock(CgroupDataSource.class), 100, mock(WriterID.class));
+
+        builder.initialize();
+        CpuStat stat = builder.build();
+
+        // 1000 ticks passed in all: 100 user, 700 idle, 100 iowait, 10 irq,
+        // 10 softirq and 80 steal
+        assertArrayEquals(new double[] {50, 5}, stat.getPerProcessorUsage(), 0.01);
+        assertEquals(10.0, stat.getIoWait(), 0.01);
+        assertEquals(1.0, stat.getIrq(), 0.01);
+        assertEquals(1.0, stat.getSoftIrq(), 0.01);
+        assertEquals(8.0, stat.getSteal(), 0.01);
+        assertEquals(2000.0, stat.getContextSwitchRate(), 0.01);
+        assertEquals(3, stat.getProcessesRunning());
+        assertEquals(2, stat.getProcessesBlocked());
+    }
+
+    @Test
+    public void testCountersAreReusedBetweenSamples() throws IOException {
+        Clock clock = mock(Clock.class);
+        when(clock.getMonotonicTimeNanos()).thenReturn(0L, 1000000000L, 2000000000L);
+        ProcDataSource dataSource = mock(ProcDataSource.class);
+        when(dataSource.getStatChannel())
+                .thenReturn(channel("cpu0 0 0 0 0\n"))
+                .thenReturn(channel("cpu0 100 0 0 0\n"))
+                .thenReturn(channel("cpu0 150 0 0 0\n"));
+        LinuxCpuStatBuilder builder = new LinuxCpuStatBuilder(clock, dataSource, mock(CgroupDataSource.class), 100, mock(WriterID.class));
+
+        builder.initialize();
+        assertArrayEquals(new double[] {100}, builder.build().getPerProcessorUsage(), 0.01);
+        assertArrayEquals(new double[] {50}, builder.build().getPerProcessorUsage(), 0.01);
+    }
+
+    @Test
+    public void testBuildCgroupDetails() throws IOException {
+        Clock clock = mock(Clock.class);
+        when(clock.getMonotonicTimeNanos()).thenReturn(0L, 2000000000L);
+        ProcDataSource dataSource = mock(ProcDataSource.class);
+        when(dataSource.getStatChannel())
+                .thenReturn(channel("cpu0 0 0 0 0\ncpu1 0 0 0 0\n"))
+                .thenReturn(channel("cpu0 0 0 0 0\ncpu1 0 0 0 0\n"));
+        CgroupDataSource cgroupSource = mock(CgroupDataSource.class);
+        when(cgroupSource.isContainerized()).thenReturn(true);
+        // half a processor used over two seconds, throttled in 5 of 20 periods
+        when(cgroupSource.getCpuStat())
+                .thenReturn(new CgroupCpuStat(1000000000L, 10, 1, 0))
+                .thenReturn(new CgroupCpuStat(2000000000L, 30, 6, 0));
+        when(cgroupSource.getCpuLimit()).thenReturn(0.5);
+        when(cgroupSource.getPressure(PressureStall.Resource.CPU))
+                .thenReturn(new PressureStall(12.5, 0, 0, 1, 0, 0, 0, 0));
+        LinuxCpuStatBuilder builder = new LinuxCpuStatBuilder(clock, dataSource, cgroupSource, 100, mock(WriterID.class));
 
+        builder.initialize();
+        CpuStat stat = builder.build();
+
+        assertEquals(100.0, stat.getCgroupUsage(), 0.01);
+        assertEquals(25.0, stat.getThrottled(), 0.01);
+        assertEquals(12.5, stat.getCpuPressure(), 0.01);
+        assertEquals(CpuStat.INVALID_LOAD, stat.getIoPressure(), 0.0);
+    }
+
+    @Test
+    public void testCgroupUsageWithoutLimitIsRelativeToAllProcessors() throws IOException {
+        Clock clock = mock(Clock.class);
+        when(clock.getMonotonicTimeNanos()).thenReturn(0L, 1000000000L);
+        ProcDataSource dataSource = mock(ProcDataSource.class);
+        when(dataSource.getStatChannel())
+                .thenReturn(channel("cpu0 0 0 0 0\ncpu1 0 0 0 0\n"))
+                .thenReturn(channel("cpu0 0 0 0 0\ncpu1 0 0 0 0\n"));
+        CgroupDataSource cgroupSource = mock(CgroupDataSource.class);
+        when(cgroupSource.isContainerized()).thenReturn(true);
+        when(cgroupSource.getCpuStat())
+                .thenReturn(new CgroupCpuStat(0, CgroupDataSource.UNKNOWN, CgroupDataSource.UNKNOWN, 0))
+                .thenReturn(new CgroupCpuStat(1000000000L, CgroupDataSource.UNKNOWN, CgroupDataSource.UNKNOWN, 0));
+        when(cgroupSource.getCpuLimit()).thenReturn(Double.POSITIVE_INFINITY);
+        LinuxCpuStatBuilder builder = new LinuxCpuStatBuilder(clock, dataSource, cgroupSource, 100, mock(WriterID.class));
+
+        builder.initialize();
+        CpuStat stat = builder.build();
+
+        assertEquals(50.0, stat.getCgroupUsage(), 0.01);
+        assertEquals(CpuStat.INVALID_LOAD, stat.getThrottled(), 0.0);
+    }
+
+    @Test
+    public void testCgroupDetailsOutsideContainerAreNotReported() throws IOException {
+        Clock clock = mock(Clock.class);
+        when(clock.getMonotonicTimeNanos()).thenReturn(0L, 2000000000L);
+        ProcDataSource dataSource = mock(ProcDataSource.class);
+        when(dataSource.getStatChannel())
+                .thenReturn(channel("cpu0 0 0 0 0\n"))
+                .thenReturn(channel("cpu0 0 0 0 0\n"));
+        CgroupDataSource cgroupSource = mock(CgroupDataSource.class);
+        when(cgroupSource.isContainerized()).thenReturn(false);
+        when(cgroupSource.getCpuStat())
+                .thenReturn(new CgroupCpuStat(1000000000L, 10, 1, 0))
+                .thenReturn(new CgroupCpuStat(2000000000L, 30, 6, 0));
+        when(cgroupSource.getCpuLimit()).thenReturn(Double.POSITIVE_INFINITY);
+        when(cgroupSource.getPressure(PressureStall.Resource.CPU))
+                .thenReturn(new PressureStall(12.5, 0, 0, 1, 0, 0, 0, 0));
+        LinuxCpuStatBuilder builder = new LinuxCpuStatBuilder(clock, dataSource, cgroupSource, 100, mock(WriterID.class));
+
+        builder.initialize();
+        CpuStat stat = builder.build();
+
+        assertEquals(CpuStat.INVALID_LOAD, stat.getCgroupUsage(), 0.0);
+        assertEquals(CpuStat.INVALID_LOAD, stat.getThrottled(), 0.0);
+        // pressure of the whole system is still reported
+        assertEquals(12.5, stat.getCpuPressure(), 0.01);
+    }
+
+    private static ReadableByteChannel channel(String contents) {
+        return Channels.newChannel(new ByteArrayInputStream(contents.getBytes(StandardCharsets.US_ASCII)));
+    }
+
+}
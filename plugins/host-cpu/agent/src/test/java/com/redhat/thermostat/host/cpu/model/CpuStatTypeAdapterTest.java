@@ -39,10 +39,13 @@ package com.redhat.thermostat.host.cpu.model;
 import com.google.gson.GsonBuilder;
 import com.google.gson.Gson;
 import com.google.gson.reflect.TypeToken;
+import com.redhat.thermostat.agent.http.JsonPayloadWriter;
 import org.junit.Test;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertArrayEquals;
 
+import java.io.IOException;
+import java.util.Collections;
 import java.util.List;
 import java.util.ArrayList;
 import java.lang.reflect.Type;
@@ -79,6 +82,88 @@ public class CpuStatTypeAdapterTest {
                 "{\"perProcessorUsage\":[1.3235,4.4567,7.78911,10.10111241],\"timeStamp\":{\"$numberLong\":\"100023313101\"},\"agentId\":\"4\"}]", result);
     }
 
+    @Test
+    public void testStreamingWriteMatchesTypeAdapter() throws IOException {
+        List<CpuStat> stats = new ArrayList<>();
+        stats.add(new CpuStat("1", 1000230101l, new double[]{1.23, 0.0, 100.0, 10.1112}));
+        stats.add(new CpuStat("2", 10002333101l, new double[]{}));
+        CpuStatTypeAdapter typeAdapter = new CpuStatTypeAdapter();
+        JsonPayloadWriter out = new JsonPayloadWriter();
+        typeAdapter.write(out, stats);
+        assertEquals(typeAdapter.toJson(stats), out.toString());
+    }
+
+    @Test
+    public void testTypeAdapterSerializesDetails() throws IOException {
+        CpuStat stat = new CpuStat("1", 1234567890l, new double[]{9.5}, 1.5, 0.25, 0.5, 12.0, 3000.0, 4, 1);
+        String result = new CpuStatTypeAdapter().toJson(Collections.singletonList(stat));
+        assertEquals("[{\"perProcessorUsage\":[9.5],\"ioWait\":1.5,\"irq\":0.25,\"softIrq\":0.5,\"steal\":12.0," +
+                "\"contextSwitchRate\":3000.0,\"processesRunning\":4,\"processesBlocked\":1," +
+                "\"timeStamp\":{\"$numberLong\":\"1234567890\"},\"agentId\":\"1\"}]", result);
+    }
+
+    @Test
+    public void testStreamingWriteMatchesTypeAdapterWithDetails() throws IOException {
+        List<CpuStat> stats = new ArrayList<>();
+        stats.add(new CpuStat("1", 1000230101l, new double[]{1.23, 0.0}, 1.5, 0.0, 0.5, 12.0, 3000.0, 4, 0));
+        CpuStatTypeAdapter typeAdapter = new CpuStatTypeAdapter();
+        JsonPayloadWriter out = new JsonPayloadWriter();
+        typeAdapter.write(out, stats);
+        assertEquals(typeAdapter.toJson(stats), out.toString());
+    }
+
+    @Test
+    public void testTypeAdapterDeserializesDetails() throws IOException {
+        String serialized = "{\"response\":[{\"perProcessorUsage\":[1.23],\"ioWait\":1.5,\"irq\":0.25,\"softIrq\":0.5," +
+                "\"steal\":12.0,\"contextSwitchRate\":3000.0,\"processesRunning\":4,\"processesBlocked\":1," +
+                "\"timeStamp\":{\"$numberLong\":\"12345\"},\"agentId\":\"1\"}],\"time\":\"123\"}";
+        CpuStat stat = new CpuStatTypeAdapter().fromJson(serialized).get(0);
+        assertEquals(1.5, stat.getIoWait(), 0.000001);
+        assertEquals(0.25, stat.getIrq(), 0.000001);
+        assertEquals(0.5, stat.getSoftIrq(), 0.000001);
+        assertEquals(12.0, stat.getSteal(), 0.000001);
+        assertEquals(3000.0, stat.getContextSwitchRate(), 0.000001);
+        assertEquals(4, stat.getProcessesRunning());
+        assertEquals(1, stat.getProcessesBlocked());
+    }
+
+    @Test
+    public void testCgroupDetailsRoundTrip() throws IOException {
+        CpuStat stat = new CpuStat("1", 12345l, new double[]{9.5});
+        stat.setCgroupUsage(80.0);
+        stat.setThrottled(25.0);
+        stat.setCpuPressure(1.5);
+        stat.setIoPressure(0.25);
+        CpuStatTypeAdapter typeAdapter = new CpuStatTypeAdapter();
+        String result = typeAdapter.toJson(Collections.singletonList(stat));
+        assertEquals("[{\"perProcessorUsage\":[9.5],\"cgroupUsage\":80.0,\"throttled\":25.0," +
+                "\"cpuPressure\":1.5,\"ioPressure\":0.25," +
+                "\"timeStamp\":{\"$numberLong\":\"12345\"},\"agentId\":\"1\"}]", result);
+        JsonPayloadWriter out = new JsonPayloadWriter();
+        typeAdapter.write(out, Collections.singletonList(stat));
+        assertEquals(result, out.toString());
+
+        String serialized = "{\"response\":" + result + ",\"time\":\"123\"}";
+        CpuStat read = typeAdapter.fromJson(serialized).get(0);
+        assertEquals(80.0, read.getCgroupUsage(), 0.000001);
+        assertEquals(25.0, read.getThrottled(), 0.000001);
+        assertEquals(1.5, read.getCpuPressure(), 0.000001);
+        assertEquals(0.25, read.getIoPressure(), 0.000001);
+    }
+
+    @Test
+    public void testTypeAdapterDeserializesMissingDetailsAsUnknown() {
+        GsonBuilder builder = new GsonBuilder();
+        Type cpuStatListType = new TypeToken<ArrayList<CpuStat>>(){}.getType();
+        builder.registerTypeAdapter(cpuStatListType, new CpuStatTypeAdapter().nullSafe());
+        Gson gson = builder.create();
+        String serialized = "{\"response\":[{\"perProcessorUsage\":[1.23],\"timeStamp\":{\"$numberLong\":\"12345\"},\"agentId\":\"1\"}],\"time\":\"123\"}";
+        List<CpuStat> result = gson.fromJson(serialized, cpuStatListType);
+        CpuStat stat = result.get(0);
+        assertEquals(CpuStat.INVALID_LOAD, stat.getSteal(), 0.0);
+        assertEquals(CpuStat.UNKNOWN_COUNT, stat.getProcessesRunning());
+    }
+
     @Test
     public void testTypeAdapterDeserializesSingletonCorrectly() {
         GsonBuilder builder = new GsonBuilder();
@@ -36,15 +36,20 @@
 
 package com.redhat.thermostat.host.memory.agent.internal;
 
-import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 
 import com.redhat.thermostat.backend.Backend;
 import com.redhat.thermostat.common.portability.HostName;
+import com.redhat.thermostat.common.portability.linux.CgroupDataSource;
 import com.redhat.thermostat.common.portability.linux.ProcDataSource;
 import com.redhat.thermostat.backend.HostPollingAction;
 import com.redhat.thermostat.backend.HostPollingBackend;
+import com.redhat.thermostat.backend.PollingInterval;
+import com.redhat.thermostat.backend.PollingScheduler;
 import com.redhat.thermostat.common.Version;
+import com.redhat.thermostat.common.config.experimental.ConfigurationInfoSource;
+import com.redhat.thermostat.common.plugin.PluginConfiguration;
+import com.redhat.thermostat.host.memory.model.MemoryStat;
 import com.redhat.thermostat.storage.core.WriterID;
 
 import org.apache.felix.scr.annotations.Activate;
@@ -58,14 +63,28 @@ import org.osgi.framework.BundleContext;
 @Service(value = Backend.class)
 public class HostMemoryBackend extends HostPollingBackend {
 
+    // With an adaptive polling interval: the share of memory by which free
+    // memory has to change to poll more often, and the share of free memory
+    // or the memory pressure below which memory is watched closely.
+    static final double FREE_CHANGE_RATIO = 0.05;
+    static final double LOW_FREE_RATIO = 0.10;
+    static final double PRESSURE_THRESHOLD = 10.0;
+
     @Reference
     private MemoryStatDAO memoryStatDAO;
 
     @Reference
     private WriterID writerID;
 
+    @Reference
+    private ConfigurationInfoSource configurationInfoSource;
+
+    @Reference
+    private PollingScheduler pollingScheduler;
+
     public HostMemoryBackend() {
-        this(Executors.newSingleThreadScheduledExecutor());
+        // Polls on the agent's shared scheduler
+        this((ScheduledExecutorService) null);
     }
 
     public HostMemoryBackend(ScheduledExecutorService executor) {
@@ -80,6 +99,9 @@ public class HostMemoryBackend extends HostPollingBackend {
     protected void componentActivated(BundleContext context) {
         Version version = new Version(context.getBundle());
         setVersion(version.getVersionNumber());
+        PluginConfiguration config = new PluginConfiguration(configurationInfoSource, MemoryStatDAOImpl.PLUGIN_ID);
+        setPollingInterval(config.getPollingInterval(PollingInterval.DEFAULT));
+        setPollingScheduler(pollingScheduler);
         registerAction(new MemoryProcBackendAction(writerID, memoryStatDAO));
     }
 
@@ -90,24 +112,41 @@ public class HostMemoryBackend extends HostPollingBackend {
         }
     }
 
-    private static class MemoryProcBackendAction implements HostPollingAction {
+    private class MemoryProcBackendAction implements HostPollingAction {
 
         private MemoryStatBuilder builder;
         private MemoryStatDAO dao;
+        private MemoryStat previous;
 
         MemoryProcBackendAction(final WriterID id, MemoryStatDAO dao) {
             ProcDataSource source = new ProcDataSource();
-            builder = new MemoryStatBuilder(source, id);
+            builder = new MemoryStatBuilder(source, new CgroupDataSource(), id);
             this.dao = dao;
         }
 
         @Override
         public void run() {
-            dao.put(builder.build());
+            MemoryStat stat = builder.build();
+            dao.put(stat);
+            reportActivity(previous, stat);
+            previous = stat;
         }
 
     }
 
+    void reportActivity(MemoryStat previous, MemoryStat current) {
+        long total = current.getTotal();
+        if (total <= 0) {
+            return;
+        }
+        if (previous != null && Math.abs(current.getFree() - previous.getFree()) >= total * FREE_CHANGE_RATIO) {
+            sampleChanged();
+        }
+        if (current.getFree() < total * LOW_FREE_RATIO || current.getPressureSome() >= PRESSURE_THRESHOLD) {
+            thresholdCrossed();
+        }
+    }
+
     void bindMemoryStatDAO(MemoryStatDAO dao) {
         this.memoryStatDAO = dao;
     }
@@ -116,6 +155,14 @@ public class HostMemoryBackend extends HostPollingBackend {
         this.writerID = id;
     }
 
+    void bindConfigurationInfoSource(ConfigurationInfoSource source) {
+        this.configurationInfoSource = source;
+    }
+
+    void bindPollingScheduler(PollingScheduler scheduler) {
+        this.pollingScheduler = scheduler;
+    }
+
     @Override
     public int getOrderValue() {
         return ORDER_MEMORY_GROUP;
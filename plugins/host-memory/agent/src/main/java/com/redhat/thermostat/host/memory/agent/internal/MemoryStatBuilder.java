@@ -36,13 +36,16 @@
 
 package com.redhat.thermostat.host.memory.agent.internal;
 
-import java.io.BufferedReader;
 import java.io.IOException;
+import java.nio.channels.ReadableByteChannel;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import com.redhat.thermostat.common.portability.PortableMemoryStatFactory;
+import com.redhat.thermostat.common.portability.linux.CgroupDataSource;
+import com.redhat.thermostat.common.portability.linux.PressureStall;
 import com.redhat.thermostat.common.portability.linux.ProcDataSource;
+import com.redhat.thermostat.common.portability.linux.ProcTokenizer;
 import com.redhat.thermostat.common.NotImplementedException;
 import com.redhat.thermostat.common.Size;
 import com.redhat.thermostat.common.portability.PortableMemoryStat;
@@ -52,7 +55,8 @@ import com.redhat.thermostat.shared.config.OS;
 import com.redhat.thermostat.storage.core.WriterID;
 
 /**
- * Implementation note: uses information from /proc/
+ * Implementation note: uses information from /proc/, limited to what the
+ * cgroup of the agent may use when it runs in a container.
  */
 public class MemoryStatBuilder {
 
@@ -60,21 +64,36 @@ public class MemoryStatBuilder {
 
     private static final boolean IS_LINUX = OS.IS_LINUX;
 
-    private static final String KEY_MEMORY_TOTAL = "MemTotal";
-    private static final String KEY_MEMORY_FREE = "MemFree";
-    private static final String KEY_BUFFERS = "Buffers";
-    private static final String KEY_CACHED = "Cached";
-    private static final String KEY_SWAP_TOTAL = "SwapTotal";
-    private static final String KEY_SWAP_FREE = "SwapFree";
-    private static final String KEY_COMMIT_LIMIT = "CommitLimit";
+    private static final int KEY_MEMORY_TOTAL = 0;
+    private static final int KEY_MEMORY_FREE = 1;
+    private static final int KEY_BUFFERS = 2;
+    private static final int KEY_CACHED = 3;
+    private static final int KEY_SWAP_TOTAL = 4;
+    private static final int KEY_SWAP_FREE = 5;
+    private static final int KEY_COMMIT_LIMIT = 6;
+    private static final byte[][] KEYS = {
+        ProcTokenizer.bytes("MemTotal"),
+        ProcTokenizer.bytes("MemFree"),
+        ProcTokenizer.bytes("Buffers"),
+        ProcTokenizer.bytes("Cached"),
+        ProcTokenizer.bytes("SwapTotal"),
+        ProcTokenizer.bytes("SwapFree"),
+        ProcTokenizer.bytes("CommitLimit"),
+    };
+    // /proc/meminfo uses kB instead of KiB, incorrectly
+    private static final byte[] UNIT_KB = ProcTokenizer.bytes("kB");
+    private static final byte[] UNIT_KB_UPPER = ProcTokenizer.bytes("KB");
 
     private static final Logger logger = LoggingUtils.getLogger(MemoryStatBuilder.class);
 
     private final ProcDataSource dataSource;
+    private final CgroupDataSource cgroupSource;
     private final WriterID writerId;
+    private final ProcTokenizer tokenizer = new ProcTokenizer();
 
-    public MemoryStatBuilder(ProcDataSource dataSource, WriterID writerId) {
+    public MemoryStatBuilder(ProcDataSource dataSource, CgroupDataSource cgroupSource, WriterID writerId) {
         this.dataSource = dataSource;
+        this.cgroupSource = cgroupSource;
         this.writerId = writerId;
     }
 
@@ -93,35 +112,63 @@ public class MemoryStatBuilder {
         long cached = UNAVAILABLE;
         long commitLimit = UNAVAILABLE;
 
-        try (BufferedReader reader = new BufferedReader(dataSource.getMemInfoReader())) {
-            String line = null;
-            while ((line = reader.readLine()) != null) {
-                String[] parts = line.split(":");
-                if (parts.length == 2) {
-                    String key = parts[0].trim();
-                    long value = getValue(parts[1].trim());
-                    if (key.equals(KEY_MEMORY_TOTAL)) {
+        try (ReadableByteChannel channel = dataSource.getMemInfoChannel()) {
+            ProcTokenizer t = tokenizer.load(channel);
+            while (t.nextLine()) {
+                int key = t.nextKey(KEYS, (byte) ':');
+                if (key < 0) {
+                    continue;
+                }
+                long value = getValue(t);
+                switch (key) {
+                    case KEY_MEMORY_TOTAL:
                         total = value;
-                    } else if (key.equals(KEY_MEMORY_FREE)) {
+                        break;
+                    case KEY_MEMORY_FREE:
                         free = value;
-                    } else if (key.equals(KEY_SWAP_TOTAL)) {
+                        break;
+                    case KEY_SWAP_TOTAL:
                         swapTotal = value;
-                    } else if (key.equals(KEY_SWAP_FREE)) {
+                        break;
+                    case KEY_SWAP_FREE:
                         swapFree = value;
-                    } else if (key.equals(KEY_BUFFERS)) {
+                        break;
+                    case KEY_BUFFERS:
                         buffers = value;
-                    } else if (key.equals(KEY_CACHED)) {
+                        break;
+                    case KEY_CACHED:
                         cached = value;
-                    } else if (key.equals(KEY_COMMIT_LIMIT)) {
+                        break;
+                    case KEY_COMMIT_LIMIT:
                         commitLimit = value;
-                    }
+                        break;
                 }
             }
         } catch (IOException ioe) {
             logger.log(Level.WARNING, "unable to read memory info");
         }
+
+        // /proc/meminfo is not virtualized and shows the memory of the host
+        if (cgroupSource.isContainerized()) {
+            long limit = cgroupSource.getMemoryLimit();
+            if (limit != CgroupDataSource.UNKNOWN && limit != CgroupDataSource.UNLIMITED
+                    && (total == UNAVAILABLE || limit < total)) {
+                long usage = cgroupSource.getMemoryUsage();
+                if (usage != CgroupDataSource.UNKNOWN) {
+                    total = limit;
+                    free = Math.max(0, limit - usage);
+                }
+            }
+        }
+
         String wId = writerId.getWriterID();
-        return new MemoryStat(wId, timestamp, total, free, buffers, cached, swapTotal, swapFree, commitLimit);
+        MemoryStat stat = new MemoryStat(wId, timestamp, total, free, buffers, cached, swapTotal, swapFree, commitLimit);
+        PressureStall pressure = cgroupSource.getPressure(PressureStall.Resource.MEMORY);
+        if (pressure != null) {
+            stat.setPressureSome(pressure.getSomeAvg10());
+            stat.setPressureFull(pressure.getFullAvg10());
+        }
+        return stat;
     }
 
 
@@ -134,25 +181,14 @@ public class MemoryStatBuilder {
         return new MemoryStat(wId, timestamp, memstat.getTotal(), memstat.getFree(), memstat.getBuffers(), memstat.getCached(), memstat.getSwapTotal(), memstat.getSwapFree(), memstat.getCommitLimit());
     }
 
-    private long getValue(String rawValue) {
-        String[] parts = rawValue.split(" +");
-        String value = rawValue;
-        String units = null;
-        if (parts.length > 1) {
-            value = parts[0];
-            units = parts[1];
-        }
-
+    private long getValue(ProcTokenizer t) {
         long result = UNAVAILABLE;
         try {
-            result = Long.parseLong(value);
-            if (units != null) {
-                // /proc/meminfo uses kB instead of KiB, incorrectly
-                if (units.equals("kB") || units.equals("KB")) {
-                    result = (long) new Size(result, Size.Unit.KiB).convertTo(Size.Unit.B).getValue();
-                } else {
-                    throw new NotImplementedException("unit conversion from " + units + " not implemented");
-                }
+            result = t.nextLong();
+            if (t.skip(UNIT_KB) || t.skip(UNIT_KB_UPPER)) {
+                result = (long) new Size(result, Size.Unit.KiB).convertTo(Size.Unit.B).getValue();
+            } else if (t.hasToken()) {
+                throw new NotImplementedException("unit conversion from " + t.nextString() + " not implemented");
             }
         } catch (NumberFormatException nfe) {
             logger.log(Level.WARNING, "error extracting memory info");
@@ -161,4 +197,3 @@ public class MemoryStatBuilder {
         return result;
     }
 }
-
@@ -42,6 +42,7 @@ import java.util.List;
 import java.util.logging.Logger;
 
 import com.redhat.thermostat.agent.http.HttpRequestService;
+import com.redhat.thermostat.agent.http.JsonPayloadWriter;
 import com.redhat.thermostat.common.config.experimental.ConfigurationInfoSource;
 import com.redhat.thermostat.common.plugin.PluginConfiguration;
 import com.redhat.thermostat.common.plugin.PluginDAOBase;
@@ -113,6 +114,12 @@ public class MemoryStatDAOImpl extends PluginDAOBase<MemoryStat, MemoryStatDAOIm
         return jsonHelper.toJson(Arrays.asList(obj));
     }
 
+    @Override
+    protected boolean writeJson(MemoryStat obj, JsonPayloadWriter out) {
+        jsonHelper.write(Arrays.asList(obj), out);
+        return true;
+    }
+
     @Override
     protected String getURL(String basepath) {
         return basepath + "/systems/" + systemID.getSystemID();
@@ -147,6 +154,10 @@ public class MemoryStatDAOImpl extends PluginDAOBase<MemoryStat, MemoryStatDAOIm
         String toJson(List<MemoryStat> infos) throws IOException {
             return typeAdapter.toJson(infos);
         }
+
+        void write(List<MemoryStat> infos, JsonPayloadWriter out) {
+            typeAdapter.write(out, infos);
+        }
     }
 
     // For Testing purposes
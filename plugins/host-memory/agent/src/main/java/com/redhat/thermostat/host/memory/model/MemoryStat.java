@@ -44,6 +44,8 @@ import com.redhat.thermostat.storage.model.TimeStampedPojo;
 @Entity
 public class MemoryStat extends BasePojo implements TimeStampedPojo {
 
+    public static final double UNKNOWN_PRESSURE = -1;
+
     private long timeStamp;
     private long total;
     private long free;
@@ -52,6 +54,8 @@ public class MemoryStat extends BasePojo implements TimeStampedPojo {
     private long swapTotal;
     private long swapFree;
     private long commitLimit;
+    private double pressureSome = UNKNOWN_PRESSURE;
+    private double pressureFull = UNKNOWN_PRESSURE;
 
     public MemoryStat() {
         super(null);
@@ -150,5 +154,32 @@ public class MemoryStat extends BasePojo implements TimeStampedPojo {
         this.commitLimit = commitLimit;
     }
 
-}
+    /**
+     * @return the percentage of the last ten seconds in which some tasks
+     * were stalled waiting for memory, or {@link #UNKNOWN_PRESSURE}
+     */
+    @Persist
+    public double getPressureSome() {
+        return pressureSome;
+    }
+
+    @Persist
+    public void setPressureSome(double pressureSome) {
+        this.pressureSome = pressureSome;
+    }
 
+    /**
+     * @return the percentage of the last ten seconds in which all tasks
+     * were stalled waiting for memory, or {@link #UNKNOWN_PRESSURE}
+     */
+    @Persist
+    public double getPressureFull() {
+        return pressureFull;
+    }
+
+    @Persist
+    public void setPressureFull(double pressureFull) {
+        this.pressureFull = pressureFull;
+    }
+
+}
@@ -39,6 +39,7 @@ package com.redhat.thermostat.host.memory.model;
 import com.google.gson.TypeAdapter;
 import com.google.gson.stream.JsonReader;
 import com.google.gson.stream.JsonWriter;
+import com.redhat.thermostat.agent.http.JsonPayloadWriter;
 
 import java.io.IOException;
 import java.util.List;
@@ -54,6 +55,8 @@ public class MemoryStatTypeAdapter extends TypeAdapter<List<MemoryStat>> {
     private static final String SWAP_TOTAL = "swapTotal";
     private static final String SWAP_FREE = "swapFree";
     private static final String COMMIT_LIMIT = "commitLimit";
+    private static final String PRESSURE_SOME = "pressureSome";
+    private static final String PRESSURE_FULL = "pressureFull";
     private static final String AGENT_ID = "agentId";
 
 
@@ -85,6 +88,15 @@ public class MemoryStatTypeAdapter extends TypeAdapter<List<MemoryStat>> {
         writeLong(out, stats.getSwapFree());
         out.name(COMMIT_LIMIT);
         writeLong(out, stats.getCommitLimit());
+        // pressure stall information needs a recent kernel
+        if (stats.getPressureSome() != MemoryStat.UNKNOWN_PRESSURE) {
+            out.name(PRESSURE_SOME);
+            out.value(stats.getPressureSome());
+        }
+        if (stats.getPressureFull() != MemoryStat.UNKNOWN_PRESSURE) {
+            out.name(PRESSURE_FULL);
+            out.value(stats.getPressureFull());
+        }
         out.name(AGENT_ID);
         out.value(stats.getAgentId());
         out.endObject();
@@ -98,6 +110,34 @@ public class MemoryStatTypeAdapter extends TypeAdapter<List<MemoryStat>> {
         out.endObject();
     }
 
+    /**
+     * Writes the same JSON as {@link #write(JsonWriter, List)}, without
+     * creating intermediate strings.
+     */
+    public void write(JsonPayloadWriter out, List<MemoryStat> stats) {
+        out.beginArray();
+        for (MemoryStat stat : stats) {
+            out.beginObject();
+            out.name(TIMESTAMP).numberLong(stat.getTimeStamp());
+            out.name(TOTAL).numberLong(stat.getTotal());
+            out.name(FREE).numberLong(stat.getFree());
+            out.name(BUFFERS).numberLong(stat.getBuffers());
+            out.name(CACHED).numberLong(stat.getCached());
+            out.name(SWAP_TOTAL).numberLong(stat.getSwapTotal());
+            out.name(SWAP_FREE).numberLong(stat.getSwapFree());
+            out.name(COMMIT_LIMIT).numberLong(stat.getCommitLimit());
+            if (stat.getPressureSome() != MemoryStat.UNKNOWN_PRESSURE) {
+                out.name(PRESSURE_SOME).value(stat.getPressureSome());
+            }
+            if (stat.getPressureFull() != MemoryStat.UNKNOWN_PRESSURE) {
+                out.name(PRESSURE_FULL).value(stat.getPressureFull());
+            }
+            out.name(AGENT_ID).value(stat.getAgentId());
+            out.endObject();
+        }
+        out.endArray();
+    }
+
     public List<MemoryStat> read(JsonReader in) throws IOException {
         return null;
     }
@@ -39,11 +39,17 @@ package com.redhat.thermostat.host.memory.agent.internal;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
@@ -51,7 +57,10 @@ import org.junit.Before;
 import org.junit.Test;
 import org.mockito.ArgumentCaptor;
 
+import com.redhat.thermostat.backend.PollingInterval;
+import com.redhat.thermostat.backend.PollingScheduler;
 import com.redhat.thermostat.common.Version;
+import com.redhat.thermostat.common.config.experimental.ConfigurationInfoSource;
 import com.redhat.thermostat.host.memory.model.MemoryStat;
 import com.redhat.thermostat.storage.core.WriterID;
 import org.osgi.framework.Bundle;
@@ -64,9 +73,10 @@ public class HostMemoryBackendTest {
     private MemoryStatDAO memoryStatDAO;
     private WriterID writerID;
     private Version version;
+    private Map<String, String> config;
 
     @Before
-    public void setup() {
+    public void setup() throws IOException {
         executor = mock(ScheduledExecutorService.class);
 
         version = mock(Version.class);
@@ -75,10 +85,14 @@ public class HostMemoryBackendTest {
         // these two are created via OSGI wiring
         memoryStatDAO = mock(MemoryStatDAO.class);
         writerID = mock(WriterID.class);
+        config = new HashMap<>();
+        ConfigurationInfoSource configSource = mock(ConfigurationInfoSource.class);
+        when(configSource.getConfiguration(anyString(), anyString())).thenReturn(config);
 
         backend = new HostMemoryBackend("Host Memory Backend", "Gathers memory statistics about a host", "Red Hat, Inc.", version, executor);
         backend.bindMemoryStatDAO(memoryStatDAO);
         backend.bindWriterID(writerID);
+        backend.bindConfigurationInfoSource(configSource);
     }
 
     @Test
@@ -100,6 +114,79 @@ public class HostMemoryBackendTest {
         verify(memoryStatDAO).put(any(MemoryStat.class));
     }
 
+    @Test
+    public void testConfiguredPollingInterval() {
+        config.put("pollingInterval", "5000");
+        backend.componentActivated(createBundleContext());
+        backend.activate();
+        verify(executor).scheduleAtFixedRate(any(Runnable.class), eq(0L), eq(5000L), eq(TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testLowFreeMemoryPollsMoreOften() {
+        Runnable tick = activateAdaptive();
+        backend.reportActivity(null, createStat(1000, 50));
+        tick.run();
+        verify(executor).schedule(tick, 100L, TimeUnit.MILLISECONDS);
+    }
+
+    @Test
+    public void testChangeInFreeMemoryPollsMoreOften() {
+        Runnable tick = activateAdaptive();
+        backend.reportActivity(createStat(1000, 800), createStat(1000, 600));
+        tick.run();
+        verify(executor).schedule(tick, 500L, TimeUnit.MILLISECONDS);
+    }
+
+    @Test
+    public void testSmallChangeInFreeMemoryIsQuiet() {
+        Runnable tick = activateAdaptive();
+        backend.reportActivity(createStat(1000, 800), createStat(1000, 790));
+        tick.run();
+        verify(executor).schedule(tick, 1000L, TimeUnit.MILLISECONDS);
+    }
+
+    @Test
+    public void testMemoryPressurePollsMoreOften() {
+        Runnable tick = activateAdaptive();
+        MemoryStat stat = createStat(1000, 800);
+        stat.setPressureSome(25.0);
+        backend.reportActivity(null, stat);
+        tick.run();
+        verify(executor).schedule(tick, 100L, TimeUnit.MILLISECONDS);
+    }
+
+    @Test
+    public void testPollsOnSharedScheduler() {
+        PollingScheduler scheduler = mock(PollingScheduler.class);
+        backend.bindPollingScheduler(scheduler);
+        backend.componentActivated(createBundleContext());
+        backend.activate();
+        verify(scheduler).scheduleAtFixedRate(eq("Host Memory Backend"), any(Runnable.class), eq(0L), eq(1000L), eq(TimeUnit.MILLISECONDS));
+        verify(executor, never()).scheduleAtFixedRate(any(Runnable.class), anyLong(), anyLong(), any(TimeUnit.class));
+    }
+
+    private Runnable activateAdaptive() {
+        backend.setPollingInterval(PollingInterval.adaptive(1000, 100, 8000));
+        backend.activate();
+        ArgumentCaptor<Runnable> captor = ArgumentCaptor.forClass(Runnable.class);
+        verify(executor).schedule(captor.capture(), eq(0L), eq(TimeUnit.MILLISECONDS));
+        return captor.getValue();
+    }
+
+    private MemoryStat createStat(long total, long free) {
+        return new MemoryStat("foo", 0, total, free, 0, 0, 0, 0, 0);
+    }
+
+    private BundleContext createBundleContext() {
+        org.osgi.framework.Version osgiVersion = mock(org.osgi.framework.Version.class);
+        Bundle bundle = mock(Bundle.class);
+        when(bundle.getVersion()).thenReturn(osgiVersion);
+        BundleContext ctx = mock(BundleContext.class);
+        when(ctx.getBundle()).thenReturn(bundle);
+        return ctx;
+    }
+
     @Test
     public void testDeactivate() {
         backend.activate();
@@ -43,14 +43,19 @@ import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.io.StringReader;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
 
 import com.redhat.thermostat.shared.config.OS;
 import org.junit.Assume;
 import org.junit.Before;
 import org.junit.Test;
 
+import com.redhat.thermostat.common.portability.linux.CgroupDataSource;
+import com.redhat.thermostat.common.portability.linux.PressureStall;
 import com.redhat.thermostat.common.portability.linux.ProcDataSource;
 import com.redhat.thermostat.host.memory.model.MemoryStat;
 import com.redhat.thermostat.storage.core.WriterID;
@@ -60,15 +65,19 @@ public class MemoryStatBuilderTest {
     private static final int KILOBYTES_TO_BYTES = 1024;
     
     private WriterID writerId;
+    private CgroupDataSource cgroupSource;
     
     @Before
     public void setup() {
         writerId = mock(WriterID.class);
+        cgroupSource = mock(CgroupDataSource.class);
+        when(cgroupSource.getMemoryLimit()).thenReturn(CgroupDataSource.UNLIMITED);
+        when(cgroupSource.getMemoryUsage()).thenReturn(CgroupDataSource.UNKNOWN);
     }
 
     @Test
     public void testSimpleBuild() {
-        MemoryStat stat = new MemoryStatBuilder(new ProcDataSource(), writerId).build();
+        MemoryStat stat = new MemoryStatBuilder(new ProcDataSource(), new CgroupDataSource(), writerId).build();
         assertNotNull(stat);
         assertTrue(stat.getFree() <= stat.getTotal());
         assertTrue(stat.getSwapFree() <= stat.getSwapTotal());
@@ -78,13 +87,13 @@ public class MemoryStatBuilderTest {
     public void testEmptyBuild() throws IOException {
         Assume.assumeTrue(OS.IS_LINUX);
         String memory = "";
-        StringReader memoryReader = new StringReader(memory);
+        ReadableByteChannel memoryChannel = channel(memory);
         ProcDataSource dataSource = mock(ProcDataSource.class);
-        when(dataSource.getMemInfoReader()).thenReturn(memoryReader);
+        when(dataSource.getMemInfoChannel()).thenReturn(memoryChannel);
 
-        MemoryStat stat = new MemoryStatBuilder(dataSource, writerId).build();
+        MemoryStat stat = new MemoryStatBuilder(dataSource, cgroupSource, writerId).build();
         assertNotNull(stat);
-        verify(dataSource).getMemInfoReader();
+        verify(dataSource).getMemInfoChannel();
     }
 
     @Test
@@ -108,11 +117,11 @@ public class MemoryStatBuilderTest {
                 "SwapTotal: " + SWAP_TOTAL + " kB\n" +
                 "SwapFree: " + SWAP_FREE + " kB\n";
 
-        StringReader memoryReader = new StringReader(memory);
+        ReadableByteChannel memoryChannel = channel(memory);
         ProcDataSource dataSource = mock(ProcDataSource.class);
-        when(dataSource.getMemInfoReader()).thenReturn(memoryReader);
+        when(dataSource.getMemInfoChannel()).thenReturn(memoryChannel);
 
-        MemoryStat stat = new MemoryStatBuilder(dataSource, writerId).build();
+        MemoryStat stat = new MemoryStatBuilder(dataSource, cgroupSource, writerId).build();
 
         assertEquals(BUFFERS * KILOBYTES_TO_BYTES, stat.getBuffers());
         assertEquals(CACHED * KILOBYTES_TO_BYTES, stat.getCached());
@@ -123,7 +132,70 @@ public class MemoryStatBuilderTest {
         assertEquals(TOTAL * KILOBYTES_TO_BYTES, stat.getTotal());
         assertTrue(stat.getTimeStamp() != 0 && stat.getTimeStamp() != Long.MIN_VALUE);
         assertTrue(stat.getTimeStamp() <= System.currentTimeMillis());
-        verify(dataSource).getMemInfoReader();
+        verify(dataSource).getMemInfoChannel();
     }
-}
 
+    @Test
+    public void testBuildLimitedByCgroup() throws IOException {
+        Assume.assumeTrue(OS.IS_LINUX);
+        String memory = "" +
+                "MemTotal: 1000 kB\n" +
+                "MemFree: 900 kB\n";
+        ProcDataSource dataSource = mock(ProcDataSource.class);
+        when(dataSource.getMemInfoChannel()).thenReturn(channel(memory));
+        when(cgroupSource.isContainerized()).thenReturn(true);
+        when(cgroupSource.getMemoryLimit()).thenReturn(100l * KILOBYTES_TO_BYTES);
+        when(cgroupSource.getMemoryUsage()).thenReturn(40l * KILOBYTES_TO_BYTES);
+        when(cgroupSource.getPressure(PressureStall.Resource.MEMORY))
+                .thenReturn(new PressureStall(1.5, 2, 3, 100, 0.5, 1, 1, 10));
+
+        MemoryStat stat = new MemoryStatBuilder(dataSource, cgroupSource, writerId).build();
+
+        assertEquals(100 * KILOBYTES_TO_BYTES, stat.getTotal());
+        assertEquals(60 * KILOBYTES_TO_BYTES, stat.getFree());
+        assertEquals(1.5, stat.getPressureSome(), 0.0);
+        assertEquals(0.5, stat.getPressureFull(), 0.0);
+    }
+
+    @Test
+    public void testCgroupLimitAboveHostMemoryIsIgnored() throws IOException {
+        Assume.assumeTrue(OS.IS_LINUX);
+        String memory = "" +
+                "MemTotal: 1000 kB\n" +
+                "MemFree: 900 kB\n";
+        ProcDataSource dataSource = mock(ProcDataSource.class);
+        when(dataSource.getMemInfoChannel()).thenReturn(channel(memory));
+        when(cgroupSource.isContainerized()).thenReturn(true);
+        when(cgroupSource.getMemoryLimit()).thenReturn(2000l * KILOBYTES_TO_BYTES);
+        when(cgroupSource.getMemoryUsage()).thenReturn(40l * KILOBYTES_TO_BYTES);
+
+        MemoryStat stat = new MemoryStatBuilder(dataSource, cgroupSource, writerId).build();
+
+        assertEquals(1000 * KILOBYTES_TO_BYTES, stat.getTotal());
+        assertEquals(900 * KILOBYTES_TO_BYTES, stat.getFree());
+        assertEquals(MemoryStat.UNKNOWN_PRESSURE, stat.getPressureSome(), 0.0);
+    }
+
+    @Test
+    public void testCgroupLimitOutsideContainerIsIgnored() throws IOException {
+        Assume.assumeTrue(OS.IS_LINUX);
+        String memory = "" +
+                "MemTotal: 1000 kB\n" +
+                "MemFree: 900 kB\n";
+        ProcDataSource dataSource = mock(ProcDataSource.class);
+        when(dataSource.getMemInfoChannel()).thenReturn(channel(memory));
+        when(cgroupSource.isContainerized()).thenReturn(false);
+        when(cgroupSource.getMemoryLimit()).thenReturn(100l * KILOBYTES_TO_BYTES);
+        when(cgroupSource.getMemoryUsage()).thenReturn(40l * KILOBYTES_TO_BYTES);
+
+        MemoryStat stat = new MemoryStatBuilder(dataSource, cgroupSource, writerId).build();
+
+        assertEquals(1000 * KILOBYTES_TO_BYTES, stat.getTotal());
+        assertEquals(900 * KILOBYTES_TO_BYTES, stat.getFree());
+    }
+
+    private static ReadableByteChannel channel(String contents) {
+        return Channels.newChannel(new ByteArrayInputStream(contents.getBytes(StandardCharsets.US_ASCII)));
+    }
+
+}
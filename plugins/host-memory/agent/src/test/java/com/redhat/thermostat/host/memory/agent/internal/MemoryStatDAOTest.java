@@ -36,9 +36,12 @@
 
 package com.redhat.thermostat.host.memory.agent.internal;
 
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyListOf;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -49,8 +52,12 @@ import java.util.Map;
 
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 
 import com.redhat.thermostat.agent.http.HttpRequestService;
+import com.redhat.thermostat.agent.http.JsonPayloadWriter;
 import com.redhat.thermostat.common.Clock;
 import com.redhat.thermostat.common.SystemClock;
 import com.redhat.thermostat.common.config.experimental.ConfigurationInfoSource;
@@ -61,7 +68,7 @@ import com.redhat.thermostat.host.memory.model.MemoryStat;
 public class MemoryStatDAOTest {
 
     private static final String URL = "http://localhost:26000/api/system-memory/0.0.1";
-    private static final String SOME_JSON = "{\"some\" : \"json\"}";
+    private static final String SOME_JSON = "{\"some\":\"json\"}";
     private static final String HOST_NAME = "somehostname";
 
     private static final String URL_PROP = "gatewayURL";
@@ -79,7 +86,14 @@ public class MemoryStatDAOTest {
         this.info = new MemoryStat("foo-agent", clock.getRealTimeMillis(), 0, 0, 0, 0, 0, 0, 0);
 
         this.jsonHelper = mock(MemoryStatDAOImpl.JsonHelper.class);
-        when(jsonHelper.toJson(anyListOf(MemoryStat.class))).thenReturn(SOME_JSON);
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                JsonPayloadWriter out = (JsonPayloadWriter) invocation.getArguments()[1];
+                out.beginObject().name("some").value("json").endObject();
+                return null;
+            }
+        }).when(jsonHelper).write(anyListOf(MemoryStat.class), any(JsonPayloadWriter.class));
 
         cfiSource = mock(ConfigurationInfoSource.class);
         Map<String, String> map = new HashMap<>();
@@ -104,7 +118,9 @@ public class MemoryStatDAOTest {
         dao.activate();
         dao.put(info);
 
-        verify(httpRequestService, times(1)).sendHttpRequest(SOME_JSON, URL + "/systems/" + HOST_NAME, HttpRequestService.POST);
+        ArgumentCaptor<JsonPayloadWriter> jsonCaptor = ArgumentCaptor.forClass(JsonPayloadWriter.class);
+        verify(httpRequestService, times(1)).queueHttpPost(jsonCaptor.capture(), eq(URL + "/systems/" + HOST_NAME));
+        assertEquals(SOME_JSON, jsonCaptor.getValue().toString());
     }
 }
 
@@ -39,8 +39,10 @@ package com.redhat.thermostat.host.memory.model;
 import com.google.gson.GsonBuilder;
 import com.google.gson.Gson;
 import com.google.gson.reflect.TypeToken;
+import com.redhat.thermostat.agent.http.JsonPayloadWriter;
 import org.junit.Test;
 
+import java.io.IOException;
 import java.lang.reflect.Type;
 import java.util.ArrayList;
 import java.util.List;
@@ -71,6 +73,35 @@ public class MemoryStatTypeAdapterTest {
                 gson.toJson(stats, memoryStatListType));
     }
 
+    @Test
+    public void testStreamingWriteMatchesTypeAdapter() throws IOException {
+        List<MemoryStat> stats = new ArrayList<>();
+        stats.add(new MemoryStat("1", 123l, 456l, 789l, 101112l, 131415l,
+                161718l, 192021l, 222324l));
+        stats.add(new MemoryStat("2", 1l, 2l, 3l, 4l, 5l,6l, 7l, 8l));
+        MemoryStatTypeAdapter typeAdapter = new MemoryStatTypeAdapter();
+        JsonPayloadWriter out = new JsonPayloadWriter();
+        typeAdapter.write(out, stats);
+        assertEquals(typeAdapter.toJson(stats), out.toString());
+    }
+
+    @Test
+    public void testPressureIsSerializedWhenKnown() throws IOException {
+        MemoryStat stat = new MemoryStat("1", 1l, 2l, 3l, 4l, 5l, 6l, 7l, 8l);
+        stat.setPressureSome(1.5);
+        stat.setPressureFull(0.25);
+        List<MemoryStat> stats = new ArrayList<>();
+        stats.add(stat);
+        MemoryStatTypeAdapter typeAdapter = new MemoryStatTypeAdapter();
+        String json = typeAdapter.toJson(stats);
+        assertEquals("[{\"timeStamp\":{\"$numberLong\":\"1\"},\"total\":{\"$numberLong\":\"2\"},\"free\":{\"$numberLong\":\"3\"},\"buffers\":{\"$numberLong\":\"4\"},\"cached\":{\"$numberLong\":\"5\"},\"swapTotal\":{\"$numberLong\":\"6\"},\"swapFree\":{\"$numberLong\":\"7\"},\"commitLimit\":{\"$numberLong\":\"8\"},\"pressureSome\":1.5,\"pressureFull\":0.25,\"agentId\":\"1\"}]",
+                json);
+
+        JsonPayloadWriter out = new JsonPayloadWriter();
+        typeAdapter.write(out, stats);
+        assertEquals(json, out.toString());
+    }
+
     @Test
     public void testMultipleMemoryStatsGetSerializedCorrectly() {
         GsonBuilder builder = new GsonBuilder();
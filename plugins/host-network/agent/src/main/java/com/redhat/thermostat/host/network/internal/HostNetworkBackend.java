@@ -37,17 +37,23 @@
 package com.redhat.thermostat.host.network.internal;
 
 import java.util.List;
-import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 
 import com.redhat.thermostat.backend.Backend;
 import com.redhat.thermostat.backend.HostPollingAction;
 import com.redhat.thermostat.backend.HostPollingBackend;
+import com.redhat.thermostat.backend.PollingInterval;
+import com.redhat.thermostat.backend.PollingScheduler;
 import com.redhat.thermostat.common.Version;
 import com.redhat.thermostat.common.Clock;
 import com.redhat.thermostat.common.SystemClock;
+import com.redhat.thermostat.common.config.experimental.ConfigurationInfoSource;
+import com.redhat.thermostat.common.plugin.PluginConfiguration;
+import com.redhat.thermostat.common.portability.linux.ProcDataSource;
 import com.redhat.thermostat.host.network.model.NetworkInfoList;
 import com.redhat.thermostat.host.network.model.NetworkInterfaceInfo;
+import com.redhat.thermostat.host.network.model.NetworkStatList;
+import com.redhat.thermostat.shared.config.OS;
 import com.redhat.thermostat.storage.core.WriterID;
 
 import org.apache.felix.scr.annotations.Activate;
@@ -61,17 +67,26 @@ import org.osgi.framework.BundleContext;
 @Service(value = Backend.class)
 public class HostNetworkBackend extends HostPollingBackend {
 
-    private final long procCheckInterval = 1000; // TODO make this configurable.
     private final Clock clock;
 
     @Reference
     private NetworkInfoListDAO networkInterfaceInfoDAO;
 
+    @Reference
+    private NetworkStatListDAO networkStatDAO;
+
     @Reference
     private WriterID writerID;
 
+    @Reference
+    private ConfigurationInfoSource configurationInfoSource;
+
+    @Reference
+    private PollingScheduler pollingScheduler;
+
     public HostNetworkBackend() {
-        this(Executors.newSingleThreadScheduledExecutor());
+        // Polls on the agent's shared scheduler
+        this((ScheduledExecutorService) null);
     }
 
     private HostNetworkBackend(ScheduledExecutorService executor) {
@@ -89,7 +104,13 @@ public class HostNetworkBackend extends HostPollingBackend {
     public void componentActivated(BundleContext context) {
         Version version = new Version(context.getBundle());
         setVersion(version.getVersionNumber());
+        PluginConfiguration config = new PluginConfiguration(configurationInfoSource, NetworkInfoListDAOImpl.PLUGIN_ID);
+        setPollingInterval(config.getPollingInterval(PollingInterval.DEFAULT));
+        setPollingScheduler(pollingScheduler);
         registerAction(new BackendAction(writerID, clock, networkInterfaceInfoDAO));
+        if (OS.IS_LINUX) {
+            registerAction(new StatAction(new NetworkStatBuilder(clock, new ProcDataSource(), writerID), networkStatDAO));
+        }
     }
 
     @Deactivate
@@ -127,6 +148,33 @@ public class HostNetworkBackend extends HostPollingBackend {
 
     }
 
+    static class StatAction implements HostPollingAction {
+
+        private final NetworkStatBuilder builder;
+        private final NetworkStatListDAO dao;
+
+        StatAction(NetworkStatBuilder builder, NetworkStatListDAO dao) {
+            this.builder = builder;
+            this.dao = dao;
+        }
+
+        @Override
+        public void run() {
+            NetworkStatList stats = builder.build();
+            if (stats != null) {
+                dao.put(stats);
+            }
+        }
+    }
+
+    void bindConfigurationInfoSource(ConfigurationInfoSource source) {
+        this.configurationInfoSource = source;
+    }
+
+    void bindPollingScheduler(PollingScheduler scheduler) {
+        this.pollingScheduler = scheduler;
+    }
+
     @Override
     public int getOrderValue() {
         return ORDER_DEFAULT_GROUP;
@@ -112,7 +112,7 @@ public class NetworkInfoListDAOImpl extends PluginDAOBase<NetworkInfoList, Netwo
 
     @Override
     protected Logger getLogger() {
-        return null;
+        return logger;
     }
 
     // DS bind method
@@ -0,0 +1,225 @@
+/*
+ * Copyright 2012-2017 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+package com.redhat.thermostat.host.network.internal;
+
+import java.io.IOException;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.redhat.thermostat.common.Clock;
+import com.redhat.thermostat.common.portability.linux.ProcDataSource;
+import com.redhat.thermostat.common.portability.linux.ProcTokenizer;
+import com.redhat.thermostat.common.utils.LoggingUtils;
+import com.redhat.thermostat.host.network.model.NetworkInterfaceStat;
+import com.redhat.thermostat.host.network.model.NetworkStatList;
+import com.redhat.thermostat.storage.core.WriterID;
+
+/**
+ * Turns the counters in {@code /proc/net/dev} into rates per second.
+ */
+class NetworkStatBuilder {
+
+    private static final Logger logger = LoggingUtils.getLogger(NetworkStatBuilder.class);
+
+    private static final int RX_BYTES = 0;
+    private static final int RX_PACKETS = 1;
+    private static final int RX_ERRORS = 2;
+    private static final int RX_DROPS = 3;
+    private static final int TX_BYTES = 4;
+    private static final int TX_PACKETS = 5;
+    private static final int TX_ERRORS = 6;
+    private static final int TX_DROPS = 7;
+    private static final int COUNTERS = 8;
+
+    // bytes, packets, errs and drop are followed by fifo, frame, compressed
+    // and multicast for receive, and by fifo, colls, carrier and compressed
+    // for transmit
+    private static final int SKIPPED_COLUMNS = 4;
+
+    private final Clock clock;
+    private final ProcDataSource dataSource;
+    private final WriterID writerId;
+    private final ProcTokenizer tokenizer = new ProcTokenizer();
+
+    private final List<Interface> interfaces = new ArrayList<>();
+    private byte[][] names = new byte[0][];
+    private long previousTime;
+    private boolean initialized = false;
+
+    NetworkStatBuilder(Clock clock, ProcDataSource dataSource, WriterID writerId) {
+        this.clock = clock;
+        this.dataSource = dataSource;
+        this.writerId = writerId;
+    }
+
+    /**
+     * @return the rates since the previous call, or null on the first call
+     * or if the counters could not be read
+     */
+    NetworkStatList build() {
+        long timeStamp = clock.getRealTimeMillis();
+        long time = clock.getMonotonicTimeNanos();
+        if (!readCounters()) {
+            return null;
+        }
+
+        NetworkStatList result = null;
+        if (initialized) {
+            double timeDelta = (time - previousTime) * 1E-9;
+            List<NetworkInterfaceStat> stats = new ArrayList<>(interfaces.size());
+            for (Interface iface : interfaces) {
+                if (iface.hasPrevious) {
+                    stats.add(iface.toStat(timeDelta));
+                }
+            }
+            result = new NetworkStatList(writerId.getWriterID(), timeStamp, stats);
+        }
+
+        for (Interface iface : interfaces) {
+            iface.rollOver();
+        }
+        previousTime = time;
+        initialized = true;
+        return result;
+    }
+
+    private boolean readCounters() {
+        for (Interface iface : interfaces) {
+            iface.seen = false;
+        }
+        try (ReadableByteChannel channel = dataSource.getNetDevChannel()) {
+            ProcTokenizer t = tokenizer.load(channel);
+            while (t.nextLine()) {
+                int index = t.nextKey(names, (byte) ':');
+                if (index < 0) {
+                    t.rewindLine();
+                    String name = t.nextKey((byte) ':');
+                    if (name == null) {
+                        // one of the header lines
+                        continue;
+                    }
+                    index = addInterface(name);
+                }
+                Interface iface = interfaces.get(index);
+                long[] counters = iface.current;
+                for (int i = RX_BYTES; i <= RX_DROPS; i++) {
+                    counters[i] = t.nextLong();
+                }
+                for (int i = 0; i < SKIPPED_COLUMNS; i++) {
+                    t.skipToken();
+                }
+                for (int i = TX_BYTES; i <= TX_DROPS; i++) {
+                    counters[i] = t.nextLong();
+                }
+                iface.seen = true;
+            }
+        } catch (IOException | NumberFormatException e) {
+            logger.log(Level.WARNING, "error reading network statistics", e);
+            return false;
+        }
+        removeMissingInterfaces();
+        return true;
+    }
+
+    private int addInterface(String name) {
+        interfaces.add(new Interface(name));
+        updateNames();
+        return interfaces.size() - 1;
+    }
+
+    private void removeMissingInterfaces() {
+        boolean removed = false;
+        for (Iterator<Interface> iter = interfaces.iterator(); iter.hasNext();) {
+            if (!iter.next().seen) {
+                iter.remove();
+                removed = true;
+            }
+        }
+        if (removed) {
+            updateNames();
+        }
+    }
+
+    private void updateNames() {
+        names = new byte[interfaces.size()][];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = interfaces.get(i).key;
+        }
+    }
+
+    private static class Interface {
+        private final String name;
+        private final byte[] key;
+        private final long[] previous = new long[COUNTERS];
+        private final long[] current = new long[COUNTERS];
+        private boolean hasPrevious = false;
+        private boolean seen;
+
+        Interface(String name) {
+            this.name = name;
+            this.key = ProcTokenizer.bytes(name);
+        }
+
+        NetworkInterfaceStat toStat(double timeDelta) {
+            NetworkInterfaceStat stat = new NetworkInterfaceStat(name);
+            stat.setRxBytes(rate(RX_BYTES, timeDelta));
+            stat.setRxPackets(rate(RX_PACKETS, timeDelta));
+            stat.setRxErrors(rate(RX_ERRORS, timeDelta));
+            stat.setRxDrops(rate(RX_DROPS, timeDelta));
+            stat.setTxBytes(rate(TX_BYTES, timeDelta));
+            stat.setTxPackets(rate(TX_PACKETS, timeDelta));
+            stat.setTxErrors(rate(TX_ERRORS, timeDelta));
+            stat.setTxDrops(rate(TX_DROPS, timeDelta));
+            return stat;
+        }
+
+        private double rate(int counter, double timeDelta) {
+            long delta = current[counter] - previous[counter];
+            // counters go back to zero when a driver is reloaded
+            return delta < 0 ? 0.0 : delta / timeDelta;
+        }
+
+        void rollOver() {
+            System.arraycopy(current, 0, previous, 0, COUNTERS);
+            hasPrevious = true;
+        }
+    }
+}
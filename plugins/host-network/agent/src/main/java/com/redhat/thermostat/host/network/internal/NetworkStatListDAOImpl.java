@@ -0,0 +1,161 @@
+/*
+ * Copyright 2012-2017 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+package com.redhat.thermostat.host.network.internal;
+
+import java.io.IOException;
+import java.util.logging.Logger;
+
+import com.redhat.thermostat.agent.http.HttpRequestService;
+import com.redhat.thermostat.agent.http.JsonPayloadWriter;
+import com.redhat.thermostat.common.config.experimental.ConfigurationInfoSource;
+import com.redhat.thermostat.common.plugin.PluginConfiguration;
+import com.redhat.thermostat.common.plugin.PluginDAOBase;
+import com.redhat.thermostat.common.plugin.SystemID;
+import com.redhat.thermostat.host.network.model.NetworkStatList;
+import com.redhat.thermostat.host.network.model.NetworkStatListTypeAdapter;
+
+import org.apache.felix.scr.annotations.Activate;
+import org.apache.felix.scr.annotations.Component;
+import org.apache.felix.scr.annotations.Reference;
+import org.apache.felix.scr.annotations.Service;
+
+import com.redhat.thermostat.common.utils.LoggingUtils;
+
+@Component
+@Service(value = NetworkStatListDAO.class)
+public class NetworkStatListDAOImpl extends PluginDAOBase<NetworkStatList, NetworkStatListDAOImpl> implements NetworkStatListDAO {
+
+    private static final Logger logger = LoggingUtils.getLogger(NetworkStatListDAOImpl.class);
+
+    private final ConfigurationCreator configCreator;
+    private PluginConfiguration config;
+
+    private final JsonHelper jsonHelper;
+
+    @Reference
+    private SystemID systemID;
+
+    @Reference
+    private HttpRequestService httpRequestService;
+
+    @Reference
+    private ConfigurationInfoSource configurationInfoSource;
+
+    public NetworkStatListDAOImpl() {
+        this(new JsonHelper(new NetworkStatListTypeAdapter()), new ConfigurationCreator());
+    }
+
+    NetworkStatListDAOImpl(JsonHelper jsonHelper, ConfigurationCreator creator) {
+        this.jsonHelper = jsonHelper;
+        this.configCreator = creator;
+    }
+
+    @Activate
+    void activate() {
+        config = configCreator.create(configurationInfoSource);
+    }
+
+    @Override
+    protected String toJsonString(NetworkStatList obj) throws IOException {
+        return jsonHelper.toJson(obj);
+    }
+
+    @Override
+    protected boolean writeJson(NetworkStatList obj, JsonPayloadWriter out) {
+        jsonHelper.write(obj, out);
+        return true;
+    }
+
+    @Override
+    protected HttpRequestService getHttpRequestService() {
+        return httpRequestService;
+    }
+
+    @Override
+    protected PluginConfiguration getConfig() {
+        return config;
+    }
+
+    @Override
+    protected String getURL(String basepath) {
+        return basepath + "/systems/" + systemID.getSystemID() + "/stats";
+    }
+
+    @Override
+    protected Logger getLogger() {
+        return logger;
+    }
+
+    // DS bind method
+    void bindSystemID(SystemID systemid) {
+        this.systemID = systemid;
+    }
+
+    void bindConfigurationInfoSource(ConfigurationInfoSource cfg) {
+        this.configurationInfoSource = cfg;
+    }
+
+    void bindHttpRequestService(HttpRequestService httpRequestService) {
+        this.httpRequestService = httpRequestService;
+    }
+
+    // For testing purposes
+    static class JsonHelper {
+
+        private final NetworkStatListTypeAdapter typeAdapter;
+
+        JsonHelper(NetworkStatListTypeAdapter typeAdapter) {
+            this.typeAdapter = typeAdapter;
+        }
+
+        String toJson(NetworkStatList stats) throws IOException {
+            return typeAdapter.toJson(stats);
+        }
+
+        void write(NetworkStatList stats, JsonPayloadWriter out) {
+            typeAdapter.write(out, stats);
+        }
+    }
+
+    // For Testing purposes
+    static class ConfigurationCreator {
+
+        PluginConfiguration create(ConfigurationInfoSource source) {
+            return new PluginConfiguration(source, NetworkInfoListDAOImpl.PLUGIN_ID);
+        }
+    }
+}
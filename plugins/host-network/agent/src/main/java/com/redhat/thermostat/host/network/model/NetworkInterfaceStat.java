@@ -0,0 +1,203 @@
+/*
+ * Copyright 2012-2017 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+package com.redhat.thermostat.host.network.model;
+
+import java.util.Objects;
+
+import com.redhat.thermostat.storage.core.Entity;
+import com.redhat.thermostat.storage.core.Persist;
+
+/**
+ * The traffic of one network interface, as rates per second since the
+ * previous sample.
+ */
+@Entity
+public class NetworkInterfaceStat {
+
+    private String iFace;
+    private double rxBytes;
+    private double rxPackets;
+    private double rxErrors;
+    private double rxDrops;
+    private double txBytes;
+    private double txPackets;
+    private double txErrors;
+    private double txDrops;
+
+    public NetworkInterfaceStat(String iFace) {
+        this.iFace = iFace;
+    }
+
+    @Persist
+    public String getInterfaceName() {
+        return iFace;
+    }
+
+    @Persist
+    public void setInterfaceName(String iFace) {
+        this.iFace = iFace;
+    }
+
+    /**
+     * @return bytes received per second
+     */
+    @Persist
+    public double getRxBytes() {
+        return rxBytes;
+    }
+
+    @Persist
+    public void setRxBytes(double rxBytes) {
+        this.rxBytes = rxBytes;
+    }
+
+    /**
+     * @return packets received per second
+     */
+    @Persist
+    public double getRxPackets() {
+        return rxPackets;
+    }
+
+    @Persist
+    public void setRxPackets(double rxPackets) {
+        this.rxPackets = rxPackets;
+    }
+
+    /**
+     * @return receive errors per second
+     */
+    @Persist
+    public double getRxErrors() {
+        return rxErrors;
+    }
+
+    @Persist
+    public void setRxErrors(double rxErrors) {
+        this.rxErrors = rxErrors;
+    }
+
+    /**
+     * @return received packets dropped per second
+     */
+    @Persist
+    public double getRxDrops() {
+        return rxDrops;
+    }
+
+    @Persist
+    public void setRxDrops(double rxDrops) {
+        this.rxDrops = rxDrops;
+    }
+
+    /**
+     * @return bytes transmitted per second
+     */
+    @Persist
+    public double getTxBytes() {
+        return txBytes;
+    }
+
+    @Persist
+    public void setTxBytes(double txBytes) {
+        this.txBytes = txBytes;
+    }
+
+    /**
+     * @return packets transmitted per second
+     */
+    @Persist
+    public double getTxPackets() {
+        return txPackets;
+    }
+
+    @Persist
+    public void setTxPackets(double txPackets) {
+        this.txPackets = txPackets;
+    }
+
+    /**
+     * @return transmit errors per second
+     */
+    @Persist
+    public double getTxErrors() {
+        return txErrors;
+    }
+
+    @Persist
+    public void setTxErrors(double txErrors) {
+        this.txErrors = txErrors;
+    }
+
+    /**
+     * @return transmitted packets dropped per second
+     */
+    @Persist
+    public double getTxDrops() {
+        return txDrops;
+    }
+
+    @Persist
+    public void setTxDrops(double txDrops) {
+        this.txDrops = txDrops;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(iFace, rxBytes, rxPackets, rxErrors, rxDrops, txBytes, txPackets, txErrors, txDrops);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj)
+            return true;
+        if (obj == null)
+            return false;
+        if (getClass() != obj.getClass())
+            return false;
+        NetworkInterfaceStat other = (NetworkInterfaceStat) obj;
+        return Objects.equals(iFace, other.iFace)
+                && rxBytes == other.rxBytes
+                && rxPackets == other.rxPackets
+                && rxErrors == other.rxErrors
+                && rxDrops == other.rxDrops
+                && txBytes == other.txBytes
+                && txPackets == other.txPackets
+                && txErrors == other.txErrors
+                && txDrops == other.txDrops;
+    }
+}
@@ -0,0 +1,259 @@
+/*
+ * Copyright 2012-2017 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+package com.redhat.thermostat.host.network.model;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import com.redhat.thermostat.agent.http.JsonPayloadWriter;
+
+public class NetworkStatListTypeAdapter extends TypeAdapter<NetworkStatList> {
+
+    private static final String AGENT_ID = "agentId";
+    private static final String TIMESTAMP = "timeStamp";
+    private static final String INTERFACE_LIST = "interfaces";
+    private static final String INTERFACE_NAME = "interfaceName";
+    private static final String RX_BYTES = "rxBytes";
+    private static final String RX_PACKETS = "rxPackets";
+    private static final String RX_ERRORS = "rxErrors";
+    private static final String RX_DROPS = "rxDrops";
+    private static final String TX_BYTES = "txBytes";
+    private static final String TX_PACKETS = "txPackets";
+    private static final String TX_ERRORS = "txErrors";
+    private static final String TX_DROPS = "txDrops";
+    private static final String RESPONSE_ROOT = "response";
+    private static final String SERVER_TIME = "time";
+    private static final String TYPE_LONG = "$numberLong";
+
+    @Override
+    public void write(final JsonWriter out, final NetworkStatList value) throws IOException {
+        out.beginObject();
+
+        out.name(AGENT_ID);
+        out.value(value.getAgentId());
+
+        out.name(TIMESTAMP);
+        writeLong(out, value.getTimeStamp());
+
+        out.name(INTERFACE_LIST);
+        out.beginArray();
+        for (NetworkInterfaceStat stat : value.getList()) {
+            out.beginObject();
+            out.name(INTERFACE_NAME).value(stat.getInterfaceName());
+            out.name(RX_BYTES).value(stat.getRxBytes());
+            out.name(RX_PACKETS).value(stat.getRxPackets());
+            out.name(RX_ERRORS).value(stat.getRxErrors());
+            out.name(RX_DROPS).value(stat.getRxDrops());
+            out.name(TX_BYTES).value(stat.getTxBytes());
+            out.name(TX_PACKETS).value(stat.getTxPackets());
+            out.name(TX_ERRORS).value(stat.getTxErrors());
+            out.name(TX_DROPS).value(stat.getTxDrops());
+            out.endObject();
+        }
+        out.endArray();
+
+        out.endObject();
+    }
+
+    /**
+     * Writes the same JSON as {@link #write(JsonWriter, NetworkStatList)},
+     * without creating intermediate strings.
+     */
+    public void write(final JsonPayloadWriter out, final NetworkStatList value) {
+        out.beginObject();
+        out.name(AGENT_ID).value(value.getAgentId());
+        out.name(TIMESTAMP).numberLong(value.getTimeStamp());
+        out.name(INTERFACE_LIST);
+        out.beginArray();
+        for (NetworkInterfaceStat stat : value.getList()) {
+            out.beginObject();
+            out.name(INTERFACE_NAME).value(stat.getInterfaceName());
+            out.name(RX_BYTES).value(stat.getRxBytes());
+            out.name(RX_PACKETS).value(stat.getRxPackets());
+            out.name(RX_ERRORS).value(stat.getRxErrors());
+            out.name(RX_DROPS).value(stat.getRxDrops());
+            out.name(TX_BYTES).value(stat.getTxBytes());
+            out.name(TX_PACKETS).value(stat.getTxPackets());
+            out.name(TX_ERRORS).value(stat.getTxErrors());
+            out.name(TX_DROPS).value(stat.getTxDrops());
+            out.endObject();
+        }
+        out.endArray();
+        out.endObject();
+    }
+
+    @Override
+    public NetworkStatList read(final JsonReader in) throws IOException {
+        NetworkStatList stats = null;
+
+        try {
+            // Parse root object
+            in.beginObject();
+            while (in.hasNext()) {
+                String name = in.nextName();
+                switch (name) {
+                    case RESPONSE_ROOT:
+                        stats = readResponse(in);
+                        break;
+                    case SERVER_TIME:
+                        in.nextString();
+                        break;
+                    default:
+                        throw new IOException("Unexpected JSON name in gateway response: '" + name + "'");
+                }
+            }
+            in.endObject();
+        } catch (IllegalStateException e) {
+            throw new IOException("Reading JSON response from web gateway failed", e);
+        }
+
+        return stats;
+    }
+
+    private NetworkStatList readResponse(final JsonReader in) throws IOException {
+        String agentId = null;
+        long timeStamp = 0;
+        List<NetworkInterfaceStat> stats = null;
+
+        in.beginObject();
+
+        while (in.hasNext()) {
+            String name = in.nextName();
+            switch (name) {
+                case AGENT_ID:
+                    agentId = in.nextString();
+                    break;
+                case TIMESTAMP:
+                    timeStamp = readLong(in);
+                    break;
+                case INTERFACE_LIST:
+                    stats = readList(in);
+                    break;
+                default:
+                    throw new IOException("Unexpected JSON name in record: '" + name + "'");
+            }
+        }
+
+        in.endObject();
+
+        return new NetworkStatList(agentId, timeStamp, stats);
+    }
+
+    private List<NetworkInterfaceStat> readList(final JsonReader in) throws IOException {
+        List<NetworkInterfaceStat> stats = new ArrayList<>();
+        in.beginArray();
+        while (in.hasNext()) {
+            stats.add(readInterfaceStat(in));
+        }
+        in.endArray();
+        return stats;
+    }
+
+    private NetworkInterfaceStat readInterfaceStat(final JsonReader in) throws IOException {
+        NetworkInterfaceStat stat = new NetworkInterfaceStat(null);
+
+        in.beginObject();
+
+        while (in.hasNext()) {
+            String name = in.nextName();
+            switch (name) {
+                case INTERFACE_NAME:
+                    stat.setInterfaceName(in.nextString());
+                    break;
+                case RX_BYTES:
+                    stat.setRxBytes(in.nextDouble());
+                    break;
+                case RX_PACKETS:
+                    stat.setRxPackets(in.nextDouble());
+                    break;
+                case RX_ERRORS:
+                    stat.setRxErrors(in.nextDouble());
+                    break;
+                case RX_DROPS:
+                    stat.setRxDrops(in.nextDouble());
+                    break;
+                case TX_BYTES:
+                    stat.setTxBytes(in.nextDouble());
+                    break;
+                case TX_PACKETS:
+                    stat.setTxPackets(in.nextDouble());
+                    break;
+                case TX_ERRORS:
+                    stat.setTxErrors(in.nextDouble());
+                    break;
+                case TX_DROPS:
+                    stat.setTxDrops(in.nextDouble());
+                    break;
+                default:
+                    throw new IOException("Unexpected JSON name in record: '" + name + "'");
+            }
+        }
+
+        in.endObject();
+
+        return stat;
+    }
+
+    private void writeLong(final JsonWriter out, final long input) throws IOException {
+        // Write MongoDB representation of a Long
+        out.beginObject();
+        out.name(TYPE_LONG);
+        out.value(String.valueOf(input));
+        out.endObject();
+    }
+
+    private long readLong(final JsonReader in) throws IOException {
+        // Read MongoDB representation of a Long
+        in.beginObject();
+        String name = in.nextName();
+        expectName(TYPE_LONG, name);
+        long ret = Long.valueOf(in.nextString());
+        in.endObject();
+        return ret;
+    }
+
+    private void expectName(final String expected, final String actual) throws IOException {
+        if (!expected.equals(actual)) {
+            throw new IOException("Expected JSON name '" + expected + "', got '" + actual + "'");
+        }
+    }
+
+}
@@ -39,28 +39,46 @@ package com.redhat.thermostat.host.network.internal;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+
 import com.redhat.thermostat.common.Version;
+import com.redhat.thermostat.common.config.experimental.ConfigurationInfoSource;
 
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 public class HostNetworkBackendTest {
 
     private static final String VERSION = "0.0.0";
     private HostNetworkBackend b;
+    private ScheduledExecutorService executor;
+    private Map<String, String> config;
 
     @Before
-    public void setUp() {
-        ScheduledExecutorService executor = mock(ScheduledExecutorService.class);
+    public void setUp() throws IOException {
+        executor = mock(ScheduledExecutorService.class);
         Version version = mock(Version.class);
         when(version.getVersionNumber()).thenReturn(VERSION);
+        config = new HashMap<>();
+        ConfigurationInfoSource configSource = mock(ConfigurationInfoSource.class);
+        when(configSource.getConfiguration(anyString(), anyString())).thenReturn(config);
         b = new HostNetworkBackend("backend", "test backend", "redhat", version, executor);
+        b.bindConfigurationInfoSource(configSource);
     }
 
     @Test
@@ -86,6 +104,18 @@ public class HostNetworkBackendTest {
         assertFalse(b.isActive());
     }
     
+    @Test
+    public void testConfiguredPollingInterval() {
+        config.put("pollingInterval", "10000");
+        Bundle bundle = mock(Bundle.class);
+        when(bundle.getVersion()).thenReturn(mock(org.osgi.framework.Version.class));
+        BundleContext ctx = mock(BundleContext.class);
+        when(ctx.getBundle()).thenReturn(bundle);
+        b.componentActivated(ctx);
+        b.activate();
+        verify(executor).scheduleAtFixedRate(any(Runnable.class), eq(0L), eq(10000L), eq(TimeUnit.MILLISECONDS));
+    }
+
     @Test
     public void testVersion() {
         assertEquals(VERSION, b.getVersion());
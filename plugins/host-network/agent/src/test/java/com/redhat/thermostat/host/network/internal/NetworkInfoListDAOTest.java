@@ -57,7 +57,6 @@ import com.redhat.thermostat.host.network.model.NetworkInterfaceInfo;
 import com.redhat.thermostat.host.network.internal.NetworkInfoListDAOImpl.JsonHelper;
 
 import org.eclipse.jetty.client.api.ContentResponse;
-import org.eclipse.jetty.http.HttpMethod;
 import org.eclipse.jetty.http.HttpStatus;
 
 import org.junit.Before;
@@ -121,7 +120,7 @@ public class NetworkInfoListDAOTest {
         NetworkInfoList obj = new NetworkInfoList(AGENT_ID, TIMESTAMP, new ArrayList<NetworkInterfaceInfo>());
         dao.put(obj);
 
-        verify(httpRequestService, times(1)).sendHttpRequest(SOME_JSON, URL + "/systems/" + HOST_NAME, HttpMethod.POST.asString());
+        verify(httpRequestService, times(1)).queueHttpPost(SOME_JSON, URL + "/systems/" + HOST_NAME);
     }
 }
 
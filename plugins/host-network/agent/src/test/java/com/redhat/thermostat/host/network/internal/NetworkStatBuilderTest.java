@@ -0,0 +1,167 @@
+/*
+ * Copyright 2012-2017 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+package com.redhat.thermostat.host.network.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.redhat.thermostat.common.Clock;
+import com.redhat.thermostat.common.portability.linux.ProcDataSource;
+import com.redhat.thermostat.host.network.model.NetworkInterfaceStat;
+import com.redhat.thermostat.host.network.model.NetworkStatList;
+import com.redhat.thermostat.storage.core.WriterID;
+
+public class NetworkStatBuilderTest {
+
+    private static final String HEADER =
+            "Inter-|   Receive                                                |  Transmit\n" +
+            " face |bytes    packets errs drop fifo frame compressed multicast|bytes    packets errs drop fifo colls carrier compressed\n";
+
+    private Clock clock;
+    private ProcDataSource dataSource;
+    private NetworkStatBuilder builder;
+
+    @Before
+    public void setUp() {
+        clock = mock(Clock.class);
+        when(clock.getRealTimeMillis()).thenReturn(5000L);
+        when(clock.getMonotonicTimeNanos()).thenReturn(0L, 2000000000L, 4000000000L);
+        dataSource = mock(ProcDataSource.class);
+        WriterID writerId = mock(WriterID.class);
+        when(writerId.getWriterID()).thenReturn("writer");
+        builder = new NetworkStatBuilder(clock, dataSource, writerId);
+    }
+
+    @Test
+    public void testFirstBuildHasNoRates() throws IOException {
+        when(dataSource.getNetDevChannel()).thenReturn(channel(HEADER +
+                "    lo: 100 10 0 0 0 0 0 0 100 10 0 0 0 0 0 0\n"));
+
+        assertNull(builder.build());
+    }
+
+    @Test
+    public void testRates() throws IOException {
+        when(dataSource.getNetDevChannel()).thenReturn(
+                channel(HEADER +
+                        "    lo: 100 10 0 0 0 0 0 0 100 10 0 0 0 0 0 0\n" +
+                        "  eth0:1000 100 1 2 0 0 0 5 2000 200 3 4 0 0 0 0\n"),
+                channel(HEADER +
+                        "    lo: 300 30 0 0 0 0 0 0 300 30 0 0 0 0 0 0\n" +
+                        "  eth0:3000 300 3 4 0 0 0 5 6000 600 5 8 0 0 0 0\n"));
+
+        builder.build();
+        NetworkStatList stats = builder.build();
+
+        assertEquals("writer", stats.getAgentId());
+        assertEquals(5000L, stats.getTimeStamp());
+        assertEquals(2, stats.size());
+        NetworkInterfaceStat lo = stats.get(0);
+        assertEquals("lo", lo.getInterfaceName());
+        assertEquals(100.0, lo.getRxBytes(), 0.001);
+        assertEquals(10.0, lo.getTxPackets(), 0.001);
+        NetworkInterfaceStat eth0 = stats.get(1);
+        assertEquals("eth0", eth0.getInterfaceName());
+        assertEquals(1000.0, eth0.getRxBytes(), 0.001);
+        assertEquals(100.0, eth0.getRxPackets(), 0.001);
+        assertEquals(1.0, eth0.getRxErrors(), 0.001);
+        assertEquals(1.0, eth0.getRxDrops(), 0.001);
+        assertEquals(2000.0, eth0.getTxBytes(), 0.001);
+        assertEquals(200.0, eth0.getTxPackets(), 0.001);
+        assertEquals(1.0, eth0.getTxErrors(), 0.001);
+        assertEquals(2.0, eth0.getTxDrops(), 0.001);
+    }
+
+    @Test
+    public void testInterfacesComingAndGoing() throws IOException {
+        when(dataSource.getNetDevChannel()).thenReturn(
+                channel(HEADER +
+                        "    lo: 100 10 0 0 0 0 0 0 100 10 0 0 0 0 0 0\n" +
+                        "  eth0: 100 10 0 0 0 0 0 0 100 10 0 0 0 0 0 0\n"),
+                channel(HEADER +
+                        "    lo: 300 10 0 0 0 0 0 0 100 10 0 0 0 0 0 0\n" +
+                        "  eth1: 100 10 0 0 0 0 0 0 100 10 0 0 0 0 0 0\n"),
+                channel(HEADER +
+                        "    lo: 500 10 0 0 0 0 0 0 100 10 0 0 0 0 0 0\n" +
+                        "  eth1: 500 10 0 0 0 0 0 0 100 10 0 0 0 0 0 0\n"));
+
+        builder.build();
+        NetworkStatList second = builder.build();
+        NetworkStatList third = builder.build();
+
+        // eth1 has no rate until its second sample, eth0 is gone
+        assertEquals(1, second.size());
+        assertEquals("lo", second.get(0).getInterfaceName());
+        assertEquals(2, third.size());
+        assertEquals("eth1", third.get(1).getInterfaceName());
+        assertEquals(200.0, third.get(1).getRxBytes(), 0.001);
+    }
+
+    @Test
+    public void testCounterResetGivesZeroRate() throws IOException {
+        when(dataSource.getNetDevChannel()).thenReturn(
+                channel(HEADER + "  eth0: 1000 10 0 0 0 0 0 0 100 10 0 0 0 0 0 0\n"),
+                channel(HEADER + "  eth0: 10 1 0 0 0 0 0 0 100 10 0 0 0 0 0 0\n"));
+
+        builder.build();
+        NetworkStatList stats = builder.build();
+
+        assertEquals(0.0, stats.get(0).getRxBytes(), 0.0);
+    }
+
+    @Test
+    public void testUnreadableFile() throws IOException {
+        when(dataSource.getNetDevChannel()).thenThrow(new IOException("not there"));
+
+        assertNull(builder.build());
+    }
+
+    private static ReadableByteChannel channel(String contents) {
+        return Channels.newChannel(new ByteArrayInputStream(contents.getBytes(StandardCharsets.US_ASCII)));
+    }
+}
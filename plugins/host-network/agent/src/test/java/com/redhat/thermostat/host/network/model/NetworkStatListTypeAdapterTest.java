@@ -0,0 +1,92 @@
+/*
+ * Copyright 2012-2017 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+package com.redhat.thermostat.host.network.model;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import com.redhat.thermostat.agent.http.JsonPayloadWriter;
+
+public class NetworkStatListTypeAdapterTest {
+
+    private static final String WRITER_ID = "some-agent-id";
+    private static final long TIMESTAMP = 333;
+
+    @Test
+    public void testWrite() throws Exception {
+        NetworkStatListTypeAdapter adapter = new NetworkStatListTypeAdapter();
+        final String expected = "{\"agentId\":\"some-agent-id\",\"timeStamp\":{\"$numberLong\":\"333\"},\"interfaces\":["
+                + "{\"interfaceName\":\"lo\",\"rxBytes\":1.5,\"rxPackets\":2.0,\"rxErrors\":0.0,\"rxDrops\":0.0,"
+                + "\"txBytes\":1.5,\"txPackets\":2.0,\"txErrors\":0.0,\"txDrops\":0.0}]}";
+
+        String json = adapter.toJson(createStatList());
+        assertEquals(expected, json);
+    }
+
+    @Test
+    public void testStreamingWriteMatchesTypeAdapter() throws Exception {
+        NetworkStatListTypeAdapter adapter = new NetworkStatListTypeAdapter();
+        NetworkStatList stats = createStatList();
+        JsonPayloadWriter out = new JsonPayloadWriter();
+        adapter.write(out, stats);
+        assertEquals(adapter.toJson(stats), out.toString());
+    }
+
+    @Test
+    public void testRead() throws Exception {
+        NetworkStatListTypeAdapter adapter = new NetworkStatListTypeAdapter();
+        final String json = "{\"response\" : {\"agentId\":\"some-agent-id\",\"timeStamp\":{\"$numberLong\":\"333\"},\"interfaces\":["
+                + "{\"interfaceName\":\"lo\",\"rxBytes\":1.5,\"rxPackets\":2.0,\"rxErrors\":0.0,\"rxDrops\":0.0,"
+                + "\"txBytes\":1.5,\"txPackets\":2.0,\"txErrors\":0.0,\"txDrops\":0.0}]}, "
+                + "\"time\" : \"500000000\"}";
+
+        NetworkStatList stats = adapter.fromJson(json);
+        assertEquals(createStatList(), stats);
+    }
+
+    private NetworkStatList createStatList() {
+        NetworkInterfaceStat stat = new NetworkInterfaceStat("lo");
+        stat.setRxBytes(1.5);
+        stat.setRxPackets(2.0);
+        stat.setTxBytes(1.5);
+        stat.setTxPackets(2.0);
+        return new NetworkStatList(WRITER_ID, TIMESTAMP, Arrays.asList(stat));
+    }
+}
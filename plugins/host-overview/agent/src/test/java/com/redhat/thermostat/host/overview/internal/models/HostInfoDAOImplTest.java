@@ -107,7 +107,7 @@ public class HostInfoDAOImplTest {
         dao.activate();
         
         dao.put(info);
-        verify(httpRequestService, times(1)).sendHttpRequest(SOME_JSON, URL + "/systems/" + HOST_NAME, HttpRequestService.POST);
+        verify(httpRequestService, times(1)).queueHttpPost(SOME_JSON, URL + "/systems/" + HOST_NAME);
     }
 
 }
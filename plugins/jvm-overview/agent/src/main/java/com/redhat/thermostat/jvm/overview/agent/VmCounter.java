@@ -0,0 +1,81 @@
+/*
+ * Copyright 2012-2017 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+package com.redhat.thermostat.jvm.overview.agent;
+
+/**
+ * A JVM performance counter that has been looked up once by name and can
+ * then be read on every update without looking it up again.
+ * @see VmUpdate#getCounter(String)
+ */
+public interface VmCounter {
+
+    /**
+     * @return the name of the performance counter
+     */
+    String getName();
+
+    /**
+     * @return true if the counter existed when it was looked up
+     */
+    boolean isPresent();
+
+    /**
+     * Returns whether this handle is still current. Handles become stale
+     * once the JVM adds or removes performance counters, after which they
+     * should be looked up again with {@link VmUpdate#getCounter(String)}.
+     * @return false if the set of counters has changed since this handle
+     * was looked up
+     */
+    boolean isValid();
+
+    /**
+     * Reads the current value of a Long counter without boxing it.
+     * @param defaultValue - The value to return if the counter does not exist
+     * @return The current value of the counter, or defaultValue
+     * @throws ClassCastException if the value of the counter is not a Long
+     */
+    long getLong(long defaultValue);
+
+    /**
+     * Reads the current value of a String counter.
+     * @return The current value of the counter, or null if no such counter
+     * exists
+     * @throws ClassCastException if the value of the counter is not a String
+     */
+    String getString();
+
+}
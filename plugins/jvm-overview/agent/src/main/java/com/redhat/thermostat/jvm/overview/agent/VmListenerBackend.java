@@ -41,6 +41,8 @@ import java.util.logging.Logger;
 
 import com.redhat.thermostat.backend.BaseBackend;
 import com.redhat.thermostat.backend.BackendException;
+import com.redhat.thermostat.backend.PollingInterval;
+import com.redhat.thermostat.common.plugin.PluginConfiguration;
 import com.redhat.thermostat.common.utils.LoggingUtils;
 import com.redhat.thermostat.storage.core.WriterID;
 
@@ -62,6 +64,7 @@ public abstract class VmListenerBackend extends BaseBackend implements VmStatusL
     private VmMonitor monitor;
     private boolean started;
     private boolean initialized;
+    private volatile long vmUpdateInterval = VmMonitor.DEFAULT_UPDATE_INTERVAL;
 
     public VmListenerBackend(String backendName, String description, String vendor, boolean observeNewJvm) {
         this(backendName, description, vendor, "1.0", observeNewJvm);
@@ -141,7 +144,7 @@ public abstract class VmListenerBackend extends BaseBackend implements VmStatusL
                     logger.log(Level.INFO, "Creating the VM listener for a VmListenerBackend threw an exception. Going to ignore the backend!", t);
                 }
                 if (listener != null) {
-                    monitor.handleNewVm(listener, pid);
+                    monitor.handleNewVm(listener, pid, getVmUpdateInterval());
                 }
             } else {
                 logger.log(Level.FINE, "skipping new vm " + pid);
@@ -179,6 +182,41 @@ public abstract class VmListenerBackend extends BaseBackend implements VmStatusL
      * @return a new listener for the VM specified by pid
      */
     protected abstract VmUpdateListener createVmListener(String writerId, String vmId, int pid);
+
+    /**
+     * Returns how often listeners created by this backend should receive
+     * updates. All backends share one sampling loop per JVM, so backends
+     * whose data changes slowly can ask for a longer interval without
+     * affecting the others.
+     * @return the update interval in milliseconds
+     */
+    protected long getVmUpdateInterval() {
+        return vmUpdateInterval;
+    }
+
+    /**
+     * Sets how often listeners created by this backend receive updates.
+     * Listeners already created keep the interval they were created with.
+     * @param intervalMillis the update interval in milliseconds
+     */
+    protected void setVmUpdateInterval(long intervalMillis) {
+        if (intervalMillis <= 0) {
+            throw new IllegalArgumentException("Update interval must be positive: " + intervalMillis);
+        }
+        this.vmUpdateInterval = intervalMillis;
+    }
+
+    /**
+     * Sets the update interval to the {@code pollingInterval} configured for
+     * the plugin, or to {@link VmMonitor#DEFAULT_UPDATE_INTERVAL} if none is
+     * set. Listeners are updated at a fixed rate, so the bounds of an
+     * adaptive polling interval are ignored.
+     * @param config the configuration of the plugin this backend belongs to
+     */
+    protected void setVmUpdateInterval(PluginConfiguration config) {
+        PollingInterval interval = config.getPollingInterval(PollingInterval.fixed(VmMonitor.DEFAULT_UPDATE_INTERVAL));
+        setVmUpdateInterval(interval.getIntervalMillis());
+    }
     
     /*
      * For testing purposes only.
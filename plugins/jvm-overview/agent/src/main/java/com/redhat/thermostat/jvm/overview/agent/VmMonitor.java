@@ -36,65 +36,96 @@
 
 package com.redhat.thermostat.jvm.overview.agent;
 
-import java.net.URISyntaxException;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.FrameworkUtil;
+import org.osgi.framework.ServiceReference;
+
 import com.redhat.thermostat.backend.BackendException;
 import com.redhat.thermostat.jvm.overview.agent.internal.VmListenerWrapper;
-import sun.jvmstat.monitor.HostIdentifier;
-import sun.jvmstat.monitor.MonitorException;
-import sun.jvmstat.monitor.MonitoredHost;
-import sun.jvmstat.monitor.MonitoredVm;
-import sun.jvmstat.monitor.VmIdentifier;
+import com.redhat.thermostat.jvm.overview.agent.internal.VmSamplerRegistry;
 
 import com.redhat.thermostat.common.portability.ProcessChecker;
-import com.redhat.thermostat.common.Pair;
 import com.redhat.thermostat.common.utils.LoggingUtils;
 
+/**
+ * Attaches {@link VmUpdateListener}s to monitored VMs. Each VM is attached to
+ * only once per agent; the listeners of all backends share a single
+ * sampling loop per VM, each receiving updates at its own interval. The
+ * samplers are shared through a service of this bundle, which is looked up
+ * once the first VM is attached to.
+ */
 public class VmMonitor {
+
+    /**
+     * The interval at which listeners receive updates unless they ask for
+     * another one, in milliseconds.
+     */
+    public static final long DEFAULT_UPDATE_INTERVAL = 1000;
     
     private final Logger logger = LoggingUtils.getLogger(VmMonitor.class);
 
     private final ProcessChecker processChecker;
-    private MonitoredHost host;
-    private Map<Integer, Pair<MonitoredVm, VmListenerWrapper>> pidToData = new HashMap<>();
+    private VmSamplerRegistry samplers;
+    private Map<Integer, VmListenerWrapper> pidToData = new HashMap<>();
     
     public VmMonitor() throws BackendException {
         this(new ProcessChecker());
     }
 
     public VmMonitor(ProcessChecker processChecker) throws BackendException {
+        this(processChecker, null);
+    }
+
+    VmMonitor(ProcessChecker processChecker, VmSamplerRegistry samplers) {
         this.processChecker = processChecker;
-        try {
-            HostIdentifier hostId = new HostIdentifier((String) null);
-            host = MonitoredHost.getMonitoredHost(hostId);
-        } catch (MonitorException me) {
-            throw new BackendException("Problems with connecting jvmstat to local machine", me);
-        } catch (URISyntaxException use) {
-            throw new BackendException("Failed to create host identifier", use);
-        }
+        this.samplers = samplers;
     }
-    
+
     public void handleNewVm(VmUpdateListener listener, int pid) {
+        handleNewVm(listener, pid, DEFAULT_UPDATE_INTERVAL);
+    }
+
+    /**
+     * Starts delivering updates for the VM with the given pid to the
+     * listener, at most once every {@code intervalMillis} milliseconds.
+     */
+    public void handleNewVm(VmUpdateListener listener, int pid, long intervalMillis) {
         try {
-            MonitoredVm vm = host.getMonitoredVm(host.getHostIdentifier().resolve(new VmIdentifier(String.valueOf(pid))));
-            VmListenerWrapper wrapper = new VmListenerWrapper(listener, vm);
-            vm.addVmListener(wrapper);
+            VmListenerWrapper wrapper = getSamplers().subscribe(pid, listener, intervalMillis);
 
-            pidToData.put(pid, new Pair<>(vm, wrapper));
+            pidToData.put(pid, wrapper);
             logger.finer("Attached " + listener.getClass().getName() + " for VM: " + pid);
-        } catch (MonitorException e) {
+        } catch (VmUpdateException e) {
             logMsg(pid, e);
-        } catch (URISyntaxException e) {
-            logger.log(Level.WARNING, "unable to attach to vm " + pid, e);
         }
     }
 
-    private void logMsg(int pid, MonitorException e) {
-        Throwable cause = e.getCause();
+    private VmSamplerRegistry getSamplers() throws VmUpdateException {
+        if (samplers == null) {
+            Bundle bundle = FrameworkUtil.getBundle(VmMonitor.class);
+            BundleContext context = bundle == null ? null : bundle.getBundleContext();
+            ServiceReference ref = context == null ? null
+                    : context.getServiceReference(VmSamplerRegistry.class.getName());
+            if (ref == null) {
+                throw new VmUpdateException("VM sampler registry is not available");
+            }
+            samplers = (VmSamplerRegistry) context.getService(ref);
+            if (samplers == null) {
+                throw new VmUpdateException("VM sampler registry is not available");
+            }
+        }
+        return samplers;
+    }
+
+    private void logMsg(int pid, VmUpdateException e) {
+        // jvmstat reports a process that is gone as an IllegalArgumentException
+        Throwable cause = e.getCause() == null ? null : e.getCause().getCause();
         if (cause != null && cause instanceof IllegalArgumentException && !processChecker.exists(pid)) {
             logger.log(Level.FINEST, "Tried to attach to a process which no longer exists. Pid was " + pid, e);
         } else {
@@ -103,31 +134,17 @@ public class VmMonitor {
     }
 
     public void handleStoppedVm(int pid) {
-        Pair<MonitoredVm, VmListenerWrapper> data = pidToData.remove(pid);
+        VmListenerWrapper wrapper = pidToData.remove(pid);
         // we were not monitoring pid at all, so nothing to do
-        if (data == null) {
+        if (wrapper == null) {
             return;
         }
-    
-        MonitoredVm vm = data.getFirst();
-        VmListenerWrapper listener = data.getSecond();
-        try {
-            vm.removeVmListener(listener);
-        } catch (MonitorException e) {
-            logger.log(Level.WARNING, "can't remove vm listener", e);
-        }
-        vm.detach();
+        samplers.unsubscribe(pid, wrapper);
     }
 
     public void removeVmListeners() {
-        for (Pair<MonitoredVm, VmListenerWrapper> data : pidToData.values()) {
-            MonitoredVm vm = data.getFirst();
-            VmListenerWrapper listener = data.getSecond();
-            try {
-                vm.removeVmListener(listener);
-            } catch (MonitorException e) {
-                logger.log(Level.WARNING, "can't remove vm listener", e);
-            }
+        for (Map.Entry<Integer, VmListenerWrapper> data : pidToData.entrySet()) {
+            samplers.unsubscribe(data.getKey(), data.getValue());
         }
         pidToData.clear();
     }
@@ -135,16 +152,8 @@ public class VmMonitor {
     /*
      * For testing purposes only.
      */
-    void setHost(MonitoredHost host) {
-        this.host = host;
-    }
-    
-    /*
-     * For testing purposes only.
-     */
-    Map<Integer, Pair<MonitoredVm, VmListenerWrapper>> getPidToDataMap() {
+    Map<Integer, VmListenerWrapper> getPidToDataMap() {
         return pidToData;
     }
 
 }
-
@@ -36,13 +36,23 @@
 
 package com.redhat.thermostat.jvm.overview.agent;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -56,6 +66,10 @@ import com.redhat.thermostat.common.utils.LoggingUtils;
  * action for each monitored JVM process on a regular interval.  Simply
  * extend this class, implement any missing methods, and register one or
  * more {@link VmPollingAction} implementations during instantiation.
+ * <p>
+ * By default, all actions run for one VM after another on the polling
+ * thread. See {@link #setParallelism(int, long)} to spread the VMs over
+ * several threads instead.
  */
 public abstract class VmPollingBackend extends PollingBackend implements VmStatusListener {
 
@@ -66,6 +80,15 @@ public abstract class VmPollingBackend extends PollingBackend implements VmStatu
     private static final Logger logger = LoggingUtils.getLogger(VmPollingBackend.class);
     private static final int EXCEPTIONS_THRESHOLD = 10;
 
+    // Parallel polling, see setParallelism()
+    private int parallelism = 1;
+    private long deadlineMillis;
+    private ExecutorService workers;
+    private final AtomicInteger activeRunners = new AtomicInteger();
+    private final Set<Integer> busyPids = Collections.newSetFromMap(new ConcurrentHashMap<Integer, Boolean>());
+    private final AtomicLong skippedActions = new AtomicLong();
+    private final AtomicLong skipReports = new AtomicLong();
+
     public VmPollingBackend(String name, String description,
             String vendor, Version version, ScheduledExecutorService executor,
             VmStatusListenerRegistrar registrar) {
@@ -75,31 +98,200 @@ public abstract class VmPollingBackend extends PollingBackend implements VmStatu
         this.badActions = new HashMap<>();
     }
 
+    /**
+     * Creates a backend which polls on the agent's shared scheduler, see
+     * {@link #setPollingScheduler(com.redhat.thermostat.backend.PollingScheduler)}.
+     */
+    public VmPollingBackend(String name, String description,
+            String vendor, Version version, VmStatusListenerRegistrar registrar) {
+        this(name, description, vendor, version, null, registrar);
+    }
+
+    /**
+     * Runs the actions for different VMs at the same time on up to
+     * {@code threads} threads. Only use this if every registered action is
+     * safe to run for several VMs at once. Has to be called before
+     * activation.
+     * <p>
+     * A round of polling ends after {@code deadlineMillis}, or after the
+     * current polling interval if that is 0, even if some VMs have not
+     * been polled yet. Their actions are skipped and counted, see
+     * {@link #getSkippedActions()}. So are the actions of a VM whose
+     * actions from an earlier round are still running.
+     */
+    protected final synchronized void setParallelism(int threads, long deadlineMillis) {
+        if (isActive()) {
+            throw new IllegalStateException("Can not change the parallelism of an active backend");
+        }
+        if (threads < 1 || deadlineMillis < 0) {
+            throw new IllegalArgumentException("Invalid parallelism " + threads + " or deadline " + deadlineMillis);
+        }
+        this.parallelism = threads;
+        this.deadlineMillis = deadlineMillis;
+    }
+
+    /**
+     * @return the number of actions left out so far because they missed
+     * the deadline of their round, if polling in parallel
+     */
+    public final long getSkippedActions() {
+        return skippedActions.get();
+    }
+
     @Override
     final public void preActivate() {
+        synchronized (this) {
+            if (parallelism > 1) {
+                workers = Executors.newFixedThreadPool(parallelism, new WorkerThreadFactory(getName()));
+            }
+        }
         registrar.register(this);
     }
 
     @Override
     final public void postDeactivate() {
         registrar.unregister(this);
+        synchronized (this) {
+            if (workers != null) {
+                workers.shutdownNow();
+                workers = null;
+            }
+        }
     }
 
     @Override
     final public void doScheduledActions() {
-        for (Entry<Integer, String> entry : pidsToMonitor.entrySet()) {
-            int pid = entry.getKey();
-            String vmId = entry.getValue();
-            for (VmPollingAction action : actions) {
-                try {
-                    action.run(vmId, pid);
-                } catch (Throwable t) {
-                    handleActionException(action, vmId);
+        ExecutorService workers;
+        synchronized (this) {
+            workers = this.workers;
+        }
+        if (workers == null) {
+            for (Entry<Integer, String> entry : pidsToMonitor.entrySet()) {
+                runActions(entry.getKey(), entry.getValue(), Long.MAX_VALUE);
+            }
+        } else {
+            doScheduledActionsInParallel(workers);
+        }
+    }
+
+    private void doScheduledActionsInParallel(ExecutorService workers) {
+        long deadlineNanos = TimeUnit.MILLISECONDS.toNanos(deadlineMillis > 0 ? deadlineMillis : getCurrentIntervalMillis());
+        long deadline = System.nanoTime() + deadlineNanos;
+        Queue<Entry<Integer, String>> vms = new ConcurrentLinkedQueue<>(pidsToMonitor.entrySet());
+        // Runners still stuck in an earlier round keep their thread, so
+        // only start as many as there are free threads
+        int runners = Math.min(vms.size(), parallelism - activeRunners.get());
+        CountDownLatch done = new CountDownLatch(runners);
+        for (int i = 0; i < runners; i++) {
+            activeRunners.incrementAndGet();
+            workers.execute(new Runner(vms, deadline, done));
+        }
+        long skipped = 0;
+        try {
+            done.await(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // Whatever nobody got to in time waits for the next round
+        while (vms.poll() != null) {
+            skipped += actions.size();
+        }
+        reportSkipped(skipped);
+    }
+
+    /*
+     * Takes VMs from the shared queue and runs their actions until the
+     * queue is empty or the deadline has passed.
+     */
+    private class Runner implements Runnable {
+
+        private final Queue<Entry<Integer, String>> vms;
+        private final long deadline;
+        private final CountDownLatch done;
+
+        Runner(Queue<Entry<Integer, String>> vms, long deadline, CountDownLatch done) {
+            this.vms = vms;
+            this.deadline = deadline;
+            this.done = done;
+        }
+
+        @Override
+        public void run() {
+            long skipped = 0;
+            try {
+                Entry<Integer, String> vm;
+                while ((vm = vms.poll()) != null) {
+                    int pid = vm.getKey();
+                    if (!busyPids.add(pid)) {
+                        // still being polled by an earlier round
+                        skipped += actions.size();
+                        continue;
+                    }
+                    try {
+                        skipped += runActions(pid, vm.getValue(), deadline);
+                    } finally {
+                        busyPids.remove(pid);
+                    }
                 }
+            } finally {
+                activeRunners.decrementAndGet();
+                done.countDown();
+                reportSkipped(skipped);
             }
         }
     }
 
+    /**
+     * @return the number of actions skipped because the deadline passed
+     */
+    private int runActions(int pid, String vmId, long deadline) {
+        int skipped = 0;
+        for (VmPollingAction action : actions) {
+            if (deadline != Long.MAX_VALUE && System.nanoTime() - deadline > 0) {
+                skipped++;
+                continue;
+            }
+            try {
+                action.run(vmId, pid);
+            } catch (Throwable t) {
+                handleActionException(action, vmId);
+            }
+        }
+        return skipped;
+    }
+
+    private void reportSkipped(long skipped) {
+        if (skipped == 0) {
+            return;
+        }
+        skippedActions.addAndGet(skipped);
+        long count = skipReports.incrementAndGet();
+        // Warn on the 1st, 2nd, 4th, 8th, ... time, so a backend which is
+        // always too slow does not flood the log
+        Level level = Long.bitCount(count) == 1 ? Level.WARNING : Level.FINE;
+        if (logger.isLoggable(level)) {
+            logger.log(level, getName() + " skipped " + skipped + " actions which missed their deadline ("
+                    + skippedActions.get() + " so far)");
+        }
+    }
+
+    private static class WorkerThreadFactory implements ThreadFactory {
+
+        private final String name;
+        private final AtomicInteger count = new AtomicInteger();
+
+        WorkerThreadFactory(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, name + "-worker-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
     private synchronized void handleActionException(VmPollingAction action, String vmId) {
         final String actionName = action.getClass().getName();
         final String actionKey = actionName + vmId;
@@ -64,6 +64,19 @@ public interface VmUpdate {
      * @throws ClassCastException if the value of the counter is not a String
      */
     String getPerformanceCounterString(String name) throws VmUpdateException;
-    
+
+    /**
+     * Looks up the specified JVM performance counter, returning a handle
+     * which can be kept and read on later updates. Listeners that read the
+     * same counters on every update should use this instead of looking
+     * them up by name each time.
+     * @param name - The name of the performance counter
+     * @return A handle for the counter, never null. If no such counter
+     * exists, {@link VmCounter#isPresent()} of the handle returns false.
+     * @throws VmUpdateException if there is a problem communicating with
+     * the JVM
+     */
+    VmCounter getCounter(String name) throws VmUpdateException;
+
 }
 
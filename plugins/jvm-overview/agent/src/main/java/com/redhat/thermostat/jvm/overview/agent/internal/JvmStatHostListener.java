@@ -95,25 +95,33 @@ class JvmStatHostListener implements HostListener {
         MonitoredHost host = event.getMonitoredHost();
 
         for (Integer newVm : (Set<Integer>) event.getStarted()) {
-            try {
-                logger.fine("New vm: " + newVm);
-                sendNewVM(newVm, host);
-            } catch (MonitorException e) {
-                logger.log(Level.WARNING, "error getting info for new vm " + newVm, e);
-            } catch (URISyntaxException e) {
-                logger.log(Level.WARNING, "error getting info for new vm " + newVm, e);
-            }
+            vmStarted(newVm, host);
         }
 
         for (Integer stoppedVm : (Set<Integer>) event.getTerminated()) {
-            try {
-                logger.fine("stopped vm: " + stoppedVm);
-                sendStoppedVM(stoppedVm, host);
-            } catch (URISyntaxException e) {
-                logger.log(Level.WARNING, "error getting info for stopped vm " + stoppedVm, e);
-            } catch (MonitorException e) {
-                logger.log(Level.WARNING, "error getting info for stopped vm " + stoppedVm, e);
-            }
+            vmStopped(stoppedVm, host);
+        }
+    }
+
+    void vmStarted(Integer newVm, MonitoredHost host) {
+        try {
+            logger.fine("New vm: " + newVm);
+            sendNewVM(newVm, host);
+        } catch (MonitorException e) {
+            logger.log(Level.WARNING, "error getting info for new vm " + newVm, e);
+        } catch (URISyntaxException e) {
+            logger.log(Level.WARNING, "error getting info for new vm " + newVm, e);
+        }
+    }
+
+    void vmStopped(Integer stoppedVm, MonitoredHost host) {
+        try {
+            logger.fine("stopped vm: " + stoppedVm);
+            sendStoppedVM(stoppedVm, host);
+        } catch (URISyntaxException e) {
+            logger.log(Level.WARNING, "error getting info for stopped vm " + stoppedVm, e);
+        } catch (MonitorException e) {
+            logger.log(Level.WARNING, "error getting info for stopped vm " + stoppedVm, e);
         }
     }
 
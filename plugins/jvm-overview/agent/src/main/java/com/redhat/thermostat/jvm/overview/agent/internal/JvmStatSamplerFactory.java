@@ -0,0 +1,90 @@
+/*
+ * Copyright 2012-2017 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+package com.redhat.thermostat.jvm.overview.agent.internal;
+
+import java.net.URISyntaxException;
+
+import com.redhat.thermostat.jvm.overview.agent.VmUpdateException;
+
+import sun.jvmstat.monitor.HostIdentifier;
+import sun.jvmstat.monitor.MonitorException;
+import sun.jvmstat.monitor.MonitoredHost;
+import sun.jvmstat.monitor.MonitoredVm;
+import sun.jvmstat.monitor.VmIdentifier;
+
+/**
+ * Attaches to VMs through jvmstat. All jvmstat types used by the
+ * {@link VmSamplerRegistry} are confined to this class, which is only
+ * loaded once a VM has to be read through jvmstat.
+ */
+class JvmStatSamplerFactory {
+
+    private MonitoredHost host;
+
+    /**
+     * Creates a factory connecting to the local host on first use.
+     */
+    JvmStatSamplerFactory() {
+        this(null);
+    }
+
+    JvmStatSamplerFactory(MonitoredHost host) {
+        this.host = host;
+    }
+
+    /**
+     * Not thread-safe; callers synchronize.
+     */
+    VmSampler createSampler(int pid) throws VmUpdateException {
+        try {
+            MonitoredHost host = getHost();
+            MonitoredVm vm = host.getMonitoredVm(host.getHostIdentifier().resolve(new VmIdentifier(String.valueOf(pid))));
+            return new JvmStatVmSampler(vm);
+        } catch (MonitorException e) {
+            throw new VmUpdateException("Unable to attach to VM " + pid, e);
+        } catch (URISyntaxException e) {
+            throw new VmUpdateException("Failed to create VM identifier", e);
+        }
+    }
+
+    private MonitoredHost getHost() throws MonitorException, URISyntaxException {
+        if (host == null) {
+            host = MonitoredHost.getMonitoredHost(new HostIdentifier((String) null));
+        }
+        return host;
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2012-2017 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+package com.redhat.thermostat.jvm.overview.agent.internal;
+
+import com.redhat.thermostat.jvm.overview.agent.VmCounter;
+import com.redhat.thermostat.jvm.overview.agent.VmUpdate;
+import com.redhat.thermostat.jvm.overview.agent.VmUpdateException;
+import com.redhat.thermostat.jvm.overview.agent.VmUpdateListener;
+import sun.jvmstat.monitor.Monitor;
+import sun.jvmstat.monitor.MonitorException;
+import sun.jvmstat.monitor.MonitoredVm;
+
+/**
+ * A {@link VmListenerWrapper} reading counters through jvmstat. jvmstat
+ * events are received by the {@link JvmStatVmSampler}, not by each wrapper.
+ */
+public class JvmStatVmListenerWrapper extends VmListenerWrapper {
+
+    private final MonitoredVm vm;
+    private final VmUpdate update;
+
+    public JvmStatVmListenerWrapper(VmUpdateListener listener, MonitoredVm vm) {
+        super(listener);
+        this.vm = vm;
+        this.update = new VmUpdateImpl(this);
+    }
+
+    @Override
+    VmUpdate getUpdate() {
+        return update;
+    }
+
+    public Monitor getMonitor(String name) throws VmUpdateException {
+        Monitor result;
+        try {
+            result = vm.findByName(name);
+        } catch (MonitorException e) {
+            throw new VmUpdateException("Error communicating with monitored VM", e);
+        }
+        return result;
+    }
+
+    @Override
+    public VmCounter getCounter(String name) throws VmUpdateException {
+        // Read the version first, so that a change racing with the lookup
+        // leaves the handle invalid rather than stale
+        int version = getMonitorSetVersion();
+        return new VmCounterImpl(name, getMonitor(name), this, version);
+    }
+
+    public MonitoredVm getMonitoredVm() {
+        return vm;
+    }
+
+}
@@ -0,0 +1,340 @@
+/*
+ * Copyright 2012-2017 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+package com.redhat.thermostat.jvm.overview.agent.internal;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.redhat.thermostat.common.Clock;
+import com.redhat.thermostat.common.SystemClock;
+import com.redhat.thermostat.common.portability.ProcessChecker;
+import com.redhat.thermostat.common.utils.LoggingUtils;
+
+import sun.jvmstat.monitor.MonitoredHost;
+
+/**
+ * Finds JVMs by watching the hsperfdata directories for files being created
+ * and deleted, rather than having {@link MonitoredHost} rescan all of them
+ * every polling interval.
+ * <p>
+ * A new file is reported once the JVM has marked it accessible. A VM is
+ * reported stopped as soon as its file is deleted, or when its process is
+ * found to be gone; JVMs that are killed leave their file behind.
+ */
+class PerfDataDirectoryWatcher implements Runnable {
+
+    private static final Logger logger = LoggingUtils.getLogger(PerfDataDirectoryWatcher.class);
+
+    // How often to check that the processes of known VMs still exist
+    static final long LIVENESS_INTERVAL_MILLIS = 1000;
+    // How often to look at files not yet accessible while there are any
+    static final long PENDING_INTERVAL_MILLIS = 10;
+    // Files still not accessible after this long are given up on
+    static final long PENDING_TIMEOUT_MILLIS = 10000;
+
+    private final File tmpDir;
+    private final JvmStatHostListener listener;
+    private final MonitoredHost host;
+    private final ProcessChecker processChecker;
+    private final Clock clock;
+
+    private WatchService watchService;
+    private Thread thread;
+    private final Map<WatchKey, File> userDirs = new HashMap<>();
+    private final Set<Integer> running = new HashSet<>();
+    // pid -> time first seen, in monotonic milliseconds
+    private final Map<Integer, Long> pending = new HashMap<>();
+    private long lastLivenessCheck;
+
+    PerfDataDirectoryWatcher(JvmStatHostListener listener, MonitoredHost host) {
+        this(new File(System.getProperty("java.io.tmpdir")), listener, host,
+                new ProcessChecker(), new SystemClock());
+    }
+
+    PerfDataDirectoryWatcher(File tmpDir, JvmStatHostListener listener, MonitoredHost host,
+            ProcessChecker processChecker, Clock clock) {
+        this.tmpDir = tmpDir;
+        this.listener = listener;
+        this.host = host;
+        this.processChecker = processChecker;
+        this.clock = clock;
+    }
+
+    /**
+     * Registers the watches and reports the VMs already running, then
+     * starts watching on a thread of its own.
+     * @throws IOException if the directories can not be watched
+     */
+    void start() throws IOException {
+        open();
+        thread = new Thread(this, "perfdata-watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    void open() throws IOException {
+        watchService = FileSystems.getDefault().newWatchService();
+        try {
+            tmpDir.toPath().register(watchService, ENTRY_CREATE);
+        } catch (IOException e) {
+            watchService.close();
+            throw e;
+        }
+        lastLivenessCheck = now();
+        rescan();
+    }
+
+    void stop() {
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            logger.log(Level.FINE, "error closing watch service", e);
+        }
+        if (thread != null) {
+            thread.interrupt();
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            thread = null;
+        }
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                poll();
+            }
+        } catch (ClosedWatchServiceException e) {
+            // stopped
+        } catch (InterruptedException e) {
+            // stopped
+        }
+    }
+
+    /**
+     * Waits for and handles the next batch of events.
+     */
+    void poll() throws InterruptedException {
+        long timeout = pending.isEmpty() ? LIVENESS_INTERVAL_MILLIS : PENDING_INTERVAL_MILLIS;
+        WatchKey key = watchService.poll(timeout, TimeUnit.MILLISECONDS);
+        while (key != null) {
+            handleEvents(key);
+            key = watchService.poll();
+        }
+        checkPending();
+        if (now() - lastLivenessCheck >= LIVENESS_INTERVAL_MILLIS) {
+            checkLiveness();
+        }
+    }
+
+    private void handleEvents(WatchKey key) {
+        File userDir = userDirs.get(key);
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == OVERFLOW) {
+                rescan();
+            } else if (userDir == null) {
+                File dir = new File(tmpDir, event.context().toString());
+                if (isUserDir(dir)) {
+                    scanUserDir(dir);
+                }
+            } else {
+                Integer pid = parsePid(((Path) event.context()).getFileName().toString());
+                if (pid == null) {
+                    continue;
+                }
+                if (event.kind() == ENTRY_CREATE) {
+                    // A VM reusing a pid deletes the stale file first, so a
+                    // create for a running VM is one the last scan saw
+                    if (!running.contains(pid) && !pending.containsKey(pid)) {
+                        pending.put(pid, now());
+                    }
+                } else if (event.kind() == ENTRY_DELETE) {
+                    pending.remove(pid);
+                    stopped(pid);
+                }
+            }
+        }
+        if (!key.reset()) {
+            userDirs.remove(key);
+        }
+    }
+
+    /**
+     * Registers every user directory and reconciles the known VMs with the
+     * files that exist.
+     */
+    private void rescan() {
+        Set<Integer> found = new HashSet<>();
+        File[] dirs = tmpDir.listFiles();
+        if (dirs != null) {
+            for (File dir : dirs) {
+                if (isUserDir(dir)) {
+                    found.addAll(scanUserDir(dir));
+                }
+            }
+        }
+        for (Integer pid : new ArrayList<>(running)) {
+            if (!found.contains(pid)) {
+                stopped(pid);
+            }
+        }
+        pending.keySet().retainAll(found);
+    }
+
+    private Set<Integer> scanUserDir(File dir) {
+        Set<Integer> found = new HashSet<>();
+        // Register before listing, so a file created in between is not missed
+        if (!userDirs.containsValue(dir)) {
+            try {
+                WatchKey key = dir.toPath().register(watchService, ENTRY_CREATE, ENTRY_DELETE);
+                userDirs.put(key, dir);
+            } catch (IOException e) {
+                // Typically another user's directory we can not read
+                logger.log(Level.FINE, "unable to watch " + dir, e);
+                return found;
+            }
+        }
+        String[] names = dir.list();
+        if (names != null) {
+            for (String name : names) {
+                Integer pid = parsePid(name);
+                if (pid != null) {
+                    found.add(pid);
+                    if (!running.contains(pid) && !pending.containsKey(pid)) {
+                        pending.put(pid, now());
+                    }
+                }
+            }
+        }
+        checkPending();
+        return found;
+    }
+
+    private void checkPending() {
+        long now = now();
+        for (Iterator<Map.Entry<Integer, Long>> iter = pending.entrySet().iterator(); iter.hasNext();) {
+            Map.Entry<Integer, Long> entry = iter.next();
+            Integer pid = entry.getKey();
+            if (!processChecker.exists(pid)) {
+                // Stale file of a JVM that did not clean up
+                iter.remove();
+            } else if (PerfDataFile.isAccessible(findFile(pid))) {
+                iter.remove();
+                started(pid);
+            } else if (now - entry.getValue() > PENDING_TIMEOUT_MILLIS) {
+                logger.fine("perfdata file of " + pid + " never became accessible");
+                iter.remove();
+            }
+        }
+    }
+
+    void checkLiveness() {
+        lastLivenessCheck = now();
+        for (Integer pid : new ArrayList<>(running)) {
+            if (!processChecker.exists(pid)) {
+                stopped(pid);
+            }
+        }
+    }
+
+    private void started(Integer pid) {
+        running.add(pid);
+        listener.vmStarted(pid, host);
+    }
+
+    private void stopped(Integer pid) {
+        if (running.remove(pid)) {
+            listener.vmStopped(pid, host);
+        }
+    }
+
+    private File findFile(Integer pid) {
+        String name = pid.toString();
+        for (File dir : userDirs.values()) {
+            File file = new File(dir, name);
+            if (file.isFile()) {
+                return file;
+            }
+        }
+        return new File(tmpDir, name);
+    }
+
+    private static boolean isUserDir(File dir) {
+        return dir.getName().startsWith(PerfDataFile.DIRECTORY_PREFIX) && dir.isDirectory();
+    }
+
+    private static Integer parsePid(String name) {
+        try {
+            return Integer.valueOf(name);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private long now() {
+        return TimeUnit.NANOSECONDS.toMillis(clock.getMonotonicTimeNanos());
+    }
+
+    /*
+     * For testing purposes only.
+     */
+    Set<Integer> getRunning() {
+        return running;
+    }
+}
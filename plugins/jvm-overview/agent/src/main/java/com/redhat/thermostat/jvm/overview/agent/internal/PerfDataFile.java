@@ -0,0 +1,266 @@
+/*
+ * Copyright 2012-2017 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+package com.redhat.thermostat.jvm.overview.agent.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Reads a HotSpot performance data (hsperfdata) file by mapping it into
+ * memory, without going through {@code sun.jvmstat}.
+ * <p>
+ * The header and entry table are parsed once, so that each counter is known
+ * by its offset into the mapping. Reading a counter is then a single
+ * absolute read from the mapped buffer; the monitored JVM keeps updating the
+ * file in place. Entries the JVM adds later are picked up by
+ * {@link #refresh()}.
+ * <p>
+ * Instances are not thread-safe.
+ */
+public class PerfDataFile {
+
+    static final String DIRECTORY_PREFIX = "hsperfdata_";
+
+    // Prologue layout, see perfMemory.hpp in HotSpot
+    static final int MAGIC = 0xcafec0c0;
+    static final int SUPPORTED_MAJOR_VERSION = 2;
+    private static final int MAGIC_OFFSET = 0;
+    private static final int BYTE_ORDER_OFFSET = 4;
+    private static final int MAJOR_VERSION_OFFSET = 5;
+    private static final int ACCESSIBLE_OFFSET = 7;
+    private static final int USED_OFFSET = 8;
+    private static final int ENTRY_OFFSET_OFFSET = 24;
+    private static final int NUM_ENTRIES_OFFSET = 28;
+    static final int PROLOGUE_SIZE = 32;
+
+    // Entry header layout
+    private static final int ENTRY_HEADER_SIZE = 20;
+    static final byte TYPE_LONG = 'J';
+    static final byte TYPE_BYTE = 'B';
+
+    private final ByteBuffer buffer;
+    private final Map<String, Entry> entries = new HashMap<>();
+    private int parsedEntries;
+    private int nextEntryOffset;
+
+    PerfDataFile(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.capacity() < PROLOGUE_SIZE) {
+            throw new IOException("Not a perfdata file: too short");
+        }
+        // The magic number is always stored big-endian; the rest of the
+        // file uses the byte order of the monitored JVM
+        int magic = buffer.order(ByteOrder.BIG_ENDIAN).getInt(MAGIC_OFFSET);
+        if (magic != MAGIC) {
+            throw new IOException("Not a perfdata file: bad magic " + Integer.toHexString(magic));
+        }
+        buffer.order(buffer.get(BYTE_ORDER_OFFSET) == 0 ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN);
+        int major = buffer.get(MAJOR_VERSION_OFFSET);
+        if (major != SUPPORTED_MAJOR_VERSION) {
+            throw new IOException("Unsupported perfdata version " + major);
+        }
+        if (buffer.get(ACCESSIBLE_OFFSET) == 0) {
+            throw new IOException("Perfdata file is not accessible yet");
+        }
+        nextEntryOffset = buffer.getInt(ENTRY_OFFSET_OFFSET);
+        refresh();
+    }
+
+    /**
+     * Maps the perfdata file of the JVM with the given pid.
+     * @throws IOException if no perfdata file exists for the pid or it can
+     * not be read
+     */
+    public static PerfDataFile open(int pid) throws IOException {
+        return open(locate(new File(System.getProperty("java.io.tmpdir")), pid));
+    }
+
+    public static PerfDataFile open(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+                FileChannel channel = raf.getChannel()) {
+            // The mapping stays valid after the channel is closed
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new PerfDataFile(mapped);
+        }
+    }
+
+    /**
+     * Finds the perfdata file for a pid. JVMs create it in a directory
+     * named after their user, which need not be the agent's user.
+     */
+    static File locate(File tmpDir, int pid) throws IOException {
+        File[] userDirs = tmpDir.listFiles();
+        if (userDirs != null) {
+            String name = String.valueOf(pid);
+            for (File dir : userDirs) {
+                if (dir.getName().startsWith(DIRECTORY_PREFIX)) {
+                    File file = new File(dir, name);
+                    if (file.isFile()) {
+                        return file;
+                    }
+                }
+            }
+        }
+        throw new IOException("No perfdata file for pid " + pid + " in " + tmpDir);
+    }
+
+    /**
+     * Checks the prologue of a perfdata file without mapping it.
+     * @return true if the JVM has finished initializing the file
+     */
+    static boolean isAccessible(File file) {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            if (raf.length() < PROLOGUE_SIZE) {
+                return false;
+            }
+            byte[] prologue = new byte[ACCESSIBLE_OFFSET + 1];
+            raf.readFully(prologue);
+            ByteBuffer buffer = ByteBuffer.wrap(prologue).order(ByteOrder.BIG_ENDIAN);
+            return buffer.getInt(MAGIC_OFFSET) == MAGIC && prologue[ACCESSIBLE_OFFSET] != 0;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Parses entries the JVM has added since the last call.
+     * @return true if new entries were found
+     */
+    public boolean refresh() {
+        int numEntries = buffer.getInt(NUM_ENTRIES_OFFSET);
+        if (numEntries == parsedEntries) {
+            return false;
+        }
+        int used = Math.min(buffer.getInt(USED_OFFSET), buffer.capacity());
+        boolean added = false;
+        while (parsedEntries < numEntries) {
+            int offset = nextEntryOffset;
+            if (offset + ENTRY_HEADER_SIZE > used) {
+                break;
+            }
+            int entryLength = buffer.getInt(offset);
+            if (entryLength < ENTRY_HEADER_SIZE || offset + entryLength > used) {
+                // Still being written; pick it up on the next refresh
+                break;
+            }
+            int nameOffset = buffer.getInt(offset + 4);
+            int vectorLength = buffer.getInt(offset + 8);
+            byte type = buffer.get(offset + 12);
+            int dataOffset = buffer.getInt(offset + 16);
+            String name = readString(offset + nameOffset, offset + entryLength);
+            entries.put(name, new Entry(name, type, vectorLength, offset + dataOffset));
+            nextEntryOffset = offset + entryLength;
+            parsedEntries++;
+            added = true;
+        }
+        return added;
+    }
+
+    /**
+     * @return the entry with the given name, or null if there is none
+     */
+    public Entry find(String name) {
+        return entries.get(name);
+    }
+
+    public int getEntryCount() {
+        return parsedEntries;
+    }
+
+    /**
+     * @throws ClassCastException if the entry is not a long scalar
+     */
+    public long getLong(Entry entry) {
+        if (entry.type != TYPE_LONG || entry.vectorLength != 0) {
+            throw new ClassCastException(entry.name + " is not a Long counter");
+        }
+        return buffer.getLong(entry.dataOffset);
+    }
+
+    /**
+     * @throws ClassCastException if the entry is not a string
+     */
+    public String getString(Entry entry) {
+        if (entry.type != TYPE_BYTE || entry.vectorLength == 0) {
+            throw new ClassCastException(entry.name + " is not a String counter");
+        }
+        return readString(entry.dataOffset, entry.dataOffset + entry.vectorLength);
+    }
+
+    private String readString(int start, int limit) {
+        int end = start;
+        while (end < limit && buffer.get(end) != 0) {
+            end++;
+        }
+        byte[] bytes = new byte[end - start];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = buffer.get(start + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    public static class Entry {
+
+        private final String name;
+        private final byte type;
+        private final int vectorLength;
+        private final int dataOffset;
+
+        Entry(String name, byte type, int vectorLength, int dataOffset) {
+            this.name = name;
+            this.type = type;
+            this.vectorLength = vectorLength;
+            this.dataOffset = dataOffset;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public boolean isLong() {
+            return type == TYPE_LONG && vectorLength == 0;
+        }
+    }
+}
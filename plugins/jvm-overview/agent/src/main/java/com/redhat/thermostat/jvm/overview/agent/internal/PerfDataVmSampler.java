@@ -0,0 +1,130 @@
+/*
+ * Copyright 2012-2017 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+package com.redhat.thermostat.jvm.overview.agent.internal;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.redhat.thermostat.common.Clock;
+import com.redhat.thermostat.common.SystemClock;
+import com.redhat.thermostat.common.utils.LoggingUtils;
+import com.redhat.thermostat.jvm.overview.agent.VmUpdateListener;
+
+/**
+ * A {@link VmSampler} that reads the VM's perfdata file directly, ticking on
+ * an executor shared with the samplers of other VMs rather than on a jvmstat
+ * poller thread of its own. It does not use any jvmstat type, so it also
+ * works on runtimes where jvmstat is not accessible.
+ */
+class PerfDataVmSampler extends VmSampler {
+
+    private static final Logger logger = LoggingUtils.getLogger(PerfDataVmSampler.class);
+
+    private final PerfDataFile perfData;
+    private final ScheduledExecutorService executor;
+    private final Runnable tick = new Runnable() {
+        @Override
+        public void run() {
+            tick();
+        }
+    };
+    private ScheduledFuture<?> task;
+
+    PerfDataVmSampler(PerfDataFile perfData, ScheduledExecutorService executor) {
+        this(perfData, executor, new SystemClock());
+    }
+
+    PerfDataVmSampler(PerfDataFile perfData, ScheduledExecutorService executor, Clock clock) {
+        super(clock);
+        this.perfData = perfData;
+        this.executor = executor;
+    }
+
+    @Override
+    VmListenerWrapper createWrapper(VmUpdateListener listener) {
+        return new PerfDataVmListenerWrapper(listener, perfData);
+    }
+
+    @Override
+    protected void start() {
+        schedule();
+    }
+
+    @Override
+    protected void stop() {
+        if (task != null) {
+            task.cancel(false);
+            task = null;
+        }
+    }
+
+    @Override
+    protected void tickIntervalChanged(long intervalMillis) {
+        if (task != null) {
+            task.cancel(false);
+            schedule();
+        }
+    }
+
+    @Override
+    protected void detach() {
+        // The mapping is released once the buffer is garbage collected
+    }
+
+    private void schedule() {
+        long interval = getTickIntervalMillis();
+        task = executor.scheduleAtFixedRate(tick, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    void tick() {
+        try {
+            // The file and its entry map are only touched on the executor
+            // thread
+            if (perfData.refresh()) {
+                invalidateCounters();
+            }
+            sample();
+        } catch (RuntimeException e) {
+            // Keep the periodic task alive; a corrupt or truncated file
+            // should not stop sampling of other VMs
+            logger.log(Level.WARNING, "Error reading perfdata", e);
+        }
+    }
+}
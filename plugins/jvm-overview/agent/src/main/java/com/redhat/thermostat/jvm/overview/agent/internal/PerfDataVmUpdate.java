@@ -0,0 +1,111 @@
+/*
+ * Copyright 2012-2017 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+package com.redhat.thermostat.jvm.overview.agent.internal;
+
+import com.redhat.thermostat.jvm.overview.agent.VmCounter;
+import com.redhat.thermostat.jvm.overview.agent.VmUpdate;
+import com.redhat.thermostat.jvm.overview.agent.VmUpdateException;
+
+/**
+ * A {@link VmUpdate} reading counters straight from a VM's perfdata file.
+ */
+class PerfDataVmUpdate implements VmUpdate {
+
+    private final PerfDataFile perfData;
+    private final VmListenerWrapper wrapper;
+
+    PerfDataVmUpdate(PerfDataFile perfData, VmListenerWrapper wrapper) {
+        this.perfData = perfData;
+        this.wrapper = wrapper;
+    }
+
+    @Override
+    public Long getPerformanceCounterLong(String name) throws VmUpdateException {
+        PerfDataFile.Entry entry = perfData.find(name);
+        return entry == null ? null : perfData.getLong(entry);
+    }
+
+    @Override
+    public String getPerformanceCounterString(String name) throws VmUpdateException {
+        PerfDataFile.Entry entry = perfData.find(name);
+        return entry == null ? null : perfData.getString(entry);
+    }
+
+    @Override
+    public VmCounter getCounter(String name) throws VmUpdateException {
+        int version = wrapper.getMonitorSetVersion();
+        return new Counter(name, perfData.find(name), version);
+    }
+
+    private class Counter implements VmCounter {
+
+        private final String name;
+        private final PerfDataFile.Entry entry;
+        private final int monitorSetVersion;
+
+        Counter(String name, PerfDataFile.Entry entry, int monitorSetVersion) {
+            this.name = name;
+            this.entry = entry;
+            this.monitorSetVersion = monitorSetVersion;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public boolean isPresent() {
+            return entry != null;
+        }
+
+        @Override
+        public boolean isValid() {
+            return wrapper.getMonitorSetVersion() == monitorSetVersion;
+        }
+
+        @Override
+        public long getLong(long defaultValue) {
+            return entry == null ? defaultValue : perfData.getLong(entry);
+        }
+
+        @Override
+        public String getString() {
+            return entry == null ? null : perfData.getString(entry);
+        }
+    }
+}
@@ -55,6 +55,7 @@ import sun.jvmstat.monitor.HostIdentifier;
 import sun.jvmstat.monitor.MonitorException;
 import sun.jvmstat.monitor.MonitoredHost;
 
+import java.io.IOException;
 import java.net.URISyntaxException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -64,6 +65,13 @@ import java.util.logging.Logger;
 @Component
 @Service(value = Backend.class)
 public class VMMonitorBackend extends BaseBackend {
+
+    /**
+     * Set to false to find VMs by having jvmstat poll the perfdata
+     * directories instead of watching them.
+     */
+    static final String WATCH_DISCOVERY_PROPERTY = "com.redhat.thermostat.jvm.overview.discovery.watch";
+
     private static final Logger logger = LoggingUtils.getLogger(VMMonitorBackend.class);
 
     @Reference
@@ -81,6 +89,7 @@ public class VMMonitorBackend extends BaseBackend {
 
     private MonitoredHost host;
     private JvmStatHostListener hostListener;
+    private PerfDataDirectoryWatcher watcher;
 
     public VMMonitorBackend() {
         super("VM Basic Monitor Backend",
@@ -108,7 +117,9 @@ public class VMMonitorBackend extends BaseBackend {
                                                    userInfoBuilder, writerId, blacklist);
             HostIdentifier hostId = new HostIdentifier((String) null);
             host = MonitoredHost.getMonitoredHost(hostId);
-            host.addHostListener(hostListener);
+            if (!startWatcher()) {
+                host.addHostListener(hostListener);
+            }
             active = true;
 
         } catch (MonitorException | URISyntaxException me) {
@@ -118,10 +129,30 @@ public class VMMonitorBackend extends BaseBackend {
         return active;
     }
 
+    private boolean startWatcher() {
+        if ("false".equals(System.getProperty(WATCH_DISCOVERY_PROPERTY))) {
+            return false;
+        }
+        watcher = new PerfDataDirectoryWatcher(hostListener, host);
+        try {
+            watcher.start();
+            return true;
+        } catch (IOException e) {
+            logger.log(Level.INFO, "unable to watch perfdata directories, polling with jvmstat", e);
+            watcher = null;
+            return false;
+        }
+    }
+
     @Override
     public synchronized boolean deactivate() {
         try {
-            host.removeHostListener(hostListener);
+            if (watcher != null) {
+                watcher.stop();
+                watcher = null;
+            } else {
+                host.removeHostListener(hostListener);
+            }
             active = false;
         } catch (MonitorException me) {
             logger.log(Level.INFO, "something went wrong in jvmstat's listening to this host");
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2012-2017 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+package com.redhat.thermostat.jvm.overview.agent.internal;
+
+import com.redhat.thermostat.jvm.overview.agent.VmCounter;
+
+import sun.jvmstat.monitor.LongMonitor;
+import sun.jvmstat.monitor.Monitor;
+import sun.jvmstat.monitor.StringMonitor;
+
+class VmCounterImpl implements VmCounter {
+
+    private final String name;
+    private final Monitor monitor;
+    private final VmListenerWrapper wrapper;
+    private final int monitorSetVersion;
+
+    VmCounterImpl(String name, Monitor monitor, VmListenerWrapper wrapper, int monitorSetVersion) {
+        this.name = name;
+        this.monitor = monitor;
+        this.wrapper = wrapper;
+        this.monitorSetVersion = monitorSetVersion;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public boolean isPresent() {
+        return monitor != null;
+    }
+
+    @Override
+    public boolean isValid() {
+        return wrapper.getMonitorSetVersion() == monitorSetVersion;
+    }
+
+    @Override
+    public long getLong(long defaultValue) {
+        if (monitor == null) {
+            return defaultValue;
+        }
+        if (monitor instanceof LongMonitor) {
+            return ((LongMonitor) monitor).longValue();
+        }
+        // Not backed by the usual jvmstat implementation
+        return (Long) monitor.getValue();
+    }
+
+    @Override
+    public String getString() {
+        if (monitor == null) {
+            return null;
+        }
+        if (monitor instanceof StringMonitor) {
+            return ((StringMonitor) monitor).stringValue();
+        }
+        return (String) monitor.getValue();
+    }
+
+}
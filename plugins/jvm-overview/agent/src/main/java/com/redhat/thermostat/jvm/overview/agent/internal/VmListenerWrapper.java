@@ -41,40 +41,37 @@ import java.util.logging.Logger;
 
 import com.redhat.thermostat.common.utils.LoggingUtils;
 
+import com.redhat.thermostat.jvm.overview.agent.VmCounter;
 import com.redhat.thermostat.jvm.overview.agent.VmUpdate;
 import com.redhat.thermostat.jvm.overview.agent.VmUpdateException;
 import com.redhat.thermostat.jvm.overview.agent.VmUpdateListener;
-import sun.jvmstat.monitor.Monitor;
-import sun.jvmstat.monitor.MonitorException;
-import sun.jvmstat.monitor.MonitoredVm;
-import sun.jvmstat.monitor.event.MonitorStatusChangeEvent;
-import sun.jvmstat.monitor.event.VmEvent;
-import sun.jvmstat.monitor.event.VmListener;
 
-public class VmListenerWrapper implements VmListener {
+/**
+ * A {@link VmUpdateListener} subscribed to a {@link VmSampler}, together with
+ * the {@link VmUpdate} it reads counters through.
+ */
+public abstract class VmListenerWrapper {
     
     private static final Logger logger = LoggingUtils.getLogger(VmListenerWrapper.class);
     // Threshold until this listener gets removed from the JVM in case of it throwing
     // exceptions on countersUpdated()
     private static final int EXCEPTION_THRESHOLD = 10;
     private final VmUpdateListener listener;
-    private final MonitoredVm vm;
-    private final VmUpdate update;
     private int exceptionCount;
+    private volatile boolean removed;
+    // Bumped whenever the VM adds or removes monitors, invalidating the
+    // VmCounter handles resolved before
+    private volatile int monitorSetVersion;
 
-    public VmListenerWrapper(VmUpdateListener listener, MonitoredVm vm) {
+    VmListenerWrapper(VmUpdateListener listener) {
         this.listener = listener;
-        this.vm = vm;
-        this.update = new VmUpdateImpl(this);
     }
 
-    @Override
-    public void monitorsUpdated(VmEvent event) {
-        if (!vm.equals(event.getMonitoredVm())) {
-            throw new AssertionError("Received change event for wrong VM");
-        }
+    abstract VmUpdate getUpdate();
+
+    void countersUpdated() {
         try {
-            listener.countersUpdated(update);
+            listener.countersUpdated(getUpdate());
         } catch (Throwable t) {
             handleListenerException(t);
         }
@@ -87,32 +84,28 @@ public class VmListenerWrapper implements VmListener {
             exceptionCount++;
         } else {
             logger.fine("Removing bad listener " + listenerName + " due to too many repeated exceptions.");
-            try {
-                vm.removeVmListener(this);
-            } catch (MonitorException e) {
-                // ignore remove failures for bad listeners
-            }
+            removed = true;
         }
     }
 
-    @Override
-    public void monitorStatusChanged(MonitorStatusChangeEvent event) {
-        // Nothing to do here
+    void invalidateCounters() {
+        monitorSetVersion++;
     }
 
-    @Override
-    public void disconnected(VmEvent event) {
-        // Nothing to do here
+    public VmCounter getCounter(String name) throws VmUpdateException {
+        return getUpdate().getCounter(name);
     }
-    
-    public Monitor getMonitor(String name) throws VmUpdateException {
-        Monitor result;
-        try {
-            result = vm.findByName(name);
-        } catch (MonitorException e) {
-            throw new VmUpdateException("Error communicating with monitored VM", e);
-        }
-        return result;
+
+    /**
+     * @return true if the listener has failed too often and should no
+     * longer receive updates
+     */
+    public boolean isRemoved() {
+        return removed;
+    }
+
+    int getMonitorSetVersion() {
+        return monitorSetVersion;
     }
     
     /*
@@ -123,4 +116,3 @@ public class VmListenerWrapper implements VmListener {
     }
     
 }
-
@@ -0,0 +1,201 @@
+/*
+ * Copyright 2012-2017 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+package com.redhat.thermostat.jvm.overview.agent.internal;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import com.redhat.thermostat.common.Clock;
+import com.redhat.thermostat.jvm.overview.agent.VmUpdateException;
+import com.redhat.thermostat.jvm.overview.agent.VmUpdateListener;
+
+/**
+ * The single sampling loop of a monitored VM. Every listener of every
+ * backend interested in the VM is subscribed here, with its own update
+ * interval. The VM is polled at the shortest of those intervals and each
+ * tick is handed to the subscriptions that are due.
+ * <p>
+ * Subclasses drive the ticks by implementing {@link #start()},
+ * {@link #stop()}, {@link #tickIntervalChanged(long)} and {@link #detach()},
+ * and calling {@link #sample()} on every tick. This class does not depend
+ * on jvmstat, so that VMs can be sampled on runtimes where it is not
+ * available.
+ */
+public abstract class VmSampler {
+
+    private final Clock clock;
+    private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+    private long tickIntervalMillis;
+
+    VmSampler(Clock clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * @return a listener wrapper that reads counters the way this sampler
+     * does
+     */
+    abstract VmListenerWrapper createWrapper(VmUpdateListener listener);
+
+    synchronized void subscribe(VmListenerWrapper wrapper, long intervalMillis) throws VmUpdateException {
+        boolean first = subscriptions.isEmpty();
+        subscriptions.add(new Subscription(wrapper, intervalMillis));
+        updateTickInterval();
+        if (first) {
+            start();
+        }
+    }
+
+    synchronized boolean isSubscribed(VmListenerWrapper wrapper) {
+        for (Subscription subscription : subscriptions) {
+            if (subscription.wrapper == wrapper) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return true if there are no subscriptions left
+     */
+    synchronized boolean unsubscribe(VmListenerWrapper wrapper) {
+        for (Subscription subscription : subscriptions) {
+            if (subscription.wrapper == wrapper) {
+                subscriptions.remove(subscription);
+                break;
+            }
+        }
+        if (subscriptions.isEmpty()) {
+            stop();
+            return true;
+        }
+        updateTickInterval();
+        return false;
+    }
+
+    /**
+     * Drops all subscriptions and releases the VM.
+     */
+    synchronized void close() {
+        if (!subscriptions.isEmpty()) {
+            subscriptions.clear();
+            stop();
+        }
+        detach();
+    }
+
+    private void updateTickInterval() {
+        long shortest = Long.MAX_VALUE;
+        for (Subscription subscription : subscriptions) {
+            shortest = Math.min(shortest, subscription.intervalMillis);
+        }
+        if (shortest != tickIntervalMillis) {
+            tickIntervalMillis = shortest;
+            tickIntervalChanged(shortest);
+        }
+    }
+
+    /**
+     * Starts ticking, once there is a first subscription.
+     */
+    protected abstract void start() throws VmUpdateException;
+
+    /**
+     * Stops ticking, once the last subscription is gone.
+     */
+    protected abstract void stop();
+
+    protected abstract void tickIntervalChanged(long intervalMillis);
+
+    /**
+     * Releases the VM once this sampler is no longer used.
+     */
+    protected abstract void detach();
+
+    long getTickIntervalMillis() {
+        return tickIntervalMillis;
+    }
+
+    /**
+     * Delivers an update to the subscriptions that are due.
+     */
+    protected void sample() {
+        long now = clock.getMonotonicTimeNanos();
+        // Ticks arrive with some jitter; count a subscription as due if it
+        // would otherwise be due before the next tick is closer
+        long slack = TimeUnit.MILLISECONDS.toNanos(tickIntervalMillis) / 2;
+        for (Subscription subscription : subscriptions) {
+            if (subscription.isDue(now, slack)) {
+                subscription.lastDelivery = now;
+                subscription.delivered = true;
+                subscription.wrapper.countersUpdated();
+                if (subscription.wrapper.isRemoved()) {
+                    unsubscribe(subscription.wrapper);
+                }
+            }
+        }
+    }
+
+    /**
+     * Makes all listeners look up their counters again.
+     */
+    protected void invalidateCounters() {
+        for (Subscription subscription : subscriptions) {
+            subscription.wrapper.invalidateCounters();
+        }
+    }
+
+    private static class Subscription {
+
+        private final VmListenerWrapper wrapper;
+        private final long intervalMillis;
+        private final long intervalNanos;
+        private boolean delivered;
+        private long lastDelivery;
+
+        Subscription(VmListenerWrapper wrapper, long intervalMillis) {
+            this.wrapper = wrapper;
+            this.intervalMillis = intervalMillis;
+            this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(intervalMillis);
+        }
+
+        boolean isDue(long now, long slack) {
+            return !delivered || now - lastDelivery >= intervalNanos - slack;
+        }
+    }
+}
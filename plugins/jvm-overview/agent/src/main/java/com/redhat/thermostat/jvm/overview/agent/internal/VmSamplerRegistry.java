@@ -0,0 +1,202 @@
+/*
+ * Copyright 2012-2017 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+package com.redhat.thermostat.jvm.overview.agent.internal;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.felix.scr.annotations.Component;
+import org.apache.felix.scr.annotations.Deactivate;
+import org.apache.felix.scr.annotations.Service;
+
+import com.redhat.thermostat.common.utils.LoggingUtils;
+import com.redhat.thermostat.jvm.overview.agent.VmUpdateException;
+import com.redhat.thermostat.jvm.overview.agent.VmUpdateListener;
+
+import sun.jvmstat.monitor.MonitoredHost;
+
+/**
+ * Hands out one {@link VmSampler} per monitored VM, shared by all backends
+ * in the agent, so that each VM is attached to and polled only once no
+ * matter how many backends listen to it.
+ * <p>
+ * By default VMs are read by mapping their perfdata file directly, with a
+ * single thread driving the samplers of all VMs. If the file can not be
+ * read, or the {@value #DIRECT_PERFDATA_PROPERTY} system property is set
+ * to false, the VM is read through jvmstat instead. jvmstat is only
+ * connected to on the first such fallback, so that the direct reader keeps
+ * working on runtimes where jvmstat is not accessible.
+ * <p>
+ * The registry is a service of this bundle. Deactivating it detaches from
+ * all VMs and stops the perfdata sampling thread.
+ */
+@Component
+@Service(value = VmSamplerRegistry.class)
+public class VmSamplerRegistry {
+
+    static final String DIRECT_PERFDATA_PROPERTY = "com.redhat.thermostat.jvm.overview.perfdata.direct";
+
+    private static final Logger logger = LoggingUtils.getLogger(VmSamplerRegistry.class);
+
+    private final JvmStatSamplerFactory jvmStat;
+    private final PerfDataFileOpener perfDataOpener;
+    private final Map<Integer, VmSampler> samplers = new HashMap<>();
+    private ScheduledExecutorService perfDataExecutor;
+    private boolean deactivated;
+
+    public VmSamplerRegistry() {
+        this(new JvmStatSamplerFactory(),
+                "false".equals(System.getProperty(DIRECT_PERFDATA_PROPERTY)) ? null : new PerfDataFileOpener());
+    }
+
+    /**
+     * Creates a registry which reads all VMs through jvmstat.
+     */
+    public VmSamplerRegistry(MonitoredHost host) {
+        this(new JvmStatSamplerFactory(host), null);
+    }
+
+    VmSamplerRegistry(JvmStatSamplerFactory jvmStat, PerfDataFileOpener perfDataOpener) {
+        this.jvmStat = jvmStat;
+        this.perfDataOpener = perfDataOpener;
+    }
+
+    @Deactivate
+    protected synchronized void deactivate() {
+        deactivated = true;
+        for (VmSampler sampler : samplers.values()) {
+            sampler.close();
+        }
+        samplers.clear();
+        if (perfDataExecutor != null) {
+            perfDataExecutor.shutdownNow();
+            perfDataExecutor = null;
+        }
+    }
+
+    /**
+     * Starts delivering updates for the VM with the given pid to the
+     * listener, attaching to the VM if no other listener has yet.
+     */
+    public synchronized VmListenerWrapper subscribe(int pid, VmUpdateListener listener, long intervalMillis)
+            throws VmUpdateException {
+        if (deactivated) {
+            throw new VmUpdateException("VM sampler registry has been deactivated");
+        }
+        VmSampler sampler = samplers.get(pid);
+        if (sampler == null) {
+            sampler = createSampler(pid);
+            samplers.put(pid, sampler);
+        }
+        VmListenerWrapper wrapper = sampler.createWrapper(listener);
+        try {
+            sampler.subscribe(wrapper, intervalMillis);
+        } catch (VmUpdateException e) {
+            if (sampler.unsubscribe(wrapper)) {
+                release(pid, sampler);
+            }
+            throw e;
+        }
+        return wrapper;
+    }
+
+    /**
+     * Stops delivering updates to the listener, detaching from the VM once
+     * no listeners are left.
+     */
+    public synchronized void unsubscribe(int pid, VmListenerWrapper wrapper) {
+        VmSampler sampler = samplers.get(pid);
+        if (sampler == null || !sampler.isSubscribed(wrapper)) {
+            return;
+        }
+        if (sampler.unsubscribe(wrapper)) {
+            release(pid, sampler);
+        }
+    }
+
+    private VmSampler createSampler(int pid) throws VmUpdateException {
+        if (perfDataOpener != null) {
+            try {
+                return new PerfDataVmSampler(perfDataOpener.open(pid), getPerfDataExecutor());
+            } catch (IOException e) {
+                logger.log(Level.FINE, "Unable to map perfdata of VM " + pid + ", using jvmstat", e);
+            }
+        }
+        return jvmStat.createSampler(pid);
+    }
+
+    private ScheduledExecutorService getPerfDataExecutor() {
+        if (perfDataExecutor == null) {
+            perfDataExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "perfdata-sampler");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return perfDataExecutor;
+    }
+
+    private void release(int pid, VmSampler sampler) {
+        samplers.remove(pid);
+        sampler.detach();
+    }
+
+    /*
+     * For testing purposes only.
+     */
+    VmSampler getSampler(int pid) {
+        return samplers.get(pid);
+    }
+
+    // For testing purposes
+    static class PerfDataFileOpener {
+
+        PerfDataFile open(int pid) throws IOException {
+            return PerfDataFile.open(pid);
+        }
+    }
+
+}
@@ -36,15 +36,16 @@
 
 package com.redhat.thermostat.jvm.overview.agent.internal;
 
+import com.redhat.thermostat.jvm.overview.agent.VmCounter;
 import com.redhat.thermostat.jvm.overview.agent.VmUpdate;
 import com.redhat.thermostat.jvm.overview.agent.VmUpdateException;
 import sun.jvmstat.monitor.Monitor;
 
 public class VmUpdateImpl implements VmUpdate {
     
-    private VmListenerWrapper wrapper;
+    private JvmStatVmListenerWrapper wrapper;
 
-    public VmUpdateImpl(VmListenerWrapper wrapper) {
+    public VmUpdateImpl(JvmStatVmListenerWrapper wrapper) {
         this.wrapper = wrapper;
     }
     
@@ -59,6 +60,11 @@ public class VmUpdateImpl implements VmUpdate {
         return (String) getPerformanceCounter(name);
     }
 
+    @Override
+    public VmCounter getCounter(String name) throws VmUpdateException {
+        return wrapper.getCounter(name);
+    }
+
     private Object getPerformanceCounter(String name) throws VmUpdateException {
         Object result = null;
         Monitor monitor = wrapper.getMonitor(name);
@@ -71,7 +77,7 @@ public class VmUpdateImpl implements VmUpdate {
     /*
      * For testing purposes only.
      */
-    VmListenerWrapper getWrapper() {
+    JvmStatVmListenerWrapper getWrapper() {
         return wrapper;
     }
 
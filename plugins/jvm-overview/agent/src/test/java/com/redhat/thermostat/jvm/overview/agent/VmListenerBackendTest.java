@@ -39,13 +39,17 @@ package com.redhat.thermostat.jvm.overview.agent;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
 import static org.mockito.Matchers.same;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
+import java.io.IOException;
 import java.net.URISyntaxException;
+import java.util.Collections;
 
 import com.redhat.thermostat.jvm.overview.agent.VmStatusListener.Status;
 import org.junit.Before;
@@ -53,7 +57,9 @@ import org.junit.Test;
 
 import sun.jvmstat.monitor.MonitorException;
 
+import com.redhat.thermostat.common.config.experimental.ConfigurationInfoSource;
 import com.redhat.thermostat.common.internal.test.Bug;
+import com.redhat.thermostat.common.plugin.PluginConfiguration;
 import com.redhat.thermostat.storage.core.WriterID;
 
 public class VmListenerBackendTest {
@@ -136,11 +142,11 @@ public class VmListenerBackendTest {
         // Should be no response if not observing new jvm.
         backend.setObserveNewJvm(false);
         backend.vmStatusChanged(Status.VM_STARTED, VM_ID, VM_PID);
-        verify(monitor, times(0)).handleNewVm(same(listener), same(VM_PID));
+        verify(monitor, times(0)).handleNewVm(same(listener), same(VM_PID), anyLong());
 
         backend.setObserveNewJvm(true);
         backend.vmStatusChanged(Status.VM_STARTED, VM_ID, VM_PID);
-        verify(monitor).handleNewVm(listener, VM_PID);
+        verify(monitor).handleNewVm(listener, VM_PID, VmMonitor.DEFAULT_UPDATE_INTERVAL);
     }
     
     /**
@@ -161,7 +167,7 @@ public class VmListenerBackendTest {
         VmMonitor testMonitor = mock(VmMonitor.class);
         testBackend.setMonitor(testMonitor);
         testBackend.vmStatusChanged(Status.VM_STARTED, VM_ID, VM_PID);
-        verify(testMonitor, times(0)).handleNewVm(any(VmUpdateListener.class), any(int.class));
+        verify(testMonitor, times(0)).handleNewVm(any(VmUpdateListener.class), any(int.class), anyLong());
     }
 
     @Test
@@ -170,7 +176,7 @@ public class VmListenerBackendTest {
         backend.setObserveNewJvm(true);
         backend.vmStatusChanged(Status.VM_ACTIVE, VM_ID, VM_PID);
 
-        verify(monitor).handleNewVm(listener, VM_PID);
+        verify(monitor).handleNewVm(listener, VM_PID, VmMonitor.DEFAULT_UPDATE_INTERVAL);
     }
 
     @Test
@@ -183,6 +189,31 @@ public class VmListenerBackendTest {
         verify(monitor).handleStoppedVm(VM_PID);
     }
 
+    @Test
+    public void testNewVMWithCustomUpdateInterval() {
+        VmListenerBackend slowBackend = new TestBackend("Test Backend", "Backend for test", "Test Co.");
+        slowBackend.setVmUpdateInterval(30000);
+        slowBackend.setMonitor(monitor);
+        slowBackend.initialize(writerId, registrar, VERSION);
+        slowBackend.setObserveNewJvm(true);
+        slowBackend.vmStatusChanged(Status.VM_STARTED, VM_ID, VM_PID);
+
+        verify(monitor).handleNewVm(listener, VM_PID, 30000);
+    }
+
+    @Test
+    public void testNewVMWithConfiguredUpdateInterval() throws IOException {
+        ConfigurationInfoSource source = mock(ConfigurationInfoSource.class);
+        when(source.getConfiguration("test", "gateway.properties"))
+                .thenReturn(Collections.singletonMap("pollingInterval", "5000"));
+        backend.setVmUpdateInterval(new PluginConfiguration(source, "test"));
+        backend.initialize(writerId, registrar, VERSION);
+        backend.setObserveNewJvm(true);
+        backend.vmStatusChanged(Status.VM_STARTED, VM_ID, VM_PID);
+
+        verify(monitor).handleNewVm(listener, VM_PID, 5000);
+    }
+
     @Test
     public void testDeactivateUnregistersListener() throws URISyntaxException, MonitorException {
         backend.initialize(writerId, registrar, VERSION);
@@ -43,6 +43,7 @@ import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.isA;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
@@ -51,12 +52,13 @@ import java.net.URISyntaxException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import com.redhat.thermostat.jvm.overview.agent.internal.JvmStatVmSampler;
 import com.redhat.thermostat.jvm.overview.agent.internal.TestLogHandler;
 import com.redhat.thermostat.jvm.overview.agent.internal.VmListenerWrapper;
+import com.redhat.thermostat.jvm.overview.agent.internal.VmSamplerRegistry;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
-import org.mockito.ArgumentCaptor;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
 
@@ -110,8 +112,7 @@ public class VmMonitorTest {
 
         monitoredVm = mock(MonitoredVm.class);
 
-        monitor = new VmMonitor(checker);
-        monitor.setHost(host);
+        monitor = new VmMonitor(checker, new VmSamplerRegistry(host));
     }
     
     private Level setupTestLoggerAndReturnOriginalLevel() {
@@ -132,15 +133,14 @@ public class VmMonitorTest {
         VmUpdateListener listener = mock(VmUpdateListener.class);
         monitor.handleNewVm(listener, VM_PID);
         
-        // Check listener registered
-        ArgumentCaptor<VmListenerWrapper> captor = ArgumentCaptor.forClass(VmListenerWrapper.class);
-        verify(monitoredVm).addVmListener(captor.capture());
-        VmListenerWrapper wrapper = captor.getValue();
-        assertEquals(listener, wrapper.getVmUpdateListener());
+        // Check sampler registered
+        verify(monitoredVm).addVmListener(isA(JvmStatVmSampler.class));
+        verify(monitoredVm).setInterval((int) VmMonitor.DEFAULT_UPDATE_INTERVAL);
         
         // Check pid map
         assertTrue(monitor.getPidToDataMap().containsKey(VM_PID));
-        assertEquals(wrapper, monitor.getPidToDataMap().get(VM_PID).getSecond());
+        VmListenerWrapper wrapper = monitor.getPidToDataMap().get(VM_PID);
+        assertEquals(listener, wrapper.getVmUpdateListener());
     }
     
     /*
@@ -214,11 +214,9 @@ public class VmMonitorTest {
         monitor.handleNewVm(listener, VM_PID);
         monitor.handleStoppedVm(VM_PID);
 
-        // Check listener unregistered
-        ArgumentCaptor<VmListenerWrapper> captor = ArgumentCaptor.forClass(VmListenerWrapper.class);
-        verify(monitoredVm).removeVmListener(captor.capture());
-        VmListenerWrapper wrapper = captor.getValue();
-        assertEquals(listener, wrapper.getVmUpdateListener());
+        // Check sampler unregistered
+        verify(monitoredVm).removeVmListener(isA(JvmStatVmSampler.class));
+        verify(monitoredVm).detach();
         
         assertFalse(monitor.getPidToDataMap().containsKey(VM_PID));
     }
@@ -269,18 +267,39 @@ public class VmMonitorTest {
         
         monitor.removeVmListeners();
         
-        ArgumentCaptor<VmListenerWrapper> captor1 = ArgumentCaptor.forClass(VmListenerWrapper.class);
-        verify(monitoredVm).removeVmListener(captor1.capture());
-        VmListenerWrapper wrapper1 = captor1.getValue();
-        assertEquals(listener1, wrapper1.getVmUpdateListener());
-        
-        ArgumentCaptor<VmListenerWrapper> captor2 = ArgumentCaptor.forClass(VmListenerWrapper.class);
-        verify(monitoredVm2).removeVmListener(captor2.capture());
-        VmListenerWrapper wrapper2 = captor2.getValue();
-        assertEquals(listener2, wrapper2.getVmUpdateListener());
+        verify(monitoredVm).removeVmListener(isA(JvmStatVmSampler.class));
+        verify(monitoredVm).detach();
+        verify(monitoredVm2).removeVmListener(isA(JvmStatVmSampler.class));
+        verify(monitoredVm2).detach();
         
         assertEquals(0, monitor.getPidToDataMap().size());
     }
 
+    @Test
+    public void testMonitorsShareSampler() throws URISyntaxException, MonitorException {
+        final int VM_PID = 1;
+        VmIdentifier VM_ID = new VmIdentifier(String.valueOf(VM_PID));
+        when(host.getMonitoredVm(VM_ID)).thenReturn(monitoredVm);
+        VmSamplerRegistry samplers = new VmSamplerRegistry(host);
+        VmMonitor gcMonitor = new VmMonitor(checker, samplers);
+        VmMonitor classMonitor = new VmMonitor(checker, samplers);
+
+        gcMonitor.handleNewVm(mock(VmUpdateListener.class), VM_PID, 1000);
+        classMonitor.handleNewVm(mock(VmUpdateListener.class), VM_PID, 30000);
+
+        // Attached and polled once, at the shorter of the two intervals
+        verify(host).getMonitoredVm(VM_ID);
+        verify(monitoredVm).addVmListener(isA(JvmStatVmSampler.class));
+        verify(monitoredVm).setInterval(1000);
+
+        gcMonitor.handleStoppedVm(VM_PID);
+        verify(monitoredVm).setInterval(30000);
+        verify(monitoredVm, never()).detach();
+
+        classMonitor.handleStoppedVm(VM_PID);
+        verify(monitoredVm).removeVmListener(isA(JvmStatVmSampler.class));
+        verify(monitoredVm).detach();
+    }
+
 }
 
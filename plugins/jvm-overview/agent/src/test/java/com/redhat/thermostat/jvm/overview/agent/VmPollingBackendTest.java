@@ -36,9 +36,16 @@
 
 package com.redhat.thermostat.jvm.overview.agent;
 
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import com.redhat.thermostat.jvm.overview.agent.VmStatusListener.Status;
 import org.junit.Before;
@@ -48,6 +55,7 @@ import com.redhat.thermostat.common.Version;
 import com.redhat.thermostat.common.internal.test.Bug;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
@@ -250,6 +258,110 @@ public class VmPollingBackendTest {
         verify(action, never()).run(eq(vmId2), eq(pid2));
     }
     
+    @Test(timeout = 10000)
+    public void verifyParallelPollingCoversAllVms() {
+        final Set<Integer> polled = Collections.newSetFromMap(new ConcurrentHashMap<Integer, Boolean>());
+        Set<Integer> expected = new HashSet<>();
+        for (int pid = 1; pid <= 20; pid++) {
+            backend.vmStatusChanged(Status.VM_ACTIVE, "vm" + pid, pid);
+            expected.add(pid);
+        }
+        backend.registerAction(new VmPollingAction() {
+            @Override
+            public void run(String vmId, int pid) {
+                polled.add(pid);
+            }
+        });
+        backend.setParallelism(4, 5000);
+        backend.preActivate();
+        try {
+            backend.doScheduledActions();
+        } finally {
+            backend.postDeactivate();
+        }
+
+        assertEquals(expected, polled);
+        assertEquals(0, backend.getSkippedActions());
+    }
+
+    @Test(timeout = 10000)
+    public void verifyParallelPollingRunsVmsAtTheSameTime() {
+        backend.vmStatusChanged(Status.VM_ACTIVE, "vm1", 1);
+        backend.vmStatusChanged(Status.VM_ACTIVE, "vm2", 2);
+        final CyclicBarrier bothRunning = new CyclicBarrier(2);
+        final Set<Integer> met = Collections.newSetFromMap(new ConcurrentHashMap<Integer, Boolean>());
+        backend.registerAction(new VmPollingAction() {
+            @Override
+            public void run(String vmId, int pid) {
+                try {
+                    // only passes if the other VM is polled at the same time
+                    bothRunning.await(5, TimeUnit.SECONDS);
+                    met.add(pid);
+                } catch (Exception e) {
+                    // not met
+                }
+            }
+        });
+        backend.setParallelism(2, 8000);
+        backend.preActivate();
+        try {
+            backend.doScheduledActions();
+        } finally {
+            backend.postDeactivate();
+        }
+
+        assertEquals(2, met.size());
+    }
+
+    @Test(timeout = 10000)
+    public void verifyActionsMissingDeadlineAreSkipped() throws InterruptedException {
+        for (int pid = 1; pid <= 3; pid++) {
+            backend.vmStatusChanged(Status.VM_ACTIVE, "vm" + pid, pid);
+        }
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch finished = new CountDownLatch(2);
+        backend.registerAction(new VmPollingAction() {
+            @Override
+            public void run(String vmId, int pid) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                finished.countDown();
+            }
+        });
+        backend.setParallelism(2, 100);
+        backend.preActivate();
+        try {
+            long start = System.nanoTime();
+            // both threads get stuck on a VM each, the third VM misses the deadline
+            backend.doScheduledActions();
+            assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+            assertEquals(1, backend.getSkippedActions());
+
+            // no thread is free, so every VM misses this round
+            backend.doScheduledActions();
+            assertEquals(4, backend.getSkippedActions());
+
+            release.countDown();
+            finished.await();
+        } finally {
+            backend.postDeactivate();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void verifyInvalidParallelism() {
+        backend.setParallelism(0, 1000);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void verifyParallelismCanNotChangeWhileActive() {
+        backend.activate();
+        backend.setParallelism(2, 1000);
+    }
+
     private static class BadVmPollingAction implements VmPollingAction {
         
         private final Map<String, Integer> callCounts = new HashMap<>();
@@ -39,7 +39,7 @@ package com.redhat.thermostat.jvm.overview.agent;
 import static org.junit.Assert.*;
 import static org.mockito.Mockito.*;
 
-import com.redhat.thermostat.jvm.overview.agent.internal.VmListenerWrapper;
+import com.redhat.thermostat.jvm.overview.agent.internal.JvmStatVmListenerWrapper;
 import com.redhat.thermostat.jvm.overview.agent.internal.VmUpdateImpl;
 import org.junit.Before;
 import org.junit.Test;
@@ -49,11 +49,11 @@ import sun.jvmstat.monitor.Monitor;
 public class VmUpdateImplTest {
 
     private VmUpdateImpl update;
-    private VmListenerWrapper wrapper;
+    private JvmStatVmListenerWrapper wrapper;
 
     @Before
     public void setUp() throws Exception {
-        wrapper = mock(VmListenerWrapper.class);
+        wrapper = mock(JvmStatVmListenerWrapper.class);
         update = new VmUpdateImpl(wrapper);
     }
 
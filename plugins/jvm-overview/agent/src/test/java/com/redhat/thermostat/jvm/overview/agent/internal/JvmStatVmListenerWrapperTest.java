@@ -37,12 +37,19 @@
 package com.redhat.thermostat.jvm.overview.agent.internal;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.util.Arrays;
+import java.util.Collections;
+
+import com.redhat.thermostat.jvm.overview.agent.VmCounter;
 import com.redhat.thermostat.jvm.overview.agent.VmUpdate;
 import com.redhat.thermostat.jvm.overview.agent.VmUpdateException;
 import com.redhat.thermostat.jvm.overview.agent.VmUpdateListener;
@@ -52,14 +59,17 @@ import org.mockito.ArgumentCaptor;
 
 import com.redhat.thermostat.common.internal.test.Bug;
 
+import sun.jvmstat.monitor.LongMonitor;
 import sun.jvmstat.monitor.Monitor;
 import sun.jvmstat.monitor.MonitorException;
 import sun.jvmstat.monitor.MonitoredVm;
+import sun.jvmstat.monitor.StringMonitor;
+import sun.jvmstat.monitor.event.MonitorStatusChangeEvent;
 import sun.jvmstat.monitor.event.VmEvent;
 
-public class VmListenerWrapperTest {
+public class JvmStatVmListenerWrapperTest {
 
-    private VmListenerWrapper wrapper;
+    private JvmStatVmListenerWrapper wrapper;
     private MonitoredVm monitoredVm;
     private VmUpdateListener listener;
 
@@ -67,7 +77,7 @@ public class VmListenerWrapperTest {
     public void setUp() throws Exception {
         listener = mock(VmUpdateListener.class);
         monitoredVm = mock(MonitoredVm.class);
-        wrapper = new VmListenerWrapper(listener, monitoredVm);
+        wrapper = new JvmStatVmListenerWrapper(listener, monitoredVm);
     }
     
     /**
@@ -79,7 +89,7 @@ public class VmListenerWrapperTest {
          summary = "Adverse Backend breaks other Backends badly ",
          url = "http://icedtea.classpath.org/bugzilla/show_bug.cgi?id=3242")
     @Test
-    public void testMonitorsUpdatedListenerExceptions() throws MonitorException {
+    public void testMonitorsUpdatedListenerExceptions() throws MonitorException, VmUpdateException {
         final int beyondThresholdLimit = 11;
         VmUpdateListener badListener = new VmUpdateListener() {
             @Override
@@ -87,38 +97,29 @@ public class VmListenerWrapperTest {
                 throw new RuntimeException("countersUpdated() testing!");
             }
         };
-        VmListenerWrapper vmListenerWrapper = new VmListenerWrapper(badListener, monitoredVm);
+        JvmStatVmListenerWrapper vmListenerWrapper = new JvmStatVmListenerWrapper(badListener, monitoredVm);
+        JvmStatVmSampler sampler = new JvmStatVmSampler(monitoredVm);
+        sampler.subscribe(vmListenerWrapper, 0);
         VmEvent event = mock(VmEvent.class);
         for (int i = 0; i < beyondThresholdLimit; i++) {
             when(event.getMonitoredVm()).thenReturn(monitoredVm);
             
-            vmListenerWrapper.monitorsUpdated(event);
+            sampler.monitorsUpdated(event);
             
         }
-        verify(monitoredVm, times(1)).removeVmListener(vmListenerWrapper);
+        assertTrue(vmListenerWrapper.isRemoved());
+        verify(monitoredVm, times(1)).removeVmListener(sampler);
     }
 
     @Test
-    public void testMonitorsUpdated() {
-        VmEvent event = mock(VmEvent.class);
-        when(event.getMonitoredVm()).thenReturn(monitoredVm);
-        
-        wrapper.monitorsUpdated(event);
+    public void testCountersUpdated() {
+        wrapper.countersUpdated();
         
         ArgumentCaptor<VmUpdateImpl> captor = ArgumentCaptor.forClass(VmUpdateImpl.class);
         verify(listener).countersUpdated(captor.capture());
         VmUpdateImpl update = captor.getValue();
         assertEquals(wrapper, update.getWrapper());
     }
-    
-    @Test(expected=AssertionError.class)
-    public void testMonitorsUpdatedWrongVm() {
-        VmEvent event = mock(VmEvent.class);
-        MonitoredVm badVm = mock(MonitoredVm.class);
-        when(event.getMonitoredVm()).thenReturn(badVm);
-        
-        wrapper.monitorsUpdated(event);
-    }
 
     @Test
     public void testGetCounter() throws MonitorException, VmUpdateException {
@@ -150,5 +151,55 @@ public class VmListenerWrapperTest {
         wrapper.getMonitor(counter);
     }
 
-}
+    @Test
+    public void testGetCounterHandle() throws MonitorException, VmUpdateException {
+        LongMonitor longMonitor = mock(LongMonitor.class);
+        when(longMonitor.longValue()).thenReturn(42L);
+        StringMonitor stringMonitor = mock(StringMonitor.class);
+        when(stringMonitor.stringValue()).thenReturn("value");
+        when(monitoredVm.findByName("long")).thenReturn(longMonitor);
+        when(monitoredVm.findByName("string")).thenReturn(stringMonitor);
+
+        VmCounter longCounter = wrapper.getCounter("long");
+        VmCounter stringCounter = wrapper.getCounter("string");
+
+        assertEquals("long", longCounter.getName());
+        assertTrue(longCounter.isPresent());
+        assertTrue(longCounter.isValid());
+        assertEquals(42L, longCounter.getLong(-1));
+        assertEquals("value", stringCounter.getString());
+        verify(longMonitor, never()).getValue();
+    }
 
+    @Test
+    public void testGetCounterHandleNotFound() throws MonitorException, VmUpdateException {
+        when(monitoredVm.findByName("myCounter")).thenReturn(null);
+
+        VmCounter counter = wrapper.getCounter("myCounter");
+
+        assertFalse(counter.isPresent());
+        assertTrue(counter.isValid());
+        assertEquals(-1L, counter.getLong(-1));
+        assertNull(counter.getString());
+    }
+
+    @Test
+    public void testCounterHandleInvalidatedByMonitorChange() throws MonitorException, VmUpdateException {
+        JvmStatVmSampler sampler = new JvmStatVmSampler(monitoredVm);
+        sampler.subscribe(wrapper, 1000);
+        VmCounter counter = wrapper.getCounter("myCounter");
+
+        MonitorStatusChangeEvent unchanged = mock(MonitorStatusChangeEvent.class);
+        when(unchanged.getInserted()).thenReturn(Collections.emptyList());
+        when(unchanged.getRemoved()).thenReturn(Collections.emptyList());
+        sampler.monitorStatusChanged(unchanged);
+        assertTrue(counter.isValid());
+
+        MonitorStatusChangeEvent inserted = mock(MonitorStatusChangeEvent.class);
+        when(inserted.getInserted()).thenReturn(Arrays.asList(mock(Monitor.class)));
+        sampler.monitorStatusChanged(inserted);
+        assertFalse(counter.isValid());
+        assertTrue(wrapper.getCounter("myCounter").isValid());
+    }
+
+}
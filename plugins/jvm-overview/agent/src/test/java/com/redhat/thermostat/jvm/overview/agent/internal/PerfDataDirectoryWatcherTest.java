@@ -0,0 +1,175 @@
+/*
+ * Copyright 2012-2017 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+package com.redhat.thermostat.jvm.overview.agent.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Collections;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.redhat.thermostat.common.Clock;
+import com.redhat.thermostat.common.portability.ProcessChecker;
+
+import sun.jvmstat.monitor.MonitoredHost;
+
+public class PerfDataDirectoryWatcherTest {
+
+    // Long enough for the watch service to report an event
+    private static final int MAX_POLLS = 50;
+
+    @Rule
+    public TemporaryFolder tmpDir = new TemporaryFolder();
+
+    private File userDir;
+    private JvmStatHostListener listener;
+    private MonitoredHost host;
+    private ProcessChecker processChecker;
+    private PerfDataDirectoryWatcher watcher;
+
+    @Before
+    public void setUp() throws IOException {
+        userDir = tmpDir.newFolder(PerfDataFile.DIRECTORY_PREFIX + "test");
+        listener = mock(JvmStatHostListener.class);
+        host = mock(MonitoredHost.class);
+        processChecker = mock(ProcessChecker.class);
+        when(processChecker.exists(1)).thenReturn(true);
+        when(processChecker.exists(2)).thenReturn(true);
+        watcher = new PerfDataDirectoryWatcher(tmpDir.getRoot(), listener, host, processChecker, mock(Clock.class));
+    }
+
+    @After
+    public void tearDown() {
+        watcher.stop();
+    }
+
+    @Test
+    public void testReportsRunningVmsOnOpen() throws IOException {
+        writePerfData(new File(userDir, "1"), true);
+        writePerfData(new File(userDir, "3"), true); // stale, pid 3 is gone
+        new File(userDir, "not-a-pid").createNewFile();
+
+        watcher.open();
+
+        verify(listener).vmStarted(1, host);
+        verify(listener, never()).vmStarted(3, host);
+        assertEquals(Collections.singleton(1), watcher.getRunning());
+    }
+
+    @Test
+    public void testNewAndDeletedFiles() throws Exception {
+        watcher.open();
+
+        File file = new File(userDir, "2");
+        writePerfData(file, true);
+        pollUntilRunning(true, 2);
+        verify(listener).vmStarted(2, host);
+
+        assertTrue(file.delete());
+        pollUntilRunning(false, 2);
+        verify(listener).vmStopped(2, host);
+    }
+
+    @Test
+    public void testWaitsUntilAccessible() throws Exception {
+        watcher.open();
+
+        File file = new File(userDir, "2");
+        writePerfData(file, false);
+        for (int i = 0; i < 5; i++) {
+            watcher.poll();
+        }
+        verify(listener, never()).vmStarted(2, host);
+
+        writePerfData(file, true);
+        pollUntilRunning(true, 2);
+        verify(listener).vmStarted(2, host);
+    }
+
+    @Test
+    public void testNewUserDirectory() throws Exception {
+        watcher.open();
+
+        File otherUser = new File(tmpDir.getRoot(), PerfDataFile.DIRECTORY_PREFIX + "other");
+        assertTrue(otherUser.mkdir());
+        writePerfData(new File(otherUser, "2"), true);
+        pollUntilRunning(true, 2);
+        verify(listener).vmStarted(2, host);
+    }
+
+    @Test
+    public void testKilledVmLeavesFile() throws Exception {
+        writePerfData(new File(userDir, "1"), true);
+        watcher.open();
+
+        when(processChecker.exists(1)).thenReturn(false);
+        watcher.checkLiveness();
+        verify(listener).vmStopped(1, host);
+        assertTrue(watcher.getRunning().isEmpty());
+    }
+
+    private void pollUntilRunning(boolean running, int pid) throws InterruptedException {
+        for (int i = 0; i < MAX_POLLS && watcher.getRunning().contains(pid) != running; i++) {
+            watcher.poll();
+        }
+        assertEquals(running, watcher.getRunning().contains(pid));
+    }
+
+    private static void writePerfData(File file, boolean accessible) throws IOException {
+        ByteBuffer buffer = new PerfDataFileBuilder(ByteOrder.nativeOrder(), 256).getBuffer();
+        if (!accessible) {
+            buffer.put(7, (byte) 0);
+        }
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(buffer.array());
+        }
+    }
+}
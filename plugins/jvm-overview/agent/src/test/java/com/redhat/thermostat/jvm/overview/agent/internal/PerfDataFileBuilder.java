@@ -0,0 +1,118 @@
+/*
+ * Copyright 2012-2017 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+package com.redhat.thermostat.jvm.overview.agent.internal;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes synthetic perfdata files, laid out the way HotSpot lays them out.
+ */
+class PerfDataFileBuilder {
+
+    private final ByteBuffer buffer;
+    private int entries;
+
+    PerfDataFileBuilder(ByteOrder order, int capacity) {
+        buffer = ByteBuffer.allocate(capacity);
+        buffer.order(ByteOrder.BIG_ENDIAN).putInt(0, PerfDataFile.MAGIC);
+        buffer.order(order);
+        buffer.put(4, (byte) (order == ByteOrder.BIG_ENDIAN ? 0 : 1));
+        buffer.put(5, (byte) PerfDataFile.SUPPORTED_MAJOR_VERSION);
+        buffer.put(7, (byte) 1);
+        buffer.putInt(24, PerfDataFile.PROLOGUE_SIZE);
+        buffer.position(PerfDataFile.PROLOGUE_SIZE);
+        updateHeader();
+    }
+
+    ByteBuffer getBuffer() {
+        return buffer;
+    }
+
+    /**
+     * @return the offset of the value, for updating it later
+     */
+    int addLong(String name, long value) {
+        int dataOffset = addEntry(name, PerfDataFile.TYPE_LONG, 0, 8);
+        buffer.putLong(dataOffset, value);
+        return dataOffset;
+    }
+
+    int addString(String name, String value, int maxLength) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        int dataOffset = addEntry(name, PerfDataFile.TYPE_BYTE, maxLength, maxLength);
+        for (int i = 0; i < bytes.length; i++) {
+            buffer.put(dataOffset + i, bytes[i]);
+        }
+        return dataOffset;
+    }
+
+    void setLong(int dataOffset, long value) {
+        buffer.putLong(dataOffset, value);
+    }
+
+    private int addEntry(String name, byte type, int vectorLength, int dataSize) {
+        int start = buffer.position();
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        int nameOffset = 20;
+        // Name is NUL terminated, data is 8 byte aligned
+        int dataOffset = align(nameOffset + nameBytes.length + 1);
+        int length = align(dataOffset + dataSize);
+        buffer.putInt(start, length);
+        buffer.putInt(start + 4, nameOffset);
+        buffer.putInt(start + 8, vectorLength);
+        buffer.put(start + 12, type);
+        buffer.putInt(start + 16, dataOffset);
+        for (int i = 0; i < nameBytes.length; i++) {
+            buffer.put(start + nameOffset + i, nameBytes[i]);
+        }
+        buffer.position(start + length);
+        entries++;
+        updateHeader();
+        return start + dataOffset;
+    }
+
+    private void updateHeader() {
+        buffer.putInt(8, buffer.position());
+        buffer.putInt(28, entries);
+    }
+
+    private static int align(int offset) {
+        return (offset + 7) & ~7;
+    }
+}
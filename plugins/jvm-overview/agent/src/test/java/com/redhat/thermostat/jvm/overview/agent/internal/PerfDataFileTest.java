@@ -0,0 +1,160 @@
+/*
+ * Copyright 2012-2017 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+package com.redhat.thermostat.jvm.overview.agent.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeNoException;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.junit.Test;
+
+public class PerfDataFileTest {
+
+    @Test
+    public void testReadBigEndian() throws IOException {
+        verifyRead(ByteOrder.BIG_ENDIAN);
+    }
+
+    @Test
+    public void testReadLittleEndian() throws IOException {
+        verifyRead(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private void verifyRead(ByteOrder order) throws IOException {
+        PerfDataFileBuilder builder = new PerfDataFileBuilder(order, 1024);
+        int counter = builder.addLong("sun.gc.collector.0.invocations", 3);
+        builder.addString("java.property.java.version", "1.8.0", 32);
+
+        PerfDataFile file = new PerfDataFile(builder.getBuffer());
+        assertEquals(2, file.getEntryCount());
+        PerfDataFile.Entry invocations = file.find("sun.gc.collector.0.invocations");
+        assertTrue(invocations.isLong());
+        assertEquals(3, file.getLong(invocations));
+        PerfDataFile.Entry version = file.find("java.property.java.version");
+        assertFalse(version.isLong());
+        assertEquals("1.8.0", file.getString(version));
+        assertNull(file.find("no.such.counter"));
+
+        // The VM updates values in place
+        builder.setLong(counter, 4);
+        assertEquals(4, file.getLong(invocations));
+    }
+
+    @Test
+    public void testRefreshPicksUpNewEntries() throws IOException {
+        PerfDataFileBuilder builder = new PerfDataFileBuilder(ByteOrder.LITTLE_ENDIAN, 1024);
+        builder.addLong("first", 1);
+        PerfDataFile file = new PerfDataFile(builder.getBuffer());
+        assertFalse(file.refresh());
+        assertNull(file.find("second"));
+
+        builder.addLong("second", 2);
+        assertTrue(file.refresh());
+        assertEquals(2, file.getEntryCount());
+        assertEquals(2, file.getLong(file.find("second")));
+        assertEquals(1, file.getLong(file.find("first")));
+    }
+
+    @Test(expected = ClassCastException.class)
+    public void testTypeMismatch() throws IOException {
+        PerfDataFileBuilder builder = new PerfDataFileBuilder(ByteOrder.LITTLE_ENDIAN, 1024);
+        builder.addString("name", "value", 16);
+        PerfDataFile file = new PerfDataFile(builder.getBuffer());
+        file.getLong(file.find("name"));
+    }
+
+    @Test
+    public void testRejectsBadMagic() {
+        ByteBuffer buffer = new PerfDataFileBuilder(ByteOrder.LITTLE_ENDIAN, 1024).getBuffer();
+        buffer.putInt(0, 0xdeadbeef);
+        try {
+            new PerfDataFile(buffer);
+            fail("bad magic accepted");
+        } catch (IOException e) {
+            // pass
+        }
+    }
+
+    @Test
+    public void testRejectsInaccessibleFile() {
+        ByteBuffer buffer = new PerfDataFileBuilder(ByteOrder.LITTLE_ENDIAN, 1024).getBuffer();
+        buffer.put(7, (byte) 0);
+        try {
+            new PerfDataFile(buffer);
+            fail("inaccessible file accepted");
+        } catch (IOException e) {
+            // pass
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testLocateMissing() throws IOException {
+        PerfDataFile.locate(new File("/does/not/exist"), 1);
+    }
+
+    /*
+     * Reads the perfdata file of the JVM running this test, if it has one.
+     */
+    @Test
+    public void testReadOwnPerfData() {
+        String name = ManagementFactory.getRuntimeMXBean().getName();
+        int pid = Integer.parseInt(name.substring(0, name.indexOf('@')));
+        PerfDataFile file = null;
+        try {
+            file = PerfDataFile.open(pid);
+        } catch (IOException e) {
+            assumeNoException(e);
+        }
+        PerfDataFile.Entry version = file.find("java.property.java.version");
+        assumeTrue(version != null);
+        assertEquals(System.getProperty("java.version"), file.getString(version));
+        PerfDataFile.Entry vmStart = file.find("sun.rt.createVmBeginTime");
+        assertNotNull(vmStart);
+        assertTrue(file.getLong(vmStart) > 0);
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright 2012-2017 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+package com.redhat.thermostat.jvm.overview.agent.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.redhat.thermostat.common.Clock;
+import com.redhat.thermostat.jvm.overview.agent.VmCounter;
+import com.redhat.thermostat.jvm.overview.agent.VmUpdate;
+import com.redhat.thermostat.jvm.overview.agent.VmUpdateListener;
+
+public class PerfDataVmSamplerTest {
+
+    private PerfDataFileBuilder builder;
+    private int invocationsOffset;
+    private ScheduledExecutorService executor;
+    private ScheduledFuture<?> future;
+    private Clock clock;
+    private PerfDataVmSampler sampler;
+
+    @Before
+    public void setUp() throws Exception {
+        builder = new PerfDataFileBuilder(ByteOrder.nativeOrder(), 4096);
+        invocationsOffset = builder.addLong("sun.gc.collector.0.invocations", 1);
+        builder.addString("java.property.java.version", "1.8.0", 32);
+        executor = mock(ScheduledExecutorService.class);
+        future = mock(ScheduledFuture.class);
+        doAnswer(new Answer<ScheduledFuture<?>>() {
+            @Override
+            public ScheduledFuture<?> answer(InvocationOnMock invocation) throws Throwable {
+                return future;
+            }
+        }).when(executor).scheduleAtFixedRate(any(Runnable.class), any(Long.class), any(Long.class), any(TimeUnit.class));
+        clock = mock(Clock.class);
+        sampler = new PerfDataVmSampler(new PerfDataFile(builder.getBuffer()), executor, clock);
+    }
+
+    @Test
+    public void testScheduledAtShortestInterval() throws Exception {
+        VmUpdateListener listener = mock(VmUpdateListener.class);
+        sampler.subscribe(sampler.createWrapper(listener), 5000);
+        verify(executor).scheduleAtFixedRate(any(Runnable.class), eq(5000L), eq(5000L), eq(TimeUnit.MILLISECONDS));
+
+        VmListenerWrapper fast = sampler.createWrapper(mock(VmUpdateListener.class));
+        sampler.subscribe(fast, 1000);
+        verify(future).cancel(false);
+        verify(executor).scheduleAtFixedRate(any(Runnable.class), eq(1000L), eq(1000L), eq(TimeUnit.MILLISECONDS));
+
+        sampler.unsubscribe(fast);
+        assertEquals(5000, sampler.getTickIntervalMillis());
+    }
+
+    @Test
+    public void testTickReadsCounters() throws Exception {
+        final List<Long> invocations = new ArrayList<>();
+        final List<String> versions = new ArrayList<>();
+        VmUpdateListener listener = new VmUpdateListener() {
+            @Override
+            public void countersUpdated(VmUpdate update) {
+                try {
+                    invocations.add(update.getCounter("sun.gc.collector.0.invocations").getLong(-1));
+                    versions.add(update.getPerformanceCounterString("java.property.java.version"));
+                    assertNull(update.getPerformanceCounterLong("no.such.counter"));
+                } catch (Exception e) {
+                    throw new AssertionError(e);
+                }
+            }
+        };
+        sampler.subscribe(sampler.createWrapper(listener), 1000);
+
+        sampler.tick();
+        builder.setLong(invocationsOffset, 2);
+        when(clock.getMonotonicTimeNanos()).thenReturn(TimeUnit.SECONDS.toNanos(1));
+        sampler.tick();
+
+        assertEquals(2, invocations.size());
+        assertEquals(1L, (long) invocations.get(0));
+        assertEquals(2L, (long) invocations.get(1));
+        assertEquals("1.8.0", versions.get(1));
+    }
+
+    @Test
+    public void testNewEntriesInvalidateCounters() throws Exception {
+        VmListenerWrapper wrapper = sampler.createWrapper(mock(VmUpdateListener.class));
+        sampler.subscribe(wrapper, 1000);
+        VmCounter missing = wrapper.getCounter("sun.gc.collector.1.invocations");
+        assertFalse(missing.isPresent());
+        assertEquals(-1, missing.getLong(-1));
+        sampler.tick();
+        assertTrue(missing.isValid());
+
+        builder.addLong("sun.gc.collector.1.invocations", 7);
+        sampler.tick();
+        assertFalse(missing.isValid());
+        VmCounter found = wrapper.getCounter("sun.gc.collector.1.invocations");
+        assertTrue(found.isPresent());
+        assertEquals(7, found.getLong(-1));
+    }
+
+    @Test
+    public void testLastUnsubscribeCancelsTask() throws Exception {
+        VmListenerWrapper wrapper = sampler.createWrapper(mock(VmUpdateListener.class));
+        sampler.subscribe(wrapper, 1000);
+        assertTrue(sampler.unsubscribe(wrapper));
+        verify(future).cancel(false);
+    }
+}
@@ -74,9 +74,10 @@ public class TestLogHandler extends Handler {
     }
 
     private boolean diagnoseRecord(LogRecord record) {
-        Throwable thrown = record.getThrown();
-        if (thrown != null && thrown.getCause() instanceof IllegalArgumentException) {
-            return true;
+        for (Throwable thrown = record.getThrown(); thrown != null; thrown = thrown.getCause()) {
+            if (thrown.getCause() instanceof IllegalArgumentException) {
+                return true;
+            }
         }
         return false;
     }
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2012-2017 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+package com.redhat.thermostat.jvm.overview.agent.internal;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.redhat.thermostat.jvm.overview.agent.VmUpdateException;
+import com.redhat.thermostat.jvm.overview.agent.VmUpdateListener;
+import com.redhat.thermostat.jvm.overview.agent.internal.VmSamplerRegistry.PerfDataFileOpener;
+
+public class VmSamplerRegistryTest {
+
+    private static final int PID = 42;
+
+    private JvmStatSamplerFactory jvmStat;
+    private PerfDataFileOpener opener;
+    private VmSamplerRegistry registry;
+
+    @Before
+    public void setUp() {
+        jvmStat = mock(JvmStatSamplerFactory.class);
+        opener = mock(PerfDataFileOpener.class);
+        registry = new VmSamplerRegistry(jvmStat, opener);
+    }
+
+    @Test
+    public void testPerfDataDoesNotUseJvmStat() throws Exception {
+        PerfDataFileBuilder builder = new PerfDataFileBuilder(ByteOrder.nativeOrder(), 4096);
+        when(opener.open(PID)).thenReturn(new PerfDataFile(builder.getBuffer()));
+
+        VmListenerWrapper wrapper = registry.subscribe(PID, mock(VmUpdateListener.class), 1000);
+
+        assertTrue(registry.getSampler(PID) instanceof PerfDataVmSampler);
+        assertFalse(wrapper instanceof JvmStatVmListenerWrapper);
+        verifyZeroInteractions(jvmStat);
+
+        registry.unsubscribe(PID, wrapper);
+        assertNull(registry.getSampler(PID));
+    }
+
+    @Test
+    public void testFallsBackToJvmStat() throws Exception {
+        when(opener.open(PID)).thenThrow(new IOException("no perfdata"));
+        VmSampler sampler = mock(VmSampler.class);
+        VmListenerWrapper wrapper = mock(VmListenerWrapper.class);
+        VmUpdateListener listener = mock(VmUpdateListener.class);
+        when(jvmStat.createSampler(PID)).thenReturn(sampler);
+        when(sampler.createWrapper(listener)).thenReturn(wrapper);
+
+        assertSame(wrapper, registry.subscribe(PID, listener, 1000));
+
+        verify(jvmStat).createSampler(PID);
+        verify(sampler).subscribe(wrapper, 1000);
+        assertSame(sampler, registry.getSampler(PID));
+    }
+
+    @Test
+    public void testDeactivateReleasesSamplers() throws Exception {
+        when(opener.open(PID)).thenThrow(new IOException("no perfdata"));
+        VmSampler sampler = mock(VmSampler.class);
+        VmUpdateListener listener = mock(VmUpdateListener.class);
+        when(jvmStat.createSampler(PID)).thenReturn(sampler);
+        when(sampler.createWrapper(listener)).thenReturn(mock(VmListenerWrapper.class));
+        registry.subscribe(PID, listener, 1000);
+
+        registry.deactivate();
+
+        verify(sampler).close();
+        assertNull(registry.getSampler(PID));
+        try {
+            registry.subscribe(PID, listener, 1000);
+            fail("Expected VmUpdateException");
+        } catch (VmUpdateException e) {
+            // expected
+        }
+    }
+}
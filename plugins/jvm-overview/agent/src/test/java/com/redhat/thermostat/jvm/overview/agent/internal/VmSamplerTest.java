@@ -0,0 +1,140 @@
+/*
+ * Copyright 2012-2017 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+package com.redhat.thermostat.jvm.overview.agent.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.isA;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.redhat.thermostat.common.Clock;
+import com.redhat.thermostat.jvm.overview.agent.VmCounter;
+import com.redhat.thermostat.jvm.overview.agent.VmUpdate;
+import com.redhat.thermostat.jvm.overview.agent.VmUpdateListener;
+
+import sun.jvmstat.monitor.MonitoredVm;
+import sun.jvmstat.monitor.event.MonitorStatusChangeEvent;
+import sun.jvmstat.monitor.event.VmEvent;
+
+public class VmSamplerTest {
+
+    private MonitoredVm vm;
+    private Clock clock;
+    private JvmStatVmSampler sampler;
+    private VmEvent event;
+
+    @Before
+    public void setUp() {
+        vm = mock(MonitoredVm.class);
+        clock = mock(Clock.class);
+        sampler = new JvmStatVmSampler(vm, clock);
+        event = mock(VmEvent.class);
+        when(event.getMonitoredVm()).thenReturn(vm);
+    }
+
+    @Test
+    public void testSubscriptionsHaveOwnIntervals() throws Exception {
+        VmUpdateListener fast = mock(VmUpdateListener.class);
+        VmUpdateListener slow = mock(VmUpdateListener.class);
+        sampler.subscribe(new JvmStatVmListenerWrapper(fast, vm), 1000);
+        sampler.subscribe(new JvmStatVmListenerWrapper(slow, vm), 5000);
+
+        verify(vm).addVmListener(sampler);
+        verify(vm).setInterval(1000);
+        assertEquals(1000, sampler.getTickIntervalMillis());
+
+        // Ten ticks, slightly early and late
+        for (int i = 0; i < 10; i++) {
+            long jitter = i % 2 == 0 ? -20 : 20;
+            when(clock.getMonotonicTimeNanos()).thenReturn(TimeUnit.MILLISECONDS.toNanos(i * 1000 + jitter));
+            sampler.monitorsUpdated(event);
+        }
+
+        verify(fast, times(10)).countersUpdated(isA(VmUpdate.class));
+        verify(slow, times(2)).countersUpdated(isA(VmUpdate.class));
+    }
+
+    @Test
+    public void testUnsubscribe() throws Exception {
+        VmListenerWrapper fast = new JvmStatVmListenerWrapper(mock(VmUpdateListener.class), vm);
+        VmListenerWrapper slow = new JvmStatVmListenerWrapper(mock(VmUpdateListener.class), vm);
+        sampler.subscribe(fast, 1000);
+        sampler.subscribe(slow, 5000);
+
+        assertFalse(sampler.unsubscribe(fast));
+        verify(vm).setInterval(5000);
+        verify(vm, never()).removeVmListener(sampler);
+
+        assertTrue(sampler.unsubscribe(slow));
+        verify(vm).removeVmListener(sampler);
+    }
+
+    @Test(expected=AssertionError.class)
+    public void testMonitorsUpdatedWrongVm() {
+        when(event.getMonitoredVm()).thenReturn(mock(MonitoredVm.class));
+
+        sampler.monitorsUpdated(event);
+    }
+
+    @Test
+    public void testMonitorStatusChangeReachesAllListeners() throws Exception {
+        VmListenerWrapper first = new JvmStatVmListenerWrapper(mock(VmUpdateListener.class), vm);
+        VmListenerWrapper second = new JvmStatVmListenerWrapper(mock(VmUpdateListener.class), vm);
+        sampler.subscribe(first, 1000);
+        sampler.subscribe(second, 30000);
+        VmCounter firstCounter = first.getCounter("counter");
+        VmCounter secondCounter = second.getCounter("counter");
+
+        MonitorStatusChangeEvent change = mock(MonitorStatusChangeEvent.class);
+        when(change.getInserted()).thenReturn(Arrays.asList(new Object()));
+        sampler.monitorStatusChanged(change);
+
+        assertFalse(firstCounter.isValid());
+        assertFalse(secondCounter.isValid());
+    }
+}
@@ -50,6 +50,7 @@ import com.redhat.thermostat.common.MultipleServiceTracker;
 import com.redhat.thermostat.common.MultipleServiceTracker.Action;
 import com.redhat.thermostat.common.MultipleServiceTracker.DependencyProvider;
 import com.redhat.thermostat.common.Version;
+import com.redhat.thermostat.common.portability.ProcessSampler;
 import com.redhat.thermostat.storage.core.WriterID;
 import com.redhat.thermostat.vm.cpu.common.VmCpuStatDAO;
 
@@ -70,6 +71,7 @@ public class Activator implements BundleActivator {
                 BackendService.class,
                 VmCpuStatDAO.class,
                 WriterID.class, // vm cpu backend uses it
+                ProcessSampler.class,
         };
         tracker = new MultipleServiceTracker(context, deps, new Action() {
             
@@ -78,7 +80,8 @@ public class Activator implements BundleActivator {
                 VmCpuStatDAO vmCpuStatDao = services.get(VmCpuStatDAO.class);
                 Version version = new Version(context.getBundle());
                 WriterID writerId = services.get(WriterID.class);
-                backend = new VmCpuBackend(executor, vmCpuStatDao, version, registrar, writerId);
+                ProcessSampler sampler = services.get(ProcessSampler.class);
+                backend = new VmCpuBackend(executor, vmCpuStatDao, version, registrar, writerId, sampler);
                 reg = context.registerService(Backend.class, backend, null);
             }
 
@@ -87,6 +90,7 @@ public class Activator implements BundleActivator {
                 if (backend.isActive()) {
                     backend.deactivate();
                 }
+                backend.dispose();
                 reg.unregister();
             }
         });
@@ -43,11 +43,13 @@ public class ProcessStatusInfo {
     private final int pid;
     private final long userTime;
     private final long kernelTime;
+    private final long sampleTimeNanos;
 
-    public ProcessStatusInfo(int pid, long userTime, long kernelTime) {
+    public ProcessStatusInfo(int pid, long userTime, long kernelTime, long sampleTimeNanos) {
         this.pid = pid;
         this.userTime = userTime;
         this.kernelTime = kernelTime;
+        this.sampleTimeNanos = sampleTimeNanos;
     }
 
     public int getPid() {
@@ -70,5 +72,12 @@ public class ProcessStatusInfo {
         return kernelTime;
     }
 
+    /**
+     * @return the monotonic time, in nanoseconds, at which the times were read
+     */
+    public long getSampleTimeNanos() {
+        return sampleTimeNanos;
+    }
+
 }
 
@@ -36,13 +36,16 @@
 
 package com.redhat.thermostat.vm.cpu.agent.internal;
 
+import com.redhat.thermostat.common.portability.ProcessSampler;
+
 /**
  * Extract status information about the process from /proc/. This is what tools
- * like {@code ps} and {@code top} use.
+ * like {@code ps} and {@code top} use. The information comes from the
+ * snapshots of the {@link ProcessSampler} this builder listens to.
  *
  * @see {@code proc(5)}
  */
-public interface ProcessStatusInfoBuilder {
+public interface ProcessStatusInfoBuilder extends ProcessSampler.Listener {
 
     ProcessStatusInfo build(int pid);
 }
@@ -36,22 +36,37 @@
 
 package com.redhat.thermostat.vm.cpu.agent.internal;
 
-import com.redhat.thermostat.common.portability.PortableProcessFactory;
 import com.redhat.thermostat.common.portability.PortableProcessStat;
+import com.redhat.thermostat.common.portability.ProcessSample;
+import com.redhat.thermostat.common.portability.ProcessSampler;
+import com.redhat.thermostat.common.portability.ProcessSnapshot;
 
 /**
- * Extract status information about the process
+ * Extract status information about the process from the snapshots published
+ * by the shared {@link ProcessSampler}. Processes must be watched to be
+ * found.
  */
 public class ProcessStatusInfoBuilderImpl implements ProcessStatusInfoBuilder {
 
-    ProcessStatusInfoBuilderImpl() {
+    private volatile ProcessSnapshot snapshot;
+
+    @Override
+    public void processesSampled(ProcessSnapshot snapshot) {
+        this.snapshot = snapshot;
     }
 
     public ProcessStatusInfo build(int pid) {
 
-        final PortableProcessStat info =  PortableProcessFactory.getInstance().getProcessStat(pid);
-
-        return info != null ? new ProcessStatusInfo(pid, info.getUserTime(), info.getKernelTime()) : null;
+        final ProcessSnapshot snapshot = this.snapshot;
+        if (snapshot == null) {
+            return null;
+        }
+        final ProcessSample sample = snapshot.get(pid);
+        if (sample == null) {
+            return null;
+        }
+        final PortableProcessStat info = sample.getStat();
+        return new ProcessStatusInfo(pid, info.getUserTime(), info.getKernelTime(), snapshot.getMonotonicTimeNanos());
     }
 
 }
@@ -51,6 +51,7 @@ import com.redhat.thermostat.common.Clock;
 import com.redhat.thermostat.common.SystemClock;
 import com.redhat.thermostat.common.Version;
 import com.redhat.thermostat.common.portability.PortableHostFactory;
+import com.redhat.thermostat.common.portability.ProcessSampler;
 import com.redhat.thermostat.common.utils.LoggingUtils;
 import com.redhat.thermostat.shared.config.OS;
 import com.redhat.thermostat.storage.core.WriterID;
@@ -63,16 +64,27 @@ public class VmCpuBackend extends VmPollingBackend {
     private static final Logger LOGGER = LoggingUtils.getLogger(VmCpuBackend.class);
 
     private VmCpuBackendAction action;
+    private ProcessSampler sampler;
 
     public VmCpuBackend(ScheduledExecutorService executor, VmCpuStatDAO vmCpuStatDao, Version version,
-            VmStatusListenerRegistrar registrar, WriterID writerId) {
+            VmStatusListenerRegistrar registrar, WriterID writerId, ProcessSampler sampler) {
         super("VM CPU Backend",
                 "Gathers CPU statistics about a JVM",
                 "Red Hat, Inc.",
                 version, executor, registrar);
         VmCpuBackendAction action = new VmCpuBackendAction(writerId, vmCpuStatDao);
         this.action = action;
+        this.sampler = sampler;
         registerAction(action);
+        sampler.addListener(action.statusBuilder);
+    }
+
+    /**
+     * Stops following the snapshots of the process sampler, once this
+     * backend is no longer used.
+     */
+    void dispose() {
+        sampler.removeListener(action.statusBuilder);
     }
 
     @Override
@@ -82,6 +94,7 @@ public class VmCpuBackend extends VmPollingBackend {
 
     private static class VmCpuBackendAction implements VmPollingAction {
 
+        private final ProcessStatusInfoBuilder statusBuilder = new ProcessStatusInfoBuilderImpl();
         private VmCpuStatBuilder builder;
         private VmCpuStatDAO dao;
 
@@ -90,8 +103,7 @@ public class VmCpuBackend extends VmPollingBackend {
             long ticksPerSecond = SysConf.getClockTicksPerSecond();
             ProcDataSource source = new ProcDataSource();
             int numCpus = getCpuCount(source);
-            ProcessStatusInfoBuilder PSIBuilder = new ProcessStatusInfoBuilderImpl();
-            builder = new VmCpuStatBuilder(clock, numCpus, ticksPerSecond, PSIBuilder, id);
+            builder = new VmCpuStatBuilder(clock, numCpus, ticksPerSecond, statusBuilder, id);
             this.dao = dao;
         }
 
@@ -136,8 +148,17 @@ public class VmCpuBackend extends VmPollingBackend {
     @Override
     public void vmStatusChanged(Status newStatus, String vmId, int pid) {
         super.vmStatusChanged(newStatus, vmId, pid);
-        if (Status.VM_STOPPED.equals(newStatus)) {
+        switch (newStatus) {
+        case VM_STARTED: /* fall-through */
+        case VM_ACTIVE:
+            sampler.watch(pid);
+            break;
+        case VM_STOPPED:
             action.builder.forgetAbout(pid);
+            sampler.unwatch(pid);
+            break;
+        default:
+            break;
         }
     }
 
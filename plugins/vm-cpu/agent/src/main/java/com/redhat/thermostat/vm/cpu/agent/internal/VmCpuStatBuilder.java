@@ -86,7 +86,7 @@ public class VmCpuStatBuilder {
             return null;
         }
         long miliTime = clock.getRealTimeMillis();
-        long time = clock.getMonotonicTimeNanos();
+        long time = info.getSampleTimeNanos();
         long programTicks = (info.getKernelTime() + info.getUserTime());
         double cpuLoad = 0.0;
 
@@ -117,14 +117,13 @@ public class VmCpuStatBuilder {
     }
 
     public synchronized void learnAbout(int pid) {
-        long time = clock.getMonotonicTimeNanos();
         ProcessStatusInfo info = statusBuilder.build(pid);
         if (info == null) {
             logger.log(Level.WARNING, "can not learn about pid " + pid + " : statusBuilder returned null");
             return;
         }
 
-        lastProcessTickTime.put(pid, time);
+        lastProcessTickTime.put(pid, info.getSampleTimeNanos());
         lastProcessTicks.put(pid, info.getUserTime()+ info.getKernelTime());
     }
 
@@ -49,6 +49,7 @@ import org.osgi.framework.Version;
 
 import com.redhat.thermostat.backend.Backend;
 import com.redhat.thermostat.backend.BackendService;
+import com.redhat.thermostat.common.portability.ProcessSampler;
 import com.redhat.thermostat.storage.core.WriterID;
 import com.redhat.thermostat.testutils.StubBundleContext;
 import com.redhat.thermostat.vm.cpu.common.VmCpuStatDAO;
@@ -64,7 +65,7 @@ public class ActivatorTest {
         activator.start(context);
 
         assertEquals(0, context.getAllServices().size());
-        assertEquals(3, context.getServiceListeners().size());
+        assertEquals(4, context.getServiceListeners().size());
 
         activator.stop(context);
     }
@@ -82,10 +83,12 @@ public class ActivatorTest {
         BackendService service = mock(BackendService.class);
         VmCpuStatDAO vmCpuStatDAO = mock(VmCpuStatDAO.class);
         WriterID idService = mock(WriterID.class);
+        ProcessSampler sampler = mock(ProcessSampler.class);
 
         context.registerService(BackendService.class.getName(), service, null);
         context.registerService(VmCpuStatDAO.class, vmCpuStatDAO, null);
         context.registerService(WriterID.class, idService, null);
+        context.registerService(ProcessSampler.class, sampler, null);
 
         Activator activator = new Activator();
 
@@ -103,7 +106,7 @@ public class ActivatorTest {
         assertFalse(backend.isActive());
 
         assertEquals(0, context.getServiceListeners().size());
-        assertEquals(3, context.getAllServices().size());
+        assertEquals(4, context.getAllServices().size());
     }
 
 }
@@ -61,6 +61,7 @@ import com.redhat.thermostat.agent.VmStatusListener.Status;
 import com.redhat.thermostat.agent.VmStatusListenerRegistrar;
 import com.redhat.thermostat.common.Ordered;
 import com.redhat.thermostat.common.Version;
+import com.redhat.thermostat.common.portability.ProcessSampler;
 import com.redhat.thermostat.storage.core.WriterID;
 import com.redhat.thermostat.vm.cpu.common.Constants;
 import com.redhat.thermostat.vm.cpu.common.VmCpuStatDAO;
@@ -72,6 +73,7 @@ public class VmCpuBackendTest {
     private ScheduledExecutorService executor;
     private VmCpuStatDAO vmCpuStatDao;
     private VmStatusListenerRegistrar registrar;
+    private ProcessSampler sampler;
 
     @Before
     public void setup() {
@@ -84,7 +86,8 @@ public class VmCpuBackendTest {
         registrar = mock(VmStatusListenerRegistrar.class);
         
         WriterID id = mock(WriterID.class);
-        backend = new VmCpuBackend(executor, vmCpuStatDao, version, registrar, id);
+        sampler = mock(ProcessSampler.class);
+        backend = new VmCpuBackend(executor, vmCpuStatDao, version, registrar, id, sampler);
     }
 
     @Test
@@ -151,6 +154,8 @@ public class VmCpuBackendTest {
         
         backend.vmStatusChanged(Status.VM_ACTIVE, "vm1", 0);
         backend.vmStatusChanged(Status.VM_STARTED, "vm2", 1);
+        verify(sampler).watch(0);
+        verify(sampler).watch(1);
 
         Runnable runnable = captor.getValue();
         runnable.run();
@@ -167,6 +172,8 @@ public class VmCpuBackendTest {
 
         verify(builder).forgetAbout(0);
         verify(builder).forgetAbout(1);
+        verify(sampler).unwatch(0);
+        verify(sampler).unwatch(1);
 
         when(builder.knowsAbout(anyInt())).thenReturn(false);
         runnable.run();
@@ -174,6 +181,17 @@ public class VmCpuBackendTest {
         verifyNoMoreInteractions(vmCpuStatDao);
     }
 
+    @Test
+    public void testFollowsSamplerSnapshots() {
+        ArgumentCaptor<ProcessSampler.Listener> listener = ArgumentCaptor.forClass(ProcessSampler.Listener.class);
+        verify(sampler).addListener(listener.capture());
+        assertTrue(listener.getValue() instanceof ProcessStatusInfoBuilder);
+
+        backend.dispose();
+
+        verify(sampler).removeListener(listener.getValue());
+    }
+
     @Test
     public void testOrderValue() {
         int orderValue = backend.getOrderValue();
@@ -92,12 +92,10 @@ public class VmCpuStatBuilderTest {
         int cpuCount = 0;
         long ticksPerSecond = 0;
         final long CLOCK1 = 10000;
-        final long CLOCK2 = 20000;
-        final ProcessStatusInfo initialInfo = new ProcessStatusInfo(PID, 1, 2);
+        final ProcessStatusInfo initialInfo = new ProcessStatusInfo(PID, 1, 2, (long) (CLOCK1 * 1E6));
         final ProcessStatusInfo laterInfo = null;
 
         Clock clock = mock(Clock.class);
-        when(clock.getMonotonicTimeNanos()).thenReturn((long) (CLOCK1 * 1E6)).thenReturn((long) (CLOCK2 * 1E6));
 
         ProcessStatusInfoBuilder statusBuilder = mock(ProcessStatusInfoBuilder.class);
         when(statusBuilder.build(any(Integer.class))).thenReturn(initialInfo).thenReturn(laterInfo).thenReturn(null);
@@ -133,12 +131,11 @@ public class VmCpuStatBuilderTest {
                 / ((CLOCK2 - CLOCK1) * 1E-3 /* millis to seconds */)
                 / CPU_COUNT;
 
-        final ProcessStatusInfo initialInfo = new ProcessStatusInfo(PID, USER_INITIAL_TICKS, KERNEL_INITIAL_TICKS);
-        final ProcessStatusInfo laterInfo = new ProcessStatusInfo(PID, USER_LATER_TICKS, KERNEL_LATER_TICKS);
+        final ProcessStatusInfo initialInfo = new ProcessStatusInfo(PID, USER_INITIAL_TICKS, KERNEL_INITIAL_TICKS, (long) (CLOCK1 * 1E6));
+        final ProcessStatusInfo laterInfo = new ProcessStatusInfo(PID, USER_LATER_TICKS, KERNEL_LATER_TICKS, (long) (CLOCK2 * 1E6));
 
         Clock clock = mock(Clock.class);
         when(clock.getRealTimeMillis()).thenReturn(CLOCK2);
-        when(clock.getMonotonicTimeNanos()).thenReturn((long) (CLOCK1 * 1E6)).thenReturn((long) (CLOCK2 * 1E6));
 
         ProcessStatusInfoBuilder statusBuilder = mock(ProcessStatusInfoBuilder.class);
         when(statusBuilder.build(any(Integer.class))).thenReturn(initialInfo).thenReturn(laterInfo).thenReturn(null);
@@ -47,9 +47,12 @@ import org.apache.felix.scr.annotations.Service;
 import org.osgi.framework.BundleContext;
 import com.redhat.thermostat.backend.Backend;
 import com.redhat.thermostat.common.Version;
+import com.redhat.thermostat.common.config.experimental.ConfigurationInfoSource;
+import com.redhat.thermostat.common.plugin.PluginConfiguration;
 import com.redhat.thermostat.storage.core.WriterID;
 import com.redhat.thermostat.vm.gc.agent.Constants;
 import com.redhat.thermostat.vm.gc.agent.internal.models.VmGcStatDAO;
+import com.redhat.thermostat.vm.gc.agent.internal.models.VmGcStatDAOImpl;
 
 @Component
 @Service(value = Backend.class)
@@ -61,6 +64,8 @@ public class VmGcBackend extends VmListenerBackend {
     private VmGcStatDAO vmGcStats;
     @Reference
     private WriterID writerId;
+    @Reference
+    private ConfigurationInfoSource configInfoSource;
     
     public VmGcBackend() {
         this(new ListenerCreator());
@@ -85,6 +90,7 @@ public class VmGcBackend extends VmListenerBackend {
     protected void componentActivated(BundleContext context) {
         VmStatusListenerRegistrar registrar = new VmStatusListenerRegistrar(context);
         Version version = new Version(context.getBundle());
+        setVmUpdateInterval(new PluginConfiguration(configInfoSource, VmGcStatDAOImpl.PLUGIN_ID));
         initialize(writerId, registrar, version.getVersionNumber());
     }
     
@@ -105,6 +111,11 @@ public class VmGcBackend extends VmListenerBackend {
         this.writerId = id;
     }
     
+    // DS bind method
+    protected void bindConfigInfoSource(ConfigurationInfoSource source) {
+        this.configInfoSource = source;
+    }
+    
     // For testing purposes
     static class ListenerCreator {
         VmGcVmListener create(String writerId, VmGcStatDAO dao, String vmId) {
@@ -36,7 +36,6 @@
 
 package com.redhat.thermostat.vm.gc.agent.internal.models;
 
-import java.io.IOException;
 import java.util.Arrays;
 import java.util.List;
 import java.util.logging.Level;
@@ -48,7 +47,7 @@ import org.apache.felix.scr.annotations.Reference;
 import org.apache.felix.scr.annotations.Service;
 
 import com.redhat.thermostat.agent.http.HttpRequestService;
-import com.redhat.thermostat.agent.http.HttpRequestService.RequestFailedException;
+import com.redhat.thermostat.agent.http.JsonPayloadWriter;
 import com.redhat.thermostat.common.config.experimental.ConfigurationInfoSource;
 import com.redhat.thermostat.common.plugin.PluginConfiguration;
 import com.redhat.thermostat.common.utils.LoggingUtils;
@@ -59,7 +58,7 @@ import com.redhat.thermostat.vm.gc.agent.model.VmGcStat;
 public class VmGcStatDAOImpl implements VmGcStatDAO {
     
     private static final Logger logger = LoggingUtils.getLogger(VmGcStatDAOImpl.class);
-    private static final String PLUGIN_ID = "vm-gc";
+    public static final String PLUGIN_ID = "vm-gc";
     
     private final JsonHelper jsonHelper;
     private final ConfigurationCreator configCreator;
@@ -98,11 +97,10 @@ public class VmGcStatDAOImpl implements VmGcStatDAO {
 
     @Override
     public void putVmGcStat(final VmGcStat stat) {
-        try {
-            String json = jsonHelper.toJson(Arrays.asList(stat));
-            httpRequestService.sendHttpRequest(json, gatewayURL, HttpRequestService.POST);
-        } catch (RequestFailedException | IOException e) {
-            logger.log(Level.WARNING, "Failed to send VmGcStat information to web gateway", e);
+        JsonPayloadWriter json = JsonPayloadWriter.obtain();
+        jsonHelper.write(Arrays.asList(stat), json);
+        if (!httpRequestService.queueHttpPost(json, gatewayURL)) {
+            logger.log(Level.WARNING, "Upload queue full. Dropped VmGcStat");
         }
     }
 
@@ -115,8 +113,8 @@ public class VmGcStatDAOImpl implements VmGcStatDAO {
             this.adapter = adapter;
         }
 
-        public String toJson(List<VmGcStat> list) throws IOException {
-            return adapter.toJson(list);
+        public void write(List<VmGcStat> list, JsonPayloadWriter out) {
+            adapter.write(out, list);
         }
 
     }
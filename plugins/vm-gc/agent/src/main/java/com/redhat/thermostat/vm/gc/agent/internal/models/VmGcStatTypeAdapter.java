@@ -39,6 +39,7 @@ package com.redhat.thermostat.vm.gc.agent.internal.models;
 import com.google.gson.TypeAdapter;
 import com.google.gson.stream.JsonReader;
 import com.google.gson.stream.JsonWriter;
+import com.redhat.thermostat.agent.http.JsonPayloadWriter;
 import com.redhat.thermostat.vm.gc.agent.model.VmGcStat;
 
 import java.io.IOException;
@@ -85,6 +86,25 @@ public class VmGcStatTypeAdapter extends TypeAdapter<List<VmGcStat>> {
         out.endObject();
     }
 
+    /**
+     * Writes the same JSON as {@link #write(JsonWriter, List)}, without
+     * creating intermediate strings.
+     */
+    public void write(JsonPayloadWriter out, List<VmGcStat> stats) {
+        out.beginArray();
+        for (VmGcStat stat : stats) {
+            out.beginObject();
+            out.name(AGENT_ID).value(stat.getAgentId());
+            out.name(VM_ID).value(stat.getVmId());
+            out.name(TIMESTAMP).numberLong(stat.getTimeStamp());
+            out.name(COLLECTOR_NAME).value(stat.getCollectorName());
+            out.name(RUN_COUNT).numberLong(stat.getRunCount());
+            out.name(WALL_TIME_IN_MICROS).numberLong(stat.getWallTime());
+            out.endObject();
+        }
+        out.endArray();
+    }
+
     private void writeLong(JsonWriter out, long value) throws IOException {
         // Write MongoDB representation of a Long
         out.beginObject();
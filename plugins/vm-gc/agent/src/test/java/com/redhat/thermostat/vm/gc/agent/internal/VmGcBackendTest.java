@@ -44,6 +44,9 @@ import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 import static org.mockito.Mockito.verify;
 
+import java.io.IOException;
+import java.util.Collections;
+
 import com.redhat.thermostat.jvm.overview.agent.VmStatusListenerRegistrar;
 import org.junit.Before;
 import org.junit.Test;
@@ -52,6 +55,7 @@ import org.osgi.framework.BundleContext;
 import org.osgi.framework.Version;
 
 import com.redhat.thermostat.common.Ordered;
+import com.redhat.thermostat.common.config.experimental.ConfigurationInfoSource;
 import com.redhat.thermostat.storage.core.WriterID;
 import com.redhat.thermostat.vm.gc.agent.internal.VmGcBackend.ListenerCreator;
 import com.redhat.thermostat.vm.gc.agent.internal.models.VmGcStatDAO;
@@ -68,20 +72,25 @@ public class VmGcBackendTest {
     }
     
     @Test
-    public void testComponentActivated() {
+    public void testComponentActivated() throws IOException {
         BundleContext context = mock(BundleContext.class);
         Bundle bundle = mock(Bundle.class);
         Version version = new Version(1, 2, 3);
         when(bundle.getVersion()).thenReturn(version);
         when(context.getBundle()).thenReturn(bundle);
+        ConfigurationInfoSource source = mock(ConfigurationInfoSource.class);
+        when(source.getConfiguration("vm-gc", "gateway.properties"))
+                .thenReturn(Collections.singletonMap("pollingInterval", "5000"));
         
         WriterID id = mock(WriterID.class);
         backend.bindWriterId(id);
+        backend.bindConfigInfoSource(source);
         backend.componentActivated(context);
         
         assertEquals(id, backend.writerId);
         assertEquals("1.2.3", backend.version);
         assertNotNull(backend.registrar);
+        assertEquals(5000, backend.getVmUpdateInterval());
     }
     
     @Test
@@ -132,6 +141,12 @@ public class VmGcBackendTest {
             this.version = version;
         }
         
+        // Override to make visible to the test
+        @Override
+        protected long getVmUpdateInterval() {
+            return super.getVmUpdateInterval();
+        }
+        
         // Override the following to test backend is deactivated when dependencies are lost
         @Override
         public boolean isActive() {
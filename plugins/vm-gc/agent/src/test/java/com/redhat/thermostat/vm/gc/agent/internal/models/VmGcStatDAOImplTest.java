@@ -36,8 +36,11 @@
 
 package com.redhat.thermostat.vm.gc.agent.internal.models;
 
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyListOf;
 import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -46,8 +49,12 @@ import java.util.Arrays;
 
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 
 import com.redhat.thermostat.agent.http.HttpRequestService;
+import com.redhat.thermostat.agent.http.JsonPayloadWriter;
 import com.redhat.thermostat.common.config.experimental.ConfigurationInfoSource;
 import com.redhat.thermostat.common.plugin.PluginConfiguration;
 import com.redhat.thermostat.vm.gc.agent.internal.models.VmGcStatDAOImpl.ConfigurationCreator;
@@ -77,7 +84,14 @@ public class VmGcStatDAOImplTest {
         stat.setCollectorName("Collector");
 
         jsonHelper = mock(JsonHelper.class);
-        when(jsonHelper.toJson(anyListOf(VmGcStat.class))).thenReturn(JSON);
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                JsonPayloadWriter out = (JsonPayloadWriter) invocation.getArguments()[1];
+                out.beginObject().name("this").value("is").name("also").value("JSON").endObject();
+                return null;
+            }
+        }).when(jsonHelper).write(anyListOf(VmGcStat.class), any(JsonPayloadWriter.class));
 
         ConfigurationInfoSource source = mock(ConfigurationInfoSource.class);
         PluginConfiguration config = mock(PluginConfiguration.class);
@@ -95,9 +109,11 @@ public class VmGcStatDAOImplTest {
         dao.activate();
         dao.putVmGcStat(stat);
 
-        verify(jsonHelper).toJson(eq(Arrays.asList(stat)));
+        verify(jsonHelper).write(eq(Arrays.asList(stat)), any(JsonPayloadWriter.class));
 
-        verify(httpRequestService).sendHttpRequest(JSON, GATEWAY_URL, HttpRequestService.POST);
+        ArgumentCaptor<JsonPayloadWriter> jsonCaptor = ArgumentCaptor.forClass(JsonPayloadWriter.class);
+        verify(httpRequestService).queueHttpPost(jsonCaptor.capture(), eq(GATEWAY_URL));
+        assertEquals(JSON, jsonCaptor.getValue().toString());
     }
 
 }
@@ -42,13 +42,28 @@ import java.util.Arrays;
 
 import org.junit.Test;
 
+import com.redhat.thermostat.agent.http.JsonPayloadWriter;
 import com.redhat.thermostat.vm.gc.agent.model.VmGcStat;
 
 public class VmGcStatTypeAdapterTest {
 
+    private static final String EXPECTED_JSON = "[{\"agentId\":\"1\",\"jvmId\":\"2\",\"timeStamp\":{\"$numberLong\":\"100\"},\"collectorName\":\"Collector\",\"runCount\":{\"$numberLong\":\"10\"},\"wallTimeInMicros\":{\"$numberLong\":\"200\"}}]";
+
     @Test
     public void testWrite() throws Exception {
         VmGcStatTypeAdapter typeAdapter = new VmGcStatTypeAdapter();
+        assertEquals(EXPECTED_JSON, typeAdapter.toJson(Arrays.asList(createStat())));
+    }
+
+    @Test
+    public void testStreamingWrite() {
+        VmGcStatTypeAdapter typeAdapter = new VmGcStatTypeAdapter();
+        JsonPayloadWriter out = new JsonPayloadWriter();
+        typeAdapter.write(out, Arrays.asList(createStat()));
+        assertEquals(EXPECTED_JSON, out.toString());
+    }
+
+    private static VmGcStat createStat() {
         VmGcStat stat = new VmGcStat();
         stat.setAgentId("1");
         stat.setVmId("2");
@@ -56,7 +71,6 @@ public class VmGcStatTypeAdapterTest {
         stat.setCollectorName("Collector");
         stat.setRunCount(10l);
         stat.setWallTime(200l);
-        assertEquals("[{\"agentId\":\"1\",\"jvmId\":\"2\",\"timeStamp\":{\"$numberLong\":\"100\"},\"collectorName\":\"Collector\",\"runCount\":{\"$numberLong\":\"10\"},\"wallTimeInMicros\":{\"$numberLong\":\"200\"}}]",
-                typeAdapter.toJson(Arrays.asList(stat)));
+        return stat;
     }
 }
@@ -70,6 +70,7 @@ import org.apache.lucene.store.RAMDirectory;
 
 import com.redhat.thermostat.common.utils.LoggingUtils;
 import com.redhat.thermostat.vm.heap.analysis.common.model.HeapInfo;
+import com.redhat.thermostat.vm.heap.analysis.hat.hprof.model.DominatorTree;
 import com.redhat.thermostat.vm.heap.analysis.hat.hprof.model.JavaHeapObject;
 import com.redhat.thermostat.vm.heap.analysis.hat.hprof.model.Snapshot;
 import com.redhat.thermostat.vm.heap.analysis.hat.hprof.parser.Reader;
@@ -93,6 +94,8 @@ public class HeapDump {
 
     private Snapshot snapshot;
 
+    private DominatorTree dominatorTree;
+
     private Directory luceneIndex;
 
     // package-private for testing
@@ -161,6 +164,20 @@ public class HeapDump {
         return snapshot;
     }
 
+    /**
+     * @return the dominator tree of the heap dump, computed on first use, or
+     *         null if the heap dump could not be loaded
+     */
+    public synchronized DominatorTree getDominatorTree() {
+        if (dominatorTree == null) {
+            Snapshot loaded = getSnapshot();
+            if (loaded != null) {
+                dominatorTree = DominatorTree.compute(loaded);
+            }
+        }
+        return dominatorTree;
+    }
+
     private synchronized void loadHeapDumpIfNecessary() {
         if (snapshot == null) {
             try {
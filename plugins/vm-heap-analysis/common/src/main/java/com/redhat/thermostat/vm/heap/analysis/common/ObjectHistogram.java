@@ -62,6 +62,16 @@ public class ObjectHistogram implements Serializable {
         record.totalSize += thing.getSize();
     }
 
+    public void addRecord(String classname, long numberOf, long totalSize) {
+        HistogramRecord record = histogram.get(classname);
+        if (record == null) {
+            record = new HistogramRecord(classname);
+            histogram.put(classname, record);
+        }
+        record.numberOf += numberOf;
+        record.totalSize += totalSize;
+    }
+
     public Collection<HistogramRecord> getHistogram() {
         return histogram.values();
     }
@@ -47,6 +47,7 @@ import static org.mockito.Mockito.when;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.Collection;
+import java.util.List;
 import java.util.Vector;
 import java.util.zip.GZIPInputStream;
 
@@ -55,6 +56,7 @@ import org.junit.Before;
 import org.junit.Test;
 
 import com.redhat.thermostat.vm.heap.analysis.common.model.HeapInfo;
+import com.redhat.thermostat.vm.heap.analysis.hat.hprof.model.DominatorTree;
 import com.redhat.thermostat.vm.heap.analysis.hat.hprof.model.JavaClass;
 import com.redhat.thermostat.vm.heap.analysis.hat.hprof.model.JavaHeapObject;
 import com.redhat.thermostat.vm.heap.analysis.hat.hprof.model.Snapshot;
@@ -176,6 +178,25 @@ public class HeapDumpTest {
         assertEquals("java.util.ArrayDeque", obj.getClazz().getName());
     }
 
+    @Test
+    public void testDominatorTree() {
+        DominatorTree tree = heapDump.getDominatorTree();
+        assertEquals(247475, tree.getReachableSize());
+
+        JavaHeapObject obj = heapDump.findObject("0x7d704eb20");
+        assertTrue(tree.isReachable(obj));
+        assertEquals(242, tree.getRetainedSize(obj));
+        assertEquals("0x7d704e9f0", tree.getImmediateDominator(obj).getIdString());
+        List<JavaHeapObject> dominated = tree.getDominatedObjects(obj);
+        assertEquals(1, dominated.size());
+        assertEquals("0x7d704eb38", dominated.get(0).getIdString());
+
+        List<JavaHeapObject> suspects = tree.getLeakSuspects(1);
+        assertEquals(1, suspects.size());
+        assertEquals("0x7d700b1a0", suspects.get(0).getIdString());
+        assertEquals(27922, tree.getRetainedSize(suspects.get(0)));
+    }
+
     @SuppressWarnings({ "rawtypes", "unchecked" })
     @Test
     public void verifyWildcardSearchInputConvertedIntoWildcardsIfNeeded() {
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2012-2017 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+
+package com.redhat.thermostat.vm.heap.analysis.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.redhat.thermostat.vm.heap.analysis.hat.hprof.model.JavaHeapObject;
+import com.redhat.thermostat.vm.heap.analysis.hat.hprof.model.Snapshot;
+import com.redhat.thermostat.vm.heap.analysis.hat.hprof.parser.Reader;
+
+/*
+ * Uses the same heapdump as HeapDumpTest.
+ */
+public class HistogramLoaderTest {
+
+    private File heapFile;
+
+    @Before
+    public void setUp() throws IOException {
+        heapFile = File.createTempFile("histogram-loader-test", ".hprof");
+        try (InputStream in = new GZIPInputStream(getClass().getResourceAsStream("/heapdump.hprof.gz"));
+                OutputStream out = new FileOutputStream(heapFile)) {
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+        }
+    }
+
+    @After
+    public void tearDown() {
+        heapFile.delete();
+    }
+
+    @Test
+    public void testLoadMatchesSnapshotHistogram() throws IOException {
+        ObjectHistogram histogram = new HistogramLoader().load(heapFile.getPath());
+
+        Snapshot snapshot = Reader.readFile(heapFile.getAbsolutePath(), true, 0);
+        snapshot.resolve(true);
+        ObjectHistogram expected = new ObjectHistogram();
+        Enumeration<JavaHeapObject> things = snapshot.getThings();
+        while (things.hasMoreElements()) {
+            expected.addThing(things.nextElement());
+        }
+
+        assertFalse(expected.getHistogram().isEmpty());
+        assertEquals(toSet(expected), toSet(histogram));
+    }
+
+    @Test
+    public void testAddRecordMergesByClassName() {
+        ObjectHistogram histogram = new ObjectHistogram();
+        histogram.addRecord("java.lang.String", 2, 48);
+        histogram.addRecord("java.lang.String", 1, 24);
+        histogram.addRecord("[I", 1, 32);
+
+        Set<HistogramRecord> expected = new HashSet<>();
+        expected.add(new HistogramRecord("java.lang.String", 3, 72));
+        expected.add(new HistogramRecord("[I", 1, 32));
+        assertEquals(expected, toSet(histogram));
+    }
+
+    private static Set<HistogramRecord> toSet(ObjectHistogram histogram) {
+        return new HashSet<>(histogram.getHistogram());
+    }
+}
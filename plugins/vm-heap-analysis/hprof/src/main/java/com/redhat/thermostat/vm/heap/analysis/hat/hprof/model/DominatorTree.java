@@ -0,0 +1,516 @@
+/*
+ * Copyright 2012-2017 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+
+package com.redhat.thermostat.vm.heap.analysis.hat.hprof.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.redhat.thermostat.vm.heap.analysis.hat.hprof.util.LongToIntMap;
+
+/**
+ * The dominator tree of the objects in a {@link Snapshot}, and the retained
+ * sizes derived from it.
+ * <p>
+ * An object x dominates y if every path from the GC roots to y goes through
+ * x. The retained size of x is the size of all objects it dominates: what
+ * would be freed if x became unreachable. References to the referent of a
+ * {@code java.lang.ref.Reference} are ignored, as they do not keep objects
+ * alive. Objects that are not reachable from a root are not in the tree.
+ * <p>
+ * The reference graph is built as an int indexed, compressed adjacency list
+ * and the dominators are computed with the semi-NCA variant of the
+ * Lengauer-Tarjan algorithm. All bookkeeping uses primitive arrays, so
+ * memory use is linear in the number of objects and references.
+ */
+public class DominatorTree {
+
+    // A child holding at least this part of its parent's retained size
+    // is considered to be where memory accumulates
+    private static final double ACCUMULATION_RATIO = 0.8;
+
+    private static final int ROOT = 0;  // node of the virtual super root
+
+    // Graph nodes: 0 is the virtual root that refers to all GC roots,
+    // objects are numbered from 1
+    private final JavaHeapObject[] objects;
+    private final LongToIntMap nodeFromId;
+
+    // Nodes reachable from the roots, numbered 1..reachable in depth first
+    // order. Everything below is indexed by that number.
+    private final int[] dfsNumber;      // by node, 0 if unreachable
+    private final int[] vertex;         // node by dfs number
+    private final int reachable;
+    private int[] idom;                 // dfs number of immediate dominator
+    private long[] retained;
+    private int[] childStart;           // dominator tree as adjacency list
+    private int[] children;
+
+    private DominatorTree(Snapshot snapshot) {
+        int count = 0;
+        for (Enumeration<JavaHeapObject> e = snapshot.getThings(); e.hasMoreElements(); e.nextElement()) {
+            count++;
+        }
+        objects = new JavaHeapObject[count + 1];
+        nodeFromId = new LongToIntMap(count);
+        int node = 1;
+        for (Enumeration<JavaHeapObject> e = snapshot.getThings(); e.hasMoreElements(); ) {
+            JavaHeapObject obj = e.nextElement();
+            objects[node] = obj;
+            nodeFromId.putIfAbsent(obj.getId(), node);
+            node++;
+        }
+
+        Graph graph = new Graph(snapshot);
+        dfsNumber = new int[objects.length];
+        vertex = new int[objects.length + 1];
+        int[] parent = new int[objects.length + 1];
+        reachable = depthFirstSearch(graph, parent);
+        computeDominators(graph, parent);
+        graph = null;
+        computeRetainedSizes();
+        buildTree();
+    }
+
+    /**
+     * Computes the dominator tree of a resolved snapshot.
+     */
+    public static DominatorTree compute(Snapshot snapshot) {
+        return new DominatorTree(snapshot);
+    }
+
+    /**
+     * @return whether {@code obj} can be reached from a GC root
+     */
+    public boolean isReachable(JavaHeapObject obj) {
+        return dfsNumberOf(obj) != 0;
+    }
+
+    /**
+     * @return the immediate dominator of {@code obj}, or null if it is only
+     *         dominated by the set of GC roots as a whole or unreachable
+     */
+    public JavaHeapObject getImmediateDominator(JavaHeapObject obj) {
+        int w = dfsNumberOf(obj);
+        if (w == 0 || idom[w] == 1) {
+            return null;
+        }
+        return objects[vertex[idom[w]]];
+    }
+
+    /**
+     * @return the size of all objects kept alive only through {@code obj},
+     *         including itself; 0 if it is unreachable
+     */
+    public long getRetainedSize(JavaHeapObject obj) {
+        int w = dfsNumberOf(obj);
+        return w == 0 ? 0 : retained[w];
+    }
+
+    /**
+     * @return the size of all objects reachable from the GC roots
+     */
+    public long getReachableSize() {
+        return retained[1];
+    }
+
+    /**
+     * @return the objects that {@code obj} immediately dominates
+     */
+    public List<JavaHeapObject> getDominatedObjects(JavaHeapObject obj) {
+        int w = dfsNumberOf(obj);
+        List<JavaHeapObject> result = new ArrayList<>();
+        if (w != 0) {
+            for (int i = childStart[w]; i < childStart[w + 1]; i++) {
+                result.add(objects[vertex[children[i]]]);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Sums the retained sizes of the instances of each class. Instances that
+     * are dominated by another instance of the same class are not counted
+     * again. Objects that are shared only between several instances of a
+     * class are not dominated by any of them, so this is a lower bound of
+     * what would be freed if all instances became unreachable.
+     */
+    public Map<JavaClass, Long> getRetainedSizesByClass() {
+        IdentityHashMap<JavaClass, Integer> classIndex = new IdentityHashMap<>();
+        List<JavaClass> classes = new ArrayList<>();
+        int[] classOf = new int[reachable + 1];
+        for (int w = 2; w <= reachable; w++) {
+            JavaClass clazz = objects[vertex[w]].getClazz();
+            Integer index = classIndex.get(clazz);
+            if (index == null) {
+                index = classes.size();
+                classIndex.put(clazz, index);
+                classes.add(clazz);
+            }
+            classOf[w] = index;
+        }
+
+        // Walk the dominator tree, counting an instance only if no instance
+        // of its class is on the path above it
+        int[] active = new int[classes.size()];
+        long[] sizes = new long[classes.size()];
+        int[] stack = new int[reachable + 1];
+        int[] cursor = new int[reachable + 1];
+        int top = 0;
+        stack[0] = 1;
+        cursor[0] = childStart[1];
+        while (top >= 0) {
+            int w = stack[top];
+            if (cursor[top] < childStart[w + 1]) {
+                int child = children[cursor[top]++];
+                int c = classOf[child];
+                if (active[c]++ == 0) {
+                    sizes[c] += retained[child];
+                }
+                top++;
+                stack[top] = child;
+                cursor[top] = childStart[child];
+            } else {
+                if (w != 1) {
+                    active[classOf[w]]--;
+                }
+                top--;
+            }
+        }
+
+        Map<JavaClass, Long> result = new HashMap<>();
+        for (int i = 0; i < sizes.length; i++) {
+            result.put(classes.get(i), sizes[i]);
+        }
+        return result;
+    }
+
+    /**
+     * Finds the objects most likely to be responsible for a leak: the
+     * {@code count} largest objects directly below the GC roots in the
+     * dominator tree. Each is followed down the tree for as long as a
+     * single child retains most of its size, to the point where the memory
+     * actually accumulates.
+     *
+     * @return the suspects, largest retained size first
+     */
+    public List<JavaHeapObject> getLeakSuspects(int count) {
+        if (count <= 0) {
+            return new ArrayList<>();
+        }
+        int[] top = new int[count];
+        int found = 0;
+        for (int i = childStart[1]; i < childStart[2]; i++) {
+            int w = children[i];
+            if (found < top.length || retained[w] > retained[top[found - 1]]) {
+                int pos = found < top.length ? found++ : found - 1;
+                while (pos > 0 && retained[top[pos - 1]] < retained[w]) {
+                    top[pos] = top[pos - 1];
+                    pos--;
+                }
+                top[pos] = w;
+            }
+        }
+
+        List<JavaHeapObject> result = new ArrayList<>(found);
+        for (int i = 0; i < found; i++) {
+            int w = top[i];
+            for (;;) {
+                int biggest = 0;
+                for (int j = childStart[w]; j < childStart[w + 1]; j++) {
+                    if (biggest == 0 || retained[children[j]] > retained[biggest]) {
+                        biggest = children[j];
+                    }
+                }
+                if (biggest == 0 || retained[biggest] < ACCUMULATION_RATIO * retained[w]) {
+                    break;
+                }
+                w = biggest;
+            }
+            result.add(objects[vertex[w]]);
+        }
+        Collections.sort(result, new Comparator<JavaHeapObject>() {
+            @Override
+            public int compare(JavaHeapObject a, JavaHeapObject b) {
+                return Long.compare(getRetainedSize(b), getRetainedSize(a));
+            }
+        });
+        return result;
+    }
+
+    private int dfsNumberOf(JavaHeapObject obj) {
+        int node = nodeFromId.get(obj.getId());
+        if (node == LongToIntMap.NOT_FOUND || objects[node] != obj) {
+            return 0;
+        }
+        return dfsNumber[node];
+    }
+
+    // Numbers the nodes reachable from the root in depth first order and
+    // records each one's parent in the search tree
+    private int depthFirstSearch(Graph graph, int[] parent) {
+        int[] stack = new int[objects.length];
+        int[] cursor = new int[objects.length];
+        int top = 0;
+        int n = 1;
+        stack[0] = ROOT;
+        cursor[0] = graph.start[ROOT];
+        dfsNumber[ROOT] = n;
+        vertex[n] = ROOT;
+        while (top >= 0) {
+            int node = stack[top];
+            if (cursor[top] < graph.start[node + 1]) {
+                int next = graph.edges[cursor[top]++];
+                if (dfsNumber[next] == 0) {
+                    n++;
+                    dfsNumber[next] = n;
+                    vertex[n] = next;
+                    parent[n] = dfsNumber[node];
+                    top++;
+                    stack[top] = next;
+                    cursor[top] = graph.start[next];
+                }
+            } else {
+                top--;
+            }
+        }
+        return n;
+    }
+
+    // Semi-NCA: semidominators as in Lengauer-Tarjan, using path
+    // compression over the already processed part of the search tree, then
+    // each immediate dominator as the nearest common ancestor of the parent
+    // and the semidominator
+    private void computeDominators(Graph graph, int[] parent) {
+        int[] semi = new int[reachable + 1];
+        int[] label = new int[reachable + 1];
+        int[] ancestor = new int[reachable + 1];
+        int[] path = new int[reachable + 1];
+        for (int w = 1; w <= reachable; w++) {
+            semi[w] = w;
+            label[w] = w;
+        }
+        for (int w = reachable; w >= 2; w--) {
+            int node = vertex[w];
+            for (int i = graph.reverseStart[node]; i < graph.reverseStart[node + 1]; i++) {
+                int v = dfsNumber[graph.reverseEdges[i]];
+                if (v == 0) {
+                    continue;   // unreachable referer
+                }
+                int u = v;
+                if (ancestor[v] != 0) {
+                    compress(v, ancestor, label, semi, path);
+                    u = label[v];
+                }
+                if (semi[u] < semi[w]) {
+                    semi[w] = semi[u];
+                }
+            }
+            ancestor[w] = parent[w];
+        }
+
+        idom = new int[reachable + 1];
+        idom[1] = 0;
+        for (int w = 2; w <= reachable; w++) {
+            int d = parent[w];
+            while (d > semi[w]) {
+                d = idom[d];
+            }
+            idom[w] = d;
+        }
+    }
+
+    // Iterative form of the Lengauer-Tarjan path compression
+    private static void compress(int v, int[] ancestor, int[] label, int[] semi, int[] path) {
+        int top = 0;
+        int u = v;
+        while (ancestor[ancestor[u]] != 0) {
+            path[top++] = u;
+            u = ancestor[u];
+        }
+        while (top > 0) {
+            u = path[--top];
+            int a = ancestor[u];
+            if (semi[label[a]] < semi[label[u]]) {
+                label[u] = label[a];
+            }
+            ancestor[u] = ancestor[a];
+        }
+    }
+
+    private void computeRetainedSizes() {
+        retained = new long[reachable + 1];
+        for (int w = 2; w <= reachable; w++) {
+            retained[w] = objects[vertex[w]].getSize();
+        }
+        // A dominator precedes everything it dominates in depth first order
+        for (int w = reachable; w >= 2; w--) {
+            retained[idom[w]] += retained[w];
+        }
+    }
+
+    private void buildTree() {
+        childStart = new int[reachable + 2];
+        for (int w = 2; w <= reachable; w++) {
+            childStart[idom[w] + 1]++;
+        }
+        for (int w = 1; w <= reachable + 1; w++) {
+            childStart[w] += childStart[w - 1];
+        }
+        children = new int[Math.max(reachable - 1, 0)];
+        int[] fill = new int[reachable + 1];
+        for (int w = 2; w <= reachable; w++) {
+            int d = idom[w];
+            children[childStart[d] + fill[d]++] = w;
+        }
+    }
+
+    /*
+     * The references between objects as adjacency lists in both directions.
+     */
+    private class Graph {
+
+        final int[] start;
+        final int[] edges;
+        final int[] reverseStart;
+        final int[] reverseEdges;
+
+        Graph(Snapshot snapshot) {
+            int n = objects.length;
+            start = new int[n + 1];
+            Root[] roots = snapshot.getRootsArray();
+
+            // Count first, then fill, to avoid growing the edge arrays
+            EdgeVisitor counter = new EdgeVisitor(snapshot, null);
+            for (Root r : roots) {
+                if (counter.nodeOf(r.getId()) != 0) {
+                    start[ROOT + 1]++;
+                }
+            }
+            for (int node = 1; node < n; node++) {
+                counter.count = 0;
+                objects[node].visitReferencedObjects(counter);
+                start[node + 1] = counter.count;
+            }
+            for (int node = 0; node < n; node++) {
+                start[node + 1] += start[node];
+            }
+
+            edges = new int[start[n]];
+            EdgeVisitor filler = new EdgeVisitor(snapshot, edges);
+            filler.count = start[ROOT];
+            for (Root r : roots) {
+                int target = filler.nodeOf(r.getId());
+                if (target != 0) {
+                    edges[filler.count++] = target;
+                }
+            }
+            for (int node = 1; node < n; node++) {
+                filler.count = start[node];
+                filler.limit = start[node + 1];
+                objects[node].visitReferencedObjects(filler);
+            }
+
+            reverseStart = new int[n + 1];
+            for (int e : edges) {
+                reverseStart[e + 1]++;
+            }
+            for (int node = 0; node < n; node++) {
+                reverseStart[node + 1] += reverseStart[node];
+            }
+            reverseEdges = new int[edges.length];
+            int[] fill = new int[n];
+            for (int node = 0; node < n; node++) {
+                for (int i = start[node]; i < start[node + 1]; i++) {
+                    int target = edges[i];
+                    reverseEdges[reverseStart[target] + fill[target]++] = node;
+                }
+            }
+        }
+    }
+
+    /*
+     * Counts or records the references of one object, skipping objects that
+     * are not part of the snapshot and weak referents.
+     */
+    private class EdgeVisitor extends AbstractJavaHeapObjectVisitor {
+
+        private final JavaClass weakReferenceClass;
+        private final int[] edges;
+        int count;
+        int limit;
+
+        EdgeVisitor(Snapshot snapshot, int[] edges) {
+            this.weakReferenceClass = snapshot.getWeakReferenceClass();
+            this.edges = edges;
+        }
+
+        int nodeOf(long id) {
+            int node = nodeFromId.get(id);
+            return node == LongToIntMap.NOT_FOUND ? 0 : node;
+        }
+
+        @Override
+        public void visit(JavaHeapObject other) {
+            int node = nodeOf(other.getId());
+            if (node == 0 || objects[node] != other) {
+                return;
+            }
+            if (edges == null) {
+                count++;
+            } else if (count < limit) {
+                edges[count++] = node;
+            }
+        }
+
+        @Override
+        public boolean exclude(JavaClass clazz, JavaField f) {
+            return clazz == weakReferenceClass && "referent".equals(f.getName());
+        }
+
+        @Override
+        public boolean mightExclude() {
+            return weakReferenceClass != null;
+        }
+    }
+}
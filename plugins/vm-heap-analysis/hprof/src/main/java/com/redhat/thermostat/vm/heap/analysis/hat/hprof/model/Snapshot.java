@@ -36,6 +36,7 @@ import java.lang.ref.SoftReference;
 import java.util.*;
 
 import com.redhat.thermostat.vm.heap.analysis.hat.hprof.parser.ReadBuffer;
+import com.redhat.thermostat.vm.heap.analysis.hat.hprof.util.PartitionedLongToObjectMap;
 import com.redhat.thermostat.vm.heap.analysis.hat.hprof.util.Misc;
 
 /**
@@ -57,12 +58,18 @@ public class Snapshot implements AutoCloseable {
     private static final JavaField[] EMPTY_FIELD_ARRAY = new JavaField[0];
     private static final JavaStatic[] EMPTY_STATIC_ARRAY = new JavaStatic[0];
 
-    // all heap objects
-    private Hashtable<Number, JavaHeapObject> heapObjects =
-                 new Hashtable<Number, JavaHeapObject>();
+    // number of partitions of the heap object index
+    private static final int HEAP_OBJECT_PARTITIONS = 16;
 
-    private Hashtable<Number, JavaClass> fakeClasses =
-                 new Hashtable<Number, JavaClass>();
+    // all heap objects, keyed by object id. Only written while the
+    // snapshot is read and resolved.
+    private PartitionedLongToObjectMap<JavaHeapObject> heapObjects =
+                 new PartitionedLongToObjectMap<JavaHeapObject>(HEAP_OBJECT_PARTITIONS);
+
+    // classes made up for instances whose class is not in the dump,
+    // guarded by itself
+    private PartitionedLongToObjectMap<JavaClass> fakeClasses =
+                 new PartitionedLongToObjectMap<JavaClass>(HEAP_OBJECT_PARTITIONS);
 
     // all Roots in this Snapshot
     private Vector<Root> roots = new Vector<Root>();
@@ -163,10 +170,34 @@ public class Snapshot implements AutoCloseable {
         return minimumObjectSize;
     }
 
+    /**
+     * Adds a heap object while the snapshot is read. Objects in different
+     * partitions of the index, see {@link #getHeapObjectPartition(long)},
+     * may be added from different threads at the same time.
+     */
     public void addHeapObject(long id, JavaHeapObject ho) {
         heapObjects.put(makeId(id), ho);
     }
 
+    public int getHeapObjectPartitions() {
+        return heapObjects.getPartitions();
+    }
+
+    /**
+     * @return the partition of the heap object index {@code id} belongs to
+     */
+    public int getHeapObjectPartition(long id) {
+        return heapObjects.partitionOf(makeId(id));
+    }
+
+    /**
+     * Makes room for {@code count} more heap objects in a partition of the
+     * index.
+     */
+    public void reserveHeapObjects(int partition, int count) {
+        heapObjects.reserve(partition, count);
+    }
+
     public void addRoot(Root r) {
         r.setIndex(roots.size());
         roots.addElement(r);
@@ -267,8 +298,10 @@ public class Snapshot implements AutoCloseable {
             }
         }
 
-        heapObjects.putAll(fakeClasses);
-        fakeClasses.clear();
+        synchronized (fakeClasses) {
+            heapObjects.putAll(fakeClasses);
+            fakeClasses.clear();
+        }
 
         weakReferenceClass = findClass("java.lang.ref.Reference");
         referentFieldIndex = 0;
@@ -334,14 +367,30 @@ public class Snapshot implements AutoCloseable {
     }
 
     public Enumeration<JavaHeapObject> getThings() {
-        return heapObjects.elements();
+        final Iterator<JavaHeapObject> things = heapObjects.values().iterator();
+        return new Enumeration<JavaHeapObject>() {
+            @Override
+            public boolean hasMoreElements() {
+                return things.hasNext();
+            }
+
+            @Override
+            public JavaHeapObject nextElement() {
+                return things.next();
+            }
+        };
     }
 
 
     public JavaHeapObject findThing(long id) {
-        Number idObj = makeId(id);
-        JavaHeapObject jho = heapObjects.get(idObj);
-        return jho != null? jho : fakeClasses.get(idObj);
+        long key = makeId(id);
+        JavaHeapObject jho = heapObjects.get(key);
+        if (jho != null) {
+            return jho;
+        }
+        synchronized (fakeClasses) {
+            return fakeClasses.get(key);
+        }
     }
 
     public JavaHeapObject findThing(String id) {
@@ -414,17 +463,16 @@ public class Snapshot implements AutoCloseable {
 
     public ReferenceChain[]
     rootsetReferencesTo(JavaHeapObject target, boolean includeWeak) {
-        Vector<ReferenceChain> fifo = new Vector<ReferenceChain>();  // This is slow... A real fifo would help
-            // Must be a fifo to go breadth-first
-        Hashtable<JavaHeapObject, JavaHeapObject> visited = new Hashtable<JavaHeapObject, JavaHeapObject>();
+        // Must be a fifo to go breadth-first
+        ArrayDeque<ReferenceChain> fifo = new ArrayDeque<ReferenceChain>();
         // Objects are added here right after being added to fifo.
+        Set<JavaHeapObject> visited = new HashSet<JavaHeapObject>();
         Vector<ReferenceChain> result = new Vector<ReferenceChain>();
-        visited.put(target, target);
-        fifo.addElement(new ReferenceChain(target, null));
+        visited.add(target);
+        fifo.add(new ReferenceChain(target, null));
 
-        while (fifo.size() > 0) {
-            ReferenceChain chain = fifo.elementAt(0);
-            fifo.removeElementAt(0);
+        while (!fifo.isEmpty()) {
+            ReferenceChain chain = fifo.poll();
             JavaHeapObject curr = chain.getObj();
             if (curr.getRoot() != null) {
                 result.addElement(chain);
@@ -434,10 +482,10 @@ public class Snapshot implements AutoCloseable {
             Enumeration<JavaThing> referers = curr.getReferers();
             while (referers.hasMoreElements()) {
                 JavaHeapObject t = (JavaHeapObject) referers.nextElement();
-                if (t != null && !visited.containsKey(t)) {
+                if (t != null && !visited.contains(t)) {
                     if (includeWeak || !t.refersOnlyWeaklyTo(this, curr)) {
-                        visited.put(t, t);
-                        fifo.addElement(new ReferenceChain(t, chain));
+                        visited.add(t);
+                        fifo.add(new ReferenceChain(t, chain));
                     }
                 }
             }
@@ -555,9 +603,9 @@ public class Snapshot implements AutoCloseable {
     }
 
     // Internals only below this point
-    private Number makeId(long id) {
+    private long makeId(long id) {
         if (identifierSize == 4) {
-            return (int)id;
+            return id & SMALL_ID_MASK;
         } else {
             return id;
         }
@@ -579,8 +627,10 @@ public class Snapshot implements AutoCloseable {
         c.resolve(this);
     }
 
-    private void addFakeClass(Number id, JavaClass c) {
-        fakeClasses.put(id, c);
+    private void addFakeClass(long id, JavaClass c) {
+        synchronized (fakeClasses) {
+            fakeClasses.put(id, c);
+        }
         addFakeClass(c);
     }
 
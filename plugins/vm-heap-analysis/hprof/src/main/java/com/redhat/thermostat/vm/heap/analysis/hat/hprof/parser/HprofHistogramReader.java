@@ -0,0 +1,505 @@
+/*
+ * Copyright 2012-2017 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+
+package com.redhat.thermostat.vm.heap.analysis.hat.hprof.parser;
+
+import static com.redhat.thermostat.vm.heap.analysis.hat.hprof.parser.HprofReader.*;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import com.redhat.thermostat.vm.heap.analysis.hat.hprof.model.ArrayTypeCodes;
+import com.redhat.thermostat.vm.heap.analysis.hat.hprof.model.Snapshot;
+import com.redhat.thermostat.vm.heap.analysis.hat.hprof.util.LongToIntMap;
+import com.redhat.thermostat.vm.heap.analysis.hat.hprof.util.LongToObjectMap;
+import com.redhat.thermostat.vm.heap.analysis.hat.hprof.util.Misc;
+
+/**
+ * Computes a class histogram of a hprof file in a single sequential pass.
+ * <p>
+ * Unlike {@link HprofReader}, no object model is built: instance and array
+ * payloads are skipped and only a count and a byte total are kept per class
+ * id. Memory use is bounded by the number of classes and names in the dump
+ * rather than by the number of objects.
+ * <p>
+ * Class names and sizes match those {@link Snapshot#resolve(boolean)} assigns
+ * to the objects of the first heap dump in the file.
+ */
+public class HprofHistogramReader implements ArrayTypeCodes {
+
+    public interface Visitor {
+        /**
+         * Called once per distinct class name in the histogram.
+         */
+        void visitClass(String className, long count, long totalSize);
+    }
+
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private static final String JAVA_LANG_CLASS = "java.lang.Class";
+
+    private final DataInputStream in;
+
+    private int version;
+    private int identifierSize;
+
+    private final LongToObjectMap<String> names = new LongToObjectMap<>();
+    private final LongToObjectMap<String> classNameFromObjectID = new LongToObjectMap<>();
+
+    // Per class id, indexed through classIndex. Ids are added both for dumped
+    // classes and for class ids instances or object arrays refer to.
+    private final LongToIntMap classIndex = new LongToIntMap();
+    private long[] classIds = new long[64];
+    private String[] dumpedClassNames = new String[64];
+    private long[] instanceCounts = new long[64];
+    private long[] instanceBytes = new long[64];
+    private long[] objectArrayCounts = new long[64];
+    private long[] objectArrayBytes = new long[64];
+    private int classCount;
+
+    private long dumpedClasses;
+    private long javaLangClassInstanceSize;
+
+    // Indexed by element type code
+    private final long[] valueArrayCounts = new long[T_LONG + 1];
+    private final long[] valueArrayBytes = new long[T_LONG + 1];
+
+    HprofHistogramReader(DataInputStream in) {
+        this.in = in;
+    }
+
+    /**
+     * Reads the first heap dump in {@code heapFile} and reports its histogram
+     * to {@code visitor}.
+     */
+    public static void readFile(String heapFile, Visitor visitor) throws IOException {
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(heapFile), BUFFER_SIZE))) {
+            int i = in.readInt();
+            if (i != MAGIC_NUMBER) {
+                throw new IOException("Unrecognized magic number: " + i);
+            }
+            new HprofHistogramReader(in).read(visitor);
+        }
+    }
+
+    void read(Visitor visitor) throws IOException {
+        version = readVersionHeader(in);
+        identifierSize = in.readInt();
+        if (identifierSize != 4 && identifierSize != 8) {
+            throw new IOException("I'm sorry, but I can't deal with an identifier size of " + identifierSize + ".  I can only deal with 4 or 8.");
+        }
+        /* long creationDateTimeStampInMillis = */ in.readLong();
+
+        try {
+            readRecords();
+        } catch (EOFException exp) {
+            warn("Unexpected EOF. Will miss information...");
+        }
+        report(visitor);
+    }
+
+    private void readRecords() throws IOException {
+        for (;;) {
+            int type;
+            try {
+                type = in.readUnsignedByte();
+            } catch (EOFException ignored) {
+                return;
+            }
+            in.readInt();       // Timestamp of this record
+            long length = in.readInt() & 0xffffffffL;
+            switch (type) {
+                case HPROF_UTF8: {
+                    long id = readID();
+                    byte[] chars = new byte[(int)length - identifierSize];
+                    in.readFully(chars);
+                    names.put(id, new String(chars));
+                    break;
+                }
+                case HPROF_LOAD_CLASS: {
+                    in.readInt();   // serial number
+                    long classID = readID();
+                    in.readInt();   // stack trace serial number
+                    long classNameID = readID();
+                    classNameFromObjectID.put(classID, getNameFromID(classNameID).replace('/', '.'));
+                    break;
+                }
+                case HPROF_HEAP_DUMP: {
+                    readHeapDump(length);
+                    return;
+                }
+                case HPROF_HEAP_DUMP_SEGMENT: {
+                    if (version >= VERSION_JDK6) {
+                        readHeapDump(length);
+                    } else {
+                        warn("Ignoring unrecognized record type " + type);
+                        skipBytes(length);
+                    }
+                    break;
+                }
+                case HPROF_HEAP_DUMP_END: {
+                    if (version >= VERSION_JDK6) {
+                        return;
+                    }
+                    warn("Ignoring unrecognized record type " + type);
+                    skipBytes(length);
+                    break;
+                }
+                default: {
+                    skipBytes(length);
+                }
+            }
+        }
+    }
+
+    private void readHeapDump(long bytesLeft) throws IOException {
+        while (bytesLeft > 0) {
+            int type = in.readUnsignedByte();
+            bytesLeft--;
+            int bytesRead;
+            switch (type) {
+                case HPROF_GC_ROOT_UNKNOWN:
+                case HPROF_GC_ROOT_STICKY_CLASS:
+                case HPROF_GC_ROOT_MONITOR_USED:
+                    bytesRead = identifierSize;
+                    break;
+                case HPROF_GC_ROOT_JNI_GLOBAL:
+                    bytesRead = 2 * identifierSize;
+                    break;
+                case HPROF_GC_ROOT_NATIVE_STACK:
+                case HPROF_GC_ROOT_THREAD_BLOCK:
+                    bytesRead = identifierSize + 4;
+                    break;
+                case HPROF_GC_ROOT_THREAD_OBJ:
+                case HPROF_GC_ROOT_JNI_LOCAL:
+                case HPROF_GC_ROOT_JAVA_FRAME:
+                    bytesRead = identifierSize + 8;
+                    break;
+                case HPROF_GC_CLASS_DUMP:
+                    bytesLeft -= readClass();
+                    continue;
+                case HPROF_GC_INSTANCE_DUMP:
+                    bytesLeft -= readInstance();
+                    continue;
+                case HPROF_GC_OBJ_ARRAY_DUMP:
+                    bytesLeft -= readArray(false);
+                    continue;
+                case HPROF_GC_PRIM_ARRAY_DUMP:
+                    bytesLeft -= readArray(true);
+                    continue;
+                default:
+                    throw new IOException("Unrecognized heap dump sub-record type:  " + type);
+            }
+            skipBytes(bytesRead);
+            bytesLeft -= bytesRead;
+        }
+        if (bytesLeft != 0) {
+            warn("Error reading heap dump or heap dump segment:  Byte count is " + bytesLeft + " instead of 0");
+            skipBytes(bytesLeft);
+        }
+    }
+
+    private long readClass() throws IOException {
+        long id = readID();
+        skipBytes(4 + 6 * identifierSize);  // stack trace serial, super, loader, ...
+        int instanceSize = in.readInt();
+        long bytesRead = 7 * identifierSize + 8;
+
+        int numConstPoolEntries = in.readUnsignedShort();
+        bytesRead += 2;
+        for (int i = 0; i < numConstPoolEntries; i++) {
+            skipBytes(2);   // index
+            int size = valueSize(in.readByte());
+            skipBytes(size);
+            bytesRead += 3 + size;
+        }
+
+        int numStatics = in.readUnsignedShort();
+        bytesRead += 2;
+        for (int i = 0; i < numStatics; i++) {
+            skipBytes(identifierSize);
+            int size = valueSize(in.readByte());
+            skipBytes(size);
+            bytesRead += identifierSize + 1 + size;
+        }
+
+        int numFields = in.readUnsignedShort();
+        bytesRead += 2;
+        long fieldBytes = (long) numFields * (identifierSize + 1);
+        skipBytes(fieldBytes);
+        bytesRead += fieldBytes;
+
+        int index = indexOf(id);
+        if (dumpedClassNames[index] == null) {
+            String name = classNameFromObjectID.get(id);
+            if (name == null) {
+                warn("Class name not found for " + Misc.toHex(id));
+                name = "unknown-name@" + Misc.toHex(id);
+            }
+            dumpedClassNames[index] = name;
+            dumpedClasses++;
+            if (JAVA_LANG_CLASS.equals(name)) {
+                javaLangClassInstanceSize = instanceSize;
+            }
+        }
+        return bytesRead;
+    }
+
+    private long readInstance() throws IOException {
+        skipBytes(identifierSize + 4);  // object id, stack trace serial
+        long classID = readID();
+        long bytesFollowing = in.readInt() & 0xffffffffL;
+        skipBytes(bytesFollowing);
+
+        int index = indexOf(classID);
+        instanceCounts[index]++;
+        instanceBytes[index] += bytesFollowing + 2 * identifierSize;
+        return 2 * identifierSize + 8 + bytesFollowing;
+    }
+
+    private long readArray(boolean isPrimitive) throws IOException {
+        skipBytes(identifierSize + 4);  // object id, stack trace serial
+        long num = in.readInt() & 0xffffffffL;
+        long bytesRead = identifierSize + 8;
+        long elementClassID;
+        if (isPrimitive) {
+            elementClassID = in.readByte();
+            bytesRead++;
+        } else {
+            elementClassID = readID();
+            bytesRead += identifierSize;
+        }
+
+        int elSize = 0;
+        if (isPrimitive || version < VERSION_JDK12BETA4) {
+            elSize = elementSize(elementClassID);
+            if (version >= VERSION_JDK12BETA4 && elSize == 0) {
+                throw new IOException("Unrecognized typecode:  "
+                                        + elementClassID);
+            }
+        }
+        long size;
+        if (elSize != 0) {
+            size = elSize * num;
+            valueArrayCounts[(int) elementClassID]++;
+            valueArrayBytes[(int) elementClassID] += size + 2 * identifierSize;
+        } else {
+            size = identifierSize * num;
+            int index = indexOf(elementClassID);
+            objectArrayCounts[index]++;
+            objectArrayBytes[index] += size + 2 * identifierSize;
+        }
+        skipBytes(size);
+        return bytesRead + size;
+    }
+
+    private void report(Visitor visitor) throws IOException {
+        Map<String, long[]> histogram = new HashMap<>();
+        Set<String> classNames = new HashSet<>();
+        boolean newStyleArrayClass = version >= VERSION_JDK12BETA4;
+        for (int i = 0; i < classCount; i++) {
+            String name = dumpedClassNames[i];
+            if (name != null) {
+                classNames.add(name);
+                add(histogram, name, instanceCounts[i], instanceBytes[i]);
+                String arrayName = name;
+                if (!newStyleArrayClass) {
+                    arrayName = "[" + (name.startsWith("[") ? name : "L" + name + ";");
+                }
+                add(histogram, arrayName, objectArrayCounts[i], objectArrayBytes[i]);
+            } else {
+                add(histogram, "unknown-class<@" + Misc.toHex(classIds[i]) + ">",
+                        instanceCounts[i], instanceBytes[i]);
+                add(histogram, "[<other>", objectArrayCounts[i], objectArrayBytes[i]);
+            }
+        }
+        long classSize = javaLangClassInstanceSize + 2 * identifierSize;
+        add(histogram, JAVA_LANG_CLASS, dumpedClasses, dumpedClasses * classSize);
+        for (int type = T_BOOLEAN; type <= T_LONG; type++) {
+            char signature = (char) signatureFromTypeId((byte) type);
+            String name = arrayTypeName(signature);
+            if (!classNames.contains(name)) {
+                name = "[" + signature;
+            }
+            add(histogram, name, valueArrayCounts[type], valueArrayBytes[type]);
+        }
+        for (Map.Entry<String, long[]> entry : histogram.entrySet()) {
+            long[] record = entry.getValue();
+            visitor.visitClass(entry.getKey(), record[0], record[1]);
+        }
+    }
+
+    private static void add(Map<String, long[]> histogram, String name, long count, long totalSize) {
+        if (count == 0) {
+            return;
+        }
+        long[] record = histogram.get(name);
+        if (record == null) {
+            record = new long[2];
+            histogram.put(name, record);
+        }
+        record[0] += count;
+        record[1] += totalSize;
+    }
+
+    private int indexOf(long classID) {
+        int index = classIndex.putIfAbsent(classID, classCount);
+        if (index != LongToIntMap.NOT_FOUND) {
+            return index;
+        }
+        if (classCount == classIds.length) {
+            int capacity = classCount * 2;
+            classIds = Arrays.copyOf(classIds, capacity);
+            dumpedClassNames = Arrays.copyOf(dumpedClassNames, capacity);
+            instanceCounts = Arrays.copyOf(instanceCounts, capacity);
+            instanceBytes = Arrays.copyOf(instanceBytes, capacity);
+            objectArrayCounts = Arrays.copyOf(objectArrayCounts, capacity);
+            objectArrayBytes = Arrays.copyOf(objectArrayBytes, capacity);
+        }
+        classIds[classCount] = classID;
+        return classCount++;
+    }
+
+    private int valueSize(byte type) throws IOException {
+        if (version >= VERSION_JDK12BETA4) {
+            type = signatureFromTypeId(type);
+        }
+        switch (type) {
+            case '[':
+            case 'L':
+                return identifierSize;
+            case 'Z':
+            case 'B':
+                return 1;
+            case 'S':
+            case 'C':
+                return 2;
+            case 'I':
+            case 'F':
+                return 4;
+            case 'J':
+            case 'D':
+                return 8;
+            default:
+                throw new IOException("Bad value signature:  " + type);
+        }
+    }
+
+    private static int elementSize(long typeCode) {
+        switch ((int) typeCode) {
+            case T_BOOLEAN:
+            case T_BYTE:
+                return 1;
+            case T_CHAR:
+            case T_SHORT:
+                return 2;
+            case T_FLOAT:
+            case T_INT:
+                return 4;
+            case T_DOUBLE:
+            case T_LONG:
+                return 8;
+            default:
+                return 0;
+        }
+    }
+
+    private static String arrayTypeName(char signature) {
+        switch (signature) {
+            case 'B':
+                return "byte[]";
+            case 'Z':
+                return "boolean[]";
+            case 'C':
+                return "char[]";
+            case 'S':
+                return "short[]";
+            case 'I':
+                return "int[]";
+            case 'F':
+                return "float[]";
+            case 'J':
+                return "long[]";
+            case 'D':
+                return "double[]";
+            default:
+                throw new IllegalArgumentException("invalid array element sig: " + signature);
+        }
+    }
+
+    private long readID() throws IOException {
+        return (identifierSize == 4)?
+            (Snapshot.SMALL_ID_MASK & (long)in.readInt()) : in.readLong();
+    }
+
+    private String getNameFromID(long id) {
+        if (id == 0L) {
+            return "";
+        }
+        String result = names.get(id);
+        if (result == null) {
+            warn("Name not found at " + Misc.toHex(id));
+            return "unresolved name " + Misc.toHex(id);
+        }
+        return result;
+    }
+
+    private void skipBytes(long length) throws IOException {
+        while (length > 0) {
+            int skipped = in.skipBytes((int) Math.min(length, Integer.MAX_VALUE));
+            if (skipped <= 0) {
+                // skipBytes() does not distinguish EOF from a short skip
+                in.readByte();
+                skipped = 1;
+            }
+            length -= skipped;
+        }
+    }
+
+    private void warn(String msg) {
+        System.out.println("WARNING: " + msg);
+    }
+}
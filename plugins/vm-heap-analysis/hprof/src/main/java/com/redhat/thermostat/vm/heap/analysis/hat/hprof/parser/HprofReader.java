@@ -34,9 +34,12 @@ package com.redhat.thermostat.vm.heap.analysis.hat.hprof.parser;
 
 import java.io.*;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.Hashtable;
+import java.util.concurrent.ForkJoinPool;
 
 import com.redhat.thermostat.vm.heap.analysis.hat.hprof.model.*;
+import com.redhat.thermostat.vm.heap.analysis.hat.hprof.util.LongToObjectMap;
 
 /**
  * Object that's used to read a hprof file.
@@ -48,15 +51,15 @@ public class HprofReader extends Reader /* imports */ implements ArrayTypeCodes
 
     final static int MAGIC_NUMBER = 0x4a415641;
     // That's "JAVA", the first part of "JAVA PROFILE ..."
-    private final static String[] VERSIONS = {
+    final static String[] VERSIONS = {
             " PROFILE 1.0\0",
             " PROFILE 1.0.1\0",
             " PROFILE 1.0.2\0",
     };
 
-    private final static int VERSION_JDK12BETA3 = 0;
-    private final static int VERSION_JDK12BETA4 = 1;
-    private final static int VERSION_JDK6       = 2;
+    final static int VERSION_JDK12BETA3 = 0;
+    final static int VERSION_JDK12BETA4 = 1;
+    final static int VERSION_JDK6       = 2;
     // These version numbers are indices into VERSIONS.  The instance data
     // member version is set to one of these, and it drives decisions when
     // reading the file.
@@ -115,7 +118,7 @@ public class HprofReader extends Reader /* imports */ implements ArrayTypeCodes
     static final int HPROF_HEAP_DUMP_SEGMENT     = 0x1c;
     static final int HPROF_HEAP_DUMP_END         = 0x2c;
 
-    private final static int T_CLASS = 2;
+    final static int T_CLASS = 2;
 
     private int version;        // The version of .hprof being read
 
@@ -126,7 +129,7 @@ public class HprofReader extends Reader /* imports */ implements ArrayTypeCodes
     private boolean callStack;  // If true, read the call stack of objects
 
     private int identifierSize;         // Size, in bytes, of identifiers.
-    private Hashtable<Long, String> names;
+    private LongToObjectMap<String> names;
 
     // Hashtable<Integer, ThreadObject>, used to map the thread sequence number
     // (aka "serial number") to the thread object ID for
@@ -134,45 +137,60 @@ public class HprofReader extends Reader /* imports */ implements ArrayTypeCodes
     // at the end of this file.
     private Hashtable<Integer, ThreadObject> threadObjects;
 
-    // Hashtable<Long, String>, maps class object ID to class name
-    // (with / converted to .)
-    private Hashtable<Long, String> classNameFromObjectID;
+    // Maps class object ID to class name (with / converted to .)
+    private LongToObjectMap<String> classNameFromObjectID;
 
     // Hashtable<Integer, Integer>, maps class serial # to class object ID
     private Hashtable<Integer, String> classNameFromSerialNo;
 
-    // Hashtable<Long, StackFrame> maps stack frame ID to StackFrame.
+    // Maps stack frame ID to StackFrame.
     // Null if we're not tracking them.
-    private Hashtable<Long, StackFrame> stackFrames;
+    private LongToObjectMap<StackFrame> stackFrames;
 
     // Hashtable<Integer, StackTrace> maps stack frame ID to StackTrace
     // Null if we're not tracking them.
     private Hashtable<Integer, StackTrace> stackTraces;
 
+    private ReadBuffer readBuffer;
     private Snapshot snapshot;
 
+    // Decodes instance and array dumps in parallel, created on first use
+    private ForkJoinPool pool;
+
     public HprofReader(String fileName, PositionDataInputStream in,
                        int dumpNumber, boolean callStack, int debugLevel)
                        throws IOException {
         super(in);
         RandomAccessFile file = new RandomAccessFile(fileName, "r");
-        this.snapshot = new Snapshot(MappedReadBuffer.create(file));
+        this.readBuffer = MappedReadBuffer.create(file);
+        this.snapshot = new Snapshot(readBuffer);
         this.dumpsToSkip = dumpNumber - 1;
         this.callStack = callStack;
         this.debugLevel = debugLevel;
-        names = new Hashtable<Long, String>();
+        names = new LongToObjectMap<String>();
         threadObjects = new Hashtable<Integer, ThreadObject>(43);
-        classNameFromObjectID = new Hashtable<Long, String>();
+        classNameFromObjectID = new LongToObjectMap<String>();
         if (callStack) {
-            stackFrames = new Hashtable<Long, StackFrame>(43);
+            stackFrames = new LongToObjectMap<StackFrame>(43);
             stackTraces = new Hashtable<Integer, StackTrace>(43);
             classNameFromSerialNo = new Hashtable<Integer, String>();
         }
     }
 
     public Snapshot read() throws IOException {
+        try {
+            return readRecords();
+        } finally {
+            if (pool != null) {
+                pool.shutdown();
+            }
+        }
+    }
+
+    private Snapshot readRecords() throws IOException {
         currPos = 4;    // 4 because of the magic number
-        version = readVersionHeader();
+        version = readVersionHeader(in);
+        currPos += VERSIONS[version].length();
         identifierSize = in.readInt();
         snapshot.setIdentifierSize(identifierSize);
         if (version >= VERSION_JDK12BETA4) {
@@ -223,9 +241,8 @@ public class HprofReader extends Reader /* imports */ implements ArrayTypeCodes
                     long classID = readID();
                     int stackTraceSerialNo = in.readInt();
                     long classNameID = readID();
-                    Long classIdI = classID;
                     String nm = getNameFromID(classNameID).replace('/', '.');
-                    classNameFromObjectID.put(classIdI, nm);
+                    classNameFromObjectID.put(classID, nm);
                     if (classNameFromSerialNo != null) {
                         classNameFromSerialNo.put(serialNo, nm);
                     }
@@ -357,7 +374,7 @@ public class HprofReader extends Reader /* imports */ implements ArrayTypeCodes
         in.skipBytes((int)length);
     }
 
-    private int readVersionHeader() throws IOException {
+    static int readVersionHeader(DataInput in) throws IOException {
         int candidatesLeft = VERSIONS.length;
         boolean[] matched = new boolean[VERSIONS.length];
         for (int i = 0; i < candidatesLeft; i++) {
@@ -367,7 +384,6 @@ public class HprofReader extends Reader /* imports */ implements ArrayTypeCodes
         int pos = 0;
         while (candidatesLeft > 0) {
             char c = (char) in.readByte();
-            currPos++;
             for (int i = 0; i < VERSIONS.length; i++) {
                 if (matched[i]) {
                     if (c != VERSIONS[i].charAt(pos)) {   // Not matched
@@ -384,6 +400,29 @@ public class HprofReader extends Reader /* imports */ implements ArrayTypeCodes
     }
 
     private void readHeapDump(long bytesLeft, long posAtEnd) throws IOException {
+        ParallelObjectReader objects = createParallelObjectReader();
+        try {
+            readHeapDump(bytesLeft, posAtEnd, objects);
+        } catch (EOFException exp) {
+            // A truncated dump keeps the objects before the EOF, as when
+            // they are read sequentially
+            if (objects != null) {
+                objects.read();
+            }
+            throw exp;
+        }
+        if (objects != null) {
+            objects.read();
+        }
+    }
+
+    /**
+     * Reads the sub-records of a heap dump record. If {@code objects} is not
+     * null, runs of instance and array dumps are only scanned and left to it
+     * to be decoded in parallel.
+     */
+    private void readHeapDump(long bytesLeft, long posAtEnd,
+                              ParallelObjectReader objects) throws IOException {
         while (bytesLeft > 0) {
             int type = in.readUnsignedByte();
             if (debugLevel > 0) {
@@ -481,17 +520,26 @@ public class HprofReader extends Reader /* imports */ implements ArrayTypeCodes
                     break;
                 }
                 case HPROF_GC_INSTANCE_DUMP: {
-                    int bytesRead = readInstance();
+                    long bytesRead = scanObjects(bytesLeft, objects);
+                    if (bytesRead < 0) {
+                        bytesRead = readInstance();
+                    }
                     bytesLeft -= bytesRead;
                     break;
                 }
                 case HPROF_GC_OBJ_ARRAY_DUMP: {
-                    int bytesRead = readArray(false);
+                    long bytesRead = scanObjects(bytesLeft, objects);
+                    if (bytesRead < 0) {
+                        bytesRead = readArray(false);
+                    }
                     bytesLeft -= bytesRead;
                     break;
                 }
                 case HPROF_GC_PRIM_ARRAY_DUMP: {
-                    int bytesRead = readArray(true);
+                    long bytesRead = scanObjects(bytesLeft, objects);
+                    if (bytesRead < 0) {
+                        bytesRead = readArray(true);
+                    }
                     bytesLeft -= bytesRead;
                     break;
                 }
@@ -619,17 +667,13 @@ public class HprofReader extends Reader /* imports */ implements ArrayTypeCodes
     }
 
     private String getNameFromID(long id) throws IOException {
-        return getNameFromID(Long.valueOf(id));
-    }
-
-    private String getNameFromID(Long id) throws IOException {
-        if (id.longValue() == 0L) {
+        if (id == 0L) {
             return "";
         }
         String result = names.get(id);
         if (result == null) {
-            warn("Name not found at " + toHex(id.longValue()));
-            return "unresolved name " + toHex(id.longValue());
+            warn("Name not found at " + toHex(id));
+            return "unresolved name " + toHex(id);
         }
         return result;
     }
@@ -762,52 +806,12 @@ public class HprofReader extends Reader /* imports */ implements ArrayTypeCodes
         byte primitiveSignature = 0x00;
         int elSize = 0;
         if (isPrimitive || version < VERSION_JDK12BETA4) {
-            switch ((int)elementClassID) {
-                case T_BOOLEAN: {
-                    primitiveSignature = (byte) 'Z';
-                    elSize = 1;
-                    break;
-                }
-                case T_CHAR: {
-                    primitiveSignature = (byte) 'C';
-                    elSize = 2;
-                    break;
-                }
-                case T_FLOAT: {
-                    primitiveSignature = (byte) 'F';
-                    elSize = 4;
-                    break;
-                }
-                case T_DOUBLE: {
-                    primitiveSignature = (byte) 'D';
-                    elSize = 8;
-                    break;
-                }
-                case T_BYTE: {
-                    primitiveSignature = (byte) 'B';
-                    elSize = 1;
-                    break;
-                }
-                case T_SHORT: {
-                    primitiveSignature = (byte) 'S';
-                    elSize = 2;
-                    break;
-                }
-                case T_INT: {
-                    primitiveSignature = (byte) 'I';
-                    elSize = 4;
-                    break;
-                }
-                case T_LONG: {
-                    primitiveSignature = (byte) 'J';
-                    elSize = 8;
-                    break;
-                }
-            }
+            primitiveSignature = primitiveSignature(elementClassID);
             if (version >= VERSION_JDK12BETA4 && primitiveSignature == 0x00) {
                 throw new IOException("Unrecognized typecode:  "
                                         + elementClassID);
             }
+            elSize = primitiveSize(primitiveSignature);
         }
         if (primitiveSignature != 0x00) {
             int size = elSize * num;
@@ -827,7 +831,90 @@ public class HprofReader extends Reader /* imports */ implements ArrayTypeCodes
         return bytesRead;
     }
 
-    private byte signatureFromTypeId(byte typeId) throws IOException {
+    //
+    // Scan a run of HPROF_GC_INSTANCE_DUMP, HPROF_GC_OBJ_ARRAY_DUMP and
+    // HPROF_GC_PRIM_ARRAY_DUMP sub-records for ParallelObjectReader, starting
+    // with the one whose type was just read. The run is walked in the mapped
+    // buffer and then skipped in the stream.
+    // Return number of bytes read, or -1 if the sub-record has to be read
+    // sequentially: objects is null or the sub-record does not fit in the
+    // rest of the heap dump record
+    //
+    private long scanObjects(long bytesLeft, ParallelObjectReader objects)
+            throws IOException {
+        if (objects == null) {
+            return -1;
+        }
+        long start = in.position() - 1;     // at the sub-record type
+        long end = objects.scan(start, in.position() + bytesLeft);
+        if (end == start) {
+            return -1;
+        }
+        long bytesRead = end - start - 1;
+        skipBytes(bytesRead);
+        return bytesRead;
+    }
+
+    /**
+     * Decoding objects in parallel needs a buffer that can be read from many
+     * threads without locking; otherwise objects are read sequentially.
+     * By default objects are read in parallel if there is more than one
+     * processor. Set system property 'jhat.parallelParse' to false to always
+     * read sequentially, or to true to read in parallel on one processor too.
+     */
+    private ParallelObjectReader createParallelObjectReader() {
+        String parallelParse = System.getProperty("jhat.parallelParse");
+        if (!(readBuffer instanceof MappedReadBuffer)
+                || "false".equals(parallelParse)
+                || (!"true".equals(parallelParse)
+                    && Runtime.getRuntime().availableProcessors() < 2)) {
+            return null;
+        }
+        if (pool == null) {
+            pool = new ForkJoinPool();
+        }
+        return new ParallelObjectReader(pool, readBuffer, snapshot, identifierSize,
+                version >= VERSION_JDK12BETA4,
+                stackTraces == null ? null : new HashMap<>(stackTraces));
+    }
+
+    // @returns the signature of primitive arrays with the given element
+    // type code, or 0 if it is not a primitive type code
+    static byte primitiveSignature(long typeCode) {
+        switch ((int) typeCode) {
+            case T_BOOLEAN: return (byte) 'Z';
+            case T_CHAR:    return (byte) 'C';
+            case T_FLOAT:   return (byte) 'F';
+            case T_DOUBLE:  return (byte) 'D';
+            case T_BYTE:    return (byte) 'B';
+            case T_SHORT:   return (byte) 'S';
+            case T_INT:     return (byte) 'I';
+            case T_LONG:    return (byte) 'J';
+            default:        return 0x00;
+        }
+    }
+
+    // @returns the size of a primitive value with the given signature
+    static int primitiveSize(byte signature) {
+        switch (signature) {
+            case 'Z':
+            case 'B':
+                return 1;
+            case 'C':
+            case 'S':
+                return 2;
+            case 'F':
+            case 'I':
+                return 4;
+            case 'D':
+            case 'J':
+                return 8;
+            default:
+                return 0;
+        }
+    }
+
+    static byte signatureFromTypeId(byte typeId) throws IOException {
         switch (typeId) {
             case T_CLASS: {
                 return (byte) 'L';
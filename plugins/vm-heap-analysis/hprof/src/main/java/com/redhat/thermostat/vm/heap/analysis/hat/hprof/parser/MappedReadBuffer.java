@@ -32,23 +32,52 @@
 
 package com.redhat.thermostat.vm.heap.analysis.hat.hprof.parser;
 
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 
 /**
- * Implementation of ReadBuffer using mapped file buffer
+ * Implementation of ReadBuffer using mapped file buffers.
+ * <p>
+ * The file is mapped as a sequence of segments so that files larger than
+ * 2 GB can be read. Consecutive segments overlap by a few bytes, which lets
+ * every primitive read be served by a single segment. All reads are
+ * absolute and leave the buffers' positions alone, so no locking is needed
+ * and any number of threads may read concurrently.
  *
  * @author A. Sundararajan
  */
 class MappedReadBuffer implements ReadBuffer {
-    private MappedByteBuffer buf;
-    private RandomAccessFile file;
 
-    MappedReadBuffer(RandomAccessFile file, MappedByteBuffer buf) {
+    static final int DEFAULT_SEGMENT_SHIFT = 30;   // 1 GB per segment
+
+    // large enough for the widest primitive read
+    private static final int SEGMENT_OVERLAP = 8;
+
+    private final MappedByteBuffer[] segments;
+    private final int segmentShift;
+    private final long segmentMask;
+    private final long size;
+    private final RandomAccessFile file;
+
+    MappedReadBuffer(RandomAccessFile file, int segmentShift) throws IOException {
         this.file = file;
-        this.buf = buf;
+        this.segmentShift = segmentShift;
+        this.segmentMask = (1L << segmentShift) - 1;
+        FileChannel ch = file.getChannel();
+        size = ch.size();
+        long segmentSize = 1L << segmentShift;
+        int count = (int) ((size + segmentSize - 1) >>> segmentShift);
+        segments = new MappedByteBuffer[count];
+        for (int i = 0; i < count; i++) {
+            long start = (long) i << segmentShift;
+            long length = Math.min(segmentSize + SEGMENT_OVERLAP, size - start);
+            segments[i] = ch.map(FileChannel.MapMode.READ_ONLY, start, length);
+        }
+        ch.close();
     }
 
     /**
@@ -64,18 +93,16 @@ class MappedReadBuffer implements ReadBuffer {
      * is locked on Windows until test process dies since there is no good way to
      * release this resource.
      *
-     * java.nio.MappedByteBuffer will be used only if 'jhat.enableFileMap' is set to true.
-     * Per default 'jhat.enableFileMap' is not set.
+     * File mapping is therefore used by default only on 64-bit JVMs that
+     * are not running on Windows. There address space is plentiful, a
+     * mapping does not keep the file locked and the mapped buffer is much
+     * faster than a seek and read per field. Setting 'jhat.enableFileMap' to
+     * true or false overrides the default.
      */
     static ReadBuffer create(RandomAccessFile file) throws IOException {
         if (canUseFileMap()) {
-            MappedByteBuffer buf;
             try {
-                FileChannel ch = file.getChannel();
-                long size = ch.size();
-                buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, size);
-                ch.close();
-                return new MappedReadBuffer(file, buf);
+                return new MappedReadBuffer(file, DEFAULT_SEGMENT_SHIFT);
             } catch (IOException exp) {
                 exp.printStackTrace();
                 System.err.println("File mapping failed, will use direct read");
@@ -86,48 +113,81 @@ class MappedReadBuffer implements ReadBuffer {
     }
 
     /**
-     * Set system property 'jhat.enableFileMap' to 'true' to enable file mapping.
+     * Set system property 'jhat.enableFileMap' to enable or disable file
+     * mapping. It is enabled by default on 64-bit JVMs, except on Windows.
      */
-    private static boolean canUseFileMap() {
+    static boolean canUseFileMap() {
         String prop = System.getProperty("jhat.enableFileMap");
-        return prop != null && prop.equals("true");
+        if (prop != null) {
+            return prop.equals("true");
+        }
+        return is64BitJvm() && !isWindows();
     }
 
-    private void seek(long pos) throws IOException {
-        assert pos <= Integer.MAX_VALUE :  "position overflow";
-        buf.position((int)pos);
+    private static boolean isWindows() {
+        return System.getProperty("os.name", "").startsWith("Windows");
     }
 
-    public synchronized void get(long pos, byte[] res) throws IOException {
-        seek(pos);
-        buf.get(res);
+    private static boolean is64BitJvm() {
+        String dataModel = System.getProperty("sun.arch.data.model");
+        if (dataModel != null) {
+            return dataModel.equals("64");
+        }
+        String arch = System.getProperty("os.arch", "");
+        return arch.contains("64");
     }
 
-    public synchronized char getChar(long pos) throws IOException {
-        seek(pos);
-        return buf.getChar();
+    private MappedByteBuffer segment(long pos, int length) throws IOException {
+        if (pos < 0 || pos + length > size) {
+            throw new EOFException("Read of " + length + " bytes at " + pos
+                                   + " is outside of file of size " + size);
+        }
+        return segments[(int) (pos >>> segmentShift)];
     }
 
-    public synchronized byte getByte(long pos) throws IOException {
-        seek(pos);
-        return buf.get();
+    private int offset(long pos) {
+        return (int) (pos & segmentMask);
     }
 
-    public synchronized short getShort(long pos) throws IOException {
-        seek(pos);
-        return buf.getShort();
+    public void get(long pos, byte[] res) throws IOException {
+        segment(pos, res.length);   // bounds check
+        int done = 0;
+        while (done < res.length) {
+            long at = pos + done;
+            // duplicate() to read without touching the shared position
+            ByteBuffer buf = segments[(int) (at >>> segmentShift)].duplicate();
+            int offset = offset(at);
+            int length = Math.min(res.length - done, (int) (segmentMask + 1 - offset));
+            buf.position(offset);
+            buf.get(res, done, length);
+            done += length;
+        }
     }
 
-    public synchronized int getInt(long pos) throws IOException {
-        seek(pos);
-        return buf.getInt();
+    public char getChar(long pos) throws IOException {
+        return segment(pos, 2).getChar(offset(pos));
     }
 
-    public synchronized long getLong(long pos) throws IOException {
-        seek(pos);
-        return buf.getLong();
+    public byte getByte(long pos) throws IOException {
+        return segment(pos, 1).get(offset(pos));
     }
 
+    public short getShort(long pos) throws IOException {
+        return segment(pos, 2).getShort(offset(pos));
+    }
+
+    public int getInt(long pos) throws IOException {
+        return segment(pos, 4).getInt(offset(pos));
+    }
+
+    public long getLong(long pos) throws IOException {
+        return segment(pos, 8).getLong(offset(pos));
+    }
+
+    /**
+     * Closes the file. The mappings stay valid until the buffer is garbage
+     * collected, which is why mapping is not the default on Windows.
+     */
     @Override
     public void close() throws Exception {
         file.close();
@@ -0,0 +1,380 @@
+/*
+ * Copyright 2012-2017 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+
+package com.redhat.thermostat.vm.heap.analysis.hat.hprof.parser;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import com.redhat.thermostat.vm.heap.analysis.hat.hprof.model.JavaHeapObject;
+import com.redhat.thermostat.vm.heap.analysis.hat.hprof.model.JavaObject;
+import com.redhat.thermostat.vm.heap.analysis.hat.hprof.model.JavaObjectArray;
+import com.redhat.thermostat.vm.heap.analysis.hat.hprof.model.JavaValueArray;
+import com.redhat.thermostat.vm.heap.analysis.hat.hprof.model.Snapshot;
+import com.redhat.thermostat.vm.heap.analysis.hat.hprof.model.StackTrace;
+
+/**
+ * Reads the instance and array dumps of a heap dump record on a fork/join
+ * pool.
+ * <p>
+ * Instance and array dumps are by far the most common sub-records of a heap
+ * dump. {@link HprofReader} leaves runs of them to {@link #scan(long, long)},
+ * which walks them in the mapped dump reading only their lengths, and
+ * skips its stream past them. The sub-records are grouped into chunks of
+ * about {@link #CHUNK_BYTES}. {@link #read()} then works in two parallel
+ * phases:
+ * <ol>
+ * <li>Each chunk is decoded into its own arrays of ids, objects and site
+ * traces, and the objects are sorted by the partition of the snapshot's
+ * index they belong to.</li>
+ * <li>Each partition of the index is sized once and filled with its objects,
+ * in file order, by its own task.</li>
+ * </ol>
+ * The snapshot ends up the same as if the objects were read sequentially.
+ */
+class ParallelObjectReader {
+
+    // Target size of the part of the file a single task decodes
+    static final long CHUNK_BYTES = 4L << 20;
+
+    private final ForkJoinPool pool;
+    private final ReadBuffer buf;
+    private final Snapshot snapshot;
+    private final int identifierSize;
+    private final boolean newStyleArrayClass;
+    private final Map<Integer, StackTrace> stackTraces;
+
+    private final List<Chunk> chunks = new ArrayList<>();
+    private Chunk current;
+
+    /**
+     * @param stackTraces stack traces by serial number, or {@code null} if
+     *        allocation sites are not tracked. Only read, from many threads.
+     */
+    ParallelObjectReader(ForkJoinPool pool, ReadBuffer buf, Snapshot snapshot,
+                         int identifierSize, boolean newStyleArrayClass,
+                         Map<Integer, StackTrace> stackTraces) {
+        this.pool = pool;
+        this.buf = buf;
+        this.snapshot = snapshot;
+        this.identifierSize = identifierSize;
+        this.newStyleArrayClass = newStyleArrayClass;
+        this.stackTraces = stackTraces;
+    }
+
+    static boolean isObjectDump(int type) {
+        return type == HprofReader.HPROF_GC_INSTANCE_DUMP
+                || type == HprofReader.HPROF_GC_OBJ_ARRAY_DUMP
+                || type == HprofReader.HPROF_GC_PRIM_ARRAY_DUMP;
+    }
+
+    /**
+     * Records the run of instance and array dumps that starts with the
+     * sub-record type at {@code start}. The run ends before the first other
+     * sub-record, before a sub-record that would go past {@code end}, or
+     * once the current chunk is full.
+     *
+     * @return the position after the run
+     */
+    long scan(long start, long end) throws IOException {
+        long pos = start;
+        while (pos < end) {
+            int type = buf.getByte(pos) & 0xff;
+            if (!isObjectDump(type)) {
+                break;
+            }
+            long next = objectDumpEnd(type, pos);
+            if (next > end) {
+                break;
+            }
+            if (current == null || current.end != pos
+                    || current.end - current.start >= CHUNK_BYTES) {
+                current = new Chunk(pos);
+                chunks.add(current);
+            }
+            current.end = next;
+            current.count++;
+            pos = next;
+            if (current.end - current.start >= CHUNK_BYTES) {
+                break;
+            }
+        }
+        return pos;
+    }
+
+    /**
+     * Decodes all sub-records scanned so far and adds their objects to the
+     * snapshot.
+     */
+    void read() throws IOException {
+        if (chunks.isEmpty()) {
+            return;
+        }
+        try {
+            pool.invoke(new DecodeTask(0, chunks.size()));
+            for (Chunk chunk : chunks) {
+                if (chunk.failure != null) {
+                    throw chunk.failure;
+                }
+            }
+            pool.invoke(new IndexTask(0, snapshot.getHeapObjectPartitions()));
+            if (stackTraces != null) {
+                for (Chunk chunk : chunks) {
+                    for (int i = 0; i < chunk.count; i++) {
+                        snapshot.setSiteTrace(chunk.objects[i], chunk.traces[i]);
+                    }
+                }
+            }
+        } finally {
+            chunks.clear();
+            current = null;
+        }
+    }
+
+    // @returns the position after the instance or array dump at pos
+    private long objectDumpEnd(int type, long pos) throws IOException {
+        long at = pos + 1 + identifierSize + 4;
+        switch (type) {
+            case HprofReader.HPROF_GC_INSTANCE_DUMP: {
+                int bytesFollowing = buf.getInt(at + identifierSize);
+                return at + identifierSize + 4 + bytesFollowing;
+            }
+            case HprofReader.HPROF_GC_OBJ_ARRAY_DUMP: {
+                int num = buf.getInt(at);
+                long elementClassID = readID(at + 4);
+                at += 4 + identifierSize;
+                byte primitiveSignature = newStyleArrayClass ?
+                        0x00 : HprofReader.primitiveSignature(elementClassID);
+                int elSize = (primitiveSignature != 0x00) ?
+                        HprofReader.primitiveSize(primitiveSignature) : identifierSize;
+                return at + elSize * (long) num;
+            }
+            case HprofReader.HPROF_GC_PRIM_ARRAY_DUMP: {
+                int num = buf.getInt(at);
+                byte primitiveSignature = HprofReader.primitiveSignature(buf.getByte(at + 4));
+                return at + 5 + HprofReader.primitiveSize(primitiveSignature) * (long) num;
+            }
+            default:
+                throw new IOException("Unexpected heap dump sub-record type " + type
+                                      + " at " + pos);
+        }
+    }
+
+    private void decode(Chunk chunk) throws IOException {
+        int count = chunk.count;
+        chunk.ids = new long[count];
+        chunk.objects = new JavaHeapObject[count];
+        if (stackTraces != null) {
+            chunk.traces = new StackTrace[count];
+        }
+        long pos = chunk.start;
+        for (int i = 0; i < count; i++) {
+            int type = buf.getByte(pos) & 0xff;
+            long start = pos + 1;
+            long id = readID(start);
+            int traceSerial = buf.getInt(start + identifierSize);
+            long at = start + identifierSize + 4;
+            JavaHeapObject obj;
+            if (type == HprofReader.HPROF_GC_INSTANCE_DUMP) {
+                obj = new JavaObject(readID(at), start);
+            } else {
+                boolean isPrimitive = type == HprofReader.HPROF_GC_PRIM_ARRAY_DUMP;
+                long elementClassID = isPrimitive ?
+                        buf.getByte(at + 4) : readID(at + 4);
+                byte primitiveSignature = 0x00;
+                if (isPrimitive || !newStyleArrayClass) {
+                    primitiveSignature = HprofReader.primitiveSignature(elementClassID);
+                    if (newStyleArrayClass && primitiveSignature == 0x00) {
+                        throw new IOException("Unrecognized typecode:  "
+                                                + elementClassID);
+                    }
+                }
+                if (primitiveSignature != 0x00) {
+                    obj = new JavaValueArray(primitiveSignature, start);
+                } else {
+                    obj = new JavaObjectArray(elementClassID, start);
+                }
+            }
+            chunk.ids[i] = id;
+            chunk.objects[i] = obj;
+            if (chunk.traces != null) {
+                chunk.traces[i] = stackTraces.get(traceSerial);
+            }
+            pos = objectDumpEnd(type, pos);
+        }
+        if (pos != chunk.end) {
+            throw new IOException("Heap dump chunk ends at " + pos
+                                  + " instead of " + chunk.end);
+        }
+        sortByPartition(chunk);
+    }
+
+    // Counting sort of the chunk's objects by index partition, keeping
+    // file order within each partition
+    private void sortByPartition(Chunk chunk) {
+        int partitions = snapshot.getHeapObjectPartitions();
+        int[] partitionOf = new int[chunk.count];
+        int[] partitionStart = new int[partitions + 1];
+        for (int i = 0; i < chunk.count; i++) {
+            partitionOf[i] = snapshot.getHeapObjectPartition(chunk.ids[i]);
+            partitionStart[partitionOf[i] + 1]++;
+        }
+        for (int p = 0; p < partitions; p++) {
+            partitionStart[p + 1] += partitionStart[p];
+        }
+        int[] next = new int[partitions];
+        System.arraycopy(partitionStart, 0, next, 0, partitions);
+        int[] order = new int[chunk.count];
+        for (int i = 0; i < chunk.count; i++) {
+            order[next[partitionOf[i]]++] = i;
+        }
+        chunk.partitionStart = partitionStart;
+        chunk.order = order;
+    }
+
+    private void index(int partition) {
+        int count = 0;
+        for (Chunk chunk : chunks) {
+            count += chunk.partitionStart[partition + 1] - chunk.partitionStart[partition];
+        }
+        snapshot.reserveHeapObjects(partition, count);
+        for (Chunk chunk : chunks) {
+            int to = chunk.partitionStart[partition + 1];
+            for (int j = chunk.partitionStart[partition]; j < to; j++) {
+                int i = chunk.order[j];
+                snapshot.addHeapObject(chunk.ids[i], chunk.objects[i]);
+            }
+        }
+    }
+
+    private long readID(long pos) throws IOException {
+        return (identifierSize == 4)?
+            (Snapshot.SMALL_ID_MASK & (long)buf.getInt(pos)) : buf.getLong(pos);
+    }
+
+    private static class Chunk {
+        final long start;
+        long end;
+        int count;
+
+        long[] ids;
+        JavaHeapObject[] objects;
+        StackTrace[] traces;
+        IOException failure;
+
+        // indices of the objects sorted by index partition, and where the
+        // objects of each partition start in that order
+        int[] order;
+        int[] partitionStart;
+
+        Chunk(long start) {
+            this.start = start;
+        }
+    }
+
+    // Runs one task for each index in [from, to), splitting the range in halves
+    @SuppressWarnings("serial")
+    private abstract static class RangeTask extends RecursiveAction {
+
+        final int from;
+        final int to;
+
+        RangeTask(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                run(from);
+            } else {
+                int mid = (from + to) >>> 1;
+                invokeAll(split(from, mid), split(mid, to));
+            }
+        }
+
+        abstract RangeTask split(int from, int to);
+
+        abstract void run(int index);
+    }
+
+    @SuppressWarnings("serial")
+    private class DecodeTask extends RangeTask {
+
+        DecodeTask(int from, int to) {
+            super(from, to);
+        }
+
+        @Override
+        RangeTask split(int from, int to) {
+            return new DecodeTask(from, to);
+        }
+
+        @Override
+        void run(int index) {
+            Chunk chunk = chunks.get(index);
+            try {
+                decode(chunk);
+            } catch (IOException e) {
+                chunk.failure = e;
+            }
+        }
+    }
+
+    @SuppressWarnings("serial")
+    private class IndexTask extends RangeTask {
+
+        IndexTask(int from, int to) {
+            super(from, to);
+        }
+
+        @Override
+        RangeTask split(int from, int to) {
+            return new IndexTask(from, to);
+        }
+
+        @Override
+        void run(int partition) {
+            index(partition);
+        }
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright 2012-2017 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+
+package com.redhat.thermostat.vm.heap.analysis.hat.hprof.util;
+
+import java.util.Arrays;
+
+/**
+ * An open addressing hash map from {@code long} keys to non-negative
+ * {@code int} values.
+ * <p>
+ * Heap dumps contain millions of object ids; keeping them in a
+ * {@code Map<Long, Integer>} costs two boxed objects and an entry per
+ * mapping. This map stores keys and values in two flat arrays instead.
+ * It is not thread-safe.
+ */
+public final class LongToIntMap {
+
+    /** Returned by lookups for keys that are not in the map. */
+    public static final int NOT_FOUND = -1;
+
+    private static final int MIN_CAPACITY = 16;
+    // The largest power of two array length
+    private static final int MAX_CAPACITY = 1 << 30;
+    // Tables are kept at most half full
+    private static final int MAX_SIZE = MAX_CAPACITY / 2;
+
+    private long[] keys;
+    private int[] values;
+    private int size;
+    private int mask;
+    private int resizeThreshold;
+
+    public LongToIntMap() {
+        this(MIN_CAPACITY);
+    }
+
+    public LongToIntMap(int expectedSize) {
+        if (expectedSize < 0) {
+            throw new IllegalArgumentException("expectedSize must not be negative");
+        }
+        allocate(capacityFor(expectedSize));
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean containsKey(long key) {
+        return get(key) != NOT_FOUND;
+    }
+
+    /**
+     * @return the value mapped to {@code key} or {@link #NOT_FOUND}
+     */
+    public int get(long key) {
+        for (int i = slot(key); ; i = (i + 1) & mask) {
+            int value = values[i];
+            if (value == NOT_FOUND || keys[i] == key) {
+                return value;
+            }
+        }
+    }
+
+    /**
+     * Maps {@code key} to {@code value}, replacing any previous mapping.
+     *
+     * @return the previous value or {@link #NOT_FOUND}
+     */
+    public int put(long key, int value) {
+        checkValue(value);
+        int i = find(key);
+        int previous = values[i];
+        if (previous == NOT_FOUND) {
+            checkNotFull();
+        }
+        values[i] = value;
+        if (previous == NOT_FOUND) {
+            keys[i] = key;
+            added();
+        }
+        return previous;
+    }
+
+    /**
+     * Maps {@code key} to {@code value} unless it is already mapped.
+     *
+     * @return the existing value, or {@link #NOT_FOUND} if {@code value} was
+     *         added
+     */
+    public int putIfAbsent(long key, int value) {
+        checkValue(value);
+        int i = find(key);
+        int existing = values[i];
+        if (existing == NOT_FOUND) {
+            checkNotFull();
+            keys[i] = key;
+            values[i] = value;
+            added();
+        }
+        return existing;
+    }
+
+    private int find(long key) {
+        int i = slot(key);
+        while (values[i] != NOT_FOUND && keys[i] != key) {
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+
+    private int slot(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    private void checkNotFull() {
+        if (size >= MAX_SIZE) {
+            throw new IllegalStateException("Map can not hold more than " + MAX_SIZE + " entries");
+        }
+    }
+
+    private static int capacityFor(int expectedSize) {
+        if (expectedSize > MAX_SIZE) {
+            throw new IllegalStateException("Map can not hold " + expectedSize + " entries, at most " + MAX_SIZE);
+        }
+        int capacity = MIN_CAPACITY;
+        while (capacity / 2 < expectedSize) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    private void added() {
+        if (++size > resizeThreshold) {
+            rehash(keys.length << 1);
+        }
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(capacity);
+        for (int j = 0; j < oldValues.length; j++) {
+            if (oldValues[j] != NOT_FOUND) {
+                int i = find(oldKeys[j]);
+                keys[i] = oldKeys[j];
+                values[i] = oldValues[j];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new int[capacity];
+        Arrays.fill(values, NOT_FOUND);
+        mask = capacity - 1;
+        resizeThreshold = capacity / 2;
+    }
+
+    private static void checkValue(int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("value must not be negative: " + value);
+        }
+    }
+}
@@ -0,0 +1,250 @@
+/*
+ * Copyright 2012-2017 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+
+package com.redhat.thermostat.vm.heap.analysis.hat.hprof.util;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * An open addressing hash map from {@code long} keys to non-null values.
+ * <p>
+ * This is the object valued counterpart of {@link LongToIntMap}: keys are
+ * kept unboxed in a flat array and there are no per-entry objects. It is not
+ * thread-safe.
+ */
+public final class LongToObjectMap<V> {
+
+    private static final int MIN_CAPACITY = 16;
+    // The largest power of two array length
+    private static final int MAX_CAPACITY = 1 << 30;
+    // Tables are kept at most half full
+    private static final int MAX_SIZE = MAX_CAPACITY / 2;
+
+    private long[] keys;
+    private Object[] values;
+    private int size;
+    private int mask;
+    private int resizeThreshold;
+
+    public LongToObjectMap() {
+        this(MIN_CAPACITY);
+    }
+
+    public LongToObjectMap(int expectedSize) {
+        if (expectedSize < 0) {
+            throw new IllegalArgumentException("expectedSize must not be negative");
+        }
+        allocate(capacityFor(expectedSize));
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean containsKey(long key) {
+        return get(key) != null;
+    }
+
+    /**
+     * @return the value mapped to {@code key} or {@code null}
+     */
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        for (int i = slot(key); ; i = (i + 1) & mask) {
+            Object value = values[i];
+            if (value == null || keys[i] == key) {
+                return (V) value;
+            }
+        }
+    }
+
+    /**
+     * Maps {@code key} to {@code value}, replacing any previous mapping.
+     *
+     * @return the previous value or {@code null}
+     */
+    @SuppressWarnings("unchecked")
+    public V put(long key, V value) {
+        if (value == null) {
+            throw new NullPointerException("value");
+        }
+        int i = find(key);
+        Object previous = values[i];
+        if (previous == null) {
+            checkNotFull();
+        }
+        values[i] = value;
+        if (previous == null) {
+            keys[i] = key;
+            if (++size > resizeThreshold) {
+                rehash(keys.length << 1);
+            }
+        }
+        return (V) previous;
+    }
+
+    public void putAll(LongToObjectMap<? extends V> other) {
+        ensureCapacity(size + other.size);
+        for (int j = 0; j < other.values.length; j++) {
+            if (other.values[j] != null) {
+                @SuppressWarnings("unchecked")
+                V value = (V) other.values[j];
+                put(other.keys[j], value);
+            }
+        }
+    }
+
+    /**
+     * Grows the map so that it can hold {@code expectedSize} entries without
+     * rehashing.
+     *
+     * @throws IllegalStateException if a map can not hold that many entries
+     */
+    public void ensureCapacity(int expectedSize) {
+        int needed = capacityFor(expectedSize);
+        if (needed > keys.length) {
+            rehash(needed);
+        }
+    }
+
+    public void clear() {
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+    /**
+     * @return a live view of the values, in no particular order. The map
+     *         must not be modified while the view is being iterated.
+     */
+    public Iterable<V> values() {
+        return new Iterable<V>() {
+            @Override
+            public Iterator<V> iterator() {
+                return new ValueIterator();
+            }
+        };
+    }
+
+    private int find(long key) {
+        int i = slot(key);
+        while (values[i] != null && keys[i] != key) {
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+
+    private int slot(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        allocate(capacity);
+        for (int j = 0; j < oldValues.length; j++) {
+            if (oldValues[j] != null) {
+                int i = find(oldKeys[j]);
+                keys[i] = oldKeys[j];
+                values[i] = oldValues[j];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new Object[capacity];
+        mask = capacity - 1;
+        resizeThreshold = capacity / 2;
+    }
+
+    private void checkNotFull() {
+        if (size >= MAX_SIZE) {
+            throw new IllegalStateException("Map can not hold more than " + MAX_SIZE + " entries");
+        }
+    }
+
+    private static int capacityFor(int expectedSize) {
+        if (expectedSize > MAX_SIZE) {
+            throw new IllegalStateException("Map can not hold " + expectedSize + " entries, at most " + MAX_SIZE);
+        }
+        int capacity = MIN_CAPACITY;
+        while (capacity / 2 < expectedSize) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    private class ValueIterator implements Iterator<V> {
+
+        private int next = advance(0);
+
+        @Override
+        public boolean hasNext() {
+            return next < values.length;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public V next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            V value = (V) values[next];
+            next = advance(next + 1);
+            return value;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        private int advance(int from) {
+            while (from < values.length && values[from] == null) {
+                from++;
+            }
+            return from;
+        }
+    }
+}
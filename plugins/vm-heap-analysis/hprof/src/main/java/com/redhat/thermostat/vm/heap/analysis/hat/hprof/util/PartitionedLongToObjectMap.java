@@ -0,0 +1,188 @@
+/*
+ * Copyright 2012-2017 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+
+package com.redhat.thermostat.vm.heap.analysis.hat.hprof.util;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A map from {@code long} keys to non-null values, split by key into a fixed
+ * number of {@link LongToObjectMap} partitions.
+ * <p>
+ * The map is not thread-safe as a whole, but each partition is independent:
+ * different threads may put keys at the same time as long as the keys are in
+ * different partitions, see {@link #partitionOf(long)}.
+ */
+public final class PartitionedLongToObjectMap<V> {
+
+    private final LongToObjectMap<V>[] partitions;
+    private final int shift;
+
+    /**
+     * @param partitions the number of partitions, a power of two
+     */
+    @SuppressWarnings("unchecked")
+    public PartitionedLongToObjectMap(int partitions) {
+        if (partitions <= 0 || Integer.bitCount(partitions) != 1) {
+            throw new IllegalArgumentException("partitions must be a power of two");
+        }
+        this.partitions = new LongToObjectMap[partitions];
+        for (int i = 0; i < partitions; i++) {
+            this.partitions[i] = new LongToObjectMap<V>();
+        }
+        this.shift = 64 - Integer.numberOfTrailingZeros(partitions);
+    }
+
+    public int getPartitions() {
+        return partitions.length;
+    }
+
+    /**
+     * @return the partition {@code key} belongs to
+     */
+    public int partitionOf(long key) {
+        if (partitions.length == 1) {
+            return 0;
+        }
+        // The high bits of the hash, the partitions use the low bits
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> shift);
+    }
+
+    public int size() {
+        int size = 0;
+        for (LongToObjectMap<V> partition : partitions) {
+            size += partition.size();
+        }
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public boolean containsKey(long key) {
+        return get(key) != null;
+    }
+
+    /**
+     * @return the value mapped to {@code key} or {@code null}
+     */
+    public V get(long key) {
+        return partitions[partitionOf(key)].get(key);
+    }
+
+    /**
+     * Maps {@code key} to {@code value}, replacing any previous mapping.
+     *
+     * @return the previous value or {@code null}
+     */
+    public V put(long key, V value) {
+        return partitions[partitionOf(key)].put(key, value);
+    }
+
+    /**
+     * Copies all mappings of {@code other}, which must have the same number
+     * of partitions.
+     */
+    public void putAll(PartitionedLongToObjectMap<? extends V> other) {
+        if (other.partitions.length != partitions.length) {
+            throw new IllegalArgumentException("different number of partitions");
+        }
+        for (int i = 0; i < partitions.length; i++) {
+            partitions[i].putAll(other.partitions[i]);
+        }
+    }
+
+    /**
+     * Grows a partition so that it can hold {@code count} more entries
+     * without rehashing.
+     */
+    public void reserve(int partition, int count) {
+        LongToObjectMap<V> map = partitions[partition];
+        map.ensureCapacity(map.size() + count);
+    }
+
+    public void clear() {
+        for (LongToObjectMap<V> partition : partitions) {
+            partition.clear();
+        }
+    }
+
+    /**
+     * @return a live view of the values, in no particular order. The map
+     *         must not be modified while the view is being iterated.
+     */
+    public Iterable<V> values() {
+        return new Iterable<V>() {
+            @Override
+            public Iterator<V> iterator() {
+                return new ValueIterator();
+            }
+        };
+    }
+
+    private class ValueIterator implements Iterator<V> {
+
+        private int partition = 0;
+        private Iterator<V> current = partitions[0].values().iterator();
+
+        @Override
+        public boolean hasNext() {
+            while (!current.hasNext()) {
+                if (partition + 1 == partitions.length) {
+                    return false;
+                }
+                current = partitions[++partition].values().iterator();
+            }
+            return true;
+        }
+
+        @Override
+        public V next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return current.next();
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,263 @@
+/*
+ * Copyright 2012-2017 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+
+package com.redhat.thermostat.vm.heap.analysis.hat.hprof.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.redhat.thermostat.vm.heap.analysis.hat.hprof.parser.HeapDumpWriter;
+import com.redhat.thermostat.vm.heap.analysis.hat.hprof.parser.Reader;
+
+public class DominatorTreeTest {
+
+    private File file;
+    private HeapDumpWriter writer;
+    private long nodeClass;
+    private Snapshot snapshot;
+    private DominatorTree tree;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("dominator-tree-test", ".hprof");
+        writer = new HeapDumpWriter();
+        nodeClass = writer.addClass("Node", writer.getObjectClass(), "left", "right");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (snapshot != null) {
+            snapshot.close();
+        }
+        file.delete();
+    }
+
+    @Test
+    public void testDiamond() throws IOException {
+        // root -> a -> b, c -> d
+        long d = node(0, 0);
+        long b = node(d, 0);
+        long c = node(0, d);
+        long a = node(b, c);
+        writer.addRoot(a);
+        compute();
+
+        assertNull(tree.getImmediateDominator(get(a)));
+        assertSame(get(a), tree.getImmediateDominator(get(b)));
+        assertSame(get(a), tree.getImmediateDominator(get(c)));
+        assertSame(get(a), tree.getImmediateDominator(get(d)));
+        assertEquals(set(b, c, d), new HashSet<>(tree.getDominatedObjects(get(a))));
+        assertTrue(tree.getDominatedObjects(get(b)).isEmpty());
+
+        assertEquals(size(a, b, c, d), tree.getRetainedSize(get(a)));
+        assertEquals(size(b), tree.getRetainedSize(get(b)));
+        assertEquals(size(d), tree.getRetainedSize(get(d)));
+    }
+
+    @Test
+    public void testCycle() throws IOException {
+        // root -> a -> b -> c -> a, and the unreachable cycle x <-> y
+        long a = writer.newObjectId();
+        long b = writer.newObjectId();
+        long c = node(a, 0);
+        writer.addInstanceWithId(a, nodeClass, b, 0);
+        writer.addInstanceWithId(b, nodeClass, c, 0);
+        writer.addRoot(a);
+        long x = writer.newObjectId();
+        long y = node(x, 0);
+        writer.addInstanceWithId(x, nodeClass, y, 0);
+        compute();
+
+        assertTrue(tree.isReachable(get(a)));
+        assertNull(tree.getImmediateDominator(get(a)));
+        assertSame(get(a), tree.getImmediateDominator(get(b)));
+        assertSame(get(b), tree.getImmediateDominator(get(c)));
+        assertEquals(size(a, b, c), tree.getRetainedSize(get(a)));
+        assertEquals(size(b, c), tree.getRetainedSize(get(b)));
+        assertEquals(size(c), tree.getRetainedSize(get(c)));
+
+        assertFalse(tree.isReachable(get(x)));
+        assertFalse(tree.isReachable(get(y)));
+        assertEquals(0, tree.getRetainedSize(get(x)));
+        assertNull(tree.getImmediateDominator(get(y)));
+    }
+
+    @Test
+    public void testSharedChild() throws IOException {
+        // root -> a -> shared <- b <- root, and a -> own
+        long shared = node(0, 0);
+        long own = node(0, 0);
+        long a = node(shared, own);
+        long b = node(shared, 0);
+        writer.addRoot(a);
+        writer.addRoot(b);
+        compute();
+
+        assertNull(tree.getImmediateDominator(get(shared)));
+        assertSame(get(a), tree.getImmediateDominator(get(own)));
+        assertEquals(size(a, own), tree.getRetainedSize(get(a)));
+        assertEquals(size(b), tree.getRetainedSize(get(b)));
+        assertEquals(size(shared), tree.getRetainedSize(get(shared)));
+    }
+
+    @Test
+    public void testWeakReferentIsNotAReference() throws IOException {
+        long reference = writer.addClass("java.lang.ref.Reference", writer.getObjectClass(),
+                "referent", "queue");
+        long weakReference = writer.addClass("java.lang.ref.WeakReference", reference);
+        // root -> holder -> weak -(referent)-> cached, and weak -(queue)-> queue
+        long cached = node(0, 0);
+        long queue = node(0, 0);
+        long weak = writer.addInstance(weakReference, cached, queue);
+        long holder = node(weak, 0);
+        writer.addRoot(holder);
+        // root -> strong, which is also the referent of weak2 <- root
+        long strong = node(0, 0);
+        long weak2 = writer.addInstance(weakReference, strong, 0);
+        writer.addRoot(strong);
+        writer.addRoot(weak2);
+        compute();
+
+        assertFalse(tree.isReachable(get(cached)));
+        assertSame(get(weak), tree.getImmediateDominator(get(queue)));
+        assertEquals(size(holder, weak, queue), tree.getRetainedSize(get(holder)));
+        assertNull(tree.getImmediateDominator(get(strong)));
+        assertEquals(size(weak2), tree.getRetainedSize(get(weak2)));
+    }
+
+    @Test
+    public void testReachableSize() throws IOException {
+        long b = node(0, 0);
+        long a = node(b, 0);
+        writer.addRoot(a);
+        node(0, 0);     // garbage
+        compute();
+
+        long expected = size(a, b);
+        for (JavaClass clazz : snapshot.getClassesArray()) {
+            expected += clazz.getSize();
+        }
+        assertEquals(expected, tree.getReachableSize());
+    }
+
+    @Test
+    public void testRetainedSizesByClass() throws IOException {
+        long holderClass = writer.addClass("Holder", writer.getObjectClass(), "first", "second");
+        // root -> holder -> n1 -> n3, and holder -> n2
+        long n3 = node(0, 0);
+        long n1 = node(n3, 0);
+        long n2 = node(0, 0);
+        long holder = writer.addInstance(holderClass, n1, n2);
+        writer.addRoot(holder);
+        compute();
+
+        Map<JavaClass, Long> sizes = tree.getRetainedSizesByClass();
+        // n3 is counted only as part of n1, which dominates it
+        assertEquals(Long.valueOf(size(n1, n2, n3)), sizes.get(snapshot.findClass("Node")));
+        assertEquals(Long.valueOf(size(holder, n1, n2, n3)), sizes.get(snapshot.findClass("Holder")));
+    }
+
+    @Test
+    public void testLeakSuspects() throws IOException {
+        // root -> holder -> array -> 20 byte arrays, and root -> small
+        long[] buffers = new long[20];
+        for (int i = 0; i < buffers.length; i++) {
+            buffers[i] = writer.addByteArray(1000);
+        }
+        long array = writer.addObjectArray(buffers);
+        long holder = node(array, 0);
+        long small = node(0, 0);
+        writer.addRoot(holder);
+        writer.addRoot(small);
+        compute();
+
+        // holder's retained size accumulates in array, none of whose
+        // elements retains most of it
+        assertEquals(Arrays.asList(get(array), get(small)), tree.getLeakSuspects(2));
+        assertEquals(Arrays.asList(get(array)), tree.getLeakSuspects(1));
+        assertTrue(tree.getLeakSuspects(0).isEmpty());
+    }
+
+    private long node(long left, long right) throws IOException {
+        return writer.addInstance(nodeClass, left, right);
+    }
+
+    private void compute() throws IOException {
+        writer.write(file);
+        snapshot = Reader.readFile(file.getPath(), false, 0);
+        snapshot.resolve(true);
+        tree = DominatorTree.compute(snapshot);
+    }
+
+    private JavaHeapObject get(long id) {
+        JavaHeapObject obj = snapshot.findThing(id);
+        if (obj == null) {
+            throw new AssertionError("no object " + Long.toHexString(id));
+        }
+        return obj;
+    }
+
+    private long size(long... ids) {
+        long size = 0;
+        for (long id : ids) {
+            size += get(id).getSize();
+        }
+        return size;
+    }
+
+    private Set<JavaHeapObject> set(long... ids) {
+        Set<JavaHeapObject> set = new HashSet<>();
+        for (long id : ids) {
+            set.add(get(id));
+        }
+        return set;
+    }
+}
@@ -0,0 +1,290 @@
+/*
+ * Copyright 2012-2017 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+
+package com.redhat.thermostat.vm.heap.analysis.hat.hprof.parser;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import com.redhat.thermostat.vm.heap.analysis.hat.hprof.model.ArrayTypeCodes;
+
+/**
+ * Writes small heap dumps in the HPROF 1.0.2 format for tests, with 8 byte
+ * identifiers. The classes java.lang.Object, java.lang.Class,
+ * java.lang.String, java.lang.ClassLoader and java.lang.Object[] are always
+ * written. All fields are object references. Like the system classes in
+ * dumps written by HotSpot, every class is a GC root.
+ */
+public class HeapDumpWriter {
+
+    private static final int ID_SIZE = 8;
+    private static final int NO_TRACE = 1;
+
+    private final ByteArrayOutputStream recordBytes = new ByteArrayOutputStream();
+    private final DataOutputStream records = new DataOutputStream(recordBytes);
+    private final ByteArrayOutputStream segmentBytes = new ByteArrayOutputStream();
+    private final DataOutputStream segment = new DataOutputStream(segmentBytes);
+
+    private long nextId = 0x1000;
+    private int nextClassSerial = 1;
+    private int nextTraceSerial = NO_TRACE + 1;
+    private int trace = NO_TRACE;
+
+    private final long objectClass;
+    private final long objectArrayClass;
+
+    public HeapDumpWriter() throws IOException {
+        // HotSpot writes a trace without frames for objects without site
+        writeRecord(HprofReader.HPROF_TRACE, traceRecord(NO_TRACE, new long[0]));
+        objectClass = addClass("java.lang.Object", 0);
+        addClass("java.lang.Class", objectClass);
+        addClass("java.lang.String", objectClass);
+        addClass("java.lang.ClassLoader", objectClass);
+        objectArrayClass = addClass("[Ljava.lang.Object;", objectClass);
+    }
+
+    public long getObjectClass() {
+        return objectClass;
+    }
+
+    /**
+     * Writes a class with object reference fields.
+     *
+     * @return the id of the class
+     */
+    public long addClass(String name, long superId, String... fieldNames) throws IOException {
+        long id = newId();
+        long nameId = addName(name.replace('.', '/'));
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream load = new DataOutputStream(bytes);
+        load.writeInt(nextClassSerial++);
+        load.writeLong(id);
+        load.writeInt(NO_TRACE);
+        load.writeLong(nameId);
+        writeRecord(HprofReader.HPROF_LOAD_CLASS, bytes.toByteArray());
+
+        long[] fieldNameIds = new long[fieldNames.length];
+        for (int i = 0; i < fieldNames.length; i++) {
+            fieldNameIds[i] = addName(fieldNames[i]);
+        }
+        segment.writeByte(HprofReader.HPROF_GC_CLASS_DUMP);
+        segment.writeLong(id);
+        segment.writeInt(trace);
+        segment.writeLong(superId);
+        for (int i = 0; i < 5; i++) {
+            segment.writeLong(0);   // loader, signers, domain, reserved
+        }
+        segment.writeInt(fieldNames.length * ID_SIZE);
+        segment.writeShort(0);      // constant pool
+        segment.writeShort(0);      // statics
+        segment.writeShort(fieldNames.length);
+        for (long fieldNameId : fieldNameIds) {
+            segment.writeLong(fieldNameId);
+            segment.writeByte(HprofReader.T_CLASS);
+        }
+        segment.writeByte(HprofReader.HPROF_GC_ROOT_STICKY_CLASS);
+        segment.writeLong(id);
+        return id;
+    }
+
+    /**
+     * Writes an instance.
+     *
+     * @param fieldValues the ids the fields refer to, the fields of the class
+     *        first and then those of its super classes
+     * @return the id of the instance
+     */
+    public long addInstance(long classId, long... fieldValues) throws IOException {
+        long id = newObjectId();
+        addInstanceWithId(id, classId, fieldValues);
+        return id;
+    }
+
+    /**
+     * Writes an instance with an id from {@link #newObjectId()}.
+     */
+    public void addInstanceWithId(long id, long classId, long... fieldValues) throws IOException {
+        segment.writeByte(HprofReader.HPROF_GC_INSTANCE_DUMP);
+        segment.writeLong(id);
+        segment.writeInt(trace);
+        segment.writeLong(classId);
+        segment.writeInt(fieldValues.length * ID_SIZE);
+        for (long value : fieldValues) {
+            segment.writeLong(value);
+        }
+    }
+
+    /**
+     * @return a new object id, for objects that are referred to before they
+     *         are written
+     */
+    public long newObjectId() {
+        return newId();
+    }
+
+    /**
+     * Writes an Object[] with the given elements.
+     *
+     * @return the id of the array
+     */
+    public long addObjectArray(long... elements) throws IOException {
+        long id = newId();
+        segment.writeByte(HprofReader.HPROF_GC_OBJ_ARRAY_DUMP);
+        segment.writeLong(id);
+        segment.writeInt(trace);
+        segment.writeInt(elements.length);
+        segment.writeLong(objectArrayClass);
+        for (long element : elements) {
+            segment.writeLong(element);
+        }
+        return id;
+    }
+
+    /**
+     * Writes a byte[] of the given length.
+     *
+     * @return the id of the array
+     */
+    public long addByteArray(int length) throws IOException {
+        long id = newId();
+        segment.writeByte(HprofReader.HPROF_GC_PRIM_ARRAY_DUMP);
+        segment.writeLong(id);
+        segment.writeInt(trace);
+        segment.writeInt(length);
+        segment.writeByte(ArrayTypeCodes.T_BYTE);
+        segment.write(new byte[length]);
+        return id;
+    }
+
+    public void addRoot(long id) throws IOException {
+        segment.writeByte(HprofReader.HPROF_GC_ROOT_UNKNOWN);
+        segment.writeLong(id);
+    }
+
+    /**
+     * Writes an allocation site trace with a single frame.
+     *
+     * @return the serial number of the trace
+     */
+    public int addStackTrace(String methodName) throws IOException {
+        long frameId = newId();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream frame = new DataOutputStream(bytes);
+        frame.writeLong(frameId);
+        frame.writeLong(addName(methodName));
+        frame.writeLong(addName("()V"));
+        frame.writeLong(addName("Test.java"));
+        frame.writeInt(1);          // java.lang.Object
+        frame.writeInt(42);
+        writeRecord(HprofReader.HPROF_FRAME, bytes.toByteArray());
+        int serial = nextTraceSerial++;
+        writeRecord(HprofReader.HPROF_TRACE, traceRecord(serial, new long[] { frameId }));
+        return serial;
+    }
+
+    /**
+     * Sets the allocation site trace of the objects written next, 0 for none.
+     */
+    public void setStackTrace(int serial) {
+        trace = (serial == 0) ? NO_TRACE : serial;
+    }
+
+    /**
+     * Ends the current heap dump segment, the next objects go into a new one.
+     */
+    public void endSegment() throws IOException {
+        segment.flush();
+        if (segmentBytes.size() > 0) {
+            writeRecord(HprofReader.HPROF_HEAP_DUMP_SEGMENT, segmentBytes.toByteArray());
+            segmentBytes.reset();
+        }
+    }
+
+    public void write(File file) throws IOException {
+        endSegment();
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(file))) {
+            out.writeBytes("JAVA PROFILE 1.0.2");
+            out.writeByte(0);
+            out.writeInt(ID_SIZE);
+            out.writeLong(0);
+            records.flush();
+            recordBytes.writeTo(out);
+            out.writeByte(HprofReader.HPROF_HEAP_DUMP_END);
+            out.writeInt(0);
+            out.writeInt(0);
+        }
+    }
+
+    private long newId() {
+        long id = nextId;
+        nextId += 16;
+        return id;
+    }
+
+    private long addName(String name) throws IOException {
+        long id = newId();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream utf8 = new DataOutputStream(bytes);
+        utf8.writeLong(id);
+        utf8.write(name.getBytes(StandardCharsets.UTF_8));
+        writeRecord(HprofReader.HPROF_UTF8, bytes.toByteArray());
+        return id;
+    }
+
+    private static byte[] traceRecord(int serial, long[] frameIds) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream trace = new DataOutputStream(bytes);
+        trace.writeInt(serial);
+        trace.writeInt(0);          // thread
+        trace.writeInt(frameIds.length);
+        for (long frameId : frameIds) {
+            trace.writeLong(frameId);
+        }
+        return bytes.toByteArray();
+    }
+
+    private void writeRecord(int type, byte[] body) throws IOException {
+        records.writeByte(type);
+        records.writeInt(0);        // time stamp
+        records.writeInt(body.length);
+        records.write(body);
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2012-2017 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+
+package com.redhat.thermostat.vm.heap.analysis.hat.hprof.parser;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MappedReadBufferTest {
+
+    // Small segments, so that reads cross many segment boundaries
+    private static final int SEGMENT_SHIFT = 12;
+    private static final int FILE_SIZE = 5 * (1 << SEGMENT_SHIFT) + 13;
+
+    private File file;
+    private MappedReadBuffer mapped;
+    private FileReadBuffer direct;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("mapped-read-buffer-test", ".bin");
+        byte[] data = new byte[FILE_SIZE];
+        new Random(42).nextBytes(data);
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(data);
+        }
+        mapped = new MappedReadBuffer(new RandomAccessFile(file, "r"), SEGMENT_SHIFT);
+        direct = new FileReadBuffer(new RandomAccessFile(file, "r"));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mapped.close();
+        direct.close();
+        file.delete();
+    }
+
+    @Test
+    public void testPrimitiveReadsMatchFileReads() throws IOException {
+        for (long pos = 0; pos + 8 <= FILE_SIZE; pos++) {
+            assertEquals(direct.getByte(pos), mapped.getByte(pos));
+            assertEquals(direct.getShort(pos), mapped.getShort(pos));
+            assertEquals(direct.getChar(pos), mapped.getChar(pos));
+            assertEquals(direct.getInt(pos), mapped.getInt(pos));
+            assertEquals(direct.getLong(pos), mapped.getLong(pos));
+        }
+        long last = FILE_SIZE - 1;
+        assertEquals(direct.getByte(last), mapped.getByte(last));
+    }
+
+    @Test
+    public void testByteArrayReadsAcrossSegments() throws IOException {
+        int segmentSize = 1 << SEGMENT_SHIFT;
+        int[] lengths = { 0, 1, 7, 8, 9, segmentSize - 1, segmentSize, segmentSize + 1, 3 * segmentSize };
+        for (int length : lengths) {
+            for (long pos = segmentSize - 16; pos + length <= FILE_SIZE; pos += segmentSize / 2 + 3) {
+                byte[] expected = new byte[length];
+                byte[] actual = new byte[length];
+                direct.get(pos, expected);
+                mapped.get(pos, actual);
+                assertArrayEquals("length " + length + " at " + pos, expected, actual);
+            }
+        }
+    }
+
+    @Test
+    public void testReadsPastEndOfFileFail() throws IOException {
+        assertEOF(FILE_SIZE - 7, 8);
+        assertEOF(FILE_SIZE, 1);
+        assertEOF(-1, 1);
+        try {
+            mapped.get(FILE_SIZE - 2, new byte[3]);
+            fail("expected EOFException");
+        } catch (EOFException expected) {
+            // pass
+        }
+    }
+
+    @Test
+    public void testFileMapPropertyOverridesDefault() {
+        String old = System.getProperty("jhat.enableFileMap");
+        try {
+            System.setProperty("jhat.enableFileMap", "true");
+            assertTrue(MappedReadBuffer.canUseFileMap());
+            System.setProperty("jhat.enableFileMap", "false");
+            assertFalse(MappedReadBuffer.canUseFileMap());
+        } finally {
+            if (old == null) {
+                System.clearProperty("jhat.enableFileMap");
+            } else {
+                System.setProperty("jhat.enableFileMap", old);
+            }
+        }
+    }
+
+    private void assertEOF(long pos, int size) throws IOException {
+        try {
+            if (size == 8) {
+                mapped.getLong(pos);
+            } else {
+                mapped.getByte(pos);
+            }
+            fail("expected EOFException at " + pos);
+        } catch (EOFException expected) {
+            // pass
+        }
+    }
+}
@@ -0,0 +1,205 @@
+/*
+ * Copyright 2012-2017 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+
+package com.redhat.thermostat.vm.heap.analysis.hat.hprof.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.redhat.thermostat.vm.heap.analysis.hat.hprof.model.JavaHeapObject;
+import com.redhat.thermostat.vm.heap.analysis.hat.hprof.model.JavaThing;
+import com.redhat.thermostat.vm.heap.analysis.hat.hprof.model.Root;
+import com.redhat.thermostat.vm.heap.analysis.hat.hprof.model.Snapshot;
+import com.redhat.thermostat.vm.heap.analysis.hat.hprof.model.StackTrace;
+
+public class ParallelObjectReaderTest {
+
+    private static final String PARALLEL_PARSE = "jhat.parallelParse";
+    private static final String ENABLE_FILE_MAP = "jhat.enableFileMap";
+
+    private String oldParallelParse;
+    private String oldEnableFileMap;
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        oldParallelParse = System.getProperty(PARALLEL_PARSE);
+        oldEnableFileMap = System.getProperty(ENABLE_FILE_MAP);
+        System.setProperty(ENABLE_FILE_MAP, "true");
+        file = File.createTempFile("parallel-object-reader-test", ".hprof");
+        writeHeapDump(file);
+    }
+
+    @After
+    public void tearDown() {
+        restoreProperty(PARALLEL_PARSE, oldParallelParse);
+        restoreProperty(ENABLE_FILE_MAP, oldEnableFileMap);
+        file.delete();
+    }
+
+    @Test
+    public void testParallelReadMatchesSequentialRead() throws Exception {
+        Snapshot sequential = read(false);
+        Snapshot parallel = read(true);
+        try {
+            sequential.resolve(true);
+            parallel.resolve(true);
+            assertSameObjects(sequential, parallel, true);
+        } finally {
+            sequential.close();
+            parallel.close();
+        }
+    }
+
+    @Test
+    public void testParallelReadOfTruncatedDumpMatchesSequentialRead() throws Exception {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            // Somewhere in the middle of the second segment
+            raf.setLength(raf.length() * 2 / 3 + 5);
+        }
+        Snapshot sequential = read(false);
+        Snapshot parallel = read(true);
+        try {
+            sequential.resolve(false);
+            parallel.resolve(false);
+            assertSameObjects(sequential, parallel, false);
+        } finally {
+            sequential.close();
+            parallel.close();
+        }
+    }
+
+    private Snapshot read(boolean parallel) throws IOException {
+        System.setProperty(PARALLEL_PARSE, Boolean.toString(parallel));
+        return Reader.readFile(file.getPath(), true, 0);
+    }
+
+    private static void assertSameObjects(Snapshot expected, Snapshot actual, boolean withReferences) {
+        int count = 0;
+        Enumeration<JavaHeapObject> things = expected.getThings();
+        while (things.hasMoreElements()) {
+            JavaHeapObject thing = things.nextElement();
+            JavaHeapObject other = actual.findThing(thing.getId());
+            assertNotNull(thing.getIdString(), other);
+            assertEquals(thing.getClass(), other.getClass());
+            assertEquals(thing.getClazz().getName(), other.getClazz().getName());
+            assertEquals(traceOf(expected, thing), traceOf(actual, other));
+            if (withReferences) {
+                assertEquals(thing.getSize(), other.getSize());
+                assertEquals(referersOf(thing), referersOf(other));
+                Root root = thing.getRoot();
+                assertEquals(root == null, other.getRoot() == null);
+            }
+            count++;
+        }
+        assertEquals(count, countThings(actual));
+        assertTrue(count > 0);
+    }
+
+    private static String traceOf(Snapshot snapshot, JavaHeapObject thing) {
+        StackTrace trace = snapshot.getSiteTrace(thing);
+        return (trace == null) ? null : trace.getFrames()[0].getMethodName();
+    }
+
+    private static Set<Long> referersOf(JavaHeapObject thing) {
+        Set<Long> ids = new HashSet<>();
+        Enumeration<JavaThing> referers = thing.getReferers();
+        while (referers.hasMoreElements()) {
+            ids.add(((JavaHeapObject) referers.nextElement()).getId());
+        }
+        return ids;
+    }
+
+    private static int countThings(Snapshot snapshot) {
+        int count = 0;
+        Enumeration<JavaHeapObject> things = snapshot.getThings();
+        while (things.hasMoreElements()) {
+            things.nextElement();
+            count++;
+        }
+        return count;
+    }
+
+    private static void restoreProperty(String key, String value) {
+        if (value == null) {
+            System.clearProperty(key);
+        } else {
+            System.setProperty(key, value);
+        }
+    }
+
+    // Three segments of instances and arrays, of several chunks each
+    private static void writeHeapDump(File file) throws IOException {
+        HeapDumpWriter writer = new HeapDumpWriter();
+        long nodeClass = writer.addClass("Node", writer.getObjectClass(), "left", "right");
+        int trace = writer.addStackTrace("allocate");
+        Random random = new Random(7);
+        List<Long> ids = new ArrayList<>();
+        ids.add(0L);
+        for (int segment = 0; segment < 3; segment++) {
+            for (int i = 0; i < 100000; i++) {
+                writer.setStackTrace(i % 10 == 0 ? trace : 0);
+                long left = ids.get(random.nextInt(ids.size()));
+                long right = ids.get(random.nextInt(ids.size()));
+                ids.add(writer.addInstance(nodeClass, left, right));
+                if (i % 1000 == 0) {
+                    ids.add(writer.addObjectArray(left, right, left));
+                    writer.addRoot(ids.get(ids.size() - 1));
+                }
+            }
+            // Larger than a chunk
+            writer.addByteArray((int) ParallelObjectReader.CHUNK_BYTES + 17);
+            writer.endSegment();
+        }
+        writer.write(file);
+    }
+}
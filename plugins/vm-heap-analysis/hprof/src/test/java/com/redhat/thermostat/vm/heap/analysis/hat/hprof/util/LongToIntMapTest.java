@@ -0,0 +1,104 @@
+/*
+ * Copyright 2012-2017 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+
+package com.redhat.thermostat.vm.heap.analysis.hat.hprof.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class LongToIntMapTest {
+
+    @Test
+    public void testPutIfAbsentKeepsFirstValue() {
+        LongToIntMap map = new LongToIntMap();
+        assertEquals(LongToIntMap.NOT_FOUND, map.putIfAbsent(5, 1));
+        assertEquals(1, map.putIfAbsent(5, 2));
+
+        assertEquals(1, map.size());
+        assertEquals(1, map.get(5));
+    }
+
+    @Test
+    public void testPutReplacesExistingValue() {
+        LongToIntMap map = new LongToIntMap();
+        map.put(5, 1);
+        assertEquals(1, map.put(5, 2));
+        assertEquals(2, map.get(5));
+    }
+
+    @Test
+    public void testZeroAndNegativeKeys() {
+        LongToIntMap map = new LongToIntMap();
+        map.put(0, 0);
+        map.put(-1, 1);
+        map.put(Long.MIN_VALUE, 2);
+
+        assertEquals(0, map.get(0));
+        assertEquals(1, map.get(-1));
+        assertEquals(2, map.get(Long.MIN_VALUE));
+        assertFalse(map.containsKey(1));
+        assertTrue(map.containsKey(0));
+    }
+
+    @Test
+    public void testGrowsPastLoadFactor() {
+        LongToIntMap map = new LongToIntMap(1);
+        int count = 100000;
+        for (int i = 0; i < count; i++) {
+            map.put((long) i << 32, i);
+        }
+
+        assertEquals(count, map.size());
+        for (int i = 0; i < count; i++) {
+            assertEquals(i, map.get((long) i << 32));
+        }
+        assertEquals(LongToIntMap.NOT_FOUND, map.get(1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeValuesAreRejected() {
+        new LongToIntMap().put(1, -1);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testExpectedSizeBeyondMaximumCapacityIsRejected() {
+        new LongToIntMap(Integer.MAX_VALUE);
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright 2012-2017 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+
+package com.redhat.thermostat.vm.heap.analysis.hat.hprof.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class LongToObjectMapTest {
+
+    @Test
+    public void testPutAndGet() {
+        LongToObjectMap<String> map = new LongToObjectMap<>();
+        assertTrue(map.isEmpty());
+        assertNull(map.put(42, "a"));
+        assertNull(map.put(43, "b"));
+
+        assertEquals(2, map.size());
+        assertEquals("a", map.get(42));
+        assertEquals("b", map.get(43));
+        assertNull(map.get(44));
+        assertTrue(map.containsKey(42));
+        assertFalse(map.containsKey(44));
+    }
+
+    @Test
+    public void testPutReplacesExistingValue() {
+        LongToObjectMap<String> map = new LongToObjectMap<>();
+        map.put(7, "a");
+        assertEquals("a", map.put(7, "b"));
+
+        assertEquals(1, map.size());
+        assertEquals("b", map.get(7));
+    }
+
+    @Test
+    public void testZeroAndNegativeKeys() {
+        LongToObjectMap<String> map = new LongToObjectMap<>();
+        map.put(0, "zero");
+        map.put(-1, "minus one");
+        map.put(Long.MIN_VALUE, "min");
+        map.put(Long.MAX_VALUE, "max");
+
+        assertEquals(4, map.size());
+        assertEquals("zero", map.get(0));
+        assertEquals("minus one", map.get(-1));
+        assertEquals("min", map.get(Long.MIN_VALUE));
+        assertEquals("max", map.get(Long.MAX_VALUE));
+        assertNull(map.get(1));
+    }
+
+    @Test
+    public void testCollidingKeys() {
+        // Keys that only differ in their high bits, and far more keys than
+        // the initial capacity, so that probe sequences have to be walked
+        LongToObjectMap<Long> map = new LongToObjectMap<>(1);
+        for (long i = 0; i < 1000; i++) {
+            map.put(i << 32, i);
+            map.put(i << 48, i);
+        }
+        for (long i = 0; i < 1000; i++) {
+            assertEquals(Long.valueOf(i), map.get(i << 32));
+        }
+        for (long i = 1; i < 1000; i++) {
+            assertNull(map.get((i << 32) + 1));
+        }
+    }
+
+    @Test
+    public void testGrowsPastLoadFactor() {
+        LongToObjectMap<Long> map = new LongToObjectMap<>();
+        int count = 100000;
+        for (long i = 0; i < count; i++) {
+            map.put(i * 8 - count, i);
+        }
+
+        assertEquals(count, map.size());
+        for (long i = 0; i < count; i++) {
+            assertEquals(Long.valueOf(i), map.get(i * 8 - count));
+        }
+    }
+
+    @Test
+    public void testValuesVisitsEveryValueOnce() {
+        LongToObjectMap<Long> map = new LongToObjectMap<>();
+        Set<Long> expected = new HashSet<>();
+        for (long i = -50; i < 50; i++) {
+            map.put(i, i);
+            expected.add(i);
+        }
+
+        Set<Long> seen = new HashSet<>();
+        int visits = 0;
+        for (Long value : map.values()) {
+            seen.add(value);
+            visits++;
+        }
+        assertEquals(expected, seen);
+        assertEquals(expected.size(), visits);
+    }
+
+    @Test
+    public void testPutAllAndClear() {
+        LongToObjectMap<String> first = new LongToObjectMap<>();
+        first.put(1, "a");
+        first.put(2, "b");
+        LongToObjectMap<String> second = new LongToObjectMap<>();
+        second.put(2, "c");
+        for (long i = 3; i < 100; i++) {
+            second.put(i, "x");
+        }
+
+        first.putAll(second);
+        assertEquals(99, first.size());
+        assertEquals("a", first.get(1));
+        assertEquals("c", first.get(2));
+        assertEquals("x", first.get(99));
+
+        first.clear();
+        assertTrue(first.isEmpty());
+        assertNull(first.get(1));
+        first.put(1, "d");
+        assertEquals("d", first.get(1));
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void testNullValuesAreRejected() {
+        new LongToObjectMap<String>().put(1, null);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testExpectedSizeBeyondMaximumCapacityIsRejected() {
+        new LongToObjectMap<String>().ensureCapacity(Integer.MAX_VALUE);
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2012-2017 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+
+package com.redhat.thermostat.vm.heap.analysis.hat.hprof.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class PartitionedLongToObjectMapTest {
+
+    @Test
+    public void testPutAndGetAcrossPartitions() {
+        PartitionedLongToObjectMap<Long> map = new PartitionedLongToObjectMap<>(8);
+        Set<Integer> partitions = new HashSet<>();
+        for (long key = -500; key < 500; key++) {
+            assertNull(map.put(key, key));
+            int partition = map.partitionOf(key);
+            assertTrue(partition >= 0 && partition < 8);
+            partitions.add(partition);
+        }
+
+        assertEquals(8, partitions.size());
+        assertEquals(1000, map.size());
+        for (long key = -500; key < 500; key++) {
+            assertEquals(Long.valueOf(key), map.get(key));
+        }
+        assertNull(map.get(500));
+    }
+
+    @Test
+    public void testValuesCoverAllPartitions() {
+        PartitionedLongToObjectMap<Long> map = new PartitionedLongToObjectMap<>(4);
+        Set<Long> expected = new HashSet<>();
+        for (long key = 0; key < 100; key++) {
+            map.put(key * 1024, key);
+            expected.add(key);
+        }
+
+        Set<Long> values = new HashSet<>();
+        for (Long value : map.values()) {
+            values.add(value);
+        }
+        assertEquals(expected, values);
+        assertEquals(0, countValues(new PartitionedLongToObjectMap<Long>(4)));
+    }
+
+    @Test
+    public void testSinglePartition() {
+        PartitionedLongToObjectMap<String> map = new PartitionedLongToObjectMap<>(1);
+        map.put(Long.MIN_VALUE, "min");
+        map.put(Long.MAX_VALUE, "max");
+
+        assertEquals(0, map.partitionOf(Long.MIN_VALUE));
+        assertEquals("min", map.get(Long.MIN_VALUE));
+        assertEquals("max", map.get(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void testReserveAndPutAll() {
+        PartitionedLongToObjectMap<String> map = new PartitionedLongToObjectMap<>(4);
+        map.reserve(map.partitionOf(1), 1000);
+        map.put(1, "a");
+        PartitionedLongToObjectMap<String> other = new PartitionedLongToObjectMap<>(4);
+        other.put(1, "b");
+        other.put(2, "c");
+
+        map.putAll(other);
+
+        assertEquals(2, map.size());
+        assertEquals("b", map.get(1));
+        assertEquals("c", map.get(2));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testPutAllWithDifferentPartitionsFails() {
+        new PartitionedLongToObjectMap<String>(4).putAll(new PartitionedLongToObjectMap<String>(2));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testPartitionsMustBePowerOfTwo() {
+        new PartitionedLongToObjectMap<String>(6);
+    }
+
+    private static int countValues(PartitionedLongToObjectMap<Long> map) {
+        int count = 0;
+        for (Long value : map.values()) {
+            count++;
+        }
+        return count;
+    }
+}
@@ -46,12 +46,11 @@ import org.osgi.framework.ServiceRegistration;
 import com.redhat.thermostat.agent.VmStatusListenerRegistrar;
 import com.redhat.thermostat.backend.Backend;
 import com.redhat.thermostat.backend.BackendService;
-import com.redhat.thermostat.common.Clock;
 import com.redhat.thermostat.common.MultipleServiceTracker;
 import com.redhat.thermostat.common.MultipleServiceTracker.Action;
 import com.redhat.thermostat.common.MultipleServiceTracker.DependencyProvider;
-import com.redhat.thermostat.common.SystemClock;
 import com.redhat.thermostat.common.Version;
+import com.redhat.thermostat.common.portability.ProcessSampler;
 import com.redhat.thermostat.storage.core.WriterID;
 import com.redhat.thermostat.vm.io.common.VmIoStatDAO;
 
@@ -69,6 +68,7 @@ public class Activator implements BundleActivator {
                 BackendService.class,
                 VmIoStatDAO.class,
                 WriterID.class,
+                ProcessSampler.class,
         };
         tracker = new MultipleServiceTracker(context, deps, new Action() {
             @Override
@@ -76,8 +76,8 @@ public class Activator implements BundleActivator {
                 VmIoStatDAO vmIoStatDao = services.get(VmIoStatDAO.class);
                 Version version = new Version(context.getBundle());
                 WriterID writerId = services.get(WriterID.class);
-                Clock clock = new SystemClock();
-                backend = new VmIoBackend(clock, version, vmIoStatDao, registrar, writerId);
+                ProcessSampler sampler = services.get(ProcessSampler.class);
+                backend = new VmIoBackend(version, vmIoStatDao, sampler, registrar, writerId);
                 reg = context.registerService(Backend.class, backend, null);
             }
 
@@ -86,6 +86,7 @@ public class Activator implements BundleActivator {
                 if (backend.isActive()) {
                     backend.deactivate();
                 }
+                backend.dispose();
                 reg.unregister();
             }
         });
@@ -40,8 +40,8 @@ import com.redhat.thermostat.agent.VmStatusListenerRegistrar;
 import com.redhat.thermostat.backend.VmListenerBackend;
 import com.redhat.thermostat.backend.VmUpdate;
 import com.redhat.thermostat.backend.VmUpdateListener;
-import com.redhat.thermostat.common.Clock;
 import com.redhat.thermostat.common.Version;
+import com.redhat.thermostat.common.portability.ProcessSampler;
 import com.redhat.thermostat.storage.core.WriterID;
 import com.redhat.thermostat.vm.io.common.Constants;
 import com.redhat.thermostat.vm.io.common.VmIoStat;
@@ -51,18 +51,20 @@ public class VmIoBackend extends VmListenerBackend {
 
     private VmIoStatDAO vmIoStatDAO;
     private VmIoStatBuilder builder;
+    private ProcessSampler sampler;
 
-    public VmIoBackend(Clock clock, Version version,
-            VmIoStatDAO vmIoStatDao,
+    public VmIoBackend(Version version,
+            VmIoStatDAO vmIoStatDao, ProcessSampler sampler,
             VmStatusListenerRegistrar registrar, WriterID writerId) {
         this(version,
                 vmIoStatDao,
-                new VmIoStatBuilderImpl(clock, writerId),
+                new VmIoStatBuilderImpl(writerId),
+                sampler,
                 registrar, writerId);
     }
 
     VmIoBackend(Version version,
-            VmIoStatDAO vmIoStatDao, VmIoStatBuilder builder,
+            VmIoStatDAO vmIoStatDao, VmIoStatBuilder builder, ProcessSampler sampler,
             VmStatusListenerRegistrar registrar, WriterID writerId) {
         super("VM IO Backend",
               "Gathers IO statistics about a JVM",
@@ -70,6 +72,32 @@ public class VmIoBackend extends VmListenerBackend {
               version.getVersionNumber(), true , registrar, writerId);
         this.vmIoStatDAO = vmIoStatDao;
         this.builder = builder;
+        this.sampler = sampler;
+        sampler.addListener(builder);
+    }
+
+    /**
+     * Stops following the snapshots of the process sampler, once this
+     * backend is no longer used.
+     */
+    void dispose() {
+        sampler.removeListener(builder);
+    }
+
+    @Override
+    public void vmStatusChanged(Status newStatus, String vmId, int pid) {
+        super.vmStatusChanged(newStatus, vmId, pid);
+        switch (newStatus) {
+        case VM_STARTED: /* fall-through */
+        case VM_ACTIVE:
+            sampler.watch(pid);
+            break;
+        case VM_STOPPED:
+            sampler.unwatch(pid);
+            break;
+        default:
+            break;
+        }
     }
 
     @Override
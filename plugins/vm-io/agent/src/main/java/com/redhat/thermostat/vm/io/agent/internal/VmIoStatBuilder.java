@@ -36,8 +36,13 @@
 
 package com.redhat.thermostat.vm.io.agent.internal;
 
+import com.redhat.thermostat.common.portability.ProcessSampler;
 import com.redhat.thermostat.vm.io.common.VmIoStat;
 
-public interface VmIoStatBuilder {
+/**
+ * Builds io statistics from the snapshots of the {@link ProcessSampler} this
+ * builder listens to.
+ */
+public interface VmIoStatBuilder extends ProcessSampler.Listener {
     VmIoStat build(String vmId, Integer pid);
 }
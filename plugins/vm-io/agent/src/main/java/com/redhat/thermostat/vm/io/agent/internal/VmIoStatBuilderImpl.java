@@ -36,25 +36,31 @@
 
 package com.redhat.thermostat.vm.io.agent.internal;
 
-import com.redhat.thermostat.common.Clock;
 import com.redhat.thermostat.common.portability.PortableVmIoStat;
-import com.redhat.thermostat.common.portability.PortableVmIoStatFactory;
+import com.redhat.thermostat.common.portability.ProcessSample;
+import com.redhat.thermostat.common.portability.ProcessSnapshot;
 import com.redhat.thermostat.storage.core.WriterID;
 import com.redhat.thermostat.vm.io.common.VmIoStat;
 
 public class VmIoStatBuilderImpl implements VmIoStatBuilder {
 
-    private final Clock clock;
     private final String writerId;
+    private volatile ProcessSnapshot snapshot;
 
-    VmIoStatBuilderImpl(Clock clock, WriterID writerId) {
-        this.clock = clock;
+    VmIoStatBuilderImpl(WriterID writerId) {
         this.writerId = writerId.getWriterID();
     }
 
+    @Override
+    public void processesSampled(ProcessSnapshot snapshot) {
+        this.snapshot = snapshot;
+    }
+
     public synchronized VmIoStat build(String vmId, Integer pid) {
 
-        PortableVmIoStat data = PortableVmIoStatFactory.build(clock, pid);
+        ProcessSnapshot snapshot = this.snapshot;
+        ProcessSample sample = (snapshot != null) ? snapshot.get(pid) : null;
+        PortableVmIoStat data = (sample != null) ? sample.getIoStat() : null;
         return (data != null) ? new VmIoStat(writerId, vmId, data.getTimeStamp(), data.getCharactersRead(), data.getCharactersWritten(), data.getReadSyscalls(), data.getWriteSyscalls()) : null;
     }
 
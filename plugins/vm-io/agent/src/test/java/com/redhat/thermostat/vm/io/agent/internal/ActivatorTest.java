@@ -47,6 +47,7 @@ import org.osgi.framework.Version;
 
 import com.redhat.thermostat.backend.Backend;
 import com.redhat.thermostat.backend.BackendService;
+import com.redhat.thermostat.common.portability.ProcessSampler;
 import com.redhat.thermostat.storage.core.WriterID;
 import com.redhat.thermostat.testutils.StubBundleContext;
 import com.redhat.thermostat.vm.io.common.VmIoStatDAO;
@@ -62,7 +63,7 @@ public class ActivatorTest {
         activator.start(context);
 
         assertEquals(0, context.getAllServices().size());
-        assertEquals(3, context.getServiceListeners().size());
+        assertEquals(4, context.getServiceListeners().size());
 
         activator.stop(context);
     }
@@ -80,10 +81,12 @@ public class ActivatorTest {
         BackendService service = mock(BackendService.class);
         VmIoStatDAO vmCpuStatDAO = mock(VmIoStatDAO.class);
         WriterID idService = mock(WriterID.class);
+        ProcessSampler sampler = mock(ProcessSampler.class);
 
         context.registerService(BackendService.class.getName(), service, null);
         context.registerService(VmIoStatDAO.class, vmCpuStatDAO, null);
         context.registerService(WriterID.class, idService, null);
+        context.registerService(ProcessSampler.class, sampler, null);
 
         Activator activator = new Activator();
 
@@ -91,8 +94,8 @@ public class ActivatorTest {
 
         assertTrue(context.isServiceRegistered(Backend.class.getName(), VmIoBackend.class));
 
-        assertEquals(3, context.getServiceListeners().size());
-        assertEquals(4, context.getAllServices().size());
+        assertEquals(4, context.getServiceListeners().size());
+        assertEquals(5, context.getAllServices().size());
     }
 
 }
@@ -50,6 +50,7 @@ import org.junit.Test;
 import com.redhat.thermostat.agent.VmStatusListenerRegistrar;
 import com.redhat.thermostat.common.Ordered;
 import com.redhat.thermostat.common.Version;
+import com.redhat.thermostat.common.portability.ProcessSampler;
 import com.redhat.thermostat.storage.core.WriterID;
 import com.redhat.thermostat.vm.io.common.VmIoStatDAO;
 
@@ -59,6 +60,7 @@ public class VmIoBackendTest {
     private VmIoStatDAO vmIoStatDao;
     private VmStatusListenerRegistrar registrar;
     private VmIoStatBuilder ioStatBuilder;
+    private ProcessSampler sampler;
 
     @Before
     public void setup() {
@@ -71,7 +73,8 @@ public class VmIoBackendTest {
 
         WriterID id = mock(WriterID.class);
         ioStatBuilder = mock(VmIoStatBuilderImpl.class);
-        backend = new VmIoBackend(version, vmIoStatDao, ioStatBuilder, registrar, id);
+        sampler = mock(ProcessSampler.class);
+        backend = new VmIoBackend(version, vmIoStatDao, ioStatBuilder, sampler, registrar, id);
     }
 
     @Test
@@ -112,6 +115,15 @@ public class VmIoBackendTest {
         assertFalse(backend.isActive());
     }
 
+    @Test
+    public void testFollowsSamplerSnapshots() {
+        verify(sampler).addListener(ioStatBuilder);
+
+        backend.dispose();
+
+        verify(sampler).removeListener(ioStatBuilder);
+    }
+
     @Test
     public void testOrderValue() {
         int orderValue = backend.getOrderValue();
@@ -36,18 +36,18 @@
 
 package com.redhat.thermostat.vm.io.agent.internal;
 
-import com.redhat.thermostat.common.Clock;
-import com.redhat.thermostat.shared.config.OS;
+import com.redhat.thermostat.common.portability.ProcessSample;
+import com.redhat.thermostat.common.portability.ProcessSnapshot;
 import com.redhat.thermostat.storage.core.WriterID;
 import com.redhat.thermostat.vm.io.common.VmIoStat;
-import org.junit.Assume;
 import org.junit.Before;
 import org.junit.Test;
 
-import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.mockito.Mockito.mock;
 
+import java.util.Collections;
+
 public class VmIoStatBuilderTest {
 
     private WriterID writerID;
@@ -59,13 +59,16 @@ public class VmIoStatBuilderTest {
 
     @Test
     public void testBuilderBuildsNullForUnknownPid() {
-        Clock clock = mock(Clock.class);
-        VmIoStatBuilder builder = new VmIoStatBuilderImpl(clock, writerID);
+        VmIoStatBuilder builder = new VmIoStatBuilderImpl(writerID);
+        builder.processesSampled(new ProcessSnapshot(0, 0, Collections.<Integer, ProcessSample>emptyMap()));
         VmIoStat result = builder.build("vmId", 0);
-        if (OS.IS_WINDOWS)  // on Windows implementation, pid 0 will return information for the current process
-            assertNotNull(result);
-        else
-            assertNull(result);
+        assertNull(result);
+    }
+
+    @Test
+    public void testBuilderBuildsNullBeforeFirstSnapshot() {
+        VmIoStatBuilder builder = new VmIoStatBuilderImpl(writerID);
+        assertNull(builder.build("vmId", 0));
     }
 
 }
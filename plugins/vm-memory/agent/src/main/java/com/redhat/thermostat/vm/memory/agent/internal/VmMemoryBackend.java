@@ -45,11 +45,14 @@ import org.osgi.framework.BundleContext;
 
 import com.redhat.thermostat.backend.Backend;
 import com.redhat.thermostat.common.Version;
+import com.redhat.thermostat.common.config.experimental.ConfigurationInfoSource;
+import com.redhat.thermostat.common.plugin.PluginConfiguration;
 import com.redhat.thermostat.jvm.overview.agent.VmListenerBackend;
 import com.redhat.thermostat.jvm.overview.agent.VmStatusListenerRegistrar;
 import com.redhat.thermostat.jvm.overview.agent.VmUpdateListener;
 import com.redhat.thermostat.storage.core.WriterID;
 import com.redhat.thermostat.vm.memory.agent.internal.models.VmMemoryStatDAO;
+import com.redhat.thermostat.vm.memory.agent.internal.models.VmMemoryStatDAOImpl;
 import com.redhat.thermostat.vm.memory.agent.internal.models.VmTlabStatDAO;
 
 @Component
@@ -67,6 +70,9 @@ public class VmMemoryBackend extends VmListenerBackend {
     @Reference
     private WriterID writerId;
 
+    @Reference
+    private ConfigurationInfoSource configInfoSource;
+
     public VmMemoryBackend() {
         this(new ListenerCreator());
     }
@@ -80,6 +86,7 @@ public class VmMemoryBackend extends VmListenerBackend {
     protected void componentActivated(BundleContext context) {
         VmStatusListenerRegistrar registrar = new VmStatusListenerRegistrar(context);
         Version version = new Version(context.getBundle());
+        setVmUpdateInterval(new PluginConfiguration(configInfoSource, VmMemoryStatDAOImpl.PLUGIN_ID));
         initialize(writerId, registrar, version.getVersionNumber());
     }
 
@@ -105,6 +112,11 @@ public class VmMemoryBackend extends VmListenerBackend {
         this.writerId = id;
     }
 
+    // DS bind method
+    protected void bindConfigInfoSource(ConfigurationInfoSource source) {
+        this.configInfoSource = source;
+    }
+
     @Override
     public int getOrderValue() {
         return Constants.ORDER;
@@ -36,6 +36,9 @@
 
 package com.redhat.thermostat.vm.memory.agent.internal;
 
+import java.util.Arrays;
+
+import com.redhat.thermostat.jvm.overview.agent.VmCounter;
 import com.redhat.thermostat.jvm.overview.agent.VmUpdate;
 import com.redhat.thermostat.jvm.overview.agent.VmUpdateException;
 import com.redhat.thermostat.vm.memory.agent.model.VmMemoryStat.Generation;
@@ -49,43 +52,100 @@ import com.redhat.thermostat.vm.memory.agent.model.VmMemoryStat.Generation;
  * provides is merely an abstraction over this (possibly always up-to-date)
  * ByteBuffer. So the data this class extracts is as current as possible, and
  * does not correspond to when the jvmstat update events fired.
+ * <p>
+ * Counters are looked up by name only the first time they are read, and
+ * again after the VM adds or removes counters. An extractor should therefore
+ * be kept for as long as the {@link VmUpdate} it reads from.
  */
 public class VmMemoryDataExtractor {
 
-    /*
-     * Note, there may be a performance issue to consider here. We have a lot of
-     * string constants. When we start adding some of the more heavyweight
-     * features, and running into CPU issues this may need to be reconsidered in
-     * order to avoid the String pool overhead. See also:
-     * http://docs.oracle.com/javase/6/docs/api/java/lang/String.html#intern()
-     */
+    private static final String[] SCALAR_NAMES = {
+        "sun.gc.policy.generations",
+        "sun.gc.metaspace.maxCapacity",
+        "sun.gc.metaspace.minCapacity",
+        "sun.gc.metaspace.capacity",
+        "sun.gc.metaspace.used",
+        // See https://blogs.oracle.com/jonthecollector/entry/the_real_thing
+        "sun.gc.tlab.allocThreads",
+        "sun.gc.tlab.alloc",
+        "sun.gc.tlab.fills",
+        "sun.gc.tlab.maxFills",
+        "sun.gc.tlab.slowAlloc",
+        "sun.gc.tlab.maxSlowAlloc",
+        "sun.gc.tlab.gcWaste",
+        "sun.gc.tlab.maxGcWaste",
+        "sun.gc.tlab.slowWaste",
+        "sun.gc.tlab.maxSlowWaste",
+        "sun.gc.tlab.fastWaste",
+        "sun.gc.tlab.maxFastWaste",
+    };
+    private static final int GENERATIONS = 0;
+    private static final int METASPACE_MAX_CAPACITY = 1;
+    private static final int METASPACE_MIN_CAPACITY = 2;
+    private static final int METASPACE_CAPACITY = 3;
+    private static final int METASPACE_USED = 4;
+    private static final int TLAB_ALLOC_THREADS = 5;
+    private static final int TLAB_ALLOC = 6;
+    private static final int TLAB_FILLS = 7;
+    private static final int TLAB_MAX_FILLS = 8;
+    private static final int TLAB_SLOW_ALLOC = 9;
+    private static final int TLAB_MAX_SLOW_ALLOC = 10;
+    private static final int TLAB_GC_WASTE = 11;
+    private static final int TLAB_MAX_GC_WASTE = 12;
+    private static final int TLAB_SLOW_WASTE = 13;
+    private static final int TLAB_MAX_SLOW_WASTE = 14;
+    private static final int TLAB_FAST_WASTE = 15;
+    private static final int TLAB_MAX_FAST_WASTE = 16;
+
+    // Per-generation counters are named sun.gc.generation.<n>.<field>,
+    // except for the collector which is sun.gc.collector.<n>.name
+    private static final String[] GENERATION_FIELDS = { "name", "capacity", "maxCapacity", "spaces", "name" };
+    private static final int GEN_NAME = 0;
+    private static final int GEN_CAPACITY = 1;
+    private static final int GEN_MAX_CAPACITY = 2;
+    private static final int GEN_SPACES = 3;
+    private static final int GEN_COLLECTOR = 4;
+
+    // sun.gc.generation.<n>.space.<m>.<field>
+    private static final String[] SPACE_FIELDS = { "name", "capacity", "maxCapacity", "used" };
+    private static final int SPACE_NAME = 0;
+    private static final int SPACE_CAPACITY = 1;
+    private static final int SPACE_MAX_CAPACITY = 2;
+    private static final int SPACE_USED = 3;
 
     private final VmUpdate update;
+    private final VmCounter[] scalarCounters = new VmCounter[SCALAR_NAMES.length];
+    private VmCounter[] generationCounters = new VmCounter[0];
+    private VmCounter[][] spaceCounters = new VmCounter[0][];
 
     public VmMemoryDataExtractor(VmUpdate update) {
         this.update = update;
     }
+
+    VmUpdate getUpdate() {
+        return update;
+    }
     
     public Long getTotalGcGenerations() throws VmUpdateException {
-        return update.getPerformanceCounterLong("sun.gc.policy.generations");
+        return getLongOrNull(scalarCounter(GENERATIONS));
     }
 
     public String getGenerationName(long generation) throws VmUpdateException {
-        return update.getPerformanceCounterString("sun.gc.generation." + generation + ".name");
+        return getString(generationCounter(generation, GEN_NAME));
     }
 
-    public Long getGenerationCapacity(long generation) throws VmUpdateException {
-        return update.getPerformanceCounterLong("sun.gc.generation." + generation + ".capacity");
+    public long getGenerationCapacity(long generation, long defaultValue) throws VmUpdateException {
+        return getLong(generationCounter(generation, GEN_CAPACITY), defaultValue);
     }
 
-    public Long getGenerationMaxCapacity(long generation) throws VmUpdateException {
-        return update.getPerformanceCounterLong("sun.gc.generation." + generation + ".maxCapacity");
+    public long getGenerationMaxCapacity(long generation, long defaultValue) throws VmUpdateException {
+        return getLong(generationCounter(generation, GEN_MAX_CAPACITY), defaultValue);
     }
 
     public String getGenerationCollector(long generation) throws VmUpdateException {
         // this is just re-implementing getCollectorName()
         // TODO check generation number and collector number are always associated
-        String collector = update.getPerformanceCounterString("sun.gc.collector." + generation + ".name");
+        String collector = getString(generationCounter(generation, GEN_COLLECTOR));
         if (collector == null) {
             collector = Generation.COLLECTOR_NONE;
         }
@@ -93,103 +153,161 @@ public class VmMemoryDataExtractor {
     }
 
     public Long getTotalSpaces(long generation) throws VmUpdateException {
-        return update.getPerformanceCounterLong("sun.gc.generation." + generation + ".spaces");
+        return getLongOrNull(generationCounter(generation, GEN_SPACES));
     }
 
     public String getSpaceName(long generation, long space) throws VmUpdateException {
-        return update.getPerformanceCounterString("sun.gc.generation." + generation + ".space." + space + ".name");
+        return getString(spaceCounter(generation, space, SPACE_NAME));
     }
 
-    public Long getSpaceCapacity(long generation, long space) throws VmUpdateException {
-        return update.getPerformanceCounterLong("sun.gc.generation." + generation + ".space." + space + ".capacity");
+    public long getSpaceCapacity(long generation, long space, long defaultValue) throws VmUpdateException {
+        return getLong(spaceCounter(generation, space, SPACE_CAPACITY), defaultValue);
     }
 
-    public Long getSpaceMaxCapacity(long generation, long space) throws VmUpdateException {
-        return update.getPerformanceCounterLong("sun.gc.generation." + generation + ".space." + space + ".maxCapacity");
+    public long getSpaceMaxCapacity(long generation, long space, long defaultValue) throws VmUpdateException {
+        return getLong(spaceCounter(generation, space, SPACE_MAX_CAPACITY), defaultValue);
     }
 
-    public Long getSpaceUsed(long generation, long space) throws VmUpdateException {
-        return update.getPerformanceCounterLong("sun.gc.generation." + generation + ".space." + space + ".used");
+    public long getSpaceUsed(long generation, long space, long defaultValue) throws VmUpdateException {
+        return getLong(spaceCounter(generation, space, SPACE_USED), defaultValue);
     }
 
     public long getMetaspaceMaxCapacity(long defaultValue) {
-        return getLongValueOrDefault("sun.gc.metaspace.maxCapacity", defaultValue);
+        return getLongValueOrDefault(METASPACE_MAX_CAPACITY, defaultValue);
     }
 
     public long getMetaspaceMinCapacity(long defaultValue) {
-        return getLongValueOrDefault("sun.gc.metaspace.minCapacity", defaultValue);
+        return getLongValueOrDefault(METASPACE_MIN_CAPACITY, defaultValue);
     }
 
     public long getMetaspaceCapacity(long defaultValue) {
-        return getLongValueOrDefault("sun.gc.metaspace.capacity", defaultValue);
+        return getLongValueOrDefault(METASPACE_CAPACITY, defaultValue);
     }
 
     public long getMetaspaceUsed(long defaultValue) {
-        return getLongValueOrDefault("sun.gc.metaspace.used", defaultValue);
+        return getLongValueOrDefault(METASPACE_USED, defaultValue);
     }
 
-    // See https://blogs.oracle.com/jonthecollector/entry/the_real_thing
-
     public long getTlabTotalAllocatingThreads(long defaultValue) {
-        return getLongValueOrDefault("sun.gc.tlab.allocThreads", defaultValue);
+        return getLongValueOrDefault(TLAB_ALLOC_THREADS, defaultValue);
     }
 
     public long getTlabTotalAllocations(long defaultValue) {
-        return getLongValueOrDefault("sun.gc.tlab.alloc", defaultValue);
+        return getLongValueOrDefault(TLAB_ALLOC, defaultValue);
     }
 
     public long getTlabTotalRefills(long defaultValue) {
-        return getLongValueOrDefault("sun.gc.tlab.fills", defaultValue);
+        return getLongValueOrDefault(TLAB_FILLS, defaultValue);
     }
 
     public long getTlabMaxRefills(long defaultValue) {
-        return getLongValueOrDefault("sun.gc.tlab.maxFills", defaultValue);
+        return getLongValueOrDefault(TLAB_MAX_FILLS, defaultValue);
     }
 
     public long getTlabTotalSlowAllocs(long defaultValue) {
-        return getLongValueOrDefault("sun.gc.tlab.slowAlloc", defaultValue);
+        return getLongValueOrDefault(TLAB_SLOW_ALLOC, defaultValue);
     }
 
     public long getTlabMaxSlowAllocs(long defaultValue) {
-        return getLongValueOrDefault("sun.gc.tlab.maxSlowAlloc", defaultValue);
+        return getLongValueOrDefault(TLAB_MAX_SLOW_ALLOC, defaultValue);
     }
 
     public long getTlabTotalGcWaste(long defaultValue) {
-        return getLongValueOrDefault("sun.gc.tlab.gcWaste", defaultValue);
+        return getLongValueOrDefault(TLAB_GC_WASTE, defaultValue);
     }
 
     public long getTlabMaxGcWaste(long defaultValue) {
-        return getLongValueOrDefault("sun.gc.tlab.maxGcWaste", defaultValue);
+        return getLongValueOrDefault(TLAB_MAX_GC_WASTE, defaultValue);
     }
 
     public long getTlabTotalSlowWaste(long defaultValue) {
-        return getLongValueOrDefault("sun.gc.tlab.slowWaste", defaultValue);
+        return getLongValueOrDefault(TLAB_SLOW_WASTE, defaultValue);
     }
 
     public long getTlabMaxSlowWaste(long defaultValue) {
-        return getLongValueOrDefault("sun.gc.tlab.maxSlowWaste", defaultValue);
+        return getLongValueOrDefault(TLAB_MAX_SLOW_WASTE, defaultValue);
     }
 
     public long getTlabTotalFastWaste(long defaultValue) {
-        return getLongValueOrDefault("sun.gc.tlab.fastWaste", defaultValue);
+        return getLongValueOrDefault(TLAB_FAST_WASTE, defaultValue);
     }
 
     public long getTlabMaxFastWaste(long defaultValue) {
-        return getLongValueOrDefault("sun.gc.tlab.maxFastWaste", defaultValue);
+        return getLongValueOrDefault(TLAB_MAX_FAST_WASTE, defaultValue);
     }
 
     /** package private for testing */
-    long getLongValueOrDefault(String name, long defaultValue) {
+    long getLongValueOrDefault(int counter, long defaultValue) {
         try {
-            Long value = update.getPerformanceCounterLong(name);
-            if (value == null) {
-                return defaultValue;
-            }
-            return value.longValue();
+            return getLong(scalarCounter(counter), defaultValue);
         } catch (VmUpdateException e) {
             return defaultValue;
         }
     }
 
-}
+    private VmCounter scalarCounter(int counter) throws VmUpdateException {
+        VmCounter handle = scalarCounters[counter];
+        if (!isCurrent(handle)) {
+            handle = update.getCounter(SCALAR_NAMES[counter]);
+            scalarCounters[counter] = handle;
+        }
+        return handle;
+    }
 
+    private VmCounter generationCounter(long generation, int field) throws VmUpdateException {
+        int slot = (int) generation * GENERATION_FIELDS.length + field;
+        if (slot >= generationCounters.length) {
+            generationCounters = Arrays.copyOf(generationCounters, slot + GENERATION_FIELDS.length);
+        }
+        VmCounter handle = generationCounters[slot];
+        if (!isCurrent(handle)) {
+            String prefix = field == GEN_COLLECTOR ? "sun.gc.collector." : "sun.gc.generation.";
+            handle = update.getCounter(prefix + generation + "." + GENERATION_FIELDS[field]);
+            generationCounters[slot] = handle;
+        }
+        return handle;
+    }
+
+    private VmCounter spaceCounter(long generation, long space, int field) throws VmUpdateException {
+        int gen = (int) generation;
+        if (gen >= spaceCounters.length) {
+            spaceCounters = Arrays.copyOf(spaceCounters, gen + 1);
+        }
+        VmCounter[] counters = spaceCounters[gen];
+        int slot = (int) space * SPACE_FIELDS.length + field;
+        if (counters == null || slot >= counters.length) {
+            counters = counters == null ? new VmCounter[slot + SPACE_FIELDS.length]
+                    : Arrays.copyOf(counters, slot + SPACE_FIELDS.length);
+            spaceCounters[gen] = counters;
+        }
+        VmCounter handle = counters[slot];
+        if (!isCurrent(handle)) {
+            handle = update.getCounter("sun.gc.generation." + generation + ".space." + space + "."
+                    + SPACE_FIELDS[field]);
+            counters[slot] = handle;
+        }
+        return handle;
+    }
+
+    private static boolean isCurrent(VmCounter handle) {
+        return handle != null && handle.isValid();
+    }
+
+    private static long getLong(VmCounter handle, long defaultValue) {
+        return handle == null ? defaultValue : handle.getLong(defaultValue);
+    }
+
+    private static Long getLongOrNull(VmCounter handle) {
+        if (handle == null || !handle.isPresent()) {
+            return null;
+        }
+        // Generation and space counts are small enough to come from the
+        // Long cache, so this does not allocate
+        return handle.getLong(0);
+    }
+
+    private static String getString(VmCounter handle) {
+        return handle == null ? null : handle.getString();
+    }
+
+}
@@ -48,6 +48,7 @@ import com.redhat.thermostat.jvm.overview.agent.VmUpdate;
 import com.redhat.thermostat.jvm.overview.agent.VmUpdateException;
 import com.redhat.thermostat.jvm.overview.agent.VmUpdateListener;
 import com.redhat.thermostat.vm.memory.agent.internal.models.VmMemoryStatDAO;
+import com.redhat.thermostat.vm.memory.agent.internal.models.VmMemoryStatDeltaTracker;
 import com.redhat.thermostat.vm.memory.agent.internal.models.VmTlabStatDAO;
 import com.redhat.thermostat.vm.memory.agent.model.VmMemoryStat;
 import com.redhat.thermostat.vm.memory.agent.model.VmMemoryStat.Generation;
@@ -63,7 +64,9 @@ public class VmMemoryVmListener implements VmUpdateListener {
     private final VmTlabStatDAO tlabDAO;
     private final String writerId;
     private final Clock clock;
+    private final VmMemoryStatDeltaTracker deltaTracker = new VmMemoryStatDeltaTracker();
     
+    private VmMemoryDataExtractor extractor;
     private boolean error;
 
     public VmMemoryVmListener(String writerId, VmMemoryStatDAO vmMemoryStatDao, VmTlabStatDAO vmTlabStatDao, String vmId) {
@@ -80,7 +83,11 @@ public class VmMemoryVmListener implements VmUpdateListener {
 
     @Override
     public void countersUpdated(VmUpdate update) {
-        VmMemoryDataExtractor extractor = new VmMemoryDataExtractor(update);
+        // Keep the extractor, and the counters it has looked up, for as
+        // long as the VM is the same
+        if (extractor == null || extractor.getUpdate() != update) {
+            extractor = new VmMemoryDataExtractor(update);
+        }
         recordMemoryStat(extractor);
         recordTlabStat(extractor);
     }
@@ -122,7 +129,7 @@ public class VmMemoryVmListener implements VmUpdateListener {
                 VmMemoryStat stat = new VmMemoryStat(writerId, timestamp, vmId, 
                         generations.toArray(new Generation[generations.size()]),
                         metaspaceMaxCapacity, metaspaceMinCapacity, metaspaceCapacity, metaspaceUsed);
-                memDAO.putVmMemoryStat(stat);
+                memDAO.putVmMemoryStat(stat, deltaTracker);
             }
             else {
                 logWarningOnce("Unable to determine number of generations for VM " + vmId);
@@ -140,14 +147,14 @@ public class VmMemoryVmListener implements VmUpdateListener {
                     + generation + " for VM " + vmId);
             return null;
         }
-        Long capacity = extractor.getGenerationCapacity(generation);
-        if (capacity == null) {
+        long capacity = extractor.getGenerationCapacity(generation, VmMemoryStat.UNKNOWN);
+        if (capacity == VmMemoryStat.UNKNOWN) {
             logWarningOnce("Unable to determine capacity of generation " 
                     + generation + " for VM " + vmId);
             return null;
         }
-        Long maxCapacity = extractor.getGenerationMaxCapacity(generation);
-        if (maxCapacity == null) {
+        long maxCapacity = extractor.getGenerationMaxCapacity(generation, VmMemoryStat.UNKNOWN);
+        if (maxCapacity == VmMemoryStat.UNKNOWN) {
             logWarningOnce("Unable to determine max capacity of generation " 
                     + generation + " for VM " + vmId);
             return null;
@@ -175,20 +182,20 @@ public class VmMemoryVmListener implements VmUpdateListener {
                     + " in generation " + generation + " for VM " + vmId);
             return null;
         }
-        Long capacity = extractor.getSpaceCapacity(generation, space);
-        if (capacity == null) {
+        long capacity = extractor.getSpaceCapacity(generation, space, VmMemoryStat.UNKNOWN);
+        if (capacity == VmMemoryStat.UNKNOWN) {
             logWarningOnce("Unable to determine capacity of space " + space 
                     + " in generation " + generation + " for VM " + vmId);
             return null;
         }
-        Long maxCapacity = extractor.getSpaceMaxCapacity(generation, space);
-        if (maxCapacity == null) {
+        long maxCapacity = extractor.getSpaceMaxCapacity(generation, space, VmMemoryStat.UNKNOWN);
+        if (maxCapacity == VmMemoryStat.UNKNOWN) {
             logWarningOnce("Unable to determine max capacity of space " + space 
                     + " in generation " + generation + " for VM " + vmId);
             return null;
         }
-        Long used = extractor.getSpaceUsed(generation, space);
-        if (used == null) {
+        long used = extractor.getSpaceUsed(generation, space, VmMemoryStat.UNKNOWN);
+        if (used == VmMemoryStat.UNKNOWN) {
             logWarningOnce("Unable to determine used memory of space " + space 
                     + " in generation " + generation + " for VM " + vmId);
             return null;
@@ -44,5 +44,11 @@ public interface VmMemoryStatDAO {
 
     public void putVmMemoryStat(VmMemoryStat stat);
 
+    /**
+     * Stores a sample, sending only what changed since the last sample
+     * recorded in {@code tracker} if delta encoding is enabled.
+     */
+    public void putVmMemoryStat(VmMemoryStat stat, VmMemoryStatDeltaTracker tracker);
+
 }
 
@@ -36,7 +36,6 @@
 
 package com.redhat.thermostat.vm.memory.agent.internal.models;
 
-import java.io.IOException;
 import java.util.Arrays;
 import java.util.List;
 import java.util.logging.Level;
@@ -48,7 +47,7 @@ import org.apache.felix.scr.annotations.Reference;
 import org.apache.felix.scr.annotations.Service;
 
 import com.redhat.thermostat.agent.http.HttpRequestService;
-import com.redhat.thermostat.agent.http.HttpRequestService.RequestFailedException;
+import com.redhat.thermostat.agent.http.JsonPayloadWriter;
 import com.redhat.thermostat.common.config.experimental.ConfigurationInfoSource;
 import com.redhat.thermostat.common.plugin.PluginConfiguration;
 import com.redhat.thermostat.common.utils.LoggingUtils;
@@ -59,12 +58,17 @@ import com.redhat.thermostat.vm.memory.agent.model.VmMemoryStat;
 public class VmMemoryStatDAOImpl implements VmMemoryStatDAO {
 
     private static final Logger logger = LoggingUtils.getLogger(VmMemoryStatDAOImpl.class);
-    private static final String PLUGIN_ID = "vm-memory";
+    public static final String PLUGIN_ID = "vm-memory";
+    private static final String DELTA_ENCODING_PROP = "deltaEncoding";
+    private static final String KEYFRAME_INTERVAL_PROP = "deltaKeyframeInterval";
+    static final int DEFAULT_KEYFRAME_INTERVAL = 30;
 
     private final JsonHelper jsonHelper;
     private final ConfigurationCreator configCreator;
 
     private String gatewayURL;
+    private boolean deltaEncoding;
+    private int keyframeInterval = DEFAULT_KEYFRAME_INTERVAL;
 
     @Reference
     private ConfigurationInfoSource configInfoSource;
@@ -86,15 +90,51 @@ public class VmMemoryStatDAOImpl implements VmMemoryStatDAO {
     void activate() throws Exception {
         PluginConfiguration config = configCreator.create(configInfoSource);
         this.gatewayURL = config.getGatewayURL();
+        this.deltaEncoding = Boolean.parseBoolean(config.getProperty(DELTA_ENCODING_PROP, "false"));
+        String interval = config.getProperty(KEYFRAME_INTERVAL_PROP, null);
+        if (interval != null) {
+            try {
+                this.keyframeInterval = Math.max(1, Integer.parseInt(interval));
+            } catch (NumberFormatException e) {
+                logger.log(Level.WARNING, "Invalid " + KEYFRAME_INTERVAL_PROP + " '" + interval
+                        + "'. Using " + DEFAULT_KEYFRAME_INTERVAL);
+            }
+        }
     }
 
     @Override
     public void putVmMemoryStat(final VmMemoryStat stat) {
-        try {
-            String json = jsonHelper.toJson(Arrays.asList(stat));
-            httpRequestService.sendHttpRequest(json, gatewayURL, HttpRequestService.POST);
-        } catch (RequestFailedException | IOException e) {
-            logger.log(Level.WARNING, "Failed to send VmMemoryStat to Web Gateway", e);
+        JsonPayloadWriter json = JsonPayloadWriter.obtain();
+        jsonHelper.write(Arrays.asList(stat), json);
+        if (!httpRequestService.queueHttpPost(json, gatewayURL)) {
+            logger.log(Level.WARNING, "Upload queue full. Dropped VmMemoryStat");
+        }
+    }
+
+    @Override
+    public void putVmMemoryStat(final VmMemoryStat stat, final VmMemoryStatDeltaTracker tracker) {
+        if (!deltaEncoding) {
+            putVmMemoryStat(stat);
+            return;
+        }
+        // Deltas are queued as ordered payloads: they are never spooled,
+        // and once any of them is lost every tracker starts over with a
+        // keyframe, so that the gateway never gets a delta without its base
+        long losses = httpRequestService.getOrderedLosses(gatewayURL);
+        VmMemoryStat base = tracker.getBase(stat, keyframeInterval, losses);
+        JsonPayloadWriter json = JsonPayloadWriter.obtain();
+        if (base == null) {
+            jsonHelper.write(Arrays.asList(stat), json);
+        } else {
+            jsonHelper.writeDelta(base, stat, json);
+        }
+        if (httpRequestService.queueOrderedHttpPost(json, gatewayURL, losses)) {
+            tracker.sent(stat, base == null, losses);
+        } else {
+            // The gateway never sees this sample, so the next delta would
+            // have nothing to apply to
+            tracker.reset();
+            logger.log(Level.WARNING, "Upload queue full or earlier samples lost. Dropped VmMemoryStat");
         }
     }
 
@@ -120,8 +160,12 @@ public class VmMemoryStatDAOImpl implements VmMemoryStatDAO {
             this.adapter = adapter;
         }
 
-        String toJson(List<VmMemoryStat> stats) throws IOException {
-            return adapter.toJson(stats);
+        void write(List<VmMemoryStat> stats, JsonPayloadWriter out) {
+            adapter.write(out, stats);
+        }
+
+        void writeDelta(VmMemoryStat base, VmMemoryStat stat, JsonPayloadWriter out) {
+            adapter.writeDelta(out, base, stat);
         }
     }
 
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2012-2017 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+package com.redhat.thermostat.vm.memory.agent.internal.models;
+
+import com.redhat.thermostat.vm.memory.agent.model.VmMemoryStat;
+import com.redhat.thermostat.vm.memory.agent.model.VmMemoryStat.Generation;
+import com.redhat.thermostat.vm.memory.agent.model.VmMemoryStat.Space;
+
+/**
+ * Remembers the last {@link VmMemoryStat} sent for a single VM, so that the
+ * next one can be sent as a delta against it. Not thread-safe; each VM
+ * listener owns its own tracker.
+ */
+public class VmMemoryStatDeltaTracker {
+
+    private VmMemoryStat lastSent;
+    private int sinceKeyframe;
+    private long lossesAtLastSent;
+
+    /**
+     * Returns the sample a delta for {@code stat} should be written against,
+     * or {@code null} if {@code stat} must be sent in full.
+     *
+     * @param losses how many times uploads of samples were lost so far. A
+     *        keyframe is needed if the count changed since the last sample
+     *        was queued, as the gateway may not have received it.
+     */
+    VmMemoryStat getBase(VmMemoryStat stat, int keyframeInterval, long losses) {
+        if (lastSent == null || sinceKeyframe >= keyframeInterval - 1
+                || losses != lossesAtLastSent || !sameLayout(lastSent, stat)) {
+            return null;
+        }
+        return lastSent;
+    }
+
+    void sent(VmMemoryStat stat, boolean keyframe, long losses) {
+        lastSent = stat;
+        sinceKeyframe = keyframe ? 0 : sinceKeyframe + 1;
+        lossesAtLastSent = losses;
+    }
+
+    /**
+     * Forgets the last sample so that the next one is sent in full.
+     */
+    public void reset() {
+        lastSent = null;
+        sinceKeyframe = 0;
+    }
+
+    static boolean sameLayout(VmMemoryStat a, VmMemoryStat b) {
+        if (!equal(a.getVmId(), b.getVmId()) || !equal(a.getAgentId(), b.getAgentId())) {
+            return false;
+        }
+        Generation[] gensA = a.getGenerations();
+        Generation[] gensB = b.getGenerations();
+        if (gensA.length != gensB.length) {
+            return false;
+        }
+        for (int i = 0; i < gensA.length; i++) {
+            Generation genA = gensA[i];
+            Generation genB = gensB[i];
+            if (!equal(genA.getName(), genB.getName())
+                    || !equal(genA.getCollector(), genB.getCollector())) {
+                return false;
+            }
+            Space[] spacesA = genA.getSpaces();
+            Space[] spacesB = genB.getSpaces();
+            if (spacesA.length != spacesB.length) {
+                return false;
+            }
+            for (int j = 0; j < spacesA.length; j++) {
+                if (spacesA[j].getIndex() != spacesB[j].getIndex()
+                        || !equal(spacesA[j].getName(), spacesB[j].getName())) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static boolean equal(Object a, Object b) {
+        return a == null ? b == null : a.equals(b);
+    }
+}
@@ -39,6 +39,7 @@ package com.redhat.thermostat.vm.memory.agent.internal.models;
 import com.google.gson.TypeAdapter;
 import com.google.gson.stream.JsonReader;
 import com.google.gson.stream.JsonWriter;
+import com.redhat.thermostat.agent.http.JsonPayloadWriter;
 import com.redhat.thermostat.vm.memory.agent.model.VmMemoryStat;
 
 import java.io.IOException;
@@ -64,6 +65,8 @@ public class VmMemoryStatTypeAdapter extends TypeAdapter<List<VmMemoryStat>> {
     private static final String COLLECTOR = "collector";
     private static final String INDEX = "index";
     private static final String USED = "used";
+    private static final String DELTA = "delta";
+    private static final String BASE_TIMESTAMP = "baseTimeStamp";
     private static final String TYPE_LONG = "$numberLong";
 
     @Override
@@ -146,4 +149,141 @@ public class VmMemoryStatTypeAdapter extends TypeAdapter<List<VmMemoryStat>> {
         writeLong(out, s.getUsed());
         out.endObject();
     }
+
+    /**
+     * Writes the same JSON as {@link #write(JsonWriter, List)}, without
+     * creating intermediate strings.
+     */
+    public void write(JsonPayloadWriter out, List<VmMemoryStat> stats) {
+        out.beginArray();
+        for (VmMemoryStat stat : stats) {
+            writeStat(out, stat);
+        }
+        out.endArray();
+    }
+
+    public void writeStat(JsonPayloadWriter out, VmMemoryStat stat) {
+        out.beginObject();
+        out.name(AGENT_ID).value(stat.getAgentId());
+        out.name(VM_ID).value(stat.getVmId());
+        out.name(TIMESTAMP).numberLong(stat.getTimeStamp());
+        out.name(METASPACE_MAX_CAPACITY).numberLong(stat.getMetaspaceMaxCapacity());
+        out.name(METASPACE_MIN_CAPACITY).numberLong(stat.getMetaspaceMinCapacity());
+        out.name(METASPACE_CAPACITY).numberLong(stat.getMetaspaceCapacity());
+        out.name(METASPACE_USED).numberLong(stat.getMetaspaceUsed());
+        out.name(GENERATIONS);
+        out.beginArray();
+        for (Generation g : stat.getGenerations()) {
+            writeGeneration(out, g);
+        }
+        out.endArray();
+        out.endObject();
+    }
+
+    public void writeGeneration(JsonPayloadWriter out, Generation g) {
+        out.beginObject();
+        out.name(NAME).value(g.getName());
+        out.name(CAPACITY).numberLong(g.getCapacity());
+        out.name(MAX_CAPACITY).numberLong(g.getMaxCapacity());
+        out.name(COLLECTOR).value(g.getCollector());
+        out.name(SPACES);
+        out.beginArray();
+        for (Space s : g.getSpaces()) {
+            writeSpace(out, s);
+        }
+        out.endArray();
+        out.endObject();
+    }
+
+    public void writeSpace(JsonPayloadWriter out, Space s) {
+        out.beginObject();
+        out.name(INDEX).value(s.getIndex());
+        out.name(NAME).value(s.getName());
+        out.name(CAPACITY).numberLong(s.getCapacity());
+        out.name(MAX_CAPACITY).numberLong(s.getMaxCapacity());
+        out.name(USED).numberLong(s.getUsed());
+        out.endObject();
+    }
+
+    /**
+     * Writes {@code stat} as a delta against {@code base}, a previous sample
+     * of the same VM with the same generations and spaces. Only numeric
+     * fields that differ from {@code base} are written. Generations and
+     * spaces are matched by position; an unchanged one is written as an
+     * empty object, and an unchanged list is left out entirely.
+     */
+    public void writeDelta(JsonPayloadWriter out, VmMemoryStat base, VmMemoryStat stat) {
+        out.beginArray();
+        out.beginObject();
+        out.name(AGENT_ID).value(stat.getAgentId());
+        out.name(VM_ID).value(stat.getVmId());
+        out.name(TIMESTAMP).numberLong(stat.getTimeStamp());
+        out.name(DELTA).value(true);
+        out.name(BASE_TIMESTAMP).numberLong(base.getTimeStamp());
+        writeChanged(out, METASPACE_MAX_CAPACITY, base.getMetaspaceMaxCapacity(), stat.getMetaspaceMaxCapacity());
+        writeChanged(out, METASPACE_MIN_CAPACITY, base.getMetaspaceMinCapacity(), stat.getMetaspaceMinCapacity());
+        writeChanged(out, METASPACE_CAPACITY, base.getMetaspaceCapacity(), stat.getMetaspaceCapacity());
+        writeChanged(out, METASPACE_USED, base.getMetaspaceUsed(), stat.getMetaspaceUsed());
+        Generation[] baseGens = base.getGenerations();
+        Generation[] gens = stat.getGenerations();
+        if (!sameValues(baseGens, gens)) {
+            out.name(GENERATIONS);
+            out.beginArray();
+            for (int i = 0; i < gens.length; i++) {
+                writeGenerationDelta(out, baseGens[i], gens[i]);
+            }
+            out.endArray();
+        }
+        out.endObject();
+        out.endArray();
+    }
+
+    private void writeGenerationDelta(JsonPayloadWriter out, Generation base, Generation g) {
+        out.beginObject();
+        writeChanged(out, CAPACITY, base.getCapacity(), g.getCapacity());
+        writeChanged(out, MAX_CAPACITY, base.getMaxCapacity(), g.getMaxCapacity());
+        Space[] baseSpaces = base.getSpaces();
+        Space[] spaces = g.getSpaces();
+        if (!sameValues(baseSpaces, spaces)) {
+            out.name(SPACES);
+            out.beginArray();
+            for (int i = 0; i < spaces.length; i++) {
+                out.beginObject();
+                writeChanged(out, CAPACITY, baseSpaces[i].getCapacity(), spaces[i].getCapacity());
+                writeChanged(out, MAX_CAPACITY, baseSpaces[i].getMaxCapacity(), spaces[i].getMaxCapacity());
+                writeChanged(out, USED, baseSpaces[i].getUsed(), spaces[i].getUsed());
+                out.endObject();
+            }
+            out.endArray();
+        }
+        out.endObject();
+    }
+
+    private void writeChanged(JsonPayloadWriter out, String name, long base, long value) {
+        if (base != value) {
+            out.name(name).numberLong(value);
+        }
+    }
+
+    private static boolean sameValues(Generation[] base, Generation[] gens) {
+        for (int i = 0; i < gens.length; i++) {
+            if (base[i].getCapacity() != gens[i].getCapacity()
+                    || base[i].getMaxCapacity() != gens[i].getMaxCapacity()
+                    || !sameValues(base[i].getSpaces(), gens[i].getSpaces())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean sameValues(Space[] base, Space[] spaces) {
+        for (int i = 0; i < spaces.length; i++) {
+            if (base[i].getCapacity() != spaces[i].getCapacity()
+                    || base[i].getMaxCapacity() != spaces[i].getMaxCapacity()
+                    || base[i].getUsed() != spaces[i].getUsed()) {
+                return false;
+            }
+        }
+        return true;
+    }
 }
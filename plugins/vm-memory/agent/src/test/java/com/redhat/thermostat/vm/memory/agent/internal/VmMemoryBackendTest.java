@@ -45,7 +45,11 @@ import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.io.IOException;
+import java.util.Collections;
+
 import com.redhat.thermostat.common.Ordered;
+import com.redhat.thermostat.common.config.experimental.ConfigurationInfoSource;
 import com.redhat.thermostat.jvm.overview.agent.VmStatusListenerRegistrar;
 import com.redhat.thermostat.storage.core.WriterID;
 import com.redhat.thermostat.vm.memory.agent.internal.VmMemoryBackend.ListenerCreator;
@@ -71,14 +75,18 @@ public class VmMemoryBackendTest {
     }
 
     @Test
-    public void testComponentActivated() {
+    public void testComponentActivated() throws IOException {
         TestVmMemoryBackend backend = new TestVmMemoryBackend(listenerCreator);
 
         BundleContext context = mock(BundleContext.class);
         Bundle bundle = mock(Bundle.class);
         when(bundle.getVersion()).thenReturn(version);
         when(context.getBundle()).thenReturn(bundle);
+        ConfigurationInfoSource source = mock(ConfigurationInfoSource.class);
+        when(source.getConfiguration("vm-memory", "gateway.properties"))
+                .thenReturn(Collections.singletonMap("pollingInterval", "5000"));
         backend.bindWriterId(id);
+        backend.bindConfigInfoSource(source);
 
         assertFalse(backend.wasInitializeCalled);
         backend.componentActivated(context);
@@ -88,6 +96,7 @@ public class VmMemoryBackendTest {
         assertEquals(version.toString(), backend.getVersion());
         assertEquals(id, backend.writerId);
         assertNotNull(backend.registrar);
+        assertEquals(5000, backend.getVmUpdateInterval());
     }
 
     @Test
@@ -152,5 +161,11 @@ public class VmMemoryBackendTest {
             this.registrar = registrar;
             this.writerId = id;
         }
+
+        // Override to make visible to the test
+        @Override
+        protected long getVmUpdateInterval() {
+            return super.getVmUpdateInterval();
+        }
     }
 }
@@ -37,10 +37,15 @@
 package com.redhat.thermostat.vm.memory.agent.internal;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Matchers.anyLong;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import com.redhat.thermostat.jvm.overview.agent.VmCounter;
 import com.redhat.thermostat.jvm.overview.agent.VmUpdate;
 import com.redhat.thermostat.jvm.overview.agent.VmUpdateException;
 import org.junit.Before;
@@ -64,7 +69,7 @@ public class VmMemoryDataExtractorTest {
         final String MONITOR_NAME = "sun.gc.policy.generations";
         final Long GC_GENERATIONS = 99l;
 
-        when(update.getPerformanceCounterLong(eq(MONITOR_NAME))).thenReturn(GC_GENERATIONS);
+        mockLongCounter(MONITOR_NAME, GC_GENERATIONS);
         
         Long returned = extractor.getTotalGcGenerations();
         assertEquals(GC_GENERATIONS, returned);
@@ -75,7 +80,7 @@ public class VmMemoryDataExtractorTest {
         final String MONITOR_NAME = "sun.gc.generation.0.name";
         final String GENERATION_NAME = "Youth";
 
-        when(update.getPerformanceCounterString(eq(MONITOR_NAME))).thenReturn(GENERATION_NAME);
+        mockStringCounter(MONITOR_NAME, GENERATION_NAME);
 
         String returned = extractor.getGenerationName(0);
         assertEquals(GENERATION_NAME, returned);
@@ -84,22 +89,22 @@ public class VmMemoryDataExtractorTest {
     @Test
     public void testGenerationCapacity() throws VmUpdateException {
         final String MONITOR_NAME = "sun.gc.generation.0.capacity";
-        final Long GENERATION_CAPACITY = 99l;
+        final long GENERATION_CAPACITY = 99l;
 
-        when(update.getPerformanceCounterLong(eq(MONITOR_NAME))).thenReturn(GENERATION_CAPACITY);
+        mockLongCounter(MONITOR_NAME, GENERATION_CAPACITY);
 
-        Long returned = extractor.getGenerationCapacity(0);
+        long returned = extractor.getGenerationCapacity(0, -1);
         assertEquals(GENERATION_CAPACITY, returned);
     }
 
     @Test
     public void testGenerationMaxCapacity() throws VmUpdateException {
         final String MONITOR_NAME = "sun.gc.generation.0.maxCapacity";
-        final Long GENERATION_MAX_CAPACITY = 99l;
+        final long GENERATION_MAX_CAPACITY = 99l;
 
-        when(update.getPerformanceCounterLong(eq(MONITOR_NAME))).thenReturn(GENERATION_MAX_CAPACITY);
+        mockLongCounter(MONITOR_NAME, GENERATION_MAX_CAPACITY);
 
-        Long returned = extractor.getGenerationMaxCapacity(0);
+        long returned = extractor.getGenerationMaxCapacity(0, -1);
         assertEquals(GENERATION_MAX_CAPACITY, returned);
     }
 
@@ -108,7 +113,7 @@ public class VmMemoryDataExtractorTest {
         final String MONITOR_NAME = "sun.gc.collector.0.name";
         final String GENERATION_COLLECTOR = "generation collector";
 
-        when(update.getPerformanceCounterString(eq(MONITOR_NAME))).thenReturn(GENERATION_COLLECTOR);
+        mockStringCounter(MONITOR_NAME, GENERATION_COLLECTOR);
 
         String returned = extractor.getGenerationCollector(0);
         assertEquals(GENERATION_COLLECTOR, returned);
@@ -118,7 +123,7 @@ public class VmMemoryDataExtractorTest {
     public void testGenerationCollectorNone() throws VmUpdateException {
         final String MONITOR_NAME = "sun.gc.collector.0.name";
 
-        when(update.getPerformanceCounterString(eq(MONITOR_NAME))).thenReturn(null);
+        mockStringCounter(MONITOR_NAME, null);
 
         String returned = extractor.getGenerationCollector(0);
         assertEquals(Generation.COLLECTOR_NONE, returned);
@@ -129,7 +134,7 @@ public class VmMemoryDataExtractorTest {
         final String MONITOR_NAME = "sun.gc.generation.0.spaces";
         final Long TOTAL_SPACES = 99l;
 
-        when(update.getPerformanceCounterLong(eq(MONITOR_NAME))).thenReturn(TOTAL_SPACES);
+        mockLongCounter(MONITOR_NAME, TOTAL_SPACES);
 
         Long returned = extractor.getTotalSpaces(0);
         assertEquals(TOTAL_SPACES, returned);
@@ -141,7 +146,7 @@ public class VmMemoryDataExtractorTest {
         final String MONITOR_NAME = "sun.gc.generation.0.space.0.name";
         final String SPACE_NAME = "Hilbert";
 
-        when(update.getPerformanceCounterString(eq(MONITOR_NAME))).thenReturn(SPACE_NAME);
+        mockStringCounter(MONITOR_NAME, SPACE_NAME);
 
         String returned = extractor.getSpaceName(0,0);
         assertEquals(SPACE_NAME, returned);
@@ -150,35 +155,78 @@ public class VmMemoryDataExtractorTest {
     @Test
     public void testSpaceCapacity() throws VmUpdateException {
         final String MONITOR_NAME = "sun.gc.generation.0.space.0.capacity";
-        final Long SPACE_CAPACITY = 99l;
+        final long SPACE_CAPACITY = 99l;
 
-        when(update.getPerformanceCounterLong(eq(MONITOR_NAME))).thenReturn(SPACE_CAPACITY);
+        mockLongCounter(MONITOR_NAME, SPACE_CAPACITY);
 
-        Long returned = extractor.getSpaceCapacity(0,0);
+        long returned = extractor.getSpaceCapacity(0,0, -1);
         assertEquals(SPACE_CAPACITY, returned);
     }
 
     @Test
     public void testSpaceMaxCapacity() throws VmUpdateException {
         final String MONITOR_NAME = "sun.gc.generation.0.space.0.maxCapacity";
-        final Long SPACE_MAX_CAPACITY = 99l;
+        final long SPACE_MAX_CAPACITY = 99l;
 
-        when(update.getPerformanceCounterLong(eq(MONITOR_NAME))).thenReturn(SPACE_MAX_CAPACITY);
+        mockLongCounter(MONITOR_NAME, SPACE_MAX_CAPACITY);
 
-        Long returned = extractor.getSpaceMaxCapacity(0,0);
+        long returned = extractor.getSpaceMaxCapacity(0,0, -1);
         assertEquals(SPACE_MAX_CAPACITY, returned);
     }
 
     @Test
     public void testSpaceUsed() throws VmUpdateException {
         final String MONITOR_NAME = "sun.gc.generation.0.space.0.used";
-        final Long SPACE_USED = 99l;
+        final long SPACE_USED = 99l;
 
-        when(update.getPerformanceCounterLong(eq(MONITOR_NAME))).thenReturn(SPACE_USED);
+        mockLongCounter(MONITOR_NAME, SPACE_USED);
 
-        Long returned = extractor.getSpaceUsed(0,0);
+        long returned = extractor.getSpaceUsed(0,0, -1);
         assertEquals(SPACE_USED, returned);
     }
 
-}
+    @Test
+    public void testMissingCounters() throws VmUpdateException {
+        VmCounter missing = mock(VmCounter.class);
+        when(missing.isValid()).thenReturn(true);
+        when(missing.getLong(anyLong())).thenReturn(-1l);
+        when(update.getCounter(eq("sun.gc.generation.0.spaces"))).thenReturn(missing);
+        when(update.getCounter(eq("sun.gc.generation.0.space.0.used"))).thenReturn(missing);
+
+        assertNull(extractor.getTotalSpaces(0));
+        assertEquals(-1l, extractor.getSpaceUsed(0, 0, -1));
+    }
 
+    @Test
+    public void testCountersAreLookedUpOnce() throws VmUpdateException {
+        final String MONITOR_NAME = "sun.gc.generation.1.space.2.used";
+        VmCounter counter = mockLongCounter(MONITOR_NAME, 99l);
+
+        extractor.getSpaceUsed(1, 2, -1);
+        extractor.getSpaceUsed(1, 2, -1);
+        verify(update, times(1)).getCounter(MONITOR_NAME);
+
+        when(counter.isValid()).thenReturn(false);
+        extractor.getSpaceUsed(1, 2, -1);
+        verify(update, times(2)).getCounter(MONITOR_NAME);
+    }
+
+    private VmCounter mockLongCounter(String name, long value) throws VmUpdateException {
+        VmCounter counter = mock(VmCounter.class);
+        when(counter.isPresent()).thenReturn(true);
+        when(counter.isValid()).thenReturn(true);
+        when(counter.getLong(anyLong())).thenReturn(value);
+        when(update.getCounter(eq(name))).thenReturn(counter);
+        return counter;
+    }
+
+    private VmCounter mockStringCounter(String name, String value) throws VmUpdateException {
+        VmCounter counter = mock(VmCounter.class);
+        when(counter.isPresent()).thenReturn(value != null);
+        when(counter.isValid()).thenReturn(true);
+        when(counter.getString()).thenReturn(value);
+        when(update.getCounter(eq(name))).thenReturn(counter);
+        return counter;
+    }
+
+}
@@ -37,15 +37,19 @@
 package com.redhat.thermostat.vm.memory.agent.internal;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.isA;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
 
+import com.redhat.thermostat.jvm.overview.agent.VmCounter;
 import com.redhat.thermostat.jvm.overview.agent.VmUpdate;
 import com.redhat.thermostat.jvm.overview.agent.VmUpdateException;
 import org.junit.Before;
@@ -53,6 +57,7 @@ import org.junit.Test;
 import org.mockito.ArgumentCaptor;
 
 import com.redhat.thermostat.vm.memory.agent.internal.models.VmMemoryStatDAO;
+import com.redhat.thermostat.vm.memory.agent.internal.models.VmMemoryStatDeltaTracker;
 import com.redhat.thermostat.vm.memory.agent.internal.models.VmTlabStatDAO;
 import com.redhat.thermostat.vm.memory.agent.model.VmMemoryStat;
 import com.redhat.thermostat.vm.memory.agent.model.VmMemoryStat.Generation;
@@ -130,11 +135,11 @@ public class VmMemoryVmListenerTest {
     }
     
     private void mockGenerationCapacity(int gen) throws VmUpdateException {
-        when(extractor.getGenerationCapacity(gen)).thenReturn(GEN_CAPS[gen]);
+        when(extractor.getGenerationCapacity(gen, VmMemoryStat.UNKNOWN)).thenReturn(GEN_CAPS[gen]);
     }
 
     private void mockGenerationMaxCapacity(int gen) throws VmUpdateException {
-        when(extractor.getGenerationMaxCapacity(gen)).thenReturn(GEN_MAX_CAPS[gen]);
+        when(extractor.getGenerationMaxCapacity(gen, VmMemoryStat.UNKNOWN)).thenReturn(GEN_MAX_CAPS[gen]);
     }
     
     private void mockGenerationGC(int gen) throws VmUpdateException {
@@ -150,15 +155,15 @@ public class VmMemoryVmListenerTest {
     }
     
     private void mockSpaceCapacity(int gen, int space) throws VmUpdateException {
-        when(extractor.getSpaceCapacity(gen, space)).thenReturn(SPACE_CAPS[gen][space]);
+        when(extractor.getSpaceCapacity(gen, space, VmMemoryStat.UNKNOWN)).thenReturn(SPACE_CAPS[gen][space]);
     }
     
     private void mockSpaceMaxCapacity(int gen, int space) throws VmUpdateException {
-        when(extractor.getSpaceMaxCapacity(gen, space)).thenReturn(SPACE_MAX_CAPS[gen][space]);
+        when(extractor.getSpaceMaxCapacity(gen, space, VmMemoryStat.UNKNOWN)).thenReturn(SPACE_MAX_CAPS[gen][space]);
     }
     
     private void mockSpaceUsed(int gen, int space) throws VmUpdateException {
-        when(extractor.getSpaceUsed(gen, space)).thenReturn(SPACE_USED[gen][space]);
+        when(extractor.getSpaceUsed(gen, space, VmMemoryStat.UNKNOWN)).thenReturn(SPACE_USED[gen][space]);
     }
 
     private void mockMetaspace() {
@@ -174,18 +179,38 @@ public class VmMemoryVmListenerTest {
 
     @Test
     public void testMonitorsUpdated() throws VmUpdateException {
-        VmUpdate update = mock(VmUpdate.class);
+        VmUpdate update = mockUpdate();
         vmListener.countersUpdated(update);
 
-        verify(vmMemoryStatDAO).putVmMemoryStat(isA(VmMemoryStat.class));
+        verify(vmMemoryStatDAO).putVmMemoryStat(isA(VmMemoryStat.class), isA(VmMemoryStatDeltaTracker.class));
         verify(vmTlabStatDAO).putStat(isA(VmTlabStat.class));
     }
 
+    @Test
+    public void testMonitorsUpdatedReusesCounters() throws VmUpdateException {
+        VmUpdate update = mockUpdate();
+        vmListener.countersUpdated(update);
+        vmListener.countersUpdated(update);
+
+        verify(update).getCounter("sun.gc.policy.generations");
+        verify(update, never()).getPerformanceCounterLong(anyString());
+        verify(vmMemoryStatDAO, times(2)).putVmMemoryStat(isA(VmMemoryStat.class), isA(VmMemoryStatDeltaTracker.class));
+    }
+
+    private VmUpdate mockUpdate() throws VmUpdateException {
+        VmCounter counter = mock(VmCounter.class);
+        when(counter.isPresent()).thenReturn(true);
+        when(counter.isValid()).thenReturn(true);
+        VmUpdate update = mock(VmUpdate.class);
+        when(update.getCounter(anyString())).thenReturn(counter);
+        return update;
+    }
+
     @Test
     public void testRecordMemoryStat() {
         vmListener.recordMemoryStat(extractor);
         ArgumentCaptor<VmMemoryStat> captor = ArgumentCaptor.forClass(VmMemoryStat.class);
-        verify(vmMemoryStatDAO).putVmMemoryStat(captor.capture());
+        verify(vmMemoryStatDAO).putVmMemoryStat(captor.capture(), isA(VmMemoryStatDeltaTracker.class));
         VmMemoryStat memoryStat = captor.getValue();
         
         Generation[] gens = memoryStat.getGenerations();
@@ -213,6 +238,15 @@ public class VmMemoryVmListenerTest {
         assertEquals(METASPACE_USED, memoryStat.getMetaspaceUsed());
     }
 
+    @Test
+    public void testRecordMemoryStatReusesDeltaTracker() {
+        vmListener.recordMemoryStat(extractor);
+        vmListener.recordMemoryStat(extractor);
+        ArgumentCaptor<VmMemoryStatDeltaTracker> captor = ArgumentCaptor.forClass(VmMemoryStatDeltaTracker.class);
+        verify(vmMemoryStatDAO, times(2)).putVmMemoryStat(isA(VmMemoryStat.class), captor.capture());
+        assertSame(captor.getAllValues().get(0), captor.getAllValues().get(1));
+    }
+
     @Test
     public void testRecordingMemoryInPresenseOfExtrationErrors() throws VmUpdateException {
         when(extractor.getTotalGcGenerations()).thenThrow(new VmUpdateException());
@@ -225,7 +259,7 @@ public class VmMemoryVmListenerTest {
     public void testRecordMemoryStatNoTotal() throws VmUpdateException {
         when(extractor.getTotalGcGenerations()).thenReturn(null);
         vmListener.recordMemoryStat(extractor);
-        verify(vmMemoryStatDAO, never()).putVmMemoryStat(any(VmMemoryStat.class));
+        verify(vmMemoryStatDAO, never()).putVmMemoryStat(any(VmMemoryStat.class), any(VmMemoryStatDeltaTracker.class));
     }
 
     @Test
@@ -233,7 +267,7 @@ public class VmMemoryVmListenerTest {
         when(extractor.getGenerationName(0)).thenReturn(null);
         vmListener.recordMemoryStat(extractor);
         ArgumentCaptor<VmMemoryStat> captor = ArgumentCaptor.forClass(VmMemoryStat.class);
-        verify(vmMemoryStatDAO).putVmMemoryStat(captor.capture());
+        verify(vmMemoryStatDAO).putVmMemoryStat(captor.capture(), isA(VmMemoryStatDeltaTracker.class));
         VmMemoryStat memoryStat = captor.getValue();
         
         Generation[] gens = memoryStat.getGenerations();
@@ -256,10 +290,10 @@ public class VmMemoryVmListenerTest {
     
     @Test
     public void testRecordMemoryStatNoCapacity() throws VmUpdateException {
-        when(extractor.getGenerationCapacity(0)).thenReturn(null);
+        when(extractor.getGenerationCapacity(0, VmMemoryStat.UNKNOWN)).thenReturn(VmMemoryStat.UNKNOWN);
         vmListener.recordMemoryStat(extractor);
         ArgumentCaptor<VmMemoryStat> captor = ArgumentCaptor.forClass(VmMemoryStat.class);
-        verify(vmMemoryStatDAO).putVmMemoryStat(captor.capture());
+        verify(vmMemoryStatDAO).putVmMemoryStat(captor.capture(), isA(VmMemoryStatDeltaTracker.class));
         VmMemoryStat memoryStat = captor.getValue();
         
         Generation[] gens = memoryStat.getGenerations();
@@ -282,10 +316,10 @@ public class VmMemoryVmListenerTest {
     
     @Test
     public void testRecordMemoryStatNoMaxCapacity() throws VmUpdateException {
-        when(extractor.getGenerationMaxCapacity(0)).thenReturn(null);
+        when(extractor.getGenerationMaxCapacity(0, VmMemoryStat.UNKNOWN)).thenReturn(VmMemoryStat.UNKNOWN);
         vmListener.recordMemoryStat(extractor);
         ArgumentCaptor<VmMemoryStat> captor = ArgumentCaptor.forClass(VmMemoryStat.class);
-        verify(vmMemoryStatDAO).putVmMemoryStat(captor.capture());
+        verify(vmMemoryStatDAO).putVmMemoryStat(captor.capture(), isA(VmMemoryStatDeltaTracker.class));
         VmMemoryStat memoryStat = captor.getValue();
         
         Generation[] gens = memoryStat.getGenerations();
@@ -311,7 +345,7 @@ public class VmMemoryVmListenerTest {
         when(extractor.getGenerationCollector(0)).thenReturn(null);
         vmListener.recordMemoryStat(extractor);
         ArgumentCaptor<VmMemoryStat> captor = ArgumentCaptor.forClass(VmMemoryStat.class);
-        verify(vmMemoryStatDAO).putVmMemoryStat(captor.capture());
+        verify(vmMemoryStatDAO).putVmMemoryStat(captor.capture(), isA(VmMemoryStatDeltaTracker.class));
         VmMemoryStat memoryStat = captor.getValue();
         
         Generation[] gens = memoryStat.getGenerations();
@@ -337,7 +371,7 @@ public class VmMemoryVmListenerTest {
         when(extractor.getTotalSpaces(0)).thenReturn(null);
         vmListener.recordMemoryStat(extractor);
         ArgumentCaptor<VmMemoryStat> captor = ArgumentCaptor.forClass(VmMemoryStat.class);
-        verify(vmMemoryStatDAO).putVmMemoryStat(captor.capture());
+        verify(vmMemoryStatDAO).putVmMemoryStat(captor.capture(), isA(VmMemoryStatDeltaTracker.class));
         VmMemoryStat memoryStat = captor.getValue();
         
         Generation[] gens = memoryStat.getGenerations();
@@ -363,7 +397,7 @@ public class VmMemoryVmListenerTest {
         when(extractor.getSpaceName(0, 1)).thenReturn(null);
         vmListener.recordMemoryStat(extractor);
         ArgumentCaptor<VmMemoryStat> captor = ArgumentCaptor.forClass(VmMemoryStat.class);
-        verify(vmMemoryStatDAO).putVmMemoryStat(captor.capture());
+        verify(vmMemoryStatDAO).putVmMemoryStat(captor.capture(), isA(VmMemoryStatDeltaTracker.class));
         VmMemoryStat memoryStat = captor.getValue();
         
         Generation[] gens = memoryStat.getGenerations();
@@ -394,10 +428,10 @@ public class VmMemoryVmListenerTest {
     
     @Test
     public void testRecordMemoryStatNoSpaceCapacity() throws VmUpdateException {
-        when(extractor.getSpaceCapacity(0, 1)).thenReturn(null);
+        when(extractor.getSpaceCapacity(0, 1, VmMemoryStat.UNKNOWN)).thenReturn(VmMemoryStat.UNKNOWN);
         vmListener.recordMemoryStat(extractor);
         ArgumentCaptor<VmMemoryStat> captor = ArgumentCaptor.forClass(VmMemoryStat.class);
-        verify(vmMemoryStatDAO).putVmMemoryStat(captor.capture());
+        verify(vmMemoryStatDAO).putVmMemoryStat(captor.capture(), isA(VmMemoryStatDeltaTracker.class));
         VmMemoryStat memoryStat = captor.getValue();
         
         Generation[] gens = memoryStat.getGenerations();
@@ -428,10 +462,10 @@ public class VmMemoryVmListenerTest {
     
     @Test
     public void testRecordMemoryStatNoSpaceMaxCapacity() throws VmUpdateException {
-        when(extractor.getSpaceMaxCapacity(0, 1)).thenReturn(null);
+        when(extractor.getSpaceMaxCapacity(0, 1, VmMemoryStat.UNKNOWN)).thenReturn(VmMemoryStat.UNKNOWN);
         vmListener.recordMemoryStat(extractor);
         ArgumentCaptor<VmMemoryStat> captor = ArgumentCaptor.forClass(VmMemoryStat.class);
-        verify(vmMemoryStatDAO).putVmMemoryStat(captor.capture());
+        verify(vmMemoryStatDAO).putVmMemoryStat(captor.capture(), isA(VmMemoryStatDeltaTracker.class));
         VmMemoryStat memoryStat = captor.getValue();
         
         Generation[] gens = memoryStat.getGenerations();
@@ -462,10 +496,10 @@ public class VmMemoryVmListenerTest {
     
     @Test
     public void testRecordMemoryStatNoSpaceUsed() throws VmUpdateException {
-        when(extractor.getSpaceUsed(0, 1)).thenReturn(null);
+        when(extractor.getSpaceUsed(0, 1, VmMemoryStat.UNKNOWN)).thenReturn(VmMemoryStat.UNKNOWN);
         vmListener.recordMemoryStat(extractor);
         ArgumentCaptor<VmMemoryStat> captor = ArgumentCaptor.forClass(VmMemoryStat.class);
-        verify(vmMemoryStatDAO).putVmMemoryStat(captor.capture());
+        verify(vmMemoryStatDAO).putVmMemoryStat(captor.capture(), isA(VmMemoryStatDeltaTracker.class));
         VmMemoryStat memoryStat = captor.getValue();
         
         Generation[] gens = memoryStat.getGenerations();
@@ -36,8 +36,18 @@
 
 package com.redhat.thermostat.vm.memory.agent.internal.models;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.same;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -47,8 +57,12 @@ import java.util.List;
 
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 
 import com.redhat.thermostat.agent.http.HttpRequestService;
+import com.redhat.thermostat.agent.http.JsonPayloadWriter;
 import com.redhat.thermostat.common.config.experimental.ConfigurationInfoSource;
 import com.redhat.thermostat.common.plugin.PluginConfiguration;
 import com.redhat.thermostat.vm.memory.agent.internal.models.VmMemoryStatDAOImpl.JsonHelper;
@@ -70,7 +84,14 @@ public class VmMemoryStatDAOImplTest {
     @Before
     public void setUp() throws Exception {
         jsonHelper = mock(JsonHelper.class);
-        when(jsonHelper.toJson(anyListOf(VmMemoryStat.class))).thenReturn(JSON);
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                JsonPayloadWriter out = (JsonPayloadWriter) invocation.getArguments()[1];
+                out.beginObject().name("this").value("is").name("test").value("JSON").endObject();
+                return null;
+            }
+        }).when(jsonHelper).write(anyListOf(VmMemoryStat.class), any(JsonPayloadWriter.class));
         
         config = mock(PluginConfiguration.class);
         when(config.getGatewayURL()).thenReturn(GATEWAY_URL);
@@ -121,8 +142,123 @@ public class VmMemoryStatDAOImplTest {
         
         dao.putVmMemoryStat(stat);
 
-        verify(jsonHelper).toJson(Arrays.asList(stat));
-        verify(httpRequestService).sendHttpRequest(JSON, GATEWAY_URL, HttpRequestService.POST);
+        verify(jsonHelper).write(eq(Arrays.asList(stat)), any(JsonPayloadWriter.class));
+        ArgumentCaptor<JsonPayloadWriter> jsonCaptor = ArgumentCaptor.forClass(JsonPayloadWriter.class);
+        verify(httpRequestService).queueHttpPost(jsonCaptor.capture(), eq(GATEWAY_URL));
+        assertEquals(JSON, jsonCaptor.getValue().toString());
+    }
+
+    @Test
+    public void testPutVmMemoryStatDeltaDisabled() throws Exception {
+        VmMemoryStatDAOImpl dao = new VmMemoryStatDAOImpl(jsonHelper, creator, source);
+        dao.bindHttpRequestService(httpRequestService);
+        dao.activate();
+        when(httpRequestService.queueHttpPost(any(JsonPayloadWriter.class), eq(GATEWAY_URL))).thenReturn(true);
+
+        VmMemoryStatDeltaTracker tracker = new VmMemoryStatDeltaTracker();
+        VmMemoryStat first = createStat(1);
+        VmMemoryStat second = createStat(2);
+        dao.putVmMemoryStat(first, tracker);
+        dao.putVmMemoryStat(second, tracker);
+
+        List<VmMemoryStat> written = verifyFullWrites(2);
+        assertSame(first, written.get(0));
+        assertSame(second, written.get(1));
+        verify(jsonHelper, never()).writeDelta(any(VmMemoryStat.class), any(VmMemoryStat.class), any(JsonPayloadWriter.class));
+    }
+
+    @Test
+    public void testPutVmMemoryStatDeltaKeyframes() throws Exception {
+        when(config.getProperty("deltaEncoding", "false")).thenReturn("true");
+        when(config.getProperty("deltaKeyframeInterval", null)).thenReturn("3");
+        VmMemoryStatDAOImpl dao = new VmMemoryStatDAOImpl(jsonHelper, creator, source);
+        dao.bindHttpRequestService(httpRequestService);
+        dao.activate();
+        when(httpRequestService.queueOrderedHttpPost(any(JsonPayloadWriter.class), eq(GATEWAY_URL), anyLong())).thenReturn(true);
+
+        VmMemoryStatDeltaTracker tracker = new VmMemoryStatDeltaTracker();
+        VmMemoryStat[] stats = new VmMemoryStat[4];
+        for (int i = 0; i < stats.length; i++) {
+            stats[i] = createStat(i);
+            dao.putVmMemoryStat(stats[i], tracker);
+        }
+
+        List<VmMemoryStat> written = verifyFullWrites(2);
+        assertSame(stats[0], written.get(0));
+        assertSame(stats[3], written.get(1));
+        verify(jsonHelper).writeDelta(same(stats[0]), same(stats[1]), any(JsonPayloadWriter.class));
+        verify(jsonHelper).writeDelta(same(stats[1]), same(stats[2]), any(JsonPayloadWriter.class));
+    }
+
+    @Test
+    public void testPutVmMemoryStatDeltaAfterDroppedUpload() throws Exception {
+        when(config.getProperty("deltaEncoding", "false")).thenReturn("true");
+        VmMemoryStatDAOImpl dao = new VmMemoryStatDAOImpl(jsonHelper, creator, source);
+        dao.bindHttpRequestService(httpRequestService);
+        dao.activate();
+        when(httpRequestService.queueOrderedHttpPost(any(JsonPayloadWriter.class), eq(GATEWAY_URL), anyLong()))
+                .thenReturn(true, false, true);
+
+        VmMemoryStatDeltaTracker tracker = new VmMemoryStatDeltaTracker();
+        VmMemoryStat[] stats = new VmMemoryStat[3];
+        for (int i = 0; i < stats.length; i++) {
+            stats[i] = createStat(i);
+            dao.putVmMemoryStat(stats[i], tracker);
+        }
+
+        List<VmMemoryStat> written = verifyFullWrites(2);
+        assertSame(stats[0], written.get(0));
+        assertSame(stats[2], written.get(1));
+        verify(jsonHelper).writeDelta(same(stats[0]), same(stats[1]), any(JsonPayloadWriter.class));
+    }
+
+    @Test
+    public void testPutVmMemoryStatDeltaAfterLostUpload() throws Exception {
+        when(config.getProperty("deltaEncoding", "false")).thenReturn("true");
+        VmMemoryStatDAOImpl dao = new VmMemoryStatDAOImpl(jsonHelper, creator, source);
+        dao.bindHttpRequestService(httpRequestService);
+        dao.activate();
+        when(httpRequestService.queueOrderedHttpPost(any(JsonPayloadWriter.class), eq(GATEWAY_URL), anyLong()))
+                .thenReturn(true);
+        // The upload of the second sample fails after it was queued
+        when(httpRequestService.getOrderedLosses(GATEWAY_URL)).thenReturn(0L, 0L, 1L);
+
+        VmMemoryStatDeltaTracker tracker = new VmMemoryStatDeltaTracker();
+        VmMemoryStat[] stats = new VmMemoryStat[3];
+        for (int i = 0; i < stats.length; i++) {
+            stats[i] = createStat(i);
+            dao.putVmMemoryStat(stats[i], tracker);
+        }
+
+        List<VmMemoryStat> written = verifyFullWrites(2);
+        assertSame(stats[0], written.get(0));
+        assertSame(stats[2], written.get(1));
+        verify(jsonHelper).writeDelta(same(stats[0]), same(stats[1]), any(JsonPayloadWriter.class));
+        verify(httpRequestService).queueOrderedHttpPost(any(JsonPayloadWriter.class), eq(GATEWAY_URL), eq(1L));
+        verify(httpRequestService, never()).queueHttpPost(any(JsonPayloadWriter.class), anyString());
+    }
+
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    private List<VmMemoryStat> verifyFullWrites(int count) {
+        ArgumentCaptor<List> captor = ArgumentCaptor.forClass(List.class);
+        verify(jsonHelper, times(count)).write(captor.capture(), any(JsonPayloadWriter.class));
+        List<VmMemoryStat> written = new ArrayList<>();
+        for (List<VmMemoryStat> stats : captor.getAllValues()) {
+            assertEquals(1, stats.size());
+            written.add(stats.get(0));
+        }
+        return written;
+    }
+
+    private static VmMemoryStat createStat(long timeStamp) {
+        Space space = new Space();
+        space.setName("eden");
+        space.setUsed(timeStamp);
+        Generation gen = new Generation();
+        gen.setName("new");
+        gen.setCollector("Copy");
+        gen.setSpaces(new Space[] { space });
+        return new VmMemoryStat("foo-agent", timeStamp, "vmId", new Generation[] { gen }, 2, 3, 4, 5);
     }
     
 }
@@ -0,0 +1,285 @@
+/*
+ * Copyright 2012-2017 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+package com.redhat.thermostat.vm.memory.agent.internal.models;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.redhat.thermostat.agent.http.HttpRequestService;
+import com.redhat.thermostat.agent.http.JsonPayloadWriter;
+import com.redhat.thermostat.common.config.experimental.ConfigurationInfoSource;
+import com.redhat.thermostat.common.plugin.PluginConfiguration;
+import com.redhat.thermostat.vm.memory.agent.internal.models.VmMemoryStatDAOImpl.JsonHelper;
+import com.redhat.thermostat.vm.memory.agent.model.VmMemoryStat;
+import com.redhat.thermostat.vm.memory.agent.model.VmMemoryStat.Generation;
+import com.redhat.thermostat.vm.memory.agent.model.VmMemoryStat.Space;
+
+/**
+ * Sends sample sequences through a delta encoding {@link VmMemoryStatDAOImpl}
+ * and checks that a gateway can rebuild every full sample from what was sent.
+ */
+public class VmMemoryStatDeltaEncodingTest {
+
+    private static final String GATEWAY_URL = "http://example.com/jvm-memory/0.0.2/";
+    private static final String AGENT_ID = "2c6b4d0e-7f3a-4c1e-9b5d-8a1f0e2d3c4b";
+    private static final String VM_ID = "9e8d7c6b-5a4f-4e3d-8c2b-1a0f9e8d7c6b";
+    private static final int KEYFRAME_INTERVAL = 30;
+    private static final int SAMPLES = 3 * KEYFRAME_INTERVAL;
+
+    private List<byte[]> uploads;
+    private VmMemoryStatDAOImpl dao;
+
+    @Before
+    public void setUp() throws Exception {
+        PluginConfiguration config = mock(PluginConfiguration.class);
+        when(config.getGatewayURL()).thenReturn(GATEWAY_URL);
+        when(config.getProperty("deltaEncoding", "false")).thenReturn("true");
+        when(config.getProperty("deltaKeyframeInterval", null)).thenReturn(String.valueOf(KEYFRAME_INTERVAL));
+        ConfigurationInfoSource source = mock(ConfigurationInfoSource.class);
+        VmMemoryStatDAOImpl.ConfigurationCreator creator = mock(VmMemoryStatDAOImpl.ConfigurationCreator.class);
+        when(creator.create(source)).thenReturn(config);
+
+        uploads = new ArrayList<>();
+        HttpRequestService httpRequestService = mock(HttpRequestService.class);
+        when(httpRequestService.queueOrderedHttpPost(any(JsonPayloadWriter.class), anyString(), anyLong())).thenAnswer(new Answer<Boolean>() {
+            @Override
+            public Boolean answer(InvocationOnMock invocation) throws Throwable {
+                uploads.add(((JsonPayloadWriter) invocation.getArguments()[0]).toByteArray());
+                return true;
+            }
+        });
+
+        dao = new VmMemoryStatDAOImpl(new JsonHelper(new VmMemoryStatTypeAdapter()), creator, source);
+        dao.bindHttpRequestService(httpRequestService);
+        dao.activate();
+    }
+
+    @Test
+    public void testIdleVm() {
+        List<VmMemoryStat> stats = new ArrayList<>();
+        for (int i = 0; i < SAMPLES; i++) {
+            stats.add(createStat(1000 * i, 0, 0));
+        }
+        long sent = sendAndVerify(stats);
+        long full = fullSize(stats);
+
+        assertTrue("full: " + full + ", sent: " + sent, sent * 4 < full);
+    }
+
+    @Test
+    public void testAllocatingVm() {
+        List<VmMemoryStat> stats = new ArrayList<>();
+        for (int i = 0; i < SAMPLES; i++) {
+            // eden fills up every tick and is collected every tenth
+            stats.add(createStat(1000 * i, i % 10, i / 10));
+        }
+        long sent = sendAndVerify(stats);
+        long full = fullSize(stats);
+
+        assertTrue("full: " + full + ", sent: " + sent, sent * 3 < full);
+    }
+
+    @Test
+    public void testLayoutChangeSendsKeyframe() {
+        VmMemoryStat first = createStat(0, 0, 0);
+        VmMemoryStat second = createStat(1000, 1, 0);
+        second.getGenerations()[1].setCollector("G1 old");
+        sendAndVerify(Arrays.asList(first, second));
+
+        assertEquals(2, uploads.size());
+        JsonObject sent = new GatewayStandIn().parse(uploads.get(1));
+        assertFalse(sent.has("delta"));
+    }
+
+    @Test
+    public void testDroppedDeltaIsDetected() {
+        VmMemoryStatDeltaTracker tracker = new VmMemoryStatDeltaTracker();
+        dao.putVmMemoryStat(createStat(0, 0, 0), tracker);
+        dao.putVmMemoryStat(createStat(1000, 1, 0), tracker);
+        dao.putVmMemoryStat(createStat(2000, 2, 0), tracker);
+
+        GatewayStandIn gateway = new GatewayStandIn();
+        gateway.receive(uploads.get(0));
+        try {
+            gateway.receive(uploads.get(2));
+            throw new AssertionError("delta applied to the wrong base");
+        } catch (IllegalStateException expected) {
+            // pass
+        }
+    }
+
+    private long sendAndVerify(List<VmMemoryStat> stats) {
+        VmMemoryStatDeltaTracker tracker = new VmMemoryStatDeltaTracker();
+        for (VmMemoryStat stat : stats) {
+            dao.putVmMemoryStat(stat, tracker);
+        }
+        assertEquals(stats.size(), uploads.size());
+
+        GatewayStandIn gateway = new GatewayStandIn();
+        VmMemoryStatTypeAdapter adapter = new VmMemoryStatTypeAdapter();
+        long size = 0;
+        for (int i = 0; i < stats.size(); i++) {
+            byte[] upload = uploads.get(i);
+            size += upload.length;
+            JsonPayloadWriter expected = new JsonPayloadWriter();
+            adapter.write(expected, Arrays.asList(stats.get(i)));
+            assertEquals(gateway.parse(expected.toByteArray()), gateway.receive(upload));
+        }
+        return size;
+    }
+
+    private static long fullSize(List<VmMemoryStat> stats) {
+        VmMemoryStatTypeAdapter adapter = new VmMemoryStatTypeAdapter();
+        long size = 0;
+        for (VmMemoryStat stat : stats) {
+            JsonPayloadWriter out = new JsonPayloadWriter();
+            adapter.write(out, Arrays.asList(stat));
+            size += out.size();
+        }
+        return size;
+    }
+
+    private static VmMemoryStat createStat(long timeStamp, int edenFill, int collections) {
+        long mb = 1024 * 1024;
+        Generation young = new Generation();
+        young.setName("new");
+        young.setCollector("Copy");
+        young.setCapacity(80 * mb);
+        young.setMaxCapacity(160 * mb);
+        young.setSpaces(new Space[] {
+                createSpace(0, "eden", 64 * mb, 128 * mb, edenFill * 6 * mb),
+                createSpace(1, "s0", 8 * mb, 16 * mb, collections % 2 == 0 ? collections * 1000 : 0),
+                createSpace(2, "s1", 8 * mb, 16 * mb, collections % 2 == 1 ? collections * 1000 : 0),
+        });
+        Generation old = new Generation();
+        old.setName("old");
+        old.setCollector("MSC");
+        old.setCapacity(200 * mb);
+        old.setMaxCapacity(400 * mb);
+        old.setSpaces(new Space[] {
+                createSpace(0, "old", 200 * mb, 400 * mb, 20 * mb + collections * 4096),
+        });
+        return new VmMemoryStat(AGENT_ID, timeStamp, VM_ID, new Generation[] { young, old },
+                1024 * mb, 0, 24 * mb, 22 * mb);
+    }
+
+    private static Space createSpace(int index, String name, long capacity, long maxCapacity, long used) {
+        Space space = new Space();
+        space.setIndex(index);
+        space.setName(name);
+        space.setCapacity(capacity);
+        space.setMaxCapacity(maxCapacity);
+        space.setUsed(used);
+        return space;
+    }
+
+    /**
+     * Stands in for the web gateway: keeps the last full sample per VM and
+     * applies incoming deltas to it.
+     */
+    static class GatewayStandIn {
+
+        private final Map<String, JsonObject> lastSamples = new HashMap<>();
+
+        JsonObject parse(byte[] payload) {
+            JsonArray samples = new JsonParser().parse(new String(payload, StandardCharsets.UTF_8)).getAsJsonArray();
+            assertEquals(1, samples.size());
+            return samples.get(0).getAsJsonObject();
+        }
+
+        JsonObject receive(byte[] payload) {
+            JsonObject sample = parse(payload);
+            String vmId = sample.get("jvmId").getAsString();
+            if (sample.has("delta")) {
+                JsonObject last = lastSamples.get(vmId);
+                if (last == null || !last.get("timeStamp").equals(sample.get("baseTimeStamp"))) {
+                    throw new IllegalStateException("No base sample for delta");
+                }
+                JsonObject full = copy(last);
+                apply(full, sample);
+                sample = full;
+            }
+            lastSamples.put(vmId, copy(sample));
+            return sample;
+        }
+
+        private static void apply(JsonObject target, JsonObject delta) {
+            for (Map.Entry<String, JsonElement> field : delta.entrySet()) {
+                String name = field.getKey();
+                if (name.equals("delta") || name.equals("baseTimeStamp")) {
+                    continue;
+                }
+                if (field.getValue().isJsonArray()) {
+                    JsonArray targets = target.getAsJsonArray(name);
+                    JsonArray deltas = field.getValue().getAsJsonArray();
+                    assertEquals(targets.size(), deltas.size());
+                    for (int i = 0; i < deltas.size(); i++) {
+                        apply(targets.get(i).getAsJsonObject(), deltas.get(i).getAsJsonObject());
+                    }
+                } else {
+                    target.add(name, field.getValue());
+                }
+            }
+        }
+
+        private static JsonObject copy(JsonObject object) {
+            return new JsonParser().parse(object.toString()).getAsJsonObject();
+        }
+    }
+}
@@ -36,6 +36,7 @@
 
 package com.redhat.thermostat.vm.memory.agent.internal.models;
 
+import com.redhat.thermostat.agent.http.JsonPayloadWriter;
 import com.redhat.thermostat.vm.memory.agent.model.VmMemoryStat;
 import org.junit.Test;
 
@@ -48,9 +49,51 @@ import static org.junit.Assert.assertEquals;
 
 public class VmMemoryStatTypeAdapterTest {
 
+    private static final String EXPECTED_JSON = "[{\"agentId\":\"AGENT-1\",\"jvmId\":\"VM-1\",\"timeStamp\":{\"$numberLong\":\"100\"},\"metaspaceMaxCapacity\":{\"$numberLong\":\"4096\"},\"metaspaceMinCapacity\":{\"$numberLong\":\"2048\"},\"metaspaceCapacity\":{\"$numberLong\":\"2000\"},\"metaspaceUsed\":{\"$numberLong\":\"3000\"},\"generations\":[{\"name\":\"Name\",\"capacity\":{\"$numberLong\":\"1002\"},\"maxCapacity\":{\"$numberLong\":\"2048\"},\"collector\":\"Collector 1\",\"spaces\":[{\"index\":1,\"name\":\"Space Name\",\"capacity\":{\"$numberLong\":\"500\"},\"maxCapacity\":{\"$numberLong\":\"1024\"},\"used\":{\"$numberLong\":\"400\"}}]}]}]";
+
     @Test
     public void testWrite() throws IOException {
         VmMemoryStatTypeAdapter typeAdapter = new VmMemoryStatTypeAdapter();
+        VmMemoryStat stat = createStat();
+        assertEquals(EXPECTED_JSON, typeAdapter.toJson(Arrays.asList(stat)));
+    }
+
+    @Test
+    public void testStreamingWrite() {
+        VmMemoryStatTypeAdapter typeAdapter = new VmMemoryStatTypeAdapter();
+        JsonPayloadWriter out = new JsonPayloadWriter();
+        typeAdapter.write(out, Arrays.asList(createStat()));
+        assertEquals(EXPECTED_JSON, out.toString());
+    }
+
+    @Test
+    public void testWriteDelta() {
+        VmMemoryStatTypeAdapter typeAdapter = new VmMemoryStatTypeAdapter();
+        VmMemoryStat base = createStat();
+        VmMemoryStat stat = createStat();
+        stat.setTimeStamp(200l);
+        stat.setMetaspaceUsed(3100l);
+        stat.getGenerations()[0].getSpaces()[0].setUsed(450l);
+        JsonPayloadWriter out = new JsonPayloadWriter();
+        typeAdapter.writeDelta(out, base, stat);
+        assertEquals("[{\"agentId\":\"AGENT-1\",\"jvmId\":\"VM-1\",\"timeStamp\":{\"$numberLong\":\"200\"},"
+                + "\"delta\":true,\"baseTimeStamp\":{\"$numberLong\":\"100\"},"
+                + "\"metaspaceUsed\":{\"$numberLong\":\"3100\"},"
+                + "\"generations\":[{\"spaces\":[{\"used\":{\"$numberLong\":\"450\"}}]}]}]", out.toString());
+    }
+
+    @Test
+    public void testWriteDeltaUnchanged() {
+        VmMemoryStatTypeAdapter typeAdapter = new VmMemoryStatTypeAdapter();
+        VmMemoryStat stat = createStat();
+        stat.setTimeStamp(200l);
+        JsonPayloadWriter out = new JsonPayloadWriter();
+        typeAdapter.writeDelta(out, createStat(), stat);
+        assertEquals("[{\"agentId\":\"AGENT-1\",\"jvmId\":\"VM-1\",\"timeStamp\":{\"$numberLong\":\"200\"},"
+                + "\"delta\":true,\"baseTimeStamp\":{\"$numberLong\":\"100\"}}]", out.toString());
+    }
+
+    private static VmMemoryStat createStat() {
         VmMemoryStat stat = new VmMemoryStat();
         stat.setTimeStamp(100l);
         stat.setVmId("VM-1");
@@ -76,6 +119,6 @@ public class VmMemoryStatTypeAdapterTest {
         gen1.setSpaces(spaces);
         gens[0] = gen1;
         stat.setGenerations(gens);
-        assertEquals("[{\"agentId\":\"AGENT-1\",\"jvmId\":\"VM-1\",\"timeStamp\":{\"$numberLong\":\"100\"},\"metaspaceMaxCapacity\":{\"$numberLong\":\"4096\"},\"metaspaceMinCapacity\":{\"$numberLong\":\"2048\"},\"metaspaceCapacity\":{\"$numberLong\":\"2000\"},\"metaspaceUsed\":{\"$numberLong\":\"3000\"},\"generations\":[{\"name\":\"Name\",\"capacity\":{\"$numberLong\":\"1002\"},\"maxCapacity\":{\"$numberLong\":\"2048\"},\"collector\":\"Collector 1\",\"spaces\":[{\"index\":1,\"name\":\"Space Name\",\"capacity\":{\"$numberLong\":\"500\"},\"maxCapacity\":{\"$numberLong\":\"1024\"},\"used\":{\"$numberLong\":\"400\"}}]}]}]", typeAdapter.toJson(Arrays.asList(stat)));
+        return stat;
     }
 }
\ No newline at end of file
@@ -36,10 +36,9 @@
 
 package com.redhat.thermostat.vm.numa.agent.internal;
 
-import java.io.BufferedReader;
-import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.nio.channels.ReadableByteChannel;
 
 interface NumaMapsReaderProvider {
-    BufferedReader createReader(int forPid) throws IOException;
+    ReadableByteChannel createChannel(int forPid) throws IOException;
 }
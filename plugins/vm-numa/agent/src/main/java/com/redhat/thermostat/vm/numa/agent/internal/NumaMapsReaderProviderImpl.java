@@ -38,8 +38,8 @@ package com.redhat.thermostat.vm.numa.agent.internal;
 
 import com.redhat.thermostat.common.portability.linux.ProcDataSource;
 
-import java.io.BufferedReader;
 import java.io.IOException;
+import java.nio.channels.ReadableByteChannel;
 
 class NumaMapsReaderProviderImpl implements NumaMapsReaderProvider {
 
@@ -55,7 +55,7 @@ class NumaMapsReaderProviderImpl implements NumaMapsReaderProvider {
     }
 
     @Override
-    public BufferedReader createReader(int forPid) throws IOException {
-        return new BufferedReader(procDataSource.getNumaMapsReader(forPid));
+    public ReadableByteChannel createChannel(int forPid) throws IOException {
+        return procDataSource.getNumaMapsChannel(forPid);
     }
 }
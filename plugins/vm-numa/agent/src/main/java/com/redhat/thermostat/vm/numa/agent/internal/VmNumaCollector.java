@@ -39,19 +39,18 @@ package com.redhat.thermostat.vm.numa.agent.internal;
 import com.redhat.thermostat.common.Clock;
 import com.redhat.thermostat.common.SystemClock;
 import com.redhat.thermostat.common.cli.BorderedTableRenderer;
+import com.redhat.thermostat.common.portability.linux.ProcTokenizer;
 import com.redhat.thermostat.common.utils.LoggingUtils;
 import com.redhat.thermostat.shared.config.OS;
 import com.redhat.thermostat.vm.numa.common.VmNumaNodeStat;
 import com.redhat.thermostat.vm.numa.common.VmNumaStat;
 
-import java.io.BufferedReader;
 import java.io.IOException;
+import java.nio.channels.ReadableByteChannel;
 import java.util.Map;
 import java.util.TreeMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 // the "parsing" performed by this class is very rudimentary, but follows the same simple checks performed by the
 // "numastat" command
@@ -62,13 +61,16 @@ public class VmNumaCollector {
     private static final int KILOBYTE = 1024;
     private static final int MEGABYTE = 1024 * KILOBYTE;
 
-    private static final Pattern NODE_PATTERN = Pattern.compile("N([0-9]+)=([0-9]+)");
-    private static final Pattern WHITESPACE_PATTERN = Pattern.compile("[\\s]+");
+    // Tokens of the form N<node>=<pages>
+    private static final byte[] NODE_PREFIX = ProcTokenizer.bytes("N");
+    private static final byte[] NODE_SEPARATOR = ProcTokenizer.bytes("=");
+    private static final Category[] CATEGORIES = Category.values();
 
     private final int pid;
     private final Clock clock;
     private final NumaMapsReaderProvider readerProvider;
     private final PageSizeProvider pageSizeProvider;
+    private final ProcTokenizer tokenizer = new ProcTokenizer();
 
     public VmNumaCollector(int pid, Clock clock, NumaMapsReaderProvider readerProvider, PageSizeProvider pageSizeProvider) {
         this.pid = pid;
@@ -79,43 +81,55 @@ public class VmNumaCollector {
 
     public VmNumaStat collect() throws IOException {
         Map<Integer, VmNumaNodeStat> statsMap = new TreeMap<>(); // need sorted keys for converting values to array in order later
-        try (BufferedReader br = readerProvider.createReader(pid)) {
-            for (String line = br.readLine(); line != null; line = br.readLine()) {
-                processLine(statsMap, WHITESPACE_PATTERN.split(line));
+        try (ReadableByteChannel channel = readerProvider.createChannel(pid)) {
+            ProcTokenizer t = tokenizer.load(channel);
+            while (t.nextLine()) {
+                processLine(statsMap, t);
             }
         }
         return createVmNumaStat(statsMap);
     }
 
-    private void processLine(Map<Integer, VmNumaNodeStat> map, String[] tokens) {
-        for (String tok : tokens) {
-            Matcher matcher = NODE_PATTERN.matcher(tok);
-            if (matcher.matches()) {
-                int nodeNumber = Integer.parseInt(matcher.group(1));
-                if (!map.containsKey(nodeNumber)) {
-                    VmNumaNodeStat stat = new VmNumaNodeStat();
-                    stat.setNode(nodeNumber);
-                    map.put(nodeNumber, stat);
+    private void processLine(Map<Integer, VmNumaNodeStat> map, ProcTokenizer t) {
+        Category category = selectCategory(t);
+        t.rewindLine();
+        while (t.hasToken()) {
+            if (t.skip(NODE_PREFIX) && t.peekDigit()) {
+                int nodeNumber = (int) t.nextLong();
+                if (t.skip(NODE_SEPARATOR) && t.peekDigit()) {
+                    long pages = t.nextLong();
+                    if (t.atTokenEnd()) {
+                        addPages(map, nodeNumber, category, pages);
+                    }
                 }
-
-                Category category = selectCategory(tokens);
-                double value = Double.parseDouble(matcher.group(2));
-                value *= getMultiplier(category);
-                value /= (double) MEGABYTE;
-
-                VmNumaNodeStat stat = map.get(nodeNumber);
-                updateStat(stat, category, value);
             }
+            t.skipToken();
         }
     }
 
-    private Category selectCategory(String[] tokens) {
-        for (String tok : tokens) {
-            for (Category c : Category.values()) {
-                if (tok.startsWith(c.getToken())) {
+    private void addPages(Map<Integer, VmNumaNodeStat> map, int nodeNumber, Category category, long pages) {
+        VmNumaNodeStat stat = map.get(nodeNumber);
+        if (stat == null) {
+            stat = new VmNumaNodeStat();
+            stat.setNode(nodeNumber);
+            map.put(nodeNumber, stat);
+        }
+
+        double value = pages;
+        value *= getMultiplier(category);
+        value /= (double) MEGABYTE;
+
+        updateStat(stat, category, value);
+    }
+
+    private Category selectCategory(ProcTokenizer t) {
+        while (t.hasToken()) {
+            for (Category c : CATEGORIES) {
+                if (t.skip(c.getPrefix())) {
                     return c;
                 }
             }
+            t.skipToken();
         }
         return Category.PRIVATE;
     }
@@ -199,14 +213,20 @@ public class VmNumaCollector {
         PRIVATE("N");
 
         private final String token;
+        private final byte[] prefix;
 
         Category(String token) {
             this.token = token;
+            this.prefix = ProcTokenizer.bytes(token);
         }
 
         public String getToken() {
             return token;
         }
+
+        byte[] getPrefix() {
+            return prefix;
+        }
     }
 
 }
@@ -41,9 +41,9 @@ import com.redhat.thermostat.common.utils.StringUtils;
 import org.junit.Before;
 import org.junit.Test;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
 
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.CoreMatchers.is;
@@ -62,16 +62,16 @@ public class NumaMapsReaderProviderImplTest {
     @Before
     public void setup() throws IOException {
         procDataSource = mock(ProcDataSource.class);
-        when(procDataSource.getNumaMapsReader(anyInt())).thenReturn(new InputStreamReader(StringUtils.toInputStream("")));
+        when(procDataSource.getNumaMapsChannel(anyInt())).thenReturn(Channels.newChannel(StringUtils.toInputStream("")));
 
         readerProvider = new NumaMapsReaderProviderImpl(procDataSource);
     }
 
     @Test
-    public void testProvidesReader() throws IOException {
-        BufferedReader reader = readerProvider.createReader(100);
-        verify(procDataSource).getNumaMapsReader(100);
-        assertThat(reader, is(not(equalTo(null))));
+    public void testProvidesChannel() throws IOException {
+        ReadableByteChannel channel = readerProvider.createChannel(100);
+        verify(procDataSource).getNumaMapsChannel(100);
+        assertThat(channel, is(not(equalTo(null))));
     }
 
 }
@@ -42,9 +42,11 @@ import static org.mockito.Matchers.anyInt;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
-import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.io.StringReader;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
 
 import com.redhat.thermostat.common.Clock;
 import org.junit.Before;
@@ -76,12 +78,12 @@ public class VmNumaCollectorTest {
     @Test
     public void testCollectSingleNodeStat() throws IOException {
         readerProvider = mock(NumaMapsReaderProvider.class);
-        when(readerProvider.createReader(anyInt())).thenReturn(new BufferedReader(new StringReader(
+        when(readerProvider.createChannel(anyInt())).thenReturn(channel(
                 "017ec000 default heap anon=1861 dirty=1796 swapcache=65 active=1667 N0=1861 kernelpagesize_kB=4\n" +
                 "e09ec000 default stack anon=1776 dirty=1776 swapcache=65 active=1667 N0=1776 kernelpagesize_kB=4\n" +
                 "d1200000 default anon=45680 dirty=45680 active=43669 N0=45680 kernelpagesize_kB=4\n" +
                 "d0800000 default huge anon=456 dirty=456 active=43669 N0=456 kernelpagesize_kB=4\n"
-        )));
+        ));
         collector = new VmNumaCollector(PID, clock, readerProvider, pageSizeProvider);
 
         VmNumaStat stat = collector.collect();
@@ -98,10 +100,10 @@ public class VmNumaCollectorTest {
     @Test
     public void testCollectMultipleNodeStat() throws IOException {
         readerProvider = mock(NumaMapsReaderProvider.class);
-        when(readerProvider.createReader(anyInt())).thenReturn(new BufferedReader(new StringReader(
+        when(readerProvider.createChannel(anyInt())).thenReturn(channel(
                 "017ec000 default heap anon=1861 dirty=1796 swapcache=65 active=1667 N0=1861 kernelpagesize_kB=4\n" +
                 "d1200000 default anon=45680 dirty=45680 active=43669 N1=45680 kernelpagesize_kB=4\n"
-        )));
+        ));
         collector = new VmNumaCollector(PID, clock, readerProvider, pageSizeProvider);
 
         VmNumaStat stat = collector.collect();
@@ -124,4 +126,8 @@ public class VmNumaCollectorTest {
         assertThat(nodeStat2.getPrivateMemory(), is(178.4375d));
     }
 
+    private static ReadableByteChannel channel(String contents) {
+        return Channels.newChannel(new ByteArrayInputStream(contents.getBytes(StandardCharsets.US_ASCII)));
+    }
+
 }